@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.ds.generated;
+public class DirectoryServiceBenchmark_jmhType extends DirectoryServiceBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.generated;
+public class AsyncHttpClientBenchmark_jmhType extends AsyncHttpClientBenchmark_jmhType_B3 {
+}
+
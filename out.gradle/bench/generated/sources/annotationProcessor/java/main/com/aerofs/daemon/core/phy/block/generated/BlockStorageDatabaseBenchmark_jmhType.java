@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.phy.block.generated;
+public class BlockStorageDatabaseBenchmark_jmhType extends BlockStorageDatabaseBenchmark_jmhType_B3 {
+}
+
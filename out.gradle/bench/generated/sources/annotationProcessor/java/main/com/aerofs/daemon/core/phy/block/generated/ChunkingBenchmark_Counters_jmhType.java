@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.phy.block.generated;
+public class ChunkingBenchmark_Counters_jmhType extends ChunkingBenchmark_Counters_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.phy.block.generated;
+public class ChunkingBenchmark_jmhType extends ChunkingBenchmark_jmhType_B3 {
+}
+
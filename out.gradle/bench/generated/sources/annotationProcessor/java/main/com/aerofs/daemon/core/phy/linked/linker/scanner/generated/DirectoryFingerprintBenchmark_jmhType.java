@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.phy.linked.linker.scanner.generated;
+public class DirectoryFingerprintBenchmark_jmhType extends DirectoryFingerprintBenchmark_jmhType_B3 {
+}
+
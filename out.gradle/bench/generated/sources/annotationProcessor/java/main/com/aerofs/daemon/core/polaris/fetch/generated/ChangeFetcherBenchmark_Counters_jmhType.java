@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.polaris.fetch.generated;
+public class ChangeFetcherBenchmark_Counters_jmhType extends ChangeFetcherBenchmark_Counters_jmhType_B3 {
+}
+
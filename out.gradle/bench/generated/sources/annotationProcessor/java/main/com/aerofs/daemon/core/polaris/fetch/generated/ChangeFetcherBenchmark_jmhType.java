@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.polaris.fetch.generated;
+public class ChangeFetcherBenchmark_jmhType extends ChangeFetcherBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.polaris.fetch.generated;
+public class MultiStoreFetchBenchmark_Counters_jmhType extends MultiStoreFetchBenchmark_Counters_jmhType_B3 {
+}
+
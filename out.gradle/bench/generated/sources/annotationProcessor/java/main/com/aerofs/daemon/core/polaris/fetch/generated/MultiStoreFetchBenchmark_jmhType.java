@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.polaris.fetch.generated;
+public class MultiStoreFetchBenchmark_jmhType extends MultiStoreFetchBenchmark_jmhType_B3 {
+}
+
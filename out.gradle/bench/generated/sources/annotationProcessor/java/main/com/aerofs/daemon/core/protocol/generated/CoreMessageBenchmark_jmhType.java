@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.protocol.generated;
+public class CoreMessageBenchmark_jmhType extends CoreMessageBenchmark_jmhType_B3 {
+}
+
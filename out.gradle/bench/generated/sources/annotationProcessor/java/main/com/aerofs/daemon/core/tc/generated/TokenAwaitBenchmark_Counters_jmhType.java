@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.tc.generated;
+public class TokenAwaitBenchmark_Counters_jmhType extends TokenAwaitBenchmark_Counters_jmhType_B3 {
+}
+
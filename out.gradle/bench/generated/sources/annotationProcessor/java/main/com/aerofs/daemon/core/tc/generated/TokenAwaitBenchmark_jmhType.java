@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.tc.generated;
+public class TokenAwaitBenchmark_jmhType extends TokenAwaitBenchmark_jmhType_B3 {
+}
+
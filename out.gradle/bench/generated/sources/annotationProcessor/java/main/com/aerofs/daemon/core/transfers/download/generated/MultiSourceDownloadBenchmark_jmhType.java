@@ -0,0 +1,4 @@
+package com.aerofs.daemon.core.transfers.download.generated;
+public class MultiSourceDownloadBenchmark_jmhType extends MultiSourceDownloadBenchmark_jmhType_B3 {
+}
+
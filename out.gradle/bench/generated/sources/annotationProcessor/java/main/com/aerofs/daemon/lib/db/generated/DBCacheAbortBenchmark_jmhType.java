@@ -0,0 +1,4 @@
+package com.aerofs.daemon.lib.db.generated;
+public class DBCacheAbortBenchmark_jmhType extends DBCacheAbortBenchmark_jmhType_B3 {
+}
+
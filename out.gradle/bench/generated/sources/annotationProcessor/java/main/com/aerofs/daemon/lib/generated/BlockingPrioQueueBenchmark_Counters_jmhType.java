@@ -0,0 +1,4 @@
+package com.aerofs.daemon.lib.generated;
+public class BlockingPrioQueueBenchmark_Counters_jmhType extends BlockingPrioQueueBenchmark_Counters_jmhType_B3 {
+}
+
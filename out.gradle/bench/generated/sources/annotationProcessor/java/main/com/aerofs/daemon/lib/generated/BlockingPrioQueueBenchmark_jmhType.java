@@ -0,0 +1,4 @@
+package com.aerofs.daemon.lib.generated;
+public class BlockingPrioQueueBenchmark_jmhType extends BlockingPrioQueueBenchmark_jmhType_B3 {
+}
+
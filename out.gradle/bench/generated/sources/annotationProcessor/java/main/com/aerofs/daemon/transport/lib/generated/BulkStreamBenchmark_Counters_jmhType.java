@@ -0,0 +1,4 @@
+package com.aerofs.daemon.transport.lib.generated;
+public class BulkStreamBenchmark_Counters_jmhType extends BulkStreamBenchmark_Counters_jmhType_B3 {
+}
+
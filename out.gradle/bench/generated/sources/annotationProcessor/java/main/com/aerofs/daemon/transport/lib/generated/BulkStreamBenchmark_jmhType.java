@@ -0,0 +1,4 @@
+package com.aerofs.daemon.transport.lib.generated;
+public class BulkStreamBenchmark_jmhType extends BulkStreamBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.aerofs.lib.bf.generated;
+public class BFOIDBenchmark_Counters_jmhType extends BFOIDBenchmark_Counters_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.aerofs.lib.bf.generated;
+public class BFOIDBenchmark_jmhType extends BFOIDBenchmark_jmhType_B3 {
+}
+
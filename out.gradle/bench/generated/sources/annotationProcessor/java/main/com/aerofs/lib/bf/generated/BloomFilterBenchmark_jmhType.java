@@ -0,0 +1,4 @@
+package com.aerofs.lib.bf.generated;
+public class BloomFilterBenchmark_jmhType extends BloomFilterBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.aerofs.lib.generated;
+public class ContentHashBenchmark_jmhType extends ContentHashBenchmark_jmhType_B3 {
+}
+
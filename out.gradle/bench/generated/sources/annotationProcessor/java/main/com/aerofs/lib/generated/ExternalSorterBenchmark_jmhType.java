@@ -0,0 +1,4 @@
+package com.aerofs.lib.generated;
+public class ExternalSorterBenchmark_jmhType extends ExternalSorterBenchmark_jmhType_B3 {
+}
+
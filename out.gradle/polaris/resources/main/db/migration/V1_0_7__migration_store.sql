@@ -0,0 +1 @@
+ALTER TABLE `migration_jobs` ADD COLUMN `src_store` BINARY(16);
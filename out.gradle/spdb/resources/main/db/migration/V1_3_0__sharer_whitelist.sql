@@ -0,0 +1 @@
+ALTER TABLE sp_user ADD COLUMN u_whitelisted BOOLEAN NOT NULL DEFAULT FALSE;
@@ -0,0 +1 @@
+ALTER TABLE sp_user ADD INDEX (u_whitelisted);
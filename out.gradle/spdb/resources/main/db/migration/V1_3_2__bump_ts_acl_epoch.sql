@@ -0,0 +1 @@
+update sp_user set u_acl_epoch=u_acl_epoch+1 where u_id=':2';
@@ -0,0 +1 @@
+ALTER TABLE sp_shared_folder ADD COLUMN sf_locked_membership BOOLEAN NOT NULL DEFAULT FALSE;
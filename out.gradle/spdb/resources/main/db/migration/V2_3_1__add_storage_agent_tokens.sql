@@ -0,0 +1,4 @@
+CREATE TABLE IF NOT EXISTS `sp_sa_tokens` (
+  `sat_token` CHAR(32) NOT NULL,
+  PRIMARY KEY (`sat_token`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
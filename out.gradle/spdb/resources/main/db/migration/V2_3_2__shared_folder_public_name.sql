@@ -0,0 +1 @@
+ALTER TABLE sp_shared_folder CHANGE sf_original_name sf_public_name varchar(255) CHARSET utf8mb4 NOT NULL;
@@ -0,0 +1,14 @@
+-- Track the epoch at which the ACL of each store last changed for each user, so that clients
+-- only fetch the ACL of stores that changed since their epoch instead of the full ACL.
+-- ach_epoch is null until the ACL epoch of the user is bumped.
+CREATE TABLE IF NOT EXISTS `sp_acl_change` (
+  `ach_user_id` VARCHAR(320) NOT NULL,
+  `ach_sid` BINARY(16) NOT NULL,
+  `ach_epoch` BIGINT,
+  PRIMARY KEY (`ach_user_id`, `ach_sid`),
+  INDEX `ach_user_epoch` (`ach_user_id`, `ach_epoch`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+-- Changes made prior to this migration were not tracked: clients need to fetch the full ACL
+ALTER TABLE `sp_user` ADD COLUMN `u_acl_delta_epoch` BIGINT NOT NULL DEFAULT 0;
+UPDATE `sp_user` SET `u_acl_delta_epoch`=`u_acl_epoch`;
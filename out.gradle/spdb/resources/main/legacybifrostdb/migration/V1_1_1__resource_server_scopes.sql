@@ -0,0 +1,4 @@
+INSERT INTO ResourceServer_scopes
+    (RESOURCESERVER_ID, scopes)
+VALUES
+    (999999, 'readonly');
@@ -0,0 +1,2 @@
+ALTER TABLE accesstoken
+ADD owner VARCHAR(320) NOT NULL DEFAULT '-';
\ No newline at end of file
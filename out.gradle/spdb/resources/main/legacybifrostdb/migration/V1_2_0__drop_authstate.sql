@@ -0,0 +1,2 @@
+ALTER TABLE authorizationrequest
+DROP COLUMN authState;
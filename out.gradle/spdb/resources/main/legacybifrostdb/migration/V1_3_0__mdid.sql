@@ -0,0 +1,2 @@
+ALTER TABLE accesstoken
+    ADD mdid CHAR(32) UNIQUE NOT NULL DEFAULT '88888888888888888888888888888888';
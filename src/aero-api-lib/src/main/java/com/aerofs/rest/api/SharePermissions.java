@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.rest.api;
+
+/**
+ * Effective permissions of a user in one of the shared folders it joined
+ */
+public class SharePermissions
+{
+    public final String id;
+    public final String[] permissions;
+
+    public SharePermissions(String id, String[] permissions)
+    {
+        this.id = id;
+        this.permissions = permissions;
+    }
+}
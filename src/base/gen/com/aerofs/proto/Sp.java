@@ -10457,6 +10457,8 @@ public interface GetACLCallOrBuilder extends
 MessageLiteOrBuilder {
 boolean hasEpoch();
 long getEpoch();
+boolean hasIncremental();
+boolean getIncremental();
 }
 public static final class GetACLCall extends
 GeneratedMessageLite implements
@@ -10505,6 +10507,11 @@ b0_ |= 0x00000001;
 epoch_ = input.readUInt64();
 break;
 }
+case 16: {
+b0_ |= 0x00000002;
+incremental_ = input.readBool();
+break;
+}
 }
 }
 } catch (InvalidProtocolBufferException e) {
@@ -10544,8 +10551,17 @@ return ((b0_ & 0x00000001) == 0x00000001);
 public long getEpoch() {
 return epoch_;
 }
+public static final int INCREMENTAL_FIELD_NUMBER = 2;
+private boolean incremental_;
+public boolean hasIncremental() {
+return ((b0_ & 0x00000002) == 0x00000002);
+}
+public boolean getIncremental() {
+return incremental_;
+}
 private void initFields() {
 epoch_ = 0L;
+incremental_ = false;
 }
 private byte mii = -1;
 public final boolean isInitialized() {
@@ -10565,6 +10581,9 @@ getSerializedSize();
 if (((b0_ & 0x00000001) == 0x00000001)) {
 output.writeUInt64(1, epoch_);
 }
+if (((b0_ & 0x00000002) == 0x00000002)) {
+output.writeBool(2, incremental_);
+}
 output.writeRawBytes(unknownFields);
 }
 private int mss = -1;
@@ -10576,6 +10595,10 @@ if (((b0_ & 0x00000001) == 0x00000001)) {
 size += CodedOutputStream
 .computeUInt64Size(1, epoch_);
 }
+if (((b0_ & 0x00000002) == 0x00000002)) {
+size += CodedOutputStream
+.computeBoolSize(2, incremental_);
+}
 size += unknownFields.size();
 mss = size;
 return size;
@@ -10661,6 +10684,8 @@ public Builder clear() {
 super.clear();
 epoch_ = 0L;
 b0_ = (b0_ & ~0x00000001);
+incremental_ = false;
+b0_ = (b0_ & ~0x00000002);
 return this;
 }
 public Builder clone() {
@@ -10684,6 +10709,10 @@ if (((from_b0_ & 0x00000001) == 0x00000001)) {
 to_b0_ |= 0x00000001;
 }
 result.epoch_ = epoch_;
+if (((from_b0_ & 0x00000002) == 0x00000002)) {
+to_b0_ |= 0x00000002;
+}
+result.incremental_ = incremental_;
 result.b0_ = to_b0_;
 return result;
 }
@@ -10692,6 +10721,9 @@ if (other == Sp.GetACLCall.getDefaultInstance()) return this;
 if (other.hasEpoch()) {
 setEpoch(other.getEpoch());
 }
+if (other.hasIncremental()) {
+setIncremental(other.getIncremental());
+}
 setUnknownFields(
 getUnknownFields().concat(other.unknownFields));
 return this;
@@ -10737,6 +10769,23 @@ b0_ = (b0_ & ~0x00000001);
 epoch_ = 0L;
 return this;
 }
+private boolean incremental_ ;
+public boolean hasIncremental() {
+return ((b0_ & 0x00000002) == 0x00000002);
+}
+public boolean getIncremental() {
+return incremental_;
+}
+public Builder setIncremental(boolean value) {
+b0_ |= 0x00000002;
+incremental_ = value;
+return this;
+}
+public Builder clearIncremental() {
+b0_ = (b0_ & ~0x00000002);
+incremental_ = false;
+return this;
+}
 }
 static {
 defaultInstance = new GetACLCall(true);
@@ -10751,6 +10800,11 @@ Sp.GetACLReply.PBStoreACL getStoreAcl(int index);
 int getStoreAclCount();
 boolean hasEpoch();
 long getEpoch();
+boolean hasIncremental();
+boolean getIncremental();
+List<ByteString> getLeftStoreIdList();
+int getLeftStoreIdCount();
+ByteString getLeftStoreId(int index);
 }
 public static final class GetACLReply extends
 GeneratedMessageLite implements
@@ -10807,6 +10861,19 @@ b0_ |= 0x00000001;
 epoch_ = input.readUInt64();
 break;
 }
+case 24: {
+b0_ |= 0x00000002;
+incremental_ = input.readBool();
+break;
+}
+case 34: {
+if (!((mutable_b0_ & 0x00000008) == 0x00000008)) {
+leftStoreId_ = new ArrayList<ByteString>();
+mutable_b0_ |= 0x00000008;
+}
+leftStoreId_.add(input.readBytes());
+break;
+}
 }
 }
 } catch (InvalidProtocolBufferException e) {
@@ -10818,6 +10885,9 @@ e.getMessage()).setUnfinishedMessage(this);
 if (((mutable_b0_ & 0x00000001) == 0x00000001)) {
 storeAcl_ = Collections.unmodifiableList(storeAcl_);
 }
+if (((mutable_b0_ & 0x00000008) == 0x00000008)) {
+leftStoreId_ = Collections.unmodifiableList(leftStoreId_);
+}
 try {
 unknownFieldsCodedOutput.flush();
 } catch (IOException e) {
@@ -11485,9 +11555,31 @@ return ((b0_ & 0x00000001) == 0x00000001);
 public long getEpoch() {
 return epoch_;
 }
+public static final int INCREMENTAL_FIELD_NUMBER = 3;
+private boolean incremental_;
+public boolean hasIncremental() {
+return ((b0_ & 0x00000002) == 0x00000002);
+}
+public boolean getIncremental() {
+return incremental_;
+}
+public static final int LEFT_STORE_ID_FIELD_NUMBER = 4;
+private List<ByteString> leftStoreId_;
+public List<ByteString>
+getLeftStoreIdList() {
+return leftStoreId_;
+}
+public int getLeftStoreIdCount() {
+return leftStoreId_.size();
+}
+public ByteString getLeftStoreId(int index) {
+return leftStoreId_.get(index);
+}
 private void initFields() {
 storeAcl_ = Collections.emptyList();
 epoch_ = 0L;
+incremental_ = false;
+leftStoreId_ = Collections.emptyList();
 }
 private byte mii = -1;
 public final boolean isInitialized() {
@@ -11516,6 +11608,12 @@ output.writeMessage(1, storeAcl_.get(i));
 if (((b0_ & 0x00000001) == 0x00000001)) {
 output.writeUInt64(2, epoch_);
 }
+if (((b0_ & 0x00000002) == 0x00000002)) {
+output.writeBool(3, incremental_);
+}
+for (int i = 0; i < leftStoreId_.size(); i++) {
+output.writeBytes(4, leftStoreId_.get(i));
+}
 output.writeRawBytes(unknownFields);
 }
 private int mss = -1;
@@ -11531,6 +11629,19 @@ if (((b0_ & 0x00000001) == 0x00000001)) {
 size += CodedOutputStream
 .computeUInt64Size(2, epoch_);
 }
+if (((b0_ & 0x00000002) == 0x00000002)) {
+size += CodedOutputStream
+.computeBoolSize(3, incremental_);
+}
+{
+int dataSize = 0;
+for (int i = 0; i < leftStoreId_.size(); i++) {
+dataSize += CodedOutputStream
+.computeBytesSizeNoTag(leftStoreId_.get(i));
+}
+size += dataSize;
+size += 1 * getLeftStoreIdList().size();
+}
 size += unknownFields.size();
 mss = size;
 return size;
@@ -11618,6 +11729,10 @@ storeAcl_ = Collections.emptyList();
 b0_ = (b0_ & ~0x00000001);
 epoch_ = 0L;
 b0_ = (b0_ & ~0x00000002);
+incremental_ = false;
+b0_ = (b0_ & ~0x00000004);
+leftStoreId_ = Collections.emptyList();
+b0_ = (b0_ & ~0x00000008);
 return this;
 }
 public Builder clone() {
@@ -11646,6 +11761,15 @@ if (((from_b0_ & 0x00000002) == 0x00000002)) {
 to_b0_ |= 0x00000001;
 }
 result.epoch_ = epoch_;
+if (((from_b0_ & 0x00000004) == 0x00000004)) {
+to_b0_ |= 0x00000002;
+}
+result.incremental_ = incremental_;
+if (((b0_ & 0x00000008) == 0x00000008)) {
+leftStoreId_ = Collections.unmodifiableList(leftStoreId_);
+b0_ = (b0_ & ~0x00000008);
+}
+result.leftStoreId_ = leftStoreId_;
 result.b0_ = to_b0_;
 return result;
 }
@@ -11663,6 +11787,18 @@ storeAcl_.addAll(other.storeAcl_);
 if (other.hasEpoch()) {
 setEpoch(other.getEpoch());
 }
+if (other.hasIncremental()) {
+setIncremental(other.getIncremental());
+}
+if (!other.leftStoreId_.isEmpty()) {
+if (leftStoreId_.isEmpty()) {
+leftStoreId_ = other.leftStoreId_;
+b0_ = (b0_ & ~0x00000008);
+} else {
+ensureLeftStoreIdIsMutable();
+leftStoreId_.addAll(other.leftStoreId_);
+}
+}
 setUnknownFields(
 getUnknownFields().concat(other.unknownFields));
 return this;
@@ -11791,6 +11927,69 @@ b0_ = (b0_ & ~0x00000002);
 epoch_ = 0L;
 return this;
 }
+private boolean incremental_ ;
+public boolean hasIncremental() {
+return ((b0_ & 0x00000004) == 0x00000004);
+}
+public boolean getIncremental() {
+return incremental_;
+}
+public Builder setIncremental(boolean value) {
+b0_ |= 0x00000004;
+incremental_ = value;
+return this;
+}
+public Builder clearIncremental() {
+b0_ = (b0_ & ~0x00000004);
+incremental_ = false;
+return this;
+}
+private List<ByteString> leftStoreId_ = Collections.emptyList();
+private void ensureLeftStoreIdIsMutable() {
+if (!((b0_ & 0x00000008) == 0x00000008)) {
+leftStoreId_ = new ArrayList<ByteString>(leftStoreId_);
+b0_ |= 0x00000008;
+}
+}
+public List<ByteString>
+getLeftStoreIdList() {
+return Collections.unmodifiableList(leftStoreId_);
+}
+public int getLeftStoreIdCount() {
+return leftStoreId_.size();
+}
+public ByteString getLeftStoreId(int index) {
+return leftStoreId_.get(index);
+}
+public Builder setLeftStoreId(
+int index, ByteString value) {
+if (value == null) {
+throw new NullPointerException();
+}
+ensureLeftStoreIdIsMutable();
+leftStoreId_.set(index, value);
+return this;
+}
+public Builder addLeftStoreId(ByteString value) {
+if (value == null) {
+throw new NullPointerException();
+}
+ensureLeftStoreIdIsMutable();
+leftStoreId_.add(value);
+return this;
+}
+public Builder addAllLeftStoreId(
+Iterable<? extends ByteString> values) {
+ensureLeftStoreIdIsMutable();
+AbstractMessageLite.Builder.addAll(
+values, leftStoreId_);
+return this;
+}
+public Builder clearLeftStoreId() {
+leftStoreId_ = Collections.emptyList();
+b0_ = (b0_ & ~0x00000008);
+return this;
+}
 }
 static {
 defaultInstance = new GetACLReply(true);
@@ -55814,7 +56013,7 @@ public ListenableFuture<Sp.GetCommandQueueHeadReply> getCommandQueueHead(ByteStr
 public ListenableFuture<Sp.AckCommandQueueHeadReply> ackCommandQueueHead(ByteString deviceId, Long epoch, Boolean error) throws Exception;
 public ListenableFuture<Common.Void> deleteOrganizationInvitationForUser(String userId) throws Exception;
 public ListenableFuture<Common.Void> setDeviceOSFamilyAndName(ByteString deviceId, String osFamily, String osName) throws Exception;
-public ListenableFuture<Sp.GetACLReply> getACL(Long epoch) throws Exception;
+public ListenableFuture<Sp.GetACLReply> getACL(Long epoch, Boolean incremental) throws Exception;
 public ListenableFuture<Sp.RecertifyDeviceReply> recertifyDevice(ByteString deviceId, ByteString csr) throws Exception;
 public ListenableFuture<Sp.RecertifyDeviceReply> recertifyTeamServerDevice(ByteString deviceId, ByteString csr) throws Exception;
 public ListenableFuture<Sp.GetOrganizationIDReply> getOrganizationID() throws Exception;
@@ -56277,7 +56476,8 @@ break;
 }
 case GET_ACL: {
 Sp.GetACLCall call = Sp.GetACLCall.parseFrom(p.getPayloadData());
-reply = _service.getACL(call.getEpoch());
+reply = _service.getACL(call.getEpoch(),
+call.hasIncremental() ? call.getIncremental() : null);
 break;
 }
 case RECERTIFY_DEVICE: {
@@ -57000,10 +57200,11 @@ bd.setOsFamily(osFamily);
 bd.setOsName(osName);
 return sendQuery(Sp.SPServiceReactor.ServiceRpcTypes.SET_DEVICE_OSFAMILY_AND_NAME, bd.build().toByteString(), Common.Void.newBuilder(), Common.Void.class);
 }
-public ListenableFuture<Sp.GetACLReply> getACL(Long epoch)
+public ListenableFuture<Sp.GetACLReply> getACL(Long epoch, Boolean incremental)
 {
 Sp.GetACLCall.Builder bd = Sp.GetACLCall.newBuilder();
 bd.setEpoch(epoch);
+if (incremental != null) { bd.setIncremental(incremental); }
 return sendQuery(Sp.SPServiceReactor.ServiceRpcTypes.GET_ACL, bd.build().toByteString(), Sp.GetACLReply.newBuilder(), Sp.GetACLReply.class);
 }
 public ListenableFuture<Sp.RecertifyDeviceReply> recertifyDevice(ByteString deviceId, ByteString csr)
@@ -58226,19 +58427,19 @@ if (e.getCause() instanceof Exception) {throw (Exception)e.getCause();}
 else {throw e;}
 }
 }
-public Sp.GetACLReply getACL(Long epoch) throws Exception
+public Sp.GetACLReply getACL(Long epoch, Boolean incremental) throws Exception
 {
 try {
-return get(_stub.getACL(epoch), Exception.class);
+return get(_stub.getACL(epoch, incremental), Exception.class);
 } catch (Exception e) {
 if (e.getCause() instanceof Exception) {throw (Exception)e.getCause();}
 else {throw e;}
 }
 }
-public Sp.GetACLReply getACL(Long epoch, long timeout, TimeUnit unit) throws Exception
+public Sp.GetACLReply getACL(Long epoch, Boolean incremental, long timeout, TimeUnit unit) throws Exception
 {
 try {
-return get(_stub.getACL(epoch), timeout, unit, Exception.class);
+return get(_stub.getACL(epoch, incremental), timeout, unit, Exception.class);
 } catch (Exception e) {
 if (e.getCause() instanceof Exception) {throw (Exception)e.getCause();}
 else {throw e;}
@@ -120,6 +120,7 @@ public abstract class Databases {
     private static void registerGauges(final BasicDataSource dataSource) {
         MetricRegistries.getRegistry().register(MetricRegistries.name("db", dataSource.getUrl(), "used"), (Gauge<Integer>) dataSource::getNumActive);
         MetricRegistries.getRegistry().register(MetricRegistries.name("db", dataSource.getUrl(), "idle"), (Gauge<Integer>) dataSource::getNumIdle);
+        MetricRegistries.getRegistry().register(MetricRegistries.name("db", dataSource.getUrl(), "max"), (Gauge<Integer>) dataSource::getMaxTotal);
     }
 
     /**
@@ -17,6 +17,8 @@
 package com.aerofs.baseline.db;
 
 import com.aerofs.baseline.Managed;
+import com.aerofs.baseline.metrics.MetricRegistries;
+import com.codahale.metrics.Timer;
 import org.apache.tomcat.dbcp.dbcp2.BasicDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,7 +37,8 @@ import java.sql.SQLFeatureNotSupportedException;
  * {@link Managed} interface, allowing the wrapped instance's
  * lifecycle to be managed by baseline.
  * <br>
- * All overridden methods from {@code DataSource} are pass-throughs.
+ * All overridden methods from {@code DataSource} are pass-throughs,
+ * except that the time taken to acquire a connection is recorded.
  * These methods should <strong>NOT</strong> be used once
  * {@link #stop()} is called.
  */
@@ -46,6 +49,7 @@ public final class ManagedDataSource implements Managed, DataSource {
     private static final Logger LOGGER = LoggerFactory.getLogger(ManagedDataSource.class);
 
     private final BasicDataSource dataSource;
+    private final Timer acquireTimer;
 
     /**
      * Constructor.
@@ -55,6 +59,7 @@ public final class ManagedDataSource implements Managed, DataSource {
     @Inject
     public ManagedDataSource(BasicDataSource dataSource) {
         this.dataSource = dataSource;
+        this.acquireTimer = MetricRegistries.getRegistry().timer(MetricRegistries.name("db", dataSource.getUrl(), "acquire"));
     }
 
     @Override
@@ -75,12 +80,23 @@ public final class ManagedDataSource implements Managed, DataSource {
 
     @Override
     public Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        // time spent waiting for a pooled connection
+        Timer.Context context = acquireTimer.time();
+        try {
+            return dataSource.getConnection();
+        } finally {
+            context.stop();
+        }
     }
 
     @Override
     public Connection getConnection(String username, String password) throws SQLException {
-        return dataSource.getConnection(username, password);
+        Timer.Context context = acquireTimer.time();
+        try {
+            return dataSource.getConnection(username, password);
+        } finally {
+            context.stop();
+        }
     }
 
     @Override
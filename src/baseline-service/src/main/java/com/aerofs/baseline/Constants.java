@@ -41,6 +41,7 @@ public abstract class Constants {
     // reserved admin root resource names
     public static final String COMMANDS_RESOURCE_PATH = "/commands";
     public static final String HEALTH_CHECK_RESOURCE_PATH = "/status";
+    public static final String METRICS_RESOURCE_PATH = "/metrics";
 
     // logging
     public static final String DEFAULT_LOG_LEVEL = Level.INFO.levelStr;
@@ -28,11 +28,13 @@ import com.aerofs.baseline.config.Configuration;
 import com.aerofs.baseline.config.ConfigurationBinder;
 import com.aerofs.baseline.http.HttpConfiguration;
 import com.aerofs.baseline.http.HttpServer;
+import com.aerofs.baseline.http.RouteMetricsListener;
 import com.aerofs.baseline.json.JsonProcessingExceptionMapper;
 import com.aerofs.baseline.json.ValidatingJacksonJaxbJsonProvider;
 import com.aerofs.baseline.logging.Logging;
 import com.aerofs.baseline.metrics.MetricRegistries;
 import com.aerofs.baseline.metrics.MetricsCommand;
+import com.aerofs.baseline.metrics.MetricsResource;
 import com.codahale.metrics.jvm.BufferPoolMetricSet;
 import com.codahale.metrics.jvm.GarbageCollectorMetricSet;
 import com.codahale.metrics.jvm.MemoryUsageGaugeSet;
@@ -215,6 +217,7 @@ public abstract class Service<T extends Configuration> {
         // add the resources we expose via the admin api
         environment.addAdminResource(CommandsResource.class);
         environment.addAdminResource(HealthCheckResource.class);
+        environment.addAdminResource(MetricsResource.class);
 
         // create the two environments (admin and service)
         String adminName = name + "-" + Constants.ADMIN_IDENTIFIER;
@@ -223,6 +226,9 @@ public abstract class Service<T extends Configuration> {
         String serviceName = name + "-" + Constants.SERVICE_IDENTIFIER;
         initializeJerseyApplication(serviceName, classLoader, validator, mapper, environment.getServiceResourceConfig(), configuration.getService());
 
+        // only time routes on the service environment; admin calls are rare and would clutter the metrics
+        environment.getServiceResourceConfig().register(new RouteMetricsListener());
+
         // punt to subclasses for further configuration
         init(configuration, environment);
 
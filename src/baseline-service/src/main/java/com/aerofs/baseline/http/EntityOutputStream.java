@@ -17,6 +17,7 @@
 package com.aerofs.baseline.http;
 
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.google.common.base.Preconditions;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
@@ -32,6 +33,7 @@ final class EntityOutputStream extends ContentOutputStream {
 
     private final ChannelHandlerContext ctx;
     private final Histogram contentLengthHistogram;
+    private final Meter bytesMeter;
 
     private boolean failed = false;
     private boolean closed = false;
@@ -40,9 +42,10 @@ final class EntityOutputStream extends ContentOutputStream {
     @Nullable
     private ByteBuf chunk;
 
-    public EntityOutputStream(ChannelHandlerContext ctx, Histogram contentLengthHistogram) {
+    public EntityOutputStream(ChannelHandlerContext ctx, Histogram contentLengthHistogram, Meter bytesMeter) {
         this.ctx = ctx;
         this.contentLengthHistogram = contentLengthHistogram;
+        this.bytesMeter = bytesMeter;
     }
 
     @Override
@@ -144,6 +147,7 @@ final class EntityOutputStream extends ContentOutputStream {
         Preconditions.checkNotNull(chunk, "null chunk prior to write");
         ByteBuf forwarded = chunk;
         chunk = null;
+        bytesMeter.mark(forwarded.readableBytes());
         ctx.write(new DefaultHttpContent(forwarded)); // pass ownership to next handler
     }
 
@@ -17,6 +17,7 @@
 package com.aerofs.baseline.http;
 
 import com.aerofs.baseline.metrics.MetricRegistries;
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
@@ -50,6 +51,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @NotThreadSafe
@@ -95,6 +97,10 @@ final class HttpRequestHandler extends ChannelInboundHandlerAdapter implements C
     private static final Meter SUCCESS_METER = MetricRegistries.getRegistry().meter(MetricRegistries.name("http", "request", "success"));
     private static final Meter FAILURE_METER = MetricRegistries.getRegistry().meter(MetricRegistries.name("http", "request", "failure"));
     private static final Histogram CONTENT_LENGTH_HISTOGRAM = MetricRegistries.getRegistry().histogram(MetricRegistries.name("http", "response", "content-length"));
+    private static final Timer QUEUE_WAIT_TIMER = MetricRegistries.getRegistry().timer(MetricRegistries.name("http", "request", "queue-wait"));
+    private static final Counter IN_FLIGHT_COUNTER = MetricRegistries.getRegistry().counter(MetricRegistries.name("http", "request", "in-flight"));
+    private static final Meter BYTES_IN_METER = MetricRegistries.getRegistry().meter(MetricRegistries.name("http", "request", "bytes"));
+    private static final Meter BYTES_OUT_METER = MetricRegistries.getRegistry().meter(MetricRegistries.name("http", "response", "bytes"));
 
     private static final MapPropertiesDelegate PROPERTIES_DELEGATE = new MapPropertiesDelegate();
 
@@ -253,6 +259,7 @@ final class HttpRequestHandler extends ChannelInboundHandlerAdapter implements C
             HttpContent content = (HttpContent) msg;
             boolean last = msg instanceof LastHttpContent;
             LOGGER.trace("{}: [{}] handling content:{} last:{}", Channels.getHexText(ctx), pendingRequest.requestId, content.content().readableBytes(), last);
+            BYTES_IN_METER.mark(content.content().readableBytes());
             pendingRequest.entityInputStream.addBuffer(content.content(), last); // transfers ownership to the HttpContentInputStream
 
             // FIXME (AG): support trailing headers
@@ -276,7 +283,13 @@ final class HttpRequestHandler extends ChannelInboundHandlerAdapter implements C
         // this may throw if the execution is rejected,
         // in which case the channel should be automatically closed
         // by a later handler in the chain
-        applicationExecutor.execute(requestRunnable);
+        // time spent waiting for an application thread, i.e. how
+        // far the request-processing threadpool is falling behind
+        Timer.Context queueWaitContext = QUEUE_WAIT_TIMER.time();
+        applicationExecutor.execute(() -> {
+            queueWaitContext.stop();
+            requestRunnable.run();
+        });
     }
 
     private void saveRequestRunnable(Runnable requestRunnable) {
@@ -313,6 +326,7 @@ final class HttpRequestHandler extends ChannelInboundHandlerAdapter implements C
     private final class PendingRequest implements ContainerResponseWriter {
 
         private final Timer.Context timerContext = REQUEST_TIMER.time();
+        private final AtomicBoolean closed = new AtomicBoolean(false);
         private final String requestId;
         private final HttpVersion httpVersion;
         private final boolean keepAlive;
@@ -331,6 +345,8 @@ final class HttpRequestHandler extends ChannelInboundHandlerAdapter implements C
             this.keepAlive = keepAlive;
             this.entityInputStream = entityInputStream;
             this.ctx = ctx;
+
+            IN_FLIGHT_COUNTER.inc();
         }
 
         // if this returns false then jersey never buffers
@@ -364,7 +380,7 @@ final class HttpRequestHandler extends ChannelInboundHandlerAdapter implements C
                 LOGGER.trace("{}: [{}] chunked", Channels.getHexText(ctx), requestId);
                 nettyResponse.headers().add(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
                 ctx.writeAndFlush(nettyResponse);
-                entityOutputStream = new EntityOutputStream(ctx, CONTENT_LENGTH_HISTOGRAM);
+                entityOutputStream = new EntityOutputStream(ctx, CONTENT_LENGTH_HISTOGRAM, BYTES_OUT_METER);
             } else if (contentLength == 0) {
                 LOGGER.trace("{}: [{}] no content", Channels.getHexText(ctx), requestId);
                 nettyResponse.headers().add(HttpHeaderNames.CONTENT_LENGTH, 0);
@@ -374,7 +390,7 @@ final class HttpRequestHandler extends ChannelInboundHandlerAdapter implements C
                 LOGGER.trace("{}: [{}] non-empty body", Channels.getHexText(ctx), requestId);
                 nettyResponse.headers().add(HttpHeaderNames.CONTENT_LENGTH, contentLength);
                 ctx.write(nettyResponse); // don't flush now - only do so when all the content is written
-                entityOutputStream = new EntityOutputStream(ctx, CONTENT_LENGTH_HISTOGRAM);
+                entityOutputStream = new EntityOutputStream(ctx, CONTENT_LENGTH_HISTOGRAM, BYTES_OUT_METER);
             }
 
             return entityOutputStream;
@@ -489,6 +505,12 @@ final class HttpRequestHandler extends ChannelInboundHandlerAdapter implements C
             // no matter what, I'll turn off the timers here
             timerContext.stop();
 
+            // may be called from both the request-processing thread
+            // and the IO thread, so only count the request out once
+            if (closed.compareAndSet(false, true)) {
+                IN_FLIGHT_COUNTER.dec();
+            }
+
             try {
                 Closeables.close(entityInputStream, true);
             } catch (IOException e) {
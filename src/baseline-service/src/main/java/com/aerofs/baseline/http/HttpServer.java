@@ -18,6 +18,8 @@ package com.aerofs.baseline.http;
 
 import com.aerofs.baseline.Managed;
 import com.aerofs.baseline.Threads;
+import com.aerofs.baseline.metrics.MetricRegistries;
+import com.codahale.metrics.Gauge;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
@@ -30,8 +32,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.net.URI;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static io.netty.channel.ChannelOption.ALLOCATOR;
 import static io.netty.channel.ChannelOption.AUTO_READ;
@@ -45,7 +48,7 @@ public final class HttpServer implements Managed {
     private final String serverIdentifier;
     private final String host;
     private final short port;
-    private final ExecutorService requestProcessingExecutor;
+    private final ThreadPoolExecutor requestProcessingExecutor;
     private final NioEventLoopGroup bossEventLoopGroup;
     private final NioEventLoopGroup workEventLoopGroup;
     private final ServerBootstrap bootstrap;
@@ -58,7 +61,7 @@ public final class HttpServer implements Managed {
         this.serverIdentifier = serverIdentifier;
         this.host = http.getHost();
         this.port = http.getPort();
-        this.requestProcessingExecutor = Executors.newFixedThreadPool(http.getNumRequestProcessingThreads(), Threads.newNamedThreadFactory(serverIdentifier + "-requests-%d"));
+        this.requestProcessingExecutor = new ThreadPoolExecutor(http.getNumRequestProcessingThreads(), http.getNumRequestProcessingThreads(), 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), Threads.newNamedThreadFactory(serverIdentifier + "-requests-%d"));
         this.bossEventLoopGroup = new NioEventLoopGroup(com.aerofs.baseline.http.Constants.DEFAULT_NUM_BOSS_THREADS, Threads.newNamedThreadFactory(serverIdentifier + "-nio-boss-%d"));
         this.workEventLoopGroup = new NioEventLoopGroup(http.getNumNetworkThreads(), Threads.newNamedThreadFactory(serverIdentifier + "-nio-work-%d"));
         this.bootstrap = new ServerBootstrap();
@@ -75,6 +78,11 @@ public final class HttpServer implements Managed {
     @Override
     public void start() throws Exception {
         LOGGER.info("bind {}-http to {}:{}", serverIdentifier, host, port);
+
+        // requests accepted but not yet picked up by a request-processing thread
+        MetricRegistries.getRegistry().register(getExecutorMetricName("queued"), (Gauge<Integer>) () -> requestProcessingExecutor.getQueue().size());
+        MetricRegistries.getRegistry().register(getExecutorMetricName("active"), (Gauge<Integer>) requestProcessingExecutor::getActiveCount);
+
         listenChannel = bootstrap.bind(host, port).sync().channel();
     }
 
@@ -94,5 +102,12 @@ public final class HttpServer implements Managed {
         workEventLoopGroup.shutdownGracefully();
 
         requestProcessingExecutor.shutdownNow();
+
+        MetricRegistries.getRegistry().remove(getExecutorMetricName("queued"));
+        MetricRegistries.getRegistry().remove(getExecutorMetricName("active"));
+    }
+
+    private String getExecutorMetricName(String name) {
+        return MetricRegistries.name("http", serverIdentifier, "executor", name);
     }
 }
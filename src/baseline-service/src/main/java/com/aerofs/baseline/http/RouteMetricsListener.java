@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Air Computing Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.aerofs.baseline.http;
+
+import com.aerofs.baseline.metrics.MetricRegistries;
+import com.codahale.metrics.Timer;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.glassfish.jersey.uri.UriTemplate;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jersey event listener that records the latency of
+ * each request in a timer specific to the route it matched.
+ * <p>
+ * Timers are named {@code http.route.latency} and labeled
+ * with the request method and the route template (for example
+ * {@code /files/{file_id}}) so that the number of timers is
+ * bounded by the number of resource methods and not by the number
+ * of distinct request URIs. Requests that match no resource method
+ * are recorded under the {@code unmatched} route.
+ * <p>
+ * Latency is measured from the moment jersey starts processing
+ * the request to the moment the response has been written, and does
+ * not include the time spent waiting for a request-processing thread.
+ */
+@ThreadSafe
+public final class RouteMetricsListener implements ApplicationEventListener {
+
+    private static final String ROUTE_LATENCY_METRIC_NAME = "http.route.latency";
+    private static final String UNMATCHED_ROUTE = "unmatched";
+
+    // the timer name is only computed once per resource method
+    private final ConcurrentMap<ResourceMethod, Timer> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+        // noop
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        long start = System.nanoTime();
+
+        return event -> {
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                getTimer(event).update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private Timer getTimer(RequestEvent event) {
+        ExtendedUriInfo uriInfo = event.getUriInfo();
+        ResourceMethod resourceMethod = uriInfo.getMatchedResourceMethod();
+
+        if (resourceMethod == null) {
+            String method = event.getContainerRequest().getMethod();
+            return MetricRegistries.getRegistry().timer(MetricRegistries.labeled(ROUTE_LATENCY_METRIC_NAME, "method", method, "route", UNMATCHED_ROUTE));
+        }
+
+        Timer timer = timers.get(resourceMethod);
+        if (timer == null) {
+            String name = MetricRegistries.labeled(ROUTE_LATENCY_METRIC_NAME, "method", resourceMethod.getHttpMethod(), "route", getRoute(uriInfo.getMatchedTemplates()));
+            timer = MetricRegistries.getRegistry().timer(name);
+            timers.putIfAbsent(resourceMethod, timer);
+        }
+
+        return timer;
+    }
+
+    // matched templates are ordered from the most specific to the root resource
+    private static String getRoute(List<UriTemplate> templates) {
+        StringBuilder route = new StringBuilder();
+
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            String template = templates.get(i).getTemplate();
+
+            if (template.isEmpty() || template.equals("/")) {
+                continue;
+            }
+
+            if (template.charAt(0) != '/') {
+                route.append('/');
+            }
+
+            route.append(template.endsWith("/") ? template.substring(0, template.length() - 1) : template);
+        }
+
+        return route.length() == 0 ? "/" : route.toString();
+    }
+}
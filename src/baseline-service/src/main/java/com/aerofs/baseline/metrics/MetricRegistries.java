@@ -17,6 +17,7 @@
 package com.aerofs.baseline.metrics;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Preconditions;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
@@ -38,6 +39,36 @@ public abstract class MetricRegistries {
         return MetricRegistry.name(name, names);
     }
 
+    /**
+     * Return the name of a metric that carries labels, e.g. {@code labeled("http.route.latency", "method", "GET")}
+     * returns {@code http.route.latency{method="GET"}}.
+     * <p>
+     * Labels are kept in the metric name so that the dropwizard registry
+     * can hold them; they are split back out by {@link MetricsTextFormat}.
+     *
+     * @param name base name of the metric
+     * @param labels alternating label names and values
+     * @return the labeled metric name
+     */
+    public static String labeled(String name, String ... labels) {
+        Preconditions.checkArgument(labels.length % 2 == 0, "labels must be name-value pairs");
+
+        if (labels.length == 0) {
+            return name;
+        }
+
+        StringBuilder builder = new StringBuilder(name).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"");
+            MetricsTextFormat.escapeLabelValue(builder, labels[i + 1]);
+            builder.append('"');
+        }
+        return builder.append('}').toString();
+    }
+
     public static void unregisterMetrics() {
         MetricRegistry registry = MetricRegistries.getRegistry();
         registry.removeMatching((name, metric) -> true);
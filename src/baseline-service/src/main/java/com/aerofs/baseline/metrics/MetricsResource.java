@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Air Computing Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.aerofs.baseline.metrics;
+
+import com.aerofs.baseline.Constants;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Response;
+
+/**
+ * Root resource class that exposes all the metrics in
+ * {@link MetricRegistries#getRegistry()} in the plain-text
+ * format written by {@link MetricsTextFormat}.
+ * <p>
+ * Unlike the {@code metrics} command this resource is
+ * meant to be polled periodically by a metrics scraper.
+ * <p>
+ * This resource is accessed via:
+ * <pre>
+ *     curl http://service_url:service_admin_port/metrics
+ * </pre>
+ */
+@Path(Constants.METRICS_RESOURCE_PATH)
+@ThreadSafe
+@Singleton
+public final class MetricsResource {
+
+    private static final int DEFAULT_RESPONSE_ENTITY_LENGTH = 16 * 1024;
+
+    @GET
+    public Response getMetrics() {
+        StringBuilder entity = new StringBuilder(DEFAULT_RESPONSE_ENTITY_LENGTH);
+        MetricsTextFormat.write(MetricRegistries.getRegistry(), entity);
+
+        return Response
+                .ok(entity.toString())
+                .type(MetricsTextFormat.CONTENT_TYPE)
+                .build();
+    }
+}
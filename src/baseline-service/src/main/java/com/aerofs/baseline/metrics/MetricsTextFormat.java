@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 Air Computing Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.aerofs.baseline.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the contents of a {@link MetricRegistry} in the
+ * plain-text exposition format understood by Prometheus
+ * and compatible scrapers.
+ * <p>
+ * Metrics are mapped as follows:
+ * <ul>
+ *     <li>{@link Counter}: {@code gauge} (dropwizard counters can be decremented)</li>
+ *     <li>{@link Gauge}: {@code gauge} (non-numeric gauges are skipped)</li>
+ *     <li>{@link Meter}: {@code counter} with a {@code _total} suffix</li>
+ *     <li>{@link Histogram}: {@code summary}</li>
+ *     <li>{@link Timer}: {@code summary} in seconds</li>
+ * </ul>
+ * Names are sanitized by replacing every character outside
+ * {@code [a-zA-Z0-9_:]} with an underscore, so that {@code http.request.service-time}
+ * is exposed as {@code http_request_service_time}. Labels created via
+ * {@link MetricRegistries#labeled(String, String...)} are passed through.
+ */
+@ThreadSafe
+public abstract class MetricsTextFormat {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99, 0.999};
+    private static final double NANOSECONDS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @SuppressWarnings("rawtypes")
+    public static void write(MetricRegistry registry, StringBuilder out) {
+        // labeled variants of a metric share one TYPE line
+        Set<String> typed = new HashSet<>();
+
+        for (Map.Entry<String, Metric> entry : registry.getMetrics().entrySet()) {
+            String key = entry.getKey();
+            Metric metric = entry.getValue();
+
+            int labelStart = key.indexOf('{');
+            String name = sanitize(labelStart < 0 ? key : key.substring(0, labelStart));
+            String labels = labelStart < 0 || !key.endsWith("}") ? "" : key.substring(labelStart + 1, key.length() - 1);
+
+            if (metric instanceof Counter) {
+                writeType(out, typed, name, "gauge");
+                writeSample(out, name, labels, ((Counter) metric).getCount());
+            } else if (metric instanceof Gauge) {
+                Object value = ((Gauge) metric).getValue();
+                if (value instanceof Number) {
+                    writeType(out, typed, name, "gauge");
+                    writeSample(out, name, labels, ((Number) value).doubleValue());
+                } else if (value instanceof Boolean) {
+                    writeType(out, typed, name, "gauge");
+                    writeSample(out, name, labels, (Boolean) value ? 1 : 0);
+                }
+            } else if (metric instanceof Meter) {
+                String total = name + "_total";
+                writeType(out, typed, total, "counter");
+                writeSample(out, total, labels, ((Meter) metric).getCount());
+            } else if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                writeType(out, typed, name, "summary");
+                writeSummary(out, name, labels, histogram.getSnapshot(), histogram.getCount(), 1.0);
+            } else if (metric instanceof Timer) {
+                Timer timer = (Timer) metric;
+                String seconds = name + "_seconds";
+                writeType(out, typed, seconds, "summary");
+                writeSummary(out, seconds, labels, timer.getSnapshot(), timer.getCount(), NANOSECONDS_PER_SECOND);
+            }
+        }
+    }
+
+    private static void writeSummary(StringBuilder out, String name, String labels, Snapshot snapshot, long count, double divisor) {
+        for (double quantile : QUANTILES) {
+            String quantileLabel = "quantile=\"" + quantile + "\"";
+            writeSample(out, name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel, snapshot.getValue(quantile) / divisor);
+        }
+
+        writeSample(out, name + "_count", labels, count);
+    }
+
+    private static void writeType(StringBuilder out, Set<String> typed, String name, String type) {
+        if (typed.add(name)) {
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, long value) {
+        writeName(out, name, labels);
+        out.append(value).append('\n');
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value) {
+        writeName(out, name, labels);
+
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            out.append(value > 0 ? "+Inf" : "-Inf");
+        } else {
+            out.append(value);
+        }
+
+        out.append('\n');
+    }
+
+    private static void writeName(StringBuilder out, String name, String labels) {
+        out.append(name);
+
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+
+        out.append(' ');
+    }
+
+    static String sanitize(String name) {
+        StringBuilder builder = new StringBuilder(name.length() + 1);
+
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':' || (c >= '0' && c <= '9' && i > 0);
+
+            if (i == 0 && c >= '0' && c <= '9') {
+                builder.append('_');
+                valid = true;
+            }
+
+            builder.append(valid ? c : '_');
+        }
+
+        return builder.toString();
+    }
+
+    static void escapeLabelValue(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '\\' || c == '"') {
+                builder.append('\\').append(c);
+            } else if (c == '\n') {
+                builder.append("\\n");
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    private MetricsTextFormat() {
+        // to prevent instantiation by subclasses
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Air Computing Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.aerofs.baseline.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+public final class TestMetricsTextFormat {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    public void shouldSanitizeMetricNames() {
+        assertThat(MetricsTextFormat.sanitize("http.request.service-time"), equalTo("http_request_service_time"));
+        assertThat(MetricsTextFormat.sanitize("2xx"), equalTo("_2xx"));
+    }
+
+    @Test
+    public void shouldEscapeLabelValues() {
+        assertThat(MetricRegistries.labeled("m", "k", "a\"b\\c"), equalTo("m{k=\"a\\\"b\\\\c\"}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnpairedLabels() {
+        MetricRegistries.labeled("m", "k");
+    }
+
+    @Test
+    public void shouldWriteCountersAndGauges() {
+        registry.counter("http.request.in-flight").inc(3);
+        registry.register("db.used", (Gauge<Integer>) () -> 7);
+        registry.register("jvm.name", (Gauge<String>) () -> "hotspot");
+
+        String output = write();
+
+        assertThat(output, containsString("# TYPE http_request_in_flight gauge\nhttp_request_in_flight 3\n"));
+        assertThat(output, containsString("# TYPE db_used gauge\ndb_used 7.0\n"));
+        assertThat(output, not(containsString("jvm_name")));
+    }
+
+    @Test
+    public void shouldWriteMetersAsCounters() {
+        registry.meter("http.response.2xx").mark(2);
+
+        assertThat(write(), equalTo("# TYPE http_response_2xx_total counter\nhttp_response_2xx_total 2\n"));
+    }
+
+    @Test
+    public void shouldWriteLabeledTimersAsSummariesInSeconds() {
+        registry.timer(MetricRegistries.labeled("http.route.latency", "method", "GET", "route", "/a")).update(2, TimeUnit.SECONDS);
+        registry.timer(MetricRegistries.labeled("http.route.latency", "method", "PUT", "route", "/a")).update(1, TimeUnit.SECONDS);
+
+        String output = write();
+
+        // only one TYPE line for all the labeled variants
+        assertThat(output.indexOf("# TYPE http_route_latency_seconds summary\n"), equalTo(0));
+        assertThat(output.lastIndexOf("# TYPE"), equalTo(0));
+        assertThat(output, containsString("http_route_latency_seconds{method=\"GET\",route=\"/a\",quantile=\"0.99\"} 2.0\n"));
+        assertThat(output, containsString("http_route_latency_seconds_count{method=\"PUT\",route=\"/a\"} 1\n"));
+    }
+
+    private String write() {
+        StringBuilder out = new StringBuilder();
+        MetricsTextFormat.write(registry, out);
+        return out.toString();
+    }
+}
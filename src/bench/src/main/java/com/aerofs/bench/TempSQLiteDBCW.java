@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.bench;
+
+import com.aerofs.lib.db.dbcw.SQLiteDBCW;
+import com.aerofs.lib.log.LogUtil;
+import com.aerofs.lib.log.LogUtil.Level;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * A SQLite DBCW backed by a temporary file, configured as the core database is, for benchmarks
+ * that should include the cost of going to disk. The file is deleted by fini_().
+ */
+public class TempSQLiteDBCW extends SQLiteDBCW
+{
+    static {
+        // the databases log at debug level on some hot paths
+        LogUtil.setLevel(Level.NONE);
+    }
+
+    private final File _f;
+
+    public static TempSQLiteDBCW create() throws IOException
+    {
+        File f = File.createTempFile("bench", ".db");
+        f.deleteOnExit();
+        return new TempSQLiteDBCW(f);
+    }
+
+    private TempSQLiteDBCW(File f)
+    {
+        super("jdbc:sqlite:" + f.getAbsolutePath(), false, true, true);
+        _f = f;
+    }
+
+    @Override
+    public void fini_() throws SQLException
+    {
+        super.fini_();
+        for (String suffix : new String[] { "", "-wal", "-shm" }) {
+            new File(_f.getAbsolutePath() + suffix).delete();
+        }
+    }
+}
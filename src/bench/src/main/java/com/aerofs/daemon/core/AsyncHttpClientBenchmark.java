@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core;
+
+import com.aerofs.base.BaseUtil;
+import com.aerofs.base.ssl.SSLEngineFactory;
+import com.aerofs.base.ssl.SSLEngineFactory.Mode;
+import com.aerofs.base.ssl.SSLEngineFactory.Platform;
+import com.aerofs.daemon.core.polaris.async.AsyncTaskCallback;
+import com.aerofs.ids.DID;
+import com.aerofs.ids.UniqueID;
+import com.aerofs.ids.UserID;
+import com.aerofs.lib.event.Prio;
+import com.aerofs.testlib.TempCert;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpServerCodec;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Latency of polaris fetches in the presence of concurrent bulk submissions, with a single
+ * connection and with the default connection pool.
+ *
+ * A local HTTPS server stands in for polaris. Like polaris, it takes longer to process larger
+ * submissions. Submitters mimic ContentChangeSubmitter/MetaChangeSubmitter: each one POSTs a
+ * batch of transforms as soon as the previous one is acknowledged. Fetchers mimic ChangeFetcher:
+ * each one GETs a page of transforms as soon as the previous one is received. All requests are
+ * sent, and all callbacks invoked, from a single thread, which stands in for the core.
+ *
+ * The sampled times of the fetch and submit methods are the latencies of fetches and of
+ * submissions, from which the submission throughput follows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AsyncHttpClientBenchmark
+{
+    // polaris processing rate for submitted transforms
+    private static final int SUBMIT_BYTES_PER_MS = 10 * 1024;
+    private static final byte[] FETCH_RESPONSE =
+            BaseUtil.string2utf(Strings.repeat(" ", 64 * 1024));
+    private static final byte[] SUBMIT_RESPONSE = BaseUtil.string2utf("{\"results\":[]}");
+
+    @Param({"single", "pooled"})
+    String connections;
+
+    @Param({"512"})
+    int batchKB;
+
+    @Param({"20"})
+    int latencyMs;
+
+    private final UserID _user = UserID.fromInternal("foo@bar.baz");
+    private final DID _did = DID.generate();
+
+    private Timer _timer;
+    private ClientSocketChannelFactory _clientChannelFactory;
+    private TempCert _ca;
+    private ServerBootstrap _server;
+    private ExecutorService _core;
+    private AsyncHttpClient _client;
+    private String _batch;
+
+    private static class Pending
+    {
+        final HttpResponse response;
+        boolean ready;
+
+        Pending(HttpResponse response)
+        {
+            this.response = response;
+        }
+    }
+
+    /**
+     * Responds after a delay that depends on the size of the request
+     *
+     * Responses are sent in request order, as required by HTTP/1.1 pipelining.
+     */
+    private class Responder extends SimpleChannelUpstreamHandler
+    {
+        private final Queue<Pending> _pending = new ArrayDeque<>();
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent ev)
+        {
+            HttpRequest req = (HttpRequest)ev.getMessage();
+            int size = req.getContent().readableBytes();
+            byte[] body = req.getMethod().equals(HttpMethod.GET) ? FETCH_RESPONSE : SUBMIT_RESPONSE;
+
+            HttpResponse resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+                    HttpResponseStatus.OK);
+            resp.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+            resp.headers().set(HttpHeaders.Names.CONTENT_LENGTH, body.length);
+            resp.setContent(ChannelBuffers.wrappedBuffer(body));
+
+            Pending p = new Pending(resp);
+            synchronized (this) {
+                _pending.add(p);
+            }
+            _timer.newTimeout(t -> flush(ctx.getChannel(), p),
+                    latencyMs + size / SUBMIT_BYTES_PER_MS, TimeUnit.MILLISECONDS);
+        }
+
+        // NB: only ever called from the timer thread
+        private void flush(Channel c, Pending done)
+        {
+            List<HttpResponse> ready = new ArrayList<>();
+            synchronized (this) {
+                done.ready = true;
+                while (!_pending.isEmpty() && _pending.peek().ready) {
+                    ready.add(_pending.poll().response);
+                }
+            }
+            for (HttpResponse r : ready) c.write(r);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        _batch = Strings.repeat("x", batchKB * 1024);
+        _timer = new HashedWheelTimer();
+        _clientChannelFactory = new NioClientSocketChannelFactory(newCachedThreadPool(),
+                newCachedThreadPool(), 1, 2);
+        _ca = TempCert.generateCA();
+
+        TempCert cert = TempCert.generateDaemon(UserID.DUMMY, new DID(UniqueID.ZERO), _ca);
+        SSLEngineFactory serverSsl = SSLEngineFactory.newServerFactory(cert, _ca);
+        _server = new ServerBootstrap(
+                new NioServerSocketChannelFactory(newCachedThreadPool(), newCachedThreadPool()));
+        _server.setPipelineFactory(() -> Channels.pipeline(
+                serverSsl.newSslHandler(),
+                new HttpServerCodec(),
+                new HttpChunkAggregator(64 * 1024 * 1024),
+                new Responder()));
+        Channel c = _server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        int port = ((InetSocketAddress)c.getLocalAddress()).getPort();
+
+        _core = Executors.newSingleThreadExecutor();
+        SSLEngineFactory ssl = new SSLEngineFactory(Mode.Client, Platform.Desktop,
+                TempCert.generateDaemon(_user, _did, _ca), _ca, null);
+        _client = new AsyncHttpClient(URI.create("https://localhost:" + port), _core,
+                new AsyncHttpClient.Auth(_user, _did), _timer, _clientChannelFactory, ssl,
+                connections.equals("single") ? 1 : AsyncHttpClient.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        _core.shutdown();
+        _server.releaseExternalResources();
+        _clientChannelFactory.releaseExternalResources();
+        _timer.stop();
+        _ca.cleanup();
+    }
+
+    @Benchmark
+    @Group("traffic")
+    @GroupThreads(2)
+    public void submit() throws Exception
+    {
+        SettableFuture<Boolean> f = SettableFuture.create();
+        _core.execute(() -> _client.post("/batch/transforms",
+                Collections.singletonMap("operations", _batch), Prio.LO,
+                new AsyncTaskCallback() {
+                    @Override
+                    public void onSuccess_(boolean hasMore)
+                    {
+                        f.set(hasMore);
+                    }
+
+                    @Override
+                    public void onFailure_(Throwable t)
+                    {
+                        f.setException(t);
+                    }
+                }, r -> false));
+        f.get();
+    }
+
+    @Benchmark
+    @Group("traffic")
+    @GroupThreads(4)
+    public int fetch() throws Exception
+    {
+        HttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+                "/transforms/" + Thread.currentThread().getId() + "?since=0&count=100");
+        req.headers().set(HttpHeaders.Names.CONTENT_LENGTH, "0");
+        SettableFuture<Integer> f = SettableFuture.create();
+        _core.execute(() -> _client.send(req, r -> r.getStatus().getCode(),
+                new FutureCallback<Integer>() {
+                    @Override
+                    public void onSuccess(Integer status)
+                    {
+                        f.set(status);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t)
+                    {
+                        f.setException(t);
+                    }
+                }));
+        return f.get();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.ds;
+
+import com.aerofs.base.ex.ExNotFound;
+import com.aerofs.bench.TempSQLiteDBCW;
+import com.aerofs.daemon.core.alias.MapAlias2Target;
+import com.aerofs.daemon.core.ds.OA.Type;
+import com.aerofs.daemon.core.multiplicity.singleuser.SingleuserPathResolver;
+import com.aerofs.daemon.core.multiplicity.singleuser.SingleuserStoreHierarchy;
+import com.aerofs.daemon.core.store.IMapSID2SIndex;
+import com.aerofs.daemon.core.store.IMapSIndex2SID;
+import com.aerofs.daemon.core.store.StoreCreationOperators;
+import com.aerofs.daemon.core.store.StoreDeletionOperators;
+import com.aerofs.daemon.lib.db.AliasDatabase;
+import com.aerofs.daemon.lib.db.CoreSchema;
+import com.aerofs.daemon.lib.db.MetaDatabase;
+import com.aerofs.daemon.lib.db.StoreDatabase;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.ids.OID;
+import com.aerofs.ids.SID;
+import com.aerofs.lib.Path;
+import com.aerofs.lib.id.SIndex;
+import com.aerofs.lib.id.SOID;
+import com.aerofs.lib.injectable.InjectableDriver;
+import com.aerofs.lib.os.OSUtil;
+import com.google.common.util.concurrent.Futures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.Statement;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Object lookups in the directory service of a single store, backed by a temporary database.
+ * The store has a chain of DEPTH folders with the given number of files in the deepest one,
+ * which are looked up in a scattered order. The OA and path caches hold 10K entries, so lookups
+ * mostly hit the cache with 1000 objects and mostly miss it with 100000.
+ *
+ *      getOA           OA of a file, as used all over the core
+ *      resolve         path of a file, which looks up the OAs of all its ancestors
+ *      resolvePath     object at the path of a file, which looks up each path component
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DirectoryServiceBenchmark
+{
+    private static final int DEPTH = 8;
+
+    @Param({"1000", "100000"})
+    int objects;
+
+    private final SID _sid = SID.generate();
+    private final SIndex _sidx = new SIndex(1);
+
+    private TempSQLiteDBCW _dbcw;
+    private final DirectoryServiceImpl _ds = new DirectoryServiceImpl();
+
+    private SOID[] _soids;
+    private Path[] _paths;
+    private int _i;
+
+    /**
+     * The only store, which is the root store
+     */
+    private class StoreMap implements IMapSID2SIndex, IMapSIndex2SID
+    {
+        @Override
+        public Future<SIndex> wait_(SID sid)
+        {
+            return Futures.immediateFuture(get_(sid));
+        }
+
+        @Override
+        public @Nullable SIndex getNullable_(SID sid)
+        {
+            return sid.equals(_sid) ? _sidx : null;
+        }
+
+        @Override
+        public @Nonnull SIndex get_(SID sid)
+        {
+            SIndex sidx = getNullable_(sid);
+            if (sidx == null) throw new IllegalArgumentException(sid.toString());
+            return sidx;
+        }
+
+        @Override
+        public @Nonnull SIndex getThrows_(SID sid) throws ExNotFound
+        {
+            SIndex sidx = getNullable_(sid);
+            if (sidx == null) throw new ExNotFound(sid.toString());
+            return sidx;
+        }
+
+        @Override
+        public @Nullable SIndex getLocalOrAbsentNullable_(SID sid)
+        {
+            return getNullable_(sid);
+        }
+
+        @Override
+        public @Nonnull SIndex getAbsent_(SID sid, Trans t)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public @Nullable SID getNullable_(SIndex sidx)
+        {
+            return sidx.equals(_sidx) ? _sid : null;
+        }
+
+        @Override
+        public @Nonnull SID get_(SIndex sidx)
+        {
+            SID sid = getNullable_(sidx);
+            if (sid == null) throw new IllegalArgumentException(sidx.toString());
+            return sid;
+        }
+
+        @Override
+        public @Nonnull SID getThrows_(SIndex sidx) throws ExNotFound
+        {
+            SID sid = getNullable_(sidx);
+            if (sid == null) throw new ExNotFound(sidx.toString());
+            return sid;
+        }
+
+        @Override
+        public @Nonnull SID getAbsent_(SIndex sidx)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public @Nonnull SID getLocalOrAbsent_(SIndex sidx)
+        {
+            return get_(sidx);
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        _dbcw = TempSQLiteDBCW.create();
+        _dbcw.init_();
+        try (Statement s = _dbcw.getConnection().createStatement()) {
+            // the length of FIDs comes from the native driver, loaded as in unit tests
+            new CoreSchema(new InjectableDriver(OSUtil.get())).create_(s, _dbcw);
+        }
+        _dbcw.commit_();
+
+        TransManager tm = new TransManager(new Trans.Factory(_dbcw));
+        StoreDatabase sdb = new StoreDatabase(_dbcw);
+        MetaDatabase mdb = new MetaDatabase(_dbcw, new StoreCreationOperators());
+        StoreMap sm = new StoreMap();
+
+        _ds.inject_(mdb, new MapAlias2Target(new AliasDatabase(_dbcw)), tm, sm, sm,
+                new StoreDeletionOperators(),
+                new SingleuserPathResolver.Factory(new SingleuserStoreHierarchy(sdb), sm, sm));
+
+        _soids = new SOID[objects];
+        _paths = new Path[objects];
+        try (Trans t = tm.begin_()) {
+            sdb.insert_(_sidx, "", t);
+            mdb.createStore_(_sidx, t);
+
+            OID parent = OID.ROOT;
+            StringBuilder dir = new StringBuilder();
+            for (int d = 0; d < DEPTH; d++) {
+                OID oid = OID.generate();
+                mdb.insertOA_(_sidx, oid, parent, "d" + d, Type.DIR, 0, t);
+                dir.append("d").append(d).append('/');
+                parent = oid;
+            }
+            for (int i = 0; i < objects; i++) {
+                OID oid = OID.generate();
+                mdb.insertOA_(_sidx, oid, parent, "f" + i, Type.FILE, 0, t);
+                _soids[i] = new SOID(_sidx, oid);
+                _paths[i] = Path.fromString(_sid, dir + "f" + i);
+            }
+            t.commit_();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        _dbcw.fini_();
+    }
+
+    /**
+     * @return the next object to look up. A large odd stride scatters consecutive lookups
+     */
+    private int next()
+    {
+        _i = (_i + 7919) % objects;
+        return _i;
+    }
+
+    @Benchmark
+    public OA getOA() throws Exception
+    {
+        return _ds.getOA_(_soids[next()]);
+    }
+
+    @Benchmark
+    public ResolvedPath resolve() throws Exception
+    {
+        return _ds.resolve_(_soids[next()]);
+    }
+
+    @Benchmark
+    public SOID resolvePath() throws Exception
+    {
+        return _ds.resolveNullable_(_paths[next()]);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.block;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.base.BaseUtil;
+import com.aerofs.bench.TempSQLiteDBCW;
+import com.aerofs.daemon.core.phy.block.BlockStorageDatabase.FileInfo;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.lib.ContentBlockHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Block storage database operations on a temporary database holding the given number of files,
+ * of one block each, which are accessed in a scattered order:
+ *
+ *      getFileIndex    internal name to file index, as done on every file access
+ *      getFileInfo     current version, length and blocks of a file
+ *      updateFileInfo  new version of a file and reference to its block, in a transaction
+ *      putBlock        new block, in a transaction, as when a file is written
+ *
+ * The transactions are committed to disk, as in the daemon.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BlockStorageDatabaseBenchmark
+{
+    @Param({"1000", "100000"})
+    int files;
+
+    private TempSQLiteDBCW _dbcw;
+    private TransManager _tm;
+    private BlockStorageDatabase _bsdb;
+
+    private String[] _names;
+    private long[] _ids;
+    private ContentBlockHash[] _blocks;
+    private int _i;
+    private long _newBlocks;
+
+    private static ContentBlockHash block(long n)
+    {
+        return new ContentBlockHash(BaseSecUtil.hash(BaseUtil.toByteArray(n)));
+    }
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        _dbcw = TempSQLiteDBCW.create();
+        _dbcw.init_();
+        try (Statement s = _dbcw.getConnection().createStatement()) {
+            new BlockStorageSchema().create_(s, _dbcw);
+        }
+        _dbcw.commit_();
+
+        _tm = new TransManager(new Trans.Factory(_dbcw));
+        _bsdb = new BlockStorageDatabase(_dbcw);
+        _bsdb.init_();
+
+        _names = new String[files];
+        _ids = new long[files];
+        _blocks = new ContentBlockHash[files];
+        try (Trans t = _tm.begin_()) {
+            for (int i = 0; i < files; i++) {
+                _names[i] = "f" + i;
+                _ids[i] = _bsdb.getOrCreateFileIndex_(_names[i], t);
+                _blocks[i] = block(i);
+                _bsdb.prePutBlock_(_blocks[i], 1024, t);
+                _bsdb.updateFileInfo_(new FileInfo(_ids[i], 0, 1024, 0, _blocks[i]), t);
+            }
+            t.commit_();
+        }
+        _newBlocks = files;
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException
+    {
+        _dbcw.fini_();
+    }
+
+    /**
+     * @return the next file to access. A large odd stride scatters consecutive accesses
+     */
+    private int next()
+    {
+        _i = (_i + 7919) % files;
+        return _i;
+    }
+
+    @Benchmark
+    public long getFileIndex() throws SQLException
+    {
+        return _bsdb.getFileIndex_(_names[next()]);
+    }
+
+    @Benchmark
+    public FileInfo getFileInfo() throws SQLException
+    {
+        return _bsdb.getFileInfo_(_ids[next()]);
+    }
+
+    @Benchmark
+    public void updateFileInfo() throws SQLException
+    {
+        int i = next();
+        try (Trans t = _tm.begin_()) {
+            _bsdb.updateFileInfo_(new FileInfo(_ids[i], 0, 1024, System.currentTimeMillis(),
+                    _blocks[i]), t);
+            t.commit_();
+        }
+    }
+
+    @Benchmark
+    public void putBlock() throws SQLException
+    {
+        ContentBlockHash block = block(_newBlocks++);
+        try (Trans t = _tm.begin_()) {
+            _bsdb.prePutBlock_(block, 1024, t);
+            _bsdb.incBlockCount_(block, t);
+            t.commit_();
+        }
+    }
+}
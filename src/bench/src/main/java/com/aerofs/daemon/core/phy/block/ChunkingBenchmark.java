@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.block;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.base.BaseUtil;
+import com.aerofs.base.C;
+import com.aerofs.lib.ClientParam;
+import com.google.common.collect.Sets;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare dedup ratio and ingest throughput of fixed-size and content-defined chunking
+ *
+ * The workload is a synthetic file that goes through a series of revisions, each of which inserts
+ * and deletes a handful of small byte ranges at random offsets, which is representative of edits
+ * made to VM images, PSTs and other large structured files. Each operation chunks and hashes all
+ * the revisions. The dedup counter is the ratio of the size of the revisions to the size of the
+ * distinct blocks, and the blocks counter the number of blocks. JMH sums event counters over the measured iterations, divide them by the operations
+ * counter for the value per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkingBenchmark
+{
+    @Param({"fixed", "content-defined"})
+    String chunking;
+
+    @Param({"64"})
+    int sizeMB;
+
+    @Param({"8"})
+    int revisions;
+
+    @Param({"4"})
+    int edits;
+
+    private byte[][] _revs;
+
+    private interface Chunker
+    {
+        /**
+         * @return length of the next block starting at {@code off}
+         */
+        int next(byte[] b, int off, int len);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters
+    {
+        public long operations;
+        public double dedup;
+        public long blocks;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            operations = 0;
+            dedup = 0;
+            blocks = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Random rand = new Random(0xae20f5L);
+        _revs = new byte[revisions][];
+        _revs[0] = new byte[sizeMB * C.MB];
+        rand.nextBytes(_revs[0]);
+        for (int i = 1; i < revisions; ++i) _revs[i] = edit(_revs[i - 1], rand, edits);
+    }
+
+    private static byte[] edit(byte[] b, Random rand, int edits)
+    {
+        byte[] d = b;
+        for (int i = 0; i < edits; ++i) {
+            int off = rand.nextInt(d.length);
+            int n = 1 + rand.nextInt(64);
+            byte[] e;
+            if (rand.nextBoolean()) {
+                e = new byte[d.length + n];
+                System.arraycopy(d, 0, e, 0, off);
+                for (int j = 0; j < n; ++j) e[off + j] = (byte)rand.nextInt();
+                System.arraycopy(d, off, e, off + n, d.length - off);
+            } else {
+                n = Math.min(n, d.length - off);
+                e = new byte[d.length - n];
+                System.arraycopy(d, 0, e, 0, off);
+                System.arraycopy(d, off + n, e, off, d.length - off - n);
+            }
+            d = e;
+        }
+        return d;
+    }
+
+    private Chunker newChunker()
+    {
+        if (chunking.equals("fixed")) {
+            return (b, off, len) -> (int)Math.min(len, ClientParam.FILE_BLOCK_SIZE);
+        }
+        return new Chunker() {
+            final ContentDefinedChunker cdc = new ContentDefinedChunker();
+            @Override
+            public int next(byte[] b, int off, int len)
+            {
+                int n = cdc.next(b, off, len);
+                // end of revision: flush partial block and start afresh for the next one
+                if (n < 0) cdc.resume(0, new byte[0]);
+                return n < 0 ? len : n;
+            }
+        };
+    }
+
+    @Benchmark
+    public void ingest(Counters c)
+    {
+        Chunker chunker = newChunker();
+        Set<String> seen = Sets.newHashSet();
+        MessageDigest md = BaseSecUtil.newMessageDigest();
+        long logical = 0;
+        long stored = 0;
+        long blocks = 0;
+        for (byte[] rev : _revs) {
+            int pos = 0;
+            while (pos < rev.length) {
+                int n = chunker.next(rev, pos, rev.length - pos);
+                md.update(rev, pos, n);
+                if (seen.add(BaseUtil.hexEncode(md.digest()))) stored += n;
+                ++blocks;
+                pos += n;
+            }
+            logical += rev.length;
+        }
+        c.operations++;
+        c.dedup += (double)logical / stored;
+        c.blocks += blocks;
+    }
+}
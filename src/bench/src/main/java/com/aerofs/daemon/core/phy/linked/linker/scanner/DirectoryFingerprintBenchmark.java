@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.linked.linker.scanner;
+
+import com.aerofs.daemon.core.phy.linked.db.DirectoryFingerprint;
+import com.aerofs.daemon.core.phy.linked.linker.scanner.DirectoryFingerprinter.Prefetch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare cold and warm scans of a large synthetic tree
+ *
+ *      cold        mimics the I/O of a ScanSession without fingerprints: every folder is listed
+ *                  and the attributes of every child are read (MightCreate needs the FID and type
+ *                  of each child). The fingerprints are recorded along the way, as ScanSession
+ *                  would.
+ *      warm        walks the same tree again with the fingerprints recorded by a cold scan, and
+ *                  only lists the children of folders whose fingerprint changed. Child folders of
+ *                  unchanged folders are taken from the previous scan, which stands in for the
+ *                  logical children read from the DirectoryService.
+ *      touched     as warm, after touching 1% of the folders
+ *
+ * Fingerprints are prefetched by DirectoryFingerprinter in the same way as in ScanSession.
+ *
+ * The tree is created in the given folder, or in the temporary folder by default, on first use
+ * and reused afterwards. Drop the page cache between runs for truly cold numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DirectoryFingerprintBenchmark
+{
+    private static final int PREFETCH_WINDOW = 64;
+    private static final int MAX_PREFETCHES = 4 * PREFETCH_WINDOW;
+
+    @Param({"cold", "warm", "touched"})
+    String scan;
+
+    @Param({""})
+    String dir;
+
+    @Param({"100000"})
+    int files;
+
+    @Param({"100"})
+    int filesPerFolder;
+
+    @Param({"10"})
+    int foldersPerFolder;
+
+    private static class Entry
+    {
+        final DirectoryFingerprint fp;
+        final List<String> children;
+
+        Entry(DirectoryFingerprint fp, List<String> children)
+        {
+            this.fp = fp;
+            this.children = children;
+        }
+    }
+
+    private final DirectoryFingerprinter _dfp = new DirectoryFingerprinter();
+    private final Map<String, Entry> _db = Maps.newHashMap();
+    private final Map<String, Prefetch> _prefetches = Maps.newHashMap();
+    private final Random _r = new Random(0);
+
+    private String _root;
+
+    private static int create(File dir, int files, int filesPerDir, int dirsPerDir)
+            throws IOException
+    {
+        if (!dir.mkdirs() && !dir.isDirectory()) throw new IOException("mkdir " + dir);
+        int n = Math.min(files, filesPerDir);
+        for (int i = 0; i < n; i++) {
+            File f = new File(dir, "f" + i);
+            if (!f.createNewFile() && !f.isFile()) throw new IOException("create " + f);
+        }
+        int remaining = files - n;
+        if (remaining == 0) return n;
+        int perChild = (remaining + dirsPerDir - 1) / dirsPerDir;
+        for (int i = 0; i < dirsPerDir && remaining > 0; i++) {
+            int created = create(new File(dir, "d" + i), Math.min(perChild, remaining),
+                    filesPerDir, dirsPerDir);
+            remaining -= created;
+            n += created;
+        }
+        return n;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        File root = dir.isEmpty()
+                ? new File(System.getProperty("java.io.tmpdir"), "bench-fingerprint-" + files)
+                : new File(dir);
+        if (!new File(root, "d0").isDirectory()) {
+            create(root, files, filesPerFolder, foldersPerFolder);
+        }
+        _root = root.getAbsolutePath();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() throws IOException
+    {
+        _db.clear();
+        if (scan.equals("cold")) return;
+        scan(false);
+        if (scan.equals("warm")) return;
+
+        List<String> dirs = Lists.newArrayList(_db.keySet());
+        int touched = Math.max(1, dirs.size() / 100);
+        for (int i = 0; i < touched; i++) {
+            File f = new File(dirs.get(_r.nextInt(dirs.size())),
+                    "touched." + System.currentTimeMillis() + "." + i);
+            if (!f.createNewFile()) throw new IOException("create " + f);
+        }
+    }
+
+    private void prefetch(Deque<String> stack)
+    {
+        Iterator<String> it = stack.iterator();
+        for (int i = 0; i < PREFETCH_WINDOW && it.hasNext(); ++i) {
+            if (_prefetches.size() >= MAX_PREFETCHES) return;
+            String path = it.next();
+            if (!_prefetches.containsKey(path)) _prefetches.put(path, _dfp.prefetch(path));
+        }
+    }
+
+    private DirectoryFingerprint fingerprint(String path)
+    {
+        Prefetch p = _prefetches.remove(path);
+        return p != null ? p.get() : _dfp.compute(path);
+    }
+
+    /**
+     * @return the number of folders listed
+     */
+    private int scan(boolean useFingerprints) throws IOException
+    {
+        int listed = 0;
+        Deque<String> stack = new LinkedList<>();
+        stack.push(_root);
+        while (!stack.isEmpty()) {
+            prefetch(stack);
+            String path = stack.pop();
+            DirectoryFingerprint fp = fingerprint(path);
+            Entry e = _db.get(path);
+            if (useFingerprints && e != null && e.fp.equals(fp)) {
+                for (String child : e.children) stack.push(child);
+                continue;
+            }
+
+            ++listed;
+            String[] names = new File(path).list();
+            if (names == null) throw new IOException("list " + path);
+            List<String> children = Lists.newArrayList();
+            for (String name : names) {
+                String child = path + File.separator + name;
+                BasicFileAttributes attrs = Files.readAttributes(Paths.get(child),
+                        BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isDirectory()) {
+                    children.add(child);
+                    stack.push(child);
+                }
+            }
+            _db.put(path, new Entry(fp, children));
+        }
+        return listed;
+    }
+
+    @Benchmark
+    public int scan() throws IOException
+    {
+        return scan(!scan.equals("cold"));
+    }
+}
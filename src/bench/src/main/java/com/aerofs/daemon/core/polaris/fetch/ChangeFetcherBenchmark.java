@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.polaris.fetch;
+
+import com.aerofs.base.BaseUtil;
+import com.aerofs.base.config.ConfigurationProperties;
+import com.aerofs.base.ssl.SSLEngineFactory;
+import com.aerofs.bench.TempSQLiteDBCW;
+import com.aerofs.daemon.core.CoreEventDispatcher;
+import com.aerofs.daemon.core.CoreQueue;
+import com.aerofs.daemon.core.CoreScheduler;
+import com.aerofs.daemon.core.net.ClientSSLEngineFactory;
+import com.aerofs.daemon.core.polaris.GsonUtil;
+import com.aerofs.daemon.core.polaris.PolarisAsyncClient;
+import com.aerofs.daemon.core.polaris.api.RemoteChange;
+import com.aerofs.daemon.core.polaris.api.Transforms;
+import com.aerofs.daemon.core.polaris.async.AsyncTaskCallback;
+import com.aerofs.daemon.core.polaris.db.ChangeEpochDatabase;
+import com.aerofs.daemon.core.status.PauseSync;
+import com.aerofs.daemon.core.store.IMapSID2SIndex;
+import com.aerofs.daemon.core.store.IMapSIndex2SID;
+import com.aerofs.daemon.core.store.MapSIndex2Store;
+import com.aerofs.daemon.core.store.StoreDeletionOperators;
+import com.aerofs.daemon.core.tc.TC;
+import com.aerofs.daemon.core.tc.TokenManager;
+import com.aerofs.daemon.lib.CoreExecutor;
+import com.aerofs.daemon.lib.db.SyncSchema;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.ids.DID;
+import com.aerofs.ids.SID;
+import com.aerofs.ids.UniqueID;
+import com.aerofs.ids.UserID;
+import com.aerofs.lib.cfg.CfgCACertificateProvider;
+import com.aerofs.lib.cfg.CfgKey;
+import com.aerofs.lib.cfg.CfgKeyManagersProvider;
+import com.aerofs.lib.cfg.CfgLocalDID;
+import com.aerofs.lib.cfg.CfgLocalUser;
+import com.aerofs.lib.cfg.ICfgStore;
+import com.aerofs.lib.event.AbstractEBSelfHandling;
+import com.aerofs.lib.event.Prio;
+import com.aerofs.lib.id.SIndex;
+import com.aerofs.testlib.TempCert;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpServerCodec;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.codec.http.QueryStringDecoder;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.aerofs.daemon.lib.db.SyncSchema.*;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Catch-up time of ChangeFetcher against a local polaris stand-in
+ *
+ * A local HTTPS server stands in for polaris. It serves a synthetic log of INSERT_CHILD
+ * transforms for a single store and delays each response to mimic the round-trip to a remote
+ * polaris. Like polaris, it returns at most {@link ChangeFetcher#MAX_CHANGES_PER_REQUEST}
+ * transforms per request.
+ *
+ * Transforms are fetched through a PolarisAsyncClient and applied on a core thread. Application
+ * of a transform is stubbed out by an insert in an on-disk SQLite db, in the transaction that
+ * updates the change epoch of the store, which is where ApplyChange does its work.
+ *
+ *      legacy      replay of the previous fetch loop: pages of 100 transforms, body decoded from
+ *                  a string, one transaction per transform, next page requested once the current
+ *                  one is applied
+ *      fetcher     ChangeFetcher#fetch_, called again as long as more transforms are available,
+ *                  as ChangeFetchScheduler does
+ *
+ * Each operation fetches and applies the whole log. The requests counter is the number of
+ * requests it took. JMH sums event counters over the measured iterations, divide them by the operations
+ * counter for the value per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeFetcherBenchmark
+{
+    private static final SIndex SIDX = new SIndex(1);
+
+    @Param({"legacy", "fetcher"})
+    String fetch;
+
+    @Param({"20000"})
+    long transforms;
+
+    @Param({"20"})
+    int latencyMs;
+
+    private final SID _sid = SID.generate();
+    private final DID _originator = DID.generate();
+    private final AtomicInteger _requests = new AtomicInteger();
+
+    private final CoreQueue _q = new CoreQueue();
+    private final CoreScheduler _sched = new CoreScheduler(_q);
+    private final UserID _user = UserID.fromInternal("foo@bar.baz");
+    private final DID _did = DID.generate();
+
+    private Timer _timer;
+    private ClientSocketChannelFactory _clientChannelFactory;
+    private TempCert _ca;
+    private ServerBootstrap _server;
+
+    private TempSQLiteDBCW _dbcw;
+    private TransManager _tm;
+    private ChangeEpochDatabase _cedb;
+    private PreparedStatement _psInsert;
+
+    private PolarisAsyncClient _client;
+    private ChangeFetcher _fetcher;
+    private ApplyChange _at;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters
+    {
+        public long operations;
+        public long requests;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            operations = 0;
+            requests = 0;
+        }
+    }
+
+    private byte[] page(long since, int count)
+    {
+        StringBuilder bd = new StringBuilder(count * 320);
+        bd.append("{\"max_transform_count\":").append(transforms).append(",\"transforms\":[");
+        long end = Math.min(since + count, transforms);
+        for (long lts = since + 1; lts <= end; ++lts) {
+            if (lts > since + 1) bd.append(',');
+            bd.append("{\"logical_timestamp\":").append(lts)
+                    .append(",\"originator\":\"").append(_originator.toStringFormal())
+                    .append("\",\"oid\":\"").append(_sid.toStringFormal())
+                    .append("\",\"transform_type\":\"INSERT_CHILD\",\"new_version\":").append(lts)
+                    .append(",\"timestamp\":").append(1420070400000L + lts)
+                    .append(",\"child\":\"").append(String.format("%032x", lts))
+                    .append("\",\"child_name\":\"file-").append(lts)
+                    .append(".txt\",\"child_object_type\":\"FILE\"}");
+        }
+        return BaseUtil.string2utf(bd.append("]}").toString());
+    }
+
+    private static class Pending
+    {
+        final HttpResponse response;
+        boolean ready;
+
+        Pending(HttpResponse response)
+        {
+            this.response = response;
+        }
+    }
+
+    /**
+     * Responds after a fixed delay, in request order as required by HTTP/1.1 pipelining
+     */
+    private class Responder extends SimpleChannelUpstreamHandler
+    {
+        private final Queue<Pending> _pending = new ArrayDeque<>();
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent ev)
+        {
+            _requests.incrementAndGet();
+            QueryStringDecoder d = new QueryStringDecoder(((HttpRequest)ev.getMessage()).getUri());
+            long since = Long.parseLong(d.getParameters().get("since").get(0));
+            int count = Integer.parseInt(d.getParameters().get("count").get(0));
+            byte[] body = page(since, Math.min(count, ChangeFetcher.MAX_CHANGES_PER_REQUEST));
+
+            HttpResponse resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+                    HttpResponseStatus.OK);
+            resp.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+            resp.headers().set(HttpHeaders.Names.CONTENT_LENGTH, body.length);
+            resp.setContent(ChannelBuffers.wrappedBuffer(body));
+
+            Pending p = new Pending(resp);
+            synchronized (this) {
+                _pending.add(p);
+            }
+            _timer.newTimeout(t -> flush(ctx.getChannel(), p), latencyMs, TimeUnit.MILLISECONDS);
+        }
+
+        // NB: only ever called from the timer thread
+        private void flush(Channel c, Pending done)
+        {
+            List<HttpResponse> ready = new ArrayList<>();
+            synchronized (this) {
+                done.ready = true;
+                while (!_pending.isEmpty() && _pending.peek().ready) {
+                    ready.add(_pending.poll().response);
+                }
+            }
+            for (HttpResponse r : ready) c.write(r);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        _dbcw = TempSQLiteDBCW.create();
+        _dbcw.init_();
+        try (Statement s = _dbcw.getConnection().createStatement()) {
+            new SyncSchema().create_(s, _dbcw);
+        }
+        _dbcw.commit_();
+        _tm = new TransManager(new Trans.Factory(_dbcw));
+        _cedb = new ChangeEpochDatabase(_dbcw);
+
+        TokenManager tokenManager = new TokenManager(new ICfgStore() {
+            @Override
+            public int getInt(CfgKey key)
+            {
+                return Integer.MAX_VALUE;
+            }
+        }, _q, _sched);
+        new TC(_q, new CoreEventDispatcher(ImmutableSet.of()), _sched, tokenManager, () -> {})
+                .start_();
+
+        _timer = new HashedWheelTimer();
+        _clientChannelFactory = new NioClientSocketChannelFactory(newCachedThreadPool(),
+                newCachedThreadPool(), 1, 2);
+        _ca = TempCert.generateCA();
+
+        TempCert cert = TempCert.generateDaemon(UserID.DUMMY, new DID(UniqueID.ZERO), _ca);
+        SSLEngineFactory ssl = SSLEngineFactory.newServerFactory(cert, _ca);
+        _server = new ServerBootstrap(
+                new NioServerSocketChannelFactory(newCachedThreadPool(), newCachedThreadPool()));
+        _server.setPipelineFactory(() -> Channels.pipeline(
+                ssl.newSslHandler(),
+                new HttpServerCodec(),
+                new HttpChunkAggregator(1024 * 1024),
+                new Responder()));
+        Channel c = _server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        int port = ((InetSocketAddress)c.getLocalAddress()).getPort();
+
+        Properties props = new Properties();
+        props.setProperty("daemon.polaris.url", "https://localhost:" + port);
+        ConfigurationProperties.setProperties(props);
+
+        TempCert client = TempCert.generateDaemon(_user, _did, _ca);
+        CfgKeyManagersProvider key = new CfgKeyManagersProvider() {
+            @Override
+            public PrivateKey getPrivateKey()
+            {
+                return client.key;
+            }
+
+            @Override
+            public X509Certificate getCert()
+            {
+                return client.cert;
+            }
+        };
+        CfgCACertificateProvider trusted = new CfgCACertificateProvider() {
+            @Override
+            public X509Certificate getCert()
+            {
+                return _ca.cert;
+            }
+        };
+        CfgLocalUser localUser = new CfgLocalUser() {
+            @Override
+            public UserID get()
+            {
+                return _user;
+            }
+        };
+        CfgLocalDID localDID = new CfgLocalDID() {
+            @Override
+            public DID get()
+            {
+                return _did;
+            }
+        };
+        _client = new PolarisAsyncClient(new CoreExecutor(_q), localDID, localUser, _timer,
+                _clientChannelFactory, new ClientSSLEngineFactory(key, trusted));
+
+        _at = new ApplyChange(null, null, null, null, null, null, null, null) {
+            @Override
+            public void apply_(SIndex sidx, RemoteChange rc, long mergeBoundary, Trans t)
+                    throws SQLException
+            {
+                _psInsert.setLong(1, rc.logicalTimestamp);
+                _psInsert.setBytes(2, rc.oid.getBytes());
+                _psInsert.setBytes(3, rc.child.getBytes());
+                _psInsert.setString(4, rc.childName);
+                _psInsert.executeUpdate();
+            }
+
+            @Override
+            public void applyBufferedChanges_(SIndex sidx, long timestamp)
+            {
+            }
+        };
+        PauseSync pauseSync = new PauseSync();
+        pauseSync.resume_();
+        _fetcher = new ChangeFetcher(_client, pauseSync, _cedb, _at, new SIndex2SID(),
+                new SID2SIndex(), _tm, new MapSIndex2Store(), _sched,
+                new StoreDeletionOperators());
+    }
+
+    /**
+     * Map of the only store
+     */
+    private class SIndex2SID implements IMapSIndex2SID
+    {
+        @Override
+        public SID getNullable_(SIndex sidx)
+        {
+            return _sid;
+        }
+
+        @Override
+        public SID get_(SIndex sidx)
+        {
+            return _sid;
+        }
+
+        @Override
+        public SID getThrows_(SIndex sidx)
+        {
+            return _sid;
+        }
+
+        @Override
+        public SID getAbsent_(SIndex sidx)
+        {
+            return _sid;
+        }
+
+        @Override
+        public SID getLocalOrAbsent_(SIndex sidx)
+        {
+            return _sid;
+        }
+    }
+
+    private static class SID2SIndex implements IMapSID2SIndex
+    {
+        @Override
+        public Future<SIndex> wait_(SID sid)
+        {
+            return Futures.immediateFuture(SIDX);
+        }
+
+        @Override
+        public SIndex getNullable_(SID sid)
+        {
+            return SIDX;
+        }
+
+        @Override
+        public SIndex get_(SID sid)
+        {
+            return SIDX;
+        }
+
+        @Override
+        public SIndex getThrows_(SID sid)
+        {
+            return SIDX;
+        }
+
+        @Override
+        public SIndex getLocalOrAbsentNullable_(SID sid)
+        {
+            return SIDX;
+        }
+
+        @Override
+        public SIndex getAbsent_(SID sid, Trans t)
+        {
+            return SIDX;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException
+    {
+        _server.releaseExternalResources();
+        _clientChannelFactory.releaseExternalResources();
+        _timer.stop();
+        _ca.cleanup();
+        if (_psInsert != null) _psInsert.close();
+        _dbcw.fini_();
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws SQLException
+    {
+        if (_psInsert != null) _psInsert.close();
+        try (Statement s = _dbcw.getConnection().createStatement()) {
+            s.executeUpdate("drop table if exists c");
+            s.executeUpdate("create table c (c_lts integer primary key, c_parent blob not null,"
+                    + " c_child blob not null, c_name text not null)");
+            s.executeUpdate("delete from " + T_STORE);
+            s.executeUpdate("insert into " + T_STORE + "(" + C_STORE_SIDX + ","
+                    + C_STORE_COLLECTING_CONTENT + "," + C_STORE_LTS_LOCAL + ") values ("
+                    + SIDX.getInt() + ",1,0)");
+        }
+        _dbcw.commit_();
+        _psInsert = _dbcw.getConnection().prepareStatement("insert into c values (?,?,?,?)");
+        _requests.set(0);
+    }
+
+    private void legacy_(long since, SettableFuture<Void> done)
+    {
+        DefaultHttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+                "/transforms/" + _sid.toStringFormal() + "?since=" + since + "&count="
+                        + ChangeFetcher.MIN_CHANGES_PER_REQUEST);
+        req.headers().set(HttpHeaders.Names.CONTENT_LENGTH, "0");
+        _client.send(req, r -> GsonUtil.GSON.fromJson(
+                r.getContent().toString(BaseUtil.CHARSET_UTF), Transforms.class),
+                new FutureCallback<Transforms>() {
+                    @Override
+                    public void onSuccess(Transforms c)
+                    {
+                        if (c.transforms == null || c.transforms.isEmpty()) {
+                            done.set(null);
+                            return;
+                        }
+                        try {
+                            for (RemoteChange rc : c.transforms) {
+                                try (Trans t = _tm.begin_()) {
+                                    _at.apply_(SIDX, rc, c.maxTransformCount, t);
+                                    _cedb.setChangeEpoch_(SIDX, rc.logicalTimestamp, t);
+                                    t.commit_();
+                                }
+                            }
+                        } catch (Exception e) {
+                            done.setException(e);
+                            return;
+                        }
+                        legacy_(c.transforms.get(c.transforms.size() - 1).logicalTimestamp, done);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t)
+                    {
+                        done.setException(t);
+                    }
+                });
+    }
+
+    private void fetch_(SettableFuture<Void> done)
+    {
+        try {
+            _fetcher.fetch_(SIDX, new AsyncTaskCallback() {
+                @Override
+                public void onSuccess_(boolean hasMore)
+                {
+                    if (hasMore) {
+                        fetch_(done);
+                    } else {
+                        done.set(null);
+                    }
+                }
+
+                @Override
+                public void onFailure_(Throwable t)
+                {
+                    done.setException(t);
+                }
+            });
+        } catch (Exception e) {
+            done.setException(e);
+        }
+    }
+
+    @Benchmark
+    public void catchUp(Counters c) throws Exception
+    {
+        SettableFuture<Void> done = SettableFuture.create();
+        _q.enqueueBlocking(new AbstractEBSelfHandling() {
+            @Override
+            public void handle_()
+            {
+                if (fetch.equals("legacy")) {
+                    legacy_(0, done);
+                } else {
+                    fetch_(done);
+                }
+            }
+        }, Prio.LO);
+        done.get();
+        Long epoch = _cedb.getChangeEpoch_(SIDX);
+        if (epoch == null || epoch != transforms) throw new AssertionError(fetch + " " + epoch);
+        c.operations++;
+        c.requests += _requests.get();
+    }
+}
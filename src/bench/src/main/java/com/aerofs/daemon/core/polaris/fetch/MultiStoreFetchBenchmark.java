@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.polaris.fetch;
+
+import com.aerofs.base.BaseUtil;
+import com.aerofs.daemon.core.polaris.GsonUtil;
+import com.aerofs.daemon.core.polaris.api.MultiStoreTransforms;
+import com.aerofs.daemon.core.polaris.api.RemoteChange;
+import com.aerofs.daemon.core.polaris.api.Transforms;
+import com.aerofs.daemon.core.polaris.api.TransformsQuery;
+import com.aerofs.daemon.core.polaris.api.TransformsQuery.StoreSince;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Propagation of a notification storm across many stores, with and without coalescing
+ *
+ * A local polaris stand-in serves both the single-store and the multi-store transforms endpoint.
+ * Every store has the same number of new transforms, interleaved in the global transform log, and
+ * each response is delayed to mimic the round-trip to a remote polaris. All stores are scheduled
+ * at once, as after a reconnection, and fetched by a fixed number of concurrent requests:
+ *
+ *      per-store   one request per store, repeated until an empty page is returned
+ *      coalesced   up to {@link ChangeFetcher#MAX_STORES_PER_REQUEST} stores per request,
+ *                  stores with more transforms join a subsequent request
+ *
+ * Each operation propagates a whole storm. The propagation latency of a store is the time
+ * between the storm and the response that shows it to be up to date. The p50Ms, p99Ms and maxMs
+ * counters are the percentiles of the latencies of all stores, and the requests counter the
+ * number of requests. JMH sums event counters over the measured iterations, divide them by the operations
+ * counter for the value per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiStoreFetchBenchmark
+{
+    @Param({"per-store", "coalesced"})
+    String fetch;
+
+    @Param({"10000"})
+    int stores;
+
+    @Param({"2"})
+    int perStore;
+
+    @Param({"5"})
+    int latencyMs;
+
+    @Param({"4"})
+    int concurrency;
+
+    private String[] _sids;
+    private final Map<String, Integer> _index = new HashMap<>();
+    private final AtomicInteger _requests = new AtomicInteger();
+    private HttpServer _server;
+    private String _url;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters
+    {
+        public long operations;
+        public long requests;
+        public double p50Ms;
+        public double p99Ms;
+        public double maxMs;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            operations = 0;
+            requests = 0;
+            p50Ms = 0;
+            p99Ms = 0;
+            maxMs = 0;
+        }
+    }
+
+    // transform j of store s has logical timestamp j * stores + s + 1
+    private long lts(int s, int j)
+    {
+        return (long)j * stores + s + 1;
+    }
+
+    // index of the first transform of store s past the given timestamp
+    private int first(int s, long since)
+    {
+        return (int)Math.max(0, Math.min(perStore, Math.floorDiv(since - s - 1, stores) + 1));
+    }
+
+    private void transform(StringBuilder bd, int s, int j)
+    {
+        bd.append("{\"logical_timestamp\":").append(lts(s, j))
+                .append(",\"originator\":\"").append(_sids[0])
+                .append("\",\"store\":\"").append(_sids[s])
+                .append("\",\"oid\":\"").append(_sids[s])
+                .append("\",\"transform_type\":\"INSERT_CHILD\",\"new_version\":").append(j + 1)
+                .append(",\"timestamp\":").append(1420070400000L + lts(s, j))
+                .append(",\"child\":\"").append(String.format("%016x%016x", s, j))
+                .append("\",\"child_name\":\"file-").append(j)
+                .append(".txt\",\"child_object_type\":\"FILE\"}");
+    }
+
+    private byte[] single(String sid, long since, int count)
+    {
+        int s = _index.get(sid);
+        StringBuilder bd = new StringBuilder();
+        bd.append("{\"max_transform_count\":").append((long)stores * perStore)
+                .append(",\"transforms\":[");
+        int end = Math.min(perStore, first(s, since) + count);
+        for (int j = first(s, since); j < end; ++j) {
+            if (bd.charAt(bd.length() - 1) != '[') bd.append(',');
+            transform(bd, s, j);
+        }
+        return BaseUtil.string2utf(bd.append("]}").toString());
+    }
+
+    private byte[] multi(TransformsQuery query)
+    {
+        int count = Math.min(query.count, ChangeFetcher.MAX_CHANGES_PER_REQUEST);
+        int[] next = new int[query.stores.size()];
+        int[] store = new int[query.stores.size()];
+        for (int i = 0; i < next.length; ++i) {
+            StoreSince ss = query.stores.get(i);
+            store[i] = _index.get(ss.store);
+            next[i] = first(store[i], ss.since);
+        }
+        // merge the logs of the requested stores
+        StringBuilder bd = new StringBuilder();
+        bd.append("{\"transforms\":[");
+        long last = 0;
+        int n = 0;
+        boolean truncated = false;
+        while (true) {
+            int min = -1;
+            for (int i = 0; i < next.length; ++i) {
+                if (next[i] < perStore
+                        && (min == -1 || lts(store[i], next[i]) < lts(store[min], next[min]))) {
+                    min = i;
+                }
+            }
+            if (min == -1) break;
+            if (n == count) {
+                truncated = true;
+                break;
+            }
+            if (n++ > 0) bd.append(',');
+            transform(bd, store[min], next[min]);
+            last = lts(store[min], next[min]++);
+        }
+        bd.append("],\"max_transform_count\":")
+                .append(truncated ? last : (long)stores * perStore)
+                .append(",\"truncated\":").append(truncated)
+                .append(",\"denied\":[]}");
+        return BaseUtil.string2utf(bd.toString());
+    }
+
+    private void respond(HttpExchange ex, byte[] body) throws java.io.IOException
+    {
+        try {
+            TimeUnit.MILLISECONDS.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        _sids = new String[stores];
+        for (int i = 0; i < stores; ++i) {
+            _sids[i] = String.format("%032x", i + 1);
+            _index.put(_sids[i], i);
+        }
+
+        // avoid delayed ACKs skewing the round-trip time
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        _server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        _server.setExecutor(Executors.newFixedThreadPool(concurrency));
+        _server.createContext("/transforms", ex -> {
+            if (ex.getRequestMethod().equals("POST")) {
+                try (Reader r = new InputStreamReader(ex.getRequestBody(), BaseUtil.CHARSET_UTF)) {
+                    respond(ex, multi(GsonUtil.GSON.fromJson(r, TransformsQuery.class)));
+                }
+                return;
+            }
+            long since = 0;
+            int count = 0;
+            for (String param : ex.getRequestURI().getRawQuery().split("&")) {
+                String[] kv = param.split("=");
+                if (kv[0].equals("since")) since = Long.parseLong(kv[1]);
+                if (kv[0].equals("count")) count = Integer.parseInt(kv[1]);
+            }
+            String path = ex.getRequestURI().getPath();
+            respond(ex, single(path.substring(path.lastIndexOf('/') + 1), since,
+                    Math.min(count, ChangeFetcher.MAX_CHANGES_PER_REQUEST)));
+        });
+        _server.start();
+        _url = "http://localhost:" + _server.getAddress().getPort();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        _server.stop(0);
+        ((ExecutorService)_server.getExecutor()).shutdown();
+    }
+
+    private InputStream request(String path, byte[] body) throws Exception
+    {
+        _requests.incrementAndGet();
+        HttpURLConnection c = (HttpURLConnection)new URL(_url + path).openConnection();
+        if (body != null) {
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            c.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream os = c.getOutputStream()) {
+                os.write(body);
+            }
+        }
+        if (c.getResponseCode() != 200) throw new Exception("status " + c.getResponseCode());
+        return c.getInputStream();
+    }
+
+    private interface Worker
+    {
+        // fetch pending stores, return those that need to be fetched again
+        List<Integer> fetch(List<Integer> stores, long[] since, long[] uptodate, long start,
+                AtomicInteger transforms) throws Exception;
+    }
+
+    private List<Integer> fetchSingle(List<Integer> stores, long[] since, long[] uptodate,
+            long start, AtomicInteger transforms) throws Exception
+    {
+        int s = stores.get(0);
+        Transforms t = ChangeFetcher.parse(request("/transforms/" + _sids[s] + "?since="
+                + since[s] + "&count=" + ChangeFetcher.MIN_CHANGES_PER_REQUEST, null));
+        if (t.transforms.isEmpty()) {
+            uptodate[s] = System.nanoTime() - start;
+            return new ArrayList<>();
+        }
+        transforms.addAndGet(t.transforms.size());
+        since[s] = t.transforms.get(t.transforms.size() - 1).logicalTimestamp;
+        return stores;
+    }
+
+    private List<Integer> fetchMulti(List<Integer> stores, long[] since, long[] uptodate,
+            long start, AtomicInteger transforms) throws Exception
+    {
+        List<StoreSince> query = new ArrayList<>(stores.size());
+        for (int s : stores) query.add(new StoreSince(_sids[s], since[s]));
+        byte[] body = BaseUtil.string2utf(GsonUtil.GSON.toJson(
+                new TransformsQuery(query, ChangeFetcher.MAX_CHANGES_PER_REQUEST)));
+        MultiStoreTransforms r;
+        try (Reader reader = new InputStreamReader(request("/transforms", body),
+                BaseUtil.CHARSET_UTF)) {
+            r = GsonUtil.GSON.fromJson(reader, MultiStoreTransforms.class);
+        }
+        long now = System.nanoTime() - start;
+        Map<String, Long> last = new HashMap<>();
+        for (RemoteChange rc : r.transforms) last.put(rc.store.toStringFormal(), rc.logicalTimestamp);
+        transforms.addAndGet(r.transforms.size());
+
+        List<Integer> more = new ArrayList<>();
+        for (int s : stores) {
+            Long l = last.get(_sids[s]);
+            if (l != null) since[s] = l;
+            if (l != null || r.truncated) {
+                more.add(s);
+            } else {
+                uptodate[s] = now;
+            }
+        }
+        return more;
+    }
+
+    @Benchmark
+    public void storm(Counters c) throws Exception
+    {
+        boolean coalesced = fetch.equals("coalesced");
+        int batch = coalesced ? ChangeFetcher.MAX_STORES_PER_REQUEST : 1;
+        Worker worker = coalesced ? this::fetchMulti : this::fetchSingle;
+
+        long[] since = new long[stores];
+        long[] uptodate = new long[stores];
+        AtomicInteger transforms = new AtomicInteger();
+        LinkedBlockingQueue<Integer> pending = new LinkedBlockingQueue<>();
+        AtomicInteger remaining = new AtomicInteger(stores);
+        for (int s = 0; s < stores; ++s) pending.add(s);
+
+        _requests.set(0);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrency; ++i) {
+            futures.add(workers.submit(() -> {
+                try {
+                    while (remaining.get() > 0) {
+                        List<Integer> stores = new ArrayList<>();
+                        Integer s = pending.poll(10, TimeUnit.MILLISECONDS);
+                        if (s == null) continue;
+                        stores.add(s);
+                        pending.drainTo(stores, batch - 1);
+                        List<Integer> more = worker.fetch(stores, since, uptodate, start,
+                                transforms);
+                        remaining.addAndGet(more.size() - stores.size());
+                        pending.addAll(more);
+                    }
+                    return null;
+                } catch (Exception e) {
+                    remaining.set(0);
+                    throw e;
+                }
+            }));
+        }
+        workers.shutdown();
+        for (Future<Void> f : futures) f.get();
+        if (transforms.get() != (long)stores * perStore) {
+            throw new AssertionError(fetch + " " + transforms.get());
+        }
+
+        Arrays.sort(uptodate);
+        c.operations++;
+        c.requests += _requests.get();
+        c.p50Ms += uptodate[uptodate.length / 2] / 1e6;
+        c.p99Ms += uptodate[(int)(uptodate.length * 0.99)] / 1e6;
+        c.maxMs += uptodate[uptodate.length - 1] / 1e6;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.protocol;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.base.BaseUtil;
+import com.aerofs.daemon.lib.DaemonParam;
+import com.aerofs.ids.OID;
+import com.aerofs.ids.SID;
+import com.aerofs.lib.bf.BFOID;
+import com.aerofs.proto.Core.PBCore;
+import com.aerofs.proto.Core.PBCore.Type;
+import com.aerofs.proto.Core.PBGetContentRequest;
+import com.aerofs.proto.Core.PBGetContentResponse;
+import com.aerofs.proto.Core.PBGetFilterResponse;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of core protocol messages, as written to and read from peer streams:
+ *
+ *      gcc         content request, as sent for every object downloaded
+ *      gcr         content response header, which precedes the content
+ *      filter      a store entry of a filter response, with the sender filter of 1000 objects
+ *
+ * Encoding includes building the message, as the core does for every message it sends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CoreMessageBenchmark
+{
+    @Param({"gcc", "gcr", "filter"})
+    String message;
+
+    private final ByteString _sid = BaseUtil.toPB(SID.generate());
+    private final ByteString _oid = BaseUtil.toPB(OID.generate());
+    private final ByteString _hash = ByteString.copyFrom(BaseSecUtil.hash(new byte[0]));
+    private ByteString _filter;
+
+    private final ByteArrayOutputStream _os = new ByteArrayOutputStream();
+    private byte[] _encoded;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        BFOID bf = new BFOID();
+        for (int i = 0; i < 1000; i++) bf.add_(OID.generate());
+        _filter = bf.toPB();
+
+        _encoded = encode();
+    }
+
+    private MessageLite build()
+    {
+        switch (message) {
+        case "gcc":
+            return CoreProtocolUtil.newRequest(Type.GET_CONTENT_REQUEST)
+                    .setGetContentRequest(PBGetContentRequest.newBuilder()
+                            .setStoreId(_sid)
+                            .setObjectId(_oid)
+                            .setLocalVersion(42)
+                            .setMaxChunkSize(DaemonParam.MAX_BULK_CHUNK_SIZE))
+                    .build();
+        case "gcr":
+            return PBCore.newBuilder()
+                    .setType(Type.REPLY)
+                    .setRpcid(42)
+                    .setGetContentResponse(PBGetContentResponse.newBuilder()
+                            .setVersion(42)
+                            .setLength(1234567)
+                            .setMtime(System.currentTimeMillis())
+                            .setHash(_hash)
+                            .setLts(42))
+                    .build();
+        case "filter":
+            return PBGetFilterResponse.Store.newBuilder()
+                    .setStoreId(_sid)
+                    .setSenderFilter(_filter)
+                    .setSenderFilterIndex(42)
+                    .setSenderFilterUpdateSeq(42)
+                    .setSenderFilterEpoch(42)
+                    .build();
+        default:
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException
+    {
+        _os.reset();
+        build().writeDelimitedTo(_os);
+        return _os.toByteArray();
+    }
+
+    @Benchmark
+    public MessageLite decode() throws IOException
+    {
+        ByteArrayInputStream is = new ByteArrayInputStream(_encoded);
+        return message.equals("filter")
+                ? PBGetFilterResponse.Store.parseDelimitedFrom(is)
+                : PBCore.parseDelimitedFrom(is);
+    }
+}
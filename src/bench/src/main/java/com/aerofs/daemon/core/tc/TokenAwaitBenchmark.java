@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.tc;
+
+import com.aerofs.daemon.core.CoreEventDispatcher;
+import com.aerofs.daemon.core.CoreQueue;
+import com.aerofs.daemon.core.CoreScheduler;
+import com.aerofs.daemon.core.ex.ExAborted;
+import com.aerofs.daemon.core.tc.TC.TCB;
+import com.aerofs.lib.cfg.CfgKey;
+import com.aerofs.lib.cfg.ICfgStore;
+import com.aerofs.lib.event.AbstractEBSelfHandling;
+import com.aerofs.lib.event.Prio;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+
+/**
+ * Cost of waiting for remote peers in the core, with many concurrent simulated transfers, each
+ * of which sends a number of requests and waits for the replies, for:
+ *
+ *      await       the transfer is resumed in a new core event when the reply arrives, see
+ *                  {@link Token#await_}
+ *      park        the core thread handling the transfer is parked until the reply arrives, see
+ *                  {@link Token#pause_}, as RPC.issueRequest_ does
+ *
+ * As with RPC replies, the replies are delivered by core events enqueued by a separate thread
+ * after a fixed latency. Besides the time to complete all transfers, the peak number of threads
+ * and the number of context switches, summed over all live threads of the process, are reported
+ * as the threads and contextSwitches counters. The latter is only available on Linux.
+ * JMH sums event counters over the measured iterations, divide them by the operations
+ * counter for the value per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenAwaitBenchmark
+{
+    @Param({"await", "park"})
+    String mode;
+
+    @Param({"2000"})
+    int transfers;
+
+    @Param({"10"})
+    int requests;
+
+    @Param({"50"})
+    int latencyMs;
+
+    private final CoreQueue _q = new CoreQueue();
+    private final CoreScheduler _sched = new CoreScheduler(_q);
+    private final TokenManager _tokenManager = new TokenManager(new ICfgStore() {
+        @Override
+        public int getInt(CfgKey key)
+        {
+            return Integer.MAX_VALUE;
+        }
+    }, _q, _sched);
+    private final ScheduledExecutorService _peers = Executors.newScheduledThreadPool(4);
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters
+    {
+        public long operations;
+        public long threads;
+        public long contextSwitches;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            operations = 0;
+            threads = 0;
+            contextSwitches = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        new TC(_q, new CoreEventDispatcher(ImmutableSet.of()), _sched, _tokenManager, () -> {})
+                .start_();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        _peers.shutdownNow();
+    }
+
+    private void enqueue(Runnable r)
+    {
+        _q.enqueueBlocking(new AbstractEBSelfHandling() {
+            @Override
+            public void handle_()
+            {
+                r.run();
+            }
+        }, Prio.LO);
+    }
+
+    /**
+     * @return a future completed in a core event after the given latency, like an RPC reply
+     */
+    private ListenableFuture<Void> request_()
+    {
+        SettableFuture<Void> reply = SettableFuture.create();
+        _peers.schedule(() -> enqueue(() -> reply.set(null)), latencyMs, TimeUnit.MILLISECONDS);
+        return reply;
+    }
+
+    private void park_(CountDownLatch done)
+    {
+        Token tk = _tokenManager.acquire_(Cat.UNLIMITED, "park");
+        try {
+            for (int i = 0; i < requests; i++) {
+                TCB tcb = TC.tcb();
+                Futures.addCallback(request_(), new FutureCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void v)
+                    {
+                        tcb.resume_();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t)
+                    {
+                        tcb.abort_(t);
+                    }
+                }, sameThreadExecutor());
+                tk.pause_("park");
+            }
+        } catch (ExAborted e) {
+            throw new AssertionError(e);
+        } finally {
+            tk.reclaim_();
+            done.countDown();
+        }
+    }
+
+    private void await_(Token tk, int left, CountDownLatch done)
+    {
+        if (left == 0) {
+            tk.reclaim_();
+            done.countDown();
+            return;
+        }
+        tk.await_(request_(), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void v)
+            {
+                await_(tk, left - 1, done);
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                throw new AssertionError(t);
+            }
+        });
+    }
+
+    @Benchmark
+    public void transfer(Counters c) throws InterruptedException
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long switches = contextSwitches();
+
+        CountDownLatch done = new CountDownLatch(transfers);
+        for (int i = 0; i < transfers; i++) {
+            if (mode.equals("park")) {
+                enqueue(() -> park_(done));
+            } else {
+                enqueue(() -> await_(_tokenManager.acquire_(Cat.UNLIMITED, "await"), requests,
+                        done));
+            }
+        }
+        done.await();
+
+        c.operations++;
+        c.threads += threads.getPeakThreadCount();
+        c.contextSwitches += switches < 0 ? 0 : contextSwitches() - switches;
+    }
+
+    /**
+     * @return voluntary and involuntary context switches of all live threads, or -1
+     */
+    private static long contextSwitches()
+    {
+        File[] tasks = new File("/proc/self/task").listFiles();
+        if (tasks == null) return -1;
+        long n = 0;
+        for (File task : tasks) {
+            try {
+                for (String line : Files.readAllLines(new File(task, "status").toPath())) {
+                    if (line.contains("ctxt_switches:")) {
+                        n += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                    }
+                }
+            } catch (IOException e) {
+                // the thread exited
+            }
+        }
+        return n;
+    }
+}
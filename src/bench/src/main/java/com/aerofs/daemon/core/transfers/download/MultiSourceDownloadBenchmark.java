@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.transfers.download;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.base.C;
+import com.aerofs.base.acl.Permissions;
+import com.aerofs.base.config.ConfigurationProperties;
+import com.aerofs.daemon.core.CoreEventDispatcher;
+import com.aerofs.daemon.core.CoreQueue;
+import com.aerofs.daemon.core.CoreScheduler;
+import com.aerofs.daemon.core.acl.LocalACL;
+import com.aerofs.daemon.core.net.DigestedMessage;
+import com.aerofs.daemon.core.net.IncomingStreams;
+import com.aerofs.daemon.core.net.RPC;
+import com.aerofs.daemon.core.net.TransportRoutingLayer;
+import com.aerofs.daemon.core.net.device.Devices;
+import com.aerofs.daemon.core.phy.DigestSerializer;
+import com.aerofs.daemon.core.phy.IPhysicalPrefix;
+import com.aerofs.daemon.core.phy.PrefixOutputStream;
+import com.aerofs.daemon.core.polaris.db.RemoteContentDatabase.RemoteContent;
+import com.aerofs.daemon.core.protocol.GetContentRequest;
+import com.aerofs.daemon.core.tc.Cat;
+import com.aerofs.daemon.core.tc.TC;
+import com.aerofs.daemon.core.tc.Token;
+import com.aerofs.daemon.core.tc.TokenManager;
+import com.aerofs.daemon.event.net.Endpoint;
+import com.aerofs.daemon.lib.CoreExecutor;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.daemon.lib.id.StreamID;
+import com.aerofs.daemon.link.LinkStateService;
+import com.aerofs.daemon.transport.lib.StreamKey;
+import com.aerofs.ids.DID;
+import com.aerofs.ids.OID;
+import com.aerofs.ids.UserID;
+import com.aerofs.lib.ContentHash;
+import com.aerofs.lib.cfg.ICfgStore;
+import com.aerofs.lib.event.AbstractEBSelfHandling;
+import com.aerofs.lib.event.Prio;
+import com.aerofs.lib.id.SIndex;
+import com.aerofs.lib.id.SOID;
+import com.aerofs.proto.Core.PBCore;
+import com.aerofs.proto.Core.PBCore.Type;
+import com.aerofs.proto.Core.PBGetContentRequest;
+import com.aerofs.proto.Core.PBGetContentResponse;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.SettableFuture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Download time of a large file by a {@link MultiSourceDownload.Session} running on a core
+ * thread, from in-process peers with throttled links:
+ *
+ *      single      one peer, i.e. the throughput of a regular download over the same link
+ *      multi       all peers
+ *      slow        all peers, one of which is ten times slower than the others
+ *      offline     all peers, one of which goes offline a third of the way through
+ *
+ * Replies are delivered in core events after the round-trip delay, as RPC does. Their content
+ * is then read on the session's reader threads at the throughput of the peer's link, which is
+ * shared by all the ranges the peer is serving. The prefix only keeps the hash of the ranges
+ * appended to it, which is checked against the original content.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MultiSourceDownloadBenchmark
+{
+    private static final int CHUNK = 64 * C.KB;
+
+    @Param({"single", "multi", "slow", "offline"})
+    String sources;
+
+    @Param({"128"})
+    int fileMB;
+
+    @Param({"5"})
+    int peers;
+
+    @Param({"50"})
+    int linkMBps;
+
+    @Param({"2"})
+    int rttMs;
+
+    private final SOID _soid = new SOID(new SIndex(1), OID.generate());
+    private final UserID _user = UserID.fromInternal("bench@aerofs.com");
+
+    private final CoreQueue _q = new CoreQueue();
+    private final CoreScheduler _sched = new CoreScheduler(_q);
+    private final TokenManager _tokenManager = new TokenManager(new ICfgStore() {}, _q, _sched);
+    private final ScheduledExecutorService _network = Executors.newScheduledThreadPool(4);
+
+    private byte[] _content;
+    private RemoteContent _rc;
+    private MultiSourceDownload _msdl;
+
+    private final Map<DID, Peer> _peers = Maps.newHashMap();
+    private final Map<StreamKey, Stream> _streams = Maps.newConcurrentMap();
+    private final AtomicInteger _streamIds = new AtomicInteger();
+
+    // peer going offline once a third of the content is received, if any
+    private @Nullable Peer _offline;
+    private final AtomicLong _received = new AtomicLong();
+
+    private class Peer
+    {
+        final DID did = DID.generate();
+        final long bytesPerSec;
+        // when the link is next free
+        long next;
+        volatile boolean offline;
+
+        Peer(long bytesPerSec)
+        {
+            this.bytesPerSec = bytesPerSec;
+        }
+
+        /**
+         * Wait for the link to carry the given number of bytes
+         */
+        void transfer(int len) throws InterruptedException
+        {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                next = Math.max(next, now) + len * TimeUnit.SECONDS.toNanos(1) / bytesPerSec;
+                wait = next - now;
+            }
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Content of a range, as received from a peer
+     */
+    private class Stream extends InputStream
+    {
+        final Peer _peer;
+        final int _end;
+        int _pos;
+        volatile boolean _ended;
+
+        Stream(Peer peer, long offset, int length)
+        {
+            _peer = peer;
+            _pos = (int)offset;
+            _end = _pos + length;
+        }
+
+        @Override
+        public int read()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (_ended) throw new IOException("stream ended");
+            if (_peer.offline) throw new IOException("offline");
+            if (_pos == _end) return -1;
+            int n = Math.min(Math.min(len, CHUNK), _end - _pos);
+            try {
+                _peer.transfer(n);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            System.arraycopy(_content, _pos, b, off, n);
+            _pos += n;
+            if (_offline != null && _received.addAndGet(n) > _content.length / 3) {
+                _offline.offline = true;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Prefix that only hashes the content appended to it
+     */
+    private static class HashPrefix implements IPhysicalPrefix
+    {
+        final MessageDigest _md = BaseSecUtil.newMessageDigest();
+
+        @Override
+        public long getLength_()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte[] hashState_()
+        {
+            return DigestSerializer.serialize(_md);
+        }
+
+        @Override
+        public PrefixOutputStream newOutputStream_(boolean append)
+        {
+            return new PrefixOutputStream(ByteStreams.nullOutputStream(), _md);
+        }
+
+        @Override
+        public void moveTo_(IPhysicalPrefix pf, Trans t)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete_()
+        {
+        }
+    }
+
+    private void enqueue(Runnable r)
+    {
+        _q.enqueueBlocking(new AbstractEBSelfHandling() {
+            @Override
+            public void handle_()
+            {
+                r.run();
+            }
+        }, Prio.LO);
+    }
+
+    private void reply_(Peer peer, PBCore request, FutureCallback<DigestedMessage> cb)
+    {
+        PBGetContentRequest.Range r = request.getGetContentRequest().getRange();
+        PBCore pb = PBCore.newBuilder()
+                .setType(Type.REPLY)
+                .setGetContentResponse(PBGetContentResponse.newBuilder()
+                        .setVersion(_rc.version)
+                        .setLength(_rc.length)
+                        .setMtime(0)
+                        .setHash(_rc.hash.toPB())
+                        .setLts(0)
+                        .setRangeOffset(r.getOffset())
+                        .buildPartial())
+                .buildPartial();
+        StreamKey key = new StreamKey(peer.did, new StreamID(_streamIds.incrementAndGet()));
+        Stream is = new Stream(peer, r.getOffset(), (int)r.getLength());
+        _streams.put(key, is);
+        DigestedMessage msg = new DigestedMessage(pb, is, new Endpoint(null, peer.did), _user,
+                key);
+        _network.schedule(() -> enqueue(() -> cb.onSuccess(msg)), rttMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        // the defaults are enough for the access checks
+        ConfigurationProperties.setProperties(new Properties());
+
+        _content = new byte[fileMB * C.MB];
+        new Random(0).nextBytes(_content);
+        _rc = new RemoteContent(1, DID.generate(),
+                new ContentHash(BaseSecUtil.newMessageDigest().digest(_content)),
+                _content.length);
+
+        new TC(_q, new CoreEventDispatcher(ImmutableSet.of()), _sched, _tokenManager, () -> {})
+                .start_();
+
+        GetContentRequest pgcc = new GetContentRequest() {
+            @Override
+            public PBCore newRangeRequest_(SOID soid, long offset, long length)
+            {
+                return PBCore.newBuilder()
+                        .setType(Type.GET_CONTENT_REQUEST)
+                        .setGetContentRequest(PBGetContentRequest.newBuilder()
+                                .setRange(PBGetContentRequest.Range.newBuilder()
+                                        .setOffset(offset)
+                                        .setLength(length))
+                                .buildPartial())
+                        .buildPartial();
+            }
+        };
+        TransportRoutingLayer trl = new TransportRoutingLayer() {
+            @Override
+            public Endpoint sendUnicast_(DID did, PBCore pb)
+            {
+                return _peers.get(did).offline ? null : new Endpoint(null, did);
+            }
+        };
+        CoreExecutor coreExecutor = new CoreExecutor(_q);
+        RPC rpc = new RPC(trl, _sched, coreExecutor, new LinkStateService(), null,
+                new Devices(null, null, null), null) {
+            @Override
+            public void asyncRequest_(Endpoint ep, PBCore request,
+                    FutureCallback<DigestedMessage> handler)
+            {
+                reply_(_peers.get(ep.did()), request, handler);
+            }
+        };
+        IncomingStreams iss = new IncomingStreams() {
+            @Override
+            public void end_(StreamKey key)
+            {
+                Stream s = _streams.remove(key);
+                if (s != null) s._ended = true;
+            }
+        };
+        LocalACL lacl = new LocalACL(null, new TransManager(null), null, null) {
+            @Override
+            public boolean check_(UserID subject, SIndex sidx, Permissions permissions)
+            {
+                return true;
+            }
+        };
+        _msdl = new MultiSourceDownload(null, null, null, null, null, null, null, pgcc, trl, rpc,
+                iss, lacl, coreExecutor);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpPeers()
+    {
+        long rate = (long)linkMBps * C.MB;
+        _peers.clear();
+        _streams.clear();
+        _received.set(0);
+        _offline = null;
+
+        int n = sources.equals("single") ? 1 : peers;
+        for (int i = 0; i < n; ++i) {
+            Peer p = new Peer(i == 0 && sources.equals("slow") ? rate / 10 : rate);
+            _peers.put(p.did, p);
+            if (i == 0 && sources.equals("offline")) _offline = p;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        _network.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean download() throws Exception
+    {
+        SettableFuture<Boolean> done = SettableFuture.create();
+        List<DID> dids = Lists.newArrayList(_peers.keySet());
+        enqueue(() -> {
+            try (Token tk = _tokenManager.acquire_(Cat.UNLIMITED, "msdl")) {
+                done.set(_msdl.new Session(_soid, _rc, new HashPrefix(), 0, dids, tk, TC.tcb())
+                        .run_());
+            } catch (Throwable t) {
+                done.setException(t);
+            }
+        });
+        if (!done.get()) throw new IllegalStateException("download failed");
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.lib;
+
+import com.aerofs.daemon.core.CoreQueue;
+import com.aerofs.lib.OutArg;
+import com.aerofs.lib.event.AbstractEBSelfHandling;
+import com.aerofs.lib.event.IEvent;
+import com.aerofs.lib.event.Prio;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the core queue, on its own and with several threads enqueueing events while a
+ * core thread dequeues them, as transports and the IMC do. Enqueueing is non-blocking, as from
+ * core threads, so that no thread is left waiting at the end of an iteration.
+ *
+ *      single      one thread enqueues then dequeues an event
+ *      contended   three producers of low priority events and one consumer
+ *      mixed       as contended, with one of the producers sending high priority events, which
+ *                  makes the others spin until it gets the lock
+ *
+ * Enqueueing fails when the queue is full and dequeueing when it is empty, so the scores of the
+ * contended groups include calls that did nothing. Read the enqueued and dequeued counters
+ * instead, which only count events that went through the queue.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BlockingPrioQueueBenchmark
+{
+    private static final IEvent EV = new AbstractEBSelfHandling() {
+        @Override
+        public void handle_()
+        {
+        }
+    };
+
+    private final CoreQueue _q = new CoreQueue();
+    private final OutArg<Prio> _prio = new OutArg<>();
+
+    @Benchmark
+    @Group("single")
+    public IEvent single()
+    {
+        _q.enqueue(EV, Prio.LO);
+        return _q.tryDequeue(_prio);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters
+    {
+        public long enqueued;
+        public long dequeued;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            enqueued = 0;
+            dequeued = 0;
+        }
+    }
+
+    private void enqueue(Prio prio, Counters c)
+    {
+        if (_q.enqueue(EV, prio)) ++c.enqueued;
+    }
+
+    private void dequeue(Counters c)
+    {
+        if (_q.tryDequeue(new OutArg<>()) != null) ++c.dequeued;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void contendedEnqueue(Counters c)
+    {
+        enqueue(Prio.LO, c);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedDequeue(Counters c)
+    {
+        dequeue(c);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void mixedEnqueueLo(Counters c)
+    {
+        enqueue(Prio.LO, c);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedEnqueueHi(Counters c)
+    {
+        enqueue(Prio.HI, c);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedDequeue(Counters c)
+    {
+        dequeue(c);
+    }
+}
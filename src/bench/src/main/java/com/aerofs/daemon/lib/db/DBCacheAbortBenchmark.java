@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.lib.db;
+
+import com.aerofs.daemon.lib.LRUCache.IDataReader;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.lib.db.dbcw.SQLiteDBCW;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit rate of a DBCache under an abort-heavy workload
+ *
+ * Mimics the core accessing OAs: each transaction reads a handful of objects, with a skewed
+ * popularity, and a fraction of transactions abort (e.g. ExAborted while applying remote updates).
+ * Scoped invalidation is compared to the previous behavior of invalidating the whole cache on
+ * every abort. The hits and misses counters give the hit rate.
+ *
+ * The transactions are those of an empty in-memory database, so that mostly the cache is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DBCacheAbortBenchmark
+{
+    private static final int READS_PER_TRANS = 20;
+
+    @Param({"invalidate-all", "scoped"})
+    String invalidation;
+
+    @Param({"0.1"})
+    double abortRatio;
+
+    @Param({"100000"})
+    int keys;
+
+    @Param({"10000"})
+    int capacity;
+
+    private final IDataReader<Integer, Integer> _reader = k -> k;
+    private final Random _r = new Random(0);
+
+    private SQLiteDBCW _dbcw;
+    private TransManager _tm;
+    private DBCache<Integer, Integer> _cache;
+
+    private static class InvalidateAllCache extends DBCache<Integer, Integer>
+    {
+        InvalidateAllCache(TransManager tm, int capacity)
+        {
+            super(tm, capacity);
+        }
+
+        @Override
+        public void aborted_()
+        {
+            invalidateAll_();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters
+    {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        _dbcw = new SQLiteDBCW("jdbc:sqlite::memory:", false, false, false);
+        _dbcw.init_();
+        _tm = new TransManager(new Trans.Factory(_dbcw));
+        _cache = invalidation.equals("scoped")
+                ? new DBCache<>(_tm, capacity)
+                : new InvalidateAllCache(_tm, capacity);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException
+    {
+        _dbcw.fini_();
+    }
+
+    @Benchmark
+    public void transaction(Counters c) throws SQLException
+    {
+        long hits = _cache.hits_();
+        long misses = _cache.misses_();
+        try (Trans t = _tm.begin_()) {
+            for (int j = 0; j < READS_PER_TRANS; j++) {
+                // squaring a uniform variable skews accesses towards small keys
+                double u = _r.nextDouble();
+                _cache.get_((int)(u * u * keys), _reader);
+            }
+            if (_r.nextDouble() >= abortRatio) t.commit_();
+        }
+        c.hits += _cache.hits_() - hits;
+        c.misses += _cache.misses_() - misses;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.transport.lib;
+
+import com.aerofs.base.C;
+import com.aerofs.daemon.lib.DaemonParam;
+import com.aerofs.daemon.lib.id.StreamID;
+import com.aerofs.daemon.transport.lib.handlers.TransportMessage;
+import com.aerofs.ids.DID;
+import com.aerofs.ids.UserID;
+import com.aerofs.proto.Transport.PBStream;
+import com.aerofs.proto.Transport.PBTPHeader;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static com.aerofs.daemon.transport.lib.BootstrapFactoryUtil.newFrameDecoder;
+import static com.aerofs.daemon.transport.lib.BootstrapFactoryUtil.newLengthFieldPrepender;
+import static com.aerofs.proto.Transport.PBTPHeader.Type.STREAM;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Throughput and CPU cost of streaming content over loopback TCP
+ *
+ *      regular     chunks of MAX_UNICAST_MESSAGE_SIZE, the framing used by peers that don't
+ *                  support bulk frames
+ *      bulk        chunks of MAX_BULK_CHUNK_SIZE
+ *
+ * Both ends use the transport framing, OutgoingStream/IncomingStream flow control and write
+ * received chunks straight to a sink, as ContentReceiver does. TLS, which the TCP transport adds
+ * below the framing, is left out to isolate the per-chunk overhead. CPU time is that of the
+ * whole process, i.e. of both ends.
+ *
+ * Socket buffers are capped at SOCKET_BUFFER_SIZE. Loopback otherwise grows them to several MB,
+ * more 8KB chunks than IncomingStream accepts past the pause request, and regular streams fail
+ * with CHOKE_ERROR.
+ *
+ * Each operation streams sizeMB of content. The mbPerSecond counter is the throughput and the
+ * cpuSecondsPerGB counter the CPU cost. JMH sums event counters over the measured iterations,
+ * divide them by the operations counter for the value per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkStreamBenchmark
+{
+    @Param({"regular", "bulk"})
+    String framing;
+
+    @Param({"256"})
+    long sizeMB;
+
+    private static final DID did = DID.generate();
+
+    private static final int SOCKET_BUFFER_SIZE = 512 * C.KB;
+
+    private static final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean)ManagementFactory.getOperatingSystemMXBean();
+
+    private static class ByteArraysEncoder extends OneToOneEncoder
+    {
+        @Override
+        protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg)
+        {
+            return msg instanceof byte[][] ? ChannelBuffers.wrappedBuffer((byte[][])msg) : msg;
+        }
+    }
+
+    /**
+     * Receiving end: create incoming streams and feed them payloads
+     */
+    private static class Receiver extends SimpleChannelUpstreamHandler
+    {
+        final StreamManager sm = new StreamManager(30 * C.SEC);
+        volatile SettableFuture<IncomingStream> begun = SettableFuture.create();
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent me) throws Exception
+        {
+            TransportMessage m = new TransportMessage((ChannelBuffer)me.getMessage(), did,
+                    UserID.DUMMY);
+            PBStream s = m.getHeader().getStream();
+            StreamKey sk = new StreamKey(did, new StreamID(s.getStreamId()));
+            if (!m.isPayload()) {
+                sm.newIncomingStream(sk, me.getChannel());
+                return;
+            }
+            // same as TransportProtocolUtil.processStreamPayload
+            IncomingStream is = sm.getIncomingStream(sk);
+            if (is.begin()) {
+                is.offer(m.getPayload());
+                begun.set(is);
+            } else {
+                is.offer(s.getSeqNum(), m.getPayload());
+            }
+        }
+    }
+
+    /**
+     * Sending end: honor flow control requests from the receiver
+     */
+    private static class Sender extends SimpleChannelUpstreamHandler
+    {
+        final StreamManager sm = new StreamManager(30 * C.SEC);
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent me) throws Exception
+        {
+            TransportMessage m = new TransportMessage((ChannelBuffer)me.getMessage(), did,
+                    UserID.DUMMY);
+            PBStream s = m.getHeader().getStream();
+            StreamKey sk = new StreamKey(did, new StreamID(s.getStreamId()));
+            if (s.getType() == PBStream.Type.PAUSE_STREAM) {
+                sm.pauseOutgoingStream(sk);
+            } else if (s.getType() == PBStream.Type.RESUME_STREAM) {
+                sm.resumeOutgoingStream(sk);
+            }
+        }
+    }
+
+    private final Receiver _receiver = new Receiver();
+    private final Sender _sender = new Sender();
+    private ServerBootstrap _server;
+    private ClientBootstrap _client;
+    private Channel _listener;
+    private Channel _c;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters
+    {
+        public long operations;
+        public double mbPerSecond;
+        public double cpuSecondsPerGB;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            operations = 0;
+            mbPerSecond = 0;
+            cpuSecondsPerGB = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        _server = new ServerBootstrap(new NioServerSocketChannelFactory(
+                newCachedThreadPool(), newCachedThreadPool(), 1));
+        _server.setPipelineFactory(() -> Channels.pipeline(newFrameDecoder(),
+                newLengthFieldPrepender(), new ByteArraysEncoder(), _receiver));
+        _server.setOption("child.receiveBufferSize", SOCKET_BUFFER_SIZE);
+        _server.setOption("child.sendBufferSize", SOCKET_BUFFER_SIZE);
+        _listener = _server.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        _client = new ClientBootstrap(new NioClientSocketChannelFactory(
+                newCachedThreadPool(), newCachedThreadPool(), 1, 1));
+        _client.setPipelineFactory(() -> Channels.pipeline(newFrameDecoder(),
+                newLengthFieldPrepender(), new ByteArraysEncoder(), _sender));
+        _client.setOption("receiveBufferSize", SOCKET_BUFFER_SIZE);
+        _client.setOption("sendBufferSize", SOCKET_BUFFER_SIZE);
+        _c = _client.connect(_listener.getLocalAddress()).awaitUninterruptibly().getChannel();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        _c.close().awaitUninterruptibly();
+        _listener.close().awaitUninterruptibly();
+        _client.releaseExternalResources();
+        _server.releaseExternalResources();
+    }
+
+    @Benchmark
+    public void stream(Counters counters) throws Exception
+    {
+        int chunkSize = framing.equals("bulk")
+                ? DaemonParam.MAX_BULK_CHUNK_SIZE : DaemonParam.MAX_UNICAST_MESSAGE_SIZE;
+        long total = sizeMB * C.MB;
+
+        _receiver.begun = SettableFuture.create();
+        StreamKey sk = _sender.sm.newOutgoingStreamKey(did);
+        _c.write(TransportProtocolUtil.newControl(PBTPHeader.newBuilder()
+                .setType(STREAM)
+                .setStream(PBStream.newBuilder()
+                        .setType(PBStream.Type.BEGIN_STREAM)
+                        .setStreamId(sk.strmid.getInt()))
+                .build()));
+        OutgoingStream out = _sender.sm.newOutgoingStream(sk, _c);
+
+        SettableFuture<Void> received = SettableFuture.create();
+        Thread reader = new Thread(() -> {
+            try (IncomingStream is = _receiver.begun.get(30, TimeUnit.SECONDS)) {
+                long remaining = total;
+                while (remaining > 0) {
+                    remaining -= is.transferTo(ByteStreams.nullOutputStream(),
+                            (int)Math.min(Integer.MAX_VALUE, remaining));
+                }
+                received.set(null);
+            } catch (Throwable e) {
+                received.setException(e);
+            }
+        });
+
+        byte[] chunk = new byte[chunkSize];
+        long cpu = os.getProcessCpuTime();
+        long start = System.nanoTime();
+        reader.start();
+        for (long sent = 0; sent < total; sent += chunk.length) out.writeAsync(chunk);
+        received.get();
+        long elapsed = System.nanoTime() - start;
+        cpu = os.getProcessCpuTime() - cpu;
+        out.close();
+
+        counters.operations++;
+        counters.mbPerSecond += total / (double)C.MB / (elapsed / 1e9);
+        counters.cpuSecondsPerGB += cpu / 1e9 / (total / (double)C.GB);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.lib;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.base.C;
+import com.aerofs.daemon.lib.HashStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content digests, for the given amount of data:
+ *
+ *      sha256          BaseSecUtil.hash, which gets a new digest for every call
+ *      sha256Reused    same digest reused, to tell the cost of getting a digest apart
+ *      md5             BaseSecUtil's MD5 digest, as used for entity tags by the REST API
+ *      blockHash       ContentBlockHash of the data split in 4MB blocks, as block storage does
+ *                      when writing a file, fed in the chunks of 64KB in which content is
+ *                      received from peers
+ *
+ * The data is random, see {@link #setUp} for the seed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ContentHashBenchmark
+{
+    private static final int CHUNK = 64 * C.KB;
+
+    @Param({"4096", "65536", "10485760"})
+    int bytes;
+
+    private byte[] _data;
+    private MessageDigest _md;
+
+    @Setup
+    public void setUp()
+    {
+        _data = new byte[bytes];
+        new Random(0).nextBytes(_data);
+        _md = BaseSecUtil.newMessageDigest();
+    }
+
+    @Benchmark
+    public byte[] sha256()
+    {
+        return BaseSecUtil.hash(_data);
+    }
+
+    @Benchmark
+    public byte[] sha256Reused()
+    {
+        _md.update(_data);
+        return _md.digest();
+    }
+
+    @Benchmark
+    public byte[] md5()
+    {
+        MessageDigest md = BaseSecUtil.newMessageDigestMD5();
+        md.update(_data);
+        return md.digest();
+    }
+
+    @Benchmark
+    public ContentBlockHash blockHash()
+    {
+        HashStream hs = HashStream.newFileHasher();
+        for (int off = 0; off < _data.length; off += CHUNK) {
+            hs.update(_data, off, Math.min(CHUNK, _data.length - off));
+        }
+        hs.close();
+        return hs.getHashAttrib();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.lib;
+
+import com.aerofs.base.BaseUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken by ExternalSorter to sort a large number of elements, for every combination of mode
+ * and in-memory run size:
+ *
+ *      serial      one run at a time on the calling thread, Java serialization (the default)
+ *      codec       one run at a time on the calling thread, binary codec
+ *      parallel    runs sorted and written in the common fork-join pool, binary codec
+ *
+ * Each operation adds all the elements, then reads back the merged output. The heap of the
+ * forked VM must be large enough to hold (pending runs + 1) runs in parallel mode, e.g.
+ *      gradle :src:bench:jmh -PjmhArgs='ExternalSorter -jvmArgsAppend -Xmx4g'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ExternalSorterBenchmark
+{
+    private static final int PENDING_RUNS = 2;
+
+    @Param({"serial", "codec", "parallel"})
+    String mode;
+
+    @Param({"65536", "1048576", "4194304"})
+    long runSize;
+
+    @Param({"10000000"})
+    long elements;
+
+    public static class Item implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        String _name;
+        Date _date;
+        long _seq;
+
+        static final Comparator<Item> COMPARATOR = (o1, o2) -> {
+            int c;
+            if ((c = BaseUtil.compare(o1._date, o2._date)) != 0) return c;
+            if ((c = BaseUtil.compare(o1._name, o2._name)) != 0) return c;
+            return BaseUtil.compare(o1._seq, o2._seq);
+        };
+
+        static final ExternalSorter.Codec<Item> CODEC = new ExternalSorter.Codec<Item>() {
+            @Override
+            public void write(DataOutput out, Item value) throws IOException
+            {
+                out.writeUTF(value._name);
+                out.writeLong(value._date.getTime());
+                out.writeLong(value._seq);
+            }
+
+            @Override
+            public Item read(DataInput in) throws IOException
+            {
+                Item item = new Item();
+                item._name = in.readUTF();
+                item._date = new Date(in.readLong());
+                item._seq = in.readLong();
+                return item;
+            }
+        };
+    }
+
+    @Benchmark
+    public long sort() throws Exception
+    {
+        ExternalSorter<Item> sorter = new ExternalSorter<>(Item.COMPARATOR);
+        sorter.setMaxSize(runSize);
+        switch (mode) {
+        case "serial":
+            break;
+        case "codec":
+            sorter.setCodec(Item.CODEC);
+            break;
+        case "parallel":
+            sorter.setCodec(Item.CODEC);
+            sorter.setForkJoinPool(ForkJoinPool.commonPool(), PENDING_RUNS);
+            break;
+        default:
+            throw new IllegalArgumentException(mode);
+        }
+
+        Random r = new Random(elements);
+        long now = System.currentTimeMillis();
+        try {
+            for (long i = 0; i < elements; ++i) {
+                Item item = new Item();
+                item._name = Long.toString(r.nextLong() & Long.MAX_VALUE, 36);
+                item._date = new Date(now - r.nextInt(7 * 24 * 3600 * 1000));
+                item._seq = i;
+                sorter.add(item);
+            }
+            ExternalSorter.Input<Item> it = sorter.sort();
+            long n = 0;
+            Item prev = null;
+            while (it.hasNext()) {
+                Item item = it.next();
+                if (prev != null && Item.COMPARATOR.compare(prev, item) > 0) {
+                    throw new AssertionError("out of order at " + n);
+                }
+                prev = item;
+                ++n;
+            }
+            it.close();
+            if (n != elements) throw new AssertionError(n + " != " + elements);
+            return n;
+        } finally {
+            sorter.close();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.lib.bf;
+
+import com.aerofs.base.C;
+import com.aerofs.ids.OID;
+import com.aerofs.ids.UniqueID;
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filters of a store exchanged by peers as it grows, for:
+ *
+ *      legacy      the fixed-size filter, as sent to older peers
+ *      bulk        the scalable filter, with all objects added to the same filter, as when a
+ *                  store is first populated
+ *      batched     the scalable filter, with objects added to fresh filters in batches which are
+ *                  then merged into a base filter, as SenderFilters does after each exchange
+ *                  with a peer
+ *
+ * Each peer has a random subset of the objects of the store. The time is that of building the
+ * filter of a peer. The counters are, per peer, the size of the filter both as sent over the
+ * wire and in memory, in KB, its false positive rate, and the resulting rate of wasted requests
+ * from the collector, in percent. JMH sums event counters over the measured iterations, divide them by the operations
+ * counter for the value per operation.
+ *
+ * The false positive rate is measured over objects that are not in the filter. Wasted requests
+ * are measured by collecting all the objects of the store from the peers: the collector tries
+ * the peers whose filter contains an object, in random order, until one of them has it. Any
+ * request sent to a peer that doesn't have the object is wasted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BFOIDBenchmark
+{
+    private static final int PROBES = 100000;
+
+    @Param({"legacy", "bulk", "batched"})
+    String filter;
+
+    @Param({"1000", "100000", "1000000"})
+    int objects;
+
+    @Param({"4"})
+    int peers;
+
+    @Param({"1000"})
+    int batch;
+
+    private final Random _rand = new Random(0);
+
+    // objects of each peer
+    private final List<List<OID>> _content = Lists.newArrayList();
+    private int _peer;
+
+    private double _wireKB;
+    private double _heapKB;
+    private double _falsePositives;
+    private double _wasted;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters
+    {
+        public long operations;
+        public double wireKB;
+        public double heapKB;
+        public double falsePositives;
+        public double wasted;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            operations = 0;
+            wireKB = 0;
+            heapKB = 0;
+            falsePositives = 0;
+            wasted = 0;
+        }
+    }
+
+    private OID oid()
+    {
+        byte[] bs = new byte[16];
+        _rand.nextBytes(bs);
+        // version 4, as generated by UniqueID
+        bs[UniqueID.VERSION_BYTE] = (byte)((bs[UniqueID.VERSION_BYTE] & 0x0f) | 0x40);
+        return new OID(bs);
+    }
+
+    private static BFOID bulk(List<OID> oids)
+    {
+        BFOID bf = new BFOID();
+        for (OID oid : oids) bf.add_(oid);
+        return bf;
+    }
+
+    private static BFOID batched(List<OID> oids, int batch)
+    {
+        BFOID base = new BFOID();
+        for (int i = 0; i < oids.size(); i += batch) {
+            base.union_(bulk(oids.subList(i, Math.min(oids.size(), i + batch))));
+        }
+        return base;
+    }
+
+    private BFOID build(List<OID> oids)
+    {
+        switch (filter) {
+        case "legacy":
+            return new BFOID(bulk(oids).toLegacyPB());
+        case "bulk":
+            return bulk(oids);
+        case "batched":
+            return batched(oids, batch);
+        default:
+            throw new IllegalArgumentException(filter);
+        }
+    }
+
+    private double fpr(BFOID bf)
+    {
+        int fp = 0;
+        for (int i = 0; i < PROBES; i++) if (bf.contains_(oid())) ++fp;
+        return (double)fp / PROBES;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        List<OID> store = Lists.newArrayListWithCapacity(objects);
+        for (int i = 0; i < objects; i++) store.add(oid());
+
+        // each object is on one peer, and on each of the others with a probability of 1/2
+        boolean[][] has = new boolean[peers][objects];
+        for (int p = 0; p < peers; p++) _content.add(Lists.newArrayList());
+        for (int i = 0; i < objects; i++) {
+            int owner = _rand.nextInt(peers);
+            for (int p = 0; p < peers; p++) {
+                if (p == owner || _rand.nextBoolean()) {
+                    has[p][i] = true;
+                    _content.get(p).add(store.get(i));
+                }
+            }
+        }
+
+        List<BFOID> filters = Lists.newArrayList();
+        long bytes = 0;
+        long heap = 0;
+        double fpr = 0;
+        for (List<OID> oids : _content) {
+            BFOID bf = build(oids);
+            bytes += (filter.equals("legacy") ? bf.toLegacyPB() : bf.toPB()).size();
+            heap += bf.heapSize();
+            fpr += fpr(bf);
+            filters.add(bf);
+        }
+
+        long requests = 0;
+        long wasted = 0;
+        List<Integer> order = Lists.newArrayList();
+        for (int p = 0; p < peers; p++) order.add(p);
+        for (int i = 0; i < objects; i++) {
+            int[] h = BFOID.hash(store.get(i));
+            Collections.shuffle(order, _rand);
+            for (int p : order) {
+                if (!filters.get(p).contains_(h)) continue;
+                ++requests;
+                if (has[p][i]) break;
+                ++wasted;
+            }
+        }
+
+        _wireKB = (double)bytes / peers / C.KB;
+        _heapKB = (double)heap / peers / C.KB;
+        _falsePositives = 100 * fpr / peers;
+        _wasted = 100.0 * wasted / requests;
+    }
+
+    @Benchmark
+    public BFOID build(Counters c)
+    {
+        c.operations++;
+        c.wireKB += _wireKB;
+        c.heapKB += _heapKB;
+        c.falsePositives += _falsePositives;
+        c.wasted += _wasted;
+        _peer = (_peer + 1) % peers;
+        return build(_content.get(_peer));
+    }
+}
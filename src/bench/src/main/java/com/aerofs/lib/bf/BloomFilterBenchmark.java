@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.lib.bf;
+
+import com.aerofs.ids.OID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bloom filters of OIDs, as exchanged by peers to find out who has which object, for the given
+ * number of objects. The scalable filter only keeps the indices of the bits set up to a few
+ * thousand objects, and a bitmap beyond.
+ *
+ *      add*            building a filter of all the objects
+ *      contains*       testing an object against a filter of all the objects, half of the tested
+ *                      objects being in the filter
+ *      containsHashed  same as containsScalable, with the object hashed beforehand as the
+ *                      collector does when testing it against the filters of several peers
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BloomFilterBenchmark
+{
+    @Param({"100", "100000"})
+    int objects;
+
+    private OID[] _oids;
+    // half of them are in the filters
+    private OID[] _probes;
+    private int[][] _hashes;
+
+    private BloomFilter<OID> _legacy;
+    private BFOID _scalable;
+
+    private int _i;
+
+    @Setup
+    public void setUp()
+    {
+        _oids = new OID[objects];
+        _probes = new OID[objects];
+        _hashes = new int[objects][];
+        for (int i = 0; i < objects; i++) {
+            _oids[i] = OID.generate();
+            _probes[i] = i % 2 == 0 ? _oids[i] : OID.generate();
+            _hashes[i] = BFOID.hash(_probes[i]);
+        }
+
+        _legacy = addLegacy();
+        _scalable = addScalable();
+    }
+
+    private int next()
+    {
+        if (++_i == objects) _i = 0;
+        return _i;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BloomFilter<OID> addLegacy()
+    {
+        BloomFilter<OID> bf = new BloomFilter<>(BFOID.HASH);
+        for (OID oid : _oids) bf.add_(oid);
+        return bf;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BFOID addScalable()
+    {
+        BFOID bf = new BFOID();
+        for (OID oid : _oids) bf.add_(oid);
+        return bf;
+    }
+
+    @Benchmark
+    public boolean containsLegacy()
+    {
+        return _legacy.contains_(_probes[next()]);
+    }
+
+    @Benchmark
+    public boolean containsScalable()
+    {
+        return _scalable.contains_(_probes[next()]);
+    }
+
+    @Benchmark
+    public boolean containsHashed()
+    {
+        return _scalable.contains_(_hashes[next()]);
+    }
+}
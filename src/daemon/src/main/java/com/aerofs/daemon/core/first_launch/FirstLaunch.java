@@ -246,7 +246,7 @@ public class FirstLaunch
                     .signInRemote();
             l.debug("get acl");
             ImmutableMap.Builder<SID, PBStoreACL> stores = ImmutableMap.builder();
-            for (PBStoreACL sacl : sp.getACL(0L).getStoreAclList()) {
+            for (PBStoreACL sacl : sp.getACL(0L, false).getStoreAclList()) {
                 stores.put(new SID(BaseUtil.fromPB(sacl.getStoreId())), sacl);
             }
             _as._accessibleStores = stores.build();
@@ -82,7 +82,7 @@ class DLTFetchStoreNames extends DaemonLaunchTask
         return _tokenManager.inPseudoPause_(Cat.UNLIMITED, "spacl4foldername", () ->
                 newMutualAuthClientFactory().create()
                     .signInRemote()
-                    .getACL(0L)
+                    .getACL(0L, false)
         );
     }
 
@@ -20,7 +20,10 @@ import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
@@ -33,6 +36,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -597,6 +601,9 @@ public class LinkedRevProvider implements IPhysicalRevProvider
                     new ExternalSorter<RevInfo>(RevInfo.CHRONOLOGICAL);
             {
                 _sorter.setMaxSize(64 << 10);
+                _sorter.setCodec(RevInfo.CODEC);
+                // sort and write each run in the background while walking the rev tree
+                _sorter.setForkJoinPool(ForkJoinPool.commonPool(), 1);
             }
 
             // keep past 7 days
@@ -703,6 +710,32 @@ public class LinkedRevProvider implements IPhysicalRevProvider
             }
         };
 
+        static final ExternalSorter.Codec<RevInfo> CODEC = new ExternalSorter.Codec<RevInfo>() {
+            @Override
+            public void write(DataOutput out, @Nonnull RevInfo value) throws IOException
+            {
+                byte[] path = BaseUtil.string2utf(value._path);
+                out.writeInt(path.length);
+                out.write(path);
+                out.writeInt(value._info._kidx);
+                out.writeLong(value._info._rtime);
+                out.writeLong(value._info._mtime);
+                out.writeLong(value._length);
+            }
+
+            @Override
+            public RevInfo read(DataInput in) throws IOException
+            {
+                byte[] path = new byte[in.readInt()];
+                in.readFully(path);
+                int kidx = in.readInt();
+                long rtime = in.readLong();
+                long mtime = in.readLong();
+                return new RevInfo(BaseUtil.utf2string(path), new RevisionInfo(kidx, rtime, mtime),
+                        in.readLong());
+            }
+        };
+
         final String _path;             // absolute path of revision file
         final RevisionInfo _info;       // decoded revision info
         final long _length;             // length in bytes of revision file
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.linked.db;
+
+import com.aerofs.base.BaseUtil;
+
+import java.util.Arrays;
+
+/**
+ * Summary of the physical content of a folder, as seen by a single listing
+ *
+ * Two fingerprints of the same folder are equal iff, as far as the linker is concerned, none of
+ * its immediate children was added, removed, renamed or modified between the two listings.
+ */
+public class DirectoryFingerprint
+{
+    public final int _count;
+    public final long _mtime;
+    public final byte[] _digest;
+
+    public DirectoryFingerprint(int count, long mtime, byte[] digest)
+    {
+        _count = count;
+        _mtime = mtime;
+        _digest = digest;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof DirectoryFingerprint)) return false;
+        DirectoryFingerprint fp = (DirectoryFingerprint)o;
+        return _count == fp._count && _mtime == fp._mtime && Arrays.equals(_digest, fp._digest);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(_digest);
+    }
+
+    @Override
+    public String toString()
+    {
+        return _count + ":" + _mtime + ":" + BaseUtil.hexEncode(_digest);
+    }
+}
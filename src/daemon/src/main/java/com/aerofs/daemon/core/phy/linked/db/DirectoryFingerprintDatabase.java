@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.linked.db;
+
+import com.aerofs.daemon.core.store.IStoreDeletionOperator;
+import com.aerofs.daemon.core.store.StoreDeletionOperators;
+import com.aerofs.daemon.lib.db.AbstractDatabase;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.lib.db.DBUtil;
+import com.aerofs.lib.db.PreparedStatementWrapper;
+import com.aerofs.lib.db.dbcw.IDBCW;
+import com.aerofs.lib.id.SIndex;
+import com.aerofs.lib.id.SOID;
+import com.google.inject.Inject;
+
+import javax.annotation.Nullable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static com.aerofs.daemon.core.phy.linked.db.LinkedStorageSchema.*;
+
+/**
+ * Fingerprint of the physical content of each folder, as of the last successful scan
+ *
+ * A folder whose current fingerprint matches the stored one does not need to be scanned again.
+ *
+ * Fingerprints are keyed by the SOID of the folder holding the logical children, i.e. the root
+ * of the anchored store for an anchor. The fingerprint of a folder is deleted whenever one of
+ * its logical children changes, see DirectoryFingerprintInvalidator, otherwise the physical
+ * folder could revert to its fingerprinted state with the logical children out of sync, e.g. a
+ * file is created and picked up through a notification, then deleted while notifications are
+ * missed. Entries of deleted stores are removed to keep the table from growing forever.
+ */
+public class DirectoryFingerprintDatabase extends AbstractDatabase implements IStoreDeletionOperator
+{
+    @Inject
+    public DirectoryFingerprintDatabase(IDBCW dbcw, StoreDeletionOperators sdo)
+    {
+        super(dbcw);
+        sdo.addImmediate_(this);
+    }
+
+    @Override
+    public void deleteStore_(SIndex sidx, Trans t) throws SQLException
+    {
+        try (Statement s = c().createStatement()) {
+            s.executeUpdate("delete from " + T_DFP + " where " + C_DFP_SIDX + "=" + sidx.getInt());
+        }
+    }
+
+    private final PreparedStatementWrapper _pswGet = new PreparedStatementWrapper(
+            DBUtil.selectWhere(T_DFP, C_DFP_SIDX + "=? and " + C_DFP_OID + "=?",
+                    C_DFP_COUNT, C_DFP_MTIME, C_DFP_DIGEST));
+    public @Nullable DirectoryFingerprint getFingerprint_(SOID soid) throws SQLException
+    {
+        try (ResultSet rs = query(_pswGet, soid.sidx().getInt(), soid.oid().getBytes())) {
+            return rs.next()
+                    ? new DirectoryFingerprint(rs.getInt(1), rs.getLong(2), rs.getBytes(3))
+                    : null;
+        }
+    }
+
+    private final PreparedStatementWrapper _pswSet = new PreparedStatementWrapper(
+            DBUtil.insertOrReplaceInto(T_DFP,
+                    C_DFP_SIDX, C_DFP_OID, C_DFP_COUNT, C_DFP_MTIME, C_DFP_DIGEST));
+    public void setFingerprint_(SOID soid, DirectoryFingerprint fp, Trans t) throws SQLException
+    {
+        update(_pswSet, soid.sidx().getInt(), soid.oid().getBytes(), fp._count, fp._mtime,
+                fp._digest);
+    }
+
+    private final PreparedStatementWrapper _pswDelete = new PreparedStatementWrapper(
+            DBUtil.deleteWhereEquals(T_DFP, C_DFP_SIDX, C_DFP_OID));
+    public void deleteFingerprint_(SOID soid, Trans t) throws SQLException
+    {
+        update(_pswDelete, soid.sidx().getInt(), soid.oid().getBytes());
+    }
+}
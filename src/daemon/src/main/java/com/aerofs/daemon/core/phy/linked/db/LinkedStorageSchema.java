@@ -31,7 +31,15 @@ public class LinkedStorageSchema implements ISchema
             T_PSA               = "psa",
             C_PSA_ID            = "psa_i",      // auto-inc unique id of entry
             C_PSA_PATH          = "psa_p",      // old path, if null files will not go to history
-            C_PSA_REV           = "psa_r";
+            C_PSA_REV           = "psa_r",
+
+            // Directory fingerprints, see ScanSession
+            T_DFP               = "dfp",
+            C_DFP_SIDX          = "dfp_s",
+            C_DFP_OID           = "dfp_o",
+            C_DFP_COUNT         = "dfp_c",      // number of physical children
+            C_DFP_MTIME         = "dfp_t",      // max mtime of the folder and its children
+            C_DFP_DIGEST        = "dfp_d";      // digest of names, types, lengths and mtimes
 
     @Override
     public void create_(Statement s, IDBCW dbcw) throws SQLException
@@ -39,6 +47,7 @@ public class LinkedStorageSchema implements ISchema
         createNROTable_(s, dbcw);
         createPhysicalStagingAreaTable_(s, dbcw);
         createHistoryTables_(s, dbcw);
+        createDirectoryFingerprintTable_(s, dbcw);
     }
 
     public static void createHistoryTables_(Statement s, IDBCW dbcw) throws SQLException {
@@ -83,4 +92,16 @@ public class LinkedStorageSchema implements ISchema
                 + ")" + dbcw.charSet());
     }
 
+    public static void createDirectoryFingerprintTable_(Statement s, IDBCW dbcw)
+            throws SQLException
+    {
+        s.executeUpdate("create table if not exists " + T_DFP + "("
+                + C_DFP_SIDX + " integer not null,"
+                + C_DFP_OID + dbcw.uniqueIdType() + " not null,"
+                + C_DFP_COUNT + " integer not null,"
+                + C_DFP_MTIME + " integer not null,"
+                + C_DFP_DIGEST + " blob not null,"
+                + "primary key (" + C_DFP_SIDX + "," + C_DFP_OID + ")"
+                + ")" + dbcw.charSet());
+    }
 }
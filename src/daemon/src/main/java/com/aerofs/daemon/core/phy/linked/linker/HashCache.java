@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.linked.linker;
+
+import com.aerofs.base.C;
+import com.aerofs.base.Loggers;
+import com.aerofs.ids.SID;
+import com.aerofs.lib.ClientParam;
+import com.aerofs.lib.ContentHash;
+import com.aerofs.lib.Util;
+import com.aerofs.lib.cfg.CfgAbsRTRoot;
+import com.aerofs.lib.db.DBUtil;
+import com.aerofs.lib.db.dbcw.IDBCW;
+import com.aerofs.lib.db.dbcw.SQLiteDBCW;
+import com.aerofs.lib.id.FID;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent (root, FID, length, mtime) -> ContentHash cache
+ *
+ * The core db is wiped on unlink/reinstall, at which point every file has to be hashed again
+ * before it can be advertised, which can take days for large shares. This cache lives in its own
+ * db in the rtroot so that unchanged files can be recognized without reading them again.
+ *
+ * FIDs are only unique within a volume, hence the root SID in the key. Entries of deleted files
+ * are never looked up again, so the cache is bounded to MAX_ENTRIES and the least recently used
+ * entries are dropped beyond that.
+ *
+ * The cache is purely an optimization: any failure to read or write it is logged and treated as
+ * a miss. For the same reason, writes are batched and a crash may lose the most recent entries.
+ *
+ * Thread-safe: accessed concurrently by all hasher threads. Recent entries are looked up without
+ * locking, only db reads and writes are serialized.
+ */
+class HashCache
+{
+    private final static Logger l = Loggers.getLogger(HashCache.class);
+
+    private static final String T_HC        = "hc";
+    private static final String C_HC_ROOT   = "hc_r";
+    private static final String C_HC_FID    = "hc_f";
+    private static final String C_HC_LENGTH = "hc_l";
+    private static final String C_HC_MTIME  = "hc_t";
+    private static final String C_HC_HASH   = "hc_h";
+    private static final String C_HC_USED   = "hc_u";
+
+    private static final int MAX_PENDING = 256;
+    private static final long MAX_PENDING_DELAY = 10 * C.SEC;
+
+    // about 100MB of db, the least recently used tenth is dropped when exceeded
+    static final long MAX_ENTRIES = 1000000;
+
+    private static class Key
+    {
+        final SID root;
+        final FID fid;
+
+        Key(SID root, FID fid)
+        {
+            this.root = root;
+            this.fid = fid;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return this == o || (o instanceof Key
+                    && root.equals(((Key)o).root) && fid.equals(((Key)o).fid));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(root, fid);
+        }
+    }
+
+    private static class CachedHash
+    {
+        final long length;
+        final long mtime;
+        final ContentHash hash;
+        final long used;
+
+        CachedHash(long length, long mtime, ContentHash hash, long used)
+        {
+            this.length = length;
+            this.mtime = mtime;
+            this.hash = hash;
+            this.used = used;
+        }
+    }
+
+    private final CfgAbsRTRoot _rtroot;
+    private final long _maxEntries;
+
+    // entries added or used since the last flush
+    private final ConcurrentMap<Key, CachedHash> _pending = new ConcurrentHashMap<>();
+    private volatile long _lastFlush = System.currentTimeMillis();
+    private volatile boolean _disabled;
+    private final AtomicBoolean _flushing = new AtomicBoolean();
+
+    // synchronized(this)
+    private IDBCW _dbcw;
+    private PreparedStatement _psGet;
+    private long _entries;
+
+    final AtomicLong _hits = new AtomicLong();
+    final AtomicLong _misses = new AtomicLong();
+
+    @Inject
+    HashCache(CfgAbsRTRoot rtroot)
+    {
+        this(rtroot, MAX_ENTRIES);
+    }
+
+    HashCache(CfgAbsRTRoot rtroot, long maxEntries)
+    {
+        _rtroot = rtroot;
+        _maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the cached hash if the file has not changed since it was last hashed, null otherwise
+     */
+    @Nullable ContentHash get(SID root, FID fid, long length, long mtime)
+    {
+        Key k = new Key(root, fid);
+        CachedHash e = _pending.get(k);
+        if (e == null && !_disabled) e = read(k);
+        boolean hit = e != null && e.length == length && e.mtime == mtime;
+        (hit ? _hits : _misses).incrementAndGet();
+        if (!hit) return null;
+        // keep the entry away from eviction
+        add(k, new CachedHash(length, mtime, e.hash, System.currentTimeMillis()));
+        return e.hash;
+    }
+
+    void put(SID root, FID fid, long length, long mtime, ContentHash hash)
+    {
+        add(new Key(root, fid), new CachedHash(length, mtime, hash, System.currentTimeMillis()));
+    }
+
+    private void add(Key k, CachedHash e)
+    {
+        if (_disabled) return;
+        _pending.put(k, e);
+        if ((_pending.size() >= MAX_PENDING || e.used - _lastFlush > MAX_PENDING_DELAY)
+                // other hashers keep going while one of them writes
+                && _flushing.compareAndSet(false, true)) {
+            try {
+                flush();
+            } finally {
+                _flushing.set(false);
+            }
+        }
+    }
+
+    synchronized void flush()
+    {
+        _lastFlush = System.currentTimeMillis();
+        if (_pending.isEmpty() || !init()) return;
+        Map<Key, CachedHash> batch = ImmutableMap.copyOf(_pending);
+        try (PreparedStatement psu = _dbcw.getConnection().prepareStatement(
+                DBUtil.updateWhere(T_HC, C_HC_ROOT + "=? and " + C_HC_FID + "=?",
+                        C_HC_LENGTH, C_HC_MTIME, C_HC_HASH, C_HC_USED));
+             PreparedStatement psi = _dbcw.getConnection().prepareStatement(
+                     DBUtil.insert(T_HC, C_HC_ROOT, C_HC_FID, C_HC_LENGTH, C_HC_MTIME,
+                             C_HC_HASH, C_HC_USED))) {
+            for (Entry<Key, CachedHash> e : batch.entrySet()) {
+                CachedHash h = e.getValue();
+                psu.setLong(1, h.length);
+                psu.setLong(2, h.mtime);
+                psu.setBytes(3, h.hash.getBytes());
+                psu.setLong(4, h.used);
+                psu.setBytes(5, e.getKey().root.getBytes());
+                psu.setBytes(6, e.getKey().fid.getBytes());
+                if (psu.executeUpdate() > 0) continue;
+
+                psi.setBytes(1, e.getKey().root.getBytes());
+                psi.setBytes(2, e.getKey().fid.getBytes());
+                psi.setLong(3, h.length);
+                psi.setLong(4, h.mtime);
+                psi.setBytes(5, h.hash.getBytes());
+                psi.setLong(6, h.used);
+                psi.executeUpdate();
+                ++_entries;
+            }
+            if (_entries > _maxEntries) evict();
+            _dbcw.commit_();
+        } catch (SQLException e) {
+            disable(e);
+            return;
+        }
+        // entries updated concurrently are kept for the next flush
+        for (Entry<Key, CachedHash> e : batch.entrySet()) _pending.remove(e.getKey(), e.getValue());
+    }
+
+    private void evict() throws SQLException
+    {
+        long n = _entries - _maxEntries + _maxEntries / 10;
+        try (PreparedStatement ps = _dbcw.getConnection().prepareStatement(
+                "delete from " + T_HC + " where rowid in (select rowid from " + T_HC
+                        + " order by " + C_HC_USED + " limit ?)")) {
+            ps.setLong(1, n);
+            _entries -= ps.executeUpdate();
+        }
+        l.info("evicted {} hash cache entries", n);
+    }
+
+    private synchronized @Nullable CachedHash read(Key k)
+    {
+        if (!init()) return null;
+        try {
+            if (_psGet == null) _psGet = _dbcw.getConnection().prepareStatement(
+                    DBUtil.selectWhere(T_HC, C_HC_ROOT + "=? and " + C_HC_FID + "=?",
+                            C_HC_LENGTH, C_HC_MTIME, C_HC_HASH, C_HC_USED));
+            _psGet.setBytes(1, k.root.getBytes());
+            _psGet.setBytes(2, k.fid.getBytes());
+            try (ResultSet rs = _psGet.executeQuery()) {
+                return rs.next()
+                        ? new CachedHash(rs.getLong(1), rs.getLong(2),
+                                new ContentHash(rs.getBytes(3)), rs.getLong(4))
+                        : null;
+            }
+        } catch (SQLException e) {
+            disable(e);
+            return null;
+        }
+    }
+
+    private boolean init()
+    {
+        if (_dbcw != null) return true;
+        if (_disabled) return false;
+        String path = Util.join(_rtroot.get(), ClientParam.HASH_CACHE_DATABASE);
+        try {
+            IDBCW dbcw = new SQLiteDBCW("jdbc:sqlite:" + path, false, true, true);
+            dbcw.init_();
+            try (Statement s = dbcw.getConnection().createStatement()) {
+                s.executeUpdate("create table if not exists " + T_HC + "("
+                        + C_HC_ROOT + " blob not null,"
+                        + C_HC_FID + " blob not null,"
+                        + C_HC_LENGTH + " integer not null,"
+                        + C_HC_MTIME + " integer not null,"
+                        + C_HC_HASH + " blob not null,"
+                        + C_HC_USED + " integer not null,"
+                        + "primary key (" + C_HC_ROOT + "," + C_HC_FID + "))");
+                s.executeUpdate("create index if not exists " + T_HC + "0 on " + T_HC
+                        + "(" + C_HC_USED + ")");
+                try (ResultSet rs = s.executeQuery("select count(*) from " + T_HC)) {
+                    _entries = DBUtil.count(rs);
+                }
+            }
+            dbcw.commit_();
+            _dbcw = dbcw;
+            return true;
+        } catch (SQLException e) {
+            l.warn("hash cache unavailable", e);
+            // most likely corrupted, start afresh on next launch
+            new File(path).delete();
+            _disabled = true;
+            _pending.clear();
+            return false;
+        }
+    }
+
+    private void disable(SQLException e)
+    {
+        l.warn("disable hash cache", e);
+        _disabled = true;
+        _pending.clear();
+        DBUtil.close(_psGet);
+        _psGet = null;
+        try {
+            _dbcw.fini_();
+        } catch (SQLException ex) {
+            l.warn("close hash cache", ex);
+        }
+        _dbcw = null;
+    }
+}
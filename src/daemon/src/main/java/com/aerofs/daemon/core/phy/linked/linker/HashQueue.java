@@ -5,20 +5,22 @@
 package com.aerofs.daemon.core.phy.linked.linker;
 
 import com.aerofs.base.BaseLogUtil;
-import com.aerofs.base.BaseSecUtil;
 import com.aerofs.base.C;
 import com.aerofs.base.Loggers;
 import com.aerofs.base.ex.ExNoResource;
 import com.aerofs.base.ex.ExNotFound;
+import com.aerofs.ids.SID;
 import com.aerofs.daemon.core.CoreScheduler;
+import com.aerofs.daemon.core.Dumpables;
 import com.aerofs.daemon.core.VersionUpdater;
 import com.aerofs.daemon.core.ds.CA;
 import com.aerofs.daemon.core.ds.DirectoryService;
 import com.aerofs.daemon.core.ds.OA;
+import com.aerofs.daemon.core.ds.ResolvedPath;
 import com.aerofs.daemon.core.ex.ExAborted;
 import com.aerofs.daemon.core.ex.ExUpdateInProgress;
 import com.aerofs.daemon.core.object.BranchDeleter;
-import com.aerofs.daemon.lib.fs.FileChunker;
+import com.aerofs.daemon.lib.fs.FileHasher;
 import com.aerofs.daemon.core.tc.Cat;
 import com.aerofs.daemon.core.tc.TokenManager;
 import com.aerofs.daemon.lib.db.AbstractTransListener;
@@ -26,26 +28,34 @@ import com.aerofs.daemon.lib.db.trans.Trans;
 import com.aerofs.daemon.lib.db.trans.TransLocal;
 import com.aerofs.daemon.lib.db.trans.TransManager;
 import com.aerofs.lib.ContentHash;
+import com.aerofs.lib.IDumpStatMisc;
+import com.aerofs.lib.cfg.ICfgStore;
 import com.aerofs.lib.event.AbstractEBSelfHandling;
 import com.aerofs.lib.event.IEvent;
 import com.aerofs.lib.id.*;
+import com.aerofs.lib.injectable.InjectableDriver;
 import com.aerofs.lib.injectable.InjectableFile;
 import com.aerofs.lib.os.OSUtil;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import org.slf4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.security.MessageDigest;
+import java.io.PrintStream;
 import java.sql.SQLException;
 import java.util.ArrayDeque;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.aerofs.lib.cfg.ICfgStore.HASH_THREADS;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -71,11 +81,16 @@ import static com.google.common.base.Preconditions.checkState;
  * the version vector is bumped if the content hash actually changed so that the new content may
  * propagate to remote devices.
  *
- * To avoid blocking core threads on potentially long disk I/O and hash computation, up to two
- * auxiliary threads are used. If the queue overflows, hashing will be done synchronously in the
- * calling thread to throttle incoming hash requests.
+ * To avoid blocking core threads on potentially long disk I/O and hash computation, a pool of
+ * auxiliary threads is used. Its size scales with the number of cores by default, which suits
+ * SSDs and RAID arrays, and can be lowered through {@link ICfgStore#HASH_THREADS} for disks that
+ * do not cope well with concurrent sequential reads. If the queue overflows, hashing will be done
+ * synchronously in the calling thread to throttle incoming hash requests.
+ *
+ * Files are read in large windows by {@link FileHasher} and results are recorded in a persistent
+ * {@link HashCache} so that unchanged files do not need to be read again after a reinstall.
  */
-public class HashQueue
+public class HashQueue implements IDumpStatMisc
 {
     private final static Logger l = Loggers.getLogger(HashQueue.class);
 
@@ -85,6 +100,15 @@ public class HashQueue
     private final TransManager _tm;
     private final TokenManager _tokenManager;
     private final Injector _inj; // late binding of BranchDeleter to work around circular dep...
+    private final InjectableDriver _dr;
+    private final HashCache _cache;
+    private final FileHasher _hasher = new FileHasher(OSUtil.isWindows());
+
+    private final AtomicLong _hashedBytes = new AtomicLong();
+    private final AtomicLong _hashedFiles = new AtomicLong();
+    // synchronized(this)
+    private long _lastDumpTime = System.nanoTime();
+    private long _lastDumpBytes;
 
     enum State
     {
@@ -105,6 +129,10 @@ public class HashQueue
         // only ever written from a core thread holding the core lock
         volatile boolean aborted;
 
+        // root under which the file lives, to look it up in the hash cache
+        // set on a core thread before the request is executed
+        @Nullable SID root;
+
         // only ever written from hasher thread
         // NB: might be a core thread NOT holding the core lock
         volatile State state;
@@ -136,6 +164,8 @@ public class HashQueue
             }
 
             newHash = hash();
+            // persist recent cache entries whenever the queue drains
+            if (_e.getQueue().isEmpty()) _cache.flush();
             checkState(state == State.PENDING);
             state = State.HASHED;
             if (newHash == null) {
@@ -152,39 +182,38 @@ public class HashQueue
             _requests.remove(soid, this);
         }
 
-        private synchronized FileChunker chunker()
+        private synchronized InjectableFile file()
         {
-            return new FileChunker(f, mtime, length, 0L, 16 * C.KB, OSUtil.isWindows());
+            return f;
         }
 
         private ContentHash hash()
         {
-            MessageDigest md = BaseSecUtil.newMessageDigest();
-            // TODO: pipeline I/O and CPU?
-            try (FileChunker chunker = chunker()) {
-                long total = 0;
-                byte[] bs;
-                while ((bs = chunker.getNextChunk_()) != null) {
-                    total += bs.length;
-                    if (total > length) {
-                        l.debug("file larger than expected {}", soid);
-                        return null;
-                    }
-                    md.update(bs);
-                    if (aborted) {
-                        l.debug("hash computation aborted {}", soid);
-                        return null;
-                    }
+            InjectableFile f = file();
+            try {
+                FID fid = _dr.getFID(f.getAbsolutePath());
+                boolean cacheable = fid != null && root != null;
+                ContentHash h = cacheable ? _cache.get(root, fid, length, mtime) : null;
+                if (h != null) {
+                    // the file may have changed between the lookup of the FID and the cache
+                    if (f.wasModifiedSince(mtime, length)) return null;
+                    l.debug("hash cache hit {}", soid);
+                    return h;
                 }
-                if (total != length) {
-                    l.debug("file smaller than expected {}", soid);
+
+                h = _hasher.hash(f, mtime, length, () -> aborted);
+                if (h == null) {
+                    l.debug("hash computation aborted {}", soid);
                     return null;
                 }
+                _hashedBytes.addAndGet(length);
+                _hashedFiles.incrementAndGet();
+                if (cacheable) _cache.put(root, fid, length, mtime, h);
+                return h;
             } catch (IOException|ExUpdateInProgress e) {
                 l.debug("hash computation failed {}", soid, e);
                 return null;
             }
-            return new ContentHash(md.digest());
         }
 
         // TODO: batch commit in a single transaction?
@@ -304,15 +333,14 @@ public class HashQueue
         }
     }
 
-    private final Executor _e = new ThreadPoolExecutor(
-            0, 2,                                           // at most 2 threads
-            1, TimeUnit.MINUTES,                            // idle thread TTL
-            new LinkedBlockingQueue<>(10000),               // bounded event queue
-            new CoreLockReleaseRunPolicy());                // blocking submit on queue overflow
+    private static final int MAX_AUTO_THREADS = 8;
+
+    private final ThreadPoolExecutor _e;
 
     @Inject
     public HashQueue(CoreScheduler sched, DirectoryService ds, VersionUpdater vu, TransManager tm,
-                     TokenManager tokenManager, Injector inj)
+                     TokenManager tokenManager, Injector inj, InjectableDriver dr, HashCache cache,
+                     ICfgStore cfgStore)
     {
         _sched = sched;
         _ds = ds;
@@ -320,6 +348,59 @@ public class HashQueue
         _tm = tm;
         _inj = inj;
         _tokenManager = tokenManager;
+        _dr = dr;
+        _cache = cache;
+
+        int threads = threads(cfgStore);
+        l.info("hash threads: {}", threads);
+        _e = new ThreadPoolExecutor(
+                threads, threads,
+                1, TimeUnit.MINUTES,                        // idle thread TTL
+                new LinkedBlockingQueue<>(10000),           // bounded event queue
+                new ThreadFactoryBuilder().setNameFormat("hq%d").setDaemon(true).build(),
+                new CoreLockReleaseRunPolicy());            // blocking submit on queue overflow
+        // NB: core threads are needed for the pool to grow beyond one thread before the queue
+        // is full, timing them out keeps the pool empty when idle
+        _e.allowCoreThreadTimeOut(true);
+
+        Dumpables.add("hq", this);
+    }
+
+    private static int threads(ICfgStore cfgStore)
+    {
+        int n = cfgStore.getInt(HASH_THREADS);
+        if (n > 0) return n;
+        return Math.max(2, Math.min(MAX_AUTO_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Override
+    public void dumpStatMisc(String indent, String indentUnit, PrintStream ps)
+    {
+        long bytes = _hashedBytes.get();
+        long now = System.nanoTime();
+        double rate;
+        synchronized (this) {
+            rate = (bytes - _lastDumpBytes) / ((now - _lastDumpTime) / 1e9);
+            _lastDumpBytes = bytes;
+            _lastDumpTime = now;
+        }
+        long hits = _cache._hits.get();
+        long misses = _cache._misses.get();
+
+        ps.println(indent + "requests " + _requests.size() + " queued " + _e.getQueue().size()
+                + " active " + _e.getActiveCount() + "/" + _e.getMaximumPoolSize()
+                + " committable " + committable());
+        ps.println(indent + "hashed " + _hashedFiles.get() + " files " + bytes + " bytes "
+                + String.format("%.1f", rate / C.MB) + " MB/s");
+        ps.println(indent + "cache hits " + hits + " misses " + misses + " ratio "
+                + String.format("%.2f", hits + misses > 0 ? (double)hits / (hits + misses) : 0.0));
+    }
+
+    private int committable()
+    {
+        synchronized (_committable) {
+            return _committable.size();
+        }
     }
 
     /**
@@ -355,12 +436,29 @@ public class HashQueue
         if (t != null) {
             _tlReq.get(t).put(soid, req);
         } else {
-            _requests.put(soid, req);
-            _e.execute(req);
+            execute_(req);
         }
         return true;
     }
 
+    private void execute_(HashRequest req)
+    {
+        req.root = root_(req.soid);
+        _requests.put(req.soid, req);
+        _e.execute(req);
+    }
+
+    private @Nullable SID root_(SOID soid)
+    {
+        try {
+            ResolvedPath path = _ds.resolveNullable_(soid);
+            return path != null ? path.sid() : null;
+        } catch (SQLException e) {
+            l.warn("failed to resolve {}", soid, e);
+            return null;
+        }
+    }
+
     private final TransLocal<Map<SOID, HashRequest>> _tlReq
             = new TransLocal<Map<SOID, HashRequest>>() {
         @Override
@@ -371,10 +469,7 @@ public class HashQueue
                 @Override
                 public void committed_()
                 {
-                    for (Entry<SOID, HashRequest> e : m.entrySet()) {
-                        _requests.put(e.getKey(), e.getValue());
-                        _e.execute(e.getValue());
-                    }
+                    for (HashRequest req : m.values()) execute_(req);
                 }
             });
             return m;
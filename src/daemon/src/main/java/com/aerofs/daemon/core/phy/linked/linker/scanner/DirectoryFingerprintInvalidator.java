@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.linked.linker.scanner;
+
+import com.aerofs.daemon.core.ds.DirectoryService;
+import com.aerofs.daemon.core.ds.IDirectoryServiceListener;
+import com.aerofs.daemon.core.ds.OA;
+import com.aerofs.daemon.core.phy.linked.db.DirectoryFingerprintDatabase;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.ids.OID;
+import com.aerofs.lib.Path;
+import com.aerofs.lib.id.SOID;
+import com.aerofs.lib.id.SOKID;
+
+import java.sql.SQLException;
+
+/**
+ * Delete the stored fingerprint of a folder whenever one of its logical children is created,
+ * deleted, moved in or out, or has its content changed, be it by the linker or by the core.
+ *
+ * A matching fingerprint only proves that the physical folder is in the same state as when it
+ * was last scanned. It says nothing of changes made to the logical children since then, which
+ * the next scan may need to reconcile.
+ */
+class DirectoryFingerprintInvalidator implements IDirectoryServiceListener
+{
+    private final DirectoryService _ds;
+    private final DirectoryFingerprintDatabase _dfpdb;
+
+    DirectoryFingerprintInvalidator(DirectoryService ds, DirectoryFingerprintDatabase dfpdb)
+    {
+        _ds = ds;
+        _dfpdb = dfpdb;
+        ds.addListener_(this);
+    }
+
+    private void invalidate_(SOID soid, OID parent, Trans t) throws SQLException
+    {
+        _dfpdb.deleteFingerprint_(new SOID(soid.sidx(), parent), t);
+    }
+
+    private void invalidateParentOf_(SOID soid, Trans t) throws SQLException
+    {
+        OA oa = _ds.getOANullable_(soid);
+        if (oa != null) invalidate_(soid, oa.parent(), t);
+    }
+
+    @Override
+    public void objectCreated_(SOID obj, OID parent, Path pathTo, Trans t) throws SQLException
+    {
+        invalidate_(obj, parent, t);
+    }
+
+    @Override
+    public void objectDeleted_(SOID obj, OID parent, Path pathFrom, Trans t) throws SQLException
+    {
+        invalidate_(obj, parent, t);
+    }
+
+    @Override
+    public void objectMoved_(SOID obj, OID parentFrom, OID parentTo, Path pathFrom, Path pathTo,
+            Trans t) throws SQLException
+    {
+        invalidate_(obj, parentFrom, t);
+        if (!parentTo.equals(parentFrom)) invalidate_(obj, parentTo, t);
+    }
+
+    @Override
+    public void objectContentCreated_(SOKID obj, Path path, Trans t) throws SQLException
+    {
+        invalidateParentOf_(obj.soid(), t);
+    }
+
+    @Override
+    public void objectContentModified_(SOKID obj, Path path, Trans t) throws SQLException
+    {
+        invalidateParentOf_(obj.soid(), t);
+    }
+
+    @Override
+    public void objectContentDeleted_(SOKID obj, Trans t) throws SQLException
+    {
+        invalidateParentOf_(obj.soid(), t);
+    }
+
+    @Override
+    public void objectObliterated_(OA oa, Trans t) throws SQLException
+    {
+        invalidate_(oa.soid(), oa.parent(), t);
+    }
+
+    @Override
+    public void objectExpelled_(SOID soid, Trans t) throws SQLException
+    {
+        invalidateParentOf_(soid, t);
+    }
+
+    @Override
+    public void objectAdmitted_(SOID soid, Trans t) throws SQLException
+    {
+        invalidateParentOf_(soid, t);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.linked.linker.scanner;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.base.BaseUtil;
+import com.aerofs.base.Loggers;
+import com.aerofs.daemon.core.phy.linked.db.DirectoryFingerprint;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compute {@link DirectoryFingerprint}s of physical folders
+ *
+ * The fingerprint covers the name, type, length and mtime of every immediate child, as well as
+ * the mtime of the folder itself. The length and mtime of child folders are deliberately left
+ * out: changes within a child folder are reflected by the fingerprint of that child folder and
+ * should not force a scan of its parent.
+ *
+ * Computing a fingerprint requires listing the folder and reading the attributes of each child,
+ * which is the bulk of the I/O performed when scanning an unchanged folder. To keep that I/O out
+ * of the core thread, ScanSession prefetches the fingerprints of the folders that are about to
+ * be scanned on a small pool of worker threads, see {@link #prefetch}.
+ */
+class DirectoryFingerprinter
+{
+    private final static Logger l = Loggers.getLogger(DirectoryFingerprinter.class);
+
+    private static final int THREADS = 4;
+
+    // prefetches beyond this bound are computed in the core thread on demand
+    private static final int MAX_QUEUED = 1024;
+
+    /**
+     * A fingerprint computation that is either run by a worker thread or, if no worker has picked
+     * it up yet by the time its result is needed, by the caller of {@link #get}
+     */
+    class Prefetch implements Runnable
+    {
+        private final String _absPath;
+        private final AtomicBoolean _claimed = new AtomicBoolean();
+        private final CompletableFuture<DirectoryFingerprint> _f = new CompletableFuture<>();
+
+        private Prefetch(String absPath)
+        {
+            _absPath = absPath;
+        }
+
+        @Override
+        public void run()
+        {
+            if (!_claimed.compareAndSet(false, true)) return;
+            try {
+                _f.complete(compute(_absPath));
+            } catch (Throwable e) {
+                _f.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Discard the result of the computation, which will not be performed if not yet started
+         */
+        void cancel()
+        {
+            _claimed.set(true);
+        }
+
+        /**
+         * @return the fingerprint, blocking until it is computed if needed
+         */
+        @Nullable DirectoryFingerprint get()
+        {
+            run();
+            return _f.join();
+        }
+    }
+
+    private final ThreadPoolExecutor _e;
+
+    @Inject
+    public DirectoryFingerprinter()
+    {
+        _e = new ThreadPoolExecutor(
+                THREADS, THREADS,
+                1, TimeUnit.MINUTES,                        // idle thread TTL
+                new LinkedBlockingQueue<>(MAX_QUEUED),      // bounded event queue
+                new ThreadFactoryBuilder().setNameFormat("dfp%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        // keep the pool empty when no scan is in progress
+        _e.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Start computing the fingerprint of the given folder in the background
+     *
+     * The computation is always performed, in the calling thread if need be, when the result is
+     * requested through {@link Prefetch#get}. Unused prefetches should be cancelled.
+     */
+    Prefetch prefetch(String absPath)
+    {
+        Prefetch p = new Prefetch(absPath);
+        try {
+            _e.execute(p);
+        } catch (RejectedExecutionException e) {
+            l.debug("dfp queue full");
+        }
+        return p;
+    }
+
+    /**
+     * @return the fingerprint of the given folder, null if it could not be listed
+     */
+    @Nullable DirectoryFingerprint compute(String absPath)
+    {
+        Path dir = Paths.get(absPath);
+        List<String> names = Lists.newArrayList();
+        try {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path child : ds) names.add(child.getFileName().toString());
+            }
+            // sort names to be independent from the listing order
+            Collections.sort(names);
+
+            long mtime = attributes(dir).lastModifiedTime().toMillis();
+            MessageDigest md = BaseSecUtil.newMessageDigest();
+            for (String name : names) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = attributes(dir.resolve(name));
+                } catch (IOException e) {
+                    // the child was deleted after the listing: let the next scan take care of it
+                    attrs = null;
+                }
+
+                md.update(BaseUtil.string2utf(name));
+                md.update((byte)0);
+                if (attrs == null) {
+                    md.update((byte)'?');
+                } else if (attrs.isDirectory()) {
+                    md.update((byte)'d');
+                } else {
+                    long m = attrs.lastModifiedTime().toMillis();
+                    md.update((byte)(attrs.isRegularFile() ? 'f' : 'o'));
+                    md.update(BaseUtil.toByteArray(attrs.size()));
+                    md.update(BaseUtil.toByteArray(m));
+                    mtime = Math.max(mtime, m);
+                }
+            }
+            return new DirectoryFingerprint(names.size(), mtime, md.digest());
+        } catch (IOException e) {
+            l.info("dfp {}: {}", absPath, e.toString());
+            return null;
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path p) throws IOException
+    {
+        return Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+}
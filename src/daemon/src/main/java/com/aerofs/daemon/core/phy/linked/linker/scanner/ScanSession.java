@@ -8,6 +8,8 @@ import com.aerofs.daemon.core.first_launch.ScanProgressReporter;
 import com.aerofs.daemon.core.migration.ImmigrantCreator.ExMigrationDelayed;
 import com.aerofs.daemon.core.phy.linked.RepresentabilityHelper;
 import com.aerofs.daemon.core.phy.linked.SharedFolderTagFileAndIcon;
+import com.aerofs.daemon.core.phy.linked.db.DirectoryFingerprint;
+import com.aerofs.daemon.core.phy.linked.db.DirectoryFingerprintDatabase;
 import com.aerofs.daemon.core.phy.linked.linker.LinkerRoot;
 import com.aerofs.daemon.core.phy.linked.linker.ILinkerFilter;
 import com.aerofs.daemon.core.phy.linked.linker.MightCreate;
@@ -15,6 +17,7 @@ import com.aerofs.daemon.core.phy.linked.linker.MightDelete;
 import com.aerofs.daemon.core.phy.linked.linker.PathCombo;
 import com.aerofs.daemon.core.phy.linked.linker.TimeoutDeletionBuffer;
 import com.aerofs.daemon.core.phy.linked.linker.TimeoutDeletionBuffer.Holder;
+import com.aerofs.daemon.core.phy.linked.linker.scanner.DirectoryFingerprinter.Prefetch;
 import com.aerofs.daemon.lib.db.trans.Trans;
 import com.aerofs.daemon.lib.db.trans.TransManager;
 import com.aerofs.lib.Path;
@@ -28,6 +31,7 @@ import com.aerofs.lib.injectable.InjectableFile;
 import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
@@ -53,6 +57,13 @@ class ScanSession
     // avoid the core to become unresponsive due to long scans.
     private static final int CONTINUATION_DURATION_THRESHOLD = 200;
 
+    // Number of folders at the top of the stack whose fingerprints are computed ahead of time
+    private static final int PREFETCH_WINDOW = 64;
+
+    // Maximum number of outstanding prefetches. Prefetched folders may be buried under the
+    // children of other folders for a while before being popped.
+    private static final int MAX_PREFETCHES = 4 * PREFETCH_WINDOW;
+
     static class Factory
     {
         private final DirectoryService _ds;
@@ -65,6 +76,8 @@ class ScanSession
         private final ScanProgressReporter _spr;
         private final ILinkerFilter _filter;
         private final SharedFolderTagFileAndIcon _sfti;
+        private final DirectoryFingerprinter _dfp;
+        private final DirectoryFingerprintDatabase _dfpdb;
 
         @Inject
         public Factory(DirectoryService ds,
@@ -75,7 +88,9 @@ class ScanSession
                 InjectableFile.Factory factFile,
                 ScanProgressReporter spr,
                 SharedFolderTagFileAndIcon sfti,
-                ILinkerFilter filter)
+                ILinkerFilter filter,
+                DirectoryFingerprinter dfp,
+                DirectoryFingerprintDatabase dfpdb)
         {
             _ds = ds;
             _mc = mc;
@@ -87,6 +102,9 @@ class ScanSession
             _factFile = factFile;
             _sfti = sfti;
             _filter = filter;
+            _dfp = dfp;
+            _dfpdb = dfpdb;
+            new DirectoryFingerprintInvalidator(ds, dfpdb);
         }
 
         public ScanSession create_(LinkerRoot root, Set<String> absPaths, boolean recursive)
@@ -117,6 +135,9 @@ class ScanSession
     // synchronization here. A null stack indicates that scan_() has never been called.
     private @Nullable Deque<PathCombo> _stack;
 
+    // Fingerprints being computed for folders in the stack, see DirectoryFingerprinter
+    private final Map<Path, Prefetch> _prefetches = Maps.newHashMap();
+
     // For debugging only
     private boolean _done;
 
@@ -222,6 +243,7 @@ class ScanSession
                     continue;
                 }
                 _done = true;
+                cancelPrefetches();
                 throw e;
             }
         } while (!delayed.isEmpty());
@@ -239,6 +261,7 @@ class ScanSession
             // the release is a no-op.
             // N.B. No code after this line should throw.
             _holder.releaseAll_();
+            cancelPrefetches();
             l.info("end");
             _done = true;
             return true;
@@ -251,6 +274,7 @@ class ScanSession
         try {
             ElapsedTimer timer = new ElapsedTimer();
             while (!_stack.isEmpty()) {
+                prefetch();
                 PathCombo pc = _stack.pop();
                 try {
                     potentialUpdates += scanFolder_(pc, delayed, t);
@@ -308,6 +332,35 @@ class ScanSession
         _stack.push(pcRoot);
     }
 
+    /**
+     * Start computing the fingerprints of the folders that will be scanned next
+     */
+    private void prefetch()
+    {
+        Iterator<PathCombo> it = _stack.iterator();
+        for (int i = 0; i < PREFETCH_WINDOW && it.hasNext(); ++i) {
+            if (_prefetches.size() >= MAX_PREFETCHES) return;
+            PathCombo pc = it.next();
+            if (_prefetches.containsKey(pc._path)) continue;
+            Prefetch p = _f._dfp.prefetch(pc._absPath);
+            if (p != null) _prefetches.put(pc._path, p);
+        }
+    }
+
+    private void cancelPrefetches()
+    {
+        for (Prefetch p : _prefetches.values()) p.cancel();
+        _prefetches.clear();
+    }
+
+    private @Nullable DirectoryFingerprint fingerprint_(PathCombo pc)
+    {
+        Prefetch p = _prefetches.remove(pc._path);
+        return p != null ? p.get() : _f._dfp.compute(pc._absPath);
+    }
+
+    // Paths of the folders whose children were added to the deletion buffer. Unchanged folders
+    // are not scanned and thus not tracked, which keeps this set small on large trees.
     private Set<Path> _scanned = new HashSet<>();
 
     /**
@@ -318,18 +371,35 @@ class ScanSession
      */
     private int scanFolder_(PathCombo pcParent, Set<Path> delayed, Trans t) throws Exception
     {
-        // a given path may not be scanned twice in the same ScanSession
-        // otherwise children would be held twice in TimeoutDeletionBuffer, triggering an AE
-        // FIXME: keeping track of every scanned path can lead ot OOMs on large trees
-        // TODO: investigate more memory-efficient approaches
-        if (!_scanned.add(pcParent._path)) return 0;
+        // compute the fingerprint before listing children: if the folder changes during the scan
+        // the stored fingerprint will not match the next one, thereby forcing another scan
+        @Nullable DirectoryFingerprint fp = fingerprint_(pcParent);
 
         // empty path <=> physical root
         // make sure the tag file is kept correct for all physical roots
         if (pcParent._path.isEmpty()) {
             _f._sfti.fixTagFileIfNeeded_(pcParent._path.sid(), pcParent._absPath);
         }
-        if (!addLogicalChildrenToDeletionBufferIfScanNeeded_(pcParent)) return 0;
+
+        OA oaParent = getParentIfScanNeeded_(pcParent);
+        if (oaParent == null) return 0;
+
+        @Nullable SOID soidFingerprint = fingerprintKey_(oaParent);
+        if (isUnchanged_(oaParent, soidFingerprint, fp)) {
+            l.debug("unchanged {}", pcParent);
+            if (_recursive) pushLogicalChildFolders_(pcParent, oaParent);
+            _f._spr.folderScanned_(0);
+            return 0;
+        }
+
+        // a given path may not be scanned twice in the same ScanSession
+        // otherwise children would be held twice in TimeoutDeletionBuffer, triggering an AE
+        if (!_scanned.add(pcParent._path)) return 0;
+
+        // NB: it is VERY IMPORTANT to call that AT MOST ONCE per SOID per scan
+        // every time you violate that contract TimeoutDeletionBuffer devours the soul
+        // of an innocent kitten
+        addLogicalChildrenToDeletionBuffer_(oaParent);
 
         // compose the list of physical children
         String[] nameChildren = _f._factFile.create(pcParent._absPath).list();
@@ -339,12 +409,14 @@ class ScanSession
         int potentialUpdates = 0;
         int scannedChildren = 0;
         int lastNotification = 0;
+        boolean skipped = false;
         Trans split = null;
         try {
             for (String nameChild : nameChildren) {
                 PathCombo pc = pcParent.append(nameChild);
                 if (delayed.contains(pc._path)) {
                     l.debug("skip delayed: {}", pc);
+                    skipped = true;
                     continue;
                 }
                 try {
@@ -369,6 +441,12 @@ class ScanSession
             // on first launch, report indexing progress
             _f._spr.folderScanned_(potentialUpdates - lastNotification);
 
+            // all children are now accounted for, the folder need not be scanned again until
+            // its fingerprint changes
+            if (fp != null && soidFingerprint != null && !skipped) {
+                _f._dfpdb.setFingerprint_(soidFingerprint, fp, t);
+            }
+
         } catch (Exception|Error e) {
             if (split != null) {
                 // if an exception is thrown after a new trans was started we need to make
@@ -395,21 +473,69 @@ class ScanSession
                 && isScannableDir(pc._absPath)) {
             // recurse down if it's a newly created folder, or it's an existing folder and the
             // recursive bit is set
-            _stack.push(pc);
-
-            // remove the child node in the traversal from the list of _sortedPCRoots
-            // _sortedPCRoots will eventually contain all the paths that were modified but not
-            // touched by the DFS hence we will add those into the stack and continue the scan.
-            _sortedPCRoots.remove(pc);
+            push_(pc);
         }
         _f._pi.incrementMonotonicProgress();
         return res != IGNORED;
     }
 
+    private void push_(PathCombo pc)
+    {
+        _stack.push(pc);
+
+        // remove the child node in the traversal from the list of _sortedPCRoots
+        // _sortedPCRoots will eventually contain all the paths that were modified but not
+        // touched by the DFS hence we will add those into the stack and continue the scan.
+        _sortedPCRoots.remove(pc);
+    }
+
     /**
-     * @return whether the given path needs to be scanned
+     * @return the folder holding the logical children, whose fingerprint is invalidated by any
+     * change to these children, see DirectoryFingerprintInvalidator
      */
-    private boolean addLogicalChildrenToDeletionBufferIfScanNeeded_(PathCombo pcParent) throws Exception
+    private @Nullable SOID fingerprintKey_(OA oaParent)
+    {
+        return oaParent.isAnchor() ? _f._ds.followAnchorNullable_(oaParent) : oaParent.soid();
+    }
+
+    private boolean isUnchanged_(OA oaParent, @Nullable SOID soidFingerprint,
+            @Nullable DirectoryFingerprint fp) throws SQLException
+    {
+        // the logical children of a non-representable object do not live at its physical path,
+        // see addLogicalChildrenToDeletionBuffer_
+        return fp != null && soidFingerprint != null
+                && (oaParent.soid().oid().isRoot() || !_f._rh.isNonRepresentable_(oaParent))
+                && fp.equals(_f._dfpdb.getFingerprint_(soidFingerprint));
+    }
+
+    /**
+     * Stack up the child folders of an unchanged folder, i.e. the folders that MightCreate would
+     * have reported as existing if the folder had been scanned
+     */
+    private void pushLogicalChildFolders_(PathCombo pcParent, OA oaParent)
+            throws SQLException, ExNotDir, ExNotFound
+    {
+        SOID soidParent = oaParent.isAnchor()
+                ? _f._ds.followAnchorNullable_(oaParent)
+                : oaParent.soid();
+        if (soidParent == null) return;
+
+        try (IDBIterator<OID> it = _f._ds.listChildren_(soidParent)) {
+            while (it.next_()) {
+                OA oa = _f._ds.getOA_(new SOID(soidParent.sidx(), it.get_()));
+                if (oa.isDirOrAnchor() && !oa.isExpelled() && !_f._rh.isNonRepresentable_(oa)) {
+                    PathCombo pc = pcParent.append(oa.name());
+                    if (isScannableDir(pc._absPath)) push_(pc);
+                }
+                _f._pi.incrementMonotonicProgress();
+            }
+        }
+    }
+
+    /**
+     * @return the logical object of the given path if it needs to be scanned, null otherwise
+     */
+    private @Nullable OA getParentIfScanNeeded_(PathCombo pcParent) throws Exception
     {
         SOID soidParent = _f._ds.resolveNullable_(pcParent._path);
         if (soidParent == null) {
@@ -429,7 +555,7 @@ class ScanSession
             // Theoretically this should be unnecessary but the thing about theory is that it
             // rarely ever holds in practice, especially so when dealing with filesystems...
             l.warn("no parent, no scan {}", pcParent._path);
-            return false;
+            return null;
         }
 
         l.info("on {}:{}", soidParent, pcParent);
@@ -437,14 +563,9 @@ class ScanSession
         OA oaParent = _f._ds.getOA_(soidParent);
         if (_f._filter.shouldIgnoreChilren_(pcParent, oaParent)) {
             l.warn("ignore children under {} {}", soidParent, pcParent);
-            return false;
+            return null;
         }
-
-        // NB: it is VERY IMPORTANT to call that AT MOST ONCE per SOID per scan
-        // every time you violate that contract TimeoutDeletionBuffer devours the soul
-        // of an innocent kitten
-        addLogicalChildrenToDeletionBuffer_(oaParent);
-        return true;
+        return oaParent;
     }
 
     private void addLogicalChildrenToDeletionBuffer_(OA oaParent)
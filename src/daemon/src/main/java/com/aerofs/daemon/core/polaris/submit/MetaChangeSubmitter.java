@@ -36,6 +36,7 @@ import com.aerofs.ids.OID;
 import com.aerofs.ids.UniqueID;
 import com.aerofs.lib.cfg.CfgLocalUser;
 import com.aerofs.lib.db.IDBIterator;
+import com.aerofs.lib.event.Prio;
 import com.aerofs.lib.id.SIndex;
 import com.aerofs.lib.id.SOID;
 import com.aerofs.lib.sched.ExponentialRetry.ExRetryLater;
@@ -276,7 +277,7 @@ public class MetaChangeSubmitter implements Submitter
 
     private void batchSubmit(List<MetaChange> c, Batch batch, AsyncTaskCallback cb)
     {
-        _client.post("/batch/transforms", batch, cb, r -> handleBatch_(c, batch, r));
+        _client.post("/batch/transforms", batch, Prio.LO, cb, r -> handleBatch_(c, batch, r));
     }
 
     private boolean handleBatch_(List<MetaChange> c, Batch batch, HttpResponse resp)
@@ -5,11 +5,13 @@
 package com.aerofs.daemon.core.transfers.download;
 
 import com.aerofs.base.ex.ExNoPerm;
+import com.aerofs.daemon.core.CoreScheduler;
 import com.aerofs.daemon.core.collector.ContentFetcher;
 import com.aerofs.daemon.core.ds.DirectoryService;
 import com.aerofs.daemon.core.ex.ExAborted;
 import com.aerofs.daemon.core.ex.ExNoAvailDevice;
 import com.aerofs.daemon.core.ex.ExOutOfSpace;
+import com.aerofs.daemon.core.net.IncomingStreams;
 import com.aerofs.daemon.core.net.To;
 import com.aerofs.daemon.core.polaris.db.CentralVersionDatabase;
 import com.aerofs.daemon.core.polaris.db.RemoteContentDatabase;
@@ -18,8 +20,10 @@ import com.aerofs.daemon.core.store.IMapSIndex2SID;
 import com.aerofs.daemon.core.tc.Token;
 import com.aerofs.ids.DID;
 import com.aerofs.lib.id.SOID;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.inject.Inject;
 
 import javax.annotation.Nonnull;
@@ -79,9 +83,10 @@ public class AsyncDownload extends Download implements IAsyncDownload
         @Inject
         public Factory(DirectoryService ds, Downloads dls, To.Factory factTo,
                        IMapSIndex2SID sidx2sid, RemoteChangeChecker changes,
-                       GetContentRequest pgcc, GetContentResponse pgcr)
+                       GetContentRequest pgcc, GetContentResponse pgcr,
+                       MultiSourceDownload msdl, CoreScheduler sched, IncomingStreams iss)
         {
-            super(ds, dls, factTo, sidx2sid, pgcc, pgcr);
+            super(ds, dls, factTo, sidx2sid, pgcc, pgcr, msdl, sched, iss);
             _changes = changes;
         }
 
@@ -115,6 +120,60 @@ public class AsyncDownload extends Download implements IAsyncDownload
         do_(_soid, _tk,_did2e, _listeners);
     }
 
+    /**
+     * Same as do_() but the core thread is not parked while waiting for replies from remote
+     * devices: each attempt is resumed in a new core event once the reply arrives, see
+     * {@link Token#await_}
+     *
+     * @param onEnd invoked once listeners are informed of success/failure
+     */
+    void start_(Runnable onEnd)
+    {
+        // reset download context before every attempt
+        _cxt = new Cxt();
+
+        downloadAsync_(new FutureCallback<DID>() {
+            @Override
+            public void onSuccess(DID replier)
+            {
+                boolean done;
+                try {
+                    done = onAttemptSucceeded_(replier);
+                } catch (Exception e) {
+                    end_(null, e, onEnd);
+                    return;
+                }
+
+                if (done) {
+                    end_(replier, null, onEnd);
+                } else {
+                    start_(onEnd);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                try {
+                    onAttemptFailed_(t);
+                } catch (Exception e) {
+                    end_(null, e, onEnd);
+                    return;
+                }
+                start_(onEnd);
+            }
+        });
+    }
+
+    private void end_(@Nullable DID replier, @Nullable Exception e, Runnable onEnd)
+    {
+        try {
+            complete_(_soid, _tk, _did2e, _listeners, replier, e);
+        } finally {
+            onEnd.run();
+        }
+    }
+
     /**
      * Try to download the target object until no KMLs are left or all devices have been tried
      */
@@ -124,32 +183,55 @@ public class AsyncDownload extends Download implements IAsyncDownload
             ExNoPerm, ExSenderHasNoPerm, ExOutOfSpace
     {
         while (true) {
+            // reset download context before every attempt
+            _cxt = new Cxt();
+
+            final DID replier;
             try {
-                // reset download context before every attempt
-                _cxt = new Cxt();
+                replier = download_();
+            } catch (ExRemoteCallFailed | ExProcessReplyFailed e) {
+                onAttemptFailed_(e);
+                continue;
+            }
+
+            if (onAttemptSucceeded_(replier)) return replier;
+        }
+    }
 
-                // NB: the return value cannot be used in the exception handlers, use
-                // _cxt.did instead but be careful as it will be null if the exception is thrown
-                // before a successful remote call
-                final DID replier = download_();
+    /**
+     * @return whether the download is complete, i.e. no KMLs are left
+     */
+    private boolean onAttemptSucceeded_(DID replier) throws SQLException
+    {
+        notifyListeners_(listener -> listener.onPartialDownloadSuccess_(_soid, replier),
+                _listeners);
 
-                notifyListeners_(listener -> listener.onPartialDownloadSuccess_(_soid, replier),
-                        _listeners);
+        if (!_f._changes.hasRemoteChanges_(_soid)) return true;
 
-                if (!_f._changes.hasRemoteChanges_(_soid)) return replier;
+        l.debug("kml > 0 for {}. dl again", _soid);
 
-                l.debug("kml > 0 for {}. dl again", _soid);
+        // TODO: indicate success for this DID somehow (null exception or something else)
+        //_did2e.put(replier, null);
 
-                // TODO: indicate success for this DID somehow (null exception or something else)
-                //_did2e.put(replier, null);
+        // NB: this really shouldn't be necessary as To.pick_() already calls avoid_()
+        _from.avoid_(replier);
+        return false;
+    }
 
-                // NB: this really shouldn't be necessary as To.pick_() already calls avoid_()
-                _from.avoid_(replier);
-            } catch (ExRemoteCallFailed e) {
-                handleRemoteCallFailed(e, _soid, _from, _did2e);
-            } catch (ExProcessReplyFailed e) {
-                handleProcessReplyFailed(e, _soid, _from, _did2e);
-            }
+    /**
+     * Rethrow the exceptions that end the download, and avoid the device that caused the others
+     */
+    private void onAttemptFailed_(Throwable t) throws IOException, SQLException, ExAborted,
+            ExNoAvailDevice, ExNoPerm, ExOutOfSpace
+    {
+        if (t instanceof ExRemoteCallFailed) {
+            handleRemoteCallFailed((ExRemoteCallFailed)t, _soid, _from, _did2e);
+        } else if (t instanceof ExProcessReplyFailed) {
+            handleProcessReplyFailed((ExProcessReplyFailed)t, _soid, _from, _did2e);
+        } else {
+            Throwables.propagateIfPossible(t, SQLException.class, ExAborted.class);
+            Throwables.propagateIfPossible(t, ExNoAvailDevice.class);
+            throw Throwables.propagate(t);
         }
     }
 
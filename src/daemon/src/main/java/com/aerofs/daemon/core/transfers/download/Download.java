@@ -7,23 +7,33 @@ package com.aerofs.daemon.core.transfers.download;
 import com.aerofs.base.C;
 import com.aerofs.base.Loggers;
 import com.aerofs.base.ex.ExProtocolError;
+import com.aerofs.base.ex.ExTimeout;
+import com.aerofs.daemon.core.CoreScheduler;
 import com.aerofs.daemon.core.ex.*;
 import com.aerofs.ids.DID;
 import com.aerofs.daemon.core.ds.DirectoryService;
 import com.aerofs.daemon.core.ds.OA;
 import com.aerofs.daemon.core.net.DigestedMessage;
+import com.aerofs.daemon.core.net.IncomingStreams;
 import com.aerofs.daemon.core.net.To;
 import com.aerofs.daemon.core.protocol.*;
 import com.aerofs.daemon.core.store.IMapSIndex2SID;
 import com.aerofs.daemon.core.tc.Token;
 import com.aerofs.daemon.lib.exception.ExStreamInvalid;
+import com.aerofs.lib.event.AbstractEBSelfHandling;
 import com.aerofs.lib.id.SOID;
 import com.aerofs.proto.Transport.PBStream.InvalidationReason;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 
 import javax.annotation.Nonnull;
 import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import static com.aerofs.daemon.core.transfers.download.IAsyncDownload.ExProcessReplyFailed;
 import static com.aerofs.daemon.core.transfers.download.IAsyncDownload.ExRemoteCallFailed;
@@ -81,11 +91,15 @@ class Download
         protected final GetContentRequest  _pgcc;
         protected final GetContentResponse _pgcr;
         protected final IMapSIndex2SID _sidx2sid;
+        protected final MultiSourceDownload _msdl;
+        protected final CoreScheduler _sched;
+        protected final IncomingStreams _iss;
 
         @Inject
         protected Factory(DirectoryService ds, Downloads dls,
                 To.Factory factTo, IMapSIndex2SID sidx2sid,
-                GetContentRequest pgcc, GetContentResponse pgcr)
+                GetContentRequest pgcc, GetContentResponse pgcr, MultiSourceDownload msdl,
+                CoreScheduler sched, IncomingStreams iss)
         {
             _ds = ds;
             _dls = dls;
@@ -93,6 +107,9 @@ class Download
             _pgcr = pgcr;
             _factTo = factTo;
             _sidx2sid = sidx2sid;
+            _msdl = msdl;
+            _sched = sched;
+            _iss = iss;
         }
     }
 
@@ -122,15 +139,134 @@ class Download
             ExNoAvailDevice, ExRemoteCallFailed, ExProcessReplyFailed
     {
         while (true) {
-            checkForMeta();
+            DID did = prepare_();
+            if (onReply_(did, remoteCall_(did))) return did;
+            _tk.sleep_(UPDATE_RETRY_DELAY, "retry dl (update in prog)");
+        }
+    }
 
-            // must not break out of context when re-trying an object after resolving a dependency
-            DID did = _cxt.did != null ? _cxt.did : _from.pick_();
+    /**
+     * Continuation-based counterpart of download_: the core thread is not parked while waiting
+     * for the reply, see {@link Token#await_}.
+     *
+     * @param cb invoked with the replier on success, or with the exception download_ would have
+     * thrown otherwise
+     */
+    protected void downloadAsync_(FutureCallback<DID> cb)
+    {
+        l.debug("dl {} from {}", _soid, _from);
+        fetchAsync_(cb);
+    }
 
-            l.info("{} fetch {} {}", did, _soid, _cxt);
+    private void fetchAsync_(FutureCallback<DID> cb)
+    {
+        DID did;
+        ListenableFuture<DigestedMessage> reply;
+        try {
+            did = prepare_();
+            reply = remoteCallAsync_(did);
+        } catch (Exception e) {
+            cb.onFailure(e);
+            return;
+        }
 
-            if (fetchComponent_(did)) return did;
+        _tk.await_(reply, new FutureCallback<DigestedMessage>() {
+            @Override
+            public void onSuccess(DigestedMessage msg)
+            {
+                boolean done;
+                try {
+                    done = onReply_(did, msg);
+                } catch (Exception e) {
+                    cb.onFailure(e);
+                    return;
+                }
+
+                if (done) {
+                    cb.onSuccess(did);
+                } else {
+                    retryAsync_(cb);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                // same outcome as when the blocking call to the RPC layer is aborted
+                if (t instanceof ExAborted) {
+                    discardReply_(reply);
+                    cb.onFailure(t);
+                } else if (t instanceof ExTimeout) {
+                    cb.onFailure(new ExRemoteCallFailed((ExTimeout)t));
+                } else {
+                    cb.onFailure(new ExAborted(t));
+                }
+            }
+        });
+    }
+
+    /**
+     * The token may be reclaimed while the reply is in flight, in which case the reply is never
+     * processed. Unlike with the blocking call, the RPC layer has handed the reply over, so its
+     * stream, if any, would otherwise never be ended.
+     */
+    private void discardReply_(ListenableFuture<DigestedMessage> reply)
+    {
+        if (!reply.isDone()) return;
+        DigestedMessage msg;
+        try {
+            msg = Uninterruptibles.getUninterruptibly(reply);
+        } catch (ExecutionException | CancellationException e) {
+            return;
         }
+        if (msg.streamKey() != null) _f._iss.end_(msg.streamKey());
+    }
+
+    private void retryAsync_(FutureCallback<DID> cb)
+    {
+        SettableFuture<Void> delay = SettableFuture.create();
+        _f._sched.schedule(new AbstractEBSelfHandling() {
+            @Override
+            public void handle_()
+            {
+                delay.set(null);
+            }
+        }, UPDATE_RETRY_DELAY);
+
+        _tk.await_(delay, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void v)
+            {
+                fetchAsync_(cb);
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                cb.onFailure(t);
+            }
+        });
+    }
+
+    /**
+     * @return the device to fetch the object from
+     */
+    private DID prepare_() throws SQLException, ExAborted, ExNoAvailDevice
+    {
+        // large files available from several devices are first fetched in ranges, in parallel.
+        // The regular download then resumes from the resulting prefix
+        if (_cxt.did == null) {
+            checkForMeta();
+            _f._msdl.fetch_(_soid, _from, _tk);
+        }
+
+        checkForMeta();
+
+        // must not break out of context when re-trying an object after resolving a dependency
+        DID did = _cxt.did != null ? _cxt.did : _from.pick_();
+
+        l.info("{} fetch {} {}", did, _soid, _cxt);
+        return did;
     }
 
     /**
@@ -153,11 +289,12 @@ class Download
         }
     }
 
-    private boolean fetchComponent_(DID did)
-            throws SQLException, ExAborted,
-            ExNoAvailDevice, ExRemoteCallFailed, ExProcessReplyFailed
+    /**
+     * @return false if the object should be fetched again after UPDATE_RETRY_DELAY
+     */
+    private boolean onReply_(DID did, DigestedMessage msg)
+            throws SQLException, ExAborted, ExProcessReplyFailed
     {
-        DigestedMessage msg = remoteCall_(did);
         if (!did.equals(msg.did())) {
             l.error("did mismatch {} {}", did, msg.did());
             throw new ExProcessReplyFailed(did,
@@ -184,6 +321,18 @@ class Download
         }
     }
 
+    private ListenableFuture<DigestedMessage> remoteCallAsync_(DID did)
+            throws SQLException, ExAborted, ExNoAvailDevice, ExRemoteCallFailed
+    {
+        try {
+            return _f._pgcc.remoteRequestContentAsync_(_soid, did);
+        } catch (SQLException | ExAborted | ExNoAvailDevice e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ExRemoteCallFailed(e);
+        }
+    }
+
     private boolean processReply_(DigestedMessage msg, Cxt cxt)
             throws SQLException, ExAborted, ExProcessReplyFailed
     {
@@ -238,6 +387,5 @@ class Download
         }
 
         l.info("{} {}: update in prog. retry later", did, _soid);
-        _tk.sleep_(UPDATE_RETRY_DELAY, "retry dl (update in prog)");
     }
 }
@@ -101,11 +101,8 @@ public class Downloads implements IContentDownloads
             @Override
             public void handle_()
             {
-                try {
-                    dl.do_();
-                } finally {
-                    checkNotNull(_ongoing.remove(dl._soid));
-                }
+                // the core thread is released whenever the download waits for a remote peer
+                dl.start_(() -> checkNotNull(_ongoing.remove(dl._soid)));
             }
         };
     }
@@ -0,0 +1,495 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.transfers.download;
+
+import com.aerofs.base.BaseLogUtil;
+import com.aerofs.base.C;
+import com.aerofs.base.Loggers;
+import com.aerofs.base.acl.Permissions;
+import com.aerofs.base.ex.ExProtocolError;
+import com.aerofs.base.ex.ExTimeout;
+import com.aerofs.base.ex.Exceptions;
+import com.aerofs.daemon.core.acl.LocalACL;
+import com.aerofs.daemon.core.collector.ExNoComponentWithSpecifiedVersion;
+import com.aerofs.daemon.core.ds.DirectoryService;
+import com.aerofs.daemon.core.ds.OA;
+import com.aerofs.daemon.core.ex.ExAborted;
+import com.aerofs.daemon.core.net.DigestedMessage;
+import com.aerofs.daemon.core.net.IncomingStreams;
+import com.aerofs.daemon.core.net.RPC;
+import com.aerofs.daemon.core.net.To;
+import com.aerofs.daemon.core.net.TransportRoutingLayer;
+import com.aerofs.daemon.core.net.device.Devices;
+import com.aerofs.daemon.core.phy.DigestSerializer;
+import com.aerofs.daemon.core.phy.IPhysicalPrefix;
+import com.aerofs.daemon.core.phy.IPhysicalStorage;
+import com.aerofs.daemon.core.phy.PrefixOutputStream;
+import com.aerofs.daemon.core.polaris.db.CentralVersionDatabase;
+import com.aerofs.daemon.core.polaris.db.RemoteContentDatabase;
+import com.aerofs.daemon.core.polaris.db.RemoteContentDatabase.RemoteContent;
+import com.aerofs.daemon.core.protocol.ExSenderHasNoPerm;
+import com.aerofs.daemon.core.protocol.GetContentRequest;
+import com.aerofs.daemon.core.protocol.PrefixVersionControl;
+import com.aerofs.daemon.core.tc.TC;
+import com.aerofs.daemon.core.tc.TC.TCB;
+import com.aerofs.daemon.core.tc.Token;
+import com.aerofs.daemon.core.transfers.download.RangeScheduler.Range;
+import com.aerofs.daemon.event.net.Endpoint;
+import com.aerofs.daemon.lib.CoreExecutor;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.daemon.transport.lib.StreamKey;
+import com.aerofs.daemon.transport.lib.exceptions.ExDeviceUnavailable;
+import com.aerofs.ids.DID;
+import com.aerofs.lib.ContentHash;
+import com.aerofs.lib.Util;
+import com.aerofs.lib.Version;
+import com.aerofs.lib.id.KIndex;
+import com.aerofs.lib.id.SOID;
+import com.aerofs.lib.id.SOKID;
+import com.aerofs.proto.Core.PBCore;
+import com.aerofs.proto.Core.PBGetContentResponse;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.aerofs.defects.Defects.newMetric;
+
+/**
+ * Fetches the content of a large file from all the devices that have it, in parallel.
+ *
+ * The file is split in ranges by a {@link RangeScheduler}, each of which is requested from one
+ * of the sources with {@link GetContentRequest#newRangeRequest_}. Ranges are appended to the
+ * prefix as soon as they are contiguous with it.
+ *
+ * This only ever fills the prefix: the regular {@link Download} that follows resumes from it,
+ * fetches whatever is still missing from a single device, and verifies the whole-file hash on
+ * the way to applying the new content.
+ */
+class MultiSourceDownload
+{
+    private static final Logger l = Loggers.getLogger(MultiSourceDownload.class);
+
+    // files smaller than this are not worth the overhead of range requests
+    static final long MIN_LENGTH = 64 * C.MB;
+    static final int RANGE_SIZE = 2 * C.MB;
+    // out-of-order ranges are held in memory until they can be appended, hence the small window
+    static final int WINDOW = 16;
+    // range requests in flight to each source, to hide the round-trip between ranges
+    static final int DEPTH = 2;
+    // how often idle sources are given a chance to help with lagging ranges
+    private static final long TICK = 1 * C.SEC;
+
+    private final DirectoryService _ds;
+    private final RemoteContentDatabase _rcdb;
+    private final CentralVersionDatabase _cvdb;
+    private final IPhysicalStorage _ps;
+    private final PrefixVersionControl _pvc;
+    private final TransManager _tm;
+    private final Devices _devices;
+    private final GetContentRequest _pgcc;
+    private final TransportRoutingLayer _trl;
+    private final RPC _rpc;
+    private final IncomingStreams _iss;
+    private final LocalACL _lacl;
+    private final CoreExecutor _coreExecutor;
+
+    // incoming ranges are read on these threads, concurrently with one another
+    private final Executor _readers = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("msdl%d")
+            .setDaemon(true)
+            .build());
+
+    @Inject
+    MultiSourceDownload(DirectoryService ds, RemoteContentDatabase rcdb,
+            CentralVersionDatabase cvdb, IPhysicalStorage ps, PrefixVersionControl pvc,
+            TransManager tm, Devices devices, GetContentRequest pgcc, TransportRoutingLayer trl,
+            RPC rpc, IncomingStreams iss, LocalACL lacl, CoreExecutor coreExecutor)
+    {
+        _ds = ds;
+        _rcdb = rcdb;
+        _cvdb = cvdb;
+        _ps = ps;
+        _pvc = pvc;
+        _tm = tm;
+        _devices = devices;
+        _pgcc = pgcc;
+        _trl = trl;
+        _rpc = rpc;
+        _iss = iss;
+        _lacl = lacl;
+        _coreExecutor = coreExecutor;
+    }
+
+    /**
+     * Fill the prefix of the given object with ranges fetched from all the available devices
+     * among the given ones, if the object is large enough and several devices are available
+     *
+     * @return whether the prefix holds the whole content of the object
+     */
+    boolean fetch_(SOID soid, To from, Token tk) throws SQLException, ExAborted
+    {
+        RemoteContent rc = _rcdb.getMaxRow_(soid.sidx(), soid.oid());
+        if (rc == null || rc.length < MIN_LENGTH) return false;
+
+        // local content that may match the remote one is left to the regular download, which
+        // copies it instead of fetching it over the network
+        OA oa = _ds.getOANullable_(soid);
+        if (oa == null) return false;
+        if (oa.caMasterNullable() != null && _cvdb.getVersion_(soid.sidx(), soid.oid()) == null) {
+            return false;
+        }
+
+        List<DID> dids = Lists.newArrayList();
+        for (DID did : from.allDIDs()) {
+            if (_devices.getOPMDevice_(did) != null) dids.add(did);
+        }
+        if (dids.size() < 2) return false;
+
+        SOKID k = new SOKID(soid, KIndex.MASTER);
+        IPhysicalPrefix prefix = _ps.newPrefix_(k, null);
+        try {
+            long start = preparePrefix_(k, prefix, rc);
+            if (start == rc.length) return true;
+
+            l.info("msdl {} {} from {} at {}", soid, rc, dids, start);
+            return new Session(soid, rc, prefix, start, dids, tk, TC.tcb()).run_();
+        } catch (IOException e) {
+            l.warn("msdl {} failed", soid, BaseLogUtil.suppress(e));
+            return false;
+        }
+    }
+
+    /**
+     * Discard the existing prefix unless it is for the version being downloaded
+     *
+     * @return length of the prefix
+     */
+    private long preparePrefix_(SOKID k, IPhysicalPrefix prefix, RemoteContent rc)
+            throws SQLException, IOException
+    {
+        Version v = Version.wrapCentral(rc.version);
+        Version vPrefix = _pvc.getPrefixVersion_(k.soid(), k.kidx());
+        long len = prefix.getLength_();
+        if (len == 0 || (len <= rc.length && v.equals(vPrefix) && prefix.hashState_() != null)) {
+            if (!v.equals(vPrefix)) updatePrefixVersion_(k, vPrefix, v);
+            return len;
+        }
+
+        l.info("msdl {} discard prefix {} {}", k, vPrefix, len);
+        // this truncates the file to size zero
+        prefix.newOutputStream_(false).close();
+        updatePrefixVersion_(k, vPrefix, v);
+        return 0;
+    }
+
+    private void updatePrefixVersion_(SOKID k, Version vOld, Version v) throws SQLException
+    {
+        try (Trans t = _tm.begin_()) {
+            if (!vOld.isZero_()) _pvc.deletePrefixVersion_(k.soid(), k.kidx(), t);
+            _pvc.addPrefixVersion_(k.soid(), k.kidx(), v, t);
+            t.commit_();
+        }
+    }
+
+    private static long now()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Fetch of the missing part of the content from a given set of sources
+     */
+    class Session
+    {
+        private final SOID _soid;
+        private final RemoteContent _rc;
+        private final IPhysicalPrefix _prefix;
+        private final Token _tk;
+        private final TCB _tcb;
+        private final RangeScheduler _sched;
+
+        private final List<Fetch> _fetches = Lists.newArrayList();
+
+        // set whenever a fetch ends, to avoid pausing before acting on it
+        private boolean _dirty;
+
+        /**
+         * @param tcb control block of the thread running the session, resumed whenever a fetch
+         * ends
+         */
+        Session(SOID soid, RemoteContent rc, IPhysicalPrefix prefix, long start, List<DID> dids,
+                Token tk, TCB tcb)
+        {
+            _soid = soid;
+            _rc = rc;
+            _prefix = prefix;
+            _tk = tk;
+            _tcb = tcb;
+            _sched = new RangeScheduler(start, rc.length, RANGE_SIZE, WINDOW, DEPTH);
+            for (DID did : dids) _sched.addSource(did);
+        }
+
+        boolean run_() throws SQLException, ExAborted, IOException
+        {
+            try {
+                while (true) {
+                    _dirty = false;
+                    // NB: polling refills the window, which must happen before issuing requests
+                    // lest the session stop when the ranges in flight were the last of the window
+                    append_(_sched.poll());
+                    issue_();
+                    if (_sched.done()) break;
+                    // fetches may have ended while the core lock was released to write ranges
+                    if (_dirty) continue;
+                    if (_fetches.isEmpty()) break;
+                    try {
+                        _tk.pause_(TICK, "msdl " + _soid);
+                    } catch (ExTimeout e) {
+                        // give idle sources a chance to help with lagging ranges
+                    }
+                }
+            } finally {
+                // NB: clearing the list prevents late callbacks from resuming this thread
+                for (Fetch f : _fetches) f.cancel_();
+                _fetches.clear();
+            }
+
+            l.info("msdl {} {} {}/{}", _soid, _sched.done() ? "done" : "stopped",
+                    _sched.polled(), _rc.length);
+            return _sched.done() && verify_();
+        }
+
+        private boolean verify_() throws IOException
+        {
+            byte[] state = _prefix.hashState_();
+            ContentHash h = state != null
+                    ? new ContentHash(DigestSerializer.deserialize(state, _rc.length).digest())
+                    : null;
+            if (_rc.hash.equals(h)) return true;
+
+            l.warn("msdl {} hash mismatch: {} {}", _soid, _rc.hash, h);
+            // one of the sources sent corrupted data, which can't be pinpointed. Discard the
+            // prefix and let the regular download start over from a single source
+            _prefix.delete_();
+            newMetric("msdl.hash.mismatch")
+                    .addData("soid", _soid.toString())
+                    .addData("expected_hash", _rc.hash.toHex())
+                    .addData("actual_hash", h != null ? h.toHex() : null)
+                    .sendAsync();
+            return false;
+        }
+
+        private void issue_() throws SQLException
+        {
+            long now = now();
+            for (DID did : _sched.sources()) {
+                Range r;
+                while ((r = _sched.assign(did, now)) != null) {
+                    if (!request_(did, r)) break;
+                }
+            }
+        }
+
+        private boolean request_(DID did, Range r) throws SQLException
+        {
+            try {
+                PBCore request = _pgcc.newRangeRequest_(_soid, r.offset, r.length);
+                Endpoint ep = _trl.sendUnicast_(did, request);
+                if (ep == null) throw new ExDeviceUnavailable(did.toString());
+                Fetch f = new Fetch(did, r);
+                _rpc.asyncRequest_(ep, request, f);
+                _fetches.add(f);
+                return true;
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                drop_(did, e);
+                return false;
+            }
+        }
+
+        private void append_(List<byte[]> ranges) throws ExAborted, IOException
+        {
+            if (ranges.isEmpty()) return;
+            // release core lock to avoid blocking while writing to disk
+            TCB tcb = _tk.pseudoPause_("msdl-write");
+            try (PrefixOutputStream os = _prefix.newOutputStream_(true)) {
+                for (byte[] b : ranges) os.write(b);
+            } finally {
+                tcb.pseudoResumed_();
+            }
+        }
+
+        private void completed_(Fetch f, byte[] data)
+        {
+            if (!_fetches.remove(f)) return;
+            for (DID other : _sched.complete(f._did, f._r, data, now())) cancel_(other, f._r);
+            wake_();
+        }
+
+        private void failed_(Fetch f, Throwable t)
+        {
+            if (!_fetches.remove(f)) return;
+            drop_(f._did, t);
+            wake_();
+        }
+
+        /**
+         * Stop using a source that failed or went offline. The ranges it held go back to the
+         * scheduler and are requested from other sources
+         */
+        private void drop_(DID did, Throwable t)
+        {
+            l.info("msdl {} drop {}", _soid, did, BaseLogUtil.suppress(t,
+                    ExDeviceUnavailable.class, ExTimeout.class,
+                    ExNoComponentWithSpecifiedVersion.class));
+            for (Range r : _sched.drop(did)) cancel_(did, r);
+        }
+
+        private void cancel_(DID did, Range r)
+        {
+            Iterator<Fetch> it = _fetches.iterator();
+            while (it.hasNext()) {
+                Fetch f = it.next();
+                if (f._r == r && f._did.equals(did)) {
+                    it.remove();
+                    f.cancel_();
+                }
+            }
+        }
+
+        private void wake_()
+        {
+            _dirty = true;
+            _tcb.resume_();
+        }
+
+        /**
+         * Request for a single range, from a single source
+         *
+         * Callbacks are invoked on core threads. The content of the range is read on one of the
+         * reader threads and handed back to the core once complete.
+         */
+        private class Fetch implements FutureCallback<DigestedMessage>
+        {
+            final DID _did;
+            final Range _r;
+
+            private volatile boolean _cancelled;
+            private @Nullable StreamKey _key;
+
+            Fetch(DID did, Range r)
+            {
+                _did = did;
+                _r = r;
+            }
+
+            @Override
+            public void onSuccess(DigestedMessage msg)
+            {
+                _key = msg.streamKey();
+                if (_cancelled) {
+                    end_();
+                    return;
+                }
+                try {
+                    validate_(msg);
+                } catch (Exception e) {
+                    end_();
+                    failed_(this, e);
+                    return;
+                }
+                InputStream is = msg.is();
+                _readers.execute(() -> read(is));
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                if (!_cancelled) failed_(this, t);
+            }
+
+            private void validate_(DigestedMessage msg) throws Exception
+            {
+                if (!_did.equals(msg.did())) {
+                    throw new ExProtocolError("did mismatch " + _did + " " + msg.did());
+                }
+                if (msg.pb().hasExceptionResponse()) {
+                    throw BaseLogUtil.suppress(Exceptions.fromPB(msg.pb().getExceptionResponse()));
+                }
+                Util.checkPB(msg.pb().hasGetContentResponse(), PBGetContentResponse.class);
+
+                // see Rule 2 in acl.md
+                if (!_lacl.check_(msg.user(), _soid.sidx(), Permissions.EDITOR)) {
+                    throw new ExSenderHasNoPerm();
+                }
+
+                PBGetContentResponse response = msg.pb().getGetContentResponse();
+                if (response.getVersion() != _rc.version || response.getLength() != _rc.length
+                        || !_rc.hash.equals(new ContentHash(response.getHash()))) {
+                    throw new ExNoComponentWithSpecifiedVersion();
+                }
+                // peers that predate multi-source downloads ignore the range
+                if (!response.hasRangeOffset() || response.getRangeOffset() != _r.offset) {
+                    throw new ExProtocolError("range ignored " + _r);
+                }
+            }
+
+            // NB: called on a reader thread
+            private void read(InputStream is)
+            {
+                byte[] buf = new byte[_r.length];
+                Throwable err = null;
+                try {
+                    int n = 0;
+                    while (n < buf.length && !_cancelled) {
+                        int c = is.read(buf, n, buf.length - n);
+                        if (c == -1) throw new EOFException();
+                        n += c;
+                    }
+                } catch (Throwable t) {
+                    err = t;
+                }
+                final Throwable e = err;
+                _coreExecutor.execute(() -> {
+                    end_();
+                    if (_cancelled) return;
+                    if (e != null) {
+                        failed_(this, e);
+                    } else {
+                        completed_(this, buf);
+                    }
+                });
+            }
+
+            // ending the stream also unblocks any pending read on a reader thread
+            void cancel_()
+            {
+                _cancelled = true;
+                end_();
+            }
+
+            private void end_()
+            {
+                if (_key != null) _iss.end_(_key);
+                _key = null;
+            }
+        }
+    }
+}
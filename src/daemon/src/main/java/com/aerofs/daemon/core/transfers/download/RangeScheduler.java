@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.transfers.download;
+
+import com.aerofs.ids.DID;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Splits the content of a file into fixed-size ranges and hands them out to the sources of a
+ * multi-source download.
+ *
+ * Ranges are assigned in file order, within a bounded window past the first missing range, so
+ * that completed ranges can be appended to the prefix shortly after they arrive and the amount
+ * of out-of-order data held in memory stays bounded.
+ *
+ * Slow sources are worked around by assigning the ranges they hold to faster idle sources as
+ * well: the first copy to arrive wins and the other one is cancelled. Failed sources are dropped
+ * and the ranges they held are handed out again.
+ *
+ * Times are in milliseconds and passed by the caller, to keep this class deterministic.
+ *
+ * NB: not thread-safe
+ */
+class RangeScheduler
+{
+    // weight of the latest sample in the moving average of the throughput of a source
+    private static final double ALPHA = 0.3;
+
+    // a range is duplicated only if the idle source is expected to deliver it at least this
+    // many times sooner than the source currently holding it
+    private static final double STEAL_FACTOR = 2.0;
+
+    static class Range
+    {
+        final long offset;
+        final int length;
+
+        // sources currently fetching this range, and when it was assigned to them
+        private final Map<DID, Long> _holders = Maps.newHashMapWithExpectedSize(2);
+        private @Nullable byte[] _data;
+
+        private Range(long offset, int length)
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[" + offset + "+" + length + "]";
+        }
+    }
+
+    private static class Source
+    {
+        int inflight;
+        // bytes per millisecond, NaN until the first range is received
+        double rate = Double.NaN;
+        // end of the latest range received, to discount queueing from the next sample
+        long lastCompletion;
+        boolean dropped;
+    }
+
+    private final long _end;
+    private final int _rangeSize;
+    private final int _window;
+    private final int _depth;
+
+    private final Map<DID, Source> _sources = Maps.newLinkedHashMap();
+
+    // ranges from the first missing one to the end of the window
+    private final Deque<Range> _ranges = new ArrayDeque<>();
+    // offset of the first byte not covered by _ranges, i.e. where the next range starts
+    private long _next;
+    // offset of the first byte not yet returned by poll()
+    private long _polled;
+
+    /**
+     * @param start offset of the first byte to fetch, i.e. length of the existing prefix
+     * @param end length of the file
+     * @param window maximum number of ranges fetched or held in memory at any given time
+     * @param depth maximum number of ranges fetched from each source at any given time
+     */
+    RangeScheduler(long start, long end, int rangeSize, int window, int depth)
+    {
+        checkArgument(0 <= start && start <= end);
+        checkArgument(rangeSize > 0 && window > 0 && depth > 0);
+        _end = end;
+        _rangeSize = rangeSize;
+        _window = window;
+        _depth = depth;
+        _next = start;
+        _polled = start;
+        fillWindow();
+    }
+
+    void addSource(DID did)
+    {
+        _sources.putIfAbsent(did, new Source());
+    }
+
+    /**
+     * @return sources that have not been dropped
+     */
+    List<DID> sources()
+    {
+        List<DID> l = Lists.newArrayList();
+        for (Entry<DID, Source> e : _sources.entrySet()) {
+            if (!e.getValue().dropped) l.add(e.getKey());
+        }
+        return l;
+    }
+
+    int inflight(DID did)
+    {
+        Source s = _sources.get(did);
+        return s != null ? s.inflight : 0;
+    }
+
+    /**
+     * @return whether all ranges have been received and polled
+     */
+    boolean done()
+    {
+        return _polled == _end;
+    }
+
+    /**
+     * @return offset of the first byte not yet polled
+     */
+    long polled()
+    {
+        return _polled;
+    }
+
+    /**
+     * @return the next range to fetch from the given source, or null if it should stay idle
+     */
+    @Nullable Range assign(DID did, long now)
+    {
+        Source s = _sources.get(did);
+        if (s == null || s.dropped || s.inflight >= _depth) return null;
+
+        for (Range r : _ranges) {
+            if (r._data == null && r._holders.isEmpty()) return assign(did, s, r, now);
+        }
+
+        // all ranges in the window are taken: help with the earliest range whose holder lags
+        if (s.inflight > 0) return null;
+        double own = rate(s);
+        if (Double.isNaN(own)) return null;
+        for (Range r : _ranges) {
+            if (r._data != null || r._holders.size() != 1 || r._holders.containsKey(did)) continue;
+            Entry<DID, Long> h = r._holders.entrySet().iterator().next();
+            double eta = eta(_sources.get(h.getKey()), r, h.getValue(), now);
+            if (r.length / own * STEAL_FACTOR < eta) return assign(did, s, r, now);
+        }
+        return null;
+    }
+
+    private Range assign(DID did, Source s, Range r, long now)
+    {
+        r._holders.put(did, now);
+        ++s.inflight;
+        return r;
+    }
+
+    /**
+     * Record the content of a range
+     *
+     * @return other sources still fetching the same range, whose requests should be cancelled
+     */
+    Collection<DID> complete(DID did, Range r, byte[] data, long now)
+    {
+        checkArgument(data.length == r.length);
+        Long assigned = r._holders.remove(did);
+        if (assigned == null) return Collections.emptyList();
+
+        Source s = _sources.get(did);
+        --s.inflight;
+        // with several ranges in flight, a source only starts serving a range once it is done
+        // with the previous one
+        long elapsed = Math.max(1, now - Math.max(assigned, s.lastCompletion));
+        double sample = (double)r.length / elapsed;
+        s.rate = Double.isNaN(s.rate) ? sample : ALPHA * sample + (1 - ALPHA) * s.rate;
+        s.lastCompletion = now;
+
+        checkState(r._data == null);
+        r._data = data;
+
+        List<DID> others = Lists.newArrayList(r._holders.keySet());
+        for (DID other : others) --_sources.get(other).inflight;
+        r._holders.clear();
+        return others;
+    }
+
+    /**
+     * Drop a source that failed to deliver a range, or went offline
+     *
+     * @return ranges that were still being fetched from the source, whose requests should be
+     * cancelled
+     */
+    Collection<Range> drop(DID did)
+    {
+        Source s = _sources.get(did);
+        if (s == null || s.dropped) return Collections.emptyList();
+        s.dropped = true;
+        s.inflight = 0;
+
+        List<Range> released = Lists.newArrayList();
+        for (Range r : _ranges) {
+            if (r._holders.remove(did) != null) released.add(r);
+        }
+        return released;
+    }
+
+    /**
+     * @return content of the ranges contiguous with the data polled so far, in file order
+     */
+    List<byte[]> poll()
+    {
+        List<byte[]> l = Lists.newArrayList();
+        while (!_ranges.isEmpty() && _ranges.peekFirst()._data != null) {
+            Range r = _ranges.pollFirst();
+            l.add(r._data);
+            r._data = null;
+            _polled += r.length;
+        }
+        fillWindow();
+        return l;
+    }
+
+    private void fillWindow()
+    {
+        while (_ranges.size() < _window && _next < _end) {
+            int length = (int)Math.min(_rangeSize, _end - _next);
+            _ranges.addLast(new Range(_next, length));
+            _next += length;
+        }
+    }
+
+    private double rate(Source s)
+    {
+        if (!Double.isNaN(s.rate)) return s.rate;
+        // assume sources that have not delivered anything yet perform like the average
+        double sum = 0;
+        int n = 0;
+        for (Source o : _sources.values()) {
+            if (o.dropped || Double.isNaN(o.rate)) continue;
+            sum += o.rate;
+            ++n;
+        }
+        return n > 0 ? sum / n : Double.NaN;
+    }
+
+    /**
+     * @return expected time until the given source delivers the given range
+     */
+    private double eta(Source s, Range r, long assigned, long now)
+    {
+        double expected = r.length / rate(s);
+        long elapsed = now - Math.max(assigned, s.lastCompletion);
+        // a source running late is assumed to be at most half-way through
+        return elapsed <= expected ? expected - elapsed : elapsed;
+    }
+}
@@ -0,0 +1,20 @@
+package com.aerofs.daemon.core.update;
+
+import com.aerofs.daemon.core.phy.linked.db.LinkedStorageSchema;
+import com.aerofs.lib.StorageType;
+import com.aerofs.lib.cfg.CfgStorageType;
+import com.aerofs.lib.db.dbcw.IDBCW;
+import com.google.inject.Inject;
+
+public class DPUTAddDirectoryFingerprintTable implements IDaemonPostUpdateTask {
+    @Inject private IDBCW _dbcw;
+    @Inject private CfgStorageType _storageType;
+
+    @Override
+    public void run() throws Exception {
+        if (_storageType.get() != StorageType.LINKED) return;
+        DPUTUtil.runDatabaseOperationAtomically_(_dbcw, s -> {
+            LinkedStorageSchema.createDirectoryFingerprintTable_(s, _dbcw);
+        });
+    }
+}
@@ -46,7 +46,8 @@ public class DaemonPostUpdateTasks
             // end phoenix conversion
 
             DPUTAddAvailableContentTable.class,
-            DPUTPartialCAIndex.class
+            DPUTPartialCAIndex.class,
+            DPUTAddDirectoryFingerprintTable.class
             // new tasks go here - also, update DAEMON_POST_UPDATE_TASKS counter!
     };
 
@@ -5,22 +5,32 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -32,6 +42,11 @@ import static com.google.common.base.Preconditions.checkState;
  * this is exceeded it sorts them and writes them out to disk. After all the
  * elements have been added, it then merges the on-disk files to provide the
  * results in sorted order.
+ *
+ * By default each run is sorted and written on the calling thread, using Java
+ * serialization. A {@link Codec} can be provided for a more compact and much
+ * faster encoding, and runs can be sorted and written on a {@link ForkJoinPool}
+ * while the next run is being filled, see {@link #setForkJoinPool}.
  */
 public class ExternalSorter<T> implements Closeable
 {
@@ -66,6 +81,16 @@ public class ExternalSorter<T> implements Closeable
         public T next() throws IOException;
     }
 
+    /**
+     * Binary encoding of elements, used instead of Java serialization when provided
+     */
+    public interface Codec<T>
+    {
+        public void write(DataOutput out, @Nonnull T value) throws IOException;
+
+        public T read(DataInput in) throws IOException;
+    }
+
     /**
      * Like PeekingIterator but with IOExceptions
      */
@@ -229,6 +254,64 @@ public class ExternalSorter<T> implements Closeable
         }
     }
 
+    private static final class CodecInput<T> extends AbstractInput<T> implements PeekingInput<T>
+    {
+        private final DataInputStream _in;
+        private final Codec<T> _codec;
+
+        private CodecInput(DataInputStream in, Codec<T> codec)
+        {
+            _in = in;
+            _codec = codec;
+        }
+
+        @Override
+        protected T computeNext() throws IOException
+        {
+            if (!_in.readBoolean()) {
+                close();
+                return endOfData();
+            }
+            return _codec.read(_in);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            _in.close();
+        }
+    }
+
+    private static final class CodecOutput<T> implements Output<T>
+    {
+        private final DataOutputStream _out;
+        private final Codec<T> _codec;
+
+        private CodecOutput(DataOutputStream out, Codec<T> codec)
+        {
+            _out = out;
+            _codec = codec;
+        }
+
+        @Override
+        public void write(@Nonnull T value) throws IOException
+        {
+            Preconditions.checkNotNull(value);
+            _out.writeBoolean(true);
+            _codec.write(_out, value);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try {
+                _out.writeBoolean(false);
+            } finally {
+                _out.close();
+            }
+        }
+    }
+
     private static final class IteratorInput<T> extends AbstractInput<T> implements PeekingInput<T>
     {
         private final Iterator<? extends T> _iterator;
@@ -270,67 +353,99 @@ public class ExternalSorter<T> implements Closeable
     }
 
     /**
-     * The merger uses a {@link PriorityQueue} to perform a merge sort on the
-     * files
+     * The merger uses a loser tree to perform a k-way merge of the sorted
+     * sources, lazily
+     *
+     * Each internal node of the tree holds the source whose head lost the match
+     * played at that node, and the root holds the overall winner. Once the head of
+     * the winner is consumed, only the matches on the path from its leaf to the
+     * root are replayed, i.e. log2(k) comparisons per element, against roughly
+     * twice as many for a binary heap.
      */
     static class Merger<T> extends AbstractInput<T> implements PeekingInput<T>
     {
-        private PriorityQueue<PeekingInput<T>> _pq;
+        private final Comparator<? super T> _comparator;
+        private final List<Input<? extends T>> _sources;
+
+        // current head of each source, null once exhausted
+        private final Object[] _heads;
+
+        // _tree[0] is the winner, _tree[1..k-1] are the losers of the internal nodes
+        private final int[] _tree;
 
         public Merger(Collection<? extends Input<? extends T>> sources,
                       final Comparator<? super T> comparator) throws IOException
         {
-            final Comparator<PeekingInput<T>> inputComparator = new Comparator<PeekingInput<T>>() {
-                @Override
-                public int compare(PeekingInput<T> o1, PeekingInput<T> o2)
-                {
-                    try {
-                        if (!o1.hasNext()) {
-                            if (!o2.hasNext()) return 0;
-                            else return -1;
-                        } else {
-                            if (!o2.hasNext()) return 1;
-                            else return comparator.compare(o1.peek(), o2.peek());
-                        }
-                    } catch (IOException e) {
-                        throw new RuntimeIOException(e);
-                    }
+            _comparator = comparator;
+            _sources = Lists.newArrayList(sources);
+            int k = _sources.size();
+            _heads = new Object[k];
+            _tree = new int[Math.max(1, k)];
+            for (int i = 0; i < k; i++) advance(i);
+
+            // play the initial tournament bottom-up: leaf i sits at index k + i
+            int[] winners = new int[2 * k];
+            for (int i = 0; i < k; i++) winners[k + i] = i;
+            for (int n = k - 1; n >= 1; n--) {
+                int a = winners[2 * n], b = winners[2 * n + 1];
+                if (beats(b, a)) {
+                    winners[n] = b;
+                    _tree[n] = a;
+                } else {
+                    winners[n] = a;
+                    _tree[n] = b;
                 }
-            };
-            _pq = new PriorityQueue<PeekingInput<T>>(Math.max(1, sources.size()), inputComparator);
-            try {
-                for (Input<? extends T> it : sources) {
-                    PeekingInput<T> pi = peekingInput(it);
-                    if (pi.hasNext()) _pq.add(pi);
-                }
-            } catch (RuntimeIOException e) {
-                throw (IOException)e.getCause();
-            } catch (IOException e) {
-                throw e;
             }
+            _tree[0] = k > 1 ? winners[1] : 0;
+        }
+
+        private void advance(int i) throws IOException
+        {
+            Input<? extends T> in = _sources.get(i);
+            _heads[i] = in.hasNext() ? checkNotNull(in.next()) : null;
+        }
+
+        /**
+         * @return whether the head of source a comes before the head of source b
+         */
+        @SuppressWarnings("unchecked")
+        private boolean beats(int a, int b)
+        {
+            if (_heads[a] == null) return false;
+            if (_heads[b] == null) return true;
+            int c = _comparator.compare((T)_heads[a], (T)_heads[b]);
+            return c < 0 || (c == 0 && a < b);
         }
 
         @Override
         protected T computeNext() throws IOException
         {
-            try {
-                PeekingInput<T> pi = _pq.poll();
-                if (pi == null) return endOfData();
-                T value = pi.next();
-                if (pi.hasNext()) _pq.add(pi);
-                return value;
-            } catch (RuntimeIOException e) {
-                throw (IOException)e.getCause();
+            if (_heads.length == 0) return endOfData();
+            int w = _tree[0];
+            @SuppressWarnings("unchecked")
+            T value = (T)_heads[w];
+            if (value == null) return endOfData();
+
+            advance(w);
+            // replay the matches on the path from the leaf of the winner to the root
+            for (int n = (w + _heads.length) >> 1; n >= 1; n >>= 1) {
+                if (beats(_tree[n], w)) {
+                    int loser = w;
+                    w = _tree[n];
+                    _tree[n] = loser;
+                }
             }
+            _tree[0] = w;
+            return value;
         }
 
         @Override
         public void close() throws IOException
         {
             try {
-                closeAll(_pq);
+                closeAll(_sources);
             } finally {
-                _pq.clear();
+                _sources.clear();
             }
         }
     }
@@ -344,6 +459,9 @@ public class ExternalSorter<T> implements Closeable
         }
     };
 
+    // large buffers amortize the cost of seeks when merging many runs
+    private static final int IO_BUFFER_SIZE = 64 * C.KB;
+
     static File _topSorterTempDir;
 
     final Comparator<? super T> _comparator;
@@ -360,6 +478,15 @@ public class ExternalSorter<T> implements Closeable
 
     long _currentSize;
 
+    @Nullable Codec<T> _codec;
+
+    @Nullable ForkJoinPool _pool;
+
+    int _maxPendingRuns;
+
+    // runs being sorted and written in the fork-join pool, oldest first
+    final Deque<ForkJoinTask<?>> _pending = new ArrayDeque<>();
+
     /**
      * Only works if T implements Comparable<? super T>
      */
@@ -381,6 +508,31 @@ public class ExternalSorter<T> implements Closeable
         _maxCurrentSize = value;
     }
 
+    /**
+     * Use the given codec instead of Java serialization to write runs to disk
+     */
+    public void setCodec(@Nullable Codec<T> codec)
+    {
+        _codec = codec;
+    }
+
+    /**
+     * Sort and write runs in the given pool instead of the calling thread
+     *
+     * At most {@code maxPendingRuns} runs may be pending at any time, in addition to
+     * the one being filled: further flushes block until the oldest pending run is
+     * written. Up to {@code maxPendingRuns + 1} times the max size of elements may
+     * thus be kept in memory at once.
+     *
+     * @param pool the pool, or null to sort runs on the calling thread
+     */
+    public void setForkJoinPool(@Nullable ForkJoinPool pool, int maxPendingRuns)
+    {
+        Preconditions.checkArgument(pool == null || maxPendingRuns > 0, "maxPendingRuns > 0");
+        _pool = pool;
+        _maxPendingRuns = maxPendingRuns;
+    }
+
     /**
      * Override to return a different measure of the size of one element
      */
@@ -411,12 +563,19 @@ public class ExternalSorter<T> implements Closeable
     /**
      * Open a file for writing to disk.
      *
-     * By default this uses Java's built-in serialization mechanism but with
-     * periodic calls to {@link ObjectOutputStream#reset()} to limit the number
-     * of objects the {@link ObjectInputStream} has to remember.
+     * By default this uses the codec if one was provided, or Java's built-in
+     * serialization mechanism but with periodic calls to
+     * {@link ObjectOutputStream#reset()} to limit the number of objects the
+     * {@link ObjectInputStream} has to remember.
+     *
+     * NB: in parallel mode this is called from the fork-join pool.
      */
     protected Output<T> openOutput(File file) throws IOException
     {
+        if (_codec != null) {
+            return new CodecOutput<T>(new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), IO_BUFFER_SIZE)), _codec);
+        }
         @SuppressWarnings("resource") //we need to return the opened resource
         final ObjectOutputStream os = new ObjectOutputStream(new BufferedOutputStream(
                 new FileOutputStream(file)));
@@ -451,6 +610,10 @@ public class ExternalSorter<T> implements Closeable
      */
     protected Input<T> openInput(File file) throws IOException
     {
+        if (_codec != null) {
+            return new CodecInput<T>(new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), IO_BUFFER_SIZE)), _codec);
+        }
         final ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
                 new FileInputStream(file)));
         return new StreamInput<T>(in);
@@ -484,20 +647,53 @@ public class ExternalSorter<T> implements Closeable
     {
         if (_current.isEmpty()) return;
 
-        Collections.sort(_current, _comparator);
-
         File tempFile = newTempFile();
-        Output<T> out = openOutput(tempFile);
+        if (_pool == null) {
+            writeRun(_current, tempFile);
+            _current.clear();
+        } else {
+            while (_pending.size() >= _maxPendingRuns) waitFor(_pending.peekFirst());
+            final List<T> run = _current;
+            _pending.addLast(_pool.submit(() -> {
+                try {
+                    writeRun(run, tempFile);
+                } catch (IOException e) {
+                    throw new RuntimeIOException(e);
+                }
+            }));
+            _current = Lists.newArrayList();
+        }
+        _currentSize = 0;
+    }
+
+    private void writeRun(List<T> run, File file) throws IOException
+    {
+        Collections.sort(run, _comparator);
+
+        Output<T> out = openOutput(file);
         try {
-            for (T value : _current) {
+            for (T value : run) {
                 out.write(value);
             }
         } finally {
             out.close();
         }
+    }
 
-        _current.clear();
-        _currentSize = 0;
+    private void waitFor(ForkJoinTask<?> task) throws IOException
+    {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeIOException) throw (IOException)cause.getCause();
+            throw new IOException(cause);
+        } finally {
+            if (task.isDone()) _pending.remove(task);
+        }
     }
 
     /**
@@ -505,6 +701,8 @@ public class ExternalSorter<T> implements Closeable
      */
     public Input<T> sort() throws IOException
     {
+        while (!_pending.isEmpty()) waitFor(_pending.peekFirst());
+
         List<Input<T>> inputs = Lists.newArrayList();
         for (File f : _files) {
             inputs.add(openInput(f));
@@ -524,6 +722,12 @@ public class ExternalSorter<T> implements Closeable
     {
         if (_current == null || _files == null) return;
         _current = null;
+        // do not delete files from under pending runs
+        for (ForkJoinTask<?> task : _pending) {
+            task.cancel(false);
+            task.quietlyJoin();
+        }
+        _pending.clear();
         for (File f : _files) {
             FileUtil.tryDeleteNow(f);
         }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.linked.linker;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.ids.SID;
+import com.aerofs.lib.ContentHash;
+import com.aerofs.lib.cfg.CfgAbsRTRoot;
+import com.aerofs.lib.id.FID;
+import com.aerofs.testlib.AbstractTest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+public class TestHashCache extends AbstractTest
+{
+    @Rule public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Mock CfgAbsRTRoot rtroot;
+
+    final SID root1 = SID.generate();
+    final SID root2 = SID.generate();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        when(rtroot.get()).thenReturn(_folder.getRoot().getAbsolutePath());
+    }
+
+    private static FID fid(int i)
+    {
+        return new FID(new byte[] { (byte)(i >> 8), (byte)i });
+    }
+
+    private static ContentHash hash(int i)
+    {
+        return new ContentHash(BaseSecUtil.hash(new byte[] { (byte)(i >> 8), (byte)i }));
+    }
+
+    @Test
+    public void shouldReturnHashOfUnchangedFile()
+    {
+        HashCache cache = new HashCache(rtroot);
+        cache.put(root1, fid(1), 10, 42, hash(1));
+
+        assertEquals(hash(1), cache.get(root1, fid(1), 10, 42));
+        assertNull(cache.get(root1, fid(1), 11, 42));
+        assertNull(cache.get(root1, fid(1), 10, 43));
+    }
+
+    @Test
+    public void shouldPersistEntries()
+    {
+        HashCache cache = new HashCache(rtroot);
+        cache.put(root1, fid(1), 10, 42, hash(1));
+        cache.flush();
+
+        // flushed entries are read back from the db
+        assertEquals(hash(1), cache.get(root1, fid(1), 10, 42));
+        assertNull(cache.get(root1, fid(2), 10, 42));
+    }
+
+    @Test
+    public void shouldNotMixUpFilesWithSameFIDUnderDifferentRoots()
+    {
+        HashCache cache = new HashCache(rtroot);
+        cache.put(root1, fid(1), 10, 42, hash(1));
+        cache.put(root2, fid(1), 10, 42, hash(2));
+        cache.flush();
+
+        assertEquals(hash(1), cache.get(root1, fid(1), 10, 42));
+        assertEquals(hash(2), cache.get(root2, fid(1), 10, 42));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntries() throws Exception
+    {
+        HashCache cache = new HashCache(rtroot, 100);
+        // distinct timestamps give a well-defined eviction order
+        for (int i = 0; i < 100; ++i) {
+            cache.put(root1, fid(i), 10, 42, hash(i));
+            Thread.sleep(2);
+        }
+        cache.flush();
+
+        assertEquals(hash(0), cache.get(root1, fid(0), 10, 42));
+        cache.flush();
+
+        Thread.sleep(2);
+        cache.put(root1, fid(100), 10, 42, hash(100));
+        cache.flush();
+
+        // a tenth of the entries is dropped on overflow, least recently used first
+        for (int i = 1; i <= 11; ++i) assertNull(cache.get(root1, fid(i), 10, 42));
+        assertEquals(hash(0), cache.get(root1, fid(0), 10, 42));
+        assertEquals(hash(12), cache.get(root1, fid(12), 10, 42));
+        assertEquals(hash(100), cache.get(root1, fid(100), 10, 42));
+    }
+}
@@ -15,10 +15,13 @@ import com.aerofs.daemon.core.mock.logical.MockDS;
 import com.aerofs.daemon.lib.db.trans.Trans;
 import com.aerofs.daemon.lib.db.trans.TransManager;
 import com.aerofs.lib.ContentHash;
+import com.aerofs.lib.cfg.ICfgStore;
 import com.aerofs.lib.db.dbcw.IDBCW;
 import com.aerofs.lib.event.AbstractEBSelfHandling;
 import com.aerofs.lib.event.IEvent;
 import com.aerofs.lib.id.*;
+import com.aerofs.lib.injectable.InjectableDriver;
+import com.aerofs.lib.injectable.InjectableDriver.FIDAndType;
 import com.aerofs.lib.injectable.InjectableFile;
 import com.aerofs.testlib.AbstractTest;
 import com.google.common.util.concurrent.SettableFuture;
@@ -49,6 +52,9 @@ public class TestHashQueue extends AbstractTest
     @Mock DirectoryService ds;
     @Mock VersionUpdater vu;
     @Mock TransManager tm;
+    @Mock InjectableDriver dr;
+    @Mock HashCache cache;
+    @Mock ICfgStore cfgStore;
     @InjectMocks HashQueue hq;
 
     class TestableTrans extends Trans
@@ -265,4 +271,51 @@ public class TestHashQueue extends AbstractTest
         verify(ds, never()).setCA_(eq(sokid), anyLong(), anyLong(), any(ContentHash.class), any(Trans.class));
         verifyZeroInteractions(vu);
     }
+
+    @Test
+    public void shouldUseCachedHash() throws Exception
+    {
+        ContentHash oldHash = new ContentHash(BaseSecUtil.hash(new byte[] {0}));
+        ContentHash cachedHash = new ContentHash(BaseSecUtil.hash(new byte[] {1}));
+        when(ds.getCAHash_(sokid)).thenReturn(oldHash);
+
+        FID fid = new FID(new byte[] {4, 2});
+        InjectableFile f = mockContent(new byte[] {1}, 42L);
+        when(f.getAbsolutePath()).thenReturn("foo");
+        // getFID is final, stub the method it delegates to
+        when(dr.getFIDAndTypeNullable("foo")).thenReturn(new FIDAndType(fid, false));
+        when(cache.get(rootSID, fid, 1L, 42L)).thenReturn(cachedHash);
+        Future<AbstractEBSelfHandling> ev = whenHashed();
+
+        trans(t -> assertTrue(hq.requestHash_(soid, f, f.length(), f.lastModified(), t)));
+
+        ev.get().handle_();
+
+        verify(f, never()).newInputStream();
+        verify(cache, never()).put(any(SID.class), any(FID.class), anyLong(), anyLong(),
+                any(ContentHash.class));
+        verify(ds).setCA_(eq(sokid), eq(1L), eq(42L), eq(cachedHash), any(Trans.class));
+        verify(vu).update_(eq(new SOCID(soid, CID.CONTENT)), any(Trans.class));
+    }
+
+    @Test
+    public void shouldPopulateCache() throws Exception
+    {
+        when(ds.getCAHash_(sokid)).thenReturn(EMPTY_HASH);
+
+        FID fid = new FID(new byte[] {4, 2});
+        InjectableFile f = mockContent(EMPTY_CONTENT, 42L);
+        when(f.getAbsolutePath()).thenReturn("foo");
+        // getFID is final, stub the method it delegates to
+        when(dr.getFIDAndTypeNullable("foo")).thenReturn(new FIDAndType(fid, false));
+        Future<AbstractEBSelfHandling> ev = whenHashed();
+
+        trans(t -> assertTrue(hq.requestHash_(soid, f, f.length(), f.lastModified(), t)));
+
+        ev.get().handle_();
+
+        verify(cache).put(rootSID, fid, 0L, 42L, EMPTY_HASH);
+        verify(ds).setCA_(eq(sokid), eq(0L), eq(42L), eq(EMPTY_HASH), any(Trans.class));
+        verifyZeroInteractions(vu);
+    }
 }
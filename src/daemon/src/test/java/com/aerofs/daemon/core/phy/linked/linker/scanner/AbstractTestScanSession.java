@@ -10,6 +10,7 @@ import com.aerofs.daemon.core.first_launch.ScanProgressReporter;
 import com.aerofs.daemon.core.mock.physical.MockPhysicalTree;
 import com.aerofs.daemon.core.phy.linked.RepresentabilityHelper;
 import com.aerofs.daemon.core.phy.linked.SharedFolderTagFileAndIcon;
+import com.aerofs.daemon.core.phy.linked.db.DirectoryFingerprintDatabase;
 import com.aerofs.daemon.core.phy.linked.db.NRODatabase;
 import com.aerofs.daemon.core.phy.linked.linker.LinkerRoot;
 import com.aerofs.daemon.core.phy.linked.linker.ILinkerFilter;
@@ -44,6 +45,8 @@ public abstract class AbstractTestScanSession extends AbstractTest
     @Mock ILinkerFilter filter;
     @Mock RepresentabilityHelper rh;
     @Mock SharedFolderTagFileAndIcon sfti;
+    @Mock DirectoryFingerprinter dfp;
+    @Mock DirectoryFingerprintDatabase dfpdb;
     @InjectMocks ScanSession.Factory factSS;
 
     protected final String pRoot;
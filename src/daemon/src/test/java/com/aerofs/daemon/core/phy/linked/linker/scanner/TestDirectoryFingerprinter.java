@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.linked.linker.scanner;
+
+import com.aerofs.daemon.core.phy.linked.db.DirectoryFingerprint;
+import com.aerofs.testlib.AbstractTest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestDirectoryFingerprinter extends AbstractTest
+{
+    @Rule public TemporaryFolder _folder = new TemporaryFolder();
+
+    private final DirectoryFingerprinter _dfp = new DirectoryFingerprinter();
+
+    private File _dir;
+    private File _sub;
+    private DirectoryFingerprint _fp;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _dir = _folder.newFolder("d");
+        write(new File(_dir, "f1"), "hello");
+        write(new File(_dir, "f2"), "world");
+        _sub = new File(_dir, "sub");
+        assertTrue(_sub.mkdir());
+        write(new File(_sub, "f3"), "!");
+        _fp = fingerprint();
+    }
+
+    private static void write(File f, String content) throws IOException
+    {
+        try (FileOutputStream os = new FileOutputStream(f)) {
+            os.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    private DirectoryFingerprint fingerprint()
+    {
+        return _dfp.compute(_dir.getAbsolutePath());
+    }
+
+    @Test
+    public void shouldBeStableIfUnchanged() throws Exception
+    {
+        assertEquals(3, _fp._count);
+        assertEquals(_fp, fingerprint());
+        assertEquals(_fp, _dfp.prefetch(_dir.getAbsolutePath()).get());
+    }
+
+    @Test
+    public void shouldChangeWhenChildAdded() throws Exception
+    {
+        write(new File(_dir, "f4"), "");
+        assertNotEquals(_fp, fingerprint());
+    }
+
+    @Test
+    public void shouldChangeWhenChildRemoved() throws Exception
+    {
+        assertTrue(new File(_dir, "f1").delete());
+        assertNotEquals(_fp, fingerprint());
+    }
+
+    @Test
+    public void shouldChangeWhenChildRenamed() throws Exception
+    {
+        File f = new File(_dir, "f1");
+        long mtime = _dir.lastModified();
+        assertTrue(f.renameTo(new File(_dir, "f5")));
+        // rule out detection through the mtime of the folder
+        assertTrue(_dir.setLastModified(mtime));
+        assertNotEquals(_fp, fingerprint());
+    }
+
+    @Test
+    public void shouldChangeWhenChildModified() throws Exception
+    {
+        File f = new File(_dir, "f1");
+        long mtime = f.lastModified();
+        write(f, "hello!");
+        assertTrue(f.setLastModified(mtime));
+        assertNotEquals(_fp, fingerprint());
+
+        assertTrue(f.setLastModified(mtime + 10000));
+        assertNotEquals(_fp, fingerprint());
+    }
+
+    @Test
+    public void shouldIgnoreChangesWithinChildFolder() throws Exception
+    {
+        long mtime = _sub.lastModified();
+        write(new File(_sub, "f6"), "");
+        assertTrue(_sub.setLastModified(mtime + 10000));
+        assertEquals(_fp, fingerprint());
+    }
+
+    @Test
+    public void shouldReturnNullIfNotAFolder() throws Exception
+    {
+        assertNull(_dfp.compute(new File(_dir, "f1").getAbsolutePath()));
+        assertNull(_dfp.compute(new File(_dir, "nope").getAbsolutePath()));
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.linked.linker.scanner;
+
+import com.aerofs.daemon.core.ds.IDirectoryServiceListener;
+import com.aerofs.daemon.core.first_launch.OIDGenerator;
+import com.aerofs.daemon.core.mock.ExArbitrary;
+import com.aerofs.daemon.core.mock.logical.MockAnchor;
+import com.aerofs.daemon.core.mock.logical.MockDir;
+import com.aerofs.daemon.core.mock.logical.MockFile;
+import com.aerofs.daemon.core.mock.logical.MockRoot;
+import com.aerofs.daemon.core.mock.physical.MockPhysicalTree;
+import com.aerofs.daemon.core.phy.linked.db.DirectoryFingerprint;
+import com.aerofs.daemon.core.phy.linked.linker.IDeletionBuffer;
+import com.aerofs.daemon.core.phy.linked.linker.MightCreate.Result;
+import com.aerofs.daemon.core.phy.linked.linker.PathCombo;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.ids.OID;
+import com.aerofs.lib.Path;
+import com.aerofs.lib.Util;
+import com.aerofs.lib.id.SOID;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.aerofs.daemon.core.mock.physical.MockPhysicalTree.dir;
+import static com.aerofs.daemon.core.mock.physical.MockPhysicalTree.file;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the handling of directory fingerprints by ScanSession.
+ */
+public class TestScanSession_Fingerprint extends AbstractTestScanSession
+{
+    private static final DirectoryFingerprint FP = new DirectoryFingerprint(3, 42, new byte[] { 1 });
+    private static final DirectoryFingerprint FP_CHANGED =
+            new DirectoryFingerprint(3, 43, new byte[] { 2 });
+
+    public TestScanSession_Fingerprint()
+    {
+        super(Util.join("foo", "bar"));
+    }
+
+    @Override
+    protected MockPhysicalTree createMockPhysicalFileSystem()
+    {
+        return dir("foo",
+                dir("bar",
+                    file("f1"),
+                    dir("d2",
+                        file("f2.1")
+                    ),
+                    dir("a3")
+                )
+            );
+    }
+
+    @Override
+    protected MockRoot createMockLogicalFileSystem()
+    {
+        return new MockRoot(
+                new MockFile("f1", 2),
+                new MockDir("d2",
+                    new MockFile("f2.1")
+                ),
+                new MockAnchor("a3", true)  // an expelled anchor
+            );
+    }
+
+    @Override
+    protected void mockMightCreate() throws Exception
+    {
+        when(mc.mightCreate_(any(PathCombo.class), any(IDeletionBuffer.class),
+                any(OIDGenerator.class), any(Trans.class)))
+                .then(invocation -> {
+                    PathCombo pc = (PathCombo) invocation.getArguments()[0];
+                    if (pc == null) return null;
+                    return factFile.create(pc._absPath).isDirectory() ? Result.EXISTING_FOLDER :
+                            Result.FILE;
+                });
+
+        mockPhysicalDir(pRoot);
+        mockPhysicalDir(Util.join(pRoot, "d2"));
+        mockPhysicalDir(Util.join(pRoot, "a3"));
+    }
+
+    @Test
+    public void shouldSkipUnchangedFolderAndRecurseIntoChildFolders() throws Exception
+    {
+        when(dfp.compute(pRoot)).thenReturn(FP);
+        when(dfpdb.getFingerprint_(soidFor(""))).thenReturn(FP);
+
+        fullScan(true);
+
+        verify(factFile.create(pRoot), never()).list();
+        verify(mc, never()).mightCreate_(pathCombo("f1"), any(IDeletionBuffer.class),
+                any(OIDGenerator.class), any(Trans.class));
+        verify(h, never()).hold_(soidFor("f1"));
+        verify(h, never()).hold_(soidFor("d2"));
+
+        // the child folder is still scanned
+        verify(factFile.create(Util.join(pRoot, "d2"))).list();
+        verify(h).hold_(soidFor("d2/f2.1"));
+
+        // but not the expelled anchor
+        verify(factFile.create(Util.join(pRoot, "a3")), never()).list();
+
+        verify(dfpdb, never()).setFingerprint_(eq(soidFor("")), any(DirectoryFingerprint.class),
+                any(Trans.class));
+        verify(h).releaseAll_();
+    }
+
+    @Test
+    public void shouldNotRecurseIntoChildFoldersOfUnchangedFolderIfRecursiveFlagIsFalse()
+            throws Exception
+    {
+        when(dfp.compute(pRoot)).thenReturn(FP);
+        when(dfpdb.getFingerprint_(soidFor(""))).thenReturn(FP);
+
+        fullScan(false);
+
+        verify(factFile.create(pRoot), never()).list();
+        verify(factFile.create(Util.join(pRoot, "d2")), never()).list();
+    }
+
+    @Test
+    public void shouldScanChangedFolderAndStoreFingerprint() throws Exception
+    {
+        when(dfp.compute(pRoot)).thenReturn(FP_CHANGED);
+        when(dfpdb.getFingerprint_(soidFor(""))).thenReturn(FP);
+
+        fullScan(false);
+
+        verify(factFile.create(pRoot)).list();
+        verify(h).hold_(soidFor("f1"));
+        verify(h).hold_(soidFor("d2"));
+        verify(dfpdb).setFingerprint_(eq(soidFor("")), eq(FP_CHANGED), any(Trans.class));
+    }
+
+    @Test
+    public void shouldScanFolderWithoutStoredFingerprint() throws Exception
+    {
+        when(dfp.compute(anyString())).thenReturn(FP);
+
+        fullScan(true);
+
+        verify(factFile.create(pRoot)).list();
+        verify(factFile.create(Util.join(pRoot, "d2"))).list();
+        verify(dfpdb).setFingerprint_(eq(soidFor("")), eq(FP), any(Trans.class));
+        verify(dfpdb).setFingerprint_(eq(soidFor("d2")), eq(FP), any(Trans.class));
+    }
+
+    @Test
+    public void shouldScanFolderIfFingerprintUnavailable() throws Exception
+    {
+        when(dfpdb.getFingerprint_(any(SOID.class))).thenReturn(FP);
+
+        fullScan(false);
+
+        verify(factFile.create(pRoot)).list();
+        verify(dfpdb, never()).setFingerprint_(any(SOID.class), any(DirectoryFingerprint.class),
+                any(Trans.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void shouldNotStoreFingerprintIfScanFails() throws Exception
+    {
+        when(dfp.compute(pRoot)).thenReturn(FP);
+        when(mc.mightCreate_(any(PathCombo.class), any(IDeletionBuffer.class),
+                any(OIDGenerator.class), any(Trans.class)))
+                .thenThrow(ExArbitrary.class);
+
+        try {
+            fullScan(false);
+            fail();
+        } catch (ExArbitrary e) {
+            verify(dfpdb, never()).setFingerprint_(any(SOID.class),
+                    any(DirectoryFingerprint.class), any(Trans.class));
+        }
+    }
+
+    @Test
+    public void shouldRescanFolderWhoseLogicalChildrenChanged() throws Exception
+    {
+        Map<SOID, DirectoryFingerprint> stored = new HashMap<>();
+        doAnswer(invocation -> stored.put((SOID)invocation.getArguments()[0],
+                (DirectoryFingerprint)invocation.getArguments()[1]))
+                .when(dfpdb).setFingerprint_(any(SOID.class), any(DirectoryFingerprint.class),
+                        any(Trans.class));
+        doAnswer(invocation -> stored.remove((SOID)invocation.getArguments()[0]))
+                .when(dfpdb).deleteFingerprint_(any(SOID.class), any(Trans.class));
+        when(dfpdb.getFingerprint_(any(SOID.class)))
+                .thenAnswer(invocation -> stored.get((SOID)invocation.getArguments()[0]));
+        ArgumentCaptor<IDirectoryServiceListener> listener =
+                ArgumentCaptor.forClass(IDirectoryServiceListener.class);
+        verify(ds).addListener_(listener.capture());
+
+        when(dfp.compute(pRoot)).thenReturn(FP);
+        SOID soidRoot = soidFor("");
+
+        fullScan(false);
+        verify(factFile.create(pRoot)).list();
+
+        // a file is created and picked up through a notification
+        listener.getValue().objectCreated_(new SOID(soidRoot.sidx(), OID.generate()),
+                soidRoot.oid(), Path.fromString(rootSID, "f3"), mock(Trans.class));
+
+        // the file is deleted while notifications are missed: the physical folder is back to
+        // its fingerprinted state but the logical object must still be removed
+        fullScan(false);
+        verify(factFile.create(pRoot), times(2)).list();
+        verify(h, times(2)).hold_(soidFor("f1"));
+
+        // nothing changed since
+        fullScan(false);
+        verify(factFile.create(pRoot), times(2)).list();
+    }
+
+    private SOID soidFor(String path) throws SQLException
+    {
+        return ds.resolveNullable_(path.isEmpty()
+                ? Path.root(rootSID)
+                : Path.fromString(rootSID, path));
+    }
+
+    private PathCombo pathCombo(String name)
+    {
+        return argThat(new BaseMatcher<PathCombo>() {
+            @Override
+            public boolean matches(Object o)
+            {
+                return o instanceof PathCombo && ((PathCombo)o)._path.last().equals(name);
+            }
+
+            @Override
+            public void describeTo(Description description)
+            {
+                description.appendText(name);
+            }
+        });
+    }
+
+    private void fullScan(boolean recursive) throws Exception
+    {
+        ScanSession ss = factSS.create_(root, Collections.singleton(pRoot), recursive);
+        do {} while (!ss.scan_());
+    }
+}
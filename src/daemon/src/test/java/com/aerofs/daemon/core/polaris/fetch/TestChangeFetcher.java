@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.polaris.fetch;
+
+import com.aerofs.daemon.core.CoreScheduler;
+import com.aerofs.daemon.core.polaris.PolarisAsyncClient;
+import com.aerofs.daemon.core.polaris.api.ObjectType;
+import com.aerofs.daemon.core.polaris.api.RemoteChange;
+import com.aerofs.daemon.core.polaris.api.Transforms;
+import com.aerofs.daemon.core.polaris.async.AsyncTaskCallback;
+import com.aerofs.daemon.core.polaris.db.ChangeEpochDatabase;
+import com.aerofs.daemon.core.status.PauseSync;
+import com.aerofs.daemon.core.store.IMapSID2SIndex;
+import com.aerofs.daemon.core.store.IMapSIndex2SID;
+import com.aerofs.daemon.core.store.MapSIndex2Store;
+import com.aerofs.daemon.core.store.StoreDeletionOperators;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.ids.DID;
+import com.aerofs.ids.OID;
+import com.aerofs.ids.SID;
+import com.aerofs.lib.event.AbstractEBSelfHandling;
+import com.aerofs.lib.event.IEvent;
+import com.aerofs.lib.id.SIndex;
+import com.aerofs.testlib.AbstractBaseTest;
+import com.google.common.util.concurrent.FutureCallback;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestChangeFetcher extends AbstractBaseTest
+{
+    private final PolarisAsyncClient client = mock(PolarisAsyncClient.class);
+    private final ChangeEpochDatabase cedb = mock(ChangeEpochDatabase.class);
+    private final ApplyChange ac = mock(ApplyChange.class);
+    private final IMapSIndex2SID sidx2sid = mock(IMapSIndex2SID.class);
+    private final IMapSID2SIndex sid2sidx = mock(IMapSID2SIndex.class);
+    private final TransManager tm = mock(TransManager.class);
+    private final CoreScheduler sched = mock(CoreScheduler.class);
+    private final StoreDeletionOperators sdo = new StoreDeletionOperators();
+
+    private final Trans t = mock(Trans.class);
+
+    private final SIndex sidx = new SIndex(1);
+    private final SID sid = SID.generate();
+    private final DID did = DID.generate();
+
+    private final List<String> requests = new ArrayList<>();
+    private final List<FutureCallback<Transforms>> pages = new ArrayList<>();
+    private final List<AbstractEBSelfHandling> scheduled = new ArrayList<>();
+    private long epoch;
+
+    private ChangeFetcher cf;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception
+    {
+        when(tm.begin_()).thenReturn(t);
+        when(sidx2sid.get_(sidx)).thenReturn(sid);
+        when(sidx2sid.getLocalOrAbsent_(sidx)).thenReturn(sid);
+        when(sid2sidx.getNullable_(sid)).thenReturn(sidx);
+        when(cedb.getChangeEpoch_(sidx)).thenAnswer(invocation -> epoch);
+        when(cedb.getHighestChangeEpoch_(sidx)).thenReturn(-1L);
+        doAnswer(invocation -> {
+            epoch = (Long)invocation.getArguments()[1];
+            return null;
+        }).when(cedb).setChangeEpoch_(eq(sidx), anyLong(), eq(t));
+        doAnswer(invocation -> {
+            requests.add(((HttpRequest)invocation.getArguments()[0]).getUri());
+            pages.add((FutureCallback<Transforms>)invocation.getArguments()[2]);
+            return null;
+        }).when(client).send(any(HttpRequest.class), any(), any(FutureCallback.class));
+        doAnswer(invocation -> {
+            scheduled.add((AbstractEBSelfHandling)invocation.getArguments()[0]);
+            return null;
+        }).when(sched).schedule(any(IEvent.class), anyLong());
+
+        cf = new ChangeFetcher(client, mock(PauseSync.class), cedb, ac, sidx2sid, sid2sidx, tm,
+                mock(MapSIndex2Store.class), sched, sdo);
+    }
+
+    private AsyncTaskCallback fetch() throws Exception
+    {
+        AsyncTaskCallback cb = mock(AsyncTaskCallback.class);
+        cf.fetch_(sidx, cb);
+        // run the coalescing timer, if any
+        List<AbstractEBSelfHandling> evs = new ArrayList<>(scheduled);
+        scheduled.clear();
+        for (AbstractEBSelfHandling ev : evs) ev.handle_();
+        return cb;
+    }
+
+    private void respond(int page, long max, RemoteChange... changes)
+    {
+        Transforms c = new Transforms();
+        c.maxTransformCount = max;
+        c.transforms = Arrays.asList(changes);
+        pages.get(page).onSuccess(c);
+    }
+
+    private RemoteChange at(long lts, RemoteChange rc)
+    {
+        rc.logicalTimestamp = lts;
+        rc.originator = did;
+        return rc;
+    }
+
+    private RemoteChange insert(long lts)
+    {
+        return at(lts, RemoteChange.insert(OID.ROOT, "f" + lts, OID.generate(), ObjectType.FILE));
+    }
+
+    private String query(long since, int count)
+    {
+        return "/transforms/" + sid.toStringFormal() + "?since=" + since + "&count=" + count;
+    }
+
+    @Test
+    public void shouldApplyRunsOfTransformsInSingleTransaction() throws Exception
+    {
+        AsyncTaskCallback cb = fetch();
+        assertEquals(Arrays.asList(query(0, 100)), requests);
+
+        respond(0, 5, insert(1), insert(2), at(3, RemoteChange.share(OID.generate())),
+                insert(4), insert(5));
+
+        verify(cb).onSuccess_(true);
+        verify(ac, times(5)).apply_(eq(sidx), any(RemoteChange.class), eq(5L), eq(t));
+        verify(tm, times(3)).begin_();
+        InOrder inOrder = inOrder(ac, cedb);
+        inOrder.verify(cedb).setChangeEpoch_(sidx, 2L, t);
+        inOrder.verify(ac).applyBufferedChanges_(sidx, Long.MAX_VALUE);
+        inOrder.verify(cedb).setChangeEpoch_(sidx, 3L, t);
+        inOrder.verify(cedb).setChangeEpoch_(sidx, 5L, t);
+        inOrder.verify(ac).applyBufferedChanges_(sidx, 5L);
+        // caught up: nothing to prefetch
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void shouldReusePrefetchedPage() throws Exception
+    {
+        AsyncTaskCallback cb1 = fetch();
+        respond(0, 10, insert(1), insert(2), insert(3));
+        verify(cb1).onSuccess_(true);
+        assertEquals(Arrays.asList(query(0, 100), query(3, 200)), requests);
+
+        // the next fetch waits for the page already in flight
+        AsyncTaskCallback cb2 = fetch();
+        assertEquals(2, requests.size());
+        verify(cb2, never()).onSuccess_(anyBoolean());
+
+        respond(1, 10, insert(4), insert(10));
+        verify(cb2).onSuccess_(true);
+        assertEquals(10L, epoch);
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void shouldReusePrefetchedPageCompletedAhead() throws Exception
+    {
+        fetch();
+        respond(0, 10, insert(1), insert(2));
+        respond(1, 20, insert(5), insert(6));
+        verify(ac, times(2)).apply_(eq(sidx), any(RemoteChange.class), anyLong(), eq(t));
+
+        AsyncTaskCallback cb = fetch();
+        verify(cb).onSuccess_(true);
+        verify(ac, times(4)).apply_(eq(sidx), any(RemoteChange.class), anyLong(), eq(t));
+        assertEquals(6L, epoch);
+        // page size keeps growing while catching up
+        assertEquals(Arrays.asList(query(0, 100), query(2, 200), query(6, 400)), requests);
+    }
+
+    @Test
+    public void shouldDiscardPrefetchedPageOnEpochMismatch() throws Exception
+    {
+        fetch();
+        respond(0, 10, insert(1), insert(2));
+
+        epoch = 4;
+        AsyncTaskCallback cb = fetch();
+        assertEquals(Arrays.asList(query(0, 100), query(2, 200), query(4, 100)), requests);
+
+        // the stale page is never applied
+        respond(1, 10, insert(3), insert(4));
+        verify(ac, times(2)).apply_(eq(sidx), any(RemoteChange.class), anyLong(), eq(t));
+        verify(cb, never()).onSuccess_(anyBoolean());
+
+        respond(2, 10, insert(5));
+        verify(cb).onSuccess_(true);
+        assertEquals(5L, epoch);
+    }
+
+    @Test
+    public void shouldDiscardPrefetchedPageWhenStoreIsRemoved() throws Exception
+    {
+        fetch();
+        respond(0, 10, insert(1), insert(2));
+
+        cf.deleteStore_(sidx, t);
+
+        fetch();
+        assertEquals(Arrays.asList(query(0, 100), query(2, 200), query(2, 100)), requests);
+    }
+}
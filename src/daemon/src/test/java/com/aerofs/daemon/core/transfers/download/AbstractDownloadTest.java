@@ -4,8 +4,10 @@
 
 package com.aerofs.daemon.core.transfers.download;
 
+import com.aerofs.daemon.core.CoreScheduler;
 import com.aerofs.daemon.core.ds.DirectoryService;
 import com.aerofs.daemon.core.net.DigestedMessage;
+import com.aerofs.daemon.core.net.IncomingStreams;
 import com.aerofs.daemon.core.net.To;
 import com.aerofs.daemon.core.net.device.Devices;
 import com.aerofs.daemon.core.protocol.GetContentRequest;
@@ -23,6 +25,10 @@ import com.aerofs.lib.id.SIndex;
 import com.aerofs.lib.id.SOID;
 import com.aerofs.testlib.AbstractTest;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.junit.Before;
 import org.mockito.Mock;
 import org.mockito.stubbing.OngoingStubbing;
@@ -33,6 +39,7 @@ import static com.aerofs.daemon.core.lib.AsyncDownloadTestHelper.mockDeviceSelec
 import static com.aerofs.daemon.core.lib.AsyncDownloadTestHelper.mockReply;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -49,6 +56,9 @@ public class AbstractDownloadTest extends AbstractTest
     @Mock GetContentResponse gcr;
     @Mock RemoteChangeChecker changes;
     @Mock IMapSIndex2SID sidx2sid;
+    @Mock MultiSourceDownload msdl;
+    @Mock CoreScheduler sched;
+    @Mock IncomingStreams iss;
 
     @Mock protected CfgLocalDID cfgLocalDID;
 
@@ -84,7 +94,8 @@ public class AbstractDownloadTest extends AbstractTest
         when(cfgLocalDID.get()).thenReturn(new DID(UniqueID.generate()));
 
         factTo = new To.Factory(mock(Devices.class), cfgLocalDID);
-        factDL = new AsyncDownload.Factory(ds, dls, factTo, sidx2sid, changes, gcc, gcr);
+        factDL = new AsyncDownload.Factory(ds, dls, factTo, sidx2sid, changes, gcc, gcr, msdl,
+                sched, iss);
     }
 
 
@@ -103,6 +114,26 @@ public class AbstractDownloadTest extends AbstractTest
         OngoingStubbing<DigestedMessage> stubGCC =
                 when(gcc.remoteRequestContent_(eq(soid), any(DID.class), eq(tk)));
         for (DID d : dids) stubGCC = stubGCC.thenReturn(replies.get(d));
+
+        OngoingStubbing<ListenableFuture<DigestedMessage>> stubAsyncGCC =
+                when(gcc.remoteRequestContentAsync_(eq(soid), any(DID.class)));
+        for (DID d : dids) {
+            stubAsyncGCC = stubAsyncGCC.thenReturn(Futures.immediateFuture(replies.get(d)));
+        }
+    }
+
+    /**
+     * Resume continuations as soon as the awaited future completes, instead of in a new core event
+     */
+    @SuppressWarnings("unchecked")
+    void mockAwait()
+    {
+        doAnswer(invocation -> {
+            ListenableFuture<Object> f = (ListenableFuture<Object>)invocation.getArguments()[0];
+            FutureCallback<Object> cb = (FutureCallback<Object>)invocation.getArguments()[1];
+            Futures.addCallback(f, cb, MoreExecutors.sameThreadExecutor());
+            return null;
+        }).when(tk).await_(any(ListenableFuture.class), any(FutureCallback.class));
     }
 
 }
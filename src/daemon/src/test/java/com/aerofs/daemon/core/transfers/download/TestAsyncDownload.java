@@ -5,12 +5,20 @@
 package com.aerofs.daemon.core.transfers.download;
 
 import com.aerofs.daemon.core.ds.OA;
+import com.aerofs.daemon.core.ex.ExAborted;
 import com.aerofs.daemon.core.ex.ExOutOfSpace;
+import com.aerofs.daemon.core.net.DigestedMessage;
 import com.aerofs.daemon.core.tc.Token;
+import com.aerofs.daemon.lib.id.StreamID;
+import com.aerofs.daemon.transport.lib.StreamKey;
 import com.aerofs.ids.DID;
 import com.aerofs.ids.OID;
 import com.aerofs.lib.id.SOID;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InOrder;
@@ -20,6 +28,8 @@ import org.mockito.stubbing.Answer;
 import java.util.Map;
 
 import static com.aerofs.daemon.core.lib.AsyncDownloadTestHelper.anyDM;
+import static com.aerofs.daemon.core.lib.AsyncDownloadTestHelper.mockDeviceSelection;
+import static com.aerofs.daemon.core.lib.AsyncDownloadTestHelper.mockReply;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -187,4 +197,115 @@ public class TestAsyncDownload extends AbstractDownloadTest
         ordered.verify(dcl).onGeneralError_(soid, ex);
         verifyZeroInteractions(dls);
     }
+
+    @Test
+    public void shouldDownloadWithoutParking() throws Exception
+    {
+        when(changes.hasRemoteChanges_(soid)).thenReturn(false);
+
+        mockReplies(soid, did1);
+        mockAwait();
+        Runnable onEnd = mock(Runnable.class);
+
+        asyncdl(soid)
+                .start_(onEnd);
+
+        InOrder ordered = inOrder(gcc, dcl, tk, onEnd);
+
+        ordered.verify(gcc).remoteRequestContentAsync_(eq(soid), eq(did1));
+        ordered.verify(dcl).onPartialDownloadSuccess_(soid, did1);
+        ordered.verify(dcl).onDownloadSuccess_(soid, did1);
+        ordered.verify(tk).reclaim_();
+        ordered.verify(onEnd).run();
+        verify(gcc, never()).remoteRequestContent_(any(SOID.class), any(DID.class),
+                any(Token.class));
+        verify(tk, never()).pause_(anyLong(), anyString());
+        verifyZeroInteractions(dls);
+    }
+
+    @Test
+    public void shouldTrySecondDeviceWhenFirstFailsWithoutParking() throws Exception
+    {
+        when(changes.hasRemoteChanges_(soid)).thenReturn(false);
+
+        mockReplies(soid, did1, did2);
+        mockAwait();
+        doAnswer(invocation -> {
+            doNothing().when(gcr)
+                    .processResponse_(eq(soid), anyDM(), any(Token.class));
+            throw new Exception();
+        }).when(gcr).processResponse_(eq(soid), anyDM(), any(Token.class));
+        Runnable onEnd = mock(Runnable.class);
+
+        asyncdl(soid)
+                .start_(onEnd);
+
+        InOrder ordered = inOrder(gcc, dcl, onEnd);
+
+        ordered.verify(gcc).remoteRequestContentAsync_(eq(soid), eq(did1));
+        ordered.verify(gcc).remoteRequestContentAsync_(eq(soid), eq(did2));
+        ordered.verify(dcl).onPartialDownloadSuccess_(soid, did2);
+        ordered.verify(dcl).onDownloadSuccess_(soid, did2);
+        ordered.verify(onEnd).run();
+        verifyZeroInteractions(dls);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldNotTryOtherDevicesWhenTokenReclaimed() throws Exception
+    {
+        mockReplies(soid, did1, did2);
+        ExAborted ex = new ExAborted("token reclaimed");
+        doAnswer(invocation -> {
+            ((FutureCallback<?>)invocation.getArguments()[1]).onFailure(ex);
+            return null;
+        }).when(tk).await_(any(ListenableFuture.class), any(FutureCallback.class));
+        Runnable onEnd = mock(Runnable.class);
+
+        asyncdl(soid)
+                .start_(onEnd);
+
+        InOrder ordered = inOrder(gcc, dcl, onEnd);
+
+        ordered.verify(gcc).remoteRequestContentAsync_(eq(soid), eq(did1));
+        ordered.verify(dcl).onGeneralError_(soid, ex);
+        ordered.verify(onEnd).run();
+        verify(gcc, never()).remoteRequestContentAsync_(eq(soid), eq(did2));
+        verifyZeroInteractions(gcr, dls);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldEndStreamOfPendingReplyWhenTokenReclaimed() throws Exception
+    {
+        mockDeviceSelection(to, did1);
+        StreamKey key = new StreamKey(did1, new StreamID(1));
+        DigestedMessage reply = mockReply(did1, tp);
+        when(reply.streamKey()).thenReturn(key);
+        SettableFuture<DigestedMessage> pending = SettableFuture.create();
+        when(gcc.remoteRequestContentAsync_(soid, did1)).thenReturn(pending);
+
+        // the token is reclaimed while the reply is in flight
+        ExAborted ex = new ExAborted("token reclaimed");
+        doAnswer(invocation -> {
+            ListenableFuture<?> f = (ListenableFuture<?>)invocation.getArguments()[0];
+            FutureCallback<?> cb = (FutureCallback<?>)invocation.getArguments()[1];
+            f.addListener(() -> cb.onFailure(ex), MoreExecutors.sameThreadExecutor());
+            return null;
+        }).when(tk).await_(any(ListenableFuture.class), any(FutureCallback.class));
+        Runnable onEnd = mock(Runnable.class);
+
+        asyncdl(soid)
+                .start_(onEnd);
+        verifyZeroInteractions(iss, onEnd);
+
+        pending.set(reply);
+
+        InOrder ordered = inOrder(iss, dcl, onEnd);
+
+        ordered.verify(iss).end_(key);
+        ordered.verify(dcl).onGeneralError_(soid, ex);
+        ordered.verify(onEnd).run();
+        verifyZeroInteractions(gcr, dls);
+    }
 }
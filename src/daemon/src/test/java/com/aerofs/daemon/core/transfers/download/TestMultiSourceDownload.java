@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.transfers.download;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.base.acl.Permissions;
+import com.aerofs.base.ex.ExTimeout;
+import com.aerofs.daemon.core.acl.LocalACL;
+import com.aerofs.daemon.core.ds.DirectoryService;
+import com.aerofs.daemon.core.net.DigestedMessage;
+import com.aerofs.daemon.core.net.IncomingStreams;
+import com.aerofs.daemon.core.net.RPC;
+import com.aerofs.daemon.core.net.TransportRoutingLayer;
+import com.aerofs.daemon.core.net.device.Devices;
+import com.aerofs.daemon.core.phy.DigestSerializer;
+import com.aerofs.daemon.core.phy.IPhysicalPrefix;
+import com.aerofs.daemon.core.phy.IPhysicalStorage;
+import com.aerofs.daemon.core.phy.PrefixOutputStream;
+import com.aerofs.daemon.core.polaris.db.CentralVersionDatabase;
+import com.aerofs.daemon.core.polaris.db.RemoteContentDatabase;
+import com.aerofs.daemon.core.polaris.db.RemoteContentDatabase.RemoteContent;
+import com.aerofs.daemon.core.protocol.GetContentRequest;
+import com.aerofs.daemon.core.protocol.PrefixVersionControl;
+import com.aerofs.daemon.core.tc.TC.TCB;
+import com.aerofs.daemon.core.tc.Token;
+import com.aerofs.daemon.event.net.Endpoint;
+import com.aerofs.daemon.lib.CoreExecutor;
+import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.daemon.lib.id.StreamID;
+import com.aerofs.daemon.transport.ITransport;
+import com.aerofs.daemon.transport.lib.StreamKey;
+import com.aerofs.ids.DID;
+import com.aerofs.ids.OID;
+import com.aerofs.ids.UserID;
+import com.aerofs.lib.ContentHash;
+import com.aerofs.lib.id.SIndex;
+import com.aerofs.lib.id.SOID;
+import com.aerofs.proto.Core.PBCore;
+import com.aerofs.proto.Core.PBCore.Type;
+import com.aerofs.proto.Core.PBGetContentRequest;
+import com.aerofs.proto.Core.PBGetContentResponse;
+import com.aerofs.testlib.AbstractTest;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.aerofs.daemon.core.transfers.download.MultiSourceDownload.DEPTH;
+import static com.aerofs.daemon.core.transfers.download.MultiSourceDownload.RANGE_SIZE;
+import static com.aerofs.daemon.core.transfers.download.MultiSourceDownload.WINDOW;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestMultiSourceDownload extends AbstractTest
+{
+    @Mock DirectoryService ds;
+    @Mock RemoteContentDatabase rcdb;
+    @Mock CentralVersionDatabase cvdb;
+    @Mock IPhysicalStorage ps;
+    @Mock PrefixVersionControl pvc;
+    @Mock TransManager tm;
+    @Mock Devices devices;
+    @Mock GetContentRequest pgcc;
+    @Mock TransportRoutingLayer trl;
+    @Mock RPC rpc;
+    @Mock IncomingStreams iss;
+    @Mock LocalACL lacl;
+    @Mock CoreExecutor coreExecutor;
+
+    @Mock Token tk;
+    @Mock TCB tcb;
+    @Mock IPhysicalPrefix prefix;
+    @Mock ITransport tp;
+
+    private final SOID soid = new SOID(new SIndex(1), OID.generate());
+    private final UserID user = UserID.fromInternal("foo@bar.baz");
+
+    private final DID did1 = DID.generate();
+    private final DID did2 = DID.generate();
+    private final DID did3 = DID.generate();
+
+    private byte[] content;
+    private RemoteContent rc;
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    private final MessageDigest md = BaseSecUtil.newMessageDigest();
+
+    /**
+     * Behavior of a source upon receiving a range request
+     */
+    private interface Peer
+    {
+        void serve(long offset, int length, FutureCallback<DigestedMessage> cb) throws Exception;
+    }
+
+    private static class Request
+    {
+        final DID did;
+        final long offset;
+        final int length;
+        final FutureCallback<DigestedMessage> cb;
+
+        Request(DID did, long offset, int length, FutureCallback<DigestedMessage> cb)
+        {
+            this.did = did;
+            this.offset = offset;
+            this.length = length;
+            this.cb = cb;
+        }
+    }
+
+    private final Map<DID, Peer> peers = Maps.newHashMap();
+    private final List<Request> requests = Lists.newArrayList();
+    // requests sent but not yet served
+    private final List<Request> pending = Lists.newArrayList();
+    // events scheduled to run on the core, i.e. by the thread running the session
+    private final BlockingQueue<Runnable> core = new LinkedBlockingQueue<>();
+    private final AtomicInteger streams = new AtomicInteger();
+    private final AtomicBoolean resumed = new AtomicBoolean();
+
+    private MultiSourceDownload msdl;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        // six ranges, the last of which is partial
+        setContent(5 * RANGE_SIZE + 1000);
+
+        when(prefix.newOutputStream_(true)).thenAnswer(invocation ->
+                new PrefixOutputStream(written, md));
+        when(prefix.hashState_()).thenAnswer(invocation -> DigestSerializer.serialize(md));
+
+        when(lacl.check_(user, soid.sidx(), Permissions.EDITOR)).thenReturn(true);
+        when(tk.pseudoPause_(anyString())).thenReturn(tcb);
+
+        when(pgcc.newRangeRequest_(eq(soid), anyLong(), anyLong())).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            return PBCore.newBuilder()
+                    .setType(Type.GET_CONTENT_REQUEST)
+                    .setGetContentRequest(PBGetContentRequest.newBuilder()
+                            .setRange(PBGetContentRequest.Range.newBuilder()
+                                    .setOffset((Long)args[1])
+                                    .setLength((Long)args[2]))
+                            .buildPartial())
+                    .buildPartial();
+        });
+        when(trl.sendUnicast_(any(DID.class), any(PBCore.class))).thenAnswer(invocation -> {
+            DID did = (DID)invocation.getArguments()[0];
+            // sources without a peer behavior are offline
+            return peers.containsKey(did) ? new Endpoint(tp, did) : null;
+        });
+        doAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            PBGetContentRequest.Range r = ((PBCore)args[1]).getGetContentRequest().getRange();
+            @SuppressWarnings("unchecked")
+            Request req = new Request(((Endpoint)args[0]).did(), r.getOffset(),
+                    (int)r.getLength(), (FutureCallback<DigestedMessage>)args[2]);
+            requests.add(req);
+            pending.add(req);
+            return null;
+        }).when(rpc).asyncRequest_(any(Endpoint.class), any(PBCore.class), any());
+
+        doAnswer(invocation -> {
+            core.add((Runnable)invocation.getArguments()[0]);
+            return null;
+        }).when(coreExecutor).execute(any(Runnable.class));
+
+        doAnswer(invocation -> {
+            resumed.set(true);
+            return null;
+        }).when(tcb).resume_();
+
+        // while the session is paused, sources serve the pending requests and the core runs
+        // the events they lead to, until one of them resumes the session
+        doAnswer(invocation -> {
+            resumed.set(false);
+            List<Request> reqs = Lists.newArrayList(pending);
+            pending.clear();
+            for (Request req : reqs) peers.get(req.did).serve(req.offset, req.length, req.cb);
+            while (!resumed.get()) {
+                Runnable r = core.poll(10, TimeUnit.SECONDS);
+                if (r == null) throw new AssertionError("nothing to resume the session");
+                r.run();
+            }
+            return null;
+        }).when(tk).pause_(anyLong(), anyString());
+
+        msdl = new MultiSourceDownload(ds, rcdb, cvdb, ps, pvc, tm, devices, pgcc, trl, rpc, iss,
+                lacl, coreExecutor);
+    }
+
+    private void setContent(int length)
+    {
+        content = new byte[length];
+        new Random(0).nextBytes(content);
+        rc = new RemoteContent(42, did1,
+                new ContentHash(BaseSecUtil.newMessageDigest().digest(content)), content.length);
+    }
+
+    private boolean run(DID... dids) throws Exception
+    {
+        return msdl.new Session(soid, rc, prefix, 0, Arrays.asList(dids), tk, tcb).run_();
+    }
+
+    private DigestedMessage reply(DID did, long version, ContentHash hash,
+            @Nullable Long rangeOffset, InputStream is)
+    {
+        PBGetContentResponse.Builder bd = PBGetContentResponse.newBuilder()
+                .setVersion(version)
+                .setLength(content.length)
+                .setMtime(0)
+                .setHash(hash.toPB())
+                .setLts(0);
+        if (rangeOffset != null) bd.setRangeOffset(rangeOffset);
+
+        DigestedMessage msg = mock(DigestedMessage.class);
+        when(msg.did()).thenReturn(did);
+        when(msg.user()).thenReturn(user);
+        when(msg.pb()).thenReturn(PBCore.newBuilder()
+                .setType(Type.REPLY)
+                .setGetContentResponse(bd.buildPartial())
+                .buildPartial());
+        when(msg.is()).thenReturn(is);
+        when(msg.streamKey()).thenReturn(new StreamKey(did, new StreamID(streams.incrementAndGet())));
+        return msg;
+    }
+
+    private DigestedMessage reply(DID did, long offset, byte[] data)
+    {
+        return reply(did, rc.version, rc.hash, offset, new ByteArrayInputStream(data));
+    }
+
+    private Peer serving(DID did, byte[] data)
+    {
+        return (offset, length, cb) -> cb.onSuccess(reply(did, offset,
+                Arrays.copyOfRange(data, (int)offset, (int)offset + length)));
+    }
+
+    private Peer serving(DID did)
+    {
+        return serving(did, content);
+    }
+
+    private long requestsTo(DID did)
+    {
+        return requests.stream().filter(req -> req.did.equals(did)).count();
+    }
+
+    private void assertPrefixComplete() throws Exception
+    {
+        // NB: assertArrayEquals compares arrays reflectively, which is slow on this many bytes
+        assertTrue(Arrays.equals(content, written.toByteArray()));
+        verify(prefix, never()).delete_();
+    }
+
+    @Test
+    public void shouldAppendRangesToPrefixInOrder() throws Exception
+    {
+        // ranges from the second source are received, and read, in reverse order
+        Peer p2 = serving(did2);
+        List<Request> held = Lists.newArrayList();
+        peers.put(did2, (offset, length, cb) -> held.add(new Request(did2, offset, length, cb)));
+        peers.put(did1, (offset, length, cb) -> {
+            serving(did1).serve(offset, length, cb);
+            for (Request req : Lists.reverse(held)) p2.serve(req.offset, req.length, req.cb);
+            held.clear();
+        });
+
+        assertTrue(run(did1, did2));
+
+        assertPrefixComplete();
+        assertTrue(requestsTo(did1) > 0);
+        assertTrue(requestsTo(did2) > 0);
+    }
+
+    @Test
+    public void shouldMoveWindowPastLaggingRange() throws Exception
+    {
+        // the window is full, and its last range in flight is the first one
+        setContent((WINDOW + 1) * RANGE_SIZE);
+        CountDownLatch others = new CountDownLatch(WINDOW - 1);
+        doAnswer(invocation -> {
+            resumed.set(true);
+            others.countDown();
+            return null;
+        }).when(tcb).resume_();
+
+        Peer p1 = serving(did1);
+        peers.put(did1, (offset, length, cb) -> {
+            if (offset != 0) {
+                p1.serve(offset, length, cb);
+                return;
+            }
+            cb.onSuccess(reply(did1, rc.version, rc.hash, 0L,
+                    new ByteArrayInputStream(content, 0, length) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len)
+                {
+                    try {
+                        others.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    return super.read(b, off, len);
+                }
+            }));
+        });
+
+        assertTrue(run(did1));
+
+        assertPrefixComplete();
+    }
+
+    @Test
+    public void shouldPollRangeCompletedWhileWriting() throws Exception
+    {
+        setContent(2 * RANGE_SIZE);
+
+        // the second range is received while the first one is written, i.e. while the core
+        // lock is released
+        CountDownLatch writing = new CountDownLatch(1);
+        when(prefix.newOutputStream_(true)).thenAnswer(invocation -> {
+            if (writing.getCount() > 0) {
+                writing.countDown();
+                Runnable r = core.poll(10, TimeUnit.SECONDS);
+                if (r == null) throw new AssertionError("second range not received");
+                r.run();
+            }
+            return new PrefixOutputStream(written, md);
+        });
+
+        Peer p1 = serving(did1);
+        peers.put(did1, (offset, length, cb) -> {
+            if (offset == 0) {
+                p1.serve(offset, length, cb);
+                return;
+            }
+            cb.onSuccess(reply(did1, rc.version, rc.hash, offset,
+                    new ByteArrayInputStream(content, (int)offset, length) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len)
+                {
+                    try {
+                        writing.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    return super.read(b, off, len);
+                }
+            }));
+        });
+
+        assertTrue(run(did1));
+
+        assertPrefixComplete();
+    }
+
+    @Test
+    public void shouldDropSourceThatIgnoresRange() throws Exception
+    {
+        peers.put(did1, serving(did1));
+        // peers that predate multi-source downloads send the whole content
+        List<DigestedMessage> ignored = Lists.newArrayList();
+        peers.put(did2, (offset, length, cb) -> {
+            DigestedMessage msg = reply(did2, rc.version, rc.hash, null,
+                    new ByteArrayInputStream(content));
+            ignored.add(msg);
+            cb.onSuccess(msg);
+        });
+
+        assertTrue(run(did1, did2));
+
+        assertPrefixComplete();
+        assertEquals(DEPTH, requestsTo(did2));
+        for (DigestedMessage msg : ignored) verify(iss).end_(msg.streamKey());
+    }
+
+    @Test
+    public void shouldDropSourcesWithOtherVersionOrContent() throws Exception
+    {
+        peers.put(did1, serving(did1));
+        peers.put(did2, (offset, length, cb) -> cb.onSuccess(reply(did2, rc.version + 1,
+                rc.hash, offset, new ByteArrayInputStream(new byte[length]))));
+        peers.put(did3, (offset, length, cb) -> cb.onSuccess(reply(did3, rc.version,
+                new ContentHash(new byte[32]), offset, new ByteArrayInputStream(new byte[length]))));
+
+        assertTrue(run(did1, did2, did3));
+
+        assertPrefixComplete();
+        assertEquals(DEPTH, requestsTo(did2));
+        assertEquals(DEPTH, requestsTo(did3));
+    }
+
+    @Test
+    public void shouldDropFailedAndOfflineSources() throws Exception
+    {
+        peers.put(did1, serving(did1));
+        peers.put(did2, (offset, length, cb) -> cb.onFailure(new ExTimeout()));
+        // did3 is offline: nothing is sent to it
+
+        assertTrue(run(did1, did2, did3));
+
+        assertPrefixComplete();
+        assertTrue(requestsTo(did2) > 0 && requestsTo(did2) <= DEPTH);
+        assertEquals(0, requestsTo(did3));
+    }
+
+    @Test
+    public void shouldFailWhenAllSourcesAreDropped() throws Exception
+    {
+        peers.put(did1, (offset, length, cb) -> cb.onFailure(new ExTimeout()));
+        peers.put(did2, (offset, length, cb) -> cb.onFailure(new ExTimeout()));
+
+        assertFalse(run(did1, did2));
+
+        assertEquals(0, written.size());
+    }
+
+    @Test
+    public void shouldDeletePrefixOnHashMismatch() throws Exception
+    {
+        // the advertised version and hash match, but not the content sent
+        byte[] corrupted = content.clone();
+        corrupted[RANGE_SIZE + 1] ^= 1;
+        peers.put(did1, serving(did1, corrupted));
+        peers.put(did2, serving(did2, corrupted));
+
+        assertFalse(run(did1, did2));
+
+        verify(prefix).delete_();
+    }
+
+    @Test
+    public void shouldEndStreamOfFetchCancelledWhileReading() throws Exception
+    {
+        peers.put(did1, serving(did1));
+
+        // the first range sent by did2 never completes, the second one fails
+        CountDownLatch ended = new CountDownLatch(1);
+        InputStream stalled = new InputStream() {
+            @Override
+            public int read() { return read(new byte[1], 0, 1); }
+
+            @Override
+            public int read(byte[] b, int off, int len)
+            {
+                try {
+                    ended.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return -1;
+            }
+        };
+        List<DigestedMessage> replies = Lists.newArrayList();
+        peers.put(did2, (offset, length, cb) -> {
+            if (replies.isEmpty()) {
+                DigestedMessage msg = reply(did2, rc.version, rc.hash, offset, stalled);
+                replies.add(msg);
+                cb.onSuccess(msg);
+            } else {
+                cb.onFailure(new ExTimeout());
+            }
+        });
+        doAnswer(invocation -> {
+            ended.countDown();
+            return null;
+        }).when(iss).end_(any(StreamKey.class));
+
+        assertTrue(run(did1, did2));
+
+        assertPrefixComplete();
+        // dropping did2 cancelled its first fetch and ended the stream, unblocking the reader
+        verify(iss).end_(replies.get(0).streamKey());
+        assertEquals(0, ended.getCount());
+    }
+
+    @Test
+    public void shouldEndStreamOfReplyToCancelledFetch() throws Exception
+    {
+        peers.put(did1, serving(did1));
+
+        // the reply to the first request sent to did2 is delayed past the end of the session
+        List<Request> late = Lists.newArrayList();
+        peers.put(did2, (offset, length, cb) -> {
+            if (late.isEmpty()) {
+                late.add(new Request(did2, offset, length, cb));
+            } else {
+                cb.onFailure(new ExTimeout());
+            }
+        });
+
+        assertTrue(run(did1, did2));
+        assertPrefixComplete();
+
+        Request req = late.get(0);
+        DigestedMessage msg = reply(did2, req.offset,
+                Arrays.copyOfRange(content, (int)req.offset, (int)req.offset + req.length));
+        req.cb.onSuccess(msg);
+
+        verify(iss).end_(msg.streamKey());
+        assertTrue(core.isEmpty());
+    }
+}
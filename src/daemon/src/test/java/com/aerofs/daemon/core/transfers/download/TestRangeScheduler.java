@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.transfers.download;
+
+import com.aerofs.daemon.core.transfers.download.RangeScheduler.Range;
+import com.aerofs.ids.DID;
+import com.aerofs.testlib.AbstractTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestRangeScheduler extends AbstractTest
+{
+    private final DID did1 = DID.generate();
+    private final DID did2 = DID.generate();
+
+    private RangeScheduler sched;
+
+    @Before
+    public void setUp()
+    {
+        // 10 bytes in ranges of 4, at most 2 ranges in the window and 1 in flight per source
+        sched = new RangeScheduler(0, 10, 4, 2, 1);
+        sched.addSource(did1);
+        sched.addSource(did2);
+    }
+
+    private static byte[] data(Range r)
+    {
+        byte[] d = new byte[r.length];
+        for (int i = 0; i < d.length; ++i) d[i] = (byte)(r.offset + i);
+        return d;
+    }
+
+    @Test
+    public void shouldAssignRangesInOrderWithinWindow()
+    {
+        Range r1 = sched.assign(did1, 0);
+        Range r2 = sched.assign(did2, 0);
+        assertEquals(0, r1.offset);
+        assertEquals(4, r2.offset);
+        assertNull(sched.assign(did1, 0));
+
+        assertThat(sched.complete(did2, r2, data(r2), 10), empty());
+        // the window only moves once the first range is received
+        assertNull(sched.assign(did2, 10));
+        assertThat(sched.poll(), empty());
+
+        assertThat(sched.complete(did1, r1, data(r1), 10), empty());
+        List<byte[]> polled = sched.poll();
+        assertEquals(2, polled.size());
+        assertArrayEquals(data(r1), polled.get(0));
+        assertArrayEquals(data(r2), polled.get(1));
+        assertEquals(8, sched.polled());
+
+        Range r3 = sched.assign(did1, 10);
+        assertEquals(8, r3.offset);
+        assertEquals(2, r3.length);
+        sched.complete(did1, r3, data(r3), 20);
+        assertEquals(1, sched.poll().size());
+        assertTrue(sched.done());
+    }
+
+    @Test
+    public void shouldReassignRangesOfDroppedSource()
+    {
+        Range r1 = sched.assign(did1, 0);
+        Range r2 = sched.assign(did2, 0);
+
+        assertThat(sched.drop(did1), contains(r1));
+        assertThat(sched.sources(), contains(did2));
+        assertNull(sched.assign(did1, 0));
+
+        sched.complete(did2, r2, data(r2), 10);
+        assertSame(r1, sched.assign(did2, 10));
+        assertThat(sched.complete(did1, r1, data(r1), 10), empty());
+        assertFalse(sched.done());
+    }
+
+    @Test
+    public void shouldDuplicateRangeHeldBySlowSource()
+    {
+        Range r1 = sched.assign(did1, 0);
+        Range r2 = sched.assign(did2, 0);
+        // did2 delivers 4 bytes in 10ms
+        sched.complete(did2, r2, data(r2), 10);
+        assertNull(sched.assign(did2, 10));
+
+        // did1 has held r1 for 100ms, which did2 would fetch in 10ms
+        Range dup = sched.assign(did2, 100);
+        assertSame(r1, dup);
+
+        assertThat(sched.complete(did2, dup, data(dup), 110), contains(did1));
+        assertEquals(0, sched.inflight(did1));
+        // the late copy from the slow source is ignored
+        assertThat(sched.complete(did1, r1, data(r1), 120), empty());
+        assertEquals(2, sched.poll().size());
+    }
+
+    @Test
+    public void shouldNotDuplicateRangeWithoutKnownThroughput()
+    {
+        assertNotNull(sched.assign(did1, 0));
+        assertNotNull(sched.assign(did2, 0));
+        DID did3 = DID.generate();
+        sched.addSource(did3);
+        assertNull(sched.assign(did3, 1000));
+    }
+
+    @Test
+    public void shouldResumeFromPrefix()
+    {
+        sched = new RangeScheduler(6, 10, 4, 2, 1);
+        sched.addSource(did1);
+        Range r = sched.assign(did1, 0);
+        assertEquals(6, r.offset);
+        assertEquals(4, r.length);
+        assertNull(sched.assign(did1, 0));
+    }
+}
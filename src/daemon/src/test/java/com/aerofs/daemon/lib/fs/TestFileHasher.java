@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.lib.fs;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.daemon.core.ex.ExUpdateInProgress;
+import com.aerofs.lib.ContentHash;
+import com.aerofs.lib.IReadableFile;
+import com.aerofs.testlib.AbstractTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestFileHasher extends AbstractTest
+{
+    @Rule public TemporaryFolder _folder = new TemporaryFolder();
+
+    private static class TestFile implements IReadableFile
+    {
+        final File f;
+        final boolean stream;
+        boolean modified;
+
+        TestFile(File f, boolean stream)
+        {
+            this.f = f;
+            this.stream = stream;
+        }
+
+        @Override
+        public InputStream newInputStream() throws IOException
+        {
+            FileInputStream is = new FileInputStream(f);
+            if (!stream) return is;
+            // hide the channel to exercise the plain stream code path
+            try {
+                byte[] c = new byte[(int)f.length()];
+                if (is.read(c) != c.length && c.length > 0) throw new IOException();
+                return new ByteArrayInputStream(c);
+            } finally {
+                is.close();
+            }
+        }
+
+        @Override
+        public long lengthOrZeroIfNotFile()
+        {
+            return f.length();
+        }
+
+        @Override
+        public long lastModified()
+        {
+            return f.lastModified();
+        }
+
+        @Override
+        public boolean wasModifiedSince(long mtime, long fileLength)
+        {
+            return modified || f.lastModified() != mtime || f.length() != fileLength;
+        }
+    }
+
+    private File newFile(int length) throws IOException
+    {
+        byte[] c = new byte[length];
+        new Random(length).nextBytes(c);
+        File f = _folder.newFile();
+        try (FileOutputStream os = new FileOutputStream(f)) {
+            os.write(c);
+        }
+        return f;
+    }
+
+    private static ContentHash expected(File f) throws IOException
+    {
+        byte[] c = new byte[(int)f.length()];
+        try (FileInputStream is = new FileInputStream(f)) {
+            if (is.read(c) != c.length && c.length > 0) throw new IOException();
+        }
+        return new ContentHash(BaseSecUtil.hash(c));
+    }
+
+    private static ContentHash hash(FileHasher h, TestFile f) throws Exception
+    {
+        return h.hash(f, f.lastModified(), f.lengthOrZeroIfNotFile(), () -> false);
+    }
+
+    @Test
+    public void shouldHashAcrossWindows() throws Exception
+    {
+        int[] lengths = { 0, 1, 1023, 1024, 1025, 10 * 1024 + 7 };
+        for (int length : lengths) {
+            File f = newFile(length);
+            ContentHash h = expected(f);
+            for (boolean windows : new boolean[] { false, true }) {
+                for (boolean stream : new boolean[] { false, true }) {
+                    assertEquals(length + " " + windows + " " + stream, h,
+                            hash(new FileHasher(windows, 1024), new TestFile(f, stream)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldUseDefaultWindows() throws Exception
+    {
+        File f = newFile(3 * 1024 * 1024 + 5);
+        ContentHash h = expected(f);
+        assertEquals(h, hash(new FileHasher(false), new TestFile(f, false)));
+        assertEquals(h, hash(new FileHasher(true), new TestFile(f, false)));
+    }
+
+    @Test
+    public void shouldReturnNullWhenAborted() throws Exception
+    {
+        TestFile f = new TestFile(newFile(4096), false);
+        assertNull(new FileHasher(false, 1024).hash(f, f.lastModified(), 4096, () -> true));
+    }
+
+    @Test
+    public void shouldThrowWhenFileChanges() throws Exception
+    {
+        TestFile f = new TestFile(newFile(4096), false);
+        f.modified = true;
+        try {
+            hash(new FileHasher(false, 1024), f);
+            fail();
+        } catch (ExUpdateInProgress e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldThrowWhenFileShorterThanExpected() throws Exception
+    {
+        for (boolean windows : new boolean[] { false, true }) {
+            TestFile f = new TestFile(newFile(4096), false);
+            try {
+                new FileHasher(windows, 1024).hash(f, f.lastModified(), 8192, () -> false);
+                fail();
+            } catch (ExUpdateInProgress e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.lib.fs;
+
+import com.aerofs.base.C;
+import com.aerofs.daemon.core.ex.ExUpdateInProgress;
+import com.aerofs.daemon.core.phy.IPhysicalFile;
+import com.aerofs.testlib.AbstractTest;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.when;
+
+public class TestReadAheadChunker extends AbstractTest
+{
+    @Mock IPhysicalFile file;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    private byte[] content(int length) throws IOException
+    {
+        byte[] content = new byte[length];
+        new Random(0).nextBytes(content);
+        when(file.newInputStream()).thenReturn(new ByteArrayInputStream(content));
+        return content;
+    }
+
+    @Test
+    public void shouldReadAllChunksInOrder() throws Exception
+    {
+        byte[] content = content(2 * C.MB + 17);
+        ChunkBufferPool pool = new ChunkBufferPool(8 * C.KB, 16);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ReadAheadChunker chunker = new ReadAheadChunker(
+                new FileChunker(file, 0xdead, content.length, 0, 8 * C.KB, false)
+                        .withBufferPool(pool), 4, executor)) {
+            byte[] chunk;
+            while ((chunk = chunker.getNextChunk_()) != null) {
+                out.write(chunk);
+                pool.release(chunk);
+            }
+            assertNull(chunker.getNextChunk_());
+        }
+        assertArrayEquals(content, out.toByteArray());
+    }
+
+    @Test
+    public void shouldPropagateReadFailure() throws Exception
+    {
+        byte[] content = content(64 * C.KB);
+        when(file.wasModifiedSince(anyLong(), anyLong())).thenReturn(true);
+        try (ReadAheadChunker chunker = new ReadAheadChunker(
+                new FileChunker(file, 0xdead, content.length, 0, 8 * C.KB, false), 4, executor)) {
+            chunker.getNextChunk_();
+            fail();
+        } catch (ExUpdateInProgress e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldStopReaderOnEarlyClose() throws Exception
+    {
+        shouldStopReaderOnEarlyClose(false);
+    }
+
+    @Test
+    public void shouldStopReaderOnEarlyCloseWithBatchedReads() throws Exception
+    {
+        shouldStopReaderOnEarlyClose(true);
+    }
+
+    private void shouldStopReaderOnEarlyClose(boolean isWindows) throws Exception
+    {
+        byte[] content = new byte[4 * C.MB];
+        AtomicBoolean streamClosed = new AtomicBoolean();
+        when(file.newInputStream()).thenReturn(new ByteArrayInputStream(content) {
+            @Override
+            public void close() throws IOException
+            {
+                streamClosed.set(true);
+                super.close();
+            }
+        });
+        CountingPool pool = new CountingPool(8 * C.KB);
+        ReadAheadChunker chunker = new ReadAheadChunker(
+                new FileChunker(file, 0xdead, content.length, 0, 8 * C.KB, isWindows)
+                        .withBufferPool(pool), 2, executor);
+        pool.release(chunker.getNextChunk_());
+        chunker.close();
+
+        // close() waits for the reader to finish
+        assertTrue(streamClosed.get());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+
+        assertTrue(pool.allocated.get() < content.length / (8 * C.KB));
+        assertEquals(pool.allocated.get(), pool.released.get());
+    }
+
+    private static class CountingPool extends ChunkBufferPool
+    {
+        final AtomicInteger allocated = new AtomicInteger();
+        final AtomicInteger released = new AtomicInteger();
+
+        CountingPool(int chunkSize)
+        {
+            super(chunkSize, 0);
+        }
+
+        @Override
+        public byte[] allocate(int length)
+        {
+            allocated.incrementAndGet();
+            return super.allocate(length);
+        }
+
+        @Override
+        public void release(byte[] buf)
+        {
+            released.incrementAndGet();
+            super.release(buf);
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.aerofs.lib;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import com.aerofs.base.BaseUtil;
@@ -20,7 +24,81 @@ public class TestExternalSorter extends AbstractTest
     {
         ExternalSorter<Item> sorter = new ExternalSorter<Item>(Item.COMPARATOR);
         sorter.setMaxSize(1 << 8);
-        final long count = 1 << 10;
+        sortAndCheck(sorter, 1 << 10);
+    }
+
+    @Test
+    public void shouldSortWithCodec() throws Exception
+    {
+        ExternalSorter<Item> sorter = new ExternalSorter<Item>(Item.COMPARATOR);
+        sorter.setMaxSize(1 << 8);
+        sorter.setCodec(Item.CODEC);
+        sortAndCheck(sorter, 1 << 10);
+    }
+
+    @Test
+    public void shouldSortInParallel() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int pending : new int[] { 1, 3 }) {
+                ExternalSorter<Item> sorter = new ExternalSorter<Item>(Item.COMPARATOR);
+                sorter.setMaxSize(1 << 8);
+                sorter.setCodec(Item.CODEC);
+                sorter.setForkJoinPool(pool, pending);
+                sortAndCheck(sorter, 1 << 12);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldMergeAnyNumberOfRuns() throws Exception
+    {
+        // exercise loser trees of all shapes, including the degenerate ones
+        for (int runs = 0; runs <= 17; ++runs) {
+            ExternalSorter<Item> sorter = new ExternalSorter<Item>(Item.COMPARATOR);
+            sorter.setMaxSize(7);
+            sorter.setCodec(Item.CODEC);
+            sortAndCheck(sorter, runs * 7);
+        }
+    }
+
+    @Test
+    public void shouldPropagateWriteFailureInParallel() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        ExternalSorter<Item> sorter = new ExternalSorter<Item>(Item.COMPARATOR);
+        sorter.setMaxSize(1 << 4);
+        sorter.setCodec(new ExternalSorter.Codec<Item>() {
+            @Override
+            public void write(DataOutput out, Item value) throws IOException
+            {
+                throw new IOException("nope");
+            }
+
+            @Override
+            public Item read(DataInput in) throws IOException
+            {
+                throw new AssertionError();
+            }
+        });
+        sorter.setForkJoinPool(pool, 1);
+        try {
+            for (int i = 0; i < 1 << 8; ++i) sorter.add(newRandomItem());
+            sorter.sort();
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("nope", e.getMessage());
+        } finally {
+            sorter.close();
+            pool.shutdown();
+        }
+    }
+
+    private void sortAndCheck(ExternalSorter<Item> sorter, long count) throws Exception
+    {
         try {
             for (long i = 0; i < count; ++i) {
                 Item item = newRandomItem();
@@ -28,13 +106,17 @@ public class TestExternalSorter extends AbstractTest
             }
             ExternalSorter.Input<Item> it = sorter.sort();
             Item old = null;
+            long n = 0;
             while (it.hasNext()) {
                 Item item = it.next();
                 if (old != null) {
                     Assert.assertTrue(Item.COMPARATOR.compare(old, item) <= 0);
                 }
                 old = item;
+                ++n;
             }
+            it.close();
+            Assert.assertEquals(count, n);
         } finally {
             sorter.close();
         }
@@ -75,6 +157,26 @@ public class TestExternalSorter extends AbstractTest
                 return 0;
             }
         };
+
+        public static final ExternalSorter.Codec<Item> CODEC = new ExternalSorter.Codec<Item>() {
+            @Override
+            public void write(DataOutput out, Item value) throws IOException
+            {
+                out.writeUTF(value._name);
+                out.writeLong(value._date.getTime());
+                out.writeLong(value._seq);
+            }
+
+            @Override
+            public Item read(DataInput in) throws IOException
+            {
+                Item item = new Item();
+                item._name = in.readUTF();
+                item._date = new Date(in.readLong());
+                item._seq = in.readLong();
+                return item;
+            }
+        };
     }
 
     private static String newRandomString(Random r, int len)
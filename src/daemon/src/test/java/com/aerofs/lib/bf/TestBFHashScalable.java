@@ -0,0 +1,52 @@
+package com.aerofs.lib.bf;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.aerofs.ids.OID;
+import com.aerofs.testlib.AbstractTest;
+
+import static org.junit.Assert.*;
+
+public class TestBFHashScalable extends AbstractTest
+{
+    @Test
+    public void shouldMatchLegacyHashAtScale0()
+    {
+        BFHashPartBitSelect<OID> legacy = new BFHashPartBitSelect<OID>(1024, 4);
+        BFHashScalable<OID> bfhash = new BFHashScalable<OID>(0);
+
+        assertEquals(legacy.length(), bfhash.length());
+        for (int i = 0; i < 1000; i++) {
+            OID oid = OID.generate();
+            assertTrue(Arrays.equals(legacy.hash(oid), bfhash.hash(oid)));
+        }
+    }
+
+    @Test
+    public void shouldMaskHighOrderBitsAtSmallerScales()
+    {
+        BFHashScalable<OID> small = new BFHashScalable<OID>(3);
+        BFHashScalable<OID> large = new BFHashScalable<OID>(10);
+        int smallPartition = small.length() / BFHashScalable.K;
+        int largePartition = large.length() / BFHashScalable.K;
+
+        for (int i = 0; i < 1000; i++) {
+            OID oid = OID.generate();
+            int[] s = small.hash(oid);
+            int[] l = large.hash(oid);
+            for (int p = 0; p < BFHashScalable.K; p++) {
+                assertEquals(p, s[p] / smallPartition);
+                assertEquals(p, l[p] / largePartition);
+                assertEquals(s[p] % smallPartition, (l[p] % largePartition) % smallPartition);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectScaleAboveMax()
+    {
+        new BFHashScalable<OID>(BFHashScalable.MAX_SCALE + 1);
+    }
+}
@@ -1,9 +1,12 @@
 package com.aerofs.lib.bf;
 
+import java.util.List;
+
 import org.junit.Test;
 
 import com.aerofs.ids.OID;
 import com.aerofs.testlib.AbstractTest;
+import com.google.common.collect.Lists;
 
 import static org.junit.Assert.*;
 
@@ -65,4 +68,115 @@ public class TestBFOID extends AbstractTest
          */
         assertTrue(bfunion.contains_(oid));
     }
+
+    private static List<OID> oids(int n)
+    {
+        List<OID> oids = Lists.newArrayList();
+        for (int i = 0; i < n; i++) oids.add(OID.generate());
+        return oids;
+    }
+
+    private static BFOID filter(List<OID> oids)
+    {
+        BFOID bf = new BFOID();
+        for (OID oid : oids) bf.add_(oid);
+        return bf;
+    }
+
+    @Test
+    public void shouldContainAddedOIDs()
+    {
+        List<OID> oids = oids(2000);
+        BFOID bf = new BFOID();
+        for (OID o : oids) {
+            bf.add_(o);
+            assertTrue(bf.contains_(o));
+        }
+        for (OID o : oids) assertTrue(bf.contains_(BFOID.hash(o)));
+        assertFalse(bf.contains_(oid));
+        assertFalse(new BFOID().contains_(oid));
+    }
+
+    @Test
+    public void shouldNotReportUpdateWhenAddingOIDTwice()
+    {
+        BFOID bf = new BFOID();
+        assertTrue(bf.add_(oid));
+        assertFalse(bf.add_(oid));
+    }
+
+    @Test
+    public void shouldDecodeScalableEncoding()
+    {
+        for (int n : new int[] { 0, 1, 10, 2000 }) {
+            BFOID bf = filter(oids(n));
+            assertEquals(bf, new BFOID(bf.toPB()));
+            assertEquals(bf, new BFOID(bf.getBytes()));
+        }
+    }
+
+    @Test
+    public void shouldKeepSmallFiltersSmall()
+    {
+        assertTrue(new BFOID().toPB().size() < 8);
+        assertTrue(BFOID.of(oid).toPB().size() < 24);
+    }
+
+    @Test
+    public void shouldSizeHeapToNumberOfObjects()
+    {
+        // a plain bitmap at the same scale would take 2MB
+        assertTrue(new BFOID().heapSize() < 2 * 1024);
+        assertTrue(filter(oids(2000)).heapSize() < 100 * 1024);
+    }
+
+    @Test
+    public void shouldFoldIntoLegacyFilter()
+    {
+        List<OID> oids = oids(2000);
+        BloomFilter<OID> legacy = new BloomFilter<OID>(new BFHashPartBitSelect<OID>(1024, 4));
+        for (OID o : oids) legacy.add_(o);
+
+        BFOID sparse = filter(oids.subList(0, 10));
+        BloomFilter<OID> expected = new BloomFilter<OID>(new BFHashPartBitSelect<OID>(1024, 4));
+        for (OID o : oids.subList(0, 10)) expected.add_(o);
+        assertArrayEquals(expected.getBytes(), sparse.toLegacyPB().toByteArray());
+
+        assertArrayEquals(legacy.getBytes(), filter(oids).toLegacyPB().toByteArray());
+    }
+
+    @Test
+    public void shouldDecodeLegacyFilter()
+    {
+        List<OID> oids = oids(50);
+        BFOID bf = new BFOID(filter(oids).toLegacyPB());
+        for (OID o : oids) assertTrue(bf.contains_(o));
+        assertEquals(bf, new BFOID(bf.toPB()));
+        assertEquals(filter(oids).toLegacyPB(), bf.toLegacyPB());
+    }
+
+    @Test
+    public void shouldUnionWithLegacyFilter()
+    {
+        List<OID> legacy = oids(50);
+        List<OID> scalable = oids(50);
+        BFOID bf = filter(scalable);
+        assertTrue(bf.union_(new BFOID(filter(legacy).toLegacyPB())));
+
+        for (OID o : legacy) assertTrue(bf.contains_(o));
+        for (OID o : scalable) assertTrue(bf.contains_(o));
+        assertEquals(bf, new BFOID(bf.toPB()));
+    }
+
+    @Test
+    public void shouldUnionAsPreciselyAsSingleFilter()
+    {
+        List<OID> oids = oids(5000);
+        BFOID bf = new BFOID();
+        for (int i = 0; i < oids.size(); i += 100) {
+            bf.union_(filter(oids.subList(i, i + 100)));
+        }
+        assertEquals(filter(oids), bf);
+        assertFalse(bf.union_(filter(oids.subList(0, 100))));
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.lib.bf;
+
+import com.aerofs.testlib.AbstractTest;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestCompressedBitSet extends AbstractTest
+{
+    private static final int LENGTH = 1 << 20;
+
+    private final Random _rand = new Random(0);
+
+    /**
+     * @param n number of bits to set, in the first chunks only if dense
+     */
+    private CompressedBitSet bits(int n, boolean dense, BitSet expected)
+    {
+        CompressedBitSet bs = new CompressedBitSet(LENGTH);
+        for (int i = 0; i < n; i++) {
+            int idx = _rand.nextInt(dense ? 1 << 17 : LENGTH);
+            assertEquals(!expected.get(idx), bs.add(idx));
+            expected.set(idx);
+        }
+        return bs;
+    }
+
+    private static void assertSame(BitSet expected, CompressedBitSet bs)
+    {
+        assertEquals(expected.cardinality(), bs.cardinality());
+        int n = 0;
+        for (int i = bs.nextSetBit(0); i >= 0; i = bs.nextSetBit(i + 1)) {
+            assertTrue(expected.get(i));
+            assertTrue(bs.contains(i));
+            ++n;
+        }
+        assertEquals(expected.cardinality(), n);
+    }
+
+    @Test
+    public void shouldHoldBitsSetInArrays()
+    {
+        BitSet expected = new BitSet();
+        CompressedBitSet bs = bits(1000, false, expected);
+        assertSame(expected, bs);
+        assertFalse(bs.contains(expected.nextClearBit(0)));
+        assertEquals(-1, bs.nextSetBit(expected.length()));
+    }
+
+    @Test
+    public void shouldHoldBitsSetInBitmaps()
+    {
+        BitSet expected = new BitSet();
+        CompressedBitSet bs = bits(20000, true, expected);
+        assertSame(expected, bs);
+        assertFalse(bs.contains(expected.nextClearBit(0)));
+    }
+
+    @Test
+    public void shouldGrowHeapWithCardinality()
+    {
+        long empty = new CompressedBitSet(LENGTH).heapSize();
+        long sparse = bits(1000, false, new BitSet()).heapSize();
+        assertTrue(sparse > empty);
+        assertTrue(sparse < 8 * 1000 + empty);
+        // never larger than a plain bitmap and the chunk headers
+        assertTrue(bits(100000, false, new BitSet()).heapSize() < LENGTH / 8 + 4 * 1024);
+    }
+
+    @Test
+    public void shouldUnionAllRepresentations()
+    {
+        for (boolean denseA : new boolean[] { false, true }) {
+            for (boolean denseB : new boolean[] { false, true }) {
+                BitSet expected = new BitSet();
+                BitSet other = new BitSet();
+                CompressedBitSet a = bits(denseA ? 20000 : 500, denseA, expected);
+                CompressedBitSet b = bits(denseB ? 20000 : 500, denseB, other);
+                expected.or(other);
+                assertTrue(a.union(b));
+                assertSame(expected, a);
+                assertFalse(a.union(b));
+            }
+        }
+    }
+
+    @Test
+    public void shouldCompareContentOnly()
+    {
+        BitSet expected = new BitSet();
+        CompressedBitSet a = bits(20000, true, expected);
+
+        // same bits, added in a different order and in other representations
+        CompressedBitSet b = new CompressedBitSet(LENGTH);
+        for (int i = expected.length() - 1; i >= 0; i = expected.previousSetBit(i - 1)) b.add(i);
+        assertEquals(a, b);
+        assertEquals(a, new CompressedBitSet(a));
+
+        b.add(expected.nextClearBit(0));
+        assertNotEquals(a, b);
+    }
+}
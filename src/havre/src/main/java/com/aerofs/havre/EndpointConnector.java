@@ -41,4 +41,11 @@ public interface EndpointConnector
     public DID device(Channel channel);
 
     public Stream<DID> alternateDevices(Channel channel);
+
+    /**
+     * NB: MUST be threadsafe
+     *
+     * @return load of the endpoints to which channels obtained from {@link #connect} are associated
+     */
+    public EndpointLoad load();
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.havre;
+
+import com.aerofs.ids.DID;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outstanding requests and observed response latency of each endpoint, used to spread requests
+ * across suitable endpoints.
+ *
+ * NB: threadsafe
+ */
+public class EndpointLoad
+{
+    // weight of the latest sample in the moving average of the response latency
+    private static final double ALPHA = 0.2;
+
+    // latency assumed for endpoints that have not answered any request yet
+    private static final double MIN_LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static class Stats
+    {
+        int outstanding;
+        double latency = MIN_LATENCY;
+    }
+
+    private final ConcurrentMap<DID, Stats> _stats = new ConcurrentHashMap<>();
+
+    public void requestSent(@Nullable DID did)
+    {
+        if (did == null) return;
+        Stats s = _stats.computeIfAbsent(did, k -> new Stats());
+        synchronized (s) {
+            ++s.outstanding;
+        }
+    }
+
+    public void responseReceived(@Nullable DID did, long latencyNanos)
+    {
+        Stats s = did != null ? _stats.get(did) : null;
+        if (s == null) return;
+        synchronized (s) {
+            if (s.outstanding > 0) --s.outstanding;
+            s.latency = ALPHA * Math.max(latencyNanos, MIN_LATENCY) + (1 - ALPHA) * s.latency;
+        }
+    }
+
+    public void requestAborted(@Nullable DID did)
+    {
+        Stats s = did != null ? _stats.get(did) : null;
+        if (s == null) return;
+        synchronized (s) {
+            if (s.outstanding > 0) --s.outstanding;
+        }
+    }
+
+    public void remove(DID did)
+    {
+        _stats.remove(did);
+    }
+
+    public int outstanding(DID did)
+    {
+        Stats s = _stats.get(did);
+        if (s == null) return 0;
+        synchronized (s) {
+            return s.outstanding;
+        }
+    }
+
+    /**
+     * @return expected time to service a new request, i.e. the queue of outstanding requests
+     * weighted by the average latency
+     */
+    double cost(DID did)
+    {
+        Stats s = _stats.get(did);
+        if (s == null) return MIN_LATENCY;
+        synchronized (s) {
+            return (s.outstanding + 1) * s.latency;
+        }
+    }
+
+    /**
+     * Pick the least loaded of two random candidates
+     *
+     * Picking the least loaded of all candidates would send every concurrent request to the same
+     * endpoint until its load figures catch up.
+     */
+    public @Nullable DID pick(List<DID> cand)
+    {
+        if (cand.isEmpty()) return null;
+        if (cand.size() == 1) return cand.get(0);
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int a = r.nextInt(cand.size());
+        int b = r.nextInt(cand.size() - 1);
+        if (b >= a) ++b;
+        return cost(cand.get(b)) < cost(cand.get(a)) ? cand.get(b) : cand.get(a);
+    }
+}
@@ -10,29 +10,40 @@ import com.aerofs.base.SimpleHttpClient.UnexpectedResponse;
 import com.aerofs.ssmp.EventHandler;
 import com.aerofs.ssmp.SSMPEvent;
 import com.aerofs.ssmp.SSMPEvent.Type;
-import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
 import org.jboss.netty.handler.codec.http.HttpHeaders.Names;
 import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.util.Timeout;
 import org.jboss.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
 
-public class RequestRouter extends CacheLoader<String, List<String>> implements EventHandler {
+/**
+ * Pick the endpoint to which a request is forwarded
+ *
+ * Content requests are routed to a device that has the requested object, based on location info
+ * from waldo. Other requests, and content requests for which no suitable device is known, are
+ * routed to the least loaded candidate.
+ *
+ * NB: location lookups are asynchronous, {@link #route} never blocks the calling i/o thread
+ */
+public class RequestRouter implements EventHandler {
     private final static Logger l = LoggerFactory.getLogger(RequestRouter.class);
 
     @Override
@@ -56,14 +67,19 @@ public class RequestRouter extends CacheLoader<String, List<String>> implements
     }
 
     private final String _auth;
+    private final Timer _timer;
     private final SimpleHttpClient<String, LocationResponse> _client;
-    private final LoadingCache<String, List<String>> _cache;
+    // NB: in-flight lookups are cached too, to coalesce concurrent requests for the same object
+    private final Cache<String, ListenableFuture<List<String>>> _cache;
 
     private final static ChannelBuffer EMPTY_FILTER = ChannelBuffers.wrappedBuffer(
             "{}".getBytes(StandardCharsets.UTF_8));
 
+    private final static long LOOKUP_TIMEOUT = 5;
+
     RequestRouter(URI endpoint, ClientSocketChannelFactory channelFactory, Timer timer, String secret) {
         _auth = "Aero-Service-Shared-Secret havre " + secret;
+        _timer = timer;
         _client = new SimpleHttpClient<String, LocationResponse>(endpoint, null, channelFactory, timer) {
             @Override
             public String buildURI(String query) {
@@ -81,62 +97,110 @@ public class RequestRouter extends CacheLoader<String, List<String>> implements
                 .newBuilder()
                 .expireAfterWrite(1, TimeUnit.MINUTES)
                 .maximumSize(1000L)
-                .build(this);
+                .build();
     }
 
     private final static String SUFFIX = "/content";
 
-    public @Nullable DID route(String uri, List<DID> cand) {
-        if (cand.isEmpty()) return null;
-        if (cand.size() == 1) return cand.get(0);
+    /**
+     * @param load load of the candidates, used when location info does not single out a device
+     * @return future device to which the request should be routed, null if there is no candidate
+     *
+     * NB: the future never fails, routing falls back to load-based selection on lookup failure
+     */
+    public ListenableFuture<DID> route(String uri, List<DID> cand, EndpointLoad load) {
+        if (cand.size() <= 1) return Futures.immediateFuture(cand.isEmpty() ? null : cand.get(0));
         l.debug("route {} {}", uri, cand);
         if (uri.endsWith(SUFFIX) && uri.charAt(uri.length() - 1 - SUFFIX.length() - 4 * UniqueID.LENGTH) == '/') {
             int last = uri.length() - SUFFIX.length();
             String obj = uri.substring(last - 2 * UniqueID.LENGTH, last);
 
+            // NB: caching empty list might cause download to fail temporarily after upload
+            // as there is a race between the GET request and the SSMP notif that invalidates
+            // the empty list upon location advertisement. It's pretty unlikely though given
+            // that the notif should be emitted before the http response to the upload and
+            // latency inside the appliance should be orders of magnitude smaller than between
+            // the outside world and the appliance.
+            ListenableFuture<List<String>> f = locations(obj);
+            SettableFuture<DID> route = SettableFuture.create();
+            Futures.addCallback(f, new FutureCallback<List<String>>() {
+                @Override
+                public void onSuccess(List<String> dids) {
+                    DID did = match(dids, cand);
+                    route.set(did != null ? did : load.pick(cand));
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    l.warn("failed to get locations info", BaseLogUtil.suppress(t,
+                            UnexpectedResponse.class, TimeoutException.class));
+                    route.set(load.pick(cand));
+                }
+            });
+            return route;
+        }
+        return Futures.immediateFuture(load.pick(cand));
+    }
+
+    /**
+     * DIDs with most recent versions come first
+     * pick first online device with highest available version
+     */
+    private static @Nullable DID match(List<String> dids, List<DID> cand) {
+        l.debug("avail {}", dids);
+        for (String h : dids) {
             try {
-                // NB: caching empty list might cause download to fail temporarily after upload
-                // as there is a race between the GET request and the SSMP notif that invalidates
-                // the empty list upon location advertisement. It's pretty unlikely though given
-                // that the notif should be emitted before the http response to the upload and
-                // latency inside the appliance should be orders of magnitude smaller than between
-                // the outside world and the appliance.
-                List<String> dids = _cache.get(obj);
-                // DIDs with most recent versions come first
-                // pick first online device with highest available version
-                l.debug("avail {}", dids);
-
-                for (String h : dids) {
-                    try {
-                        DID did = new DID(h);
-                        if (cand.contains(did)) {
-                            l.debug("match {}", did);
-                            return did;
-                        }
-                    } catch (ExInvalidID e) {
-                        l.warn("invalid id {}", h);
-                    }
+                DID did = new DID(h);
+                if (cand.contains(did)) {
+                    l.debug("match {}", did);
+                    return did;
                 }
-            } catch (ExecutionException e) {
-                l.warn("failed to get locations info", BaseLogUtil.suppress(e.getCause(),
-                        UnexpectedResponse.class));
+            } catch (ExInvalidID e) {
+                l.warn("invalid id {}", h);
             }
         }
-        // fallback to random selection
-        return cand.get(ThreadLocalRandom.current().nextInt(cand.size()));
+        return null;
     }
 
-    @Override
-    public List<String> load(@Nonnull String obj) throws Exception {
-        ListenableFuture<LocationResponse> f = _client.send(obj);
+    private ListenableFuture<List<String>> locations(String obj) {
+        ListenableFuture<List<String>> f;
         try {
-            return f.get(5, TimeUnit.SECONDS).available;
-        } catch (TimeoutException e) {
-            f.cancel(false);
-            throw e;
+            f = _cache.get(obj, () -> lookup(obj));
         } catch (ExecutionException e) {
-            Throwables.propagateIfPossible(e.getCause(), Exception.class);
-            throw e;
+            return Futures.immediateFailedFuture(e.getCause());
         }
+        // do not cache failures
+        Futures.addCallback(f, new FutureCallback<List<String>>() {
+            @Override
+            public void onSuccess(List<String> dids) {}
+
+            @Override
+            public void onFailure(Throwable t) {
+                _cache.asMap().remove(obj, f);
+            }
+        });
+        return f;
+    }
+
+    private ListenableFuture<List<String>> lookup(String obj) {
+        SettableFuture<List<String>> f = SettableFuture.create();
+        ListenableFuture<LocationResponse> r = _client.send(obj);
+        Timeout timeout = _timer.newTimeout(t -> {
+            if (f.setException(new TimeoutException())) r.cancel(false);
+        }, LOOKUP_TIMEOUT, TimeUnit.SECONDS);
+        Futures.addCallback(r, new FutureCallback<LocationResponse>() {
+            @Override
+            public void onSuccess(LocationResponse response) {
+                timeout.cancel();
+                f.set(response.available != null ? response.available : Collections.emptyList());
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                timeout.cancel();
+                f.setException(t);
+            }
+        });
+        return f;
     }
 }
@@ -15,6 +15,9 @@ import com.aerofs.oauth.AuthenticatedPrincipal;
 import com.aerofs.oauth.TokenVerifier;
 import com.aerofs.tunnel.ShutdownEvent;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
@@ -34,9 +37,12 @@ import org.slf4j.Logger;
 
 import javax.annotation.Nullable;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -69,6 +75,11 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
     private Channel _downstream;
     private Channel _upstream;
 
+    // messages received while the current request is waiting for a route or for the previous
+    // upstream to be shut down, in order of arrival
+    // NB: only accessed from the i/o thread of the downstream channel
+    private @Nullable Queue<Object> _parked;
+
     public HttpRequestProxyHandler(Timer timer, Authenticator auth, EndpointConnector endpoints,
                                    RequestRouter router, ChannelGroup channelGroup)
     {
@@ -127,8 +138,16 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
     public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent me)
             throws Exception
     {
-        final Object message = me.getMessage();
-        final Channel downstream = me.getChannel();
+        if (_parked != null) {
+            _parked.add(me.getMessage());
+        } else {
+            process(me.getMessage());
+        }
+    }
+
+    private void process(Object message) throws Exception
+    {
+        final Channel downstream = _downstream;
 
         if (message instanceof HttpRequest) {
             HttpRequest req = (HttpRequest)message;
@@ -169,50 +188,17 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
             boolean strictConsistency = did != null;
 
             if (_router != null && did == null) {
-                did = _router.route( new QueryStringDecoder(req.getUri()).getPath(),
-                        _endpoints.candidates(_principal, version));
-                l.info("{} {} {} {}", did, false, version, _downstream);
-            }
-            if (_upstream != null) {
-                DID cur = _endpoints.device(_upstream);
-                if (!cur.equals(did)) {
-                    l.info("close upstream {} {}", _upstream, _downstream);
-                    ChannelFuture f = new DefaultChannelFuture(_upstream, false);
-                    _upstream.getPipeline().sendDownstream(new ShutdownEvent(_upstream, f));
-                    // NB: netty doesn't like await() being called inside an i/o thread, for
-                    // good reasons. It's actually safe to do here because upstream and downstream
-                    // use distinct pools of i/o threads so there's no room for deadlock and the
-                    // downstream wait is unavoidable. It's not ideal because other downstream
-                    // channels using the same i/o thread may experience delays. Another alternative
-                    // would be to always disable read on the downstream channel while a response is
-                    // expected. It's not clear how foolproof that would be though...
-                    SettableFuture<Void> ff = SettableFuture.create();
-                    f.addListener(cf -> {
-                        if (cf.isSuccess()) {
-                            ff.set(null);
-                        } else {
-                            ff.setException(cf.getCause());
-                        }
-                    });
-                    ff.get();
-                    _upstream = null;
-                }
-            }
-            if (_upstream == null || !_upstream.isConnected()) {
-                _upstream = _endpoints.connect(_principal, did, strictConsistency, version, pipeline());
-                l.info("opened upstream {} {}", _upstream, _downstream);
-            }
-
-            if (_upstream == null) {
-                sendError(downstream, HttpResponseStatus.SERVICE_UNAVAILABLE);
-                return;
+                ListenableFuture<DID> route = _router.route(
+                        new QueryStringDecoder(req.getUri()).getPath(),
+                        _endpoints.candidates(_principal, version), _endpoints.load());
+                whenDone(route, () -> {
+                    DID routed = Futures.getUnchecked(route);
+                    l.info("{} {} {} {}", routed, false, version, _downstream);
+                    forward(req, routed, false, version);
+                });
+            } else {
+                forward(req, did, strictConsistency, version);
             }
-
-            // remove gateway-specific header
-            req.headers().remove(Names.COOKIE);
-            req.headers().remove(HEADER_ROUTE);
-
-            _upstream.write(message);
         } else {
             // HttpChunk
             if (_upstream == null || !_upstream.isConnected()) {
@@ -229,6 +215,108 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
         }
     }
 
+    private void forward(HttpRequest req, @Nullable DID did, boolean strictConsistency,
+            @Nullable Version version) throws Exception
+    {
+        if (_upstream != null) {
+            DID cur = _endpoints.device(_upstream);
+            if (!cur.equals(did)) {
+                l.info("close upstream {} {}", _upstream, _downstream);
+                ChannelFuture f = new DefaultChannelFuture(_upstream, false);
+                _upstream.getPipeline().sendDownstream(new ShutdownEvent(_upstream, f));
+                // wait for the pending responses of the current upstream to be forwarded before
+                // switching to a new upstream
+                SettableFuture<Void> ff = SettableFuture.create();
+                f.addListener(cf -> {
+                    if (cf.isSuccess()) {
+                        ff.set(null);
+                    } else {
+                        ff.setException(cf.getCause());
+                    }
+                });
+                whenDone(ff, () -> {
+                    // NB: does not block, throws if the shutdown failed
+                    ff.get();
+                    _upstream = null;
+                    connectAndWrite(req, did, strictConsistency, version);
+                });
+                return;
+            }
+        }
+        connectAndWrite(req, did, strictConsistency, version);
+    }
+
+    private void connectAndWrite(HttpRequest req, @Nullable DID did, boolean strictConsistency,
+            @Nullable Version version)
+    {
+        if (_upstream == null || !_upstream.isConnected()) {
+            _upstream = _endpoints.connect(_principal, did, strictConsistency, version, pipeline());
+            l.info("opened upstream {} {}", _upstream, _downstream);
+        }
+
+        if (_upstream == null) {
+            sendError(_downstream, HttpResponseStatus.SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        // remove gateway-specific header
+        req.headers().remove(Names.COOKIE);
+        req.headers().remove(HEADER_ROUTE);
+
+        _upstream.write(req);
+    }
+
+    private interface Continuation
+    {
+        void run() throws Exception;
+    }
+
+    /**
+     * Run the continuation once the given future completes
+     *
+     * NB: blocking the i/o thread would delay all other downstream channels sharing it. Instead,
+     * the downstream channel is paused and any message already received is parked until the
+     * continuation is run, in the i/o thread of the downstream channel.
+     */
+    private void whenDone(ListenableFuture<?> f, Continuation c) throws Exception
+    {
+        if (f.isDone()) {
+            c.run();
+            return;
+        }
+
+        _parked = new ArrayDeque<>();
+        _downstream.setReadable(false);
+        f.addListener(() -> _downstream.getPipeline().execute(() -> {
+            try {
+                Queue<Object> parked = _parked;
+                _parked = null;
+                c.run();
+                if (_parked == null) {
+                    _parked = parked;
+                    unpark();
+                } else {
+                    // the continuation parked again: keep the downstream paused and process the
+                    // messages parked so far once the new continuation has run
+                    parked.addAll(_parked);
+                    _parked = parked;
+                }
+            } catch (Exception e) {
+                Channels.fireExceptionCaught(_downstream, e);
+            }
+        }), MoreExecutors.sameThreadExecutor());
+    }
+
+    private void unpark() throws Exception
+    {
+        Queue<Object> parked = _parked;
+        _parked = null;
+        _downstream.setReadable(true);
+        while (_parked == null && !parked.isEmpty()) process(parked.poll());
+        // preserve ordering if processing a parked message required parking again
+        if (_parked != null) _parked.addAll(parked);
+    }
+
     private ChannelPipeline pipeline() {
         return Channels.pipeline(
                 new IdleStateHandler(_timer, READ_TIMEOUT, WRITE_TIMEOUT, 0, TIMEOUT_UNIT),
@@ -308,6 +396,10 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
         private final AtomicBoolean _shutdown = new AtomicBoolean();
         private final AtomicReference<ChannelFuture> _shutdownFuture = new AtomicReference<>();
 
+        // send time of the requests awaiting a response, in order, to keep track of endpoint load
+        private final Queue<Long> _sentAt = new ConcurrentLinkedQueue<>();
+        private volatile DID _did;
+
         @Override
         public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
             if (e instanceof ShutdownEvent) {
@@ -335,6 +427,9 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
         {
             Object msg = me.getMessage();
             if (msg instanceof HttpRequest) {
+                if (_did == null) _did = _endpoints.device(ctx.getChannel());
+                _sentAt.add(System.nanoTime());
+                _endpoints.load().requestSent(_did);
                 _expectedResponses.incrementAndGet();
                 _expectingRequestChunks.set(((HttpRequest)msg).isChunked());
             } else if (msg instanceof HttpChunk) {
@@ -397,6 +492,7 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
 
             _expectingResponseChunks.set(response.isChunked());
             if (!response.isChunked()) {
+                responseCompleted();
                 if (_expectedResponses.decrementAndGet() == 0) {
                     completeShutdown();
                 }
@@ -411,6 +507,7 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
             }
 
             if (chunk.isLast()) {
+                responseCompleted();
                 if (_expectedResponses.decrementAndGet() == 0) {
                     completeShutdown();
                 }
@@ -418,6 +515,18 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
             }
         }
 
+        private void responseCompleted()
+        {
+            Long sentAt = _sentAt.poll();
+            if (sentAt == null) return;
+            _endpoints.load().responseReceived(_did, System.nanoTime() - sentAt);
+        }
+
+        private void abortOutstanding()
+        {
+            while (_sentAt.poll() != null) _endpoints.load().requestAborted(_did);
+        }
+
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
         {
@@ -462,6 +571,8 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
             // avoid forwarding any response Netty may still deliver
             ctx.getPipeline().remove(this);
 
+            abortOutstanding();
+
             // NB: only close downstream if there were missing responses
             // otherwise it is safe to keep downstream open and pick a new
             // upstream to service the next request
@@ -521,6 +632,7 @@ public class HttpRequestProxyHandler extends SimpleChannelUpstreamHandler
                     l.info("close idle upstream {}", c);
                     // avoid forwarding any response Netty may still deliver
                     ctx.getPipeline().remove(this);
+                    abortOutstanding();
                     cleanDownstreamClose();
                     // close connection if requests remain unanswered for too long
                     // to prevent bad state buildup
@@ -9,6 +9,7 @@ import com.aerofs.base.Loggers;
 import com.aerofs.ids.DID;
 import com.aerofs.ids.UserID;
 import com.aerofs.havre.EndpointConnector;
+import com.aerofs.havre.EndpointLoad;
 import com.aerofs.havre.TeamServerInfo;
 import com.aerofs.havre.Version;
 import com.aerofs.oauth.AuthenticatedPrincipal;
@@ -32,7 +33,6 @@ import java.nio.channels.ClosedChannelException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.stream.Collectors;
@@ -44,12 +44,16 @@ import static com.google.common.base.Preconditions.checkState;
  * Keeps track of tunnel connections from any number of {@link com.aerofs.tunnel.TunnelServer} and
  * offers an {@link EndpointConnector} interface to create virtual connections multiplexed on the
  * underlying physical tunnel connections.
+ *
+ * A device may stripe virtual connections across several physical connections, distinguished by
+ * the stripe index they advertise. A new connection replaces any previous connection of the same
+ * device with the same stripe index.
  */
 public class TunnelEndpointConnector implements ITunnelConnectionListener, EndpointConnector
 {
     private final static Logger l = Loggers.getLogger(TunnelEndpointConnector.class);
 
-    private final Random _random = new Random();
+    private final EndpointLoad _load = new EndpointLoad();
     private final EndpointVersionDetector _detector;
     private final Map<UserID, UserDevices> _endpointsByUser = Maps.newHashMap();
 
@@ -60,13 +64,13 @@ public class TunnelEndpointConnector implements ITunnelConnectionListener, Endpo
         public final DID did;
         public final Version version;
         public final Set<UserID> usersInShard;
-        public final TunnelHandler handler;
+        public final Map<Integer, TunnelHandler> stripes;
 
-        UserDevice(DID did, Version version, TunnelHandler handler)
+        UserDevice(DID did, Version version, Map<Integer, TunnelHandler> stripes)
         {
             this.did = did;
             this.version = version;
-            this.handler = handler;
+            this.stripes = stripes;
             this.usersInShard = version instanceof TeamServerInfo
                     ? Sets.newHashSet(((TeamServerInfo)version).users)
                     : Collections.emptySet();
@@ -107,9 +111,21 @@ public class TunnelEndpointConnector implements ITunnelConnectionListener, Endpo
             return usersInShard.isEmpty() || usersInShard.contains(user);
         }
 
+        /**
+         * @return the stripe with the fewest virtual connections
+         */
+        public TunnelHandler handler()
+        {
+            TunnelHandler best = null;
+            for (TunnelHandler h : stripes.values()) {
+                if (best == null || h.virtualChannelCount() < best.virtualChannelCount()) best = h;
+            }
+            return best;
+        }
+
         static UserDevice lowest(Version version)
         {
-            return new UserDevice(new DID(DID.LOWEST), version, null);
+            return new UserDevice(new DID(DID.LOWEST), version, Collections.emptyMap());
         }
     }
 
@@ -120,9 +136,16 @@ public class TunnelEndpointConnector implements ITunnelConnectionListener, Endpo
 
         void put_(DID did, TunnelHandler handler, Version version)
         {
-            UserDevice d = new UserDevice(did, version, handler);
+            UserDevice prev = _byDID.get(did);
+            Map<Integer, TunnelHandler> stripes = Maps.newHashMap();
+            if (prev != null) stripes.putAll(prev.stripes);
+            stripes.put(handler.peerStripe(), handler);
+            replace_(prev, new UserDevice(did, version, stripes));
+        }
 
-            UserDevice prev = _byDID.put(did, d);
+        private void replace_(@Nullable UserDevice prev, UserDevice d)
+        {
+            _byDID.put(d.did, d);
             if (prev != null) _byVersion.remove(prev);
             checkState(_byVersion.add(d));
         }
@@ -137,9 +160,15 @@ public class TunnelEndpointConnector implements ITunnelConnectionListener, Endpo
         void remove_(DID did, TunnelHandler handler)
         {
             UserDevice d = _byDID.get(did);
-            if (d != null && d.handler == handler) {
+            if (d == null || d.stripes.get(handler.peerStripe()) != handler) return;
+            if (d.stripes.size() > 1) {
+                Map<Integer, TunnelHandler> stripes = Maps.newHashMap(d.stripes);
+                stripes.remove(handler.peerStripe());
+                replace_(d, new UserDevice(did, d.version, stripes));
+            } else {
                 _byDID.remove(did);
                 checkState(_byVersion.remove(d));
+                _load.remove(did);
             }
         }
 
@@ -221,6 +250,12 @@ public class TunnelEndpointConnector implements ITunnelConnectionListener, Endpo
                 .map(ud -> ud.did);
     }
 
+    @Override
+    public EndpointLoad load()
+    {
+        return _load;
+    }
+
     @Override
     public synchronized void tunnelOpen(final TunnelAddress addr, final TunnelHandler handler)
     {
@@ -279,17 +314,18 @@ public class TunnelEndpointConnector implements ITunnelConnectionListener, Endpo
         List<UserDevice> candidates = getSuitableDevices(principal, minVersion);
         l.info("v: {} cand: {}", minVersion, candidates.size());
 
-        return candidates.isEmpty() ? null
-                : candidates.get(_random.nextInt(candidates.size())).handler;
+        if (candidates.isEmpty()) return null;
+        List<DID> dids = candidates.stream().map(ud -> ud.did).collect(Collectors.toList());
+        return candidates.get(dids.indexOf(_load.pick(dids))).handler();
     }
 
     private TunnelHandler getMatchingEndpoint(AuthenticatedPrincipal principal, DID did,
             @Nullable Version minVersion)
     {
         UserDevice ud = getMatchingEndpoint(principal.getEffectiveUserID(), did, minVersion);
-        if (ud != null) return ud.handler;
+        if (ud != null) return ud.handler();
         ud = getMatchingEndpoint(teamServer(principal), did, minVersion);
-        if (ud != null && ud.canServiceUser(principal.getEffectiveUserID())) return ud.handler;
+        if (ud != null && ud.canServiceUser(principal.getEffectiveUserID())) return ud.handler();
         return null;
     }
 
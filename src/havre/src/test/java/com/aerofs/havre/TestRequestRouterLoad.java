@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.havre;
+
+import com.aerofs.base.SimpleHttpClient;
+import com.aerofs.havre.proxy.HttpProxyServer;
+import com.aerofs.havre.proxy.TestHttpProxyServer.TestChannel;
+import com.aerofs.ids.DID;
+import com.aerofs.ids.UniqueID;
+import com.aerofs.oauth.AuthenticatedPrincipal;
+import com.aerofs.testlib.AbstractBaseTest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpClientCodec;
+import org.jboss.netty.handler.codec.http.HttpHeaders.Names;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import javax.annotation.Nullable;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Many concurrent clients going through the proxy to stand-in endpoints
+ *
+ * The proxy uses a single i/o thread for all downstream connections, which makes any blocking
+ * call in the request path immediately visible.
+ */
+public class TestRequestRouterLoad extends AbstractBaseTest
+{
+    private static final int CLIENTS = 50;
+    private static final int REQUESTS_PER_CLIENT = 10;
+
+    @Mock Authenticator auth;
+
+    private final AuthenticatedPrincipal user = new AuthenticatedPrincipal("foo@bar.baz");
+    private final Timer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS);
+    private final NioClientSocketChannelFactory clientChannelFactory =
+            new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
+                    Executors.newCachedThreadPool(), 4);
+
+    private HttpProxyServer proxy;
+    private StandInEndpoints endpoints;
+
+    private final static Gson gson = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create();
+
+    public static class Served
+    {
+        String device;
+    }
+
+    /**
+     * Endpoints answering every request after a fixed, per-endpoint, delay
+     *
+     * Unrouted requests are spread according to the endpoint load, as done by
+     * {@link com.aerofs.havre.tunnel.TunnelEndpointConnector}
+     */
+    private class StandInEndpoints implements EndpointConnector
+    {
+        final Map<DID, Long> latency = new ConcurrentHashMap<>();
+        final Map<DID, AtomicInteger> served = new ConcurrentHashMap<>();
+        final Map<Channel, DID> channels = new ConcurrentHashMap<>();
+        final EndpointLoad load = new EndpointLoad();
+
+        StandInEndpoints(long... latencies)
+        {
+            for (long ms : latencies) {
+                DID did = DID.generate();
+                latency.put(did, ms);
+                served.put(did, new AtomicInteger());
+            }
+        }
+
+        @Override
+        public List<DID> candidates(AuthenticatedPrincipal principal, @Nullable Version minVersion)
+        {
+            return ImmutableList.copyOf(latency.keySet());
+        }
+
+        @Override
+        public @Nullable Channel connect(AuthenticatedPrincipal principal, @Nullable DID did,
+                boolean strictMatch, @Nullable Version minVersion, ChannelPipeline pipeline)
+        {
+            DID target = did != null ? did : load.pick(candidates(principal, minVersion));
+            if (target == null || !latency.containsKey(target)) return null;
+
+            // deal with Http objects instead of raw bytes
+            pipeline.remove(HttpClientCodec.class);
+            TestChannel c = new TestChannel(pipeline, e -> {
+                if (!(e instanceof MessageEvent)) return;
+                if (!(((MessageEvent)e).getMessage() instanceof HttpRequest)) return;
+                timer.newTimeout(t -> {
+                    served.get(target).incrementAndGet();
+                    Served s = new Served();
+                    s.device = target.toStringFormal();
+                    Channels.fireMessageReceived(e.getChannel(), response(s));
+                }, latency.get(target), TimeUnit.MILLISECONDS);
+            });
+            channels.put(c, target);
+            c.setInternalInterestOps(Channel.OP_READ);
+            Channels.fireChannelOpen(c);
+            c.getPipeline().execute(() -> Channels.fireChannelConnected(c, c.getRemoteAddress()));
+            return c;
+        }
+
+        @Override
+        public DID device(Channel channel)
+        {
+            return channels.get(channel);
+        }
+
+        @Override
+        public Stream<DID> alternateDevices(Channel channel)
+        {
+            return Stream.empty();
+        }
+
+        @Override
+        public EndpointLoad load()
+        {
+            return load;
+        }
+    }
+
+    private static HttpResponse response(Object body)
+    {
+        byte[] b = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        DefaultHttpResponse resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK);
+        resp.setChunked(false);
+        resp.headers().add(Names.CONTENT_TYPE, "application/json");
+        resp.headers().add(Names.CONTENT_LENGTH, b.length);
+        resp.setContent(ChannelBuffers.wrappedBuffer(b));
+        return resp;
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        when(auth.authenticate(anyString())).thenReturn(user);
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (proxy != null) proxy.stop();
+        clientChannelFactory.releaseExternalResources();
+        timer.stop();
+    }
+
+    private void startProxy(RequestRouter router)
+    {
+        proxy = new HttpProxyServer(new InetSocketAddress(0), null, timer, auth, endpoints,
+                router) {
+            @Override
+            protected ServerSocketChannelFactory getServerSocketFactory()
+            {
+                // single i/o thread shared by all downstream connections
+                return new NioServerSocketChannelFactory(
+                        Executors.newSingleThreadExecutor(), 1,
+                        Executors.newSingleThreadExecutor(), 1);
+            }
+        };
+        proxy.start();
+    }
+
+    private SimpleHttpClient<String, Served> newClient()
+    {
+        return new SimpleHttpClient<String, Served>(
+                URI.create("http://localhost:" + proxy.getListeningPort()),
+                null, clientChannelFactory, timer) {
+            @Override
+            public String buildURI(String query)
+            {
+                return _endpoint.getPath() + "/api/v1.0/files/" + query;
+            }
+
+            @Override
+            public void modifyRequest(HttpRequest req, String query)
+            {
+                req.headers().set(Names.AUTHORIZATION, "Bearer foo");
+            }
+        };
+    }
+
+    private static String content(UniqueID oid)
+    {
+        return oid.toStringFormal() + "/content";
+    }
+
+    @Test
+    public void shouldNotStallOtherConnectionsWhileLookingUpLocation() throws Exception
+    {
+        endpoints = new StandInEndpoints(1, 1, 1);
+        DID target = endpoints.candidates(user, null).get(0);
+
+        // location lookup that does not complete until the end of the test
+        SettableFuture<DID> lookup = SettableFuture.create();
+        UniqueID slow = UniqueID.generate();
+        RequestRouter router = new RequestRouter(URI.create("http://localhost:1/locations"),
+                clientChannelFactory, timer, "secret") {
+            @Override
+            public ListenableFuture<DID> route(String uri, List<DID> cand, EndpointLoad load)
+            {
+                if (uri.contains(slow.toStringFormal())) return lookup;
+                return Futures.immediateFuture(load.pick(cand));
+            }
+        };
+        startProxy(router);
+
+        ListenableFuture<Served> parked = newClient().send(content(slow));
+
+        List<ListenableFuture<Served>> others = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; ++i) {
+            others.add(newClient().send(content(UniqueID.generate())));
+        }
+        for (ListenableFuture<Served> f : others) f.get(10, TimeUnit.SECONDS);
+
+        assertFalse(parked.isDone());
+
+        lookup.set(target);
+        assertEquals(target.toStringFormal(), parked.get(10, TimeUnit.SECONDS).device);
+    }
+
+    @Test
+    public void shouldKeepServingPipelinedRequestsInOrderAfterLookup() throws Exception
+    {
+        endpoints = new StandInEndpoints(1, 1);
+        List<DID> dids = endpoints.candidates(user, null);
+
+        SettableFuture<DID> lookup = SettableFuture.create();
+        UniqueID slow = UniqueID.generate();
+        RequestRouter router = new RequestRouter(URI.create("http://localhost:1/locations"),
+                clientChannelFactory, timer, "secret") {
+            @Override
+            public ListenableFuture<DID> route(String uri, List<DID> cand, EndpointLoad load)
+            {
+                return uri.contains(slow.toStringFormal())
+                        ? lookup : Futures.immediateFuture(dids.get(1));
+            }
+        };
+        startProxy(router);
+
+        SimpleHttpClient<String, Served> http = newClient();
+        ListenableFuture<Served> r1 = http.send(content(slow));
+        ListenableFuture<Served> r2 = http.send(content(UniqueID.generate()));
+
+        timer.newTimeout(t -> lookup.set(dids.get(0)), 100, TimeUnit.MILLISECONDS);
+
+        assertEquals(dids.get(0).toStringFormal(), r1.get(10, TimeUnit.SECONDS).device);
+        assertEquals(dids.get(1).toStringFormal(), r2.get(10, TimeUnit.SECONDS).device);
+    }
+
+    @Test
+    public void shouldSpreadLoadAwayFromSlowEndpoint() throws Exception
+    {
+        endpoints = new StandInEndpoints(100, 1, 1, 1);
+        DID slowest = endpoints.candidates(user, null).stream()
+                .filter(did -> endpoints.latency.get(did) == 100)
+                .findFirst().get();
+
+        // metadata requests are not subject to location lookups
+        startProxy(new RequestRouter(URI.create("http://localhost:1/locations"),
+                clientChannelFactory, timer, "secret"));
+
+        List<ListenableFuture<Void>> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; ++i) {
+            SimpleHttpClient<String, Served> http = newClient();
+            SettableFuture<Void> done = SettableFuture.create();
+            sendSequentially(http, REQUESTS_PER_CLIENT, done);
+            clients.add(done);
+        }
+        for (ListenableFuture<Void> f : clients) f.get(60, TimeUnit.SECONDS);
+
+        int total = 0;
+        for (AtomicInteger n : endpoints.served.values()) total += n.get();
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, total);
+
+        // a load-oblivious selection would send a quarter of all requests to the slow endpoint
+        int slow = endpoints.served.get(slowest).get();
+        l.info("slow endpoint served {}/{}", slow, total);
+        assertTrue(slow < total / 8);
+    }
+
+    private static void sendSequentially(SimpleHttpClient<String, Served> http, int n,
+            SettableFuture<Void> done)
+    {
+        if (n == 0) {
+            done.set(null);
+            return;
+        }
+        ListenableFuture<Served> f = http.send(UniqueID.generate().toStringFormal());
+        f.addListener(() -> {
+            try {
+                f.get();
+                sendSequentially(http, n - 1, done);
+            } catch (Exception e) {
+                done.setException(e);
+            }
+        }, Runnable::run);
+    }
+}
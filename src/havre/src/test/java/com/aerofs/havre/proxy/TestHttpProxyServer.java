@@ -16,12 +16,17 @@ import com.aerofs.ids.DID;
 import com.aerofs.havre.Authenticator;
 import com.aerofs.havre.Authenticator.UnauthorizedUserException;
 import com.aerofs.havre.EndpointConnector;
+import com.aerofs.havre.EndpointLoad;
 import com.aerofs.havre.Version;
 import com.aerofs.ids.UniqueID;
 import com.aerofs.oauth.AuthenticatedPrincipal;
 import com.aerofs.base.SimpleHttpClient;
 import com.aerofs.testlib.AbstractBaseTest;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -44,7 +49,11 @@ import org.mockito.Mock;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
@@ -60,6 +69,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TestHttpProxyServer extends AbstractBaseTest
@@ -100,7 +111,9 @@ public class TestHttpProxyServer extends AbstractBaseTest
         HttpRequestProxyHandler.WRITE_TIMEOUT = 300;
         HttpRequestProxyHandler.TIMEOUT_UNIT = TimeUnit.MILLISECONDS;
 
-        when(router.route(anyString(), anyListOf(DID.class))).thenReturn(DID.generate());
+        when(connector.load()).thenReturn(new EndpointLoad());
+        when(router.route(anyString(), anyListOf(DID.class), any(EndpointLoad.class)))
+                .thenReturn(Futures.immediateFuture(DID.generate()));
 
         timer = new HashedWheelTimer();
         proxy = new HttpProxyServer(new InetSocketAddress(0), null, timer, auth, connector, router) {
@@ -468,7 +481,8 @@ public class TestHttpProxyServer extends AbstractBaseTest
         DID did = DID.generate();
         l.info("did {}", did);
 
-        when(router.route(anyString(), anyListOf(DID.class))).thenReturn(did);
+        when(router.route(anyString(), anyListOf(DID.class), any(EndpointLoad.class)))
+                .thenReturn(Futures.immediateFuture(did));
 
         ListenableFuture<TestResponse> r1 = http.send(UniqueID.generate().toStringFormal());
         ListenableFuture<TestResponse> r2 = http.send(UniqueID.generate().toStringFormal());
@@ -487,8 +501,10 @@ public class TestHttpProxyServer extends AbstractBaseTest
         l.info("o1 {} d1 {}", o1, d1);
         l.info("o2 {} d2 {}", o2, d2);
 
-        when(router.route(contains(o1.toStringFormal()), anyListOf(DID.class))).thenReturn(d1);
-        when(router.route(contains(o2.toStringFormal()), anyListOf(DID.class))).thenReturn(d2);
+        when(router.route(contains(o1.toStringFormal()), anyListOf(DID.class),
+                any(EndpointLoad.class))).thenReturn(Futures.immediateFuture(d1));
+        when(router.route(contains(o2.toStringFormal()), anyListOf(DID.class),
+                any(EndpointLoad.class))).thenReturn(Futures.immediateFuture(d2));
 
         ListenableFuture<TestResponse> r1 = http.send(o1.toStringFormal());
         ListenableFuture<TestResponse> r2 = http.send(o2.toStringFormal());
@@ -496,6 +512,103 @@ public class TestHttpProxyServer extends AbstractBaseTest
         assertNotEquals(r1.get(), r2.get());
     }
 
+    @Test
+    public void shouldKeepParkedRequestsWhenRouteChangesDuringShutdown() throws Exception {
+        AuthenticatedPrincipal user = new AuthenticatedPrincipal("foo@bar.baz");
+        when(auth.authenticate(anyString())).thenReturn(user);
+
+        DID d1 = DID.generate();
+        DID d2 = DID.generate();
+        UniqueID o1 = UniqueID.generate();
+        UniqueID o2 = UniqueID.generate();
+        UniqueID o3 = UniqueID.generate();
+
+        SettableFuture<DID> route2 = SettableFuture.create();
+        when(router.route(contains(o1.toStringFormal()), anyListOf(DID.class),
+                any(EndpointLoad.class))).thenReturn(Futures.immediateFuture(d1));
+        when(router.route(contains(o2.toStringFormal()), anyListOf(DID.class),
+                any(EndpointLoad.class))).thenReturn(route2);
+        when(router.route(contains(o3.toStringFormal()), anyListOf(DID.class),
+                any(EndpointLoad.class))).thenReturn(Futures.immediateFuture(d2));
+
+        // the first upstream holds its response, which delays its shutdown
+        SettableFuture<Void> release = SettableFuture.create();
+        when(connector.connect(eq(user), any(DID.class), eq(false), any(Version.class),
+                any(ChannelPipeline.class)))
+                .thenAnswer(i -> {
+                    DID did = (DID)i.getArguments()[1];
+                    ChannelPipeline p = (ChannelPipeline)i.getArguments()[4];
+                    Assert.assertNotNull(p.remove(HttpClientCodec.class));
+                    return makeChannel(p, Channel.OP_READ, c -> {
+                        when(connector.device(c)).thenReturn(did);
+                        when(connector.alternateDevices(c)).thenAnswer(dummy -> Stream.empty());
+                    }, e -> {
+                        if (e instanceof MessageEvent) {
+                            Channel c = e.getChannel();
+                            Runnable respond = () -> Channels.fireMessageReceived(c,
+                                    response(new TestResponse(c.getId())));
+                            if (did.equals(d1)) {
+                                release.addListener(respond, MoreExecutors.sameThreadExecutor());
+                            } else {
+                                respond.run();
+                            }
+                        }
+                    });
+                });
+
+        try (Socket s = new Socket("localhost", RestAssured.port)) {
+            s.setSoTimeout(5000);
+            // in a single write so that the third request is parked along with the second one
+            s.getOutputStream().write((request(o1) + request(o2) + request(o3))
+                    .getBytes(StandardCharsets.UTF_8));
+
+            verify(router, timeout(5000)).route(contains(o2.toStringFormal()),
+                    anyListOf(DID.class), any(EndpointLoad.class));
+            // the route changes while the response of the first upstream is pending
+            route2.set(d2);
+            Thread.sleep(100);
+            release.set(null);
+
+            InputStream in = s.getInputStream();
+            assertEquals(d1.toStringFormal(), readRoute(in));
+            assertEquals(d2.toStringFormal(), readRoute(in));
+            assertEquals(d2.toStringFormal(), readRoute(in));
+        }
+    }
+
+    private static String request(UniqueID object)
+    {
+        return "GET /api/v1.0/files/" + object.toStringFormal() + "/content HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Authorization: Bearer foo\r\n\r\n";
+    }
+
+    // reads a response and returns its route header
+    private static String readRoute(InputStream in) throws IOException
+    {
+        String route = null;
+        int length = 0;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            String[] header = line.split(":\\s*", 2);
+            if (header[0].equalsIgnoreCase("Route")) route = header[1];
+            if (header[0].equalsIgnoreCase(Names.CONTENT_LENGTH)) length = Integer.parseInt(header[1]);
+        }
+        ByteStreams.skipFully(in, length);
+        return route;
+    }
+
+    private static String readLine(InputStream in) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) throw new EOFException();
+            if (c != '\r') sb.append((char)c);
+        }
+        return sb.toString();
+    }
+
     @Test
     public void shouldWaitForUpstreamResponseBeforeSwitching() throws Exception {
         // TODO
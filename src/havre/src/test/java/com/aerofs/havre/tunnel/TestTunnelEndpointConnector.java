@@ -70,10 +70,17 @@ public class TestTunnelEndpointConnector extends AbstractBaseTest
     }
 
     TunnelHandler connectClient(AuthenticatedPrincipal user, DID did, final Version version) throws Exception
+    {
+        return connectClient(user, did, version, 0);
+    }
+
+    TunnelHandler connectClient(AuthenticatedPrincipal user, DID did, final Version version,
+            int stripe) throws Exception
     {
         final TunnelAddress addr = new TunnelAddress(user.getEffectiveUserID(), did);
         TunnelHandler handler = mock(TunnelHandler.class);
         when(handler.address()).thenReturn(addr);
+        when(handler.peerStripe()).thenReturn(stripe);
         when(handler.newVirtualChannel(any(ChannelPipeline.class)))
                 .thenAnswer(invocation -> {
                     Channel c = mock(Channel.class);
@@ -252,6 +259,38 @@ public class TestTunnelEndpointConnector extends AbstractBaseTest
         verify(h1).newVirtualChannel(pipeline);
     }
 
+    @Test
+    public void shouldPickLeastBusyStripeForDID() throws Exception
+    {
+        DID d0 = DID.generate();
+        TunnelHandler h0 = connectClient(user, d0, new Version(0, 9), 0);
+        TunnelHandler h1 = connectClient(user, d0, new Version(0, 9), 1);
+        when(h0.virtualChannelCount()).thenReturn(3);
+        when(h1.virtualChannelCount()).thenReturn(1);
+
+        ChannelPipeline pipeline = Channels.pipeline();
+        Channel c = connector.connect(user, null, false, null, pipeline);
+        assertNotNull(c);
+        verify(h0, never()).newVirtualChannel(pipeline);
+        verify(h1).newVirtualChannel(pipeline);
+    }
+
+    @Test
+    public void shouldKeepOtherStripesWhenStripeClosed() throws Exception
+    {
+        DID d0 = DID.generate();
+        TunnelHandler h0 = connectClient(user, d0, new Version(0, 9), 0);
+        TunnelHandler h1 = connectClient(user, d0, new Version(0, 9), 1);
+        when(h0.virtualChannelCount()).thenReturn(3);
+        connector.tunnelClosed(h1.address(), h1);
+
+        ChannelPipeline pipeline = Channels.pipeline();
+        Channel c = connector.connect(user, d0, true, null, pipeline);
+        assertNotNull(c);
+        verify(h0).newVirtualChannel(pipeline);
+        verify(h1, never()).newVirtualChannel(pipeline);
+    }
+
     @Test
     public void shouldNotPickTSIfUserNotInShard() throws Exception
     {
@@ -57,6 +57,7 @@ public class ClientParam
     public static final String CORE_DATABASE           = "db";
     public static final String OBF_CORE_DATABASE       = "obf-db";
     public static final String CFG_DATABASE            = "conf";
+    public static final String HASH_CACHE_DATABASE     = "hashes";
     public static final String SA_CFG_FILE             = "storage_agent.conf";
     public static final String ICONS_DIR               = "/icons/";
     // Freedesktop.org-compliant icon theme folder
@@ -150,7 +151,7 @@ public class ClientParam
     {
         // These variables are saved here rather than *PostUpdateTasks classes so that both
         // UI and processes can access them.
-        public static final int DAEMON_POST_UPDATE_TASKS = 68;
+        public static final int DAEMON_POST_UPDATE_TASKS = 69;
         public static final int UI_POST_UPDATE_TASKS = 2;
         public static final int PHOENIX_CONVERSION_TASKS = 5;
     }
@@ -6,6 +6,7 @@ package com.aerofs.lib.cfg;
 
 import com.google.inject.Inject;
 
+import static com.aerofs.lib.cfg.ICfgStore.CONTENT_DEFINED_CHUNKING;
 import static com.aerofs.lib.cfg.ICfgStore.SYNC_HISTORY;
 
 /**
@@ -24,6 +25,15 @@ public class CfgStoragePolicy
         return _cfgStore.getBoolean(SYNC_HISTORY);
     }
 
+    /**
+     * Indicate whether block storage should use content-defined block boundaries.
+     * @return true if blocks are cut at rolling-hash boundaries instead of fixed offsets
+     */
+    public boolean useContentDefinedChunking()
+    {
+        return _cfgStore.getBoolean(CONTENT_DEFINED_CHUNKING);
+    }
+
     /**
      * Populates cached value with database value on instantiation, and
      * installs a database listener.
@@ -50,6 +50,12 @@ public abstract class ICfgStore {
     // enable sync history
     public static CfgKey SYNC_HISTORY = new CfgKey("sync_history", true);
 
+    // cut block storage content at rolling-hash boundaries instead of fixed-size blocks
+    public static CfgKey CONTENT_DEFINED_CHUNKING = new CfgKey("content_defined_chunking", false);
+
+    // number of threads used to hash files. 0 scales with the number of cores
+    public static CfgKey HASH_THREADS = new CfgKey("hash_threads", 0);
+
     // storage type
     public static CfgKey STORAGE_TYPE = new CfgKey("storage_type", null);
 
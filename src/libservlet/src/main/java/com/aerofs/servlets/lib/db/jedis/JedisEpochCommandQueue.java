@@ -9,13 +9,19 @@ import com.aerofs.lib.injectable.TimeSource;
 import com.aerofs.proto.Cmd.CommandType;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import redis.clients.jedis.Response;
 import redis.clients.jedis.Tuple;
+import redis.clients.util.SafeEncoder;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * This class represents an epoch queue data structure tailored specifically for AeroFS per device
@@ -44,13 +50,23 @@ import java.util.List;
  *
  * {@value JedisEpochCommandQueue#PREFIX_CREATE}(reate)/DID => Hash<CommandMessage, CreationTime>
  *     Desc: Hash of command message to the creation time of the command in milliseconds. The hash
- *     is cleared when the command message has been dequeued. For now this field is not used, but
- *     has been added so that we can clean the database in the future if we need to.
+ *     is cleared when the command message has been dequeued.
+ *
+ * {@value JedisEpochCommandQueue#KEY_EXPIRY} => SortedSet<DID/CommandMessage, CreationTime>
+ *     Desc: Index of all queued commands, across devices, sorted by creation time. This allows
+ *     cleanup to only look at commands older than a given date instead of scanning every queue.
+ *     Entries are removed along with the command.
+ *
+ * {@value JedisEpochCommandQueue#KEY_INDEXED} => 1
+ *     Desc: set once the commands queued before the index was introduced have been indexed. The
+ *     first cleanup that finds it missing SCANs the creation time hashes of all devices to do so,
+ *     a few devices per transaction.
  *
  * Notes:
  *
  * 1. Storage of metadata is broken up so that we can take advantage of the redis incr builtin for
  *    counting retries.
+ * 2. The attempt count is only checked for expiry candidates, i.e. it is not part of the index.
  *
  * A picture helps visualize the setup in redis:
  *
@@ -70,8 +86,95 @@ public class JedisEpochCommandQueue extends AbstractJedisDatabase
     private static final String PREFIX_EPOCH    = "jeq:e/";
     private static final String PREFIX_ATTEMPTS = "jeq:a/";
     private static final String PREFIX_CREATE   = "jeq:c/";
+    private static final String KEY_EXPIRY      = "jeq:x";
+    private static final String KEY_INDEXED     = "jeq:xi";
+
+    // Number of expiry candidates looked at by each cleanup script, and number of device keys
+    // visited by each step of the index backfill. Each runs in its own transaction so that
+    // cleanup of a large backlog never blocks redis, and sp requests, for long.
+    static final int DELETE_SLICE_SIZE = 1000;
+    static final int BACKFILL_SCAN_COUNT = 100;
+
+    // Delete commands older than a given date, that have been attempted more than a given number
+    // of times, walking a slice of the expiry index.
+    //
+    // KEYS: expiry index
+    // ARGV: max attempts, earliest date, command type or -1 for any type, cursor score, cursor
+    //       skip, count, followed by the attempts, create and queue key prefixes.
+    //
+    // The slice starts at the cursor score, skipping the given number of entries at that score,
+    // which are candidates kept by previous slices. Deleted and stale entries leave the index,
+    // so the offset only ever covers kept candidates sharing a creation time.
+    //
+    // Returns the number of candidates scanned, the cursor score and skip for the next slice,
+    // followed by command type/deleted count pairs. Stale index entries, i.e. ones whose command
+    // is no longer queued, are removed but not counted as deleted.
+    private static final String DELETE_EXPIRED =
+            "local max_attempts = tonumber(ARGV[1])\n" +
+            "local delete_type = tonumber(ARGV[3])\n" +
+            "local candidates = redis.call('zrangebyscore', KEYS[1], ARGV[4], '(' .. ARGV[2],\n" +
+            "    'withscores', 'limit', ARGV[5], ARGV[6])\n" +
+            "local last = tonumber(ARGV[4])\n" +
+            "local kept = tonumber(ARGV[5])\n" +
+            "local deleted = {}\n" +
+            "for i = 1, #candidates, 2 do\n" +
+            "  local member = candidates[i]\n" +
+            "  local score = tonumber(candidates[i + 1])\n" +
+            "  if score ~= last then\n" +
+            "    last = score\n" +
+            "    kept = 0\n" +
+            "  end\n" +
+            "  local sep = member:find('/')\n" +
+            "  local did = member:sub(1, sep - 1)\n" +
+            "  local command = member:sub(sep + 1)\n" +
+            // to support both command_type and command_type:args format
+            // unfortunately, the DB needs to be aware of the serialization format because of
+            // the contract of this method #sigh.
+            "  local command_type = tonumber(command:match('^%d+')) or -1\n" +
+            "  local attempts = tonumber(redis.call('hget', ARGV[7] .. did, command))\n" +
+            "  if not attempts then\n" +
+            "    redis.call('zrem', KEYS[1], member)\n" +
+            "  elseif attempts > max_attempts and\n" +
+            "      (delete_type == -1 or command_type == delete_type) then\n" +
+            "    redis.call('hdel', ARGV[8] .. did, command)\n" +
+            "    redis.call('hdel', ARGV[7] .. did, command)\n" +
+            "    redis.call('zrem', ARGV[9] .. did, command)\n" +
+            "    redis.call('zrem', KEYS[1], member)\n" +
+            "    deleted[command_type] = (deleted[command_type] or 0) + 1\n" +
+            "  else\n" +
+            "    kept = kept + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "local result = {#candidates / 2, last or 0, kept}\n" +
+            "for command_type, count in pairs(deleted) do\n" +
+            "  result[#result + 1] = command_type\n" +
+            "  result[#result + 1] = count\n" +
+            "end\n" +
+            "return result\n";
+
+    // One step of the backfill of the expiry index. SCAN may not be followed by writes in the
+    // same script, hence the separate script to index the keys it returns.
+    //
+    // ARGV: cursor, match pattern, count
+    private static final String SCAN =
+            "return redis.call('scan', ARGV[1], 'match', ARGV[2], 'count', ARGV[3])\n";
 
+    // Index the commands of the given creation time hashes.
+    //
+    // KEYS: expiry index, followed by creation time hashes
+    // ARGV: create key prefix
+    private static final String INDEX =
+            "for i = 2, #KEYS do\n" +
+            "  local did = KEYS[i]:sub(#ARGV[1] + 1)\n" +
+            "  local created = redis.call('hgetall', KEYS[i])\n" +
+            "  for j = 1, #created, 2 do\n" +
+            "    redis.call('zadd', KEYS[1], created[j + 1], did .. '/' .. created[j])\n" +
+            "  end\n" +
+            "end\n";
+
+    private final JedisThreadLocalTransaction _trans;
     private final TimeSource _timeSource;
+    private final int _sliceSize;
 
     @Inject
     public JedisEpochCommandQueue(JedisThreadLocalTransaction transaction)
@@ -80,9 +183,17 @@ public class JedisEpochCommandQueue extends AbstractJedisDatabase
     }
 
     JedisEpochCommandQueue(JedisThreadLocalTransaction transaction, TimeSource timeSource)
+    {
+        this(transaction, timeSource, DELETE_SLICE_SIZE);
+    }
+
+    JedisEpochCommandQueue(JedisThreadLocalTransaction transaction, TimeSource timeSource,
+            int sliceSize)
     {
         super(transaction);
+        _trans = transaction;
         _timeSource = timeSource;
+        _sliceSize = sliceSize;
     }
 
     //
@@ -109,6 +220,11 @@ public class JedisEpochCommandQueue extends AbstractJedisDatabase
         return PREFIX_CREATE + did.toStringFormal();
     }
 
+    private String getExpiryMember(DID did, String commandMessage)
+    {
+        return did.toStringFormal() + "/" + commandMessage;
+    }
+
     //
     // Public Methods
     //
@@ -124,31 +240,21 @@ public class JedisEpochCommandQueue extends AbstractJedisDatabase
     {
         String currentTime = String.valueOf(_timeSource.getTime());
 
-        // Set the number of attempts to 0 if it hasn't already been set.
-        getTransaction().eval(
-                "if redis.call('hexists', KEYS[1], KEYS[2]) ~= 1 then\n" +
-                "  redis.call('hset', KEYS[1], KEYS[2], 0)\n" +
-                "end\n",
-                2,                                       // KEYS count
-                getAttemptsKey(did), commandMessage);    // KEYS
-
-        // Set the creation time if it doesn't already exist.
-        getTransaction().eval(
-                "if redis.call('hexists', KEYS[1], ARGV[1]) ~= 1 then\n" +
-                "  redis.call('hset', KEYS[1], ARGV[1], ARGV[2])\n" +
-                "end\n",
-                1,                               // KEYS count
-                getCreateKey(did),               // KEYS
-                commandMessage, currentTime);    // ARGV
-
-        // Increment the epoch and add the payload to the sorted set (i.e. the device queue).
+        // Set the number of attempts to 0 and the creation time if they haven't already been set,
+        // index the command by creation time, then increment the epoch and add the payload to the
+        // sorted set (i.e. the device queue).
         Response<Object> response = getTransaction().eval(
-                "local epoch = redis.call('incr', KEYS[1])\n" +
-                "redis.call('zadd', KEYS[2], epoch, ARGV[1])\n" +
+                "redis.call('hsetnx', KEYS[1], ARGV[1], 0)\n" +
+                "redis.call('hsetnx', KEYS[2], ARGV[1], ARGV[2])\n" +
+                "redis.call('zadd', KEYS[5], redis.call('hget', KEYS[2], ARGV[1]), ARGV[3])\n" +
+                "local epoch = redis.call('incr', KEYS[3])\n" +
+                "redis.call('zadd', KEYS[4], epoch, ARGV[1])\n" +
                 "return epoch\n",
-                2,                                  // KEYS count
-                getEpochKey(did), getQueueKey(did), // KEYS
-                commandMessage);                    // ARGV
+                5,                                                      // KEYS count
+                getAttemptsKey(did), getCreateKey(did),
+                getEpochKey(did), getQueueKey(did), KEY_EXPIRY,         // KEYS
+                commandMessage, currentTime,
+                getExpiryMember(did, commandMessage));                  // ARGV
 
         return new Epoch(response);
     }
@@ -192,11 +298,14 @@ public class JedisEpochCommandQueue extends AbstractJedisDatabase
                 "  redis.call('zrem', KEYS[1], command)\n" +
                 "  redis.call('hdel', KEYS[2], command)\n" +
                 "  redis.call('hdel', KEYS[3], command)\n" +
+                "  redis.call('zrem', KEYS[5], ARGV[1] .. '/' .. command)\n" +
                 "  result = true\n" +
                 "end\n" +
                 "return result\n",
-                4,
-                getQueueKey(did), getAttemptsKey(did), getCreateKey(did), String.valueOf(epoch));
+                5,
+                getQueueKey(did), getAttemptsKey(did), getCreateKey(did), String.valueOf(epoch),
+                KEY_EXPIRY,
+                did.toStringFormal());
 
         return new SuccessError(response);
     }
@@ -230,10 +339,105 @@ public class JedisEpochCommandQueue extends AbstractJedisDatabase
      */
     public void delete(DID did)
     {
-        getTransaction().del(getQueueKey(did));
-        getTransaction().del(getEpochKey(did));
-        getTransaction().del(getAttemptsKey(did));
-        getTransaction().del(getCreateKey(did));
+        getTransaction().eval(
+                "local commands = redis.call('hkeys', KEYS[4])\n" +
+                "for i = 1, #commands do\n" +
+                "  redis.call('zrem', KEYS[5], ARGV[1] .. '/' .. commands[i])\n" +
+                "end\n" +
+                "redis.call('del', KEYS[1], KEYS[2], KEYS[3], KEYS[4])\n",
+                5,
+                getQueueKey(did), getEpochKey(did), getAttemptsKey(did), getCreateKey(did),
+                KEY_EXPIRY,
+                did.toStringFormal());
+    }
+
+    /**
+     * Run a single command in its own transaction and return its result.
+     */
+    private <T> T inTransaction(Supplier<Response<T>> command)
+    {
+        _trans.begin();
+        try {
+            Response<T> response = command.get();
+            _trans.commit();
+            return response.get();
+        } finally {
+            // cleanup is idempotent and results in the same state as commit
+            _trans.cleanUp();
+        }
+    }
+
+    private static String decode(Object o)
+    {
+        return o instanceof byte[] ? SafeEncoder.encode((byte[]) o) : (String) o;
+    }
+
+    /**
+     * Index the commands queued before the expiry index was introduced, if not done yet.
+     */
+    private void backfillExpiryIndex()
+    {
+        if (inTransaction(() -> getTransaction().exists(KEY_INDEXED))) return;
+
+        String cursor = "0";
+        do {
+            String from = cursor;
+            List<?> result = (List<?>) inTransaction(() -> getTransaction().eval(SCAN, 0,
+                    from, PREFIX_CREATE + "*", String.valueOf(BACKFILL_SCAN_COUNT)));
+            cursor = decode(result.get(0));
+
+            List<String> keys = Lists.newArrayList(KEY_EXPIRY);
+            for (Object key : (List<?>) result.get(1)) keys.add(decode(key));
+            if (keys.size() > 1) {
+                inTransaction(() -> getTransaction().eval(INDEX, keys.size(),
+                        Iterables.toArray(Iterables.concat(keys,
+                                Collections.singleton(PREFIX_CREATE)), String.class)));
+            }
+        } while (!cursor.equals("0"));
+
+        inTransaction(() -> getTransaction().set(KEY_INDEXED, "1"));
+    }
+
+    /**
+     * Walk the expiry index one slice per transaction.
+     *
+     * Commands dequeued, deleted or enqueued concurrently are picked up or skipped as the slices
+     * reach them, any command missed is left for the next cleanup.
+     *
+     * @return the number of commands deleted, by command type number
+     */
+    private Map<Long, Long> deleteExpired(int maxAttempts, long earliestDate,
+            @Nullable CommandType type)
+    {
+        backfillExpiryIndex();
+
+        Map<Long, Long> deleted = Maps.newHashMap();
+        String cursor = "-inf";
+        long skip = 0;
+        while (true) {
+            String min = cursor;
+            long offset = skip;
+            // The result of the DELETE_EXPIRED script is:
+            //   scanned, cursor score, cursor skip, (command type, deleted)*
+            List<?> result = (List<?>) inTransaction(() -> getTransaction().eval(DELETE_EXPIRED,
+                    1, // KEYS count
+                    KEY_EXPIRY,
+                    String.valueOf(maxAttempts),
+                    String.valueOf(earliestDate),
+                    String.valueOf(type != null ? type.getNumber() : -1),
+                    min,
+                    String.valueOf(offset),
+                    String.valueOf(_sliceSize),
+                    PREFIX_ATTEMPTS, PREFIX_CREATE, PREFIX_QUEUE)); // ARGV
+
+            for (int i = 3; i + 1 < result.size(); i += 2) {
+                deleted.merge((Long) result.get(i), (Long) result.get(i + 1), Long::sum);
+            }
+
+            if ((Long) result.get(0) < _sliceSize) return deleted;
+            cursor = String.valueOf(result.get(1));
+            skip = (Long) result.get(2);
+        }
     }
 
     /**
@@ -243,67 +447,30 @@ public class JedisEpochCommandQueue extends AbstractJedisDatabase
      *  2. creationDate < earliestDate, and
      *  3. the command type matches the type parameter.
      *
-     * N.B. this command is slooow because it is only meant to be run periodicially to clean up old
-     * entries.
+     * Unlike other methods, this one must be called outside of a transaction: the candidates are
+     * looked at {@value #DELETE_SLICE_SIZE} at a time, each slice in its own transaction.
      *
      * @return the number of queue entries deleted.
      */
     public DeletedElementCount delete(int maxAttempts, long earliestDate,
             CommandType deleteCommandType)
     {
-        Response<Object> response = getTransaction().eval(
-                "local total_deleted = 0\n" +
-                "local max_attempts = tonumber(KEYS[1])\n" +
-                "local earliest_date = tonumber(KEYS[2])\n" +
-                "local delete_command = tonumber(KEYS[3])\n" +
-                "local prefix_attempts = KEYS[4]\n" +
-                "local prefix_create = KEYS[5]\n" +
-                "local prefix_queue = KEYS[6]\n" +
-                "local keys = redis.call('keys', prefix_attempts .. '*')\n" +
-                "for i = 1, #keys\n" +
-                "  do\n" +
-                "  local attempt_key = keys[i]\n" +
-                "  local command_keys = redis.call('hkeys', attempt_key)\n" +
-                "  for j = 1, #command_keys\n" +
-                "  do\n" +
-                "    local did = attempt_key:sub((attempt_key:find('/')+1))\n" +
-                "    local command = command_keys[j]\n" +
-                "    local attempts = tonumber(redis.call('hget', attempt_key, command))\n" +
-                "    local creation_time =" +
-                "        tonumber(redis.call('hget', prefix_create .. did, command))\n" +
-                "    local delete_command_pattern = delete_command .. ':'\n" +
-                "    if attempts > max_attempts and" +
-                // to support both command_type and command_type:args format
-                // unfortunately, the DB needs to be aware of the serialization format because of
-                // the contract of this method #sigh.
-                "        (string.sub(command,1,string.len(delete_command_pattern)) ==" +
-                "            delete_command_pattern or" +
-                "            tonumber(command) == delete_command) and" +
-                "        creation_time < earliest_date then\n" +
-                "      redis.call('hdel', prefix_create .. did, command)\n" +
-                "      redis.call('hdel', attempt_key, command)\n" +
-                "      redis.call('zrem', prefix_queue .. did, command)\n" +
-                "      total_deleted = total_deleted + 1\n" +
-                "    end\n" +
-                "  end\n" +
-                "end\n" +
-                "return total_deleted\n",
-                6, // KEYS count
-                String.valueOf(maxAttempts),
-                String.valueOf(earliestDate),
-                String.valueOf(deleteCommandType.getNumber()),
-                PREFIX_ATTEMPTS, PREFIX_CREATE, PREFIX_QUEUE); // KEYS
-
-        return new DeletedElementCount(response, deleteCommandType);
+        Long count = deleteExpired(maxAttempts, earliestDate, deleteCommandType)
+                .get((long) deleteCommandType.getNumber());
+        return new DeletedElementCount(count != null ? count : 0, deleteCommandType);
     }
 
+    /**
+     * Same as above, for all command types at once.
+     */
     public DeletedElementCountList delete(int maxAttempts, long earliestDate)
     {
-        List<DeletedElementCount> result = Lists.newLinkedList();
+        Map<Long, Long> deleted = deleteExpired(maxAttempts, earliestDate, null);
 
-        // Loop through all types of commands.
+        List<DeletedElementCount> result = Lists.newLinkedList();
         for (CommandType type : CommandType.values()) {
-            result.add(delete(maxAttempts, earliestDate, type));
+            Long count = deleted.get((long) type.getNumber());
+            result.add(new DeletedElementCount(count != null ? count : 0, type));
         }
 
         return new DeletedElementCountList(result);
@@ -337,18 +504,18 @@ public class JedisEpochCommandQueue extends AbstractJedisDatabase
 
     public static class DeletedElementCount
     {
-        private final Response<Object> _response;
+        private final long _count;
         private final CommandType _type;
 
-        public DeletedElementCount(Response<Object> response, CommandType type)
+        public DeletedElementCount(long count, CommandType type)
         {
-            _response = response;
+            _count = count;
             _type = type;
         }
 
         public long getCount()
         {
-            return (Long) _response.get();
+            return _count;
         }
 
         public CommandType getType()
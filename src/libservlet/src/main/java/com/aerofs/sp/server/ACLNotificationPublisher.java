@@ -19,6 +19,8 @@ import org.slf4j.Logger;
 import javax.inject.Inject;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import static com.aerofs.sp.server.LipwigUtil.lipwigFutureGet;
 
@@ -64,10 +66,51 @@ public class ACLNotificationPublisher
 
     }
 
+    /**
+     * Bump the ACL epoch of all the given users in bulk and notify them on commit.
+     *
+     * Notifications are pipelined, with a bound on the number of outstanding requests, and the
+     * caller blocks until all of them are answered.
+     */
     public void publish_(Collection<UserID> users) throws Exception
     {
-        // TODO: pipeline requests
-        for (UserID user : users) publish_(user);
+        if (users.isEmpty()) return;
+
+        Map<UserID, Long> epochs = _factUser.incrementACLEpochs(users);
+        Runnable publish = () -> {
+            try {
+                publishAll(epochs);
+            } catch (InterruptedException e) {
+                throw new Error("publisher client should never be interrupted");
+            }
+        };
+
+        // schedule publish on commit if we're in a transaction, otherwise publish now
+        if (_sqlTrans.isInTransaction()) {
+            _sqlTrans.onCommit(publish);
+        } else {
+            publish.run();
+        }
     }
 
+    private void publishAll(Map<UserID, Long> epochs) throws InterruptedException
+    {
+        SSMPPipeline pipeline = new SSMPPipeline(_ssmp);
+
+        for (Entry<UserID, Long> e : epochs.entrySet()) {
+            UserID user = e.getKey();
+            long epoch = e.getValue();
+            SSMPIdentifier aclTopic = SSMPIdentifiers.getACLTopic(user.getString());
+
+            pipeline.send(SSMPRequest.mcast(aclTopic, Long.toString(epoch)), f -> {
+                try {
+                    lipwigFutureGet(f);
+                } catch (Exception ex) {
+                    l.warn("acl pub failed {}:{}", user, epoch, BaseLogUtil.suppress(ex));
+                }
+            });
+        }
+
+        pipeline.await();
+    }
 }
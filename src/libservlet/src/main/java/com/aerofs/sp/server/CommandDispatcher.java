@@ -4,6 +4,7 @@
 
 package com.aerofs.sp.server;
 
+import com.aerofs.base.Loggers;
 import com.aerofs.ids.DID;
 import com.aerofs.proto.Cmd.Command;
 import com.aerofs.servlets.lib.db.jedis.JedisEpochCommandQueue;
@@ -13,9 +14,19 @@ import com.aerofs.ssmp.SSMPConnection;
 import com.aerofs.ssmp.SSMPIdentifiers;
 import com.aerofs.ssmp.SSMPRequest;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -23,10 +34,36 @@ import java.util.concurrent.ExecutionException;
  */
 public class CommandDispatcher
 {
+    private static final Logger l = Loggers.getLogger(CommandDispatcher.class);
+
+    // number of devices whose commands are enqueued in a single redis transaction
+    static final int MAX_DEVICES_PER_TRANSACTION = 1000;
+
     private SSMPConnection _ssmp;
     private JedisEpochCommandQueue _commandQueue;
     private JedisThreadLocalTransaction _jedisTrans;
 
+    /**
+     * Outcome of the delivery of a command to a single device.
+     */
+    public static class Delivery
+    {
+        // epoch of the enqueued command, or -1 if it could not be enqueued
+        public final long epoch;
+        public final @Nullable Throwable error;
+
+        Delivery(long epoch, @Nullable Throwable error)
+        {
+            this.epoch = epoch;
+            this.error = error;
+        }
+
+        public boolean succeeded()
+        {
+            return error == null;
+        }
+    }
+
     @Inject
     public CommandDispatcher(JedisEpochCommandQueue cmdQueue, JedisThreadLocalTransaction jedisTrans,
                              SSMPConnection ssmp)
@@ -63,6 +100,36 @@ public class CommandDispatcher
         deliver(did, commandMessage, false);
     }
 
+    /**
+     * Batch version of {@link #replaceQueue}.
+     * @return the outcome of the delivery to each of the targeted devices
+     */
+    public Map<DID, Delivery> replaceQueues(Collection<DID> dids, String commandMessage)
+            throws InterruptedException
+    {
+        return deliver(dids, commandMessage, true);
+    }
+
+    /**
+     * Batch version of {@link #enqueueCommand}.
+     * @return the outcome of the delivery to each of the targeted devices
+     */
+    public Map<DID, Delivery> enqueueCommands(Collection<DID> dids, String commandMessage)
+            throws InterruptedException
+    {
+        return deliver(dids, commandMessage, false);
+    }
+
+    /**
+     * Throw if the delivery to any device failed, for callers that need all-or-nothing semantics.
+     */
+    public static void checkDelivered(Map<DID, Delivery> deliveries) throws ExecutionException
+    {
+        for (Delivery d : deliveries.values()) {
+            if (d.error != null) throw new ExecutionException(d.error);
+        }
+    }
+
     private void deliver(DID did, String commandMessage, boolean flushFirst)
             throws ExecutionException, InterruptedException
     {
@@ -82,8 +149,71 @@ public class CommandDispatcher
 
         assert epoch != null;
 
-        Command command = CommandUtil.createCommandFromMessage(commandMessage, epoch.get());
-        _ssmp.request(SSMPRequest.ucast(SSMPIdentifiers.getCMDUser(did),
-                Base64.getEncoder().encodeToString(command.toByteArray()))).get();
+        _ssmp.request(newRequest(did, commandMessage, epoch.get())).get();
+    }
+
+    private static SSMPRequest newRequest(DID did, String commandMessage, long epoch)
+    {
+        Command command = CommandUtil.createCommandFromMessage(commandMessage, epoch);
+        return SSMPRequest.ucast(SSMPIdentifiers.getCMDUser(did),
+                Base64.getEncoder().encodeToString(command.toByteArray()));
+    }
+
+    /**
+     * Commands are enqueued by chunks of devices, each chunk in a single redis transaction. The
+     * SSMP messages of a chunk are sent asynchronously as soon as the transaction is committed,
+     * with a bound on the number of outstanding requests.
+     */
+    private Map<DID, Delivery> deliver(Collection<DID> dids, String commandMessage,
+            boolean flushFirst) throws InterruptedException
+    {
+        Preconditions.checkState(_ssmp != null);
+
+        Collection<DID> targets = new LinkedHashSet<>(dids);
+        Map<DID, Delivery> results = new ConcurrentHashMap<>(targets.size());
+        SSMPPipeline pipeline = new SSMPPipeline(_ssmp);
+
+        for (List<DID> chunk : Iterables.partition(targets, MAX_DEVICES_PER_TRANSACTION)) {
+            List<Epoch> epochs = Lists.newArrayListWithCapacity(chunk.size());
+
+            _jedisTrans.begin();
+            try {
+                for (DID did : chunk) {
+                    if (flushFirst) _commandQueue.delete(did);
+                    epochs.add(_commandQueue.enqueue(did, commandMessage));
+                }
+                _jedisTrans.commit();
+            } catch (RuntimeException e) {
+                l.warn("failed to enqueue commands for {} devices", chunk.size(), e);
+                for (DID did : chunk) results.put(did, new Delivery(-1, e));
+                continue;
+            } finally {
+                // cleanup is idempotent and results in the same state as commit
+                _jedisTrans.cleanUp();
+            }
+
+            for (int i = 0; i < chunk.size(); ++i) {
+                DID did = chunk.get(i);
+                long epoch = epochs.get(i).get();
+
+                pipeline.send(newRequest(did, commandMessage, epoch), f -> {
+                    Throwable error = null;
+                    try {
+                        f.get();
+                    } catch (ExecutionException e) {
+                        error = e.getCause();
+                    } catch (Throwable t) {
+                        error = t;
+                    }
+                    results.put(did, new Delivery(epoch, error));
+                });
+            }
+        }
+
+        pipeline.await();
+
+        ImmutableMap.Builder<DID, Delivery> bd = ImmutableMap.builder();
+        for (DID did : targets) bd.put(did, results.get(did));
+        return bd.build();
     }
 }
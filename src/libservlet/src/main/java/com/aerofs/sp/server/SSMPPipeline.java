@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.sp.server;
+
+import com.aerofs.ssmp.SSMPConnection;
+import com.aerofs.ssmp.SSMPRequest;
+import com.aerofs.ssmp.SSMPResponse;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Send SSMP requests without waiting for each response, with a bound on the number of
+ * outstanding requests, for notifications fanned out to many users or devices.
+ *
+ * Not thread-safe: requests are sent and awaited by a single thread.
+ */
+class SSMPPipeline
+{
+    // number of SSMP requests awaiting a response
+    static final int MAX_PENDING_REQUESTS = 64;
+
+    private final SSMPConnection _ssmp;
+    private final Semaphore _pending = new Semaphore(MAX_PENDING_REQUESTS);
+
+    SSMPPipeline(SSMPConnection ssmp)
+    {
+        _ssmp = ssmp;
+    }
+
+    /**
+     * Send a request once fewer than MAX_PENDING_REQUESTS are outstanding
+     *
+     * @param onResponse invoked with the completed response future, from an SSMP thread or from
+     * the calling thread if the request could not be sent
+     */
+    void send(SSMPRequest request, Consumer<ListenableFuture<SSMPResponse>> onResponse)
+            throws InterruptedException
+    {
+        _pending.acquire();
+        ListenableFuture<SSMPResponse> f;
+        try {
+            f = _ssmp.request(request);
+        } catch (RuntimeException e) {
+            f = Futures.immediateFailedFuture(e);
+        }
+        ListenableFuture<SSMPResponse> response = f;
+        response.addListener(() -> {
+            try {
+                onResponse.accept(response);
+            } finally {
+                _pending.release();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Wait until all the requests sent have been answered and their callbacks invoked
+     */
+    void await() throws InterruptedException
+    {
+        _pending.acquire(MAX_PENDING_REQUESTS);
+        _pending.release(MAX_PENDING_REQUESTS);
+    }
+}
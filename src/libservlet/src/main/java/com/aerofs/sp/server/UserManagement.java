@@ -19,6 +19,7 @@ import java.sql.SQLException;
 import java.util.Collection;
 
 import static com.aerofs.sp.server.CommandUtil.createCommandMessage;
+import static java.util.stream.Collectors.toList;
 
 /**
  * TODO: This is poor cohesion, a procedural class that exists only to avoid duplication btwn sp
@@ -43,9 +44,9 @@ public class UserManagement
         if (!revokedSerials.isEmpty()) {
             l.info("command lipwig, #serials: " + revokedSerials.size());
             // TODO: make all services honor CRLs (nginx, havre, lipwig, ...)
-            for (Device peer : peerDevices) {
-                dispatcher.enqueueCommand(peer.id(), createCommandMessage(CommandType.REFRESH_CRL));
-            }
+            CommandDispatcher.checkDelivered(dispatcher.enqueueCommands(
+                    peerDevices.stream().map(Device::id).collect(toList()),
+                    createCommandMessage(CommandType.REFRESH_CRL)));
         }
     }
 
@@ -117,11 +118,10 @@ public class UserManagement
         // -- IMPORTANT: no DB writes beyond this point (allegedly) --
 
         // if the user _had_ any certified devices, unlink them:
-        for (Device device : ownDevices) {
-            dispatcher.replaceQueue(
-                    device.id(), createCommandMessage(
-                            eraseDevices ? CommandType.UNLINK_AND_WIPE_SELF : CommandType.UNLINK_SELF));
-        }
+        CommandDispatcher.checkDelivered(dispatcher.replaceQueues(
+                ownDevices.stream().map(Device::id).collect(toList()),
+                createCommandMessage(
+                        eraseDevices ? CommandType.UNLINK_AND_WIPE_SELF : CommandType.UNLINK_SELF)));
 
         propagateDeviceUnlink(dispatcher, peerDevices, revokedSerials);
 
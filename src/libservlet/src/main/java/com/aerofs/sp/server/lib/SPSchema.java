@@ -17,6 +17,8 @@ public final class SPSchema
             C_USER_AUTHORIZATION_LEVEL      = "u_auth_level",
             C_USER_CREDS                    = "u_hashed_passwd",
             C_USER_ACL_EPOCH                = "u_acl_epoch",
+            // lowest ACL epoch from which incremental ACL updates are available
+            C_USER_ACL_DELTA_EPOCH          = "u_acl_delta_epoch",
             C_USER_DEACTIVATED              = "u_deactivated",
             C_USER_WHITELISTED              = "u_whitelisted",
             C_USER_BYTES_USED               = "u_bytes_used",
@@ -83,6 +85,13 @@ public final class SPSchema
             C_AC_EXTERNAL                   = "a_external",
             C_AC_GID                        = "a_gid",
 
+            // per-user ACL epoch at which the ACL of a store last changed, null until the
+            // epoch is bumped
+            T_ACH                           = "sp_acl_change",
+            C_ACH_USER_ID                   = "ach_user_id",
+            C_ACH_STORE_ID                  = "ach_sid",
+            C_ACH_EPOCH                     = "ach_epoch",
+
             T_SF                            = "sp_shared_folder",
             C_SF_ID                         = "sf_id",
             C_SF_PUBLIC_NAME                = "sf_public_name",
@@ -25,6 +25,7 @@ import com.aerofs.sp.server.lib.group.Group;
 import com.aerofs.sp.server.lib.group.GroupSharesDatabase;
 import com.aerofs.sp.server.lib.group.GroupSharesDatabase.GroupIDAndRole;
 import com.aerofs.sp.server.lib.organization.Organization;
+import com.aerofs.sp.server.lib.sf.SharedFolderDatabase.StoreACL;
 import com.aerofs.sp.server.lib.sf.SharedFolderDatabase.UserIDRoleAndState;
 import com.aerofs.sp.server.lib.user.User;
 import com.google.common.collect.*;
@@ -96,6 +97,24 @@ public class SharedFolder
             }
             return create(s);
         }
+
+        /**
+         * See {@link SharedFolderDatabase#getJoinedACLs}
+         */
+        public ImmutableMap<SID, StoreACL> getJoinedACLs(UserID user, @Nullable Long since)
+                throws SQLException
+        {
+            return _db.getJoinedACLs(user, since);
+        }
+
+        /**
+         * See {@link SharedFolderDatabase#getLeftStores}
+         */
+        public ImmutableSet<SID> getLeftStores(UserID user, long since)
+                throws SQLException
+        {
+            return _db.getLeftStores(user, since);
+        }
     }
 
     private final Factory _f;
@@ -20,16 +20,20 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableCollection.Builder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import java.sql.*;
+import java.util.Map;
 
 import static com.aerofs.base.id.GroupID.NULL_GROUP;
 import static com.aerofs.lib.db.DBUtil.*;
 import static com.aerofs.sp.server.lib.SPSchema.*;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 /**
@@ -107,6 +111,8 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
                 throw e;
             }
         }
+
+        aclChanged(sid);
     }
 
     public void setState(SID sid, UserID userId, SharedFolderState state)
@@ -121,6 +127,8 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
 
             if (ps.executeUpdate() == 0) throw new ExNotFound();
         }
+
+        aclChanged(sid);
     }
 
     // see docs/design/sharing_and_migration.txt for information about the external flag
@@ -136,6 +144,8 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
 
             if (ps.executeUpdate() == 0) throw new ExNotFound();
         }
+
+        aclChanged(sid);
     }
 
     // see docs/design/sharing_and_migration.txt for information about the external flag
@@ -372,6 +382,9 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
     public void delete(SID sid, UserID userID, GroupID gid)
             throws ExNotFound, SQLException
     {
+        // before the deletion, for the deleted user to be notified
+        aclChanged(sid);
+
         try (PreparedStatement ps = prepareStatement(deleteWhere(T_AC,
                 C_AC_STORE_ID + "=? and " + C_AC_USER_ID + "=? and " + C_AC_GID + " =?"))) {
 
@@ -415,6 +428,8 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
 
             if (ps.executeUpdate() != 1) throw new ExNotFound();
         }
+
+        aclChanged(sid);
     }
 
     public void setPermissionsForGroup(SID sid, GroupID gid, Permissions permissions)
@@ -430,6 +445,8 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
 
             ps.executeUpdate();
         }
+
+        aclChanged(sid);
     }
 
     public void grantPermission(SID sid, UserID userID, Permission permission)
@@ -447,6 +464,8 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
 
             if (ps.executeUpdate() != 1) throw new ExNotFound();
         }
+
+        aclChanged(sid);
     }
 
     // N.B. this method revokes permissions for a user across all their ACLs, including groups
@@ -464,11 +483,15 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
 
             if (ps.executeUpdate() == 0) throw new ExNotFound();
         }
+
+        aclChanged(sid);
     }
 
     public void destroy(SID sid)
             throws SQLException
     {
+        aclChanged(sid);
+
         // remove all ACLs
         try (PreparedStatement ps = prepareStatement(DBUtil.deleteWhere(T_AC, C_AC_STORE_ID + "=?"))) {
             ps.setBytes(1, sid.getBytes());
@@ -511,6 +534,8 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
             int result = ps.executeUpdate();
             Util.verify(insertedOrUpdatedOneRow(result));
         }
+
+        aclChanged(sid, userID);
     }
 
     public void setPublicName(SID sid, String name)
@@ -525,6 +550,164 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
             int result = ps.executeUpdate();
             checkState(insertedOrUpdatedOneRow(result));
         }
+
+        aclChanged(sid);
+    }
+
+    /**
+     * Record that the ACL of the given store changed for all its members. The epoch of the change
+     * is assigned when the ACL epoch of each member is bumped, see
+     * {@link com.aerofs.sp.server.lib.user.UserDatabase#incrementACLEpoch}
+     */
+    private void aclChanged(SID sid)
+            throws SQLException
+    {
+        try (PreparedStatement ps = prepareStatement("insert into " + T_ACH + " (" +
+                C_ACH_USER_ID + "," + C_ACH_STORE_ID + "," + C_ACH_EPOCH + ")" +
+                " select distinct " + C_AC_USER_ID + "," + C_AC_STORE_ID + ",null from " + T_AC +
+                " where " + C_AC_STORE_ID + "=?" +
+                " on duplicate key update " + C_ACH_EPOCH + "=null")) {
+
+            ps.setBytes(1, sid.getBytes());
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Record that the ACL of the given store changed for the given user only
+     */
+    private void aclChanged(SID sid, UserID userID)
+            throws SQLException
+    {
+        try (PreparedStatement ps = prepareStatement(insertOnDuplicateUpdate(T_ACH,
+                C_ACH_EPOCH + "=null", C_ACH_USER_ID, C_ACH_STORE_ID, C_ACH_EPOCH))) {
+
+            ps.setString(1, userID.getString());
+            ps.setBytes(2, sid.getBytes());
+            ps.setNull(3, Types.BIGINT);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * @return subquery selecting the stores joined by a user, restricted to the stores whose ACL
+     * changed after a given epoch if {@code since} is not null. See setJoinedStoresParams
+     */
+    private static String joinedStores(@Nullable Long since)
+    {
+        String joined = "select " + C_AC_STORE_ID + " from " + T_AC + " where " +
+                C_AC_USER_ID + "=? and " + C_AC_STATE + "=" + SharedFolderState.JOINED.ordinal();
+        return since == null ? joined : joined + " and " + C_AC_STORE_ID + " in (" +
+                changedStores() + ")";
+    }
+
+    private static int setJoinedStoresParams(PreparedStatement ps, int idx, UserID userID,
+            @Nullable Long since)
+            throws SQLException
+    {
+        ps.setString(idx++, userID.getString());
+        if (since != null) idx = setChangedStoresParams(ps, idx, userID, since);
+        return idx;
+    }
+
+    private static String changedStores()
+    {
+        return "select " + C_ACH_STORE_ID + " from " + T_ACH + " where " + C_ACH_USER_ID + "=?" +
+                " and (" + C_ACH_EPOCH + " is null or " + C_ACH_EPOCH + ">?)";
+    }
+
+    private static int setChangedStoresParams(PreparedStatement ps, int idx, UserID userID,
+            long since)
+            throws SQLException
+    {
+        ps.setString(idx++, userID.getString());
+        ps.setLong(idx++, since);
+        return idx;
+    }
+
+    /**
+     * Batch version of getName, isExternal and getJoinedUsersAndRoles for all the stores joined
+     * by a given user. The whole ACL is loaded in two queries regardless of the number of stores.
+     *
+     * @param since if not null, only return the stores whose ACL changed after this epoch
+     * @return the ACL of each store, as seen by the given user
+     */
+    public ImmutableMap<SID, StoreACL> getJoinedACLs(UserID userID, @Nullable Long since)
+            throws SQLException
+    {
+        Map<SID, StoreACL.Builder> acls = Maps.newLinkedHashMap();
+
+        try (PreparedStatement ps = prepareStatement(selectWhere(T_AC,
+                C_AC_STATE + "=" + SharedFolderState.JOINED.ordinal() +
+                " and " + C_AC_STORE_ID + " in (" + joinedStores(since) + ")" +
+                " group by " + C_AC_STORE_ID + "," + C_AC_USER_ID +
+                " order by " + C_AC_STORE_ID,
+                C_AC_STORE_ID, C_AC_USER_ID, effectiveRole(), "MAX(" + C_AC_EXTERNAL + ")"))) {
+
+            setJoinedStoresParams(ps, 1, userID, since);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    SID sid = new SID(rs.getBytes(1));
+                    StoreACL.Builder acl = acls.get(sid);
+                    if (acl == null) {
+                        acl = new StoreACL.Builder();
+                        acls.put(sid, acl);
+                    }
+                    UserID member = UserID.fromInternal(rs.getString(2));
+                    boolean external = rs.getBoolean(4);
+                    acl._roles.put(member, Permissions.fromBitmask(rs.getInt(3)));
+                    if (external) acl._externalMembers.add(member);
+                    if (member.equals(userID)) acl._external = external;
+                }
+            }
+        }
+
+        if (acls.isEmpty()) return ImmutableMap.of();
+
+        // user-specified name if any, public name otherwise
+        try (PreparedStatement ps = prepareStatement("select " + C_SF_ID + ",coalesce(" +
+                C_SFN_NAME + "," + C_SF_PUBLIC_NAME + ") from " + T_SF + " left join " + T_SFN +
+                " on " + C_SFN_STORE_ID + "=" + C_SF_ID + " and " + C_SFN_USER_ID + "=?" +
+                " where " + C_SF_ID + " in (" + joinedStores(since) + ")")) {
+
+            ps.setString(1, userID.getString());
+            setJoinedStoresParams(ps, 2, userID, since);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    StoreACL.Builder acl = acls.get(new SID(rs.getBytes(1)));
+                    if (acl != null) acl._name = rs.getString(2);
+                }
+            }
+        }
+
+        ImmutableMap.Builder<SID, StoreACL> bd = ImmutableMap.builder();
+        for (Map.Entry<SID, StoreACL.Builder> e : acls.entrySet()) {
+            bd.put(e.getKey(), e.getValue().build());
+        }
+        return bd.build();
+    }
+
+    /**
+     * @return the stores whose ACL changed after the given epoch and that the given user no longer
+     * has joined
+     */
+    public ImmutableSet<SID> getLeftStores(UserID userID, long since)
+            throws SQLException
+    {
+        try (PreparedStatement ps = prepareStatement(changedStores() + " and " + C_ACH_STORE_ID +
+                " not in (" + joinedStores(null) + ")")) {
+
+            int idx = setChangedStoresParams(ps, 1, userID, since);
+            setJoinedStoresParams(ps, idx, userID, null);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                ImmutableSet.Builder<SID> sids = ImmutableSet.builder();
+                while (rs.next()) sids.add(new SID(rs.getBytes(1)));
+                return sids.build();
+            }
+        }
     }
 
     /**
@@ -567,6 +750,40 @@ public class SharedFolderDatabase extends AbstractSQLDatabase
         return "BIT_OR(" + C_AC_ROLE + ")";
     }
 
+    // the only purpose of this class is to carry data from getJoinedACLs()
+    public static class StoreACL
+    {
+        @Nonnull public final String _name;
+        // See docs/design/sharing_and_migration.md for information about this flag.
+        public final boolean _external;
+        @Nonnull public final ImmutableMap<UserID, Permissions> _roles;
+        @Nonnull public final ImmutableSet<UserID> _externalMembers;
+
+        private StoreACL(@Nonnull String name, boolean external,
+                @Nonnull ImmutableMap<UserID, Permissions> roles,
+                @Nonnull ImmutableSet<UserID> externalMembers)
+        {
+            _name = name;
+            _external = external;
+            _roles = roles;
+            _externalMembers = externalMembers;
+        }
+
+        private static class Builder
+        {
+            String _name;
+            boolean _external;
+            final ImmutableMap.Builder<UserID, Permissions> _roles = ImmutableMap.builder();
+            final ImmutableSet.Builder<UserID> _externalMembers = ImmutableSet.builder();
+
+            StoreACL build()
+            {
+                return new StoreACL(checkNotNull(_name), _external, _roles.build(),
+                        _externalMembers.build());
+            }
+        }
+    }
+
     // the only purpose of this class is to carry data from getAllUsersRolesAndStates()
     public static class UserIDRoleAndState
     {
@@ -22,6 +22,7 @@ import com.aerofs.base.BaseSecUtil;
 import com.aerofs.base.BaseUtil;
 import com.aerofs.base.Loggers;
 import com.aerofs.base.ParamFactory;
+import com.aerofs.base.acl.Permissions;
 import com.aerofs.base.ex.ExAlreadyExist;
 import com.aerofs.base.ex.ExBadArgs;
 import com.aerofs.base.ex.ExBadCredential;
@@ -63,6 +64,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -141,6 +143,16 @@ public class User
             }
         }
 
+        /**
+         * Batch version of {@link User#incrementACLEpoch}
+         * @return the new epoch of each user
+         */
+        public ImmutableMap<UserID, Long> incrementACLEpochs(Collection<UserID> users)
+                throws SQLException
+        {
+            return _udb.incrementACLEpochs(users);
+        }
+
         /**
          * This method should be called by Organization.save() only
          */
@@ -678,6 +690,12 @@ public class User
         return getFoldersFromSIDs(sids);
     }
 
+    public ImmutableMap<SID, Permissions> getJoinedFolderPermissions()
+            throws SQLException
+    {
+        return _f._udb.getJoinedFolderPermissions(_id);
+    }
+
     public int countJoinedSharedFolders()
             throws SQLException
     {
@@ -752,6 +770,14 @@ public class User
         return _f._udb.incrementACLEpoch(_id);
     }
 
+    /**
+     * @return the lowest epoch from which incremental ACL updates are available
+     */
+    public long getACLDeltaEpoch() throws SQLException
+    {
+        return _f._udb.getACLDeltaEpoch(_id);
+    }
+
     /**
      * Generate a signup invitation code and add it to the database.
      * @return the signup code
@@ -8,10 +8,13 @@ import static com.aerofs.lib.db.DBUtil.binaryCount;
 import static com.aerofs.lib.db.DBUtil.selectDistinctWhere;
 import static com.aerofs.lib.db.DBUtil.selectWhere;
 import static com.aerofs.lib.db.DBUtil.updateWhere;
+import static com.aerofs.sp.server.lib.SPSchema.C_AC_ROLE;
 import static com.aerofs.sp.server.lib.SPSchema.C_AC_SHARER;
 import static com.aerofs.sp.server.lib.SPSchema.C_AC_STATE;
 import static com.aerofs.sp.server.lib.SPSchema.C_AC_STORE_ID;
 import static com.aerofs.sp.server.lib.SPSchema.C_AC_USER_ID;
+import static com.aerofs.sp.server.lib.SPSchema.C_ACH_EPOCH;
+import static com.aerofs.sp.server.lib.SPSchema.C_ACH_USER_ID;
 import static com.aerofs.sp.server.lib.SPSchema.C_DEVICE_ID;
 import static com.aerofs.sp.server.lib.SPSchema.C_DEVICE_OWNER_ID;
 import static com.aerofs.sp.server.lib.SPSchema.C_DEVICE_UNLINKED;
@@ -21,6 +24,7 @@ import static com.aerofs.sp.server.lib.SPSchema.C_SF_PUBLIC_NAME;
 import static com.aerofs.sp.server.lib.SPSchema.C_SIGNUP_CODE_CODE;
 import static com.aerofs.sp.server.lib.SPSchema.C_SIGNUP_CODE_TO;
 import static com.aerofs.sp.server.lib.SPSchema.C_SIGNUP_CODE_TS;
+import static com.aerofs.sp.server.lib.SPSchema.C_USER_ACL_DELTA_EPOCH;
 import static com.aerofs.sp.server.lib.SPSchema.C_USER_ACL_EPOCH;
 import static com.aerofs.sp.server.lib.SPSchema.C_USER_AUTHORIZATION_LEVEL;
 import static com.aerofs.sp.server.lib.SPSchema.C_USER_BYTES_USED;
@@ -36,6 +40,7 @@ import static com.aerofs.sp.server.lib.SPSchema.C_USER_TWO_FACTOR_ENFORCED;
 import static com.aerofs.sp.server.lib.SPSchema.C_USER_USAGE_WARNING_SENT;
 import static com.aerofs.sp.server.lib.SPSchema.C_USER_WHITELISTED;
 import static com.aerofs.sp.server.lib.SPSchema.T_AC;
+import static com.aerofs.sp.server.lib.SPSchema.T_ACH;
 import static com.aerofs.sp.server.lib.SPSchema.T_DEVICE;
 import static com.aerofs.sp.server.lib.SPSchema.T_OI;
 import static com.aerofs.sp.server.lib.SPSchema.T_SF;
@@ -66,6 +71,7 @@ import org.slf4j.Logger;
 
 import com.aerofs.base.Base64;
 import com.aerofs.base.Loggers;
+import com.aerofs.base.acl.Permissions;
 import com.aerofs.base.ex.ExAlreadyExist;
 import com.aerofs.base.ex.ExNotFound;
 import com.aerofs.base.id.OrganizationID;
@@ -80,7 +86,11 @@ import com.aerofs.lib.db.DBUtil;
 import com.aerofs.servlets.lib.db.IDatabaseConnectionProvider;
 import com.aerofs.servlets.lib.db.sql.AbstractSQLDatabase;
 import com.aerofs.sp.common.SharedFolderState;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 /**
@@ -90,6 +100,9 @@ public class UserDatabase extends AbstractSQLDatabase
 {
     private static final Logger l = Loggers.getLogger(UserDatabase.class);
 
+    // number of users whose ACL epoch is bumped by a single statement
+    private static final int MAX_USERS_PER_STATEMENT = 1000;
+
     @Inject
     public UserDatabase(IDatabaseConnectionProvider<Connection> provider) 
     {
@@ -147,12 +160,13 @@ public class UserDatabase extends AbstractSQLDatabase
 
         // we always create a user with initial epoch + 1 to ensure that the first time
         // a device is created it gets any acl updates that were made while the user
-        // didn't have an entry in the user table
+        // didn't have an entry in the user table. For the same reason, incremental ACL updates
+        // are only available from that epoch.
 
         try (PreparedStatement ps = prepareStatement(
                 DBUtil.insert(T_USER, C_USER_ID, C_USER_CREDS, C_USER_FIRST_NAME,
                         C_USER_LAST_NAME, C_USER_ORG_ID, C_USER_AUTHORIZATION_LEVEL,
-                        C_USER_ACL_EPOCH, C_USER_DEACTIVATED))) {
+                        C_USER_ACL_EPOCH, C_USER_ACL_DELTA_EPOCH, C_USER_DEACTIVATED))) {
 
             ps.setString(1, id.getString());
             ps.setString(2, Base64.encodeBytes(shaedSP));
@@ -162,7 +176,9 @@ public class UserDatabase extends AbstractSQLDatabase
             ps.setInt(6, level.ordinal());
             //noinspection PointlessArithmeticExpression
             ps.setInt(7, LibParam.INITIAL_ACL_EPOCH + 1);
-            ps.setBoolean(8, false);
+            //noinspection PointlessArithmeticExpression
+            ps.setInt(8, LibParam.INITIAL_ACL_EPOCH + 1);
+            ps.setBoolean(9, false);
 
             try {
                 ps.executeUpdate();
@@ -191,9 +207,10 @@ public class UserDatabase extends AbstractSQLDatabase
     {
         try (PreparedStatement ps = prepareStatement(DBUtil.updateWhere(T_USER, C_USER_ID + "=?",
                 C_USER_CREDS, C_USER_FIRST_NAME, C_USER_LAST_NAME, C_USER_ORG_ID,
-                C_USER_AUTHORIZATION_LEVEL, C_USER_ACL_EPOCH, C_USER_DEACTIVATED))) {
+                C_USER_AUTHORIZATION_LEVEL, C_USER_ACL_EPOCH, C_USER_ACL_DELTA_EPOCH,
+                C_USER_DEACTIVATED))) {
 
-            ps.setString(8, id.getString());
+            ps.setString(9, id.getString());
             ps.setString(1, Base64.encodeBytes(shaedSP));
             ps.setString(2, fullName._first);
             ps.setString(3, fullName._last);
@@ -201,10 +218,19 @@ public class UserDatabase extends AbstractSQLDatabase
             ps.setInt(5, level.ordinal());
             //noinspection PointlessArithmeticExpression
             ps.setInt(6, LibParam.INITIAL_ACL_EPOCH + 1);
-            ps.setBoolean(7, false);
+            //noinspection PointlessArithmeticExpression
+            ps.setInt(7, LibParam.INITIAL_ACL_EPOCH + 1);
+            ps.setBoolean(8, false);
 
             Util.verify(ps.executeUpdate() == 1);
         }
+
+        // the epoch was reset, previous ACL changes are meaningless
+        try (PreparedStatement ps = prepareStatement(
+                DBUtil.deleteWhereEquals(T_ACH, C_ACH_USER_ID))) {
+            ps.setString(1, id.getString());
+            ps.executeUpdate();
+        }
     }
 
     public boolean hasUser(UserID userId) throws SQLException 
@@ -516,6 +542,29 @@ public class UserDatabase extends AbstractSQLDatabase
 
     }
 
+    /**
+     * @return the effective permissions of the user in each of the folders it joined
+     */
+    public ImmutableMap<SID, Permissions> getJoinedFolderPermissions(UserID userId)
+            throws SQLException
+    {
+        try (PreparedStatement ps = prepareStatement(selectWhere(T_AC,
+                C_AC_USER_ID + "=? and " + C_AC_STATE + "=? group by " + C_AC_STORE_ID,
+                C_AC_STORE_ID, "BIT_OR(" + C_AC_ROLE + ")"))) {
+
+            ps.setString(1, userId.getString());
+            ps.setInt(2, SharedFolderState.JOINED.ordinal());
+
+            try (ResultSet rs = ps.executeQuery()) {
+                ImmutableMap.Builder<SID, Permissions> builder = ImmutableMap.builder();
+                while (rs.next()) {
+                    builder.put(new SID(rs.getBytes(1)), Permissions.fromBitmask(rs.getInt(2)));
+                }
+                return builder.build();
+            }
+        }
+    }
+
     public int countJoinedSharedFolders(UserID userId)
             throws SQLException
     {
@@ -736,8 +785,88 @@ public class UserDatabase extends AbstractSQLDatabase
             int rows = ps.executeUpdate();
 
             assert rows == 1 : user + " " + rows;
+        }
+
+        long epoch = getACLEpoch(user);
+
+        // assign the new epoch to the ACL changes made since the previous bump
+        try (PreparedStatement ps = prepareStatement(updateWhere(T_ACH,
+                C_ACH_USER_ID + "=? and " + C_ACH_EPOCH + " is null", C_ACH_EPOCH))) {
 
-            return getACLEpoch(user);
+            ps.setLong(1, epoch);
+            ps.setString(2, user.getString());
+            ps.executeUpdate();
+        }
+
+        return epoch;
+    }
+
+    /**
+     * Batch version of incrementACLEpoch. The epochs are bumped with a few statements per chunk of
+     * users instead of a few statements per user.
+     *
+     * @return the new epoch of each user
+     */
+    public ImmutableMap<UserID, Long> incrementACLEpochs(Collection<UserID> users)
+            throws SQLException
+    {
+        ImmutableMap.Builder<UserID, Long> epochs = ImmutableMap.builder();
+        for (List<UserID> chunk : Iterables.partition(ImmutableSet.copyOf(users),
+                MAX_USERS_PER_STATEMENT)) {
+            String in = C_USER_ID + " in (" + placeholders(chunk.size()) + ")";
+
+            try (PreparedStatement ps = prepareStatement("update " + T_USER +
+                    " set " + C_USER_ACL_EPOCH + "=" + C_USER_ACL_EPOCH + "+1 where " + in)) {
+
+                setUserIDs(ps, 1, chunk);
+                int rows = ps.executeUpdate();
+
+                assert rows == chunk.size() : chunk.size() + " " + rows;
+            }
+
+            // assign the new epochs to the ACL changes made since the previous bump
+            try (PreparedStatement ps = prepareStatement("update " + T_ACH + "," + T_USER +
+                    " set " + C_ACH_EPOCH + "=" + C_USER_ACL_EPOCH +
+                    " where " + C_ACH_USER_ID + "=" + C_USER_ID +
+                    " and " + C_ACH_EPOCH + " is null and " + in)) {
+
+                setUserIDs(ps, 1, chunk);
+                ps.executeUpdate();
+            }
+
+            try (PreparedStatement ps = prepareStatement(selectWhere(T_USER, in,
+                    C_USER_ID, C_USER_ACL_EPOCH))) {
+
+                setUserIDs(ps, 1, chunk);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        epochs.put(UserID.fromInternal(rs.getString(1)), rs.getLong(2));
+                    }
+                }
+            }
+        }
+        return epochs.build();
+    }
+
+    private static String placeholders(int n)
+    {
+        return Joiner.on(',').join(Collections.nCopies(n, "?"));
+    }
+
+    private static void setUserIDs(PreparedStatement ps, int idx, List<UserID> users)
+            throws SQLException
+    {
+        for (UserID user : users) ps.setString(idx++, user.getString());
+    }
+
+    /**
+     * @return the lowest epoch from which the ACL changes of the given user are fully recorded
+     */
+    public long getACLDeltaEpoch(UserID user) throws SQLException
+    {
+        try (PreparedStatement ps = prepareStatement(selectWhere(T_USER, C_USER_ID + "=?",
+                C_USER_ACL_DELTA_EPOCH))) {
+            return queryGetACLEpoch(ps, user);
         }
     }
 
@@ -15,6 +15,7 @@ import org.junit.Test;
 import static com.aerofs.servlets.lib.db.jedis.JedisEpochCommandQueue.*;
 import static com.aerofs.sp.server.CommandUtil.createCommandMessage;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class TestJedisEpochCommandQueue extends AbstractJedisTest
 {
@@ -23,6 +24,7 @@ public class TestJedisEpochCommandQueue extends AbstractJedisTest
     private JedisEpochCommandQueue _queue = new JedisEpochCommandQueue(getTransaction(), timeSource);
 
     private final DID _d1 = new DID(UniqueID.generate());
+    private final DID _d2 = new DID(UniqueID.generate());
 
     private final CommandType _ct1 = CommandType.INVALIDATE_DEVICE_NAME_CACHE;
     private final String _c1 = createCommandMessage(_ct1);
@@ -102,14 +104,23 @@ public class TestJedisEpochCommandQueue extends AbstractJedisTest
         return head;
     }
 
-    private DeletedElementCount deleteType(CommandType type)
+    private void enqueue(DID did, String commandMessage, long time)
     {
+        when(timeSource.getTime()).thenReturn(time);
         getTransaction().begin();
-        // max_attempt := -1 => delete commands regardless of # of attempts
-        DeletedElementCount deleted = _queue.delete(-1, 1L, type);
+        _queue.enqueue(did, commandMessage);
         getTransaction().commit();
+    }
 
-        return deleted;
+    private DeletedElementCountList deleteBefore(long earliestDate)
+    {
+        return _queue.delete(-1, earliestDate);
+    }
+
+    private DeletedElementCount deleteType(CommandType type)
+    {
+        // max_attempt := -1 => delete commands regardless of # of attempts
+        return _queue.delete(-1, 1L, type);
     }
 
     //
@@ -177,9 +188,7 @@ public class TestJedisEpochCommandQueue extends AbstractJedisTest
         retryLater(_d1);
         retryLater(_d1);
 
-        getTransaction().begin();
         DeletedElementCount count = _queue.delete(1, 1L, _ct1);
-        getTransaction().commit();
 
         expectD1Empty();
         Assert.assertEquals(1L, count.getCount());
@@ -193,9 +202,7 @@ public class TestJedisEpochCommandQueue extends AbstractJedisTest
         retryLater(_d1);
         retryLater(_d1);
 
-        getTransaction().begin();
         DeletedElementCountList countList = _queue.delete(1, 1L);
-        getTransaction().commit();
 
         expectD1Empty();
         Assert.assertEquals(1L, countList.getCount());
@@ -213,9 +220,7 @@ public class TestJedisEpochCommandQueue extends AbstractJedisTest
         retryLater(_d1); // c1 attempt #4
         retryLater(_d1); // c2 attempt #2
 
-        getTransaction().begin();
         DeletedElementCountList countList = _queue.delete(1, 1L); // all attempted more than once.
-        getTransaction().commit();
 
         expectD1Empty();
         Assert.assertEquals(2L, countList.getCount());
@@ -257,4 +262,104 @@ public class TestJedisEpochCommandQueue extends AbstractJedisTest
         Assert.assertEquals(1, deleteType(_ct1).getCount());
         expectD1SizeAndHead(1, c2WithArgs);
     }
+
+    @Test
+    public void shouldOnlyDeleteCommandsCreatedBeforeEarliestDate()
+    {
+        enqueue(_d1, _c1, 10);
+        enqueue(_d2, _c1, 20);
+        enqueue(_d1, _c2, 30);
+        enqueue(_d2, _c2, 40);
+        enqueue(_d1, _c1 + ":some_args", 50);
+
+        Assert.assertEquals(4, deleteBefore(50).getCount());
+
+        // only the command created at the earliest date is left
+        expectD1SizeAndHead(1, _c1 + ":some_args");
+        getTransaction().begin();
+        QueueSize size = _queue.size(_d2);
+        getTransaction().commit();
+        Assert.assertEquals(0, size.getSize());
+    }
+
+    @Test
+    public void shouldSkipCommandsNotAttemptedEnough()
+    {
+        enqueue(_d1, _c1, 10);
+        enqueue(_d1, _c2, 20);
+        retryLater(_d1); // c1 attempt #1
+
+        DeletedElementCountList countList = _queue.delete(0, 100);
+
+        Assert.assertEquals(1, countList.getCount());
+        expectD1SizeAndHead(1, _c2);
+    }
+
+    @Test
+    public void shouldNotCountDequeuedCommandsAsDeleted()
+    {
+        enqueue(_d1, _c1, 10);
+        enqueue(_d2, _c1, 10);
+
+        QueueElement head = getHead(_d1);
+
+        getTransaction().begin();
+        SuccessError result = _queue.dequeue(_d1, head.getEpoch());
+        _queue.delete(_d2);
+        getTransaction().commit();
+        Assert.assertTrue(result.success());
+
+        Assert.assertEquals(0, deleteBefore(100).getCount());
+    }
+
+    @Test
+    public void shouldIndexCommandsQueuedBeforeTheIndexOnFirstCleanup() throws Exception
+    {
+        enqueue(_d1, _c1, 10);
+        enqueue(_d2, _c2, 20);
+
+        // as left in redis by versions without the index
+        getTransaction().begin();
+        getTransaction().get().del("jeq:x");
+        getTransaction().commit();
+
+        Assert.assertEquals(1, deleteBefore(15).getCount());
+        expectD1Empty();
+
+        Assert.assertEquals(1, deleteBefore(100).getCount());
+        getTransaction().begin();
+        QueueSize size = _queue.size(_d2);
+        getTransaction().commit();
+        Assert.assertEquals(0, size.getSize());
+    }
+
+    @Test
+    public void shouldDeleteInSlicesAcrossCommandsCreatedAtTheSameTime()
+    {
+        _queue = new JedisEpochCommandQueue(getTransaction(), timeSource, 2);
+        DID[] dids = new DID[5];
+        for (int i = 0; i < dids.length; i++) {
+            dids[i] = DID.generate();
+            enqueue(dids[i], _c1, 10);
+            enqueue(dids[i], _c2, 10);
+            // c1 attempt #1 for every other device
+            if (i % 2 == 0) retryLater(dids[i]);
+        }
+
+        // slices end in the middle of runs of commands kept in the index
+        Assert.assertEquals(3, _queue.delete(0, 100).getCount());
+
+        for (int i = 0; i < dids.length; i++) {
+            getTransaction().begin();
+            QueueElement head = _queue.head(dids[i]);
+            QueueSize size = _queue.size(dids[i]);
+            getTransaction().commit();
+            Assert.assertEquals(i % 2 == 0 ? 1 : 2, size.getSize());
+            if (i % 2 == 0) Assert.assertEquals(_c2, head.getCommandMessage());
+        }
+
+        // the commands kept by the first cleanup are all seen by the next ones
+        Assert.assertEquals(0, _queue.delete(0, 100).getCount());
+        Assert.assertEquals(7, _queue.delete(-1, 100).getCount());
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.sp.server;
+
+import com.aerofs.ssmp.SSMPConnection;
+import com.aerofs.ssmp.SSMPIdentifier;
+import com.aerofs.ssmp.SSMPRequest;
+import com.aerofs.ssmp.SSMPResponse;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Local stand-in for an SSMP server
+ *
+ * Requests are answered after a fixed delay, to mimic the round-trip to lipwig. Requests to
+ * unreachable identifiers fail. The maximum number of outstanding requests is recorded.
+ */
+class SSMPStandIn
+{
+    final SSMPConnection ssmp = mock(SSMPConnection.class);
+    final Set<SSMPIdentifier> unreachable = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService _sched = Executors.newScheduledThreadPool(4);
+    private final AtomicInteger _requests = new AtomicInteger();
+    private final AtomicInteger _pending = new AtomicInteger();
+    private final AtomicInteger _maxPending = new AtomicInteger();
+
+    SSMPStandIn(long latency)
+    {
+        when(ssmp.request(any(SSMPRequest.class))).then(invocation -> {
+            SSMPRequest r = (SSMPRequest)invocation.getArguments()[0];
+            SettableFuture<SSMPResponse> f = SettableFuture.create();
+            _requests.incrementAndGet();
+            _maxPending.accumulateAndGet(_pending.incrementAndGet(), Math::max);
+            _sched.schedule(() -> {
+                _pending.decrementAndGet();
+                if (unreachable.contains(r.to)) {
+                    f.setException(new IllegalStateException("unreachable " + r.to));
+                } else {
+                    f.set(new SSMPResponse(SSMPResponse.OK, null));
+                }
+            }, latency, TimeUnit.MILLISECONDS);
+            return f;
+        });
+    }
+
+    int requests()
+    {
+        return _requests.get();
+    }
+
+    int maxPending()
+    {
+        return _maxPending.get();
+    }
+
+    void reset()
+    {
+        _requests.set(0);
+        _maxPending.set(0);
+    }
+
+    void shutdown()
+    {
+        _sched.shutdown();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.sp.server;
+
+import com.aerofs.ids.UserID;
+import com.aerofs.servlets.lib.db.sql.SQLThreadLocalTransaction;
+import com.aerofs.sp.server.lib.user.User;
+import com.aerofs.ssmp.SSMPIdentifiers;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestACLNotificationPublisher
+{
+    private final SSMPStandIn _ssmp = new SSMPStandIn(1);
+    private final User.Factory _factUser = mock(User.Factory.class);
+    private final SQLThreadLocalTransaction _sqlTrans = mock(SQLThreadLocalTransaction.class);
+    private final ACLNotificationPublisher _publisher =
+            new ACLNotificationPublisher(_factUser, _ssmp.ssmp, _sqlTrans);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        when(_factUser.incrementACLEpochs(anyCollectionOf(UserID.class))).then(invocation -> {
+            @SuppressWarnings("unchecked")
+            Collection<UserID> users = (Collection<UserID>)invocation.getArguments()[0];
+            ImmutableMap.Builder<UserID, Long> epochs = ImmutableMap.builder();
+            for (UserID user : users) epochs.put(user, 42L);
+            return epochs.build();
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        _ssmp.shutdown();
+    }
+
+    private static List<UserID> users(int n)
+    {
+        List<UserID> users = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) users.add(UserID.fromInternal("user" + i + "@aerofs.com"));
+        return users;
+    }
+
+    @Test
+    public void shouldPublishToAllUsers() throws Exception
+    {
+        List<UserID> users = users(SSMPPipeline.MAX_PENDING_REQUESTS * 3 + 5);
+
+        _publisher.publish_(users);
+
+        verify(_factUser).incrementACLEpochs(users);
+        assertEquals(users.size(), _ssmp.requests());
+        assertTrue(_ssmp.maxPending() <= SSMPPipeline.MAX_PENDING_REQUESTS);
+    }
+
+    @Test
+    public void shouldPublishToRemainingUsersAfterFailure() throws Exception
+    {
+        List<UserID> users = users(10);
+        _ssmp.unreachable.add(SSMPIdentifiers.getACLTopic(users.get(2).getString()));
+
+        _publisher.publish_(users);
+
+        assertEquals(users.size(), _ssmp.requests());
+    }
+
+    @Test
+    public void shouldPublishOnCommit() throws Exception
+    {
+        when(_sqlTrans.isInTransaction()).thenReturn(true);
+
+        _publisher.publish_(users(10));
+
+        verify(_sqlTrans).onCommit(any(Runnable.class));
+        assertEquals(0, _ssmp.requests());
+    }
+
+    @Test
+    public void shouldNotBumpEpochsOfEmptyCollection() throws Exception
+    {
+        _publisher.publish_(new ArrayList<>());
+
+        verify(_factUser, never()).incrementACLEpochs(anyCollectionOf(UserID.class));
+    }
+}
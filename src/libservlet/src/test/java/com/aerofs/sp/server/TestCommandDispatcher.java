@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.sp.server;
+
+import com.aerofs.ids.DID;
+import com.aerofs.proto.Cmd.CommandType;
+import com.aerofs.servlets.lib.db.AbstractJedisTest;
+import com.aerofs.servlets.lib.db.jedis.JedisEpochCommandQueue;
+import com.aerofs.servlets.lib.db.jedis.JedisEpochCommandQueue.QueueElement;
+import com.aerofs.servlets.lib.db.jedis.JedisEpochCommandQueue.QueueSize;
+import com.aerofs.sp.server.CommandDispatcher.Delivery;
+import com.aerofs.ssmp.SSMPIdentifiers;
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static com.aerofs.sp.server.CommandUtil.createCommandMessage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestCommandDispatcher extends AbstractJedisTest
+{
+    private final SSMPStandIn _ssmp = new SSMPStandIn(1);
+    private final JedisEpochCommandQueue _queue = new JedisEpochCommandQueue(getTransaction());
+    private final CommandDispatcher _dispatcher =
+            new CommandDispatcher(_queue, getTransaction(), _ssmp.ssmp);
+
+    private final String _c1 = createCommandMessage(CommandType.INVALIDATE_DEVICE_NAME_CACHE);
+    private final String _c2 = createCommandMessage(CommandType.UNLINK_SELF);
+
+    @After
+    public void tearDown()
+    {
+        _ssmp.shutdown();
+    }
+
+    private static List<DID> devices(int n)
+    {
+        List<DID> dids = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) dids.add(DID.generate());
+        return dids;
+    }
+
+    private void expectQueue(DID did, long size, String head, long epoch)
+    {
+        getTransaction().begin();
+        QueueSize s = _queue.size(did);
+        QueueElement e = _queue.head(did);
+        getTransaction().commit();
+
+        assertEquals(size, s.getSize());
+        assertEquals(head, e.getCommandMessage());
+        assertEquals(epoch, e.getEpoch());
+    }
+
+    @Test
+    public void shouldDeliverToAllDevices() throws Exception
+    {
+        // more devices than fit in a single transaction
+        List<DID> dids = devices(CommandDispatcher.MAX_DEVICES_PER_TRANSACTION * 2 + 10);
+
+        Map<DID, Delivery> r = _dispatcher.enqueueCommands(dids, _c1);
+
+        assertEquals(dids, ImmutableList.copyOf(r.keySet()));
+        for (DID did : dids) {
+            assertTrue(r.get(did).succeeded());
+            expectQueue(did, 1, _c1, r.get(did).epoch);
+        }
+        assertEquals(dids.size(), _ssmp.requests());
+        assertTrue(_ssmp.maxPending() <= SSMPPipeline.MAX_PENDING_REQUESTS);
+    }
+
+    @Test
+    public void shouldDeliverOnceToDuplicateDevices() throws Exception
+    {
+        List<DID> dids = devices(3);
+        dids.add(dids.get(0));
+
+        Map<DID, Delivery> r = _dispatcher.enqueueCommands(dids, _c1);
+
+        assertEquals(3, r.size());
+        assertEquals(3, _ssmp.requests());
+        expectQueue(dids.get(0), 1, _c1, 1);
+    }
+
+    @Test
+    public void shouldReplaceQueues() throws Exception
+    {
+        List<DID> dids = devices(10);
+        _dispatcher.enqueueCommands(dids, _c1);
+
+        Map<DID, Delivery> r = _dispatcher.replaceQueues(dids, _c2);
+
+        for (DID did : dids) {
+            assertTrue(r.get(did).succeeded());
+            // the epoch counter is flushed along with the queue
+            expectQueue(did, 1, _c2, 1);
+        }
+    }
+
+    @Test
+    public void shouldReportPerDeviceFailures() throws Exception
+    {
+        List<DID> dids = devices(10);
+        DID offline = dids.get(3);
+        _ssmp.unreachable.add(SSMPIdentifiers.getCMDUser(offline));
+
+        Map<DID, Delivery> r = _dispatcher.enqueueCommands(dids, _c1);
+
+        for (DID did : dids) {
+            assertEquals(did.equals(offline), !r.get(did).succeeded());
+            // the command is queued even if the notification could not be sent
+            expectQueue(did, 1, _c1, r.get(did).epoch);
+        }
+
+        try {
+            CommandDispatcher.checkDelivered(r);
+            fail();
+        } catch (ExecutionException e) {
+            assertFalse(e.getCause().getMessage().isEmpty());
+        }
+    }
+}
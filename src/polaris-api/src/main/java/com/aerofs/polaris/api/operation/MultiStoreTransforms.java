@@ -0,0 +1,76 @@
+package com.aerofs.polaris.api.operation;
+
+import com.aerofs.ids.UniqueID;
+import com.aerofs.polaris.api.types.Transform;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+import javax.annotation.Nullable;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * Interleaved transforms of multiple stores, in logical timestamp order.
+ * <br>
+ * For every accessible store, all the transforms with a logical timestamp
+ * up to {@code maxTransformCount} are included. When {@code truncated} is
+ * set, the stores may have further transforms past that point.
+ */
+public final class MultiStoreTransforms {
+
+    @Min(0)
+    public final long maxTransformCount;
+
+    public final boolean truncated;
+
+    @NotNull
+    @Valid
+    public final List<Transform> transforms;
+
+    // stores that the caller cannot read
+    @NotNull
+    public final List<UniqueID> denied;
+
+    @JsonCreator
+    public MultiStoreTransforms(
+            @JsonProperty("max_transform_count") long maxTransformCount,
+            @JsonProperty("truncated") boolean truncated,
+            @JsonProperty("transforms") List<Transform> transforms,
+            @JsonProperty("denied") List<UniqueID> denied) {
+        this.maxTransformCount = maxTransformCount;
+        this.truncated = truncated;
+        this.transforms = transforms;
+        this.denied = denied;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MultiStoreTransforms other = (MultiStoreTransforms) o;
+        return maxTransformCount == other.maxTransformCount
+                && truncated == other.truncated
+                && Objects.equal(transforms, other.transforms)
+                && Objects.equal(denied, other.denied);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(maxTransformCount, truncated, transforms, denied);
+    }
+
+    @Override
+    public String toString() {
+        return Objects
+                .toStringHelper(this)
+                .add("maxTransformCount", maxTransformCount)
+                .add("truncated", truncated)
+                .add("transforms", transforms)
+                .add("denied", denied)
+                .toString();
+    }
+}
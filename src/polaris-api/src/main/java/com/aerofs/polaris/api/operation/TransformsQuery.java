@@ -0,0 +1,98 @@
+package com.aerofs.polaris.api.operation;
+
+import com.aerofs.ids.UniqueID;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+import javax.annotation.Nullable;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Request for the transforms of multiple stores, each one starting at its own logical timestamp.
+ */
+public final class TransformsQuery {
+
+    public static final class StoreSince {
+
+        @NotNull
+        public final UniqueID store;
+
+        @Min(-1)
+        public final long since;
+
+        @JsonCreator
+        public StoreSince(
+                @JsonProperty("store") UniqueID store,
+                @JsonProperty("since") long since) {
+            this.store = store;
+            this.since = since;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            StoreSince other = (StoreSince) o;
+            return since == other.since && Objects.equal(store, other.store);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(store, since);
+        }
+
+        @Override
+        public String toString() {
+            return Objects
+                    .toStringHelper(this)
+                    .add("store", store)
+                    .add("since", since)
+                    .toString();
+        }
+    }
+
+    @NotNull
+    @Size(min = 1)
+    @Valid
+    public final List<StoreSince> stores;
+
+    @Min(1)
+    public final int count;
+
+    @JsonCreator
+    public TransformsQuery(
+            @JsonProperty("stores") List<StoreSince> stores,
+            @JsonProperty("count") int count) {
+        this.stores = stores;
+        this.count = count;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TransformsQuery other = (TransformsQuery) o;
+        return count == other.count && Objects.equal(stores, other.stores);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(stores, count);
+    }
+
+    @Override
+    public String toString() {
+        return Objects
+                .toStringHelper(this)
+                .add("stores", stores)
+                .add("count", count)
+                .toString();
+    }
+}
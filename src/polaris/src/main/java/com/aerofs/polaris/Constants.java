@@ -2,7 +2,7 @@ package com.aerofs.polaris;
 
 public abstract class Constants {
 
-    public static final int MAX_RETURNED_TRANSFORMS = 100;
+    public static final int MAX_RETURNED_TRANSFORMS = 1000;
 
     public static final String DEPLOYMENT_SECRET_INJECTION_KEY = "DEPLOYMENT_SECRET";
 
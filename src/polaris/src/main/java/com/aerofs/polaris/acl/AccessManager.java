@@ -4,6 +4,7 @@ import com.aerofs.ids.UniqueID;
 import com.aerofs.ids.UserID;
 
 import java.util.Collection;
+import java.util.Set;
 
 /**
  * Implemented by classes that can perform ACL checks whenever:
@@ -32,6 +33,20 @@ public interface AccessManager {
      */
     void checkAccess(UserID user, Collection<UniqueID> stores, Access... requested) throws AccessException;
 
+    /**
+     * Find the stores {@code user} cannot access with the {@code requested} permissions.
+     * <br>
+     * Unlike {@link #checkAccess}, this does not stop at the first denial:
+     * the permissions of the user on all the stores are looked up at once.
+     * Note that this is a <strong>BLOCKING</strong> call.
+     *
+     * @param user user id of the user who wants to access the shared folders
+     * @param stores a collection of the store or shared folder IDs the user wants to access
+     * @param requested one or more permissions the user wants when accessing each store or shared folder
+     * @return the stores for which any of the {@code requested} permissions cannot be granted to the user
+     */
+    Set<UniqueID> getDeniedStores(UserID user, Collection<UniqueID> stores, Access... requested);
+
     // clears any cache the access manager has for this user and store
     void accessChanged(UserID user, UniqueID store);
 }
@@ -6,6 +6,7 @@ import com.aerofs.polaris.Constants;
 import com.aerofs.polaris.acl.Access;
 import com.aerofs.polaris.acl.AccessException;
 import com.aerofs.polaris.acl.AccessManager;
+import com.aerofs.polaris.api.batch.transform.TransformBatchOperation;
 import com.aerofs.polaris.api.operation.*;
 import com.aerofs.polaris.api.types.*;
 import com.aerofs.polaris.dao.Atomic;
@@ -17,6 +18,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import org.skife.jdbi.v2.DBI;
@@ -324,6 +326,70 @@ public final class ObjectStore {
         return returned;
     }
 
+    /**
+     * Get up to {@code maxReturnedResultCount} transforms, in logical timestamp
+     * order, across all the shared folders or root stores in {@code stores}.
+     * <br>
+     * Access is checked once per store. Stores {@code user} cannot read are
+     * reported in the response instead of failing the whole request.
+     *
+     * @param user user id of the user requesting the transforms, null if don't need to check auth
+     * @param stores map of shared folder or root store to the logical timestamp <em>after</em> which to start retrieving its transforms
+     * @param maxReturnedResultCount maximum number of transforms to return across all stores
+     * @return up to {@code maxReturnedResultCount} transforms for the readable stores in {@code stores}
+     */
+    public MultiStoreTransforms getTransforms(@Nullable UserID user, Map<UniqueID, Long> stores, int maxReturnedResultCount) {
+        stores.keySet().forEach(ObjectStore::verifyStore);
+
+        Set<UniqueID> denied = user == null ? Collections.emptySet() : getUnreadableStores(user, stores.keySet());
+        Set<UniqueID> readable = Sets.newHashSet(Sets.difference(stores.keySet(), denied));
+        AccessToken accessToken = new AccessToken(user == null ? UserID.fromInternal("internal service") : user, readable, Access.READ);
+
+        return inTransaction(dao -> {
+            long available = dao.transforms.getLatestLogicalTimestamp();
+
+            // earliest transforms across all stores, latest one at the head
+            PriorityQueue<Transform> earliest = new PriorityQueue<>(maxReturnedResultCount, (t0, t1) -> Long.compare(t1.getLogicalTimestamp(), t0.getLogicalTimestamp()));
+            boolean truncated = false;
+
+            for (UniqueID store : readable) {
+                checkAccessGranted(dao, accessToken, store, Access.READ);
+
+                // one extra transform to detect whether the store has more past the cutoff
+                try (ResultIterator<Transform> iterator = dao.transforms.getTransformsSince(stores.get(store), store, maxReturnedResultCount + 1)) {
+                    while (iterator.hasNext()) {
+                        Transform transform = iterator.next();
+                        if (earliest.size() == maxReturnedResultCount) {
+                            truncated = true;
+                            // transforms are returned in order so the rest of this store can only come later
+                            if (transform.getLogicalTimestamp() > earliest.peek().getLogicalTimestamp()) {
+                                break;
+                            }
+                            earliest.poll();
+                        }
+                        earliest.add(transform);
+                    }
+                }
+            }
+
+            List<Transform> returned = Lists.newArrayList(earliest);
+            returned.sort((t0, t1) -> Long.compare(t0.getLogicalTimestamp(), t1.getLogicalTimestamp()));
+
+            // when truncated, only the transforms up to the last returned one are known to be complete
+            long complete = truncated ? returned.get(returned.size() - 1).getLogicalTimestamp() : available;
+            return new MultiStoreTransforms(complete, truncated, returned, Lists.newArrayList(denied));
+        });
+    }
+
+    private Set<UniqueID> getUnreadableStores(UserID user, Set<UniqueID> stores) {
+        // as in checkAccessForStores, the root store of the user is not checked with the access manager
+        Set<UniqueID> denied = accessManager.getDeniedStores(user, Sets.difference(stores, ImmutableSet.of(SID.rootSID(user))), Access.READ);
+        if (!denied.isEmpty()) {
+            LOGGER.info("{} cannot read {}", user, denied);
+        }
+        return denied;
+    }
+
     public Lock lockObject(UniqueID oid)
     {
         Lock l = new ReentrantLock();
@@ -377,6 +443,184 @@ public final class ObjectStore {
         }
     }
 
+    /**
+     * Receives the outcome of each operation of a batch submitted to {@link #performTransforms}.
+     */
+    public interface BatchCallback {
+
+        void onSuccess(TransformBatchOperation operation, OperationResult result);
+
+        /**
+         * @return true to continue with the remaining operations, false to abort the batch
+         */
+        boolean onFailure(TransformBatchOperation operation, Exception cause);
+    }
+
+    /**
+     * Perform a batch of high-level transformations on behalf of a single device.
+     * <br>
+     * Stores and access are resolved once for the whole batch and runs of consecutive operations
+     * on the same store are applied in a single transaction. If any operation in such a run fails,
+     * the transaction is rolled back and the run is replayed one operation at a time, exactly like
+     * {@link #performTransform(UserID, DID, UniqueID, Operation)}, so that {@code callback} observes
+     * the same results and gets the same chance to abort the batch.
+     *
+     * @param user user id of the user making the changes
+     * @param device device that submitted the changes
+     * @param operations operations to perform, in order
+     * @param callback notified of the outcome of every operation, in order
+     */
+    public void performTransforms(UserID user, DID device, List<TransformBatchOperation> operations, BatchCallback callback) {
+        Map<UniqueID, UniqueID> stores = resolveStores(operations);
+
+        AccessToken accessToken = null;
+        if (!stores.isEmpty()) {
+            try {
+                accessToken = checkAccessForStores(user, Sets.newHashSet(stores.values()), Access.READ, Access.WRITE);
+            } catch (AccessException | NotFoundException e) {
+                // let per-operation execution report the failure on the relevant operation
+                LOGGER.debug("batch access check failed, fall back to per-operation execution");
+            }
+        }
+
+        int i = 0;
+        while (i < operations.size()) {
+            int end = accessToken != null ? groupEnd(operations, i, stores) : i;
+            if (end - i > 1) {
+                List<OperationResult> results = tryPerformTransforms(accessToken, device, operations.subList(i, end));
+                if (results != null) {
+                    for (int j = i; j < end; ++j) {
+                        callback.onSuccess(operations.get(j), results.get(j - i));
+                    }
+                    i = end;
+                    continue;
+                }
+            } else {
+                end = i + 1;
+            }
+
+            for (int j = i; j < end; ++j) {
+                TransformBatchOperation op = operations.get(j);
+                try {
+                    callback.onSuccess(op, performTransform(user, device, op.oid, op.operation));
+                } catch (Exception e) {
+                    if (!callback.onFailure(op, e)) return;
+                }
+                // operations that may move objects across stores invalidate the store mapping
+                if (!isBatchable(op.operation.type)) accessToken = null;
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * Maximum number of operations applied in a single transaction by {@link #performTransforms}
+     */
+    private static final int MAX_BATCHED_TRANSFORMS = 256;
+
+    private static boolean isBatchable(OperationType type) {
+        switch (type) {
+            case INSERT_CHILD:
+            case MOVE_CHILD:
+            case REMOVE_CHILD:
+            case UPDATE_CONTENT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static List<UniqueID> involvedObjects(TransformBatchOperation op) {
+        List<UniqueID> oids = Lists.newArrayList(op.operation.affectedOIDs());
+        oids.add(op.oid);
+        return oids;
+    }
+
+    /* (non-javadoc)
+     *
+     * Best-effort mapping of the objects involved in a batch to their store. Objects that do not exist
+     * yet are simply left out.
+     */
+    private Map<UniqueID, UniqueID> resolveStores(List<TransformBatchOperation> operations) {
+        return inTransaction(dao -> {
+            Map<UniqueID, UniqueID> stores = Maps.newHashMap();
+            for (TransformBatchOperation op : operations) {
+                for (UniqueID oid : involvedObjects(op)) {
+                    if (stores.containsKey(oid)) continue;
+                    try {
+                        stores.put(oid, getStore(dao, oid));
+                    } catch (NotFoundException e) {
+                        // may be created by an earlier operation in the batch
+                    }
+                }
+            }
+            return stores;
+        }, TransactionIsolation.READ_COMMITTED);
+    }
+
+    /* (non-javadoc)
+     *
+     * @return the (exclusive) end of the run of consecutive batchable operations starting at {@code start}
+     * that all involve objects of a single store
+     */
+    private static int groupEnd(List<TransformBatchOperation> operations, int start, Map<UniqueID, UniqueID> stores) {
+        UniqueID store = null;
+        int end = start;
+        while (end < operations.size() && end - start < MAX_BATCHED_TRANSFORMS) {
+            TransformBatchOperation op = operations.get(end);
+            if (!isBatchable(op.operation.type)) break;
+
+            UniqueID opStore = null;
+            for (UniqueID oid : involvedObjects(op)) {
+                UniqueID s = stores.get(oid);
+                if (s == null || (opStore != null && !opStore.equals(s))) {
+                    opStore = null;
+                    break;
+                }
+                opStore = s;
+            }
+            if (opStore == null || (store != null && !store.equals(opStore))) break;
+            store = opStore;
+
+            // children inserted by this operation can be used by subsequent ones
+            // NB: this is only a hint, access checks in the transaction will catch any mistake
+            if (op.operation.type == OperationType.INSERT_CHILD) {
+                InsertChild ic = (InsertChild) op.operation;
+                if (ic.childObjectType != ObjectType.STORE && !Identifiers.isSharedFolder(ic.child)) {
+                    stores.putIfAbsent(ic.child, store);
+                }
+            }
+            ++end;
+        }
+        return end;
+    }
+
+    /* (non-javadoc)
+     *
+     * @return the results of all operations if they were applied successfully in a single transaction, null otherwise
+     */
+    private @Nullable List<OperationResult> tryPerformTransforms(AccessToken accessToken, DID device, List<TransformBatchOperation> operations) {
+        Set<UniqueID> objects = Sets.newHashSet();
+        operations.forEach(op -> objects.addAll(involvedObjects(op)));
+        List<Lock> locks = lockObjects(Lists.newArrayList(objects));
+        try {
+            return inTransaction(dao -> {
+                List<OperationResult> results = Lists.newArrayListWithCapacity(operations.size());
+                for (TransformBatchOperation op : operations) {
+                    results.add(performTransform(dao, accessToken, device, op.oid, op.operation));
+                }
+                return results;
+            });
+        } catch (Exception e) {
+            LOGGER.info("batched transforms failed, retry individually: {}", e.getMessage());
+            return null;
+        } finally {
+            for (Lock l : locks) {
+                l.unlock();
+            }
+        }
+    }
+
     public OperationResult performTransform(DAO dao, AccessToken accessToken, DID device, UniqueID oid, Operation operation) throws NotFoundException, AccessException, ParentConflictException, NameConflictException, VersionConflictException {
         checkAccessGranted(dao, accessToken, oid, Access.READ, Access.WRITE);
 
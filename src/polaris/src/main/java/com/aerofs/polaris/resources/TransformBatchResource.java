@@ -14,7 +14,6 @@ import com.aerofs.polaris.api.operation.OperationType;
 import com.aerofs.polaris.logical.ObjectStore;
 import com.aerofs.polaris.notification.Notifier;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,15 +47,17 @@ public final class TransformBatchResource {
     @Produces(MediaType.APPLICATION_JSON)
     public TransformBatchResult submitBatch(@Context AeroUserDevicePrincipal principal, TransformBatch batch) {
         List<TransformBatchOperationResult> results = Lists.newArrayListWithCapacity(batch.operations.size());
-        Map<UniqueID, Long> updatedStores = Maps.newHashMap();
+        List<OperationResult> succeeded = Lists.newArrayListWithCapacity(batch.operations.size());
 
-        for (TransformBatchOperation operation: batch.operations) {
-            try {
-                OperationResult result = objectStore.performTransform(principal.getUser(), principal.getDevice(), operation.oid, operation.operation);
+        objectStore.performTransforms(principal.getUser(), principal.getDevice(), batch.operations, new ObjectStore.BatchCallback() {
+            @Override
+            public void onSuccess(TransformBatchOperation operation, OperationResult result) {
                 results.add(new TransformBatchOperationResult(result));
-                // TODO(RD) do this merging once at the end of request
-                result.updated.stream().collect(Collectors.toMap(x -> x.object.store, x -> x.transformTimestamp, Math::max)).forEach((k, v) -> updatedStores.merge(k, v, Math::max));
-            } catch (Exception e) {
+                succeeded.add(result);
+            }
+
+            @Override
+            public boolean onFailure(TransformBatchOperation operation, Exception e) {
                 Throwable cause = Resources.rootCause(e);
                 TransformBatchOperationResult result = new TransformBatchOperationResult(Resources.getBatchErrorFromThrowable(cause));
                 if (cause instanceof PolarisException || cause instanceof IllegalArgumentException) {
@@ -65,14 +66,15 @@ public final class TransformBatchResource {
                     LOGGER.warn("unexpected fail transform batch operation {} from {} {}", operation, principal.getDevice(), principal.getUser(), cause);
                 }
                 results.add(result);
-                if (operation.operation.type != OperationType.UPDATE_CONTENT) {
-                    // abort early if a batch operation fails
-                    // except for content update which have no inter-dependencies
-                    break;
-                }
+                // abort early if a batch operation fails
+                // except for content update which have no inter-dependencies
+                return operation.operation.type == OperationType.UPDATE_CONTENT;
             }
-        }
+        });
 
+        Map<UniqueID, Long> updatedStores = succeeded.stream()
+                .flatMap(result -> result.updated.stream())
+                .collect(Collectors.toMap(x -> x.object.store, x -> x.transformTimestamp, Math::max));
         updatedStores.forEach(notifier::notifyStoreUpdated);
 
         return new TransformBatchResult(results);
@@ -4,20 +4,30 @@ import com.aerofs.auth.server.AeroPrincipal;
 import com.aerofs.auth.server.AeroUserDevicePrincipal;
 import com.aerofs.auth.server.Roles;
 import com.aerofs.ids.UniqueID;
+import com.aerofs.ids.UserID;
 import com.aerofs.polaris.PolarisConfiguration;
+import com.aerofs.polaris.api.operation.MultiStoreTransforms;
 import com.aerofs.polaris.api.operation.Transforms;
+import com.aerofs.polaris.api.operation.TransformsQuery;
 import com.aerofs.polaris.logical.ObjectStore;
+import com.google.common.collect.Maps;
 
+import javax.annotation.Nullable;
 import javax.annotation.security.RolesAllowed;
 import javax.inject.Singleton;
+import javax.validation.Valid;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import java.util.Map;
 
 @RolesAllowed({Roles.SERVICE, Roles.USER})
 @Path("/transforms")
@@ -41,6 +51,24 @@ public final class TransformsResource {
             @QueryParam("since") @Min(-1) long since,
             @QueryParam("count") @Min(1) int requestedResultCount) {
         int resultCount = Math.min(requestedResultCount, maxReturnedTransforms);
-        return objectStore.getTransforms((principal instanceof AeroUserDevicePrincipal ? ((AeroUserDevicePrincipal) principal).getUser() : null), store, since, resultCount);
+        return objectStore.getTransforms(getUser(principal), store, since, resultCount);
+    }
+
+    // lets a device catch up with many stores in one round-trip
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @POST
+    public MultiStoreTransforms getTransforms(
+            @Context AeroPrincipal principal,
+            @NotNull @Valid TransformsQuery query) {
+        // the earliest timestamp wins if a store is listed more than once
+        Map<UniqueID, Long> stores = Maps.newLinkedHashMap();
+        query.stores.forEach(s -> stores.merge(s.store, s.since, Math::min));
+        int resultCount = Math.min(query.count, maxReturnedTransforms);
+        return objectStore.getTransforms(getUser(principal), stores, resultCount);
+    }
+
+    private static @Nullable UserID getUser(AeroPrincipal principal) {
+        return principal instanceof AeroUserDevicePrincipal ? ((AeroUserDevicePrincipal) principal).getUser() : null;
     }
 }
@@ -0,0 +1,50 @@
+package com.aerofs.polaris.sparta;
+
+import com.aerofs.ids.UniqueID;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+// permissions of a user in one of the shares it joined
+@JsonIgnoreProperties(ignoreUnknown = true)
+class Share {
+
+    public final UniqueID id;
+    public final List<String> permissions;
+
+    @JsonCreator
+    public Share(
+            @JsonProperty("id") UniqueID id,
+            @JsonProperty("permissions") List<String> permissions) {
+        this.id = id;
+        this.permissions = permissions;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Share other = (Share) o;
+
+        return Objects.equal(id, other.id) && Objects.equal(permissions, other.permissions);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id, permissions);
+    }
+
+    @Override
+    public String toString() {
+        return Objects
+                .toStringHelper(this)
+                .add("id", id)
+                .add("permissions", permissions)
+                .toString();
+    }
+}
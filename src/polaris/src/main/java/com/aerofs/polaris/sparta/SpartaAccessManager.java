@@ -3,6 +3,8 @@ package com.aerofs.polaris.sparta;
 import com.aerofs.auth.client.shared.AeroService;
 import com.aerofs.auth.server.AeroOAuthPrincipal;
 import com.aerofs.auth.server.AeroUserDevicePrincipal;
+import com.aerofs.baseline.metrics.MetricRegistries;
+import com.aerofs.ids.Identifiers;
 import com.aerofs.ids.SID;
 import com.aerofs.ids.UniqueID;
 import com.aerofs.ids.UserID;
@@ -13,11 +15,19 @@ import com.aerofs.polaris.logical.FolderSharer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.aerofs.polaris.logical.StoreNames;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
@@ -44,6 +54,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static com.aerofs.auth.client.delegated.AeroDelegatedUserDevice.getHeaderValue;
@@ -57,6 +68,20 @@ public final class SpartaAccessManager implements ManagedAccessManager, FolderSh
     private static final String SPARTA_API_VERSION = "v1.4";
     private static final long CONNECTION_ACQUIRE_TIMEOUT = TimeUnit.MILLISECONDS.convert(1, TimeUnit.SECONDS);
 
+    private static final long PERMS_CACHE_SIZE = 100000;
+    private static final long PERMS_CACHE_EXPIRY = TimeUnit.NANOSECONDS.convert(10, TimeUnit.MINUTES);
+    // a user who was just added to a shared folder should not be locked out for long if the notification is lost
+    private static final long NO_ACCESS_EXPIRY = TimeUnit.NANOSECONDS.convert(30, TimeUnit.SECONDS);
+    // below this number of uncached shared folders, each membership is looked up on its own
+    // instead of listing the permissions of the user in all its shares, which for a team server
+    // may be thousands of entries
+    private static final int MIN_BATCH_SIZE = 10;
+    private static final List<Access> NO_ACCESS = Collections.emptyList();
+
+    private static final String METRIC_HIT_RATE = MetricRegistries.name("sparta", "acl", "cache", "hit-rate");
+    private static final String METRIC_SIZE = MetricRegistries.name("sparta", "acl", "cache", "size");
+    private static final String METRIC_EVICTIONS = MetricRegistries.name("sparta", "acl", "cache", "evictions");
+
     private static final Logger LOGGER = LoggerFactory.getLogger(SpartaAccessManager.class);
 
     private final String serviceName;
@@ -64,7 +89,13 @@ public final class SpartaAccessManager implements ManagedAccessManager, FolderSh
     private final String spartaUrl;
     private final ObjectMapper mapper;
     private final CloseableHttpClient client;
-    private final Cache<UserStore, List<Access>> permsCache = CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.MINUTES).build();
+    private final Ticker ticker;
+    private final Cache<UserStore, Decision> permsCache;
+    // bumped on every invalidation so that decisions fetched before an invalidation are not cached
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Meter hits;
+    private final Meter misses;
+    private final Timer requests;
 
     @Inject
     public SpartaAccessManager(
@@ -72,11 +103,38 @@ public final class SpartaAccessManager implements ManagedAccessManager, FolderSh
             @Named(DEPLOYMENT_SECRET_INJECTION_KEY) String deploymentSecret,
             ObjectMapper mapper,
             SpartaConfiguration configuration) throws MalformedURLException {
+        this(serviceName, deploymentSecret, configuration.getUrl(), mapper, newClient(configuration), Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    SpartaAccessManager(
+            String serviceName,
+            String deploymentSecret,
+            String spartaUrl,
+            ObjectMapper mapper,
+            CloseableHttpClient client,
+            Ticker ticker) {
         this.serviceName = serviceName;
         this.deploymentSecret = deploymentSecret;
-        this.spartaUrl = configuration.getUrl();
+        this.spartaUrl = spartaUrl;
         this.mapper = mapper;
+        this.client = client;
+        this.ticker = ticker;
+        this.permsCache = CacheBuilder
+                .newBuilder()
+                .maximumSize(PERMS_CACHE_SIZE)
+                .expireAfterWrite(PERMS_CACHE_EXPIRY, TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+
+        MetricRegistry registry = MetricRegistries.getRegistry();
+        this.hits = registry.meter(MetricRegistries.name("sparta", "acl", "cache", "hits"));
+        this.misses = registry.meter(MetricRegistries.name("sparta", "acl", "cache", "misses"));
+        this.requests = registry.timer(MetricRegistries.name("sparta", "acl", "requests"));
+    }
 
+    private static CloseableHttpClient newClient(SpartaConfiguration configuration) throws MalformedURLException {
         URL url = new URL(configuration.getUrl());
         String host = url.getHost();
         short port = (short) url.getPort();
@@ -98,7 +156,7 @@ public final class SpartaAccessManager implements ManagedAccessManager, FolderSh
         connectionManager.setMaxTotal(configuration.getMaxConnections());
         connectionManager.setDefaultMaxPerRoute(configuration.getMaxConnections());
 
-        this.client = HttpClients
+        return HttpClients
                 .custom()
                 .setDefaultSocketConfig(socketConfig)
                 .setDefaultRequestConfig(requestConfig)
@@ -108,11 +166,24 @@ public final class SpartaAccessManager implements ManagedAccessManager, FolderSh
 
     @Override
     public void start() throws Exception {
-        // noop
+        MetricRegistry registry = MetricRegistries.getRegistry();
+        registry.register(METRIC_HIT_RATE, new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getFiveMinuteRate(), hits.getFiveMinuteRate() + misses.getFiveMinuteRate());
+            }
+        });
+        registry.register(METRIC_SIZE, (Gauge<Long>) permsCache::size);
+        registry.register(METRIC_EVICTIONS, (Gauge<Long>) () -> permsCache.stats().evictionCount());
     }
 
     @Override
     public void stop() {
+        MetricRegistry registry = MetricRegistries.getRegistry();
+        registry.remove(METRIC_HIT_RATE);
+        registry.remove(METRIC_SIZE);
+        registry.remove(METRIC_EVICTIONS);
+
         try {
             client.close();
         } catch (IOException e) {
@@ -123,28 +194,146 @@ public final class SpartaAccessManager implements ManagedAccessManager, FolderSh
     @Override
     public void checkAccess(UserID user, Collection<UniqueID> stores, Access... requested) throws AccessException {
         List<Access> req = Arrays.asList(requested);
-        Map<UniqueID, List<Access>> perms = stores.parallelStream().collect(Collectors.toMap((store) -> store, (store) -> findAccessPermissions(user, store)));
+
+        // reject on cached decisions before making any request to sparta
+        List<UniqueID> uncached = Lists.newArrayList();
+        for (UniqueID store : stores) {
+            List<Access> cached = getCachedAccessPermissions(user, store);
+            if (cached == null) {
+                uncached.add(store);
+            } else if (!cached.containsAll(req)) {
+                throw new AccessException(user, store, requested);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return;
+        }
+
+        Map<UniqueID, List<Access>> perms = findAccessPermissions(user, uncached);
         UniqueID rej = perms.entrySet().stream().filter((entry) -> !entry.getValue().containsAll(req)).findAny().map(Map.Entry::getKey).orElse(null);
         if (rej != null) {
             throw new AccessException(user, rej, requested);
         }
     }
 
+    @Override
+    public Set<UniqueID> getDeniedStores(UserID user, Collection<UniqueID> stores, Access... requested) {
+        List<Access> req = Arrays.asList(requested);
+        Set<UniqueID> denied = Sets.newHashSet();
+
+        List<UniqueID> uncached = Lists.newArrayList();
+        for (UniqueID store : stores) {
+            List<Access> cached = getCachedAccessPermissions(user, store);
+            if (cached == null) {
+                uncached.add(store);
+            } else if (!cached.containsAll(req)) {
+                denied.add(store);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            findAccessPermissions(user, uncached).forEach((store, accesses) -> {
+                if (!accesses.containsAll(req)) {
+                    denied.add(store);
+                }
+            });
+        }
+        return denied;
+    }
+
     @Override
     public void accessChanged(UserID user, UniqueID store) {
+        invalidations.incrementAndGet();
         permsCache.invalidate(new UserStore(user, store));
     }
 
-    private List<Access> findAccessPermissions(UserID user, UniqueID store) {
+    private @Nullable List<Access> getCachedAccessPermissions(UserID user, UniqueID store) {
+        Decision decision = permsCache.getIfPresent(new UserStore(user, store));
+        if (decision != null && decision.expiry - ticker.read() > 0) {
+            hits.mark();
+            return decision.accesses;
+        }
+        misses.mark();
+        return null;
+    }
+
+    private void cacheAccessPermissions(UserID user, UniqueID store, List<Access> accesses, long generation) {
         UserStore key = new UserStore(user, store);
-        List<Access> cached = permsCache.getIfPresent(key);
-        if (cached != null) {
-            return cached;
+        long expiry = ticker.read() + (accesses.isEmpty() ? NO_ACCESS_EXPIRY : PERMS_CACHE_EXPIRY);
+        permsCache.put(key, new Decision(accesses, expiry));
+        // the decision may predate an invalidation that raced with the sparta request
+        if (invalidations.get() != generation) {
+            permsCache.invalidate(key);
+        }
+    }
+
+    private Map<UniqueID, List<Access>> findAccessPermissions(UserID user, List<UniqueID> stores) {
+        long generation = invalidations.get();
+        Map<UniqueID, List<Access>> perms = Maps.newHashMap();
+
+        List<UniqueID> shared = stores.stream().filter(Identifiers::isSharedFolder).collect(Collectors.toList());
+        if (shared.size() >= MIN_BATCH_SIZE) {
+            Map<UniqueID, List<Access>> joined = findJoinedStores(user);
+            if (joined != null) {
+                // cache all the shares of the user, subsequent checks are likely to be about some of the others
+                joined.forEach((store, accesses) -> cacheAccessPermissions(user, store, accesses, generation));
+                for (UniqueID store : shared) {
+                    List<Access> accesses = joined.get(store);
+                    if (accesses == null) {
+                        accesses = NO_ACCESS;
+                        cacheAccessPermissions(user, store, accesses, generation);
+                    }
+                    perms.put(store, accesses);
+                }
+            }
+        }
+
+        // root stores of other users are not listed in the shares of a user
+        List<UniqueID> remaining = stores.stream().filter((store) -> !perms.containsKey(store)).collect(Collectors.toList());
+        perms.putAll(remaining.parallelStream().collect(Collectors.toMap((store) -> store, (store) -> findAccessPermissions(user, store, generation))));
+        return perms;
+    }
+
+    // returns the permissions of the user on each of the stores the user joined, or null if sparta could not be reached
+    private @Nullable Map<UniqueID, List<Access>> findJoinedStores(UserID user) {
+        HttpGet get = new HttpGet(spartaUrl + String.format("/%s/users/%s/permissions", SPARTA_API_VERSION, user.getString()));
+        get.addHeader(HttpHeaders.AUTHORIZATION, AeroService.getHeaderValue(serviceName, deploymentSecret));
+
+        Timer.Context timer = requests.time();
+        try {
+            try (CloseableHttpResponse response = client.execute(get)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+
+                // if we got a 404 then the user doesn't exist
+                if (statusCode == HttpStatus.SC_NOT_FOUND) {
+                    LOGGER.warn("user {} does not exist", user.getString());
+                    return Collections.emptyMap();
+                } else if (statusCode != HttpStatus.SC_OK) {
+                    LOGGER.warn("fail retrieve shares from sparta sc:{}", statusCode);
+                    return null;
+                }
+
+                try (InputStream content = response.getEntity().getContent()) {
+                    Share[] shares = mapper.readValue(content, Share[].class);
+                    Map<UniqueID, List<Access>> joined = Maps.newHashMapWithExpectedSize(shares.length);
+                    for (Share share : shares) {
+                        joined.put(share.id, accessFromMemberPermissions(share.permissions));
+                    }
+                    return joined;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("fail retrieve shares from sparta", e);
+            return null;
+        } finally {
+            timer.stop();
         }
+    }
 
+    private List<Access> findAccessPermissions(UserID user, UniqueID store, long generation) {
         HttpGet get = new HttpGet(spartaUrl + String.format("/%s/shares/%s/members/%s", SPARTA_API_VERSION, store.toStringFormal(), user.getString()));
         get.addHeader(HttpHeaders.AUTHORIZATION, AeroService.getHeaderValue(serviceName, deploymentSecret));
 
+        Timer.Context timer = requests.time();
         try {
             try (CloseableHttpResponse response = client.execute(get)) {
                 int statusCode = response.getStatusLine().getStatusCode();
@@ -152,24 +341,27 @@ public final class SpartaAccessManager implements ManagedAccessManager, FolderSh
                 // if we got a 404 then the user doesn't exist
                 if (statusCode == HttpStatus.SC_NOT_FOUND) {
                     LOGGER.warn("user {} does not belong to shared folder {}", user.getString(), store);
-                    return Lists.newArrayList();
+                    cacheAccessPermissions(user, store, NO_ACCESS, generation);
+                    return NO_ACCESS;
                 } else if (statusCode != HttpStatus.SC_OK) {
                     LOGGER.warn("fail retrieve ACL from sparta sc:{}", statusCode);
-                    return Lists.newArrayList();
+                    return NO_ACCESS;
                 }
 
                 try (InputStream content = response.getEntity().getContent()) {
                     Member member = mapper.readValue(content, Member.class);
                     List<Access> accesses = accessFromMemberPermissions(member.permissions);
-                    // cache the member's current permissions in the store, don't cache other negative responses
-                    permsCache.put(key, accesses);
+                    // cache the member's current permissions in the store, don't cache transient failures
+                    cacheAccessPermissions(user, store, accesses, generation);
                     return accesses;
                 }
             }
         } catch (IOException e) {
             // FIXME (AG): do not cause AccessException when there's an IOException
             LOGGER.warn("fail retrieve ACL from sparta", e);
-            return Lists.newArrayList();
+            return NO_ACCESS;
+        } finally {
+            timer.stop();
         }
     }
 
@@ -285,6 +477,17 @@ public final class SpartaAccessManager implements ManagedAccessManager, FolderSh
         }
     }
 
+    private static class Decision
+    {
+        private final List<Access> accesses;
+        private final long expiry;
+
+        Decision(List<Access> accesses, long expiry) {
+            this.accesses = accesses;
+            this.expiry = expiry;
+        }
+    }
+
     private static class UserStore
     {
         private final UserID user;
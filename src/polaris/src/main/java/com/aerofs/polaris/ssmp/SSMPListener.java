@@ -60,6 +60,8 @@ public class SSMPListener implements EventHandler, Managed {
             switch (msg) {
                 // keep these messages in sync with the Enum defined in ThreadLocalSFNotifications.java
                 case SFNOTIF_JOIN:
+                    // drop any cached denial, the user can now access the store
+                    access.accessChanged(user, store);
                     listener.userJoinedStore(user, store);
                     break;
                 case SFNOTIF_LEAVE:
@@ -259,6 +259,17 @@ public abstract class PolarisHelpers {
                 .extract().as(Transforms.class);
     }
 
+    public static MultiStoreTransforms getTransforms(RequestSpecification authenticated, TransformsQuery query) {
+        return given()
+                .spec(authenticated)
+                .and()
+                .header(CONTENT_TYPE, APPLICATION_JSON).and().body(query)
+                .and()
+                .when().post(PolarisTestServer.getTransformsURL())
+                .then()
+                .extract().as(MultiStoreTransforms.class);
+    }
+
     //
     // dump logical database
     //
@@ -66,6 +66,10 @@ public final class PolarisTestServer extends ExternalResource {
         return String.format("%s/batch/transforms/", getServiceURL());
     }
 
+    public static String getTransformsURL() {
+        return String.format("%s/transforms/", getServiceURL());
+    }
+
     public static String getTransformsURL(SID root) {
         return String.format("%s/transforms/%s/", getServiceURL(), root.toStringFormal());
     }
@@ -216,4 +216,39 @@ public final class TestTransformBatchResource {
         // should have received a notification for the completed operation
         verify(polaris.getNotifier(), times(1)).notifyStoreUpdated(eq(store), any(Long.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldApplyDependentOperationsInBatch() throws InterruptedException {
+        // construct a folder hierarchy in a store, each insert depending on the previous one
+        SID store = SID.generate();
+        OID folder = OID.generate();
+        OID subfolder = OID.generate();
+
+        TransformBatch batch = new TransformBatch(ImmutableList.of(
+                new TransformBatchOperation(store, new InsertChild(folder, ObjectType.FOLDER, "folder_1", null)),
+                new TransformBatchOperation(folder, new InsertChild(subfolder, ObjectType.FOLDER, "folder_2", null)),
+                new TransformBatchOperation(subfolder, new InsertChild(OID.generate(), ObjectType.FILE, "file_1", null)),
+                new TransformBatchOperation(subfolder, new InsertChild(OID.generate(), ObjectType.FILE, "file_2", null))
+        ));
+
+        TransformBatchResult result = given()
+                .spec(AUTHENTICATED)
+                .and()
+                .header(CONTENT_TYPE, APPLICATION_JSON).and().body(batch)
+                .and()
+                .when().post(PolarisTestServer.getTransformBatchURL())
+                .then()
+                .extract().response().as(TransformBatchResult.class);
+
+        assertThat(result.results, hasSize(4));
+
+        for (TransformBatchOperationResult operationResult : result.results) {
+            assertThat(operationResult.successful, is(true));
+            assertThat(operationResult.operationResult.updated, hasSize(1));
+            assertThat(operationResult.operationResult.updated.get(0).object.store, equalTo(store));
+        }
+
+        // should have received a *single* notification, since all changes were to the same shared folder
+        verify(polaris.getNotifier(), times(1)).notifyStoreUpdated(eq(store), any(Long.class));
+    }
+}
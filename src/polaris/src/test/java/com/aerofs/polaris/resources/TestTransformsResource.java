@@ -5,12 +5,17 @@ import com.aerofs.ids.*;
 import com.aerofs.polaris.PolarisHelpers;
 import com.aerofs.polaris.PolarisTestServer;
 import com.aerofs.polaris.api.PolarisUtilities;
+import com.aerofs.polaris.api.operation.MultiStoreTransforms;
 import com.aerofs.polaris.api.operation.OperationResult;
 import com.aerofs.polaris.api.operation.Transforms;
+import com.aerofs.polaris.api.operation.TransformsQuery;
+import com.aerofs.polaris.api.operation.TransformsQuery.StoreSince;
 import com.aerofs.polaris.api.types.ObjectType;
 import com.aerofs.polaris.api.types.Transform;
 import com.aerofs.polaris.api.types.TransformType;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.specification.RequestSpecification;
 import org.apache.http.HttpStatus;
@@ -21,13 +26,19 @@ import org.junit.After;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.RuleChain;
+import org.mockito.ArgumentMatcher;
 
 import javax.annotation.Nullable;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Random;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
 
 public final class TestTransformsResource {
 
@@ -40,11 +51,14 @@ public final class TestTransformsResource {
     private final RequestSpecification verified = PolarisHelpers.newAuthedAeroUserReqSpec(USERID, DEVICE);
     private static MySQLDatabase database = new MySQLDatabase("test");
 
+    private static PolarisTestServer polaris = new PolarisTestServer();
+
     @ClassRule
-    public static RuleChain polaris = RuleChain.outerRule(database).around(new PolarisTestServer());
+    public static RuleChain rule = RuleChain.outerRule(database).around(polaris);
 
     @After
     public void afterTest() throws Exception {
+        polaris.resetMocks();
         database.clear();
     }
 
@@ -372,6 +386,68 @@ public final class TestTransformsResource {
         assertThat(transform, matchesMetaTransform(1, DEVICE, store, TransformType.INSERT_CHILD, 1, folder, ObjectType.FOLDER, "folder_1", null));
     }
 
+    @Test
+    public void shouldReturnInterleavedTransformsForMultipleStores() {
+        SID store1 = SID.generate();
+        SID store2 = SID.generate();
+        OID folder1 = PolarisHelpers.newFolder(verified, store1, "folder_1");
+        OID folder2 = PolarisHelpers.newFolder(verified, store2, "folder_2");
+        OID file1 = PolarisHelpers.newFile(verified, folder1, "file_1");
+        OID file2 = PolarisHelpers.newFile(verified, folder2, "file_2");
+
+        MultiStoreTransforms applied = PolarisHelpers.getTransforms(verified, new TransformsQuery(ImmutableList.of(new StoreSince(store1, -1), new StoreSince(store2, 2)), 10));
+        assertThat(applied.transforms, hasSize(3));
+        assertThat(applied.maxTransformCount, is(4L));
+        assertThat(applied.truncated, is(false));
+        assertThat(applied.denied, empty());
+
+        assertThat(applied.transforms.get(0), matchesMetaTransform(1, DEVICE, store1, TransformType.INSERT_CHILD, 1, folder1, ObjectType.FOLDER, "folder_1", null));
+        assertThat(applied.transforms.get(1), matchesMetaTransform(3, DEVICE, folder1, TransformType.INSERT_CHILD, 1, file1, ObjectType.FILE, "file_1", null));
+        assertThat(applied.transforms.get(2), matchesMetaTransform(4, DEVICE, folder2, TransformType.INSERT_CHILD, 1, file2, ObjectType.FILE, "file_2", null));
+    }
+
+    @Test
+    public void shouldReturnBoundedListOfTransformsForMultipleStores() {
+        SID store1 = SID.generate();
+        SID store2 = SID.generate();
+        OID[] folders = new OID[12];
+        for (int i = 0; i < folders.length; i += 2) {
+            folders[i] = PolarisHelpers.newFolder(verified, store1, "folder_" + i);
+            folders[i + 1] = PolarisHelpers.newFolder(verified, store2, "folder_" + (i + 1));
+        }
+
+        MultiStoreTransforms applied = PolarisHelpers.getTransforms(verified, new TransformsQuery(ImmutableList.of(new StoreSince(store1, -1), new StoreSince(store2, -1)), 100));
+        assertThat(applied.transforms, hasSize(10));
+        assertThat(applied.maxTransformCount, is(10L));
+        assertThat(applied.truncated, is(true));
+
+        for (int i = 0; i < applied.transforms.size(); i++) {
+            assertThat(applied.transforms.get(i), matchesMetaTransform(i + 1, DEVICE, i % 2 == 0 ? store1 : store2, TransformType.INSERT_CHILD, i / 2 + 1, folders[i], ObjectType.FOLDER, "folder_" + i, null));
+        }
+
+        applied = PolarisHelpers.getTransforms(verified, new TransformsQuery(ImmutableList.of(new StoreSince(store1, 10), new StoreSince(store2, 10)), 100));
+        assertThat(applied.transforms, hasSize(2));
+        assertThat(applied.maxTransformCount, is(12L));
+        assertThat(applied.truncated, is(false));
+        assertThat(applied.transforms.get(0), matchesMetaTransform(11, DEVICE, store1, TransformType.INSERT_CHILD, 6, folders[10], ObjectType.FOLDER, "folder_10", null));
+        assertThat(applied.transforms.get(1), matchesMetaTransform(12, DEVICE, store2, TransformType.INSERT_CHILD, 6, folders[11], ObjectType.FOLDER, "folder_11", null));
+    }
+
+    @Test
+    public void shouldReportDeniedStoresWithoutFailingMultiStoreRequest() {
+        SID store1 = SID.generate();
+        SID store2 = SID.generate();
+        OID folder = PolarisHelpers.newFolder(verified, store1, "folder_1");
+        PolarisHelpers.newFolder(verified, store2, "folder_2");
+
+        when(polaris.getAccessManager().getDeniedStores(eq(USERID), argThat(new ContainingUniqueID(store2)), anyVararg())).thenReturn(ImmutableSet.<UniqueID>of(store2));
+
+        MultiStoreTransforms applied = PolarisHelpers.getTransforms(verified, new TransformsQuery(ImmutableList.of(new StoreSince(store1, -1), new StoreSince(store2, -1)), 10));
+        assertThat(applied.transforms, hasSize(1));
+        assertThat(applied.transforms.get(0), matchesMetaTransform(1, DEVICE, store1, TransformType.INSERT_CHILD, 1, folder, ObjectType.FOLDER, "folder_1", null));
+        assertThat(applied.denied, contains(store2));
+    }
+
     public static Matcher<? super Transform> matchesMetaTransform(
             final long logicalTimestamp,
             final DID originator,
@@ -603,4 +679,18 @@ public final class TestTransformsResource {
                     contentMtime));
         }
     }
+
+    private static final class ContainingUniqueID extends ArgumentMatcher<Collection<UniqueID>> {
+        private final UniqueID match;
+
+        ContainingUniqueID(UniqueID match) {
+            this.match = match;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(Object collection) {
+            return ((Collection<UniqueID>) collection).contains(match);
+        }
+    }
 }
@@ -0,0 +1,251 @@
+package com.aerofs.polaris.sparta;
+
+import com.aerofs.ids.SID;
+import com.aerofs.ids.UniqueID;
+import com.aerofs.ids.UserID;
+import com.aerofs.polaris.PolarisHelpers;
+import com.aerofs.polaris.acl.Access;
+import com.aerofs.polaris.acl.AccessException;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class TestSpartaAccessManager {
+
+    private static final UserID USER = UserID.fromInternal("test@aerofs.com");
+    private static final SID STORE1 = SID.generate();
+    private static final SID STORE2 = SID.generate();
+    private static final SID STORE3 = SID.generate();
+    private static final SID OTHER_ROOT = SID.rootSID(UserID.fromInternal("other@aerofs.com"));
+    // enough shared folders for their permissions to be looked up in a single request
+    private static final List<UniqueID> MANY = ImmutableList.copyOf(Stream.generate(SID::generate).limit(10).iterator());
+
+    private final CloseableHttpClient client = mock(CloseableHttpClient.class);
+    private final AtomicLong now = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return now.get();
+        }
+    };
+
+    private SpartaAccessManager accessManager;
+
+    @Before
+    public void setup() throws Exception {
+        accessManager = new SpartaAccessManager("polaris", "secret", "http://sparta", PolarisHelpers.newPolarisMapper(), client, ticker);
+    }
+
+    @Test
+    public void shouldCacheGrantedAccess() throws Exception {
+        respond(HttpStatus.SC_OK, "{\"email\":\"test@aerofs.com\",\"permissions\":[\"WRITE\"]}");
+
+        accessManager.checkAccess(USER, ImmutableList.of(STORE1), Access.READ, Access.WRITE);
+        accessManager.checkAccess(USER, ImmutableList.of(STORE1), Access.READ);
+
+        assertThat(requests(1), contains(endsWith("/shares/" + STORE1.toStringFormal() + "/members/test@aerofs.com")));
+    }
+
+    @Test
+    public void shouldRejectFromCacheWithoutRequest() throws Exception {
+        respond(HttpStatus.SC_OK, "{\"email\":\"test@aerofs.com\",\"permissions\":[]}");
+        accessManager.checkAccess(USER, ImmutableList.of(STORE1), Access.READ);
+
+        shouldBeDenied(STORE1, Access.WRITE);
+        requests(1);
+    }
+
+    @Test
+    public void shouldCacheDenialBriefly() throws Exception {
+        respond(HttpStatus.SC_NOT_FOUND, "");
+
+        shouldBeDenied(STORE1, Access.READ);
+        shouldBeDenied(STORE1, Access.READ);
+        requests(1);
+
+        now.addAndGet(TimeUnit.NANOSECONDS.convert(1, TimeUnit.MINUTES));
+        shouldBeDenied(STORE1, Access.READ);
+        requests(2);
+    }
+
+    @Test
+    public void shouldNotCacheFailures() throws Exception {
+        respond(HttpStatus.SC_INTERNAL_SERVER_ERROR, "");
+
+        shouldBeDenied(STORE1, Access.READ);
+        shouldBeDenied(STORE1, Access.READ);
+        requests(2);
+    }
+
+    @Test
+    public void shouldExpireGrantedAccess() throws Exception {
+        respond(HttpStatus.SC_OK, "{\"email\":\"test@aerofs.com\",\"permissions\":[]}");
+
+        accessManager.checkAccess(USER, ImmutableList.of(STORE1), Access.READ);
+        now.addAndGet(TimeUnit.NANOSECONDS.convert(11, TimeUnit.MINUTES));
+        accessManager.checkAccess(USER, ImmutableList.of(STORE1), Access.READ);
+        requests(2);
+    }
+
+    @Test
+    public void shouldRefetchAfterAccessChanged() throws Exception {
+        respond(HttpStatus.SC_NOT_FOUND, "");
+        shouldBeDenied(STORE1, Access.READ);
+
+        accessManager.accessChanged(USER, STORE1);
+        respond(HttpStatus.SC_OK, "{\"email\":\"test@aerofs.com\",\"permissions\":[]}");
+        accessManager.checkAccess(USER, ImmutableList.of(STORE1), Access.READ);
+        requests(2);
+    }
+
+    @Test
+    public void shouldLookUpFewSharesIndividually() throws Exception {
+        respond(HttpStatus.SC_OK, "{\"email\":\"test@aerofs.com\",\"permissions\":[]}");
+
+        accessManager.checkAccess(USER, ImmutableList.of(STORE1, STORE2), Access.READ);
+
+        List<String> paths = requests(2);
+        assertThat(paths, hasItem(endsWith("/shares/" + STORE1.toStringFormal() + "/members/test@aerofs.com")));
+        assertThat(paths, hasItem(endsWith("/shares/" + STORE2.toStringFormal() + "/members/test@aerofs.com")));
+    }
+
+    @Test
+    public void shouldLookUpAllSharesOfUserInOneRequest() throws Exception {
+        respond(HttpStatus.SC_OK, "[" + permissions(MANY, "\"WRITE\"") + "," + permissions(ImmutableList.of(STORE3), "") + "]");
+
+        accessManager.checkAccess(USER, MANY, Access.READ, Access.WRITE);
+        assertThat(requests(1), contains(endsWith("/users/test@aerofs.com/permissions")));
+
+        // the other shares of the user were cached along the way
+        accessManager.checkAccess(USER, ImmutableList.of(STORE3), Access.READ);
+        shouldBeDenied(STORE3, Access.WRITE);
+        requests(1);
+    }
+
+    @Test
+    public void shouldDenyStoresMissingFromSharesOfUser() throws Exception {
+        respond(HttpStatus.SC_OK, "[" + permissions(MANY.subList(1, MANY.size()), "") + "]");
+
+        try {
+            accessManager.checkAccess(USER, MANY, Access.READ);
+            fail();
+        } catch (AccessException e) {
+            // expected
+        }
+        shouldBeDenied(MANY.get(0), Access.READ);
+        requests(1);
+    }
+
+    @Test
+    public void shouldLookUpRootStoresIndividually() throws Exception {
+        String shares = "[" + permissions(MANY, "") + "]";
+        doAnswer(invocation -> {
+            HttpUriRequest request = (HttpUriRequest) invocation.getArguments()[0];
+            return request.getURI().getPath().endsWith("/permissions")
+                    ? response(HttpStatus.SC_OK, shares)
+                    : response(HttpStatus.SC_OK, "{\"email\":\"test@aerofs.com\",\"permissions\":[]}");
+        }).when(client).execute(any(HttpUriRequest.class));
+
+        accessManager.checkAccess(USER, ImmutableList.<UniqueID>builder().addAll(MANY).add(OTHER_ROOT).build(), Access.READ);
+
+        List<String> paths = requests(2);
+        assertThat(paths.get(0), endsWith("/users/test@aerofs.com/permissions"));
+        assertThat(paths.get(1), endsWith("/shares/" + OTHER_ROOT.toStringFormal() + "/members/test@aerofs.com"));
+    }
+
+    @Test
+    public void shouldFindAllDeniedStoresInOneRequest() throws Exception {
+        respond(HttpStatus.SC_OK, "[" + permissions(MANY.subList(0, 5), "\"WRITE\"") + "," + permissions(MANY.subList(5, 8), "") + "]");
+
+        Set<UniqueID> denied = accessManager.getDeniedStores(USER, MANY, Access.READ, Access.WRITE);
+
+        Set<UniqueID> expected = ImmutableSet.copyOf(MANY.subList(5, MANY.size()));
+        assertThat(denied, equalTo(expected));
+        requests(1);
+    }
+
+    @Test
+    public void shouldFindDeniedStoresFromCache() throws Exception {
+        respond(HttpStatus.SC_NOT_FOUND, "");
+        shouldBeDenied(STORE1, Access.READ);
+
+        respond(HttpStatus.SC_OK, "{\"email\":\"test@aerofs.com\",\"permissions\":[]}");
+        Set<UniqueID> denied = accessManager.getDeniedStores(USER, ImmutableList.of(STORE1, STORE2), Access.READ);
+
+        Set<UniqueID> expected = ImmutableSet.of(STORE1);
+        assertThat(denied, equalTo(expected));
+        requests(2);
+    }
+
+    // entries of the list of permissions of the user in its shares
+    private static String permissions(List<? extends UniqueID> stores, String permissions) {
+        return stores.stream()
+                .map(store -> "{\"id\":\"" + store.toStringFormal() + "\",\"permissions\":[" + permissions + "]}")
+                .collect(Collectors.joining(","));
+    }
+
+    private void shouldBeDenied(UniqueID store, Access... requested) {
+        try {
+            accessManager.checkAccess(USER, ImmutableList.of(store), requested);
+            fail();
+        } catch (AccessException e) {
+            // expected
+        }
+    }
+
+    private void respond(int statusCode, String body) throws Exception {
+        // doAnswer() does not call the mock, which would count as a request
+        doAnswer(invocation -> response(statusCode, body)).when(client).execute(any(HttpUriRequest.class));
+    }
+
+    private static CloseableHttpResponse response(int statusCode, String body) {
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(statusCode);
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(statusLine);
+        when(response.getEntity()).thenReturn(new StringEntity(body, ContentType.APPLICATION_JSON));
+        return response;
+    }
+
+    // verifies the total number of requests made to sparta and returns their paths
+    private List<String> requests(int count) throws Exception {
+        ArgumentCaptor<HttpUriRequest> captor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(client, times(count)).execute(captor.capture());
+        List<String> paths = Lists.newArrayList();
+        for (HttpUriRequest request : captor.getAllValues()) {
+            paths.add(request.getURI().getPath());
+        }
+        return paths;
+    }
+}
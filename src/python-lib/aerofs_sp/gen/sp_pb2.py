@@ -22,7 +22,7 @@ import cmd_pb2
 DESCRIPTOR = _descriptor.FileDescriptor(
   name='sp.proto',
   package='sp',
-  serialized_pb=_b('\n\x08sp.proto\x12\x02sp\x1a\x0c\x63ommon.proto\x1a\tcmd.proto\"U\n\x1cSetDeviceOSFamilyAndNameCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\x11\n\tos_family\x18\x02 \x02(\t\x12\x0f\n\x07os_name\x18\x03 \x02(\t\":\n\'DeleteOrganizationInvitationForUserCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\"4\n!ListOrganizationInvitedUsersReply\x12\x0f\n\x07user_id\x18\x01 \x03(\t\"b\n\x12SignUpWithCodeCall\x12\x13\n\x0bsignup_code\x18\x01 \x02(\t\x12\x10\n\x08password\x18\x03 \x02(\x0c\x12\x12\n\nfirst_name\x18\x04 \x02(\t\x12\x11\n\tlast_name\x18\x05 \x02(\t\"<\n\x13SignUpWithCodeReply\x12\x0e\n\x06org_id\x18\x01 \x02(\t\x12\x15\n\rexisting_team\x18\x02 \x02(\x08\"%\n\x15ResolveSignUpCodeCall\x12\x0c\n\x04\x63ode\x18\x01 \x02(\t\"/\n\x16ResolveSignUpCodeReply\x12\x15\n\remail_address\x18\x01 \x02(\t\"(\n\x19VerifyBatchSignUpCodeCall\x12\x0b\n\x03\x62sc\x18\x01 \x02(\t\",\n\x13RequestToSignUpCall\x12\x15\n\remail_address\x18\x01 \x02(\t\"1\n\x18InviteToOrganizationCall\x12\x15\n\remail_address\x18\x01 \x02(\t\":\n\x19InviteToOrganizationReply\x12\x1d\n\x0flocally_managed\x18\x01 \x01(\x08:\x04true\";\n AcceptOrganizationInvitationCall\x12\x17\n\x0forganization_id\x18\x01 \x02(\x05\";\n DeleteOrganizationInvitationCall\x12\x17\n\x0forganization_id\x18\x01 \x02(\x05\"\xb5\x01\n\x0fShareFolderCall\x12\x13\n\x0b\x66older_name\x18\x03 \x02(\t\x12\x10\n\x08share_id\x18\x02 \x02(\x0c\x12\x32\n\x13subject_permissions\x18\x01 \x03(\x0b\x32\x15.PBSubjectPermissions\x12\x0c\n\x04note\x18\x04 \x01(\t\x12\x10\n\x08\x65xternal\x18\x05 \x01(\x08\x12\'\n\x1fsuppress_sharing_rules_warnings\x18\x06 \x01(\x08\";\n\x14JoinSharedFolderCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\x12\x10\n\x08\x65xternal\x18\x02 \x01(\x08\"+\n\x16IgnoreSharedFolderCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\"*\n\x15LeaveSharedFolderCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\"@\n\x17SetSharedFolderNameCall\x12\x10\n\x08share_id\x18\x01 \x02(\x0c\x12\x13\n\x0b\x66older_name\x18\x02 \x02(\t\"L\n!ListPendingFolderInvitationsReply\x12\'\n\ninvitation\x18\x01 \x03(\x0b\x32\x13.PBFolderInvitation\".\n\rEmailUserCall\x12\x0f\n\x07subject\x18\x01 \x02(\t\x12\x0c\n\x04\x62ody\x18\x02 \x02(\t\"+\n\x16GetUserPreferencesCall\x12\x11\n\tdevice_id\x18\x01 \x01(\x0c\"\x87\x01\n\x17GetUserPreferencesReply\x12\x12\n\nfirst_name\x18\x01 \x02(\t\x12\x11\n\tlast_name\x18\x02 \x02(\t\x12\x13\n\x0b\x64\x65vice_name\x18\x03 \x01(\t\x12\x13\n\x0bsignup_date\x18\x04 \x01(\x04\x12\x1b\n\x13two_factor_enforced\x18\x05 \x01(\x08\"*\n\x19GetUserSettingsTokenReply\x12\r\n\x05token\x18\x01 \x01(\t\")\n\x18SetUserSettingsTokenCall\x12\r\n\x05token\x18\x01 \x02(\t\"x\n\x16SetUserPreferencesCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x12\n\nfirst_name\x18\x02 \x01(\t\x12\x11\n\tlast_name\x18\x03 \x01(\t\x12\x11\n\tdevice_id\x18\x04 \x01(\x0c\x12\x13\n\x0b\x64\x65vice_name\x18\x05 \x01(\t\"\x1b\n\nGetACLCall\x12\r\n\x05\x65poch\x18\x01 \x02(\x04\"\xbf\x01\n\x0bGetACLReply\x12-\n\tstore_acl\x18\x01 \x03(\x0b\x32\x1a.sp.GetACLReply.PBStoreACL\x12\r\n\x05\x65poch\x18\x02 \x02(\x04\x1ar\n\nPBStoreACL\x12\x10\n\x08store_id\x18\x01 \x02(\x0c\x12\x32\n\x13subject_permissions\x18\x02 \x03(\x0b\x32\x15.PBSubjectPermissions\x12\x10\n\x08\x65xternal\x18\x03 \x02(\x08\x12\x0c\n\x04name\x18\x04 \x02(\t\"\x80\x01\n\rUpdateACLCall\x12\x10\n\x08store_id\x18\x01 \x02(\x0c\x12\x0f\n\x07subject\x18\x02 \x02(\t\x12#\n\x0bpermissions\x18\x03 \x02(\x0b\x32\x0e.PBPermissions\x12\'\n\x1fsuppress_sharing_rules_warnings\x18\x04 \x01(\x08\"2\n\rDeleteACLCall\x12\x10\n\x08store_id\x18\x01 \x02(\x0c\x12\x0f\n\x07subject\x18\x02 \x02(\t\",\n\x0fVerifyEmailCall\x12\x19\n\x11verification_code\x18\x01 \x02(\t\"&\n\x18GetTeamServerUserIDReply\x12\n\n\x02id\x18\x01 \x02(\t\"\xe7\x01\n\x12RegisterDeviceCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\x0b\n\x03\x63sr\x18\x02 \x02(\x0c\x12\x11\n\tos_family\x18\x03 \x02(\t\x12\x0f\n\x07os_name\x18\x04 \x02(\t\x12\x13\n\x0b\x64\x65vice_name\x18\x05 \x02(\t\x12\x34\n\ninterfaces\x18\x06 \x03(\x0b\x32 .sp.RegisterDeviceCall.Interface\x12\r\n\x05token\x18\x07 \x01(\t\x1a\x33\n\tInterface\x12\x0c\n\x04name\x18\x01 \x02(\t\x12\x0b\n\x03mac\x18\x02 \x02(\t\x12\x0b\n\x03ips\x18\x03 \x03(\t\"#\n\x13RegisterDeviceReply\x12\x0c\n\x04\x63\x65rt\x18\x01 \x02(\t\"Y\n\x1bListOrganizationMembersCall\x12\x13\n\x0bmax_results\x18\x01 \x02(\r\x12\x0e\n\x06offset\x18\x02 \x02(\r\x12\x15\n\rsearch_string\x18\x03 \x01(\t\"\xd1\x01\n\x1cListOrganizationMembersReply\x12G\n\x0euser_and_level\x18\x01 \x03(\x0b\x32/.sp.ListOrganizationMembersReply.PBUserAndLevel\x12\x13\n\x0btotal_count\x18\x02 \x02(\r\x1aS\n\x0ePBUserAndLevel\x12\x18\n\x04user\x18\x01 \x02(\x0b\x32\n.sp.PBUser\x12\'\n\x05level\x18\x02 \x02(\x0e\x32\x18.sp.PBAuthorizationLevel\"(\n\x16GetOrganizationIDReply\x12\x0e\n\x06org_id\x18\x01 \x02(\t\"E\n\x1aGetAuthorizationLevelReply\x12\'\n\x05level\x18\x01 \x02(\x0e\x32\x18.sp.PBAuthorizationLevel\"`\n\x06PBUser\x12\x12\n\nuser_email\x18\x01 \x02(\t\x12\x12\n\nfirst_name\x18\x02 \x02(\t\x12\x11\n\tlast_name\x18\x03 \x02(\t\x12\x1b\n\x13two_factor_enforced\x18\x04 \x01(\x08\"L\n\x07PBGroup\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x13\n\x0b\x63ommon_name\x18\x02 \x02(\t\x12\x1a\n\x12\x65xternally_managed\x18\x03 \x02(\x08\"]\n\x19SetAuthorizationLevelCall\x12\x12\n\nuser_email\x18\x01 \x02(\t\x12,\n\nauth_level\x18\x02 \x02(\x0e\x32\x18.sp.PBAuthorizationLevel\"0\n\x1aSendPasswordResetEmailCall\x12\x12\n\nuser_email\x18\x01 \x02(\t\"J\n\x11ResetPasswordCall\x12\x1c\n\x14password_reset_token\x18\x01 \x02(\t\x12\x17\n\x0fnew_credentials\x18\x02 \x02(\x0c\"F\n\x12\x43hangePasswordCall\x12\x17\n\x0fold_credentials\x18\x01 \x02(\x0c\x12\x17\n\x0fnew_credentials\x18\x02 \x02(\x0c\"#\n\x0eGetUserCRLCall\x12\x11\n\tcrl_epoch\x18\x01 \x02(\x04\"4\n\x10UnlinkDeviceCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\r\n\x05\x65rase\x18\x02 \x02(\x08\"&\n\x11GetDeviceInfoCall\x12\x11\n\tdevice_id\x18\x01 \x03(\x0c\"\x8e\x01\n\x12GetDeviceInfoReply\x12\x38\n\x0b\x64\x65vice_info\x18\x01 \x03(\x0b\x32#.sp.GetDeviceInfoReply.PBDeviceInfo\x1a>\n\x0cPBDeviceInfo\x12\x19\n\x05owner\x18\x01 \x01(\x0b\x32\n.sp.PBUser\x12\x13\n\x0b\x64\x65vice_name\x18\x02 \x01(\t\"&\n\x13ListUserDevicesCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\"\xa1\x01\n\x14ListUserDevicesReply\x12\x31\n\x06\x64\x65vice\x18\x01 \x03(\x0b\x32!.sp.ListUserDevicesReply.PBDevice\x1aV\n\x08PBDevice\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\x13\n\x0b\x64\x65vice_name\x18\x02 \x02(\t\x12\x11\n\tos_family\x18\x03 \x02(\t\x12\x0f\n\x07os_name\x18\x04 \x02(\t\"_\n!ListOrganizationSharedFoldersCall\x12\x13\n\x0bmax_results\x18\x01 \x02(\r\x12\x0e\n\x06offset\x18\x02 \x02(\r\x12\x15\n\rsearch_string\x18\x03 \x01(\t\"d\n\"ListOrganizationSharedFoldersReply\x12)\n\rshared_folder\x18\x01 \x03(\x0b\x32\x12.sp.PBSharedFolder\x12\x13\n\x0btotal_count\x18\x02 \x02(\r\"n\n\x1fListUserJoinedSharedFoldersCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x13\n\x0bmax_results\x18\x02 \x02(\r\x12\x0e\n\x06offset\x18\x03 \x02(\r\x12\x15\n\rsearch_string\x18\x04 \x01(\t\"\x94\x04\n\x0ePBSharedFolder\x12\x10\n\x08store_id\x18\x01 \x02(\x0c\x12\x0c\n\x04name\x18\x02 \x02(\t\x12\x15\n\rowned_by_team\x18\x03 \x02(\x08\x12P\n\x1auser_permissions_and_state\x18\x04 \x03(\x0b\x32,.sp.PBSharedFolder.PBUserPermissionsAndState\x12@\n\x11group_permissions\x18\x05 \x03(\x0b\x32%.sp.PBSharedFolder.PBGroupPermissions\x12[\n%requested_users_permissions_and_state\x18\x06 \x01(\x0b\x32,.sp.PBSharedFolder.PBUserPermissionsAndState\x1a\x82\x01\n\x19PBUserPermissionsAndState\x12\x18\n\x04user\x18\x01 \x02(\x0b\x32\n.sp.PBUser\x12#\n\x0bpermissions\x18\x02 \x02(\x0b\x32\x0e.PBPermissions\x12&\n\x05state\x18\x03 \x02(\x0e\x32\x17.sp.PBSharedFolderState\x1aU\n\x12PBGroupPermissions\x12\x1a\n\x05group\x18\x01 \x02(\x0b\x32\x0b.sp.PBGroup\x12#\n\x0bpermissions\x18\x02 \x02(\x0b\x32\x0e.PBPermissions\"\xde\x01\n\x1fGetOrganizationInvitationsReply\x12\\\n\x18organization_invitations\x18\x02 \x03(\x0b\x32:.sp.GetOrganizationInvitationsReply.OrganizationInvitation\x1a]\n\x16OrganizationInvitation\x12\x0f\n\x07inviter\x18\x01 \x02(\t\x12\x19\n\x11organization_name\x18\x02 \x02(\t\x12\x17\n\x0forganization_id\x18\x03 \x02(\x05\"\xc0\x01\n\x16GetOrgPreferencesReply\x12\x19\n\x11organization_name\x18\x01 \x02(\t\x12\"\n\x1aorganization_contact_phone\x18\x02 \x02(\t\x12.\n\x05level\x18\x03 \x02(\x0e\x32\x1f.sp.PBTwoFactorEnforcementLevel\x12\x1a\n\x12license_seats_used\x18\x04 \x02(\x05\x12\x1b\n\x13\x65xternal_user_count\x18\x05 \x02(\x05\"M\n\x15SetOrgPreferencesCall\x12\x10\n\x08org_name\x18\x01 \x01(\t\x12\"\n\x1aorganization_contact_phone\x18\x02 \x01(\t\"4\n\x17SetUnsubscribeEmailCall\x12\x19\n\x11unsubscribe_token\x18\x01 \x02(\t\",\n\x18GetUnsubscribeEmailReply\x12\x10\n\x08\x65mail_id\x18\x01 \x02(\t\"3\n\nPBFullName\x12\x12\n\nfirst_name\x18\x01 \x02(\t\x12\x11\n\tlast_name\x18\x02 \x02(\t\",\n\x17GetCommandQueueHeadCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\"I\n\x18GetCommandQueueHeadReply\x12\x19\n\x07\x63ommand\x18\x01 \x01(\x0b\x32\x08.Command\x12\x12\n\nqueue_size\x18\x02 \x02(\x03\"J\n\x17\x41\x63kCommandQueueHeadCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\r\n\x05\x65poch\x18\x02 \x02(\x04\x12\r\n\x05\x65rror\x18\x03 \x02(\x08\"I\n\x18\x41\x63kCommandQueueHeadReply\x12\x19\n\x07\x63ommand\x18\x01 \x01(\x0b\x32\x08.Command\x12\x12\n\nqueue_size\x18\x02 \x02(\x03\"5\n\x13RecertifyDeviceCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\x0b\n\x03\x63sr\x18\x02 \x02(\x0c\"$\n\x14RecertifyDeviceReply\x12\x0c\n\x04\x63\x65rt\x18\x01 \x02(\t\"0\n\x10SignInDeviceCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x0b\n\x03\x64id\x18\x02 \x02(\x0c\"5\n\x0eSignInUserCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x12\n\ncredential\x18\x02 \x02(\x0c\"O\n\x0fSignInUserReply\x12\x1a\n\x12need_second_factor\x18\x01 \x01(\x08\x12 \n\x18need_second_factor_setup\x18\x02 \x01(\x08\"C\n\x14\x45xtAuthSessionNonces\x12\x14\n\x0csessionNonce\x18\x01 \x02(\t\x12\x15\n\rdelegateNonce\x18\x02 \x02(\t\"+\n\x13\x45xtAuthSessionQuery\x12\x14\n\x0csessionNonce\x18\x01 \x02(\t\"\x8d\x01\n\x18\x45xtAuthSessionAttributes\x12\x0e\n\x06userId\x18\x01 \x01(\t\x12\x11\n\tfirstName\x18\x02 \x01(\t\x12\x10\n\x08lastName\x18\x03 \x01(\t\x12\x1a\n\x12need_second_factor\x18\x04 \x01(\x08\x12 \n\x18need_second_factor_setup\x18\x05 \x01(\x08\"&\n\x10MobileAccessCode\x12\x12\n\naccessCode\x18\x01 \x01(\t\"@\n\x16\x41uthorizeAPIClientCall\x12\x12\n\naccessCode\x18\x01 \x01(\t\x12\x12\n\ndeviceName\x18\x02 \x01(\t\"L\n\x17\x41uthorizeAPIClientReply\x12\x0e\n\x06userId\x18\x01 \x01(\t\x12\r\n\x05orgId\x18\x02 \x01(\t\x12\x12\n\nisOrgAdmin\x18\x03 \x01(\x08\")\n\x15ListSharedFoldersCall\x12\x10\n\x08store_id\x18\x01 \x03(\x0c\"X\n\x16ListSharedFoldersReply\x12)\n\rshared_folder\x18\x01 \x03(\x0b\x32\x12.sp.PBSharedFolder\x12\x13\n\x0btotal_count\x18\x02 \x01(\r\"<\n\x12\x44\x65\x61\x63tivateUserCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x15\n\rerase_devices\x18\x02 \x02(\x08\",\n\x16\x41\x64\x64UserToWhitelistCall\x12\x12\n\nuser_email\x18\x01 \x02(\t\"1\n\x1bRemoveUserFromWhitelistCall\x12\x12\n\nuser_email\x18\x01 \x02(\t\"5\n\x19ListWhitelistedUsersReply\x12\x18\n\x04user\x18\x01 \x03(\x0b\x32\n.sp.PBUser\"q\n\x0e\x43heckQuotaCall\x12.\n\x05store\x18\x01 \x03(\x0b\x32\x1f.sp.CheckQuotaCall.PBStoreUsage\x1a/\n\x0cPBStoreUsage\x12\x0b\n\x03sid\x18\x01 \x02(\x0c\x12\x12\n\nbytes_used\x18\x02 \x02(\x04\"\x88\x01\n\x0f\x43heckQuotaReply\x12\x37\n\x05store\x18\x01 \x03(\x0b\x32(.sp.CheckQuotaReply.PBStoreShouldCollect\x1a<\n\x14PBStoreShouldCollect\x12\x0b\n\x03sid\x18\x01 \x02(\x0c\x12\x17\n\x0f\x63ollect_content\x18\x02 \x02(\x08\"\x1e\n\rGetQuotaReply\x12\r\n\x05quota\x18\x01 \x01(\x04\"\x1d\n\x0cSetQuotaCall\x12\r\n\x05quota\x18\x01 \x02(\x04\"\x1d\n\rCreateUrlCall\x12\x0c\n\x04soid\x18\x01 \x02(\t\"\x9b\x01\n\x0fPBRestObjectUrl\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x0c\n\x04soid\x18\x02 \x02(\t\x12\r\n\x05token\x18\x03 \x02(\t\x12\x12\n\ncreated_by\x18\x04 \x02(\t\x12\x0f\n\x07\x65xpires\x18\x05 \x01(\x04\x12\x1b\n\x0chas_password\x18\x06 \x01(\x08:\x05\x66\x61lse\x12\x1c\n\rrequire_login\x18\x07 \x01(\x08:\x05\x66\x61lse\"7\n\x0e\x43reateUrlReply\x12%\n\x08url_info\x18\x01 \x02(\x0b\x32\x13.sp.PBRestObjectUrl\"1\n\x11SetUrlExpiresCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x0f\n\x07\x65xpires\x18\x02 \x02(\x04\"#\n\x14RemoveUrlExpiresCall\x12\x0b\n\x03key\x18\x01 \x02(\t\"/\n\x0eGetUrlInfoCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x10\n\x08password\x18\x02 \x01(\x0c\"8\n\x0fGetUrlInfoReply\x12%\n\x08url_info\x18\x01 \x02(\x0b\x32\x13.sp.PBRestObjectUrl\"\x1c\n\rRemoveUrlCall\x12\x0b\n\x03key\x18\x01 \x02(\t\"3\n\x12SetUrlPasswordCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x10\n\x08password\x18\x02 \x02(\x0c\"$\n\x15RemoveUrlPasswordCall\x12\x0b\n\x03key\x18\x01 \x02(\t\"8\n\x17ValidateUrlPasswordCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x10\n\x08password\x18\x02 \x02(\x0c\",\n\x17\x44\x65stroySharedFolderCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\"i\n\x1bSendPriorityDefectEmailCall\x12\x11\n\tdefect_id\x18\x01 \x02(\t\x12\x15\n\rcontact_email\x18\x02 \x02(\t\x12\x0f\n\x07subject\x18\x03 \x02(\t\x12\x0f\n\x07message\x18\x04 \x02(\t\"\x14\n\x12SetupTwoFactorCall\"%\n\x13SetupTwoFactorReply\x12\x0e\n\x06secret\x18\x01 \x02(\x0c\"U\n\x1bSetTwoFactorEnforcementCall\x12\x0f\n\x07\x65nforce\x18\x01 \x02(\x08\x12\x14\n\x0c\x63urrent_code\x18\x02 \x01(\x05\x12\x0f\n\x07user_id\x18\x03 \x01(\t\")\n\x14ListUrlsForStoreCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\"9\n\x15ListUrlsForStoreReply\x12 \n\x03url\x18\x01 \x03(\x0b\x32\x13.sp.PBRestObjectUrl\"/\n\x17ProvideSecondFactorCall\x12\x14\n\x0c\x63urrent_code\x18\x01 \x02(\x05\",\n\x15ProvideBackupCodeCall\x12\x13\n\x0b\x62\x61\x63kup_code\x18\x01 \x02(\t\"w\n\x13GetBackupCodesReply\x12\x31\n\x05\x63odes\x18\x01 \x03(\x0b\x32\".sp.GetBackupCodesReply.BackupCode\x1a-\n\nBackupCode\x12\x0c\n\x04\x63ode\x18\x01 \x02(\t\x12\x11\n\tdate_used\x18\x02 \x01(\x04\"&\n\x0f\x43reateGroupCall\x12\x13\n\x0b\x63ommon_name\x18\x01 \x02(\t\"$\n\x10\x43reateGroupReply\x12\x10\n\x08group_id\x18\x01 \x02(\r\"?\n\x16SetGroupCommonNameCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x13\n\x0b\x63ommon_name\x18\x02 \x02(\t\"<\n\x13\x41\x64\x64GroupMembersCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x13\n\x0buser_emails\x18\x02 \x03(\t\"?\n\x16RemoveGroupMembersCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x13\n\x0buser_emails\x18\x02 \x03(\t\"#\n\x0f\x44\x65leteGroupCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\"L\n\x0eListGroupsCall\x12\x13\n\x0bmax_results\x18\x01 \x02(\r\x12\x0e\n\x06offset\x18\x02 \x02(\r\x12\x15\n\rsearch_prefix\x18\x03 \x01(\t\"C\n\x0fListGroupsReply\x12\x1b\n\x06groups\x18\x01 \x03(\x0b\x32\x0b.sp.PBGroup\x12\x13\n\x0btotal_count\x18\x02 \x02(\r\"(\n\x14ListGroupMembersCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\"2\n\x15ListGroupMembersReply\x12\x19\n\x05users\x18\x01 \x03(\x0b\x32\n.sp.PBUser\"R\n SetTwoFactorSetupEnforcementCall\x12.\n\x05level\x18\x01 \x02(\x0e\x32\x1f.sp.PBTwoFactorEnforcementLevel\"S\n!GetTwoFactorSetupEnforcementReply\x12.\n\x05level\x18\x01 \x02(\x0e\x32\x1f.sp.PBTwoFactorEnforcementLevel\"G\n!ListGroupStatusInSharedFolderCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x10\n\x08share_id\x18\x02 \x02(\x0c\"\xc7\x01\n\"ListGroupStatusInSharedFolderReply\x12M\n\x0euser_and_state\x18\x01 \x03(\x0b\x32\x35.sp.ListGroupStatusInSharedFolderReply.PBUserAndState\x1aR\n\x0ePBUserAndState\x12\x18\n\x04user\x18\x01 \x02(\x0b\x32\n.sp.PBUser\x12&\n\x05state\x18\x02 \x02(\x0e\x32\x17.sp.PBSharedFolderState\"Y\n\x1bSearchOrganizationUsersCall\x12\x13\n\x0bmax_results\x18\x01 \x02(\r\x12\x0e\n\x06offset\x18\x02 \x02(\r\x12\x15\n\rsearch_prefix\x18\x03 \x02(\t\"B\n\x1cSearchOrganizationUsersReply\x12\"\n\x0ematching_users\x18\x01 \x03(\x0b\x32\n.sp.PBUser\"<\n\x16SetUrlRequireLoginCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x15\n\rrequire_login\x18\x02 \x02(\x08\"0\n\x1dListUserLeftSharedFoldersCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t*+\n\x14PBAuthorizationLevel\x12\x08\n\x04USER\x10\x00\x12\t\n\x05\x41\x44MIN\x10\x01*8\n\x13PBSharedFolderState\x12\x0b\n\x07PENDING\x10\x00\x12\n\n\x06JOINED\x10\x01\x12\x08\n\x04LEFT\x10\x02*H\n\x1bPBTwoFactorEnforcementLevel\x12\x0e\n\nDISALLOWED\x10\x00\x12\n\n\x06OPT_IN\x10\x01\x12\r\n\tMANDATORY\x10\x02\x32\xa7\x31\n\tSPService\x12 \n\t__error__\x12\x05.Void\x1a\x0c.PBException\x12\x31\n\x0fRequestToSignUp\x12\x17.sp.RequestToSignUpCall\x1a\x05.Void\x12\x41\n\x0eSignUpWithCode\x12\x16.sp.SignUpWithCodeCall\x1a\x17.sp.SignUpWithCodeReply\x12J\n\x11ResolveSignUpCode\x12\x19.sp.ResolveSignUpCodeCall\x1a\x1a.sp.ResolveSignUpCodeReply\x12%\n\x15SendEmailVerification\x12\x05.Void\x1a\x05.Void\x12)\n\x0bVerifyEmail\x12\x13.sp.VerifyEmailCall\x1a\x05.Void\x12\x17\n\x07SignOut\x12\x05.Void\x1a\x05.Void\x12\x41\n\x0eRegisterDevice\x12\x16.sp.RegisterDeviceCall\x1a\x17.sp.RegisterDeviceReply\x12S\n\x14InviteToOrganization\x12\x1c.sp.InviteToOrganizationCall\x1a\x1d.sp.InviteToOrganizationReply\x12K\n\x1c\x41\x63\x63\x65ptOrganizationInvitation\x12$.sp.AcceptOrganizationInvitationCall\x1a\x05.Void\x12K\n\x1c\x44\x65leteOrganizationInvitation\x12$.sp.DeleteOrganizationInvitationCall\x1a\x05.Void\x12\x14\n\x04Noop\x12\x05.Void\x1a\x05.Void\x12)\n\x0bShareFolder\x12\x13.sp.ShareFolderCall\x1a\x05.Void\x12\x33\n\x10JoinSharedFolder\x12\x18.sp.JoinSharedFolderCall\x1a\x05.Void\x12\x41\n\x1cIgnoreSharedFolderInvitation\x12\x1a.sp.IgnoreSharedFolderCall\x1a\x05.Void\x12\x35\n\x11LeaveSharedFolder\x12\x19.sp.LeaveSharedFolderCall\x1a\x05.Void\x12L\n\x1cListPendingFolderInvitations\x12\x05.Void\x1a%.sp.ListPendingFolderInvitationsReply\x12%\n\tEmailUser\x12\x11.sp.EmailUserCall\x1a\x05.Void\x12M\n\x12GetUserPreferences\x12\x1a.sp.GetUserPreferencesCall\x1a\x1b.sp.GetUserPreferencesReply\x12\x37\n\x12SetUserPreferences\x12\x1a.sp.SetUserPreferencesCall\x1a\x05.Void\x12\\\n\x17ListOrganizationMembers\x12\x1f.sp.ListOrganizationMembersCall\x1a .sp.ListOrganizationMembersReply\x12?\n\x16SendPasswordResetEmail\x12\x1e.sp.SendPasswordResetEmailCall\x1a\x05.Void\x12-\n\rResetPassword\x12\x15.sp.ResetPasswordCall\x1a\x05.Void\x12/\n\x0e\x43hangePassword\x12\x16.sp.ChangePasswordCall\x1a\x05.Void\x12=\n\x15SetAuthorizationLevel\x12\x1d.sp.SetAuthorizationLevelCall\x1a\x05.Void\x12/\n\x0e\x44\x65\x61\x63tivateUser\x12\x16.sp.DeactivateUserCall\x1a\x05.Void\x12%\n\tUpdateACL\x12\x11.sp.UpdateACLCall\x1a\x05.Void\x12%\n\tDeleteACL\x12\x11.sp.DeleteACLCall\x1a\x05.Void\x12\"\n\x05Noop2\x12\x12.sp.GetUserCRLCall\x1a\x05.Void\x12\x15\n\x05Noop3\x12\x05.Void\x1a\x05.Void\x12+\n\x0cUnlinkDevice\x12\x14.sp.UnlinkDeviceCall\x1a\x05.Void\x12>\n\rGetDeviceInfo\x12\x15.sp.GetDeviceInfoCall\x1a\x16.sp.GetDeviceInfoReply\x12\x44\n\x0fListUserDevices\x12\x17.sp.ListUserDevicesCall\x1a\x18.sp.ListUserDevicesReply\x12n\n\x1dListOrganizationSharedFolders\x12%.sp.ListOrganizationSharedFoldersCall\x1a&.sp.ListOrganizationSharedFoldersReply\x12^\n\x1bListUserJoinedSharedFolders\x12#.sp.ListUserJoinedSharedFoldersCall\x1a\x1a.sp.ListSharedFoldersReply\x12Z\n\x19ListUserLeftSharedFolders\x12!.sp.ListUserLeftSharedFoldersCall\x1a\x1a.sp.ListSharedFoldersReply\x12H\n\x1aGetOrganizationInvitations\x12\x05.Void\x1a#.sp.GetOrganizationInvitationsReply\x12\x36\n\x11GetOrgPreferences\x12\x05.Void\x1a\x1a.sp.GetOrgPreferencesReply\x12\x35\n\x11SetOrgPreferences\x12\x19.sp.SetOrgPreferencesCall\x1a\x05.Void\x12M\n\x10UnsubscribeEmail\x12\x1b.sp.SetUnsubscribeEmailCall\x1a\x1c.sp.GetUnsubscribeEmailReply\x12>\n\x15GetAuthorizationLevel\x12\x05.Void\x1a\x1e.sp.GetAuthorizationLevelReply\x12:\n\x13GetTeamServerUserID\x12\x05.Void\x1a\x1c.sp.GetTeamServerUserIDReply\x12K\n\x18RegisterTeamServerDevice\x12\x16.sp.RegisterDeviceCall\x1a\x17.sp.RegisterDeviceReply\x12\x1d\n\rExtendSession\x12\x05.Void\x1a\x05.Void\x12L\n\x1cListOrganizationInvitedUsers\x12\x05.Void\x1a%.sp.ListOrganizationInvitedUsersReply\x12P\n\x13GetCommandQueueHead\x12\x1b.sp.GetCommandQueueHeadCall\x1a\x1c.sp.GetCommandQueueHeadReply\x12P\n\x13\x41\x63kCommandQueueHead\x12\x1b.sp.AckCommandQueueHeadCall\x1a\x1c.sp.AckCommandQueueHeadReply\x12Y\n#DeleteOrganizationInvitationForUser\x12+.sp.DeleteOrganizationInvitationForUserCall\x1a\x05.Void\x12\x43\n\x18SetDeviceOSFamilyAndName\x12 .sp.SetDeviceOSFamilyAndNameCall\x1a\x05.Void\x12)\n\x06GetACL\x12\x0e.sp.GetACLCall\x1a\x0f.sp.GetACLReply\x12\x44\n\x0fRecertifyDevice\x12\x17.sp.RecertifyDeviceCall\x1a\x18.sp.RecertifyDeviceReply\x12N\n\x19RecertifyTeamServerDevice\x12\x17.sp.RecertifyDeviceCall\x1a\x18.sp.RecertifyDeviceReply\x12\x36\n\x11GetOrganizationID\x12\x05.Void\x1a\x1a.sp.GetOrganizationIDReply\x12;\n\x10\x43redentialSignIn\x12\x12.sp.SignInUserCall\x1a\x13.sp.SignInUserReply\x12/\n\x12ValidateCredential\x12\x12.sp.SignInUserCall\x1a\x05.Void\x12\x35\n\nSignInUser\x12\x12.sp.SignInUserCall\x1a\x13.sp.SignInUserReply\x12+\n\x0cSignInDevice\x12\x14.sp.SignInDeviceCall\x1a\x05.Void\x12:\n\x17\x45xtAuthBeginTransaction\x12\x05.Void\x1a\x18.sp.ExtAuthSessionNonces\x12T\n\x1b\x45xtAuthGetSessionAttributes\x12\x17.sp.ExtAuthSessionQuery\x1a\x1c.sp.ExtAuthSessionAttributes\x12$\n\x05Noop4\x12\x05.Void\x1a\x14.sp.MobileAccessCode\x12M\n\x12\x41uthorizeAPIClient\x12\x1a.sp.AuthorizeAPIClientCall\x1a\x1b.sp.AuthorizeAPIClientReply\x12J\n\x11ListSharedFolders\x12\x19.sp.ListSharedFoldersCall\x1a\x1a.sp.ListSharedFoldersReply\x12\x37\n\x12\x41\x64\x64UserToWhitelist\x12\x1a.sp.AddUserToWhitelistCall\x1a\x05.Void\x12\x41\n\x17RemoveUserFromWhitelist\x12\x1f.sp.RemoveUserFromWhitelistCall\x1a\x05.Void\x12<\n\x14ListWhitelistedUsers\x12\x05.Void\x1a\x1d.sp.ListWhitelistedUsersReply\x12\x39\n\x13SetSharedFolderName\x12\x1b.sp.SetSharedFolderNameCall\x1a\x05.Void\x12\x35\n\nCheckQuota\x12\x12.sp.CheckQuotaCall\x1a\x13.sp.CheckQuotaReply\x12#\n\x08SetQuota\x12\x10.sp.SetQuotaCall\x1a\x05.Void\x12\x1b\n\x0bRemoveQuota\x12\x05.Void\x1a\x05.Void\x12$\n\x08GetQuota\x12\x05.Void\x1a\x11.sp.GetQuotaReply\x12\x32\n\tCreateUrl\x12\x11.sp.CreateUrlCall\x1a\x12.sp.CreateUrlReply\x12\x35\n\nGetUrlInfo\x12\x12.sp.GetUrlInfoCall\x1a\x13.sp.GetUrlInfoReply\x12-\n\rSetUrlExpires\x12\x15.sp.SetUrlExpiresCall\x1a\x05.Void\x12\x33\n\x10RemoveUrlExpires\x12\x18.sp.RemoveUrlExpiresCall\x1a\x05.Void\x12%\n\tRemoveUrl\x12\x11.sp.RemoveUrlCall\x1a\x05.Void\x12/\n\x0eSetUrlPassword\x12\x16.sp.SetUrlPasswordCall\x1a\x05.Void\x12\x35\n\x11RemoveUrlPassword\x12\x19.sp.RemoveUrlPasswordCall\x1a\x05.Void\x12\x39\n\x13ValidateUrlPassword\x12\x1b.sp.ValidateUrlPasswordCall\x1a\x05.Void\x12\x39\n\x13\x44\x65stroySharedFolder\x12\x1b.sp.DestroySharedFolderCall\x1a\x05.Void\x12\x41\n\x17SendPriorityDefectEmail\x12\x1f.sp.SendPriorityDefectEmailCall\x1a\x05.Void\x12\x30\n\x0eSetupTwoFactor\x12\x05.Void\x1a\x17.sp.SetupTwoFactorReply\x12\x41\n\x17SetTwoFactorEnforcement\x12\x1f.sp.SetTwoFactorEnforcementCall\x1a\x05.Void\x12G\n\x10ListUrlsForStore\x12\x18.sp.ListUrlsForStoreCall\x1a\x19.sp.ListUrlsForStoreReply\x12\x39\n\x13ProvideSecondFactor\x12\x1b.sp.ProvideSecondFactorCall\x1a\x05.Void\x12\x35\n\x11ProvideBackupCode\x12\x19.sp.ProvideBackupCodeCall\x1a\x05.Void\x12\x30\n\x0eGetBackupCodes\x12\x05.Void\x1a\x17.sp.GetBackupCodesReply\x12\x38\n\x0b\x43reateGroup\x12\x13.sp.CreateGroupCall\x1a\x14.sp.CreateGroupReply\x12\x37\n\x12SetGroupCommonName\x12\x1a.sp.SetGroupCommonNameCall\x1a\x05.Void\x12\x31\n\x0f\x41\x64\x64GroupMembers\x12\x17.sp.AddGroupMembersCall\x1a\x05.Void\x12\x37\n\x12RemoveGroupMembers\x12\x1a.sp.RemoveGroupMembersCall\x1a\x05.Void\x12)\n\x0b\x44\x65leteGroup\x12\x13.sp.DeleteGroupCall\x1a\x05.Void\x12\x35\n\nListGroups\x12\x12.sp.ListGroupsCall\x1a\x13.sp.ListGroupsReply\x12G\n\x10ListGroupMembers\x12\x18.sp.ListGroupMembersCall\x1a\x19.sp.ListGroupMembersReply\x12K\n\x1cSetTwoFactorSetupEnforcement\x12$.sp.SetTwoFactorSetupEnforcementCall\x1a\x05.Void\x12L\n\x1cGetTwoFactorSetupEnforcement\x12\x05.Void\x1a%.sp.GetTwoFactorSetupEnforcementReply\x12n\n\x1dListGroupStatusInSharedFolder\x12%.sp.ListGroupStatusInSharedFolderCall\x1a&.sp.ListGroupStatusInSharedFolderReply\x12*\n\x1aSyncGroupsWithLdapEndpoint\x12\x05.Void\x1a\x05.Void\x12<\n\x14GetUserSettingsToken\x12\x05.Void\x1a\x1d.sp.GetUserSettingsTokenReply\x12;\n\x14SetUserSettingsToken\x12\x1c.sp.SetUserSettingsTokenCall\x1a\x05.Void\x12\'\n\x17\x44\x65leteUserSettingsToken\x12\x05.Void\x1a\x05.Void\x12\\\n\x17SearchOrganizationUsers\x12\x1f.sp.SearchOrganizationUsersCall\x1a .sp.SearchOrganizationUsersReply\x12\x37\n\x12SetUrlRequireLogin\x12\x1a.sp.SetUrlRequireLoginCall\x1a\x05.Void\x12\x35\n\x16GetAccessCodeForMobile\x12\x05.Void\x1a\x14.sp.MobileAccessCode\x12,\n\rGetAccessCode\x12\x05.Void\x1a\x14.sp.MobileAccessCode\x12G\n\x14RegisterStorageAgent\x12\x16.sp.RegisterDeviceCall\x1a\x17.sp.RegisterDeviceReplyB\x14\n\x10\x63om.aerofs.protoH\x03')
+  serialized_pb=_b('\n\x08sp.proto\x12\x02sp\x1a\x0c\x63ommon.proto\x1a\tcmd.proto\"U\n\x1cSetDeviceOSFamilyAndNameCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\x11\n\tos_family\x18\x02 \x02(\t\x12\x0f\n\x07os_name\x18\x03 \x02(\t\":\n\'DeleteOrganizationInvitationForUserCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\"4\n!ListOrganizationInvitedUsersReply\x12\x0f\n\x07user_id\x18\x01 \x03(\t\"b\n\x12SignUpWithCodeCall\x12\x13\n\x0bsignup_code\x18\x01 \x02(\t\x12\x10\n\x08password\x18\x03 \x02(\x0c\x12\x12\n\nfirst_name\x18\x04 \x02(\t\x12\x11\n\tlast_name\x18\x05 \x02(\t\"<\n\x13SignUpWithCodeReply\x12\x0e\n\x06org_id\x18\x01 \x02(\t\x12\x15\n\rexisting_team\x18\x02 \x02(\x08\"%\n\x15ResolveSignUpCodeCall\x12\x0c\n\x04\x63ode\x18\x01 \x02(\t\"/\n\x16ResolveSignUpCodeReply\x12\x15\n\remail_address\x18\x01 \x02(\t\"(\n\x19VerifyBatchSignUpCodeCall\x12\x0b\n\x03\x62sc\x18\x01 \x02(\t\",\n\x13RequestToSignUpCall\x12\x15\n\remail_address\x18\x01 \x02(\t\"1\n\x18InviteToOrganizationCall\x12\x15\n\remail_address\x18\x01 \x02(\t\":\n\x19InviteToOrganizationReply\x12\x1d\n\x0flocally_managed\x18\x01 \x01(\x08:\x04true\";\n AcceptOrganizationInvitationCall\x12\x17\n\x0forganization_id\x18\x01 \x02(\x05\";\n DeleteOrganizationInvitationCall\x12\x17\n\x0forganization_id\x18\x01 \x02(\x05\"\xb5\x01\n\x0fShareFolderCall\x12\x13\n\x0b\x66older_name\x18\x03 \x02(\t\x12\x10\n\x08share_id\x18\x02 \x02(\x0c\x12\x32\n\x13subject_permissions\x18\x01 \x03(\x0b\x32\x15.PBSubjectPermissions\x12\x0c\n\x04note\x18\x04 \x01(\t\x12\x10\n\x08\x65xternal\x18\x05 \x01(\x08\x12\'\n\x1fsuppress_sharing_rules_warnings\x18\x06 \x01(\x08\";\n\x14JoinSharedFolderCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\x12\x10\n\x08\x65xternal\x18\x02 \x01(\x08\"+\n\x16IgnoreSharedFolderCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\"*\n\x15LeaveSharedFolderCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\"@\n\x17SetSharedFolderNameCall\x12\x10\n\x08share_id\x18\x01 \x02(\x0c\x12\x13\n\x0b\x66older_name\x18\x02 \x02(\t\"L\n!ListPendingFolderInvitationsReply\x12\'\n\ninvitation\x18\x01 \x03(\x0b\x32\x13.PBFolderInvitation\".\n\rEmailUserCall\x12\x0f\n\x07subject\x18\x01 \x02(\t\x12\x0c\n\x04\x62ody\x18\x02 \x02(\t\"+\n\x16GetUserPreferencesCall\x12\x11\n\tdevice_id\x18\x01 \x01(\x0c\"\x87\x01\n\x17GetUserPreferencesReply\x12\x12\n\nfirst_name\x18\x01 \x02(\t\x12\x11\n\tlast_name\x18\x02 \x02(\t\x12\x13\n\x0b\x64\x65vice_name\x18\x03 \x01(\t\x12\x13\n\x0bsignup_date\x18\x04 \x01(\x04\x12\x1b\n\x13two_factor_enforced\x18\x05 \x01(\x08\"*\n\x19GetUserSettingsTokenReply\x12\r\n\x05token\x18\x01 \x01(\t\")\n\x18SetUserSettingsTokenCall\x12\r\n\x05token\x18\x01 \x02(\t\"x\n\x16SetUserPreferencesCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x12\n\nfirst_name\x18\x02 \x01(\t\x12\x11\n\tlast_name\x18\x03 \x01(\t\x12\x11\n\tdevice_id\x18\x04 \x01(\x0c\x12\x13\n\x0b\x64\x65vice_name\x18\x05 \x01(\t\"0\n\nGetACLCall\x12\r\n\x05\x65poch\x18\x01 \x02(\x04\x12\x13\n\x0bincremental\x18\x02 \x01(\x08\"\xeb\x01\n\x0bGetACLReply\x12-\n\tstore_acl\x18\x01 \x03(\x0b\x32\x1a.sp.GetACLReply.PBStoreACL\x12\r\n\x05\x65poch\x18\x02 \x02(\x04\x12\x13\n\x0bincremental\x18\x03 \x01(\x08\x12\x15\n\rleft_store_id\x18\x04 \x03(\x0c\x1ar\n\nPBStoreACL\x12\x10\n\x08store_id\x18\x01 \x02(\x0c\x12\x32\n\x13subject_permissions\x18\x02 \x03(\x0b\x32\x15.PBSubjectPermissions\x12\x10\n\x08\x65xternal\x18\x03 \x02(\x08\x12\x0c\n\x04name\x18\x04 \x02(\t\"\x80\x01\n\rUpdateACLCall\x12\x10\n\x08store_id\x18\x01 \x02(\x0c\x12\x0f\n\x07subject\x18\x02 \x02(\t\x12#\n\x0bpermissions\x18\x03 \x02(\x0b\x32\x0e.PBPermissions\x12\'\n\x1fsuppress_sharing_rules_warnings\x18\x04 \x01(\x08\"2\n\rDeleteACLCall\x12\x10\n\x08store_id\x18\x01 \x02(\x0c\x12\x0f\n\x07subject\x18\x02 \x02(\t\",\n\x0fVerifyEmailCall\x12\x19\n\x11verification_code\x18\x01 \x02(\t\"&\n\x18GetTeamServerUserIDReply\x12\n\n\x02id\x18\x01 \x02(\t\"\xe7\x01\n\x12RegisterDeviceCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\x0b\n\x03\x63sr\x18\x02 \x02(\x0c\x12\x11\n\tos_family\x18\x03 \x02(\t\x12\x0f\n\x07os_name\x18\x04 \x02(\t\x12\x13\n\x0b\x64\x65vice_name\x18\x05 \x02(\t\x12\x34\n\ninterfaces\x18\x06 \x03(\x0b\x32 .sp.RegisterDeviceCall.Interface\x12\r\n\x05token\x18\x07 \x01(\t\x1a\x33\n\tInterface\x12\x0c\n\x04name\x18\x01 \x02(\t\x12\x0b\n\x03mac\x18\x02 \x02(\t\x12\x0b\n\x03ips\x18\x03 \x03(\t\"#\n\x13RegisterDeviceReply\x12\x0c\n\x04\x63\x65rt\x18\x01 \x02(\t\"Y\n\x1bListOrganizationMembersCall\x12\x13\n\x0bmax_results\x18\x01 \x02(\r\x12\x0e\n\x06offset\x18\x02 \x02(\r\x12\x15\n\rsearch_string\x18\x03 \x01(\t\"\xd1\x01\n\x1cListOrganizationMembersReply\x12G\n\x0euser_and_level\x18\x01 \x03(\x0b\x32/.sp.ListOrganizationMembersReply.PBUserAndLevel\x12\x13\n\x0btotal_count\x18\x02 \x02(\r\x1aS\n\x0ePBUserAndLevel\x12\x18\n\x04user\x18\x01 \x02(\x0b\x32\n.sp.PBUser\x12\'\n\x05level\x18\x02 \x02(\x0e\x32\x18.sp.PBAuthorizationLevel\"(\n\x16GetOrganizationIDReply\x12\x0e\n\x06org_id\x18\x01 \x02(\t\"E\n\x1aGetAuthorizationLevelReply\x12\'\n\x05level\x18\x01 \x02(\x0e\x32\x18.sp.PBAuthorizationLevel\"`\n\x06PBUser\x12\x12\n\nuser_email\x18\x01 \x02(\t\x12\x12\n\nfirst_name\x18\x02 \x02(\t\x12\x11\n\tlast_name\x18\x03 \x02(\t\x12\x1b\n\x13two_factor_enforced\x18\x04 \x01(\x08\"L\n\x07PBGroup\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x13\n\x0b\x63ommon_name\x18\x02 \x02(\t\x12\x1a\n\x12\x65xternally_managed\x18\x03 \x02(\x08\"]\n\x19SetAuthorizationLevelCall\x12\x12\n\nuser_email\x18\x01 \x02(\t\x12,\n\nauth_level\x18\x02 \x02(\x0e\x32\x18.sp.PBAuthorizationLevel\"0\n\x1aSendPasswordResetEmailCall\x12\x12\n\nuser_email\x18\x01 \x02(\t\"J\n\x11ResetPasswordCall\x12\x1c\n\x14password_reset_token\x18\x01 \x02(\t\x12\x17\n\x0fnew_credentials\x18\x02 \x02(\x0c\"F\n\x12\x43hangePasswordCall\x12\x17\n\x0fold_credentials\x18\x01 \x02(\x0c\x12\x17\n\x0fnew_credentials\x18\x02 \x02(\x0c\"#\n\x0eGetUserCRLCall\x12\x11\n\tcrl_epoch\x18\x01 \x02(\x04\"4\n\x10UnlinkDeviceCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\r\n\x05\x65rase\x18\x02 \x02(\x08\"&\n\x11GetDeviceInfoCall\x12\x11\n\tdevice_id\x18\x01 \x03(\x0c\"\x8e\x01\n\x12GetDeviceInfoReply\x12\x38\n\x0b\x64\x65vice_info\x18\x01 \x03(\x0b\x32#.sp.GetDeviceInfoReply.PBDeviceInfo\x1a>\n\x0cPBDeviceInfo\x12\x19\n\x05owner\x18\x01 \x01(\x0b\x32\n.sp.PBUser\x12\x13\n\x0b\x64\x65vice_name\x18\x02 \x01(\t\"&\n\x13ListUserDevicesCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\"\xa1\x01\n\x14ListUserDevicesReply\x12\x31\n\x06\x64\x65vice\x18\x01 \x03(\x0b\x32!.sp.ListUserDevicesReply.PBDevice\x1aV\n\x08PBDevice\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\x13\n\x0b\x64\x65vice_name\x18\x02 \x02(\t\x12\x11\n\tos_family\x18\x03 \x02(\t\x12\x0f\n\x07os_name\x18\x04 \x02(\t\"_\n!ListOrganizationSharedFoldersCall\x12\x13\n\x0bmax_results\x18\x01 \x02(\r\x12\x0e\n\x06offset\x18\x02 \x02(\r\x12\x15\n\rsearch_string\x18\x03 \x01(\t\"d\n\"ListOrganizationSharedFoldersReply\x12)\n\rshared_folder\x18\x01 \x03(\x0b\x32\x12.sp.PBSharedFolder\x12\x13\n\x0btotal_count\x18\x02 \x02(\r\"n\n\x1fListUserJoinedSharedFoldersCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x13\n\x0bmax_results\x18\x02 \x02(\r\x12\x0e\n\x06offset\x18\x03 \x02(\r\x12\x15\n\rsearch_string\x18\x04 \x01(\t\"\x94\x04\n\x0ePBSharedFolder\x12\x10\n\x08store_id\x18\x01 \x02(\x0c\x12\x0c\n\x04name\x18\x02 \x02(\t\x12\x15\n\rowned_by_team\x18\x03 \x02(\x08\x12P\n\x1auser_permissions_and_state\x18\x04 \x03(\x0b\x32,.sp.PBSharedFolder.PBUserPermissionsAndState\x12@\n\x11group_permissions\x18\x05 \x03(\x0b\x32%.sp.PBSharedFolder.PBGroupPermissions\x12[\n%requested_users_permissions_and_state\x18\x06 \x01(\x0b\x32,.sp.PBSharedFolder.PBUserPermissionsAndState\x1a\x82\x01\n\x19PBUserPermissionsAndState\x12\x18\n\x04user\x18\x01 \x02(\x0b\x32\n.sp.PBUser\x12#\n\x0bpermissions\x18\x02 \x02(\x0b\x32\x0e.PBPermissions\x12&\n\x05state\x18\x03 \x02(\x0e\x32\x17.sp.PBSharedFolderState\x1aU\n\x12PBGroupPermissions\x12\x1a\n\x05group\x18\x01 \x02(\x0b\x32\x0b.sp.PBGroup\x12#\n\x0bpermissions\x18\x02 \x02(\x0b\x32\x0e.PBPermissions\"\xde\x01\n\x1fGetOrganizationInvitationsReply\x12\\\n\x18organization_invitations\x18\x02 \x03(\x0b\x32:.sp.GetOrganizationInvitationsReply.OrganizationInvitation\x1a]\n\x16OrganizationInvitation\x12\x0f\n\x07inviter\x18\x01 \x02(\t\x12\x19\n\x11organization_name\x18\x02 \x02(\t\x12\x17\n\x0forganization_id\x18\x03 \x02(\x05\"\xc0\x01\n\x16GetOrgPreferencesReply\x12\x19\n\x11organization_name\x18\x01 \x02(\t\x12\"\n\x1aorganization_contact_phone\x18\x02 \x02(\t\x12.\n\x05level\x18\x03 \x02(\x0e\x32\x1f.sp.PBTwoFactorEnforcementLevel\x12\x1a\n\x12license_seats_used\x18\x04 \x02(\x05\x12\x1b\n\x13\x65xternal_user_count\x18\x05 \x02(\x05\"M\n\x15SetOrgPreferencesCall\x12\x10\n\x08org_name\x18\x01 \x01(\t\x12\"\n\x1aorganization_contact_phone\x18\x02 \x01(\t\"4\n\x17SetUnsubscribeEmailCall\x12\x19\n\x11unsubscribe_token\x18\x01 \x02(\t\",\n\x18GetUnsubscribeEmailReply\x12\x10\n\x08\x65mail_id\x18\x01 \x02(\t\"3\n\nPBFullName\x12\x12\n\nfirst_name\x18\x01 \x02(\t\x12\x11\n\tlast_name\x18\x02 \x02(\t\",\n\x17GetCommandQueueHeadCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\"I\n\x18GetCommandQueueHeadReply\x12\x19\n\x07\x63ommand\x18\x01 \x01(\x0b\x32\x08.Command\x12\x12\n\nqueue_size\x18\x02 \x02(\x03\"J\n\x17\x41\x63kCommandQueueHeadCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\r\n\x05\x65poch\x18\x02 \x02(\x04\x12\r\n\x05\x65rror\x18\x03 \x02(\x08\"I\n\x18\x41\x63kCommandQueueHeadReply\x12\x19\n\x07\x63ommand\x18\x01 \x01(\x0b\x32\x08.Command\x12\x12\n\nqueue_size\x18\x02 \x02(\x03\"5\n\x13RecertifyDeviceCall\x12\x11\n\tdevice_id\x18\x01 \x02(\x0c\x12\x0b\n\x03\x63sr\x18\x02 \x02(\x0c\"$\n\x14RecertifyDeviceReply\x12\x0c\n\x04\x63\x65rt\x18\x01 \x02(\t\"0\n\x10SignInDeviceCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x0b\n\x03\x64id\x18\x02 \x02(\x0c\"5\n\x0eSignInUserCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x12\n\ncredential\x18\x02 \x02(\x0c\"O\n\x0fSignInUserReply\x12\x1a\n\x12need_second_factor\x18\x01 \x01(\x08\x12 \n\x18need_second_factor_setup\x18\x02 \x01(\x08\"C\n\x14\x45xtAuthSessionNonces\x12\x14\n\x0csessionNonce\x18\x01 \x02(\t\x12\x15\n\rdelegateNonce\x18\x02 \x02(\t\"+\n\x13\x45xtAuthSessionQuery\x12\x14\n\x0csessionNonce\x18\x01 \x02(\t\"\x8d\x01\n\x18\x45xtAuthSessionAttributes\x12\x0e\n\x06userId\x18\x01 \x01(\t\x12\x11\n\tfirstName\x18\x02 \x01(\t\x12\x10\n\x08lastName\x18\x03 \x01(\t\x12\x1a\n\x12need_second_factor\x18\x04 \x01(\x08\x12 \n\x18need_second_factor_setup\x18\x05 \x01(\x08\"&\n\x10MobileAccessCode\x12\x12\n\naccessCode\x18\x01 \x01(\t\"@\n\x16\x41uthorizeAPIClientCall\x12\x12\n\naccessCode\x18\x01 \x01(\t\x12\x12\n\ndeviceName\x18\x02 \x01(\t\"L\n\x17\x41uthorizeAPIClientReply\x12\x0e\n\x06userId\x18\x01 \x01(\t\x12\r\n\x05orgId\x18\x02 \x01(\t\x12\x12\n\nisOrgAdmin\x18\x03 \x01(\x08\")\n\x15ListSharedFoldersCall\x12\x10\n\x08store_id\x18\x01 \x03(\x0c\"X\n\x16ListSharedFoldersReply\x12)\n\rshared_folder\x18\x01 \x03(\x0b\x32\x12.sp.PBSharedFolder\x12\x13\n\x0btotal_count\x18\x02 \x01(\r\"<\n\x12\x44\x65\x61\x63tivateUserCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t\x12\x15\n\rerase_devices\x18\x02 \x02(\x08\",\n\x16\x41\x64\x64UserToWhitelistCall\x12\x12\n\nuser_email\x18\x01 \x02(\t\"1\n\x1bRemoveUserFromWhitelistCall\x12\x12\n\nuser_email\x18\x01 \x02(\t\"5\n\x19ListWhitelistedUsersReply\x12\x18\n\x04user\x18\x01 \x03(\x0b\x32\n.sp.PBUser\"q\n\x0e\x43heckQuotaCall\x12.\n\x05store\x18\x01 \x03(\x0b\x32\x1f.sp.CheckQuotaCall.PBStoreUsage\x1a/\n\x0cPBStoreUsage\x12\x0b\n\x03sid\x18\x01 \x02(\x0c\x12\x12\n\nbytes_used\x18\x02 \x02(\x04\"\x88\x01\n\x0f\x43heckQuotaReply\x12\x37\n\x05store\x18\x01 \x03(\x0b\x32(.sp.CheckQuotaReply.PBStoreShouldCollect\x1a<\n\x14PBStoreShouldCollect\x12\x0b\n\x03sid\x18\x01 \x02(\x0c\x12\x17\n\x0f\x63ollect_content\x18\x02 \x02(\x08\"\x1e\n\rGetQuotaReply\x12\r\n\x05quota\x18\x01 \x01(\x04\"\x1d\n\x0cSetQuotaCall\x12\r\n\x05quota\x18\x01 \x02(\x04\"\x1d\n\rCreateUrlCall\x12\x0c\n\x04soid\x18\x01 \x02(\t\"\x9b\x01\n\x0fPBRestObjectUrl\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x0c\n\x04soid\x18\x02 \x02(\t\x12\r\n\x05token\x18\x03 \x02(\t\x12\x12\n\ncreated_by\x18\x04 \x02(\t\x12\x0f\n\x07\x65xpires\x18\x05 \x01(\x04\x12\x1b\n\x0chas_password\x18\x06 \x01(\x08:\x05\x66\x61lse\x12\x1c\n\rrequire_login\x18\x07 \x01(\x08:\x05\x66\x61lse\"7\n\x0e\x43reateUrlReply\x12%\n\x08url_info\x18\x01 \x02(\x0b\x32\x13.sp.PBRestObjectUrl\"1\n\x11SetUrlExpiresCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x0f\n\x07\x65xpires\x18\x02 \x02(\x04\"#\n\x14RemoveUrlExpiresCall\x12\x0b\n\x03key\x18\x01 \x02(\t\"/\n\x0eGetUrlInfoCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x10\n\x08password\x18\x02 \x01(\x0c\"8\n\x0fGetUrlInfoReply\x12%\n\x08url_info\x18\x01 \x02(\x0b\x32\x13.sp.PBRestObjectUrl\"\x1c\n\rRemoveUrlCall\x12\x0b\n\x03key\x18\x01 \x02(\t\"3\n\x12SetUrlPasswordCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x10\n\x08password\x18\x02 \x02(\x0c\"$\n\x15RemoveUrlPasswordCall\x12\x0b\n\x03key\x18\x01 \x02(\t\"8\n\x17ValidateUrlPasswordCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x10\n\x08password\x18\x02 \x02(\x0c\",\n\x17\x44\x65stroySharedFolderCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\"i\n\x1bSendPriorityDefectEmailCall\x12\x11\n\tdefect_id\x18\x01 \x02(\t\x12\x15\n\rcontact_email\x18\x02 \x02(\t\x12\x0f\n\x07subject\x18\x03 \x02(\t\x12\x0f\n\x07message\x18\x04 \x02(\t\"\x14\n\x12SetupTwoFactorCall\"%\n\x13SetupTwoFactorReply\x12\x0e\n\x06secret\x18\x01 \x02(\x0c\"U\n\x1bSetTwoFactorEnforcementCall\x12\x0f\n\x07\x65nforce\x18\x01 \x02(\x08\x12\x14\n\x0c\x63urrent_code\x18\x02 \x01(\x05\x12\x0f\n\x07user_id\x18\x03 \x01(\t\")\n\x14ListUrlsForStoreCall\x12\x11\n\tshared_id\x18\x01 \x02(\x0c\"9\n\x15ListUrlsForStoreReply\x12 \n\x03url\x18\x01 \x03(\x0b\x32\x13.sp.PBRestObjectUrl\"/\n\x17ProvideSecondFactorCall\x12\x14\n\x0c\x63urrent_code\x18\x01 \x02(\x05\",\n\x15ProvideBackupCodeCall\x12\x13\n\x0b\x62\x61\x63kup_code\x18\x01 \x02(\t\"w\n\x13GetBackupCodesReply\x12\x31\n\x05\x63odes\x18\x01 \x03(\x0b\x32\".sp.GetBackupCodesReply.BackupCode\x1a-\n\nBackupCode\x12\x0c\n\x04\x63ode\x18\x01 \x02(\t\x12\x11\n\tdate_used\x18\x02 \x01(\x04\"&\n\x0f\x43reateGroupCall\x12\x13\n\x0b\x63ommon_name\x18\x01 \x02(\t\"$\n\x10\x43reateGroupReply\x12\x10\n\x08group_id\x18\x01 \x02(\r\"?\n\x16SetGroupCommonNameCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x13\n\x0b\x63ommon_name\x18\x02 \x02(\t\"<\n\x13\x41\x64\x64GroupMembersCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x13\n\x0buser_emails\x18\x02 \x03(\t\"?\n\x16RemoveGroupMembersCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x13\n\x0buser_emails\x18\x02 \x03(\t\"#\n\x0f\x44\x65leteGroupCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\"L\n\x0eListGroupsCall\x12\x13\n\x0bmax_results\x18\x01 \x02(\r\x12\x0e\n\x06offset\x18\x02 \x02(\r\x12\x15\n\rsearch_prefix\x18\x03 \x01(\t\"C\n\x0fListGroupsReply\x12\x1b\n\x06groups\x18\x01 \x03(\x0b\x32\x0b.sp.PBGroup\x12\x13\n\x0btotal_count\x18\x02 \x02(\r\"(\n\x14ListGroupMembersCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\"2\n\x15ListGroupMembersReply\x12\x19\n\x05users\x18\x01 \x03(\x0b\x32\n.sp.PBUser\"R\n SetTwoFactorSetupEnforcementCall\x12.\n\x05level\x18\x01 \x02(\x0e\x32\x1f.sp.PBTwoFactorEnforcementLevel\"S\n!GetTwoFactorSetupEnforcementReply\x12.\n\x05level\x18\x01 \x02(\x0e\x32\x1f.sp.PBTwoFactorEnforcementLevel\"G\n!ListGroupStatusInSharedFolderCall\x12\x10\n\x08group_id\x18\x01 \x02(\r\x12\x10\n\x08share_id\x18\x02 \x02(\x0c\"\xc7\x01\n\"ListGroupStatusInSharedFolderReply\x12M\n\x0euser_and_state\x18\x01 \x03(\x0b\x32\x35.sp.ListGroupStatusInSharedFolderReply.PBUserAndState\x1aR\n\x0ePBUserAndState\x12\x18\n\x04user\x18\x01 \x02(\x0b\x32\n.sp.PBUser\x12&\n\x05state\x18\x02 \x02(\x0e\x32\x17.sp.PBSharedFolderState\"Y\n\x1bSearchOrganizationUsersCall\x12\x13\n\x0bmax_results\x18\x01 \x02(\r\x12\x0e\n\x06offset\x18\x02 \x02(\r\x12\x15\n\rsearch_prefix\x18\x03 \x02(\t\"B\n\x1cSearchOrganizationUsersReply\x12\"\n\x0ematching_users\x18\x01 \x03(\x0b\x32\n.sp.PBUser\"<\n\x16SetUrlRequireLoginCall\x12\x0b\n\x03key\x18\x01 \x02(\t\x12\x15\n\rrequire_login\x18\x02 \x02(\x08\"0\n\x1dListUserLeftSharedFoldersCall\x12\x0f\n\x07user_id\x18\x01 \x02(\t*+\n\x14PBAuthorizationLevel\x12\x08\n\x04USER\x10\x00\x12\t\n\x05\x41\x44MIN\x10\x01*8\n\x13PBSharedFolderState\x12\x0b\n\x07PENDING\x10\x00\x12\n\n\x06JOINED\x10\x01\x12\x08\n\x04LEFT\x10\x02*H\n\x1bPBTwoFactorEnforcementLevel\x12\x0e\n\nDISALLOWED\x10\x00\x12\n\n\x06OPT_IN\x10\x01\x12\r\n\tMANDATORY\x10\x02\x32\xa7\x31\n\tSPService\x12 \n\t__error__\x12\x05.Void\x1a\x0c.PBException\x12\x31\n\x0fRequestToSignUp\x12\x17.sp.RequestToSignUpCall\x1a\x05.Void\x12\x41\n\x0eSignUpWithCode\x12\x16.sp.SignUpWithCodeCall\x1a\x17.sp.SignUpWithCodeReply\x12J\n\x11ResolveSignUpCode\x12\x19.sp.ResolveSignUpCodeCall\x1a\x1a.sp.ResolveSignUpCodeReply\x12%\n\x15SendEmailVerification\x12\x05.Void\x1a\x05.Void\x12)\n\x0bVerifyEmail\x12\x13.sp.VerifyEmailCall\x1a\x05.Void\x12\x17\n\x07SignOut\x12\x05.Void\x1a\x05.Void\x12\x41\n\x0eRegisterDevice\x12\x16.sp.RegisterDeviceCall\x1a\x17.sp.RegisterDeviceReply\x12S\n\x14InviteToOrganization\x12\x1c.sp.InviteToOrganizationCall\x1a\x1d.sp.InviteToOrganizationReply\x12K\n\x1c\x41\x63\x63\x65ptOrganizationInvitation\x12$.sp.AcceptOrganizationInvitationCall\x1a\x05.Void\x12K\n\x1c\x44\x65leteOrganizationInvitation\x12$.sp.DeleteOrganizationInvitationCall\x1a\x05.Void\x12\x14\n\x04Noop\x12\x05.Void\x1a\x05.Void\x12)\n\x0bShareFolder\x12\x13.sp.ShareFolderCall\x1a\x05.Void\x12\x33\n\x10JoinSharedFolder\x12\x18.sp.JoinSharedFolderCall\x1a\x05.Void\x12\x41\n\x1cIgnoreSharedFolderInvitation\x12\x1a.sp.IgnoreSharedFolderCall\x1a\x05.Void\x12\x35\n\x11LeaveSharedFolder\x12\x19.sp.LeaveSharedFolderCall\x1a\x05.Void\x12L\n\x1cListPendingFolderInvitations\x12\x05.Void\x1a%.sp.ListPendingFolderInvitationsReply\x12%\n\tEmailUser\x12\x11.sp.EmailUserCall\x1a\x05.Void\x12M\n\x12GetUserPreferences\x12\x1a.sp.GetUserPreferencesCall\x1a\x1b.sp.GetUserPreferencesReply\x12\x37\n\x12SetUserPreferences\x12\x1a.sp.SetUserPreferencesCall\x1a\x05.Void\x12\\\n\x17ListOrganizationMembers\x12\x1f.sp.ListOrganizationMembersCall\x1a .sp.ListOrganizationMembersReply\x12?\n\x16SendPasswordResetEmail\x12\x1e.sp.SendPasswordResetEmailCall\x1a\x05.Void\x12-\n\rResetPassword\x12\x15.sp.ResetPasswordCall\x1a\x05.Void\x12/\n\x0e\x43hangePassword\x12\x16.sp.ChangePasswordCall\x1a\x05.Void\x12=\n\x15SetAuthorizationLevel\x12\x1d.sp.SetAuthorizationLevelCall\x1a\x05.Void\x12/\n\x0e\x44\x65\x61\x63tivateUser\x12\x16.sp.DeactivateUserCall\x1a\x05.Void\x12%\n\tUpdateACL\x12\x11.sp.UpdateACLCall\x1a\x05.Void\x12%\n\tDeleteACL\x12\x11.sp.DeleteACLCall\x1a\x05.Void\x12\"\n\x05Noop2\x12\x12.sp.GetUserCRLCall\x1a\x05.Void\x12\x15\n\x05Noop3\x12\x05.Void\x1a\x05.Void\x12+\n\x0cUnlinkDevice\x12\x14.sp.UnlinkDeviceCall\x1a\x05.Void\x12>\n\rGetDeviceInfo\x12\x15.sp.GetDeviceInfoCall\x1a\x16.sp.GetDeviceInfoReply\x12\x44\n\x0fListUserDevices\x12\x17.sp.ListUserDevicesCall\x1a\x18.sp.ListUserDevicesReply\x12n\n\x1dListOrganizationSharedFolders\x12%.sp.ListOrganizationSharedFoldersCall\x1a&.sp.ListOrganizationSharedFoldersReply\x12^\n\x1bListUserJoinedSharedFolders\x12#.sp.ListUserJoinedSharedFoldersCall\x1a\x1a.sp.ListSharedFoldersReply\x12Z\n\x19ListUserLeftSharedFolders\x12!.sp.ListUserLeftSharedFoldersCall\x1a\x1a.sp.ListSharedFoldersReply\x12H\n\x1aGetOrganizationInvitations\x12\x05.Void\x1a#.sp.GetOrganizationInvitationsReply\x12\x36\n\x11GetOrgPreferences\x12\x05.Void\x1a\x1a.sp.GetOrgPreferencesReply\x12\x35\n\x11SetOrgPreferences\x12\x19.sp.SetOrgPreferencesCall\x1a\x05.Void\x12M\n\x10UnsubscribeEmail\x12\x1b.sp.SetUnsubscribeEmailCall\x1a\x1c.sp.GetUnsubscribeEmailReply\x12>\n\x15GetAuthorizationLevel\x12\x05.Void\x1a\x1e.sp.GetAuthorizationLevelReply\x12:\n\x13GetTeamServerUserID\x12\x05.Void\x1a\x1c.sp.GetTeamServerUserIDReply\x12K\n\x18RegisterTeamServerDevice\x12\x16.sp.RegisterDeviceCall\x1a\x17.sp.RegisterDeviceReply\x12\x1d\n\rExtendSession\x12\x05.Void\x1a\x05.Void\x12L\n\x1cListOrganizationInvitedUsers\x12\x05.Void\x1a%.sp.ListOrganizationInvitedUsersReply\x12P\n\x13GetCommandQueueHead\x12\x1b.sp.GetCommandQueueHeadCall\x1a\x1c.sp.GetCommandQueueHeadReply\x12P\n\x13\x41\x63kCommandQueueHead\x12\x1b.sp.AckCommandQueueHeadCall\x1a\x1c.sp.AckCommandQueueHeadReply\x12Y\n#DeleteOrganizationInvitationForUser\x12+.sp.DeleteOrganizationInvitationForUserCall\x1a\x05.Void\x12\x43\n\x18SetDeviceOSFamilyAndName\x12 .sp.SetDeviceOSFamilyAndNameCall\x1a\x05.Void\x12)\n\x06GetACL\x12\x0e.sp.GetACLCall\x1a\x0f.sp.GetACLReply\x12\x44\n\x0fRecertifyDevice\x12\x17.sp.RecertifyDeviceCall\x1a\x18.sp.RecertifyDeviceReply\x12N\n\x19RecertifyTeamServerDevice\x12\x17.sp.RecertifyDeviceCall\x1a\x18.sp.RecertifyDeviceReply\x12\x36\n\x11GetOrganizationID\x12\x05.Void\x1a\x1a.sp.GetOrganizationIDReply\x12;\n\x10\x43redentialSignIn\x12\x12.sp.SignInUserCall\x1a\x13.sp.SignInUserReply\x12/\n\x12ValidateCredential\x12\x12.sp.SignInUserCall\x1a\x05.Void\x12\x35\n\nSignInUser\x12\x12.sp.SignInUserCall\x1a\x13.sp.SignInUserReply\x12+\n\x0cSignInDevice\x12\x14.sp.SignInDeviceCall\x1a\x05.Void\x12:\n\x17\x45xtAuthBeginTransaction\x12\x05.Void\x1a\x18.sp.ExtAuthSessionNonces\x12T\n\x1b\x45xtAuthGetSessionAttributes\x12\x17.sp.ExtAuthSessionQuery\x1a\x1c.sp.ExtAuthSessionAttributes\x12$\n\x05Noop4\x12\x05.Void\x1a\x14.sp.MobileAccessCode\x12M\n\x12\x41uthorizeAPIClient\x12\x1a.sp.AuthorizeAPIClientCall\x1a\x1b.sp.AuthorizeAPIClientReply\x12J\n\x11ListSharedFolders\x12\x19.sp.ListSharedFoldersCall\x1a\x1a.sp.ListSharedFoldersReply\x12\x37\n\x12\x41\x64\x64UserToWhitelist\x12\x1a.sp.AddUserToWhitelistCall\x1a\x05.Void\x12\x41\n\x17RemoveUserFromWhitelist\x12\x1f.sp.RemoveUserFromWhitelistCall\x1a\x05.Void\x12<\n\x14ListWhitelistedUsers\x12\x05.Void\x1a\x1d.sp.ListWhitelistedUsersReply\x12\x39\n\x13SetSharedFolderName\x12\x1b.sp.SetSharedFolderNameCall\x1a\x05.Void\x12\x35\n\nCheckQuota\x12\x12.sp.CheckQuotaCall\x1a\x13.sp.CheckQuotaReply\x12#\n\x08SetQuota\x12\x10.sp.SetQuotaCall\x1a\x05.Void\x12\x1b\n\x0bRemoveQuota\x12\x05.Void\x1a\x05.Void\x12$\n\x08GetQuota\x12\x05.Void\x1a\x11.sp.GetQuotaReply\x12\x32\n\tCreateUrl\x12\x11.sp.CreateUrlCall\x1a\x12.sp.CreateUrlReply\x12\x35\n\nGetUrlInfo\x12\x12.sp.GetUrlInfoCall\x1a\x13.sp.GetUrlInfoReply\x12-\n\rSetUrlExpires\x12\x15.sp.SetUrlExpiresCall\x1a\x05.Void\x12\x33\n\x10RemoveUrlExpires\x12\x18.sp.RemoveUrlExpiresCall\x1a\x05.Void\x12%\n\tRemoveUrl\x12\x11.sp.RemoveUrlCall\x1a\x05.Void\x12/\n\x0eSetUrlPassword\x12\x16.sp.SetUrlPasswordCall\x1a\x05.Void\x12\x35\n\x11RemoveUrlPassword\x12\x19.sp.RemoveUrlPasswordCall\x1a\x05.Void\x12\x39\n\x13ValidateUrlPassword\x12\x1b.sp.ValidateUrlPasswordCall\x1a\x05.Void\x12\x39\n\x13\x44\x65stroySharedFolder\x12\x1b.sp.DestroySharedFolderCall\x1a\x05.Void\x12\x41\n\x17SendPriorityDefectEmail\x12\x1f.sp.SendPriorityDefectEmailCall\x1a\x05.Void\x12\x30\n\x0eSetupTwoFactor\x12\x05.Void\x1a\x17.sp.SetupTwoFactorReply\x12\x41\n\x17SetTwoFactorEnforcement\x12\x1f.sp.SetTwoFactorEnforcementCall\x1a\x05.Void\x12G\n\x10ListUrlsForStore\x12\x18.sp.ListUrlsForStoreCall\x1a\x19.sp.ListUrlsForStoreReply\x12\x39\n\x13ProvideSecondFactor\x12\x1b.sp.ProvideSecondFactorCall\x1a\x05.Void\x12\x35\n\x11ProvideBackupCode\x12\x19.sp.ProvideBackupCodeCall\x1a\x05.Void\x12\x30\n\x0eGetBackupCodes\x12\x05.Void\x1a\x17.sp.GetBackupCodesReply\x12\x38\n\x0b\x43reateGroup\x12\x13.sp.CreateGroupCall\x1a\x14.sp.CreateGroupReply\x12\x37\n\x12SetGroupCommonName\x12\x1a.sp.SetGroupCommonNameCall\x1a\x05.Void\x12\x31\n\x0f\x41\x64\x64GroupMembers\x12\x17.sp.AddGroupMembersCall\x1a\x05.Void\x12\x37\n\x12RemoveGroupMembers\x12\x1a.sp.RemoveGroupMembersCall\x1a\x05.Void\x12)\n\x0b\x44\x65leteGroup\x12\x13.sp.DeleteGroupCall\x1a\x05.Void\x12\x35\n\nListGroups\x12\x12.sp.ListGroupsCall\x1a\x13.sp.ListGroupsReply\x12G\n\x10ListGroupMembers\x12\x18.sp.ListGroupMembersCall\x1a\x19.sp.ListGroupMembersReply\x12K\n\x1cSetTwoFactorSetupEnforcement\x12$.sp.SetTwoFactorSetupEnforcementCall\x1a\x05.Void\x12L\n\x1cGetTwoFactorSetupEnforcement\x12\x05.Void\x1a%.sp.GetTwoFactorSetupEnforcementReply\x12n\n\x1dListGroupStatusInSharedFolder\x12%.sp.ListGroupStatusInSharedFolderCall\x1a&.sp.ListGroupStatusInSharedFolderReply\x12*\n\x1aSyncGroupsWithLdapEndpoint\x12\x05.Void\x1a\x05.Void\x12<\n\x14GetUserSettingsToken\x12\x05.Void\x1a\x1d.sp.GetUserSettingsTokenReply\x12;\n\x14SetUserSettingsToken\x12\x1c.sp.SetUserSettingsTokenCall\x1a\x05.Void\x12\'\n\x17\x44\x65leteUserSettingsToken\x12\x05.Void\x1a\x05.Void\x12\\\n\x17SearchOrganizationUsers\x12\x1f.sp.SearchOrganizationUsersCall\x1a .sp.SearchOrganizationUsersReply\x12\x37\n\x12SetUrlRequireLogin\x12\x1a.sp.SetUrlRequireLoginCall\x1a\x05.Void\x12\x35\n\x16GetAccessCodeForMobile\x12\x05.Void\x1a\x14.sp.MobileAccessCode\x12,\n\rGetAccessCode\x12\x05.Void\x1a\x14.sp.MobileAccessCode\x12G\n\x14RegisterStorageAgent\x12\x16.sp.RegisterDeviceCall\x1a\x17.sp.RegisterDeviceReplyB\x14\n\x10\x63om.aerofs.protoH\x03')
   ,
   dependencies=[common_pb2.DESCRIPTOR,cmd_pb2.DESCRIPTOR,])
 _sym_db.RegisterFileDescriptor(DESCRIPTOR)
@@ -44,8 +44,8 @@ _PBAUTHORIZATIONLEVEL = _descriptor.EnumDescriptor(
   ],
   containing_type=None,
   options=None,
-  serialized_start=9516,
-  serialized_end=9559,
+  serialized_start=9581,
+  serialized_end=9624,
 )
 _sym_db.RegisterEnumDescriptor(_PBAUTHORIZATIONLEVEL)
 
@@ -71,8 +71,8 @@ _PBSHAREDFOLDERSTATE = _descriptor.EnumDescriptor(
   ],
   containing_type=None,
   options=None,
-  serialized_start=9561,
-  serialized_end=9617,
+  serialized_start=9626,
+  serialized_end=9682,
 )
 _sym_db.RegisterEnumDescriptor(_PBSHAREDFOLDERSTATE)
 
@@ -98,8 +98,8 @@ _PBTWOFACTORENFORCEMENTLEVEL = _descriptor.EnumDescriptor(
   ],
   containing_type=None,
   options=None,
-  serialized_start=9619,
-  serialized_end=9691,
+  serialized_start=9684,
+  serialized_end=9756,
 )
 _sym_db.RegisterEnumDescriptor(_PBTWOFACTORENFORCEMENTLEVEL)
 
@@ -1033,6 +1033,13 @@ _GETACLCALL = _descriptor.Descriptor(
       message_type=None, enum_type=None, containing_type=None,
       is_extension=False, extension_scope=None,
       options=None),
+    _descriptor.FieldDescriptor(
+      name='incremental', full_name='sp.GetACLCall.incremental', index=1,
+      number=2, type=8, cpp_type=7, label=1,
+      has_default_value=False, default_value=False,
+      message_type=None, enum_type=None, containing_type=None,
+      is_extension=False, extension_scope=None,
+      options=None),
   ],
   extensions=[
   ],
@@ -1045,7 +1052,7 @@ _GETACLCALL = _descriptor.Descriptor(
   oneofs=[
   ],
   serialized_start=1731,
-  serialized_end=1758,
+  serialized_end=1779,
 )
 
 
@@ -1095,8 +1102,8 @@ _GETACLREPLY_PBSTOREACL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=1838,
-  serialized_end=1952,
+  serialized_start=1903,
+  serialized_end=2017,
 )
 
 _GETACLREPLY = _descriptor.Descriptor(
@@ -1120,6 +1127,20 @@ _GETACLREPLY = _descriptor.Descriptor(
       message_type=None, enum_type=None, containing_type=None,
       is_extension=False, extension_scope=None,
       options=None),
+    _descriptor.FieldDescriptor(
+      name='incremental', full_name='sp.GetACLReply.incremental', index=2,
+      number=3, type=8, cpp_type=7, label=1,
+      has_default_value=False, default_value=False,
+      message_type=None, enum_type=None, containing_type=None,
+      is_extension=False, extension_scope=None,
+      options=None),
+    _descriptor.FieldDescriptor(
+      name='left_store_id', full_name='sp.GetACLReply.left_store_id', index=3,
+      number=4, type=12, cpp_type=9, label=3,
+      has_default_value=False, default_value=[],
+      message_type=None, enum_type=None, containing_type=None,
+      is_extension=False, extension_scope=None,
+      options=None),
   ],
   extensions=[
   ],
@@ -1131,8 +1152,8 @@ _GETACLREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=1761,
-  serialized_end=1952,
+  serialized_start=1782,
+  serialized_end=2017,
 )
 
 
@@ -1182,8 +1203,8 @@ _UPDATEACLCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=1955,
-  serialized_end=2083,
+  serialized_start=2020,
+  serialized_end=2148,
 )
 
 
@@ -1219,8 +1240,8 @@ _DELETEACLCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2085,
-  serialized_end=2135,
+  serialized_start=2150,
+  serialized_end=2200,
 )
 
 
@@ -1249,8 +1270,8 @@ _VERIFYEMAILCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2137,
-  serialized_end=2181,
+  serialized_start=2202,
+  serialized_end=2246,
 )
 
 
@@ -1279,8 +1300,8 @@ _GETTEAMSERVERUSERIDREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2183,
-  serialized_end=2221,
+  serialized_start=2248,
+  serialized_end=2286,
 )
 
 
@@ -1323,8 +1344,8 @@ _REGISTERDEVICECALL_INTERFACE = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2404,
-  serialized_end=2455,
+  serialized_start=2469,
+  serialized_end=2520,
 )
 
 _REGISTERDEVICECALL = _descriptor.Descriptor(
@@ -1394,8 +1415,8 @@ _REGISTERDEVICECALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2224,
-  serialized_end=2455,
+  serialized_start=2289,
+  serialized_end=2520,
 )
 
 
@@ -1424,8 +1445,8 @@ _REGISTERDEVICEREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2457,
-  serialized_end=2492,
+  serialized_start=2522,
+  serialized_end=2557,
 )
 
 
@@ -1468,8 +1489,8 @@ _LISTORGANIZATIONMEMBERSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2494,
-  serialized_end=2583,
+  serialized_start=2559,
+  serialized_end=2648,
 )
 
 
@@ -1505,8 +1526,8 @@ _LISTORGANIZATIONMEMBERSREPLY_PBUSERANDLEVEL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2712,
-  serialized_end=2795,
+  serialized_start=2777,
+  serialized_end=2860,
 )
 
 _LISTORGANIZATIONMEMBERSREPLY = _descriptor.Descriptor(
@@ -1541,8 +1562,8 @@ _LISTORGANIZATIONMEMBERSREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2586,
-  serialized_end=2795,
+  serialized_start=2651,
+  serialized_end=2860,
 )
 
 
@@ -1571,8 +1592,8 @@ _GETORGANIZATIONIDREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2797,
-  serialized_end=2837,
+  serialized_start=2862,
+  serialized_end=2902,
 )
 
 
@@ -1601,8 +1622,8 @@ _GETAUTHORIZATIONLEVELREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2839,
-  serialized_end=2908,
+  serialized_start=2904,
+  serialized_end=2973,
 )
 
 
@@ -1652,8 +1673,8 @@ _PBUSER = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=2910,
-  serialized_end=3006,
+  serialized_start=2975,
+  serialized_end=3071,
 )
 
 
@@ -1696,8 +1717,8 @@ _PBGROUP = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3008,
-  serialized_end=3084,
+  serialized_start=3073,
+  serialized_end=3149,
 )
 
 
@@ -1733,8 +1754,8 @@ _SETAUTHORIZATIONLEVELCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3086,
-  serialized_end=3179,
+  serialized_start=3151,
+  serialized_end=3244,
 )
 
 
@@ -1763,8 +1784,8 @@ _SENDPASSWORDRESETEMAILCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3181,
-  serialized_end=3229,
+  serialized_start=3246,
+  serialized_end=3294,
 )
 
 
@@ -1800,8 +1821,8 @@ _RESETPASSWORDCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3231,
-  serialized_end=3305,
+  serialized_start=3296,
+  serialized_end=3370,
 )
 
 
@@ -1837,8 +1858,8 @@ _CHANGEPASSWORDCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3307,
-  serialized_end=3377,
+  serialized_start=3372,
+  serialized_end=3442,
 )
 
 
@@ -1867,8 +1888,8 @@ _GETUSERCRLCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3379,
-  serialized_end=3414,
+  serialized_start=3444,
+  serialized_end=3479,
 )
 
 
@@ -1904,8 +1925,8 @@ _UNLINKDEVICECALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3416,
-  serialized_end=3468,
+  serialized_start=3481,
+  serialized_end=3533,
 )
 
 
@@ -1934,8 +1955,8 @@ _GETDEVICEINFOCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3470,
-  serialized_end=3508,
+  serialized_start=3535,
+  serialized_end=3573,
 )
 
 
@@ -1971,8 +1992,8 @@ _GETDEVICEINFOREPLY_PBDEVICEINFO = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3591,
-  serialized_end=3653,
+  serialized_start=3656,
+  serialized_end=3718,
 )
 
 _GETDEVICEINFOREPLY = _descriptor.Descriptor(
@@ -2000,8 +2021,8 @@ _GETDEVICEINFOREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3511,
-  serialized_end=3653,
+  serialized_start=3576,
+  serialized_end=3718,
 )
 
 
@@ -2030,8 +2051,8 @@ _LISTUSERDEVICESCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3655,
-  serialized_end=3693,
+  serialized_start=3720,
+  serialized_end=3758,
 )
 
 
@@ -2081,8 +2102,8 @@ _LISTUSERDEVICESREPLY_PBDEVICE = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3771,
-  serialized_end=3857,
+  serialized_start=3836,
+  serialized_end=3922,
 )
 
 _LISTUSERDEVICESREPLY = _descriptor.Descriptor(
@@ -2110,8 +2131,8 @@ _LISTUSERDEVICESREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3696,
-  serialized_end=3857,
+  serialized_start=3761,
+  serialized_end=3922,
 )
 
 
@@ -2154,8 +2175,8 @@ _LISTORGANIZATIONSHAREDFOLDERSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3859,
-  serialized_end=3954,
+  serialized_start=3924,
+  serialized_end=4019,
 )
 
 
@@ -2191,8 +2212,8 @@ _LISTORGANIZATIONSHAREDFOLDERSREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=3956,
-  serialized_end=4056,
+  serialized_start=4021,
+  serialized_end=4121,
 )
 
 
@@ -2242,8 +2263,8 @@ _LISTUSERJOINEDSHAREDFOLDERSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=4058,
-  serialized_end=4168,
+  serialized_start=4123,
+  serialized_end=4233,
 )
 
 
@@ -2286,8 +2307,8 @@ _PBSHAREDFOLDER_PBUSERPERMISSIONSANDSTATE = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=4486,
-  serialized_end=4616,
+  serialized_start=4551,
+  serialized_end=4681,
 )
 
 _PBSHAREDFOLDER_PBGROUPPERMISSIONS = _descriptor.Descriptor(
@@ -2322,8 +2343,8 @@ _PBSHAREDFOLDER_PBGROUPPERMISSIONS = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=4618,
-  serialized_end=4703,
+  serialized_start=4683,
+  serialized_end=4768,
 )
 
 _PBSHAREDFOLDER = _descriptor.Descriptor(
@@ -2386,8 +2407,8 @@ _PBSHAREDFOLDER = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=4171,
-  serialized_end=4703,
+  serialized_start=4236,
+  serialized_end=4768,
 )
 
 
@@ -2430,8 +2451,8 @@ _GETORGANIZATIONINVITATIONSREPLY_ORGANIZATIONINVITATION = _descriptor.Descriptor
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=4835,
-  serialized_end=4928,
+  serialized_start=4900,
+  serialized_end=4993,
 )
 
 _GETORGANIZATIONINVITATIONSREPLY = _descriptor.Descriptor(
@@ -2459,8 +2480,8 @@ _GETORGANIZATIONINVITATIONSREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=4706,
-  serialized_end=4928,
+  serialized_start=4771,
+  serialized_end=4993,
 )
 
 
@@ -2517,8 +2538,8 @@ _GETORGPREFERENCESREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=4931,
-  serialized_end=5123,
+  serialized_start=4996,
+  serialized_end=5188,
 )
 
 
@@ -2554,8 +2575,8 @@ _SETORGPREFERENCESCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5125,
-  serialized_end=5202,
+  serialized_start=5190,
+  serialized_end=5267,
 )
 
 
@@ -2584,8 +2605,8 @@ _SETUNSUBSCRIBEEMAILCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5204,
-  serialized_end=5256,
+  serialized_start=5269,
+  serialized_end=5321,
 )
 
 
@@ -2614,8 +2635,8 @@ _GETUNSUBSCRIBEEMAILREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5258,
-  serialized_end=5302,
+  serialized_start=5323,
+  serialized_end=5367,
 )
 
 
@@ -2651,8 +2672,8 @@ _PBFULLNAME = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5304,
-  serialized_end=5355,
+  serialized_start=5369,
+  serialized_end=5420,
 )
 
 
@@ -2681,8 +2702,8 @@ _GETCOMMANDQUEUEHEADCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5357,
-  serialized_end=5401,
+  serialized_start=5422,
+  serialized_end=5466,
 )
 
 
@@ -2718,8 +2739,8 @@ _GETCOMMANDQUEUEHEADREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5403,
-  serialized_end=5476,
+  serialized_start=5468,
+  serialized_end=5541,
 )
 
 
@@ -2762,8 +2783,8 @@ _ACKCOMMANDQUEUEHEADCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5478,
-  serialized_end=5552,
+  serialized_start=5543,
+  serialized_end=5617,
 )
 
 
@@ -2799,8 +2820,8 @@ _ACKCOMMANDQUEUEHEADREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5554,
-  serialized_end=5627,
+  serialized_start=5619,
+  serialized_end=5692,
 )
 
 
@@ -2836,8 +2857,8 @@ _RECERTIFYDEVICECALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5629,
-  serialized_end=5682,
+  serialized_start=5694,
+  serialized_end=5747,
 )
 
 
@@ -2866,8 +2887,8 @@ _RECERTIFYDEVICEREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5684,
-  serialized_end=5720,
+  serialized_start=5749,
+  serialized_end=5785,
 )
 
 
@@ -2903,8 +2924,8 @@ _SIGNINDEVICECALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5722,
-  serialized_end=5770,
+  serialized_start=5787,
+  serialized_end=5835,
 )
 
 
@@ -2940,8 +2961,8 @@ _SIGNINUSERCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5772,
-  serialized_end=5825,
+  serialized_start=5837,
+  serialized_end=5890,
 )
 
 
@@ -2977,8 +2998,8 @@ _SIGNINUSERREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5827,
-  serialized_end=5906,
+  serialized_start=5892,
+  serialized_end=5971,
 )
 
 
@@ -3014,8 +3035,8 @@ _EXTAUTHSESSIONNONCES = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5908,
-  serialized_end=5975,
+  serialized_start=5973,
+  serialized_end=6040,
 )
 
 
@@ -3044,8 +3065,8 @@ _EXTAUTHSESSIONQUERY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=5977,
-  serialized_end=6020,
+  serialized_start=6042,
+  serialized_end=6085,
 )
 
 
@@ -3102,8 +3123,8 @@ _EXTAUTHSESSIONATTRIBUTES = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6023,
-  serialized_end=6164,
+  serialized_start=6088,
+  serialized_end=6229,
 )
 
 
@@ -3132,8 +3153,8 @@ _MOBILEACCESSCODE = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6166,
-  serialized_end=6204,
+  serialized_start=6231,
+  serialized_end=6269,
 )
 
 
@@ -3169,8 +3190,8 @@ _AUTHORIZEAPICLIENTCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6206,
-  serialized_end=6270,
+  serialized_start=6271,
+  serialized_end=6335,
 )
 
 
@@ -3213,8 +3234,8 @@ _AUTHORIZEAPICLIENTREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6272,
-  serialized_end=6348,
+  serialized_start=6337,
+  serialized_end=6413,
 )
 
 
@@ -3243,8 +3264,8 @@ _LISTSHAREDFOLDERSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6350,
-  serialized_end=6391,
+  serialized_start=6415,
+  serialized_end=6456,
 )
 
 
@@ -3280,8 +3301,8 @@ _LISTSHAREDFOLDERSREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6393,
-  serialized_end=6481,
+  serialized_start=6458,
+  serialized_end=6546,
 )
 
 
@@ -3317,8 +3338,8 @@ _DEACTIVATEUSERCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6483,
-  serialized_end=6543,
+  serialized_start=6548,
+  serialized_end=6608,
 )
 
 
@@ -3347,8 +3368,8 @@ _ADDUSERTOWHITELISTCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6545,
-  serialized_end=6589,
+  serialized_start=6610,
+  serialized_end=6654,
 )
 
 
@@ -3377,8 +3398,8 @@ _REMOVEUSERFROMWHITELISTCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6591,
-  serialized_end=6640,
+  serialized_start=6656,
+  serialized_end=6705,
 )
 
 
@@ -3407,8 +3428,8 @@ _LISTWHITELISTEDUSERSREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6642,
-  serialized_end=6695,
+  serialized_start=6707,
+  serialized_end=6760,
 )
 
 
@@ -3444,8 +3465,8 @@ _CHECKQUOTACALL_PBSTOREUSAGE = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6763,
-  serialized_end=6810,
+  serialized_start=6828,
+  serialized_end=6875,
 )
 
 _CHECKQUOTACALL = _descriptor.Descriptor(
@@ -3473,8 +3494,8 @@ _CHECKQUOTACALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6697,
-  serialized_end=6810,
+  serialized_start=6762,
+  serialized_end=6875,
 )
 
 
@@ -3510,8 +3531,8 @@ _CHECKQUOTAREPLY_PBSTORESHOULDCOLLECT = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6889,
-  serialized_end=6949,
+  serialized_start=6954,
+  serialized_end=7014,
 )
 
 _CHECKQUOTAREPLY = _descriptor.Descriptor(
@@ -3539,8 +3560,8 @@ _CHECKQUOTAREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6813,
-  serialized_end=6949,
+  serialized_start=6878,
+  serialized_end=7014,
 )
 
 
@@ -3569,8 +3590,8 @@ _GETQUOTAREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6951,
-  serialized_end=6981,
+  serialized_start=7016,
+  serialized_end=7046,
 )
 
 
@@ -3599,8 +3620,8 @@ _SETQUOTACALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=6983,
-  serialized_end=7012,
+  serialized_start=7048,
+  serialized_end=7077,
 )
 
 
@@ -3629,8 +3650,8 @@ _CREATEURLCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7014,
-  serialized_end=7043,
+  serialized_start=7079,
+  serialized_end=7108,
 )
 
 
@@ -3701,8 +3722,8 @@ _PBRESTOBJECTURL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7046,
-  serialized_end=7201,
+  serialized_start=7111,
+  serialized_end=7266,
 )
 
 
@@ -3731,8 +3752,8 @@ _CREATEURLREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7203,
-  serialized_end=7258,
+  serialized_start=7268,
+  serialized_end=7323,
 )
 
 
@@ -3768,8 +3789,8 @@ _SETURLEXPIRESCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7260,
-  serialized_end=7309,
+  serialized_start=7325,
+  serialized_end=7374,
 )
 
 
@@ -3798,8 +3819,8 @@ _REMOVEURLEXPIRESCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7311,
-  serialized_end=7346,
+  serialized_start=7376,
+  serialized_end=7411,
 )
 
 
@@ -3835,8 +3856,8 @@ _GETURLINFOCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7348,
-  serialized_end=7395,
+  serialized_start=7413,
+  serialized_end=7460,
 )
 
 
@@ -3865,8 +3886,8 @@ _GETURLINFOREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7397,
-  serialized_end=7453,
+  serialized_start=7462,
+  serialized_end=7518,
 )
 
 
@@ -3895,8 +3916,8 @@ _REMOVEURLCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7455,
-  serialized_end=7483,
+  serialized_start=7520,
+  serialized_end=7548,
 )
 
 
@@ -3932,8 +3953,8 @@ _SETURLPASSWORDCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7485,
-  serialized_end=7536,
+  serialized_start=7550,
+  serialized_end=7601,
 )
 
 
@@ -3962,8 +3983,8 @@ _REMOVEURLPASSWORDCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7538,
-  serialized_end=7574,
+  serialized_start=7603,
+  serialized_end=7639,
 )
 
 
@@ -3999,8 +4020,8 @@ _VALIDATEURLPASSWORDCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7576,
-  serialized_end=7632,
+  serialized_start=7641,
+  serialized_end=7697,
 )
 
 
@@ -4029,8 +4050,8 @@ _DESTROYSHAREDFOLDERCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7634,
-  serialized_end=7678,
+  serialized_start=7699,
+  serialized_end=7743,
 )
 
 
@@ -4080,8 +4101,8 @@ _SENDPRIORITYDEFECTEMAILCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7680,
-  serialized_end=7785,
+  serialized_start=7745,
+  serialized_end=7850,
 )
 
 
@@ -4103,8 +4124,8 @@ _SETUPTWOFACTORCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7787,
-  serialized_end=7807,
+  serialized_start=7852,
+  serialized_end=7872,
 )
 
 
@@ -4133,8 +4154,8 @@ _SETUPTWOFACTORREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7809,
-  serialized_end=7846,
+  serialized_start=7874,
+  serialized_end=7911,
 )
 
 
@@ -4177,8 +4198,8 @@ _SETTWOFACTORENFORCEMENTCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7848,
-  serialized_end=7933,
+  serialized_start=7913,
+  serialized_end=7998,
 )
 
 
@@ -4207,8 +4228,8 @@ _LISTURLSFORSTORECALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7935,
-  serialized_end=7976,
+  serialized_start=8000,
+  serialized_end=8041,
 )
 
 
@@ -4237,8 +4258,8 @@ _LISTURLSFORSTOREREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=7978,
-  serialized_end=8035,
+  serialized_start=8043,
+  serialized_end=8100,
 )
 
 
@@ -4267,8 +4288,8 @@ _PROVIDESECONDFACTORCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8037,
-  serialized_end=8084,
+  serialized_start=8102,
+  serialized_end=8149,
 )
 
 
@@ -4297,8 +4318,8 @@ _PROVIDEBACKUPCODECALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8086,
-  serialized_end=8130,
+  serialized_start=8151,
+  serialized_end=8195,
 )
 
 
@@ -4334,8 +4355,8 @@ _GETBACKUPCODESREPLY_BACKUPCODE = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8206,
-  serialized_end=8251,
+  serialized_start=8271,
+  serialized_end=8316,
 )
 
 _GETBACKUPCODESREPLY = _descriptor.Descriptor(
@@ -4363,8 +4384,8 @@ _GETBACKUPCODESREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8132,
-  serialized_end=8251,
+  serialized_start=8197,
+  serialized_end=8316,
 )
 
 
@@ -4393,8 +4414,8 @@ _CREATEGROUPCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8253,
-  serialized_end=8291,
+  serialized_start=8318,
+  serialized_end=8356,
 )
 
 
@@ -4423,8 +4444,8 @@ _CREATEGROUPREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8293,
-  serialized_end=8329,
+  serialized_start=8358,
+  serialized_end=8394,
 )
 
 
@@ -4460,8 +4481,8 @@ _SETGROUPCOMMONNAMECALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8331,
-  serialized_end=8394,
+  serialized_start=8396,
+  serialized_end=8459,
 )
 
 
@@ -4497,8 +4518,8 @@ _ADDGROUPMEMBERSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8396,
-  serialized_end=8456,
+  serialized_start=8461,
+  serialized_end=8521,
 )
 
 
@@ -4534,8 +4555,8 @@ _REMOVEGROUPMEMBERSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8458,
-  serialized_end=8521,
+  serialized_start=8523,
+  serialized_end=8586,
 )
 
 
@@ -4564,8 +4585,8 @@ _DELETEGROUPCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8523,
-  serialized_end=8558,
+  serialized_start=8588,
+  serialized_end=8623,
 )
 
 
@@ -4608,8 +4629,8 @@ _LISTGROUPSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8560,
-  serialized_end=8636,
+  serialized_start=8625,
+  serialized_end=8701,
 )
 
 
@@ -4645,8 +4666,8 @@ _LISTGROUPSREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8638,
-  serialized_end=8705,
+  serialized_start=8703,
+  serialized_end=8770,
 )
 
 
@@ -4675,8 +4696,8 @@ _LISTGROUPMEMBERSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8707,
-  serialized_end=8747,
+  serialized_start=8772,
+  serialized_end=8812,
 )
 
 
@@ -4705,8 +4726,8 @@ _LISTGROUPMEMBERSREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8749,
-  serialized_end=8799,
+  serialized_start=8814,
+  serialized_end=8864,
 )
 
 
@@ -4735,8 +4756,8 @@ _SETTWOFACTORSETUPENFORCEMENTCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8801,
-  serialized_end=8883,
+  serialized_start=8866,
+  serialized_end=8948,
 )
 
 
@@ -4765,8 +4786,8 @@ _GETTWOFACTORSETUPENFORCEMENTREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8885,
-  serialized_end=8968,
+  serialized_start=8950,
+  serialized_end=9033,
 )
 
 
@@ -4802,8 +4823,8 @@ _LISTGROUPSTATUSINSHAREDFOLDERCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=8970,
-  serialized_end=9041,
+  serialized_start=9035,
+  serialized_end=9106,
 )
 
 
@@ -4839,8 +4860,8 @@ _LISTGROUPSTATUSINSHAREDFOLDERREPLY_PBUSERANDSTATE = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=9161,
-  serialized_end=9243,
+  serialized_start=9226,
+  serialized_end=9308,
 )
 
 _LISTGROUPSTATUSINSHAREDFOLDERREPLY = _descriptor.Descriptor(
@@ -4868,8 +4889,8 @@ _LISTGROUPSTATUSINSHAREDFOLDERREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=9044,
-  serialized_end=9243,
+  serialized_start=9109,
+  serialized_end=9308,
 )
 
 
@@ -4912,8 +4933,8 @@ _SEARCHORGANIZATIONUSERSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=9245,
-  serialized_end=9334,
+  serialized_start=9310,
+  serialized_end=9399,
 )
 
 
@@ -4942,8 +4963,8 @@ _SEARCHORGANIZATIONUSERSREPLY = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=9336,
-  serialized_end=9402,
+  serialized_start=9401,
+  serialized_end=9467,
 )
 
 
@@ -4979,8 +5000,8 @@ _SETURLREQUIRELOGINCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=9404,
-  serialized_end=9464,
+  serialized_start=9469,
+  serialized_end=9529,
 )
 
 
@@ -5009,8 +5030,8 @@ _LISTUSERLEFTSHAREDFOLDERSCALL = _descriptor.Descriptor(
   extension_ranges=[],
   oneofs=[
   ],
-  serialized_start=9466,
-  serialized_end=9514,
+  serialized_start=9531,
+  serialized_end=9579,
 )
 
 _SHAREFOLDERCALL.fields_by_name['subject_permissions'].message_type = common_pb2._PBSUBJECTPERMISSIONS
@@ -7415,10 +7436,11 @@ class SPServiceRpcStub(object):
     d = self._send_data(SPServiceRpcStub._METHOD_ENUMS_._SET_DEVICE_OSFAMILY_AND_NAME_, m.SerializeToString())
     return common_pb2.Void.FromString(d)
 
-  def get_acl(self, epoch):
+  def get_acl(self, epoch, incremental):
     m = GetACLCall()
     
     m.epoch = epoch
+    if incremental is not None: m.incremental = incremental
     d = self._send_data(SPServiceRpcStub._METHOD_ENUMS_._GET_ACL_, m.SerializeToString())
     return GetACLReply.FromString(d)
 
@@ -16,6 +16,8 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.*;
@@ -40,7 +42,9 @@ import com.aerofs.audit.client.AuditClient.AuditableEvent;
 import com.aerofs.base.acl.Permissions;
 import com.aerofs.base.ex.ExBadArgs;
 import com.aerofs.base.ex.ExNotFound;
+import com.aerofs.ids.DID;
 import com.aerofs.ids.ExInvalidID;
+import com.aerofs.ids.SID;
 import com.aerofs.ids.UserID;
 import com.aerofs.lib.FullName;
 import com.aerofs.lib.ex.ExNoAdminOrOwner;
@@ -49,6 +53,7 @@ import com.aerofs.proto.Cmd.CommandType;
 import com.aerofs.rest.api.Invitation;
 import com.aerofs.rest.api.Page;
 import com.aerofs.rest.api.Quota;
+import com.aerofs.rest.api.SharePermissions;
 import com.aerofs.rest.auth.IAuthToken;
 import com.aerofs.rest.auth.IUserAuthToken;
 import com.aerofs.restless.Auth;
@@ -213,6 +218,32 @@ public class UsersResource extends AbstractSpartaResource
                 .build();
     }
 
+    /**
+     * Only the caller's own permissions in each share, as opposed to listShares which also lists
+     * the members of every share. Used for access checks by other services.
+     */
+    @Since("1.4")
+    @GET
+    @Path("/{email}/permissions")
+    public Response listPermissions(@Auth IAuthToken token, @PathParam("email") User user)
+            throws ExNotFound, SQLException
+    {
+        validateAuth(token, Scope.READ_ACL, user);
+
+        ImmutableList.Builder<SharePermissions> bd = ImmutableList.builder();
+        for (Entry<SID, Permissions> e : user.getJoinedFolderPermissions().entrySet()) {
+            // filter out root store
+            if (e.getKey().isUserRoot()) continue;
+            if (token.hasFolderPermission(Scope.READ_ACL, e.getKey())) {
+                bd.add(new SharePermissions(e.getKey().toStringFormal(), e.getValue().toArray()));
+            }
+        }
+
+        return Response.ok()
+                .entity(bd.build())
+                .build();
+    }
+
     @Since("1.3")
     @GET
     @Path("/{email}/groups")
@@ -480,13 +511,13 @@ public class UsersResource extends AbstractSpartaResource
 
         FullName fullName = FullName.fromExternal(attrs.firstName, attrs.lastName);
         target.setName(fullName);
-        Collection<Device> peerDevices = target.getPeerDevices();
+        List<DID> peerDevices = target.getPeerDevices().stream()
+                .map(Device::id)
+                .collect(Collectors.toList());
 
-        for (Device peer : peerDevices) {
-            l.info("API update: inval user cache for " + peer.id().toStringFormal());
-            _commandDispatcher.enqueueCommand(peer.id(), createCommandMessage(
-                    CommandType.INVALIDATE_USER_NAME_CACHE));
-        }
+        l.info("API update: inval user cache for {} devices", peerDevices.size());
+        CommandDispatcher.checkDelivered(_commandDispatcher.enqueueCommands(peerDevices,
+                createCommandMessage(CommandType.INVALIDATE_USER_NAME_CACHE)));
 
         audit(caller, auth, AuditTopic.USER, "user.update")
                 .add("email", target.id())
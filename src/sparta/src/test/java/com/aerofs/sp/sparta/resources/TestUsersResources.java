@@ -38,6 +38,7 @@ public class TestUsersResources extends AbstractResourceTest
     private final String TWO_FACTOR_RESOURCE = "/v1.3/users/{email}/two_factor";
     private final String DEVICE_RESOURCE = "/v1.3/users/{email}/devices";
     private final String RESOURCE_V13_BASE = "/v1.3/users";
+    private final String PERMISSIONS_RESOURCE = "/v1.4/users/{email}/permissions";
 
     @Test
     public void shouldReturn401WhenTokenMissing() throws Exception
@@ -216,6 +217,33 @@ public class TestUsersResources extends AbstractResourceTest
                 .get(RESOURCE + "/shares", user.getString());
     }
 
+    @Test
+    public void shouldListOwnPermissions() throws Exception
+    {
+        SID sid = mkShare("Test", user.getString());
+
+        givenReadAccess()
+        .expect()
+                .statusCode(200)
+                .body("id", hasItem(equalTo(sid.toStringFormal())))
+                .body("permissions", hasItem(hasItems("WRITE", "MANAGE")))
+        .when().log().everything()
+                .get(PERMISSIONS_RESOURCE, user.getString());
+    }
+
+    @Test
+    public void shouldReturn404WhenListPermissionsByOther() throws Exception
+    {
+        mkShare("Test", user.getString());
+
+        givenOtherAccess()
+        .expect()
+                .statusCode(404)
+                .body("type", equalTo("NOT_FOUND"))
+        .when().log().everything()
+                .get(PERMISSIONS_RESOURCE, user.getString());
+    }
+
     @Test
     public void shouldListInvitations() throws Exception
     {
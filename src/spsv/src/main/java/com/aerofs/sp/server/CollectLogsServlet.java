@@ -18,6 +18,7 @@ import com.aerofs.servlets.lib.db.jedis.JedisThreadLocalTransaction;
 import com.aerofs.servlets.lib.db.jedis.PooledJedisConnectionProvider;
 import com.aerofs.servlets.lib.db.sql.PooledSQLConnectionProvider;
 import com.aerofs.servlets.lib.db.sql.SQLThreadLocalTransaction;
+import com.aerofs.sp.server.CommandDispatcher.Delivery;
 import com.aerofs.sp.server.email.Email;
 import com.aerofs.sp.server.lib.License;
 import com.aerofs.sp.server.lib.SPParam;
@@ -25,6 +26,7 @@ import com.aerofs.sp.server.lib.user.UserDatabase;
 import com.aerofs.ssmp.SSMPConnection;
 import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 
 import javax.servlet.ServletConfig;
@@ -34,6 +36,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import static com.aerofs.sp.server.CommandUtil.createUploadLogsToAeroFSCommandMessage;
 import static com.aerofs.sp.server.CommandUtil.createUploadLogsToOnSiteCommandMessage;
@@ -169,15 +173,19 @@ public class CollectLogsServlet extends HttpServlet
     }
 
     private void enqueueCommandsForUsers(String commandMessage, List<UserID> userIDs)
+            throws InterruptedException
     {
+        Map<DID, UserID> owners = Maps.newLinkedHashMap();
         for (UserID userID : userIDs) {
-            for (DID did : listUserDevices(userID)) {
-                try {
-                    _cmd.enqueueCommand(did, commandMessage);
-                } catch (Exception e) {
-                    l.warn("Unable to enqueue commands for device: {}/{}",
-                            userID.getString(), did.toStringFormal(), e);
-                }
+            for (DID did : listUserDevices(userID)) owners.put(did, userID);
+        }
+
+        for (Entry<DID, Delivery> e : _cmd.enqueueCommands(owners.keySet(), commandMessage)
+                .entrySet()) {
+            if (!e.getValue().succeeded()) {
+                l.warn("Unable to enqueue commands for device: {}/{}",
+                        owners.get(e.getKey()).getString(), e.getKey().toStringFormal(),
+                        e.getValue().error);
             }
         }
     }
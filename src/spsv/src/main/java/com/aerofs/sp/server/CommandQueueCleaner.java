@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.sp.server;
+
+import com.aerofs.base.Loggers;
+import com.aerofs.servlets.lib.db.jedis.JedisEpochCommandQueue;
+import org.slf4j.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.aerofs.base.config.ConfigurationProperties.getIntegerProperty;
+
+/**
+ * Daily deletion of the device commands that keep failing.
+ *
+ * A command the device fails to execute is retried later, forever. Commands older than
+ * {@link #MAX_AGE_DAYS} that have been attempted more than {@link #MAX_ATTEMPTS} times are deleted
+ * so that they stop cycling through the queue. Commands of devices that never come back online
+ * are never attempted and are left alone: unlink and wipe must reach the device whenever it does.
+ */
+public class CommandQueueCleaner
+{
+    private static final Logger l = Loggers.getLogger(CommandQueueCleaner.class);
+
+    private static final int MAX_ATTEMPTS =
+            getIntegerProperty("sp.command_queue.cleanup.max_attempts", 10);
+    private static final int MAX_AGE_DAYS =
+            getIntegerProperty("sp.command_queue.cleanup.max_age_days", 30);
+
+    private final ScheduledExecutorService _executor = Executors.newScheduledThreadPool(1);
+    private final JedisEpochCommandQueue _queue;
+
+    public CommandQueueCleaner(JedisEpochCommandQueue queue)
+    {
+        _queue = queue;
+    }
+
+    public void start()
+    {
+        _executor.scheduleAtFixedRate(this::cleanup, 1, 24, TimeUnit.HOURS);
+    }
+
+    void cleanup()
+    {
+        try {
+            long earliestDate = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+            long deleted = _queue.delete(MAX_ATTEMPTS, earliestDate).getCount();
+            l.info("deleted {} commands attempted more than {} times", deleted, MAX_ATTEMPTS);
+        } catch (Exception e) {
+            // keep the schedule going, the next run will pick up where this one failed
+            l.warn("command queue cleanup failed: ", e);
+        }
+    }
+}
@@ -86,6 +86,7 @@ import com.aerofs.sp.server.lib.sf.SharedFolder.AffectedAndNeedsEmail;
 import com.aerofs.sp.server.lib.sf.SharedFolder.Factory;
 import com.aerofs.sp.server.lib.sf.SharedFolder.GroupPermissions;
 import com.aerofs.sp.server.lib.sf.SharedFolder.UserPermissionsAndState;
+import com.aerofs.sp.server.lib.sf.SharedFolderDatabase.StoreACL;
 import com.aerofs.sp.server.lib.twofactor.RecoveryCode;
 import com.aerofs.sp.server.lib.user.AuthorizationLevel;
 import com.aerofs.sp.server.lib.user.User;
@@ -121,6 +122,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.aerofs.base.config.ConfigurationProperties.*;
 import static com.aerofs.lib.Util.urlEncode;
@@ -530,19 +532,19 @@ public class SPService implements ISPService
         // lipwig messages and command queue related stuff.
         if (userNameUpdated || deviceNameUpdated)
         {
-            Collection<Device> peerDevices = user.getPeerDevices();
-
-            for (Device peerDevice : peerDevices) {
-                if (userNameUpdated) {
-                    l.info("cmd: inval user cache for " + peerDevice.id().toStringFormal());
-                    _commandDispatcher.enqueueCommand(peerDevice.id(), createCommandMessage(
-                            CommandType.INVALIDATE_USER_NAME_CACHE));
-                }
-                if (deviceNameUpdated) {
-                    l.info("cmd: inval device cache for " + peerDevice.id().toStringFormal());
-                    _commandDispatcher.enqueueCommand(peerDevice.id(), createCommandMessage(
-                            CommandType.INVALIDATE_DEVICE_NAME_CACHE));
-                }
+            List<DID> peerDevices = user.getPeerDevices().stream()
+                    .map(Device::id)
+                    .collect(Collectors.toList());
+
+            if (userNameUpdated) {
+                l.info("cmd: inval user cache for {} devices", peerDevices.size());
+                CommandDispatcher.checkDelivered(_commandDispatcher.enqueueCommands(peerDevices,
+                        createCommandMessage(CommandType.INVALIDATE_USER_NAME_CACHE)));
+            }
+            if (deviceNameUpdated) {
+                l.info("cmd: inval device cache for {} devices", peerDevices.size());
+                CommandDispatcher.checkDelivered(_commandDispatcher.enqueueCommands(peerDevices,
+                        createCommandMessage(CommandType.INVALIDATE_DEVICE_NAME_CACHE)));
             }
         }
 
@@ -1567,14 +1569,15 @@ public class SPService implements ISPService
 
     private void refreshCRLs(User user)
             throws SQLException, ExInvalidID, ExecutionException, InterruptedException
-    {Collection<Device> peerDevices = user.getPeerDevices();
+    {
+        List<DID> peerDevices = user.getPeerDevices().stream()
+                .map(Device::id)
+                .collect(Collectors.toList());
         // Refresh CRLs for peer devices once this user joins the shared folder (since the peer user
         // map may have changed).
-        for (Device peer : peerDevices) {
-            l.info("{} crl refresh", peer.id());
-            _commandDispatcher.enqueueCommand(peer.id(), createCommandMessage(
-                    CommandType.REFRESH_CRL));
-        }
+        l.info("crl refresh for {} devices", peerDevices.size());
+        CommandDispatcher.checkDelivered(_commandDispatcher.enqueueCommands(peerDevices,
+                createCommandMessage(CommandType.REFRESH_CRL)));
     }
 
     @Override
@@ -2723,7 +2726,7 @@ public class SPService implements ISPService
     }
 
     @Override
-    public ListenableFuture<GetACLReply> getACL(final Long epoch)
+    public ListenableFuture<GetACLReply> getACL(final Long epoch, @Nullable Boolean incremental)
             throws SQLException, ExNoPerm, ExNotAuthenticated, ExNotFound, ExSecondFactorRequired,
             ExSecondFactorSetupRequired
     {
@@ -2737,23 +2740,41 @@ public class SPService implements ISPService
         if (serverEpoch == epoch) {
             l.info("no updates - matching epoch: {}", epoch);
         } else {
-            for (SharedFolder sf : user.getJoinedFolders()) {
-                l.debug("add store {}", sf.id());
+            // only send the stores whose ACL changed since the epoch of the client, provided that
+            // all the changes made since that epoch were recorded
+            boolean delta = firstNonNull(incremental, false) && epoch < serverEpoch
+                    && epoch >= user.getACLDeltaEpoch();
+
+            ImmutableMap<SID, StoreACL> acls =
+                    _factSharedFolder.getJoinedACLs(user.id(), delta ? epoch : null);
+            l.info("{} acl for {} stores", delta ? "incremental" : "full", acls.size());
+
+            for (Entry<SID, StoreACL> e : acls.entrySet()) {
+                StoreACL acl = e.getValue();
                 PBStoreACL.Builder aclBuilder = PBStoreACL.newBuilder();
-                aclBuilder.setStoreId(BaseUtil.toPB(sf.id()));
-                aclBuilder.setExternal(sf.isExternal(user));
-                aclBuilder.setName(sf.getName(user));
-                for (Entry<User, Permissions> en : sf.getJoinedUsersAndRoles().entrySet()) {
+                aclBuilder.setStoreId(BaseUtil.toPB(e.getKey()));
+                aclBuilder.setExternal(acl._external);
+                aclBuilder.setName(acl._name);
+                for (Entry<UserID, Permissions> en : acl._roles.entrySet()) {
                     PBSubjectPermissions.Builder spbd = PBSubjectPermissions.newBuilder()
-                            .setSubject(en.getKey().id().getString())
+                            .setSubject(en.getKey().getString())
                             .setPermissions(en.getValue().toPB());
                     // TS needs to know the external bit for all members to know
                     // when to auto-create anchors in root stores
-                    if (user.id().isTeamServerID()) spbd.setExternal(sf.isExternal(en.getKey()));
+                    if (user.id().isTeamServerID()) {
+                        spbd.setExternal(acl._externalMembers.contains(en.getKey()));
+                    }
                     aclBuilder.addSubjectPermissions(spbd);
                 }
                 bd.addStoreAcl(aclBuilder);
             }
+
+            if (delta) {
+                bd.setIncremental(true);
+                for (SID sid : _factSharedFolder.getLeftStores(user.id(), epoch)) {
+                    bd.addLeftStoreId(BaseUtil.toPB(sid));
+                }
+            }
         }
 
         _sqlTrans.commit();
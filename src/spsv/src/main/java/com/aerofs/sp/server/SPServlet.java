@@ -319,6 +319,8 @@ public class SPServlet extends HttpServlet
         InvitationReminder er = new InvitationReminder(_esdb, _sqlTrans, _invitationReminderEmailer);
         er.start();
 
+        new CommandQueueCleaner(_commandQueue).start();
+
         _ssmpConnection.start();
     }
 
@@ -43,7 +43,7 @@ public class TestSP_DeleteACL extends AbstractSPACLTest
         // have the first guy get his acl
 
         setSession(USER_1);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         // this guy has seen _all_ the updates, so he should see an epoch of 4
         assertGetACLReplyIncrementsEpochBy(reply, 4);
@@ -55,7 +55,7 @@ public class TestSP_DeleteACL extends AbstractSPACLTest
         // now have the deleted guy get his acl
 
         setSession(USER_3);
-        reply = service.getACL(0L).get();
+        reply = service.getACL(0L, false).get();
 
         // only two updates have affected him, so he should have an epoch of 2
         assertGetACLReplyIncrementsEpochBy(reply, 2);
@@ -84,7 +84,7 @@ public class TestSP_DeleteACL extends AbstractSPACLTest
         }
 
         setSession(USER_1);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         // epoch shouldn't be bumped on a deletion of a person that doesn't exist
         assertGetACLReplyIncrementsEpochBy(reply, 1);
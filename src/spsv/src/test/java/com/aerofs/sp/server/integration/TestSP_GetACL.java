@@ -33,7 +33,7 @@ public class TestSP_GetACL extends AbstractSPACLTest
         // now have the editor do a getacl call
 
         setSession(USER_3);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         // epoch for this guy should be 2 (started at 0, added twice as editor)
         assertGetACLReplyIncrementsEpochBy(reply, 2);
@@ -86,7 +86,7 @@ public class TestSP_GetACL extends AbstractSPACLTest
         leaveSharedFolder(USER_1, SID_1);
 
         // USER_1 is the session user, hence the empty ACL reply
-        assertEquals(service.getACL(0L).get().getStoreAclCount(), 0);
+        assertEquals(service.getACL(0L, false).get().getStoreAclCount(), 0);
 
         setSession(USER_3);
         checkACL(USER_3, Permissions.allOf(Permission.WRITE, Permission.MANAGE));
@@ -182,10 +182,71 @@ public class TestSP_GetACL extends AbstractSPACLTest
         assertTrue(isExternal(USER_1, SID_1));
     }
 
+    @Test
+    public void shouldOnlyReturnChangedStoresWhenIncremental() throws Exception
+    {
+        shareAndJoinFolder(USER_1, SID_1, USER_3, Permissions.allOf(Permission.WRITE));
+        shareAndJoinFolder(USER_2, SID_2, USER_3, Permissions.allOf(Permission.WRITE));
+
+        setSession(USER_3);
+        GetACLReply reply = service.getACL(0L, true).get();
+        // clients without any prior state always get the full ACL
+        assertFalse(reply.getIncremental());
+        assertEquals(2, reply.getStoreAclCount());
+        long epoch = reply.getEpoch();
+
+        shareAndJoinFolder(USER_2, SID_2, USER_1, Permissions.VIEWER);
+
+        setSession(USER_3);
+        reply = service.getACL(epoch, true).get();
+        assertTrue(reply.getIncremental());
+        assertEquals(1, reply.getStoreAclCount());
+        assertEquals(0, reply.getLeftStoreIdCount());
+        assertACLOnlyContains(getSingleACL(SID_2, reply),
+                new UserAndRole(USER_2, Permissions.allOf(Permission.WRITE, Permission.MANAGE)),
+                new UserAndRole(USER_3, Permissions.allOf(Permission.WRITE)),
+                new UserAndRole(USER_1, Permissions.VIEWER));
+    }
+
+    @Test
+    public void shouldReturnLeftStoresWhenIncremental() throws Exception
+    {
+        shareAndJoinFolder(USER_1, SID_1, USER_3, Permissions.allOf(Permission.WRITE));
+        shareAndJoinFolder(USER_2, SID_2, USER_3, Permissions.allOf(Permission.WRITE));
+
+        setSession(USER_3);
+        long epoch = service.getACL(0L, true).get().getEpoch();
+
+        leaveSharedFolder(USER_3, SID_1);
+
+        GetACLReply reply = service.getACL(epoch, true).get();
+        assertTrue(reply.getIncremental());
+        assertEquals(0, reply.getStoreAclCount());
+        assertEquals(1, reply.getLeftStoreIdCount());
+        assertEquals(SID_1, new SID(BaseUtil.fromPB(reply.getLeftStoreId(0))));
+    }
+
+    @Test
+    public void shouldReturnFullACLWhenNotIncremental() throws Exception
+    {
+        shareAndJoinFolder(USER_1, SID_1, USER_3, Permissions.allOf(Permission.WRITE));
+        shareAndJoinFolder(USER_2, SID_2, USER_3, Permissions.allOf(Permission.WRITE));
+
+        setSession(USER_3);
+        long epoch = service.getACL(0L, true).get().getEpoch();
+
+        shareAndJoinFolder(USER_2, SID_2, USER_1, Permissions.VIEWER);
+
+        setSession(USER_3);
+        GetACLReply reply = service.getACL(epoch, false).get();
+        assertFalse(reply.getIncremental());
+        assertEquals(2, reply.getStoreAclCount());
+    }
+
     private boolean isExternal(User user, SID sid) throws Exception
     {
         setSession(user);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
         for (PBStoreACL sacl : reply.getStoreAclList()) {
             if (new SID(BaseUtil.fromPB(sacl.getStoreId())).equals(sid)) return sacl.getExternal();
         }
@@ -199,6 +260,6 @@ public class TestSP_GetACL extends AbstractSPACLTest
 
     private void checkACL(UserAndRole ... urs) throws Exception
     {
-        assertACLOnlyContains(getSingleACL(SID_1, service.getACL(0L).get()), urs);
+        assertACLOnlyContains(getSingleACL(SID_1, service.getACL(0L, false).get()), urs);
     }
 }
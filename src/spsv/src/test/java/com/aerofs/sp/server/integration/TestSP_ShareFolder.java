@@ -230,7 +230,7 @@ public class TestSP_ShareFolder extends AbstractSPACLTest
     {
         shareFolder(USER_1, SID_1, USER_2, Permissions.allOf(Permission.WRITE, Permission.MANAGE));
 
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         assertGetACLReplyIncrementsEpochBy(reply, 1);
         assertACLOnlyContains(getSingleACL(SID_1, reply), USER_1, Permissions.allOf(
@@ -263,7 +263,7 @@ public class TestSP_ShareFolder extends AbstractSPACLTest
 
         // now let's see what the acls are like
         setSession(USER_1);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         assertGetACLReplyIncrementsEpochBy(reply, 3);
 
@@ -38,7 +38,7 @@ public class TestSP_UpdateACL extends AbstractSPACLTest
 
         // verify user 3 has updated ACL in place
         setSession(USER_3);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         // epoch for this guy should be 2 (started at 0, added as editor then as owner)
         assertGetACLReplyIncrementsEpochBy(reply, 2);
@@ -117,7 +117,7 @@ public class TestSP_UpdateACL extends AbstractSPACLTest
 
         // check that user 3 still has no ACLs set in the db
         setSession(USER_3);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
         assertGetACLReplyIncrementsEpochBy(reply, 0);
         assertEquals(0, reply.getStoreAclCount());
     }
@@ -145,7 +145,7 @@ public class TestSP_UpdateACL extends AbstractSPACLTest
 
         // check that user 3 only has editor permissions
         setSession(USER_3);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         assertGetACLReplyIncrementsEpochBy(reply, 1);
         assertACLOnlyContains(getSingleACL(SID_1, reply),
@@ -170,7 +170,7 @@ public class TestSP_UpdateACL extends AbstractSPACLTest
 
         // switch to USER_3 so we can verify epoch number increments below.
         setSession(USER_3);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         assertGetACLReplyIncrementsEpochBy(reply, 2);
         assertACLOnlyContains(getSingleACL(SID_1, reply),
@@ -194,7 +194,7 @@ public class TestSP_UpdateACL extends AbstractSPACLTest
                 Permissions.EDITOR.toPB(), false);
 
         setSession(USER_1);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         assertACLOnlyContains(getSingleACL(SID_1, reply),
                 new UserAndRole(USER_1, Permissions.EDITOR));
@@ -217,7 +217,7 @@ public class TestSP_UpdateACL extends AbstractSPACLTest
                 Permissions.EDITOR.toPB(), false);
 
         setSession(USER_1);
-        GetACLReply reply = service.getACL(0L).get();
+        GetACLReply reply = service.getACL(0L, false).get();
 
         assertACLOnlyContains(getSingleACL(SID_1, reply),
                 new UserAndRole(USER_1, Permissions.EDITOR));
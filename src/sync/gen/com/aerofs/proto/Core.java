@@ -1772,6 +1772,8 @@ public interface PBGetFilterRequestOrBuilder extends
 MessageLiteOrBuilder {
 boolean hasCount();
 int getCount();
+boolean hasScalableFilter();
+boolean getScalableFilter();
 }
 public static final class PBGetFilterRequest extends
 GeneratedMessageLite implements
@@ -1820,6 +1822,11 @@ b0_ |= 0x00000001;
 count_ = input.readInt32();
 break;
 }
+case 16: {
+b0_ |= 0x00000002;
+scalableFilter_ = input.readBool();
+break;
+}
 }
 }
 } catch (InvalidProtocolBufferException e) {
@@ -2201,8 +2208,17 @@ return ((b0_ & 0x00000001) == 0x00000001);
 public int getCount() {
 return count_;
 }
+public static final int SCALABLE_FILTER_FIELD_NUMBER = 2;
+private boolean scalableFilter_;
+public boolean hasScalableFilter() {
+return ((b0_ & 0x00000002) == 0x00000002);
+}
+public boolean getScalableFilter() {
+return scalableFilter_;
+}
 private void initFields() {
 count_ = 0;
+scalableFilter_ = false;
 }
 private byte mii = -1;
 public final boolean isInitialized() {
@@ -2222,6 +2238,9 @@ getSerializedSize();
 if (((b0_ & 0x00000001) == 0x00000001)) {
 output.writeInt32(1, count_);
 }
+if (((b0_ & 0x00000002) == 0x00000002)) {
+output.writeBool(2, scalableFilter_);
+}
 output.writeRawBytes(unknownFields);
 }
 private int mss = -1;
@@ -2233,6 +2252,10 @@ if (((b0_ & 0x00000001) == 0x00000001)) {
 size += CodedOutputStream
 .computeInt32Size(1, count_);
 }
+if (((b0_ & 0x00000002) == 0x00000002)) {
+size += CodedOutputStream
+.computeBoolSize(2, scalableFilter_);
+}
 size += unknownFields.size();
 mss = size;
 return size;
@@ -2318,6 +2341,8 @@ public Builder clear() {
 super.clear();
 count_ = 0;
 b0_ = (b0_ & ~0x00000001);
+scalableFilter_ = false;
+b0_ = (b0_ & ~0x00000002);
 return this;
 }
 public Builder clone() {
@@ -2341,6 +2366,10 @@ if (((from_b0_ & 0x00000001) == 0x00000001)) {
 to_b0_ |= 0x00000001;
 }
 result.count_ = count_;
+if (((from_b0_ & 0x00000002) == 0x00000002)) {
+to_b0_ |= 0x00000002;
+}
+result.scalableFilter_ = scalableFilter_;
 result.b0_ = to_b0_;
 return result;
 }
@@ -2349,6 +2378,9 @@ if (other == Core.PBGetFilterRequest.getDefaultInstance()) return this;
 if (other.hasCount()) {
 setCount(other.getCount());
 }
+if (other.hasScalableFilter()) {
+setScalableFilter(other.getScalableFilter());
+}
 setUnknownFields(
 getUnknownFields().concat(other.unknownFields));
 return this;
@@ -2394,6 +2426,23 @@ b0_ = (b0_ & ~0x00000001);
 count_ = 0;
 return this;
 }
+private boolean scalableFilter_ ;
+public boolean hasScalableFilter() {
+return ((b0_ & 0x00000002) == 0x00000002);
+}
+public boolean getScalableFilter() {
+return scalableFilter_;
+}
+public Builder setScalableFilter(boolean value) {
+b0_ |= 0x00000002;
+scalableFilter_ = value;
+return this;
+}
+public Builder clearScalableFilter() {
+b0_ = (b0_ & ~0x00000002);
+scalableFilter_ = false;
+return this;
+}
 }
 static {
 defaultInstance = new PBGetFilterRequest(true);
@@ -3329,6 +3378,10 @@ boolean hasLocalVersion();
 long getLocalVersion();
 boolean hasPrefix();
 Core.PBGetContentRequest.Prefix getPrefix();
+boolean hasMaxChunkSize();
+int getMaxChunkSize();
+boolean hasRange();
+Core.PBGetContentRequest.Range getRange();
 }
 public static final class PBGetContentRequest extends
 GeneratedMessageLite implements
@@ -3400,6 +3453,24 @@ prefix_ = subBuilder.buildPartial();
 b0_ |= 0x00000008;
 break;
 }
+case 40: {
+b0_ |= 0x00000010;
+maxChunkSize_ = input.readUInt32();
+break;
+}
+case 50: {
+Core.PBGetContentRequest.Range.Builder subBuilder = null;
+if (((b0_ & 0x00000020) == 0x00000020)) {
+subBuilder = range_.toBuilder();
+}
+range_ = input.readMessage(Core.PBGetContentRequest.Range.PARSER, er);
+if (subBuilder != null) {
+subBuilder.mergeFrom(range_);
+range_ = subBuilder.buildPartial();
+}
+b0_ |= 0x00000020;
+break;
+}
 }
 }
 } catch (InvalidProtocolBufferException e) {
@@ -3835,6 +3906,352 @@ defaultInstance = new Prefix(true);
 defaultInstance.initFields();
 }
 }
+public interface RangeOrBuilder extends
+MessageLiteOrBuilder {
+boolean hasOffset();
+long getOffset();
+boolean hasLength();
+long getLength();
+}
+public static final class Range extends
+GeneratedMessageLite implements
+RangeOrBuilder {
+private Range(GeneratedMessageLite.Builder<?,?> bd) {
+super(bd);
+this.unknownFields = bd.getUnknownFields();
+}
+private Range(boolean noInit) { this.unknownFields = ByteString.EMPTY;}
+private static final Range defaultInstance;
+public static Range getDefaultInstance() {
+return defaultInstance;
+}
+public Range getDefaultInstanceForType() {
+return defaultInstance;
+}
+private final ByteString unknownFields;
+private Range(
+CodedInputStream input,
+ExtensionRegistryLite er)
+throws InvalidProtocolBufferException {
+initFields();
+int mutable_b0_ = 0;
+ByteString.Output unknownFieldsOutput =
+ByteString.newOutput();
+CodedOutputStream unknownFieldsCodedOutput =
+CodedOutputStream.newInstance(
+unknownFieldsOutput);
+try {
+boolean done = false;
+while (!done) {
+int tag = input.readTag();
+switch (tag) {
+case 0:
+done = true;
+break;
+default: {
+if (!parseUnknownField(input, unknownFieldsCodedOutput,
+er, tag)) {
+done = true;
+}
+break;
+}
+case 8: {
+b0_ |= 0x00000001;
+offset_ = input.readUInt64();
+break;
+}
+case 16: {
+b0_ |= 0x00000002;
+length_ = input.readUInt64();
+break;
+}
+}
+}
+} catch (InvalidProtocolBufferException e) {
+throw e.setUnfinishedMessage(this);
+} catch (IOException e) {
+throw new InvalidProtocolBufferException(
+e.getMessage()).setUnfinishedMessage(this);
+} finally {
+try {
+unknownFieldsCodedOutput.flush();
+} catch (IOException e) {
+} finally {
+unknownFields = unknownFieldsOutput.toByteString();
+}
+makeExtensionsImmutable();
+}
+}
+public static Parser<Range> PARSER =
+new AbstractParser<Range>() {
+public Range parsePartialFrom(
+CodedInputStream input,
+ExtensionRegistryLite er)
+throws InvalidProtocolBufferException {
+return new Range(input, er);
+}
+};
+@Override
+public Parser<Range> getParserForType() {
+return PARSER;
+}
+private int b0_;
+public static final int OFFSET_FIELD_NUMBER = 1;
+private long offset_;
+public boolean hasOffset() {
+return ((b0_ & 0x00000001) == 0x00000001);
+}
+public long getOffset() {
+return offset_;
+}
+public static final int LENGTH_FIELD_NUMBER = 2;
+private long length_;
+public boolean hasLength() {
+return ((b0_ & 0x00000002) == 0x00000002);
+}
+public long getLength() {
+return length_;
+}
+private void initFields() {
+offset_ = 0L;
+length_ = 0L;
+}
+private byte mii = -1;
+public final boolean isInitialized() {
+byte isInitialized = mii;
+if (isInitialized == 1) return true;
+if (isInitialized == 0) return false;
+if (!hasOffset()) {
+mii = 0;
+return false;
+}
+if (!hasLength()) {
+mii = 0;
+return false;
+}
+mii = 1;
+return true;
+}
+public void writeTo(CodedOutputStream output)
+throws IOException {
+getSerializedSize();
+if (((b0_ & 0x00000001) == 0x00000001)) {
+output.writeUInt64(1, offset_);
+}
+if (((b0_ & 0x00000002) == 0x00000002)) {
+output.writeUInt64(2, length_);
+}
+output.writeRawBytes(unknownFields);
+}
+private int mss = -1;
+public int getSerializedSize() {
+int size = mss;
+if (size != -1) return size;
+size = 0;
+if (((b0_ & 0x00000001) == 0x00000001)) {
+size += CodedOutputStream
+.computeUInt64Size(1, offset_);
+}
+if (((b0_ & 0x00000002) == 0x00000002)) {
+size += CodedOutputStream
+.computeUInt64Size(2, length_);
+}
+size += unknownFields.size();
+mss = size;
+return size;
+}
+private static final long serialVersionUID = 0L;
+@Override
+protected Object writeReplace()
+throws java.io.ObjectStreamException {
+return super.writeReplace();
+}
+public static Core.PBGetContentRequest.Range parseFrom(
+ByteString data)
+throws InvalidProtocolBufferException {
+return PARSER.parseFrom(data);
+}
+public static Core.PBGetContentRequest.Range parseFrom(
+ByteString data,
+ExtensionRegistryLite er)
+throws InvalidProtocolBufferException {
+return PARSER.parseFrom(data, er);
+}
+public static Core.PBGetContentRequest.Range parseFrom(byte[] data)
+throws InvalidProtocolBufferException {
+return PARSER.parseFrom(data);
+}
+public static Core.PBGetContentRequest.Range parseFrom(
+byte[] data,
+ExtensionRegistryLite er)
+throws InvalidProtocolBufferException {
+return PARSER.parseFrom(data, er);
+}
+public static Core.PBGetContentRequest.Range parseFrom(java.io.InputStream input)
+throws IOException {
+return PARSER.parseFrom(input);
+}
+public static Core.PBGetContentRequest.Range parseFrom(
+java.io.InputStream input,
+ExtensionRegistryLite er)
+throws IOException {
+return PARSER.parseFrom(input, er);
+}
+public static Core.PBGetContentRequest.Range parseDelimitedFrom(java.io.InputStream input)
+throws IOException {
+return PARSER.parseDelimitedFrom(input);
+}
+public static Core.PBGetContentRequest.Range parseDelimitedFrom(
+java.io.InputStream input,
+ExtensionRegistryLite er)
+throws IOException {
+return PARSER.parseDelimitedFrom(input, er);
+}
+public static Core.PBGetContentRequest.Range parseFrom(
+CodedInputStream input)
+throws IOException {
+return PARSER.parseFrom(input);
+}
+public static Core.PBGetContentRequest.Range parseFrom(
+CodedInputStream input,
+ExtensionRegistryLite er)
+throws IOException {
+return PARSER.parseFrom(input, er);
+}
+public static Builder newBuilder() { return Builder.create(); }
+public Builder newBuilderForType() { return newBuilder(); }
+public static Builder newBuilder(Core.PBGetContentRequest.Range prototype) {
+return newBuilder().mergeFrom(prototype);
+}
+public Builder toBuilder() { return newBuilder(this); }
+public static final class Builder extends
+GeneratedMessageLite.Builder<
+Core.PBGetContentRequest.Range, Builder>
+implements
+Core.PBGetContentRequest.RangeOrBuilder {
+private Builder() {
+maybeForceBuilderInitialization();
+}
+private void maybeForceBuilderInitialization() {
+}
+private static Builder create() {
+return new Builder();
+}
+public Builder clear() {
+super.clear();
+offset_ = 0L;
+b0_ = (b0_ & ~0x00000001);
+length_ = 0L;
+b0_ = (b0_ & ~0x00000002);
+return this;
+}
+public Builder clone() {
+return create().mergeFrom(buildPartial());
+}
+public Core.PBGetContentRequest.Range getDefaultInstanceForType() {
+return Core.PBGetContentRequest.Range.getDefaultInstance();
+}
+public Core.PBGetContentRequest.Range build() {
+Core.PBGetContentRequest.Range result = buildPartial();
+if (!result.isInitialized()) {
+throw newUninitializedMessageException(result);
+}
+return result;
+}
+public Core.PBGetContentRequest.Range buildPartial() {
+Core.PBGetContentRequest.Range result = new Core.PBGetContentRequest.Range(this);
+int from_b0_ = b0_;
+int to_b0_ = 0;
+if (((from_b0_ & 0x00000001) == 0x00000001)) {
+to_b0_ |= 0x00000001;
+}
+result.offset_ = offset_;
+if (((from_b0_ & 0x00000002) == 0x00000002)) {
+to_b0_ |= 0x00000002;
+}
+result.length_ = length_;
+result.b0_ = to_b0_;
+return result;
+}
+public Builder mergeFrom(Core.PBGetContentRequest.Range other) {
+if (other == Core.PBGetContentRequest.Range.getDefaultInstance()) return this;
+if (other.hasOffset()) {
+setOffset(other.getOffset());
+}
+if (other.hasLength()) {
+setLength(other.getLength());
+}
+setUnknownFields(
+getUnknownFields().concat(other.unknownFields));
+return this;
+}
+public final boolean isInitialized() {
+if (!hasOffset()) {
+return false;
+}
+if (!hasLength()) {
+return false;
+}
+return true;
+}
+public Builder mergeFrom(
+CodedInputStream input,
+ExtensionRegistryLite er)
+throws IOException {
+Core.PBGetContentRequest.Range pm = null;
+try {
+pm = PARSER.parsePartialFrom(input, er);
+} catch (InvalidProtocolBufferException e) {
+pm = (Core.PBGetContentRequest.Range) e.getUnfinishedMessage();
+throw e;
+} finally {
+if (pm != null) {
+mergeFrom(pm);
+}
+}
+return this;
+}
+private int b0_;
+private long offset_ ;
+public boolean hasOffset() {
+return ((b0_ & 0x00000001) == 0x00000001);
+}
+public long getOffset() {
+return offset_;
+}
+public Builder setOffset(long value) {
+b0_ |= 0x00000001;
+offset_ = value;
+return this;
+}
+public Builder clearOffset() {
+b0_ = (b0_ & ~0x00000001);
+offset_ = 0L;
+return this;
+}
+private long length_ ;
+public boolean hasLength() {
+return ((b0_ & 0x00000002) == 0x00000002);
+}
+public long getLength() {
+return length_;
+}
+public Builder setLength(long value) {
+b0_ |= 0x00000002;
+length_ = value;
+return this;
+}
+public Builder clearLength() {
+b0_ = (b0_ & ~0x00000002);
+length_ = 0L;
+return this;
+}
+}
+static {
+defaultInstance = new Range(true);
+defaultInstance.initFields();
+}
+}
 private int b0_;
 public static final int STORE_ID_FIELD_NUMBER = 1;
 private ByteString storeId_;
@@ -3868,11 +4285,29 @@ return ((b0_ & 0x00000008) == 0x00000008);
 public Core.PBGetContentRequest.Prefix getPrefix() {
 return prefix_;
 }
+public static final int MAX_CHUNK_SIZE_FIELD_NUMBER = 5;
+private int maxChunkSize_;
+public boolean hasMaxChunkSize() {
+return ((b0_ & 0x00000010) == 0x00000010);
+}
+public int getMaxChunkSize() {
+return maxChunkSize_;
+}
+public static final int RANGE_FIELD_NUMBER = 6;
+private Core.PBGetContentRequest.Range range_;
+public boolean hasRange() {
+return ((b0_ & 0x00000020) == 0x00000020);
+}
+public Core.PBGetContentRequest.Range getRange() {
+return range_;
+}
 private void initFields() {
 storeId_ = ByteString.EMPTY;
 objectId_ = ByteString.EMPTY;
 localVersion_ = 0L;
 prefix_ = Core.PBGetContentRequest.Prefix.getDefaultInstance();
+maxChunkSize_ = 0;
+range_ = Core.PBGetContentRequest.Range.getDefaultInstance();
 }
 private byte mii = -1;
 public final boolean isInitialized() {
@@ -3897,6 +4332,12 @@ mii = 0;
 return false;
 }
 }
+if (hasRange()) {
+if (!getRange().isInitialized()) {
+mii = 0;
+return false;
+}
+}
 mii = 1;
 return true;
 }
@@ -3915,6 +4356,12 @@ output.writeUInt64(3, localVersion_);
 if (((b0_ & 0x00000008) == 0x00000008)) {
 output.writeMessage(4, prefix_);
 }
+if (((b0_ & 0x00000010) == 0x00000010)) {
+output.writeUInt32(5, maxChunkSize_);
+}
+if (((b0_ & 0x00000020) == 0x00000020)) {
+output.writeMessage(6, range_);
+}
 output.writeRawBytes(unknownFields);
 }
 private int mss = -1;
@@ -3938,6 +4385,14 @@ if (((b0_ & 0x00000008) == 0x00000008)) {
 size += CodedOutputStream
 .computeMessageSize(4, prefix_);
 }
+if (((b0_ & 0x00000010) == 0x00000010)) {
+size += CodedOutputStream
+.computeUInt32Size(5, maxChunkSize_);
+}
+if (((b0_ & 0x00000020) == 0x00000020)) {
+size += CodedOutputStream
+.computeMessageSize(6, range_);
+}
 size += unknownFields.size();
 mss = size;
 return size;
@@ -4029,6 +4484,10 @@ localVersion_ = 0L;
 b0_ = (b0_ & ~0x00000004);
 prefix_ = Core.PBGetContentRequest.Prefix.getDefaultInstance();
 b0_ = (b0_ & ~0x00000008);
+maxChunkSize_ = 0;
+b0_ = (b0_ & ~0x00000010);
+range_ = Core.PBGetContentRequest.Range.getDefaultInstance();
+b0_ = (b0_ & ~0x00000020);
 return this;
 }
 public Builder clone() {
@@ -4064,6 +4523,14 @@ if (((from_b0_ & 0x00000008) == 0x00000008)) {
 to_b0_ |= 0x00000008;
 }
 result.prefix_ = prefix_;
+if (((from_b0_ & 0x00000010) == 0x00000010)) {
+to_b0_ |= 0x00000010;
+}
+result.maxChunkSize_ = maxChunkSize_;
+if (((from_b0_ & 0x00000020) == 0x00000020)) {
+to_b0_ |= 0x00000020;
+}
+result.range_ = range_;
 result.b0_ = to_b0_;
 return result;
 }
@@ -4081,6 +4548,12 @@ setLocalVersion(other.getLocalVersion());
 if (other.hasPrefix()) {
 mergePrefix(other.getPrefix());
 }
+if (other.hasMaxChunkSize()) {
+setMaxChunkSize(other.getMaxChunkSize());
+}
+if (other.hasRange()) {
+mergeRange(other.getRange());
+}
 setUnknownFields(
 getUnknownFields().concat(other.unknownFields));
 return this;
@@ -4100,6 +4573,11 @@ if (!getPrefix().isInitialized()) {
 return false;
 }
 }
+if (hasRange()) {
+if (!getRange().isInitialized()) {
+return false;
+}
+}
 return true;
 }
 public Builder mergeFrom(
@@ -4214,6 +4692,60 @@ prefix_ = Core.PBGetContentRequest.Prefix.getDefaultInstance();
 b0_ = (b0_ & ~0x00000008);
 return this;
 }
+private int maxChunkSize_ ;
+public boolean hasMaxChunkSize() {
+return ((b0_ & 0x00000010) == 0x00000010);
+}
+public int getMaxChunkSize() {
+return maxChunkSize_;
+}
+public Builder setMaxChunkSize(int value) {
+b0_ |= 0x00000010;
+maxChunkSize_ = value;
+return this;
+}
+public Builder clearMaxChunkSize() {
+b0_ = (b0_ & ~0x00000010);
+maxChunkSize_ = 0;
+return this;
+}
+private Core.PBGetContentRequest.Range range_ = Core.PBGetContentRequest.Range.getDefaultInstance();
+public boolean hasRange() {
+return ((b0_ & 0x00000020) == 0x00000020);
+}
+public Core.PBGetContentRequest.Range getRange() {
+return range_;
+}
+public Builder setRange(Core.PBGetContentRequest.Range value) {
+if (value == null) {
+throw new NullPointerException();
+}
+range_ = value;
+b0_ |= 0x00000020;
+return this;
+}
+public Builder setRange(
+Core.PBGetContentRequest.Range.Builder bdForValue) {
+range_ = bdForValue.build();
+b0_ |= 0x00000020;
+return this;
+}
+public Builder mergeRange(Core.PBGetContentRequest.Range value) {
+if (((b0_ & 0x00000020) == 0x00000020) &&
+range_ != Core.PBGetContentRequest.Range.getDefaultInstance()) {
+range_ =
+Core.PBGetContentRequest.Range.newBuilder(range_).mergeFrom(value).buildPartial();
+} else {
+range_ = value;
+}
+b0_ |= 0x00000020;
+return this;
+}
+public Builder clearRange() {
+range_ = Core.PBGetContentRequest.Range.getDefaultInstance();
+b0_ = (b0_ & ~0x00000020);
+return this;
+}
 }
 static {
 defaultInstance = new PBGetContentRequest(true);
@@ -4234,6 +4766,8 @@ boolean hasPrefixLength();
 long getPrefixLength();
 boolean hasLts();
 long getLts();
+boolean hasRangeOffset();
+long getRangeOffset();
 }
 public static final class PBGetContentResponse extends
 GeneratedMessageLite implements
@@ -4307,6 +4841,11 @@ b0_ |= 0x00000020;
 lts_ = input.readUInt64();
 break;
 }
+case 56: {
+b0_ |= 0x00000040;
+rangeOffset_ = input.readUInt64();
+break;
+}
 }
 }
 } catch (InvalidProtocolBufferException e) {
@@ -4386,6 +4925,14 @@ return ((b0_ & 0x00000020) == 0x00000020);
 public long getLts() {
 return lts_;
 }
+public static final int RANGE_OFFSET_FIELD_NUMBER = 7;
+private long rangeOffset_;
+public boolean hasRangeOffset() {
+return ((b0_ & 0x00000040) == 0x00000040);
+}
+public long getRangeOffset() {
+return rangeOffset_;
+}
 private void initFields() {
 version_ = 0L;
 length_ = 0L;
@@ -4393,6 +4940,7 @@ mtime_ = 0L;
 hash_ = ByteString.EMPTY;
 prefixLength_ = 0L;
 lts_ = 0L;
+rangeOffset_ = 0L;
 }
 private byte mii = -1;
 public final boolean isInitialized() {
@@ -4443,6 +4991,9 @@ output.writeUInt64(5, prefixLength_);
 if (((b0_ & 0x00000020) == 0x00000020)) {
 output.writeUInt64(6, lts_);
 }
+if (((b0_ & 0x00000040) == 0x00000040)) {
+output.writeUInt64(7, rangeOffset_);
+}
 output.writeRawBytes(unknownFields);
 }
 private int mss = -1;
@@ -4474,6 +5025,10 @@ if (((b0_ & 0x00000020) == 0x00000020)) {
 size += CodedOutputStream
 .computeUInt64Size(6, lts_);
 }
+if (((b0_ & 0x00000040) == 0x00000040)) {
+size += CodedOutputStream
+.computeUInt64Size(7, rangeOffset_);
+}
 size += unknownFields.size();
 mss = size;
 return size;
@@ -4569,6 +5124,8 @@ prefixLength_ = 0L;
 b0_ = (b0_ & ~0x00000010);
 lts_ = 0L;
 b0_ = (b0_ & ~0x00000020);
+rangeOffset_ = 0L;
+b0_ = (b0_ & ~0x00000040);
 return this;
 }
 public Builder clone() {
@@ -4612,6 +5169,10 @@ if (((from_b0_ & 0x00000020) == 0x00000020)) {
 to_b0_ |= 0x00000020;
 }
 result.lts_ = lts_;
+if (((from_b0_ & 0x00000040) == 0x00000040)) {
+to_b0_ |= 0x00000040;
+}
+result.rangeOffset_ = rangeOffset_;
 result.b0_ = to_b0_;
 return result;
 }
@@ -4635,6 +5196,9 @@ setPrefixLength(other.getPrefixLength());
 if (other.hasLts()) {
 setLts(other.getLts());
 }
+if (other.hasRangeOffset()) {
+setRangeOffset(other.getRangeOffset());
+}
 setUnknownFields(
 getUnknownFields().concat(other.unknownFields));
 return this;
@@ -4780,6 +5344,23 @@ b0_ = (b0_ & ~0x00000020);
 lts_ = 0L;
 return this;
 }
+private long rangeOffset_ ;
+public boolean hasRangeOffset() {
+return ((b0_ & 0x00000040) == 0x00000040);
+}
+public long getRangeOffset() {
+return rangeOffset_;
+}
+public Builder setRangeOffset(long value) {
+b0_ |= 0x00000040;
+rangeOffset_ = value;
+return this;
+}
+public Builder clearRangeOffset() {
+b0_ = (b0_ & ~0x00000040);
+rangeOffset_ = 0L;
+return this;
+}
 }
 static {
 defaultInstance = new PBGetContentResponse(true);
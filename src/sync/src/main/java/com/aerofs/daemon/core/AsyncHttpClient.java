@@ -14,6 +14,13 @@ import com.aerofs.ids.DID;
 import com.aerofs.ids.UserID;
 import com.aerofs.base.ssl.SSLEngineFactory;
 import com.aerofs.daemon.core.polaris.async.AsyncTaskCallback;
+import com.aerofs.lib.IDumpStatMisc;
+import com.aerofs.lib.event.Prio;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -26,36 +33,78 @@ import org.jboss.netty.handler.timeout.IdleStateHandler;
 import org.jboss.netty.util.Timer;
 import org.slf4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.URI;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.UnresolvedAddressException;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.UnaryOperator;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 /**
+ * Asynchronous HTTP client for a single endpoint
  *
+ * Requests are queued by priority and spread over a bounded pool of connections. Idempotent
+ * requests may be pipelined when all connections are busy.
+ *
+ * Each client lists its pool and request metrics in the dumpstat output.
  */
-public class AsyncHttpClient
+public class AsyncHttpClient implements IDumpStatMisc
 {
     protected static final Logger l = Loggers.getLogger(AsyncHttpClient.class);
 
+    // largest response body accepted, callers requesting variable amounts of data should size
+    // their requests accordingly
+    public static final int MAX_RESPONSE_SIZE = 4 * C.MB;
+
+    // each client talks to a single endpoint, this bounds the number of connections to that host
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    // largest number of idempotent requests in flight on a single connection
+    static final int MAX_PIPELINE_DEPTH = 4;
+
+    // several clients may talk to the same endpoint, e.g. polaris
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
     private final Auth _auth;
     private final URI _endpoint;
     private final ClientBootstrap _bootstrap;
     private final Executor _executor;
 
-    private AtomicReference<Channel> _channel = new AtomicReference<>();
+    private final InetSocketAddress _address;
+    private final int _maxConnections;
+
+    // NB: all pool state below is protected by the queue lock. Channel writes MUST be done
+    // without holding it, to avoid deadlocking against SslHandler's handshake lock.
+    private final PriorityQueue<Request> _queue = new PriorityQueue<>(16,
+            (r0, r1) -> r0.prio != r1.prio
+                    ? r0.prio.compareTo(r1.prio)
+                    : Long.compare(r0.seq, r1.seq));
+    private final List<Connection> _connections = new ArrayList<>();
+    private int _connecting;
+    private long _seq;
+
+    private final AtomicLong _completed = new AtomicLong();
+    private final AtomicLong _latency = new AtomicLong();
 
     protected static class Auth implements UnaryOperator<HttpHeaders>
     {
@@ -77,33 +126,78 @@ public class AsyncHttpClient
     protected AsyncHttpClient(URI endpoint, Executor executor, Auth auth, Timer timer,
                               ChannelFactory channelFactory, SSLEngineFactory sslEngineFactory)
     {
+        this(endpoint, executor, auth, timer, channelFactory, sslEngineFactory,
+                DEFAULT_MAX_CONNECTIONS);
+    }
+
+    protected AsyncHttpClient(URI endpoint, Executor executor, Auth auth, Timer timer,
+                              ChannelFactory channelFactory, SSLEngineFactory sslEngineFactory,
+                              int maxConnections)
+    {
+        checkArgument(maxConnections > 0);
         _auth = auth;
         _executor = executor;
         _endpoint = endpoint;
+        _address = new InetSocketAddress(endpoint.getHost(), endpoint.getPort());
+        _maxConnections = maxConnections;
         _bootstrap = new ClientBootstrap(channelFactory);
         _bootstrap.setPipelineFactory(() -> {
             try {
                 return Channels.pipeline(
                         sslEngineFactory.newSslHandler(),
                         new HttpClientCodec(),
-                        new HttpChunkAggregator(256 * C.KB),
+                        new HttpChunkAggregator(MAX_RESPONSE_SIZE),
                         new IdleStateHandler(timer, 0, 0, 60),
                         new Handler());
             } catch (IOException | GeneralSecurityException e) {
                 throw new RuntimeException(e);
             }
         });
+        Dumpables.add("http" + INSTANCES.incrementAndGet() + " " + endpoint, this);
     }
 
     private static class Request
     {
         final HttpRequest http;
         final SettableFuture<HttpResponse> f;
+        final Prio prio;
+        final long seq;
+        final long queued = System.nanoTime();
 
-        Request(HttpRequest http, SettableFuture<HttpResponse> f)
+        // set when the request is assigned a connection
+        @Nullable Connection conn;
+        long dispatched;
+
+        Request(HttpRequest http, SettableFuture<HttpResponse> f, Prio prio, long seq)
         {
             this.http = http;
             this.f = f;
+            this.prio = prio;
+            this.seq = seq;
+        }
+
+        /**
+         * Only idempotent requests may be pipelined: if the connection is closed before all
+         * responses are received the server may or may not have processed the outstanding
+         * requests and it is up to the caller to retry them.
+         */
+        boolean pipelinable()
+        {
+            return http.getMethod().equals(HttpMethod.GET)
+                    || http.getMethod().equals(HttpMethod.HEAD);
+        }
+    }
+
+    private static class Connection
+    {
+        final Channel channel;
+        int inflight;
+        // number of in-flight requests that cannot be pipelined
+        int exclusive;
+
+        Connection(Channel channel)
+        {
+            this.channel = channel;
         }
     }
 
@@ -197,28 +291,190 @@ public class AsyncHttpClient
         }
     }
 
-    private void send(HttpRequest req, final SettableFuture<HttpResponse> f)
+    private void send(HttpRequest req, Prio prio, final SettableFuture<HttpResponse> f)
     {
         _auth.apply(req.headers());
         req.headers().add(HttpHeaders.Names.HOST, _endpoint.getHost());
         req.setUri(_endpoint.getPath() + req.getUri());
 
-        Channel c = _channel.get();
-        if (c != null && c.isConnected()) {
-            write(c, req, f);
-            return;
+        Request r;
+        synchronized (_queue) {
+            r = new Request(req, f, prio, _seq++);
+            _queue.add(r);
+        }
+        // NB: added after the caller's listeners so that the response is handed over to them
+        // before the connection is reused
+        f.addListener(() -> onDone(r), MoreExecutors.sameThreadExecutor());
+        dispatch();
+    }
+
+    /**
+     * Assign queued requests to connections, in priority order
+     *
+     * A request goes to an idle connection if there is one. Otherwise, a new connection is opened
+     * if the pool is not full. Pipelining is only used once the pool is full, as it exposes the
+     * request to head-of-line blocking.
+     */
+    private void dispatch()
+    {
+        List<Request> assigned = new ArrayList<>();
+        int connect;
+        synchronized (_queue) {
+            Request r;
+            while ((r = _queue.peek()) != null) {
+                Connection c = pick(r);
+                if (c == null) break;
+                _queue.poll();
+                r.conn = c;
+                r.dispatched = System.nanoTime();
+                ++c.inflight;
+                if (!r.pipelinable()) ++c.exclusive;
+                assigned.add(r);
+            }
+            connect = Math.max(0, Math.min(_queue.size() - _connecting,
+                    _maxConnections - _connections.size() - _connecting));
+            _connecting += connect;
+        }
+
+        for (Request r : assigned) write(r);
+        for (int i = 0; i < connect; ++i) connect();
+    }
+
+    private @Nullable Connection pick(Request r)
+    {
+        Connection best = null;
+        for (Connection c : _connections) {
+            if (!c.channel.isConnected()) continue;
+            if (c.inflight == 0) return c;
+            if (r.pipelinable() && c.exclusive == 0 && c.inflight < MAX_PIPELINE_DEPTH
+                    && (best == null || c.inflight < best.inflight)) {
+                best = c;
+            }
+        }
+        return _connections.size() + _connecting < _maxConnections ? null : best;
+    }
+
+    private void connect()
+    {
+        _bootstrap.connect(_address).addListener((ChannelFuture cf) -> {
+            if (cf.isSuccess()) {
+                Connection c = new Connection(cf.getChannel());
+                synchronized (_queue) {
+                    --_connecting;
+                    _connections.add(c);
+                }
+                c.channel.getCloseFuture().addListener(f -> onClose(c));
+                dispatch();
+                return;
+            }
+
+            l.info("connect failed", BaseLogUtil.suppress(cf.getCause()));
+            List<Request> failed = Collections.emptyList();
+            synchronized (_queue) {
+                --_connecting;
+                // queued requests will be picked up by existing connections, if any
+                if (_connections.isEmpty() && _connecting == 0) {
+                    failed = new ArrayList<>(_queue);
+                    _queue.clear();
+                }
+            }
+            for (Request r : failed) r.f.setException(cf.getCause());
+        });
+    }
+
+    private void onClose(Connection c)
+    {
+        synchronized (_queue) {
+            _connections.remove(c);
+        }
+        dispatch();
+    }
+
+    private void onDone(Request r)
+    {
+        long now = System.nanoTime();
+        _completed.incrementAndGet();
+        _latency.addAndGet(now - r.queued);
+
+        Connection c;
+        synchronized (_queue) {
+            c = r.conn;
+            if (c != null) {
+                --c.inflight;
+                if (!r.pipelinable()) --c.exclusive;
+            }
+        }
+        if (c == null) return;
+
+        l.info("done {} {} {}ms queued {}ms", r.http.getMethod(), r.http.getUri(),
+                TimeUnit.NANOSECONDS.toMillis(now - r.queued),
+                TimeUnit.NANOSECONDS.toMillis(r.dispatched - r.queued));
+        dispatch();
+    }
+
+    /**
+     * @return number of requests waiting for a connection
+     */
+    public int queueDepth()
+    {
+        synchronized (_queue) {
+            return _queue.size();
         }
+    }
+
+    /**
+     * @return number of requests sent and waiting for a response
+     */
+    public int inFlight()
+    {
+        synchronized (_queue) {
+            int n = 0;
+            for (Connection c : _connections) n += c.inflight;
+            return n;
+        }
+    }
+
+    public int connections()
+    {
+        synchronized (_queue) {
+            return _connections.size();
+        }
+    }
+
+    /**
+     * @return number of requests completed, successfully or not
+     */
+    public long completed()
+    {
+        return _completed.get();
+    }
+
+    /**
+     * @return cumulative latency of completed requests, from submission to completion, in ms
+     */
+    public long cumulativeLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_latency.get());
+    }
 
-        _bootstrap.connect(new InetSocketAddress(_endpoint.getHost(), _endpoint.getPort()))
-                .addListener((ChannelFuture cf) -> {
-                    if (cf.isSuccess()) {
-                        onConnect(cf.getChannel());
-                        write(cf.getChannel(), req, f);
-                    } else {
-                        l.info("connect failed", BaseLogUtil.suppress(cf.getCause()));
-                        f.setException(cf.getCause());
-                    }
-                });
+    @Override
+    public void dumpStatMisc(String indent, String indentUnit, PrintStream ps)
+    {
+        int connections, connecting, queued, inflight = 0;
+        synchronized (_queue) {
+            connections = _connections.size();
+            connecting = _connecting;
+            queued = _queue.size();
+            for (Connection c : _connections) inflight += c.inflight;
+        }
+        long completed = completed();
+        long latency = cumulativeLatency();
+
+        ps.println(indent + "connections " + connections + "/" + _maxConnections
+                + " connecting " + connecting);
+        ps.println(indent + "queued " + queued + " inflight " + inflight);
+        ps.println(indent + "completed " + completed + " latency " + latency + "ms avg "
+                + (completed > 0 ? latency / completed : 0) + "ms");
     }
 
     @FunctionalInterface
@@ -235,14 +491,34 @@ public class AsyncHttpClient
 
     public void post(String url, Object body, AsyncTaskCallback cb,
                      Function<HttpResponse, Boolean, Exception> cons, Executor executor)
+    {
+        send(newPostRequest(url, body), Prio.HI, cb, cons, executor);
+    }
+
+    /**
+     * Bulk submissions should use {@link Prio#LO} to avoid delaying more latency-sensitive
+     * requests when all connections are busy
+     */
+    public void post(String url, Object body, Prio prio, AsyncTaskCallback cb,
+                     Function<HttpResponse, Boolean, Exception> cons)
+    {
+        send(newPostRequest(url, body), prio, cb, cons, _executor);
+    }
+
+    public <T> void post(String url, Object body, Function<HttpResponse, T, Exception> decoder,
+            FutureCallback<T> cb)
+    {
+        send(newPostRequest(url, body), decoder, cb);
+    }
+
+    private static HttpRequest newPostRequest(String url, Object body)
     {
         byte[] d = BaseUtil.string2utf(GsonUtil.GSON.toJson(body));
         DefaultHttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, url);
         req.headers().add(HttpHeaders.Names.CONTENT_TYPE, "application/json");
         req.headers().add(Names.CONTENT_LENGTH, d.length);
         req.setContent(ChannelBuffers.wrappedBuffer(d));
-
-        send(req, cb, cons, executor);
+        return req;
     }
 
     public void send(HttpRequest req, AsyncTaskCallback cb,
@@ -253,6 +529,12 @@ public class AsyncHttpClient
 
     public void send(HttpRequest req, AsyncTaskCallback cb,
                      Function<HttpResponse, Boolean, Exception> cons, Executor executor)
+    {
+        send(req, Prio.HI, cb, cons, executor);
+    }
+
+    private void send(HttpRequest req, Prio prio, AsyncTaskCallback cb,
+                      Function<HttpResponse, Boolean, Exception> cons, Executor executor)
     {
         SettableFuture<HttpResponse> f = SettableFuture.create();
         // NB: MUST add the listener before passing the future to avoid some nasty race conditions
@@ -284,22 +566,35 @@ public class AsyncHttpClient
             }
         }, executor);
 
-        send(req, f);
+        send(req, prio, f);
     }
 
-    private void onConnect(Channel c)
+    /**
+     * Send a request and decode the response before handing it over to the executor
+     *
+     * The decoder is invoked from a Netty I/O thread, which allows CPU-intensive parsing of large
+     * responses to proceed without holding the core lock. The callback is invoked through the
+     * default executor, i.e. with the core lock held.
+     */
+    public <T> void send(HttpRequest req, Function<HttpResponse, T, Exception> decoder,
+            FutureCallback<T> cb)
     {
-        _channel.set(c);
-        c.getCloseFuture().addListener(f -> _channel.compareAndSet(c, null));
+        SettableFuture<HttpResponse> f = SettableFuture.create();
+        // NB: MUST add the listeners before passing the future, for the same reasons as above
+        ListenableFuture<T> d = Futures.transform(f,
+                (AsyncFunction<HttpResponse, T>)r -> Futures.immediateFuture(decoder.apply(r)));
+        Futures.addCallback(d, cb, _executor);
+
+        send(req, Prio.HI, f);
     }
 
-    private void write(Channel c, HttpRequest req, SettableFuture<HttpResponse> f)
+    private void write(Request r)
     {
-        c.write(new Request(req, f)).addListener(cf -> {
+        checkNotNull(r.conn).channel.write(r).addListener(cf -> {
             if (!cf.isSuccess()) {
                 l.info("write failed", BaseLogUtil.suppress(cf.getCause(),
                         ClosedChannelException.class));
-                f.setException(cf.getCause());
+                r.f.setException(cf.getCause());
             }
         });
     }
@@ -86,10 +86,7 @@ public class PolarisContentVersionControl implements IContentVersionControl
                     for (Entry<SIndex, Updated> e : m.entrySet()) {
                         Store s = _sidx2s.getNullable_(e.getKey());
                         if (s == null) continue;
-                        SenderFilters sf = s.iface(SenderFilters.class);
-                        for (OID oid : e.getValue().oids) {
-                            sf.objectUpdated_(oid, t);
-                        }
+                        s.iface(SenderFilters.class).objectsUpdated_(e.getValue().oids, t);
                         long ts = Objects.firstNonNull(_cedb.getContentChangeEpoch_(e.getKey()), 0L);
                         if (ts < e.getValue().maxEpoch) {
                             _cedb.setContentChangeEpoch_(e.getKey(), e.getValue().maxEpoch, t);
@@ -28,6 +28,7 @@ import com.aerofs.sp.client.SPBlockingClient;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
+import com.google.protobuf.ByteString;
 import org.slf4j.Logger;
 
 import javax.annotation.Nullable;
@@ -65,11 +66,18 @@ public class ACLSynchronizer
     {
         final long  _serverEpoch;
         final Map<SID, IStoreJoiner.StoreInfo> _acl;
+        // if true, _acl only contains the stores whose ACL changed since the local epoch and
+        // _left the stores that are no longer accessible. Otherwise _acl contains all stores.
+        final boolean _incremental;
+        final Set<SID> _left;
 
-        private ServerACLReturn(long serverEpoch, Map<SID, IStoreJoiner.StoreInfo> acl)
+        private ServerACLReturn(long serverEpoch, Map<SID, IStoreJoiner.StoreInfo> acl,
+                boolean incremental, Set<SID> left)
         {
             _serverEpoch = serverEpoch;
             _acl = acl;
+            _incremental = incremental;
+            _left = left;
         }
     }
 
@@ -139,9 +147,10 @@ public class ACLSynchronizer
      * it may cause inconsistent ACL state across clients and more importantly could result in data
      * loss if a shared folder is accidentally kicked out.
      *
-     * Because ACL updates are *not incremental* we need to check that whatever epoch corresponds to
-     * the result of the SP call is superior to the local epoch *after* the core lock is retaken
-     * (RPC is done with core lock released).
+     * Because ACL updates are relative to the local epoch at the time of the SP call, or full
+     * snapshots, we need to check that whatever epoch corresponds to the result of the SP call is
+     * superior to the local epoch *after* the core lock is retaken (RPC is done with core lock
+     * released).
      */
     private void updateACLFromSP_(long localEpochBeforeSPCall, long minServerEpoch) throws Exception
     {
@@ -166,6 +175,19 @@ public class ACLSynchronizer
 
         l.info("accessible stores: {}", stores);
 
+        // An incremental update only lists the stores that changed: stores are left only if
+        // the server says so, rather than when they are missing from the update.
+        Set<SIndex> left = stores;
+        if (serverACLReturn._incremental) {
+            left = Sets.newHashSet();
+            for (SID sid : serverACLReturn._left) {
+                SIndex sidx = _sid2sidx.getLocalOrAbsentNullable_(sid);
+                if (sidx != null && stores.contains(sidx)) left.add(sidx);
+            }
+            l.info("incremental acl update: {} changed {} left",
+                    serverACLReturn._acl.size(), left.size());
+        }
+
         // We go to great length to split ACL updates into multiple transactions. This increases
         // robustness and allows incremental progress to be made in the face of weird corner cases.
         //
@@ -191,7 +213,7 @@ public class ACLSynchronizer
             IStoreJoiner.StoreInfo info = e.getValue();
             try {
                 SIndex sidx = updateACLAndJoin_(sid, info, stores);
-                stores.remove(sidx);
+                left.remove(sidx);
             } catch (Exception ex) {
                 // ignore errors to allow incremental progress but prevent epoch bump
                 updateEpoch = false;
@@ -203,7 +225,7 @@ public class ACLSynchronizer
         // NB: Skip the leaving if any update/auto-join fails, since the set of stores to leave is
         // not computed correctly in this situation.
         if (updateEpoch) {
-            for (SIndex sidx : stores) {
+            for (SIndex sidx : left) {
                 updateEpoch &= leave_(sidx);
             }
         }
@@ -308,12 +330,18 @@ public class ACLSynchronizer
             throws Exception
     {
         GetACLReply aclReply = _tokenManager.inPseudoPause_(Cat.UNLIMITED, "spacl",
-                () -> _factSP.create().signInRemote().getACL(localEpoch));
+                () -> _factSP.create().signInRemote().getACL(localEpoch, true));
 
         long serverEpoch = aclReply.getEpoch();
+        boolean incremental = aclReply.getIncremental();
         Map<SID, IStoreJoiner.StoreInfo> stores = newHashMapWithExpectedSize(aclReply.getStoreAclCount());
+        Set<SID> left = Sets.newHashSet();
         l.info("server return acl server epoch {} local epoch {}", serverEpoch, localEpoch);
 
+        for (ByteString sid : aclReply.getLeftStoreIdList()) {
+            left.add(new SID(BaseUtil.fromPB(sid)));
+        }
+
         for (PBStoreACL store : aclReply.getStoreAclList()) {
             SID sid = new SID(BaseUtil.fromPB(store.getStoreId()));
 
@@ -343,10 +371,12 @@ public class ACLSynchronizer
                 stores.put(sid, si);
             } else {
                 l.info("filter out {} {}", sid, si._roles.keySet());
+                // filtered out stores are left in full updates by virtue of being absent
+                left.add(sid);
             }
         }
 
-        return new ServerACLReturn(serverEpoch, stores);
+        return new ServerACLReturn(serverEpoch, stores, incremental, left);
     }
 
     /**
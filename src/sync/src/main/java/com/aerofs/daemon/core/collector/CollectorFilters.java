@@ -349,7 +349,7 @@ public class CollectorFilters
      */
     Set<DID> getDevicesHavingComponent_(OID oid)
     {
-        int[] indics = BFOID.HASH.hash(oid);
+        int[] indics = BFOID.hash(oid);
         Set<DID> ret = Sets.newTreeSet();
 
         // iterating over _did2dev instead of _cs2didbf has a few advantages:
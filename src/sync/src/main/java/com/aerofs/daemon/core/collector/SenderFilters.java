@@ -1,6 +1,8 @@
 package com.aerofs.daemon.core.collector;
 
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -72,7 +74,21 @@ public class SenderFilters
      */
     public void objectUpdated_(OID oid, Trans t) throws SQLException
     {
-        if (_filterLast.add_(oid)) {
+        objectsUpdated_(Collections.singleton(oid), t);
+    }
+
+    /**
+     * Same as objectUpdated_ for several objects, but only writes the filter to the db once as
+     * the last filter may grow large in stores with many objects
+     */
+    public void objectsUpdated_(Collection<OID> oids, Trans t) throws SQLException
+    {
+        boolean updated = false;
+        for (OID oid : oids) {
+            if (_filterLast.add_(oid)) updated = true;
+        }
+
+        if (updated) {
             ++_updateSeq;
             _sfdb.setSenderFilter_(_sidx, _sfidxLast, _filterLast, t);
         } else if (_barrier) {
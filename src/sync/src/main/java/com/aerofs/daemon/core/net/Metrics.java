@@ -12,4 +12,13 @@ public class Metrics {
     {
         return DaemonParam.MAX_UNICAST_MESSAGE_SIZE;
     }
+
+    /**
+     * @param peerMax largest chunk the remote peer accepts, 0 if it does not support bulk frames
+     * @return size of the chunks in which content should be streamed to that peer
+     */
+    public int getMaxStreamChunkSize_(int peerMax)
+    {
+        return Math.max(getMaxUnicastSize_(), Math.min(peerMax, DaemonParam.MAX_BULK_CHUNK_SIZE));
+    }
 }
@@ -22,16 +22,20 @@ import com.aerofs.daemon.core.tc.Token;
 import com.aerofs.daemon.event.net.Endpoint;
 import com.aerofs.daemon.lib.CoreExecutor;
 import com.aerofs.daemon.link.LinkStateService;
-import com.aerofs.lib.OutArg;
 import com.aerofs.lib.cfg.CfgTimeout;
 import com.aerofs.proto.Core.PBCore;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 
 import java.util.*;
 
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+
 /**
  * RPC: Remote Procedure Calls
  */
@@ -119,8 +123,15 @@ public class RPC implements Handler, DeviceAvailabilityListener {
         _waiters.put(rpcid, waiter);
     }
 
-    public DigestedMessage issueRequest_(DID did, PBCore request, Token tk, String reason)
-        throws Exception
+    /**
+     * Send a request and return its reply without blocking the calling thread
+     *
+     * The future is completed on a core thread, with the core lock held, either with the reply or
+     * with the reason of the failure: ExTimeout, ExDeviceUnavailable or ExLinkDown. Callers
+     * usually wait for it with {@link Token#await_}.
+     */
+    public ListenableFuture<DigestedMessage> issueRequestAsync_(DID did, PBCore request)
+            throws Exception
     {
         if (_pause.isPaused()) throw new ExLinkDown();
 
@@ -128,14 +139,35 @@ public class RPC implements Handler, DeviceAvailabilityListener {
         if (ep == null) throw new ExDeviceUnavailable(did.toString());
 
         int rpcid = request.getRpcid();
-        TCB tcb = TC.tcb();
-        OutArg<DigestedMessage> resp = new OutArg<>();
+        SettableFuture<DigestedMessage> f = SettableFuture.create();
 
         asyncRequest_(ep, request, new FutureCallback<DigestedMessage>() {
             @Override
             public void onSuccess(DigestedMessage response) {
                 l.debug("got response rid:{} ep:{}", rpcid, response.ep());
-                resp.set(response);
+                f.set(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof ExTimeout) {
+                    l.warn("timeout rid:{} t:{} ep:{}", rpcid, CoreProtocolUtil.typeString(request), ep);
+                }
+                f.setException(t);
+            }
+        });
+        return f;
+    }
+
+    public DigestedMessage issueRequest_(DID did, PBCore request, Token tk, String reason)
+        throws Exception
+    {
+        ListenableFuture<DigestedMessage> f = issueRequestAsync_(did, request);
+
+        TCB tcb = TC.tcb();
+        Futures.addCallback(f, new FutureCallback<DigestedMessage>() {
+            @Override
+            public void onSuccess(DigestedMessage response) {
                 tcb.resume_();
             }
 
@@ -143,19 +175,16 @@ public class RPC implements Handler, DeviceAvailabilityListener {
             public void onFailure(Throwable t) {
                 tcb.abort_(t);
             }
-        });
+        }, sameThreadExecutor());
         try {
             tk.pause_(reason);
-            return resp.get();
+            return f.get();
         } catch (ExAborted e) {
             Throwable t = e.getCause();
-            if (t instanceof ExTimeout) {
-                l.warn("timeout rid:{} t:{} ep:{}", rpcid, CoreProtocolUtil.typeString(request), ep);
-                throw (ExTimeout)t;
-            }
+            if (t instanceof ExTimeout) throw (ExTimeout)t;
             throw e;
         } finally {
-            _waiters.remove(rpcid);
+            _waiters.remove(request.getRpcid());
         }
     }
 
@@ -8,8 +8,10 @@ import com.aerofs.lib.ClientParam;
 import com.aerofs.lib.ContentBlockHash;
 import com.google.common.base.Preconditions;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import static com.aerofs.daemon.core.phy.block.BlockUtil.*;
 
@@ -20,17 +22,52 @@ public class BlockInputStream extends InputStream
     private final int _numChunks;
     private final long _length;
 
+    // start offset of each block, null if all non-last blocks are full-sized
+    private final @Nullable long[] _offsets;
+
     private int _chunkIndex;
     private long _pos;
 
     private InputStream _in;
 
     public BlockInputStream(IBlockStorageBackend bsb, ContentBlockHash hash, long length)
+    {
+        this(bsb, hash, length, null);
+    }
+
+    /**
+     * @param blockLengths length of each block, required for content-defined blocks
+     */
+    public BlockInputStream(IBlockStorageBackend bsb, ContentBlockHash hash, long length,
+            @Nullable long[] blockLengths)
     {
         _bsb = bsb;
         _hash = hash;
         _length = length;
         _numChunks = getNumBlocks(hash);
+        if (blockLengths != null) {
+            Preconditions.checkArgument(blockLengths.length == _numChunks);
+            _offsets = new long[_numChunks];
+            for (int i = 1; i < _numChunks; ++i) {
+                _offsets[i] = _offsets[i - 1] + blockLengths[i - 1];
+            }
+        } else {
+            _offsets = null;
+        }
+    }
+
+    private long blockOffset(int i)
+    {
+        return _offsets != null ? _offsets[i] : ClientParam.FILE_BLOCK_SIZE * i;
+    }
+
+    private int blockIndex(long pos)
+    {
+        if (_offsets == null) return (int)(pos / ClientParam.FILE_BLOCK_SIZE);
+        if (pos >= _length) return _numChunks;
+        int i = Arrays.binarySearch(_offsets, pos);
+        // exact match on block start or insertion point - 1 for a position inside a block
+        return i >= 0 ? i : -i - 2;
     }
 
     @Override
@@ -56,8 +93,8 @@ public class BlockInputStream extends InputStream
                 ++_chunkIndex;
                 resetInputStream();
                 if (_chunkIndex >= _numChunks) break;
-                // all non-last blocks are expected to be full-sized
-                if (_pos != ClientParam.FILE_BLOCK_SIZE * _chunkIndex) {
+                // all non-last blocks are expected to be full-sized or have a known length
+                if (_pos != blockOffset(_chunkIndex)) {
                     throw new IOException("invalid block file: "
                             + _chunkIndex + " " + _pos + "/" + _length);
                 }
@@ -81,10 +118,10 @@ public class BlockInputStream extends InputStream
         Preconditions.checkArgument(n >= 0);
         final long oldPos = _pos;
         long newPos = _pos + n;
-        int newChunkIndex = (int)(newPos / ClientParam.FILE_BLOCK_SIZE);
+        int newChunkIndex = blockIndex(newPos);
         if (newChunkIndex != _chunkIndex) {
             _chunkIndex = newChunkIndex;
-            _pos = Math.min((long)_chunkIndex * ClientParam.FILE_BLOCK_SIZE, _length);
+            _pos = _chunkIndex < _numChunks ? Math.min(blockOffset(_chunkIndex), _length) : _length;
             closeInputStream();
         }
         if (_in == null) resetInputStream();
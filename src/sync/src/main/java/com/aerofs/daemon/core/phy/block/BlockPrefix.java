@@ -21,6 +21,8 @@ import javax.annotation.Nonnull;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.sql.SQLException;
 import java.util.Arrays;
@@ -39,6 +41,7 @@ import static com.google.common.base.Preconditions.checkState;
  *              <oid>/
  *                  <kidx>[-<scope>]/
  *                      blocks                  incremental ContentBlockHash
+ *                      lengths                 length of each completed block (64bit, BE)
  *                      hash                    incremental hash state of whole prefix
  *                      _                       prefix tail
  *                      _.hash                  incremental hash state of prefix tail
@@ -48,6 +51,10 @@ import static com.google.common.base.Preconditions.checkState;
  * A prefix is considered invalid and discarded if the size of the prefix and the
  * incremental hash do not match.
  *
+ * Blocks are either cut at fixed FILE_BLOCK_SIZE boundaries or, when content-defined chunking is
+ * enabled, at boundaries picked by a rolling hash (see ContentDefinedChunker). Prefixes written
+ * before the lengths file was introduced only contain fixed-size blocks.
+ *
  * TODO: speculative chunk upload in background?
  *  -> nice to have but fairly complex and probably overkill for now
  */
@@ -60,11 +67,20 @@ class BlockPrefix implements IPhysicalPrefix
     private final static String HASH = "hash";
     private final static String TAIL = "_";
     private final static String BLOCKS = "d";
+    private final static String BLOCK_LENGTHS = "lengths";
+
+    private final boolean _contentDefinedChunking;
 
     BlockPrefix(SOKID sokid, InjectableFile f)
+    {
+        this(sokid, f, false);
+    }
+
+    BlockPrefix(SOKID sokid, InjectableFile f, boolean contentDefinedChunking)
     {
         _sokid = sokid;
         _f = f;
+        _contentDefinedChunking = contentDefinedChunking;
     }
 
     @Override
@@ -100,8 +116,32 @@ class BlockPrefix implements IPhysicalPrefix
         if (tailLength > ClientParam.FILE_BLOCK_SIZE) {
             throw new IOException("invalid prefix tail " + _sokid + " " + tailLength);
         }
-        return (blocksLength / ContentBlockHash.UNIT_LENGTH) * ClientParam.FILE_BLOCK_SIZE
-                + tailLength;
+        return blocksLength(blocksLength / ContentBlockHash.UNIT_LENGTH) + tailLength;
+    }
+
+    /**
+     * @return the total length of the first {@code n} completed blocks
+     */
+    private long blocksLength(long n) throws IOException
+    {
+        InjectableFile lengths = _f.newChild(BLOCK_LENGTHS);
+        if (!lengths.exists()) return n * ClientParam.FILE_BLOCK_SIZE;
+
+        // the lengths file may contain one extra entry if the daemon crashed while committing
+        // the tail, in which case it will be truncated when the tail is reopened
+        ByteBuffer buf = ByteBuffer.wrap(lengths.toByteArray());
+        if (buf.remaining() < n * Long.BYTES) {
+            throw new IOException("invalid prefix lengths " + _sokid + " " + buf.remaining());
+        }
+        long total = 0;
+        for (long i = 0; i < n; ++i) {
+            long l = buf.getLong();
+            if (l <= 0 || l > ClientParam.FILE_BLOCK_SIZE) {
+                throw new IOException("invalid prefix block length " + _sokid + " " + l);
+            }
+            total += l;
+        }
+        return total;
     }
 
     @Override
@@ -188,12 +228,50 @@ class BlockPrefix implements IPhysicalPrefix
         // HACK need to detect whether the digest has been generated in close()
         PrefixOutputStream pos;
 
+        // null when cutting at fixed FILE_BLOCK_SIZE boundaries
+        private final ContentDefinedChunker cdc;
+
         public ChunkingOutputStream(MessageDigest md) throws IOException {
             this.md = md;
+            this.cdc = _contentDefinedChunking ? new ContentDefinedChunker() : null;
+            syncLengths();
             openTail();
         }
 
-        private void commitTail(byte[] digest) throws IOException
+        /**
+         * Ensure the lengths file has exactly one entry per completed block
+         */
+        private void syncLengths() throws IOException
+        {
+            InjectableFile lengths = _f.newChild(BLOCK_LENGTHS);
+            long n = _f.newChild(BLOCK_HASH).lengthOrZeroIfNotFile() / ContentBlockHash.UNIT_LENGTH;
+            long expected = n * Long.BYTES;
+            long actual = lengths.lengthOrZeroIfNotFile();
+            if (actual == expected) return;
+
+            if (!lengths.exists()) {
+                // legacy prefix: all completed blocks are full-sized
+                try (FileOutputStream lo = lengths.newOutputStream(false)) {
+                    ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+                    for (long i = 0; i < n; ++i) {
+                        buf.clear();
+                        lo.write(buf.putLong(ClientParam.FILE_BLOCK_SIZE).array());
+                    }
+                    lo.getChannel().force(true);
+                }
+            } else if (actual == expected + Long.BYTES) {
+                // crash between length and digest write: discard the extra length
+                try (RandomAccessFile raf = new RandomAccessFile(lengths.getImplementation(), "rw")) {
+                    raf.setLength(expected);
+                    raf.getFD().sync();
+                }
+            } else {
+                _f.deleteOrThrowIfExistRecursively();
+                throw new IOException("corrupted prefix");
+            }
+        }
+
+        private void commitTail(byte[] digest, long length) throws IOException
         {
             final InjectableFile tail = _f.newChild(TAIL);
             InjectableFile block = _f.newChild(Util.join(BLOCKS, BaseUtil.hexEncode(digest)));
@@ -205,6 +283,11 @@ class BlockPrefix implements IPhysicalPrefix
                 tail.deleteIgnoreError();
             }
             hashFile(tail).deleteIgnoreError();
+            // NB: length MUST be written before digest (see syncLengths)
+            try (FileOutputStream lo = _f.newChild(BLOCK_LENGTHS).newOutputStream(true)) {
+                lo.write(ByteBuffer.allocate(Long.BYTES).putLong(length).array());
+                lo.getChannel().force(true);
+            }
             try (FileOutputStream bo = _f.newChild(BLOCK_HASH).newOutputStream(true)) {
                 bo.write(digest);
                 bo.getChannel().force(true);
@@ -218,7 +301,7 @@ class BlockPrefix implements IPhysicalPrefix
             BlockStorage.l.debug("commit tail {} {}", _sokid, tailLength);
             out.close();
             out = null;
-            commitTail(bmd.digest());
+            commitTail(bmd.digest(), tailLength);
             bmd = null;
             tailLength = 0;
             openTail();
@@ -235,6 +318,7 @@ class BlockPrefix implements IPhysicalPrefix
             BlockStorage.l.debug("open tail {} {} {}", _sokid, tailLength,
                     hashFile(tail).lengthOrZeroIfNotFile());
             bmd = partialDigest(tail, tailLength > 0);
+            if (cdc != null) cdc.resume(tailLength, tailWindow(tail));
             out = new PrefixOutputStream(tail.newOutputStream(tailLength > 0), bmd) {
                 @Override
                 public void close() throws IOException
@@ -250,7 +334,23 @@ class BlockPrefix implements IPhysicalPrefix
             };
         }
 
+        private byte[] tailWindow(InjectableFile tail) throws IOException
+        {
+            int n = (int)Math.min(tailLength, ContentDefinedChunker.WINDOW);
+            byte[] w = new byte[n];
+            if (n == 0) return w;
+            try (RandomAccessFile raf = new RandomAccessFile(tail.getImplementation(), "r")) {
+                raf.seek(tailLength - n);
+                raf.readFully(w);
+            }
+            return w;
+        }
+
         public void write(int b) throws IOException {
+            if (cdc != null) {
+                write(new byte[] { (byte)b }, 0, 1);
+                return;
+            }
             if (tailLength == ClientParam.FILE_BLOCK_SIZE) commitTail();
             out.write(b);
             ++tailLength;
@@ -261,6 +361,10 @@ class BlockPrefix implements IPhysicalPrefix
         }
 
         public void write(@Nonnull byte b[], int off, int len) throws IOException {
+            if (cdc != null) {
+                writeContentDefined(b, off, len);
+                return;
+            }
             while (tailLength + len >= ClientParam.FILE_BLOCK_SIZE) {
                 int n = (int)(ClientParam.FILE_BLOCK_SIZE - tailLength);
                 out.write(b, off, n);
@@ -272,6 +376,20 @@ class BlockPrefix implements IPhysicalPrefix
             tailLength += len;
         }
 
+        private void writeContentDefined(byte b[], int off, int len) throws IOException {
+            while (len > 0) {
+                int n = cdc.next(b, off, len);
+                if (n < 0) break;
+                out.write(b, off, n);
+                tailLength += n;
+                off += n;
+                len -= n;
+                commitTail();
+            }
+            out.write(b, off, len);
+            tailLength += len;
+        }
+
         public void flush() throws IOException {
             out.flush();
         }
@@ -67,6 +67,7 @@ public class BlockStorage implements IPhysicalStorage, CleanupScheduler.CleanupH
     private CoreScheduler _sched;
     private InjectableFile.Factory _fileFactory;
     private CfgStoragePolicy _storagePolicy;
+    private boolean _contentDefinedChunking;
 
     private InjectableFile _prefixDir;
     private InjectableFile _uploadDir;
@@ -98,6 +99,7 @@ public class BlockStorage implements IPhysicalStorage, CleanupScheduler.CleanupH
         _sched = sched;
         _fileFactory = fileFactory;
         _storagePolicy = storagePolicy;
+        _contentDefinedChunking = storagePolicy.useContentDefinedChunking();
         _bsb = bsb;
         _bsdb = bsdb;
         _initables = initables;
@@ -158,7 +160,7 @@ public class BlockStorage implements IPhysicalStorage, CleanupScheduler.CleanupH
     public IPhysicalPrefix newPrefix_(SOKID k, @Nullable String scope)
     {
         String fileName = prefixFilePath(k) + (scope != null ? "-" + scope : "");
-        return new BlockPrefix(k, _prefixDir.newChild(fileName));
+        return new BlockPrefix(k, _prefixDir.newChild(fileName), _contentDefinedChunking);
     }
 
     private String prefixFilePath(SOID soid)
@@ -600,8 +602,26 @@ public class BlockStorage implements IPhysicalStorage, CleanupScheduler.CleanupH
     public InputStream readChunks(ContentBlockHash hash, long length) throws IOException
     {
         // TODO: in-memory refcount overlay to avoid overzealous block cleanup?
-        // TODO: check that all non-last chunks are full-size?
-        return new BlockInputStream(_overlay, hash, length);
+        return new BlockInputStream(_overlay, hash, length, blockLengths(hash));
+    }
+
+    /**
+     * @return length of each block, or null if all non-last blocks are full-sized
+     */
+    private @Nullable long[] blockLengths(ContentBlockHash hash) throws IOException
+    {
+        if (BlockUtil.getNumBlocks(hash) <= 1) return null;
+        long[] lengths;
+        try {
+            lengths = _bsdb.getBlockLengths_(hash);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        if (lengths == null) throw new FileNotFoundException("missing block");
+        for (int i = 0; i < lengths.length - 1; ++i) {
+            if (lengths[i] != ClientParam.FILE_BLOCK_SIZE) return lengths;
+        }
+        return null;
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -20,7 +20,9 @@ import com.aerofs.lib.db.PreparedStatementWrapper;
 import com.aerofs.lib.db.dbcw.IDBCW;
 import com.aerofs.base.ex.ExFormatError;
 import com.google.inject.Inject;
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 
@@ -30,7 +32,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.aerofs.daemon.core.phy.block.BlockStorageSchema.*;
@@ -455,6 +459,48 @@ public class BlockStorageDatabase extends AbstractDatabase
         }
     }
 
+    // number of blocks whose length is looked up by a single query
+    private static final int BLOCK_LENGTH_BATCH = 64;
+
+    private PreparedStatementWrapper _pswGetChunkLengths = new PreparedStatementWrapper(
+            DBUtil.selectWhere(T_BlockCount, C_BlockCount_Hash + " IN ("
+                    + Joiner.on(',').join(Collections.nCopies(BLOCK_LENGTH_BATCH, "?")) + ")",
+                    C_BlockCount_Hash, C_BlockCount_Len));
+    /**
+     * @return length of each block of the given list, in order, or null if any block is unknown
+     */
+    public @Nullable long[] getBlockLengths_(ContentBlockHash chunks) throws SQLException
+    {
+        List<ContentBlockHash> blocks = splitBlocks(chunks);
+        Map<ContentBlockHash, Long> lengths = Maps.newHashMapWithExpectedSize(blocks.size());
+        PreparedStatementWrapper psw = _pswGetChunkLengths;
+        try {
+            PreparedStatement ps = psw.get(c());
+            for (int i = 0; i < blocks.size(); i += BLOCK_LENGTH_BATCH) {
+                // pad the last batch with its last block
+                for (int j = 0; j < BLOCK_LENGTH_BATCH; ++j) {
+                    ps.setBytes(j + 1, blocks.get(Math.min(i + j, blocks.size() - 1)).getBytes());
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        lengths.put(new ContentBlockHash(rs.getBytes(1)), rs.getLong(2));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            psw.close();
+            throw detectCorruption(e);
+        }
+
+        long[] r = new long[blocks.size()];
+        for (int i = 0; i < r.length; ++i) {
+            Long length = lengths.get(blocks.get(i));
+            if (length == null) return null;
+            r[i] = length;
+        }
+        return r;
+    }
+
     private PreparedStatement _psDeleteBlock;
     public void deleteBlock_(ContentBlockHash chunk, Trans t) throws SQLException
     {
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.block;
+
+import com.aerofs.base.C;
+import com.aerofs.lib.ClientParam;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Content-defined block boundaries, using a FastCDC-style gear hash
+ *
+ * Fixed-size blocks are fragile: inserting a single byte near the start of a large file shifts
+ * every subsequent block boundary and therefore changes every subsequent ContentBlockHash. With
+ * content-defined boundaries, the cut points depend only on the bytes immediately preceding them
+ * so an edit only affects the blocks that overlap it and dedup keeps working across shifted
+ * content.
+ *
+ * The gear hash only retains the influence of the last 64 bytes, which makes it trivial to resume
+ * chunking of a partially written block (see {@link #resume}).
+ *
+ * Blocks are never larger than ClientParam.FILE_BLOCK_SIZE, which preserves the invariants of
+ * BlockPrefix tail handling.
+ *
+ * NB: the gear table and masks MUST NOT change, or previously stored blocks won't be deduplicated
+ * against new content anymore.
+ */
+class ContentDefinedChunker
+{
+    static final int MIN_BLOCK_SIZE = 512 * C.KB;
+    static final int AVG_BLOCK_SIZE = 2 * C.MB;
+    static final int MAX_BLOCK_SIZE = (int)ClientParam.FILE_BLOCK_SIZE;
+
+    // normalized chunking: harder to cut below the average size, easier above
+    private static final long MASK_S = (1L << 23) - 1;
+    private static final long MASK_L = (1L << 19) - 1;
+
+    // number of trailing bytes that influence the value of the gear hash
+    static final int WINDOW = 64;
+
+    private static final long[] GEAR = new long[256];
+    static {
+        // splitmix64 with a fixed seed: deterministic across devices and releases
+        long x = 0x6165726f66734344L;
+        for (int i = 0; i < GEAR.length; ++i) {
+            long z = (x += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private long _hash;
+    private long _length;
+
+    /**
+     * Restore chunker state for a partially written block
+     *
+     * @param length length of the partial block
+     * @param tail last bytes of the partial block (at most WINDOW bytes are needed)
+     */
+    void resume(long length, byte[] tail)
+    {
+        checkArgument(length >= 0 && length <= MAX_BLOCK_SIZE && tail.length <= length);
+        _hash = 0;
+        _length = length;
+        long pos = length - tail.length;
+        for (byte b : tail) {
+            // bytes below the min size are never hashed
+            if (pos++ >= MIN_BLOCK_SIZE) _hash = (_hash << 1) + GEAR[b & 0xff];
+        }
+    }
+
+    /**
+     * @return number of bytes, from {@code off}, belonging to the current block if a boundary is
+     * found in the given range, -1 otherwise (i.e. the whole range belongs to the current block)
+     */
+    int next(byte[] b, int off, int len)
+    {
+        int i = 0;
+        while (i < len) {
+            if (_length < MIN_BLOCK_SIZE) {
+                // skip hashing until the min block size is reached
+                int n = (int)Math.min(len - i, MIN_BLOCK_SIZE - _length);
+                i += n;
+                _length += n;
+                continue;
+            }
+            _hash = (_hash << 1) + GEAR[b[off + i] & 0xff];
+            ++i;
+            ++_length;
+            long mask = _length < AVG_BLOCK_SIZE ? MASK_S : MASK_L;
+            if ((_hash & mask) == 0 || _length >= MAX_BLOCK_SIZE) {
+                _hash = 0;
+                _length = 0;
+                return i;
+            }
+        }
+        return -1;
+    }
+}
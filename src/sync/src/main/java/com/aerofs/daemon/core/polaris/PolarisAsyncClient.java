@@ -11,6 +11,7 @@ import org.jboss.netty.util.Timer;
 
 import java.net.URI;
 
+import static com.aerofs.base.config.ConfigurationProperties.getIntegerProperty;
 import static com.aerofs.base.config.ConfigurationProperties.getStringProperty;
 
 public class PolarisAsyncClient extends AsyncHttpClient {
@@ -34,6 +35,7 @@ public class PolarisAsyncClient extends AsyncHttpClient {
     {
         super(URI.create(getStringProperty("daemon.polaris.url")),
                 executor,
-                new Auth(localUser.get(), localDID.get()), timer, channelFactory, sslEngineFactory);
+                new Auth(localUser.get(), localDID.get()), timer, channelFactory, sslEngineFactory,
+                getIntegerProperty("daemon.polaris.max_connections", DEFAULT_MAX_CONNECTIONS));
     }
 }
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.polaris.api;
+
+import com.aerofs.ids.UniqueID;
+
+import java.util.List;
+
+public class MultiStoreTransforms
+{
+    // all transforms of the readable stores up to that timestamp are included
+    public long maxTransformCount;
+    // whether the stores may have more transforms past maxTransformCount
+    public boolean truncated;
+    public List<RemoteChange> transforms;
+    public List<UniqueID> denied;
+}
@@ -25,6 +25,9 @@ public class RemoteChange
     public long logicalTimestamp;
     public UniqueID originator;
 
+    // only used to split multi-store responses
+    public UniqueID store;
+
     public UniqueID oid;
     public Type transformType;
     public long newVersion;
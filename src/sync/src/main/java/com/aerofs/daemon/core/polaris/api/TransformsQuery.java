@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.polaris.api;
+
+import java.util.List;
+
+public class TransformsQuery
+{
+    public static class StoreSince
+    {
+        public final String store;
+        public final long since;
+
+        public StoreSince(String store, long since)
+        {
+            this.store = store;
+            this.since = since;
+        }
+    }
+
+    public final List<StoreSince> stores;
+    public final int count;
+
+    public TransformsQuery(List<StoreSince> stores, int count)
+    {
+        this.stores = stores;
+        this.count = count;
+    }
+}
@@ -8,44 +8,71 @@ import com.aerofs.base.BaseUtil;
 import com.aerofs.base.Loggers;
 import com.aerofs.base.ex.ExNoPerm;
 import com.aerofs.base.ex.ExProtocolError;
+import com.aerofs.daemon.core.CoreScheduler;
 import com.aerofs.daemon.core.ex.ExAborted;
 import com.aerofs.daemon.core.polaris.GsonUtil;
 import com.aerofs.daemon.core.polaris.PolarisAsyncClient;
+import com.aerofs.daemon.core.polaris.api.MultiStoreTransforms;
 import com.aerofs.daemon.core.polaris.api.RemoteChange;
 import com.aerofs.daemon.core.polaris.api.RemoteChange.Type;
 import com.aerofs.daemon.core.polaris.api.Transforms;
+import com.aerofs.daemon.core.polaris.api.TransformsQuery;
+import com.aerofs.daemon.core.polaris.api.TransformsQuery.StoreSince;
 import com.aerofs.daemon.core.polaris.async.AsyncTaskCallback;
 import com.aerofs.daemon.core.polaris.db.ChangeEpochDatabase;
 import com.aerofs.daemon.core.status.PauseSync;
 import com.aerofs.daemon.core.store.IMapSID2SIndex;
 import com.aerofs.daemon.core.store.IMapSIndex2SID;
+import com.aerofs.daemon.core.store.IStoreDeletionOperator;
 import com.aerofs.daemon.core.store.MapSIndex2Store;
+import com.aerofs.daemon.core.store.StoreDeletionOperators;
 import com.aerofs.daemon.lib.db.trans.Trans;
 import com.aerofs.daemon.lib.db.trans.TransManager;
 import com.aerofs.ids.DID;
 import com.aerofs.ids.OID;
 import com.aerofs.ids.SID;
+import com.aerofs.ids.UniqueID;
+import com.aerofs.lib.event.AbstractEBSelfHandling;
 import com.aerofs.lib.id.SIndex;
 import com.aerofs.lib.id.SOID;
 import com.aerofs.lib.sched.ExponentialRetry.ExRetryLater;
 import com.google.common.base.Objects;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.inject.Inject;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.handler.codec.http.*;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Fetch changes from Polaris.
  *
  * This class handles protocol encoding/decoding and manages change epochs.
  *
+ * Stores that are not catching up with a long transform log are fetched together, through a
+ * single multi-store request, to keep the number of round-trips in check when a large number
+ * of stores need to be fetched at once.
+ *
  * Scheduling is managed by {@link ChangeFetchScheduler}
  * HTTP communication is delegated to {@link com.aerofs.daemon.core.polaris.PolarisAsyncClient}
  * Application of remote changes is delegated to {@link ApplyChange}
  */
-public class ChangeFetcher
+public class ChangeFetcher implements IStoreDeletionOperator
 {
     private final static Logger l = Loggers.getLogger(ChangeFetcher.class);
 
@@ -56,6 +83,7 @@ public class ChangeFetcher
     private final MapSIndex2Store _sidx2store;
     private final ChangeEpochDatabase _cedb;
     private final TransManager _tm;
+    private final CoreScheduler _sched;
 
     private final PauseSync _pauseSync;
 
@@ -68,7 +96,7 @@ public class ChangeFetcher
     @Inject
     public ChangeFetcher(PolarisAsyncClient client, PauseSync pauseSync, ChangeEpochDatabase cedb,
             ApplyChange at, IMapSIndex2SID sidx2sid, IMapSID2SIndex sid2sidx, TransManager tm,
-            MapSIndex2Store sidx2store)
+            MapSIndex2Store sidx2store, CoreScheduler sched, StoreDeletionOperators sdo)
     {
         _client = client;
         _pauseSync = pauseSync;
@@ -78,6 +106,8 @@ public class ChangeFetcher
         _sidx2sid = sidx2sid;
         _sid2sidx = sid2sidx;
         _sidx2store = sidx2store;
+        _sched = sched;
+        sdo.addImmediate_(this);
     }
 
     public void addListener_(Listener l) {
@@ -103,30 +133,251 @@ public class ChangeFetcher
 
         applyBufferedChanges_(sidx, epoch);
 
-        fetch(sid, epoch, cb);
+        Page p = _prefetched.remove(sid);
+        if (p != null && p._since == epoch) {
+            p.consume_(cb);
+            return;
+        }
+        if (p != null) l.info("discard prefetched page {} {} {}", sid, p._since, epoch);
+        enqueue_(sid, epoch, cb);
     }
 
-    private final static long CHANGES_PER_REQUEST = 100;
+    // Pending stores are sent as soon as enough of them have accumulated, or when the coalescing
+    // delay expires, whichever comes first.
+    final static int MAX_STORES_PER_REQUEST = 500;
+    private final static long COALESCING_DELAY = 20;
 
-    private void fetch(SID sid, long lastLocalEpoch, AsyncTaskCallback cb)
+    private static class Pending
+    {
+        final long _since;
+        final AsyncTaskCallback _cb;
+
+        Pending(long since, AsyncTaskCallback cb)
+        {
+            _since = since;
+            _cb = cb;
+        }
+    }
+
+    private Map<SID, Pending> _pending = new LinkedHashMap<>();
+    private boolean _flushScheduled;
+
+    private void enqueue_(SID sid, long since, AsyncTaskCallback cb)
+    {
+        // NB: the fetch scheduler never has more than one in-flight fetch per store
+        checkState(_pending.put(sid, new Pending(since, cb)) == null);
+        if (_pending.size() >= MAX_STORES_PER_REQUEST) {
+            flush_();
+        } else if (!_flushScheduled) {
+            _flushScheduled = true;
+            _sched.schedule(new AbstractEBSelfHandling() {
+                @Override
+                public void handle_()
+                {
+                    _flushScheduled = false;
+                    flush_();
+                }
+            }, COALESCING_DELAY);
+        }
+    }
+
+    private void flush_()
+    {
+        if (_pending.isEmpty()) return;
+
+        Map<SID, Pending> stores = _pending;
+        _pending = new LinkedHashMap<>();
+
+        if (stores.size() == 1) {
+            // a lone store goes through the single-store endpoint, which allows prefetching
+            Map.Entry<SID, Pending> e = stores.entrySet().iterator().next();
+            fetch(e.getKey(), e.getValue()._since, MIN_CHANGES_PER_REQUEST)
+                    .consume_(e.getValue()._cb);
+            return;
+        }
+
+        List<StoreSince> query = new ArrayList<>(stores.size());
+        stores.forEach((sid, p) -> query.add(new StoreSince(sid.toStringFormal(), p._since)));
+        l.debug("fetch {} stores", stores.size());
+        _client.post("/transforms", new TransformsQuery(query, MAX_CHANGES_PER_REQUEST),
+                ChangeFetcher::decodeAll, new MultiStoreFetch(stores));
+    }
+
+    private class MultiStoreFetch implements FutureCallback<MultiStoreTransforms>
+    {
+        private final Map<SID, Pending> _stores;
+
+        MultiStoreFetch(Map<SID, Pending> stores)
+        {
+            _stores = stores;
+        }
+
+        @Override
+        public void onSuccess(MultiStoreTransforms r)
+        {
+            Map<UniqueID, List<RemoteChange>> changes = new HashMap<>();
+            if (r.transforms != null) {
+                for (RemoteChange rc : r.transforms) {
+                    changes.computeIfAbsent(rc.store, k -> new ArrayList<>()).add(rc);
+                }
+            }
+            Set<UniqueID> denied = r.denied != null ? new HashSet<>(r.denied)
+                    : Collections.emptySet();
+
+            _stores.forEach((sid, p) -> {
+                if (denied.contains(sid)) {
+                    p._cb.onFailure_(new ExNoPerm());
+                    return;
+                }
+                List<RemoteChange> transforms = changes.getOrDefault(sid,
+                        Collections.emptyList());
+                if (transforms.isEmpty() && r.truncated) {
+                    // the store may have transforms past the cutoff
+                    p._cb.onSuccess_(true);
+                    return;
+                }
+                Transforms c = new Transforms();
+                c.maxTransformCount = r.maxTransformCount;
+                c.transforms = transforms;
+                boolean hasMore;
+                try {
+                    // pages are not prefetched, stores with more transforms join the next batch
+                    hasMore = handle_(sid, p._since, c, 0) || r.truncated;
+                } catch (Throwable t) {
+                    p._cb.onFailure_(t);
+                    return;
+                }
+                p._cb.onSuccess_(hasMore);
+            });
+        }
+
+        @Override
+        public void onFailure(Throwable t)
+        {
+            _stores.values().forEach(p -> p._cb.onFailure_(t));
+        }
+    }
+
+    // Small pages keep polling of up-to-date stores cheap. The page size grows geometrically
+    // while catching up with a long transform log.
+    // NB: polaris may return fewer transforms than requested, irrespective of how many are left
+    final static int MIN_CHANGES_PER_REQUEST = 100;
+    final static int MAX_CHANGES_PER_REQUEST = 1000;
+
+    static int nextPageSize(int count)
+    {
+        return Math.min(2 * count, MAX_CHANGES_PER_REQUEST);
+    }
+
+    // at most one page per store is fetched ahead of time, while the previous one is applied
+    private final Map<SID, Page> _prefetched = new HashMap<>();
+
+    /**
+     * A page of transforms, fetched either on demand or ahead of time
+     *
+     * The response is decoded on a Netty I/O thread and the page is then handed over to the core
+     * thread, where it is held until consumed by a fetch. All fields are accessed with the core
+     * lock held.
+     */
+    private class Page implements FutureCallback<Transforms>
+    {
+        final SID _sid;
+        final long _since;
+        final int _count;
+
+        private boolean _done;
+        private Transforms _transforms;
+        private Throwable _failure;
+        private AsyncTaskCallback _cb;
+
+        Page(SID sid, long since, int count)
+        {
+            _sid = sid;
+            _since = since;
+            _count = count;
+        }
+
+        void consume_(AsyncTaskCallback cb)
+        {
+            checkState(_cb == null);
+            _cb = cb;
+            if (_done) complete_();
+        }
+
+        @Override
+        public void onSuccess(Transforms transforms)
+        {
+            _transforms = transforms;
+            _done = true;
+            // discarded pages are never consumed
+            if (_cb != null) complete_();
+        }
+
+        @Override
+        public void onFailure(Throwable t)
+        {
+            _failure = t;
+            _done = true;
+            if (_cb != null) complete_();
+        }
+
+        private void complete_()
+        {
+            if (_failure != null) {
+                _cb.onFailure_(_failure);
+                return;
+            }
+            try {
+                _cb.onSuccess_(handle_(_sid, _since, _transforms, nextPageSize(_count)));
+            } catch (Throwable t) {
+                _cb.onFailure_(t);
+            }
+        }
+    }
+
+    @Override
+    public void deleteStore_(SIndex sidx, Trans t) throws SQLException
+    {
+        // the page will be fetched again if the store is re-joined
+        Page p = _prefetched.remove(_sidx2sid.getLocalOrAbsent_(sidx));
+        if (p != null) l.info("discard prefetched page {} {}", p._sid, p._since);
+    }
+
+    private Page fetch(SID sid, long lastLocalEpoch, int count)
     {
         QueryStringEncoder encoder = new QueryStringEncoder(
                 "/transforms/" + sid.toStringFormal());
         encoder.addParam("since", Long.toString(lastLocalEpoch));
-        encoder.addParam("count", Long.toString(CHANGES_PER_REQUEST));
+        encoder.addParam("count", Integer.toString(count));
         DefaultHttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
                 encoder.toString());
         req.headers().set(HttpHeaders.Names.CONTENT_LENGTH, "0");
 
-        _client.send(req, cb, r -> handle_(sid, lastLocalEpoch, r));
+        Page p = new Page(sid, lastLocalEpoch, count);
+        _client.send(req, ChangeFetcher::decode, p);
+        return p;
+    }
+
+    private static Transforms decode(HttpResponse r) throws Exception
+    {
+        checkStatus(r);
+        return parse(new ChannelBufferInputStream(r.getContent()));
+    }
+
+    private static MultiStoreTransforms decodeAll(HttpResponse r) throws Exception
+    {
+        checkStatus(r);
+        try (Reader reader = new InputStreamReader(new ChannelBufferInputStream(r.getContent()),
+                BaseUtil.CHARSET_UTF)) {
+            return GsonUtil.GSON.fromJson(reader, MultiStoreTransforms.class);
+        }
     }
 
-    private boolean handle_(SID sid, long lastLocalEpoch, HttpResponse r) throws Exception
+    private static void checkStatus(HttpResponse r) throws Exception
     {
-        // TODO: streaming response processing
-        String content = r.getContent().toString(BaseUtil.CHARSET_UTF);
         if (!r.getStatus().equals(HttpResponseStatus.OK)) {
-            l.info("polaris error {}\n{}", r.getStatus(), content);
+            l.info("polaris error {}\n{}", r.getStatus(),
+                    r.getContent().toString(BaseUtil.CHARSET_UTF));
             if (r.getStatus().equals(HttpResponseStatus.FORBIDDEN)) {
                 throw new ExNoPerm();
             }
@@ -135,16 +386,33 @@ public class ChangeFetcher
             }
             throw new ExProtocolError(r.getStatus().getReasonPhrase());
         }
+    }
+
+    /**
+     * Decode transforms straight from the response body, without materializing it as a string
+     */
+    static Transforms parse(InputStream in) throws IOException
+    {
+        try (Reader reader = new InputStreamReader(in, BaseUtil.CHARSET_UTF)) {
+            return GsonUtil.GSON.fromJson(reader, Transforms.class);
+        }
+    }
 
+    /**
+     * @param prefetch size of the next page to request ahead of time if more transforms are
+     *                 available, 0 to leave it to the fetch scheduler
+     */
+    private boolean handle_(SID sid, long lastLocalEpoch, Transforms c, int prefetch)
+            throws Exception
+    {
         SIndex sidx = _sid2sidx.getNullable_(sid);
         if (sidx == null) {
             l.info("ignoring response for absent store {}", sid.toStringFormal());
+            _prefetched.remove(sid);
             return false;
         }
         long epochBoundary = _cedb.getHighestChangeEpoch_(sidx);
 
-        Transforms c = GsonUtil.GSON.fromJson(content, Transforms.class);
-
         if (c.transforms == null || c.transforms.isEmpty()) {
             l.debug("no transforms");
             // the max transform count may be strictly superior to the last transform for the store
@@ -171,14 +439,46 @@ public class ChangeFetcher
             }
             // Polaris use the SID as the root object of a store
             // we need to convert that back to OID.ROOT for local processing
-            if (_sidx2sid.get_(sidx).equals(rc.oid)) {
+            if (sid.equals(rc.oid)) {
                 rc.oid = OID.ROOT;
             }
-            // apply all buffered changes in the source store before performing migration
-            if (rc.transformType == Type.SHARE) {
+            lastLogicalTimestamp = rc.logicalTimestamp;
+        }
+
+        // request the next page while this one is being applied
+        // NB: if the page cannot be applied the epoch won't match and the next page is discarded
+        if (prefetch > 0 && lastLogicalTimestamp < c.maxTransformCount) {
+            _prefetched.put(sid, fetch(sid, lastLogicalTimestamp, prefetch));
+        }
+
+        // amortize commits by applying runs of consecutive transforms in a single transaction
+        // sharing is applied on its own, after all buffered changes in the source store
+        List<RemoteChange> transforms = c.transforms;
+        int i = 0;
+        while (i < transforms.size()) {
+            int j = i + 1;
+            if (transforms.get(i).transformType == Type.SHARE) {
+                // apply all buffered changes in the source store before performing migration
                 applyBufferedChanges_(sidx, Long.MAX_VALUE);
+            } else {
+                while (j < transforms.size() && transforms.get(j).transformType != Type.SHARE) ++j;
             }
-            try (Trans t = _tm.begin_()) {
+            apply_(sidx, transforms.subList(i, j), c.maxTransformCount);
+            i = j;
+        }
+
+        applyBufferedChanges_(sidx, lastLogicalTimestamp);
+        if (epochBoundary > lastLocalEpoch && lastLogicalTimestamp >= epochBoundary) {
+            _sidx2store.get_(sidx).startSubmissions();
+        }
+        return true;
+    }
+
+    private void apply_(SIndex sidx, List<RemoteChange> changes, long mergeBoundary)
+            throws Exception
+    {
+        try (Trans t = _tm.begin_()) {
+            for (RemoteChange rc : changes) {
                 DID did = new DID(rc.originator);
                 _listeners.forEach(l -> {
                     if (rc.child == null) {
@@ -187,17 +487,11 @@ public class ChangeFetcher
                         l.updated_(new SOID(sidx, new OID(rc.child)), did, t);
                     }
                 });
-                _at.apply_(sidx, rc, c.maxTransformCount, t);
-                _cedb.setChangeEpoch_(sidx, rc.logicalTimestamp, t);
-                t.commit_();
+                _at.apply_(sidx, rc, mergeBoundary, t);
             }
-            lastLogicalTimestamp = rc.logicalTimestamp;
-        }
-        applyBufferedChanges_(sidx, lastLogicalTimestamp);
-        if (epochBoundary > lastLocalEpoch && lastLogicalTimestamp >= epochBoundary) {
-            _sidx2store.get_(sidx).startSubmissions();
+            _cedb.setChangeEpoch_(sidx, changes.get(changes.size() - 1).logicalTimestamp, t);
+            t.commit_();
         }
-        return true;
     }
 
     private void applyBufferedChanges_(SIndex sidx, long timestamp) throws Exception
@@ -34,6 +34,7 @@ import com.aerofs.lib.ContentHash;
 import com.aerofs.lib.cfg.CfgLocalDID;
 import com.aerofs.lib.cfg.CfgLocalUser;
 import com.aerofs.lib.db.IDBIterator;
+import com.aerofs.lib.event.Prio;
 import com.aerofs.lib.id.KIndex;
 import com.aerofs.lib.id.SIndex;
 import com.aerofs.lib.id.SOID;
@@ -236,7 +237,7 @@ public class ContentChangeSubmitter extends WaitableSubmitter<Long> implements S
 
     private void batchSubmit(List<ContentChange> c, Batch batch, AsyncTaskCallback cb)
     {
-        _client.post("/batch/transforms", batch, cb, r -> handleBatch_(c, batch, r));
+        _client.post("/batch/transforms", batch, Prio.LO, cb, r -> handleBatch_(c, batch, r));
     }
 
     private boolean handleBatch_(List<ContentChange> c, Batch batch, HttpResponse resp)
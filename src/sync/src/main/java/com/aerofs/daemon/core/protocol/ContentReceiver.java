@@ -24,6 +24,7 @@ import com.aerofs.daemon.core.transfers.download.DownloadState;
 import com.aerofs.daemon.lib.DaemonParam;
 import com.aerofs.daemon.lib.db.trans.Trans;
 import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.daemon.transport.lib.IncomingStream;
 import com.aerofs.lib.ContentHash;
 import com.aerofs.lib.ProgressIndicators;
 import com.aerofs.lib.Version;
@@ -300,7 +301,9 @@ public class ContentReceiver
             throws IOException, ExAborted {
         ElapsedTimer timer = new ElapsedTimer();
 
-        byte[] buf = new byte[4096];
+        // stream chunks are written straight to the prefix, without going through buf
+        IncomingStream stream = is instanceof IncomingStream ? (IncomingStream)is : null;
+        byte[] buf = stream == null ? new byte[4096] : null;
         while (remaining > 0) {
             // sending notifications is not cheap, hence the rate-limiting
             if (timer.elapsed() > DaemonParam.NOTIFY_THRESHOLD) {
@@ -310,11 +313,16 @@ public class ContentReceiver
                 ongoing.progress(remaining);
                 timer.restart();
             }
-            int n = is.read(buf, 0, (int) Math.min(buf.length, remaining));
-            if (n == -1) throw new EOFException();
+            int n;
+            if (stream != null) {
+                n = stream.transferTo(prefixStream, (int) Math.min(Integer.MAX_VALUE, remaining));
+            } else {
+                n = is.read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (n == -1) throw new EOFException();
+                prefixStream.write(buf, 0, n);
+            }
             remaining -= n;
             _pi.incrementMonotonicProgress();
-            prefixStream.write(buf, 0, n);
             l.trace("written {}>{}", n, remaining);
         }
     }
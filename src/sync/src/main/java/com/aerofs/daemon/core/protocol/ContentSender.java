@@ -17,7 +17,9 @@ import com.aerofs.daemon.core.tc.TokenManager;
 import com.aerofs.daemon.core.transfers.upload.UploadState;
 import com.aerofs.daemon.event.net.Endpoint;
 import com.aerofs.daemon.lib.DaemonParam;
+import com.aerofs.daemon.lib.fs.ChunkBufferPool;
 import com.aerofs.daemon.lib.fs.FileChunker;
+import com.aerofs.daemon.lib.fs.ReadAheadChunker;
 import com.aerofs.daemon.transport.lib.OutgoingStream;
 import com.aerofs.lib.*;
 import com.aerofs.lib.cfg.CfgStorageType;
@@ -27,6 +29,7 @@ import com.aerofs.proto.Core.PBGetContentRequest;
 import com.aerofs.proto.Core.PBGetContentResponse;
 import com.aerofs.proto.Transport.PBStream.InvalidationReason;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 
@@ -37,6 +40,8 @@ import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -54,6 +59,19 @@ public class ContentSender
     private final Set<OngoingTransfer> _ongoing = new HashSet<>();
     private final CfgStorageType _cfgStorageType;
 
+    // number of chunks read ahead of the network for each outgoing transfer
+    private static final int READ_AHEAD_DEPTH = 64;
+    // same, for bulk chunks. This reads ahead 1MB instead of 512KB with regular chunks
+    private static final int BULK_READ_AHEAD_DEPTH = 4;
+
+    // disk reads for outgoing transfers happen on these threads to overlap with network writes
+    private final Executor _readers = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("cs%d")
+            .setDaemon(true)
+            .build());
+    private final ChunkBufferPool _pool;
+    private final ChunkBufferPool _bulkPool;
+
     @Inject
     public ContentSender(UploadState ulstate, CoreScheduler sched,
                          TransportRoutingLayer trl, Metrics m, TokenManager tokenManager,
@@ -65,15 +83,21 @@ public class ContentSender
         _m = m;
         _tokenManager = tokenManager;
         _cfgStorageType = cfgStorageType;
+        _pool = new ChunkBufferPool(m.getMaxUnicastSize_(), 4 * READ_AHEAD_DEPTH);
+        _bulkPool = new ChunkBufferPool(DaemonParam.MAX_BULK_CHUNK_SIZE, 4 * BULK_READ_AHEAD_DEPTH);
     }
 
+    /**
+     * @param maxChunkSize largest stream chunk accepted by the remote peer, 0 if it does not
+     * support bulk frames
+     */
     public ContentHash send_(
             Endpoint ep, SendableContent content,
-            @Nullable PBGetContentRequest.Prefix prefix,
+            @Nullable PBGetContentRequest.Prefix prefix, int maxChunkSize,
             PBCore.Builder bdCore, PBGetContentResponse.Builder bd) throws Exception
     {
         try {
-            return sendInternal_(ep, content, prefix, bdCore, bd);
+            return sendInternal_(ep, content, prefix, maxChunkSize, bdCore, bd);
         } catch (ExUpdateInProgress e) {
             content.pf.onUnexpectedModification_(content.mtime);
             throw e;
@@ -82,26 +106,10 @@ public class ContentSender
 
     private ContentHash sendInternal_(Endpoint ep, SendableContent content,
                                       @Nullable PBGetContentRequest.Prefix prefix,
+                                      int maxChunkSize,
                                       PBCore.Builder bdCore,
                                       PBGetContentResponse.Builder bd) throws Exception {
-        bd.setMtime(content.mtime);
-        bd.setLength(content.length);
-
-        if (content.hash == null) {
-            if (_cfgStorageType.get() == StorageType.LINKED) {
-                throw new ExUpdateInProgress("wait for hash to serve content");
-            } else {
-                // NB: it is theoretically possible that some old block storage TS deployed before
-                // incremental content hashing was rolled out would have no hash for some files
-                // Since TS will be deprecated in favor of the shiny new Storage Agent when phoenix
-                // is rolled out it is deemed tentatively acceptable to break backwards compat
-                // and require a content hash in *all* responses.
-                // TODO: consider writing a DPUT/DLT to compute missing whole-file hashes on old TS
-                throw new ExProtocolError("missing content hash");
-            }
-        }
-
-        bd.setHash(content.hash.toPB());
+        setContentInfo_(content, bd);
 
         long prefixLen = 0;
         MessageDigest md = null;
@@ -125,11 +133,68 @@ public class ContentSender
             if (md == null) md = BaseSecUtil.newMessageDigest();
             try (Token tk = _tokenManager.acquireThrows_(Cat.SERVER,
                     "SendContent(" + content.sokid + ", " + ep + ")")) {
-                return sendBig_(ep, content, os, prefixLen, tk, md);
+                return sendBig_(ep, content, os, prefixLen, content.length,
+                        _m.getMaxStreamChunkSize_(maxChunkSize), tk, md);
             }
         }
     }
 
+    private void setContentInfo_(SendableContent content, PBGetContentResponse.Builder bd)
+            throws ExUpdateInProgress, ExProtocolError
+    {
+        bd.setMtime(content.mtime);
+        bd.setLength(content.length);
+
+        if (content.hash == null) {
+            if (_cfgStorageType.get() == StorageType.LINKED) {
+                throw new ExUpdateInProgress("wait for hash to serve content");
+            } else {
+                // NB: it is theoretically possible that some old block storage TS deployed before
+                // incremental content hashing was rolled out would have no hash for some files
+                // Since TS will be deprecated in favor of the shiny new Storage Agent when phoenix
+                // is rolled out it is deemed tentatively acceptable to break backwards compat
+                // and require a content hash in *all* responses.
+                // TODO: consider writing a DPUT/DLT to compute missing whole-file hashes on old TS
+                throw new ExProtocolError("missing content hash");
+            }
+        }
+
+        bd.setHash(content.hash.toPB());
+    }
+
+    /**
+     * Send a range of the content, for multi-source downloads
+     *
+     * Unlike {@link #send_}, the content is not hashed: the requester verifies the whole-file
+     * hash once all ranges are assembled.
+     */
+    public void sendRange_(Endpoint ep, SendableContent content, PBGetContentRequest.Range range,
+            int maxChunkSize, PBCore.Builder bdCore, PBGetContentResponse.Builder bd)
+            throws Exception
+    {
+        try {
+            setContentInfo_(content, bd);
+
+            long end = range.getOffset() + range.getLength();
+            if (range.getLength() == 0 || end < range.getOffset() || end > content.length) {
+                throw new ExProtocolError("invalid range " + range.getOffset() + "+"
+                        + range.getLength() + " > " + content.length);
+            }
+            bd.setRangeOffset(range.getOffset());
+
+            PBCore response = bdCore.setGetContentResponse(bd).build();
+            ByteArrayOutputStream os = Util.writeDelimited(response);
+            try (Token tk = _tokenManager.acquireThrows_(Cat.SERVER,
+                    "SendRange(" + content.sokid + ", " + ep + ")")) {
+                sendBig_(ep, content, os, range.getOffset(), end,
+                        _m.getMaxStreamChunkSize_(maxChunkSize), tk, null);
+            }
+        } catch (ExUpdateInProgress e) {
+            content.pf.onUnexpectedModification_(content.mtime);
+            throw e;
+        }
+    }
+
     protected ContentHash sendSmall_(Endpoint ep, SendableContent c, ByteArrayOutputStream os, PBCore reply)
             throws Exception
     {
@@ -158,7 +223,7 @@ public class ContentSender
     }
 
     protected ContentHash sendBig_(Endpoint ep, SendableContent c, ByteArrayOutputStream os,
-            long prefixLen, Token tk, @Nullable MessageDigest md)
+            long prefixLen, long endPos, int chunkSize, Token tk, @Nullable MessageDigest md)
             throws Exception {
         l.debug("sendBig_: os.size() = {}", os.size());
         checkState(prefixLen >= 0);
@@ -170,7 +235,7 @@ public class ContentSender
             c.pf.prepareForAccessWithoutCoreLock_();
             TCB tcb = tk.pseudoPause_("snd-" + c.sokid);
             try {
-                h = sendBig(ep, c, os, prefixLen, ul, md);
+                h = sendBig(ep, c, os, prefixLen, endPos, chunkSize, ul, md);
             } finally {
                 tcb.pseudoResumed_();
             }
@@ -188,11 +253,15 @@ public class ContentSender
 
     // NB: called with core lock released
     private ContentHash sendBig(Endpoint ep, SendableContent c, ByteArrayOutputStream os, long prefixLen,
-            OngoingTransfer ongoing, @Nullable MessageDigest md)
+            long endPos, int chunkSize, OngoingTransfer ongoing, @Nullable MessageDigest md)
             throws Exception {
+        final boolean bulk = chunkSize > _m.getMaxUnicastSize_();
+        final ChunkBufferPool pool = bulk ? _bulkPool : _pool;
         final OutgoingStream outgoing = ep.tp().newOutgoingStream(ep.did());
-        final FileChunker chunker = new FileChunker(c.pf, c.mtime, c.length, prefixLen,
-                _m.getMaxUnicastSize_(), OSUtil.isWindows());
+        final ReadAheadChunker chunker = new ReadAheadChunker(
+                new FileChunker(c.pf, c.mtime, c.length, prefixLen, endPos, chunkSize,
+                        OSUtil.isWindows()).withBufferPool(pool),
+                bulk ? BULK_READ_AHEAD_DEPTH : READ_AHEAD_DEPTH, _readers);
 
         try {
             // First, send the protobuf header
@@ -215,14 +284,16 @@ public class ContentSender
                     timer.restart();
                 }
 
-                // TODO: an async stream API would allow pipelining disk and network I/O
-                outgoing.write(buf);
+                // NB: the buffer is recycled as soon as the write completes so it MUST be
+                // hashed beforehand
                 if (md != null) md.update(buf);
                 done += buf.length;
+                final byte[] chunk = buf;
+                outgoing.writeAsync(buf).addListener(f -> pool.release(chunk));
                 _pi.incrementMonotonicProgress();
             }
 
-            checkState(done == c.length);
+            checkState(done == endPos);
         } catch (Exception e) {
             l.warn("{} fail send chunk over {} err:{}", ep.did(), ep.tp(), e.getMessage());
             InvalidationReason reason = (e instanceof ExUpdateInProgress) ?
@@ -231,7 +302,7 @@ public class ContentSender
             throw e;
         } finally {
             outgoing.close();
-            chunker.close_();
+            chunker.close();
         }
 
         // TODO: send computed hash after content to detect corruption during transfer?
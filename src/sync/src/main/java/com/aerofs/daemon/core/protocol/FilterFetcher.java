@@ -151,7 +151,8 @@ public class FilterFetcher
 
         PBCore request = CoreProtocolUtil.newRequest(Type.GET_FILTER_REQUEST)
                 .setGetFilterRequest(PBGetFilterRequest.newBuilder()
-                        .setCount(sids.size()))
+                        .setCount(sids.size())
+                        .setScalableFilter(true))
                 .build();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         request.writeDelimitedTo(out);
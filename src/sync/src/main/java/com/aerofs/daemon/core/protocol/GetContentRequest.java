@@ -23,6 +23,7 @@ import com.aerofs.daemon.core.polaris.db.ChangeEpochDatabase;
 import com.aerofs.daemon.core.store.IMapSID2SIndex;
 import com.aerofs.daemon.core.store.IMapSIndex2SID;
 import com.aerofs.daemon.core.tc.Token;
+import com.aerofs.daemon.lib.DaemonParam;
 import com.aerofs.daemon.lib.db.trans.TransManager;
 import com.aerofs.daemon.lib.exception.ExStreamInvalid;
 import com.aerofs.ids.DID;
@@ -37,6 +38,7 @@ import com.aerofs.proto.Core.PBCore;
 import com.aerofs.proto.Core.PBCore.Type;
 import com.aerofs.proto.Core.PBGetContentRequest;
 import com.aerofs.proto.Core.PBGetContentResponse;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.LeanByteString;
 import org.slf4j.Logger;
 
@@ -75,6 +77,19 @@ public class GetContentRequest implements CoreProtocolReactor.Handler {
      */
     public DigestedMessage remoteRequestContent_(SOID soid, DID src, Token tk)
             throws Exception {
+        return _rpc.issueRequest_(src, newRequest_(soid), tk, "gcc " + soid + " " + src);
+    }
+
+    /**
+     * Same as remoteRequestContent_ but without blocking the calling thread until the response
+     * arrives, see {@link RPC#issueRequestAsync_}
+     */
+    public ListenableFuture<DigestedMessage> remoteRequestContentAsync_(SOID soid, DID src)
+            throws Exception {
+        return _rpc.issueRequestAsync_(src, newRequest_(soid));
+    }
+
+    private PBCore newRequest_(SOID soid) throws Exception {
         l.debug("req gcc for {}", soid);
 
         // NB: we send all local versions to allow the receiver to pick a branch that
@@ -105,10 +120,32 @@ public class GetContentRequest implements CoreProtocolReactor.Handler {
         PBGetContentRequest.Prefix prefix = getIncrementalDownloadInfo_(soid);
         if (prefix != null) bd.setPrefix(prefix);
 
-        PBCore request = CoreProtocolUtil.newRequest(Type.GET_CONTENT_REQUEST)
+        // let the sender stream large files in bulk frames
+        bd.setMaxChunkSize(DaemonParam.MAX_BULK_CHUNK_SIZE);
+
+        return CoreProtocolUtil.newRequest(Type.GET_CONTENT_REQUEST)
                 .setGetContentRequest(bd).build();
+    }
 
-        return _rpc.issueRequest_(src, request, tk, "gcc " + soid + " " + src);
+    /**
+     * Build a request for a range of the content, to be issued to one of the sources of a
+     * multi-source download
+     */
+    public PBCore newRangeRequest_(SOID soid, long offset, long length)
+            throws SQLException, ExNotFound {
+        Long v = _cvdb.getVersion_(soid.sidx(), soid.oid());
+        PBGetContentRequest.Builder bd = PBGetContentRequest
+                .newBuilder()
+                .setStoreId(BaseUtil.toPB(_sidx2sid.getThrows_(soid.sidx())))
+                .setObjectId(BaseUtil.toPB(soid.oid()))
+                .setLocalVersion(v != null ? v : -1)
+                .setMaxChunkSize(DaemonParam.MAX_BULK_CHUNK_SIZE)
+                .setRange(PBGetContentRequest.Range.newBuilder()
+                        .setOffset(offset)
+                        .setLength(length));
+
+        return CoreProtocolUtil.newRequest(Type.GET_CONTENT_REQUEST)
+                .setGetContentRequest(bd).build();
     }
 
     private PBGetContentRequest.Prefix getIncrementalDownloadInfo_(SOID soid)
@@ -198,7 +235,10 @@ public class GetContentRequest implements CoreProtocolReactor.Handler {
             throws Exception {
         l.debug("{} issue gcc response for {} over {}", msg.did(), k, msg.tp());
 
-        _oel.log_(CONTENT_REQUEST, k.soid(), msg.did());
+        PBGetContentRequest request = msg.pb().getGetContentRequest();
+
+        // ranges of a multi-source download are not logged individually
+        if (!request.hasRange()) _oel.log_(CONTENT_REQUEST, k.soid(), msg.did());
 
         PBCore.Builder bdCore = CoreProtocolUtil.newResponse(msg.pb());
         PBGetContentResponse.Builder bd = PBGetContentResponse.newBuilder();
@@ -209,7 +249,14 @@ public class GetContentRequest implements CoreProtocolReactor.Handler {
         }
         bd.setLts(lts);
 
-        PBGetContentRequest.Prefix prefix = msg.pb().getGetContentRequest().getPrefix();
+        SendableContent c = _provider.content(k);
+        int maxChunkSize = request.getMaxChunkSize();
+        if (request.hasRange()) {
+            _contentSender.sendRange_(msg.ep(), c, request.getRange(), maxChunkSize, bdCore, bd);
+            return;
+        }
+
+        PBGetContentRequest.Prefix prefix = request.getPrefix();
         if (prefix != null) {
             l.info("{} recved prefix for {} len {} v {}. local {}", msg.did(), k,
                     prefix.getLength(), prefix.getVersion(), vLocal);
@@ -218,8 +265,7 @@ public class GetContentRequest implements CoreProtocolReactor.Handler {
             prefix = null;
         }
 
-        SendableContent c = _provider.content(k);
-        ContentHash h = _contentSender.send_(msg.ep(), c, prefix, bdCore, bd);
+        ContentHash h = _contentSender.send_(msg.ep(), c, prefix, maxChunkSize, bdCore, bd);
         if (!h.equals(c.hash)) {
             // well, shit.
             // The hash mismatch might be a transient race condition that will be resolved shortly
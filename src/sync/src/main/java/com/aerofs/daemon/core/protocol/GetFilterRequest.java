@@ -61,6 +61,7 @@ public class GetFilterRequest implements CoreProtocolReactor.Handler
         DID from = msg.did();
 
         int count = msg.pb().getGetFilterRequest().getCount();
+        boolean scalable = msg.pb().getGetFilterRequest().getScalableFilter();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
 
         CoreProtocolUtil.newResponse(msg.pb())
@@ -96,7 +97,7 @@ public class GetFilterRequest implements CoreProtocolReactor.Handler
                 l.debug("{} send gf response for {} {} fs {}", from, fromBase, sidx, (sfi == null ? null : sfi._filter));
 
                 if (sfi != null) {
-                    bd.setSenderFilter(sfi._filter.toPB())
+                    bd.setSenderFilter(scalable ? sfi._filter.toPB() : sfi._filter.toLegacyPB())
                             .setSenderFilterIndex(sfi._sfidx.getLong())
                             .setSenderFilterUpdateSeq(sfi._updateSeq)
                             .setSenderFilterEpoch(c)
@@ -5,7 +5,8 @@ package com.aerofs.daemon.core.tc;
  */
 public enum Cat {
 
-    // TODO: avoid tying up core thread on I/O (use async processing or coroutines)
+    // NB: content downloads no longer tie up a core thread while waiting for peers (see
+    // Token.await_), but multi-source downloads and content streaming still do
     CLIENT("CLT"),
     SERVER("SRV"),
     API_UPLOAD("UPLOAD"),
@@ -10,6 +10,8 @@ import com.aerofs.daemon.core.ex.ExAborted;
 import com.aerofs.base.ex.ExTimeout;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public class Token implements AutoCloseable
 {
@@ -22,6 +24,9 @@ public class Token implements AutoCloseable
     private TCB _tcb1;
     private Set<TCB> _tcbs;
 
+    // number of continuations waiting on futures, see await_(). for dumping only
+    private int _awaiting;
+
     private boolean _reclaimed;
     private final String _reason;
 
@@ -58,6 +63,17 @@ public class Token implements AutoCloseable
         return _cat;
     }
 
+    Prio getPrio()
+    {
+        return _prio;
+    }
+
+    void awaiting_(int delta)
+    {
+        _awaiting += delta;
+        Preconditions.checkState(_awaiting >= 0);
+    }
+
     public void reclaim_()
     {
         reclaim_(true);
@@ -106,6 +122,11 @@ public class Token implements AutoCloseable
             }
         }
 
+        if (_awaiting > 0) {
+            sb.append(_awaiting).append(" awaiting, ");
+            added = true;
+        }
+
         if (added) sb.delete(sb.length() - 2, sb.length());
 
         return sb.toString();
@@ -158,6 +179,21 @@ public class Token implements AutoCloseable
         _tokenManager.pauseImpl_(this, timeout, reason);
     }
 
+    /**
+     * Continuation-based counterpart of pause_: the current thread is not parked until the future
+     * completes. Instead the callback is invoked in a new core event, with the core lock held and
+     * the priority of the token, once it does. Core threads are thus not tied up by long waits,
+     * e.g. for the reply to an RPC.
+     *
+     * As with pause_, the caller must not assume that global states are unchanged when the
+     * callback is invoked. The callback fails with ExAborted if the token has been reclaimed by
+     * then.
+     */
+    public <T> void await_(ListenableFuture<T> future, FutureCallback<? super T> callback)
+    {
+        _tokenManager.awaitImpl_(this, future, callback);
+    }
+
     public void sleep_(long timeout, String reason) throws ExAborted
     {
         _tokenManager.sleepImpl_(this, timeout, reason);
@@ -3,6 +3,8 @@ package com.aerofs.daemon.core.tc;
 import com.aerofs.base.Loggers;
 import com.aerofs.base.ex.ExNoResource;
 import com.aerofs.base.ex.ExTimeout;
+import com.aerofs.daemon.core.CoreQueue;
+import com.aerofs.daemon.core.CoreScheduler;
 import com.aerofs.daemon.core.Dumpables;
 import com.aerofs.daemon.core.ex.ExAborted;
 import com.aerofs.daemon.core.tc.TC.TCB;
@@ -10,11 +12,16 @@ import com.aerofs.lib.IDumpStatMisc;
 import com.aerofs.lib.ThreadUtil;
 import com.aerofs.lib.Util;
 import com.aerofs.lib.cfg.ICfgStore;
+import com.aerofs.lib.event.AbstractEBSelfHandling;
+import com.aerofs.lib.event.IEvent;
 import com.aerofs.lib.event.Prio;
 import com.aerofs.lib.notifier.ConcurrentlyModifiableListeners;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 
@@ -24,6 +31,8 @@ import java.io.PrintStream;
 import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import static com.aerofs.lib.cfg.ICfgStore.*;
 
@@ -88,9 +97,14 @@ public class TokenManager implements IDumpStatMisc
     private ITokenUseListener _listener;
     private final EnumMap<Cat, CatInfo> _cat2info = Maps.newEnumMap(Cat.class);
 
+    private final CoreQueue _q;
+    private final CoreScheduler _sched;
+
     @Inject
-    public TokenManager(ICfgStore store)
+    public TokenManager(ICfgStore store, CoreQueue q, CoreScheduler sched)
     {
+        _q = q;
+        _sched = sched;
         for (Cat cat : Cat.values()) _cat2info.put(cat, new CatInfo(cat, getQuota(cat, store)));
 
         Dumpables.add("cat", this);
@@ -263,6 +277,50 @@ public class TokenManager implements IDumpStatMisc
         return tcb;
     }
 
+    <T> void awaitImpl_(Token tk, ListenableFuture<T> future, FutureCallback<? super T> cb)
+    {
+        tk.awaiting_(1);
+        // the listener may be invoked from any thread, including a core thread if the future is
+        // already complete, hence the non-blocking enqueue
+        future.addListener(() -> enqueue_(new AbstractEBSelfHandling() {
+            @Override
+            public void handle_()
+            {
+                tk.awaiting_(-1);
+                if (tk.isReclaimed_()) {
+                    cb.onFailure(new ExAborted("token reclaimed"));
+                    return;
+                }
+
+                T result;
+                try {
+                    result = Uninterruptibles.getUninterruptibly(future);
+                } catch (ExecutionException e) {
+                    cb.onFailure(e.getCause());
+                    return;
+                } catch (CancellationException e) {
+                    cb.onFailure(e);
+                    return;
+                }
+                cb.onSuccess(result);
+            }
+        }, tk.getPrio()), Runnable::run);
+    }
+
+    private void enqueue_(IEvent ev, Prio prio)
+    {
+        if (_q.enqueue(ev, prio)) return;
+        // the scheduler enqueues events with low priority. Other events are enqueued again from
+        // there, so that they keep their priority
+        _sched.schedule(prio == Prio.LO ? ev : new AbstractEBSelfHandling() {
+            @Override
+            public void handle_()
+            {
+                enqueue_(ev, prio);
+            }
+        }, 0);
+    }
+
     void sleepImpl_(Token tk, long timeout, String reason) throws ExAborted
     {
         TCB tcb = tk.pseudoPause_("sleep: " + reason);
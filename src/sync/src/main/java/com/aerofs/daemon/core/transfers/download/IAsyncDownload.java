@@ -60,21 +60,41 @@ public interface IAsyncDownload
     default void do_(SOID soid, Token tk, Map<DID, Exception> did2e,
                      List<IDownloadCompletionListener> listeners)
     {
+        final DID replier;
         try {
-            final DID replier = doImpl_();
-            notifyListeners_(listener -> listener.onDownloadSuccess_(soid, replier), listeners);
-        } catch (ExNoAvailDevice e) {
-            logger.warn("{}: ", soid, BaseLogUtil.suppress(e));
-            // This download object tracked all reasons (Exceptions) for why each device was
-            // avoided. Thus if the To object indicated no devices were available, then inform
-            // the listener about all attempted devices, and why they failed to deliver the socid.
-            notifyListeners_(listener -> listener.onPerDeviceErrors_(soid, did2e), listeners);
-        } catch (RuntimeException e) {
-            // we don't want the catch-all block to swallow runtime exceptions
-            SystemUtil.fatal(e);
-        } catch (final Exception e) {
-            logger.warn("{} :", soid, BaseLogUtil.suppress(e, ExNoPerm.class, ExAborted.class));
-            notifyListeners_(listener -> listener.onGeneralError_(soid, e), listeners);
+            replier = doImpl_();
+        } catch (Exception e) {
+            complete_(soid, tk, did2e, listeners, null, e);
+            return;
+        }
+        complete_(soid, tk, did2e, listeners, replier, null);
+    }
+
+    /**
+     * Inform listeners of the success, if e is null, or failure of the download and release the
+     * download token
+     */
+    default void complete_(SOID soid, Token tk, Map<DID, Exception> did2e,
+            List<IDownloadCompletionListener> listeners, @Nullable DID replier,
+            @Nullable Exception e)
+    {
+        try {
+            if (e == null) {
+                notifyListeners_(listener -> listener.onDownloadSuccess_(soid, replier), listeners);
+            } else if (e instanceof ExNoAvailDevice) {
+                logger.warn("{}: ", soid, BaseLogUtil.suppress(e));
+                // This download object tracked all reasons (Exceptions) for why each device was
+                // avoided. Thus if the To object indicated no devices were available, then inform
+                // the listener about all attempted devices, and why they failed to deliver the
+                // socid.
+                notifyListeners_(listener -> listener.onPerDeviceErrors_(soid, did2e), listeners);
+            } else if (e instanceof RuntimeException) {
+                // we don't want the catch-all block to swallow runtime exceptions
+                SystemUtil.fatal(e);
+            } else {
+                logger.warn("{} :", soid, BaseLogUtil.suppress(e, ExNoPerm.class, ExAborted.class));
+                notifyListeners_(listener -> listener.onGeneralError_(soid, e), listeners);
+            }
         } finally {
             tk.reclaim_();
         }
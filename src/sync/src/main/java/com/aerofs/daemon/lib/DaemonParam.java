@@ -49,6 +49,13 @@ public class DaemonParam
     public static final int MAX_TRANSPORT_MESSAGE_SIZE  =
         Math.max(MAX_UNICAST_MESSAGE_SIZE, MAX_MAXCAST_MESSAGE_SIZE) * 3;
 
+    // largest stream chunk, used for content streams when both peers support bulk frames
+    // (see PBGetContentRequest.max_chunk_size). Bulk frames are only accepted up to that size
+    // plus the usual allowance for transport headers
+    public static final int MAX_BULK_CHUNK_SIZE             = 256 * C.KB;
+    public static final int MAX_BULK_TRANSPORT_MESSAGE_SIZE =
+        MAX_BULK_CHUNK_SIZE + MAX_TRANSPORT_MESSAGE_SIZE;
+
     public static final long MAX_LINK_POLLING_INTERVAL = 30 * C.SEC;
 
     public static final long MIN_LINK_POLLING_INTERVAL = 10 * C.SEC;
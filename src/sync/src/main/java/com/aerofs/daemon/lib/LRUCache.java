@@ -59,9 +59,9 @@ public class LRUCache<K, V> implements IDumpStatMisc
     private final boolean _cacheNull;
     private final @Nullable IEvictionListener<K, V> _el;
 
-    private int _miss;
-    private int _hit;
-    private int _evt;
+    private long _miss;
+    private long _hit;
+    private long _evt;
 
     public LRUCache(int capacity)
     {
@@ -94,6 +94,7 @@ public class LRUCache<K, V> implements IDumpStatMisc
             V v = reader.read_(k);
             if (v != null || _cacheNull) {
                 Util.verify(_impl.put(k, v) == null);
+                cached_(k);
             }
             return v;
         }
@@ -127,6 +128,15 @@ public class LRUCache<K, V> implements IDumpStatMisc
         }
 
         _impl.put(k, v);
+        cached_(k);
+    }
+
+    /**
+     * Called whenever a value is inserted into the cache, either by put_() or by a get_() that
+     * read the value through an {@link IDataReader}
+     */
+    protected void cached_(K k)
+    {
     }
 
     /**
@@ -155,6 +165,35 @@ public class LRUCache<K, V> implements IDumpStatMisc
         _impl.remove(k);
     }
 
+    public int size_()
+    {
+        return _impl.size();
+    }
+
+    public int capacity_()
+    {
+        return _capacity;
+    }
+
+    public long hits_()
+    {
+        return _hit;
+    }
+
+    public long misses_()
+    {
+        return _miss;
+    }
+
+    /**
+     * @return the number of entries evicted to make room for new ones. Invalidations are not
+     * counted
+     */
+    public long evictions_()
+    {
+        return _evt;
+    }
+
     @Override
     public void dumpStatMisc(String indent, String indentUnit, PrintStream ps)
     {
@@ -1,25 +1,64 @@
 package com.aerofs.daemon.lib.db;
 
+import java.io.PrintStream;
 import java.sql.SQLException;
+import java.util.Set;
 
 import com.aerofs.daemon.lib.LRUCache;
 import com.aerofs.daemon.lib.db.trans.Trans;
 import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.google.common.collect.Sets;
 
+/**
+ * An LRUCache of database content which discards the entries that may reflect modifications made
+ * by aborted transactions.
+ *
+ * The keys of all the entries inserted while a transaction is ongoing are tracked, and only these
+ * entries are invalidated when the transaction aborts. Entries cached before the transaction
+ * started either still reflect the content of the database or have been invalidated by the code
+ * that modified the database, and may thus survive the abort.
+ *
+ * If a transaction inserts more keys than the capacity of the cache, tracking them is pointless
+ * and the entire cache is invalidated on abort.
+ */
 public class DBCache<K, V> extends LRUCache<K, V> implements ITransListener
 {
+    private final TransManager _tm;
+
+    // keys of the entries inserted during the ongoing transaction
+    private final Set<K> _cachedInTrans = Sets.newHashSet();
+    private boolean _overflow;
+
+    private long _aborts;
+    private long _abortEvictions;
+
     public DBCache(TransManager tm, boolean cacheNull, int capacity)
     {
         super(cacheNull, capacity);
+        _tm = tm;
         tm.addListener_(this);
     }
 
     public DBCache(TransManager tm, int capacity)
     {
         super(capacity);
+        _tm = tm;
         tm.addListener_(this);
     }
 
+    @Override
+    protected void cached_(K k)
+    {
+        if (_overflow || !_tm.hasOngoingTransaction_()) return;
+
+        if (_cachedInTrans.size() < capacity_()) {
+            _cachedInTrans.add(k);
+        } else {
+            _overflow = true;
+            _cachedInTrans.clear();
+        }
+    }
+
     @Override
     public void committing_(Trans t) throws SQLException
     {
@@ -28,17 +67,42 @@ public class DBCache<K, V> extends LRUCache<K, V> implements ITransListener
     @Override
     public void committed_()
     {
+        reset();
     }
 
     @Override
     public void aborted_()
     {
-        // invalidate the entire cache to prevent modifications during the
-        // transaction from being cached. a modification may be cached if
-        // the client reads the database after a modification.
-        //
-        // TODO invalidate only what are cached during the transaction.
-        //
-        invalidateAll_();
+        // invalidate whatever was cached during the transaction to prevent modifications made by
+        // the transaction from outliving it. a modification may be cached if the client reads
+        // the database after a modification.
+        _aborts++;
+        if (_overflow) {
+            _abortEvictions += size_();
+            invalidateAll_();
+        } else {
+            for (K k : _cachedInTrans) {
+                if (invalidate_(k) != null) _abortEvictions++;
+            }
+        }
+        reset();
+    }
+
+    private void reset()
+    {
+        _cachedInTrans.clear();
+        _overflow = false;
+    }
+
+    public long abortEvictions_()
+    {
+        return _abortEvictions;
+    }
+
+    @Override
+    public void dumpStatMisc(String indent, String indentUnit, PrintStream ps)
+    {
+        super.dumpStatMisc(indent, indentUnit, ps);
+        ps.println(indent + "abort " + _aborts + " inv " + _abortEvictions);
     }
 }
@@ -23,7 +23,8 @@ public class TransManager implements TransBoundaryChecker {
     private final Trans.Factory _factTrans;
     private final ArrayList<ITransListener> _listeners = Lists.newArrayList();
 
-    private Trans _ongoing; // for debugging
+    // null once the listeners have been notified of the end of the transaction
+    private Trans _ongoing;
 
     @Inject
     public TransManager(Trans.Factory factTrans)
@@ -51,6 +52,15 @@ public class TransManager implements TransBoundaryChecker {
         return _ongoing;
     }
 
+    /**
+     * @return whether a transaction has begun and its outcome has not been notified to the
+     * listeners yet. Note that this includes the execution of {@link ITransListener#committing_}
+     */
+    public boolean hasOngoingTransaction_()
+    {
+        return _ongoing != null;
+    }
+
     @Override
     public void assertNoOngoingTransaction_()
     {
@@ -64,12 +74,16 @@ public class TransManager implements TransBoundaryChecker {
 
     void committed_()
     {
+        _ongoing = null;
+
         // call the listeners in the reverse order of registration
         for (int i = _listeners.size() - 1; i >= 0; i--) _listeners.get(i).committed_();
     }
 
     void aborted_()
     {
+        _ongoing = null;
+
         // call the listeners in the reverse order of registration
         for (int i = _listeners.size() - 1; i >= 0; i--) _listeners.get(i).aborted_();
     }
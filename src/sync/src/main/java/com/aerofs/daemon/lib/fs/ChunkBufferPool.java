@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.lib.fs;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bounded pool of fixed-size chunk buffers, to avoid churning through the heap when streaming
+ * large files.
+ *
+ * Buffers of any other size are allocated on demand and simply dropped on release.
+ *
+ * NB: thread-safe, buffers are typically acquired by a reader thread and released from a Netty
+ * I/O thread once the corresponding write completes.
+ */
+public class ChunkBufferPool
+{
+    private final int _chunkSize;
+    private final int _capacity;
+    private final Queue<byte[]> _free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _size = new AtomicInteger();
+
+    public ChunkBufferPool(int chunkSize, int capacity)
+    {
+        checkArgument(chunkSize > 0 && capacity >= 0);
+        _chunkSize = chunkSize;
+        _capacity = capacity;
+    }
+
+    public byte[] allocate(int length)
+    {
+        if (length == _chunkSize) {
+            byte[] buf = _free.poll();
+            if (buf != null) {
+                _size.decrementAndGet();
+                return buf;
+            }
+        }
+        return new byte[length];
+    }
+
+    public void release(byte[] buf)
+    {
+        if (buf.length != _chunkSize) return;
+        if (_size.incrementAndGet() > _capacity) {
+            _size.decrementAndGet();
+            return;
+        }
+        _free.offer(buf);
+    }
+}
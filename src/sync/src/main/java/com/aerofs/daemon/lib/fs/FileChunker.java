@@ -8,6 +8,7 @@ import com.aerofs.daemon.core.ex.ExUpdateInProgress;
 import com.aerofs.lib.IReadableFile;
 import com.google.common.collect.Queues;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Queue;
@@ -31,6 +32,7 @@ public class FileChunker implements AutoCloseable
     private long _readPosition;
     private InputStream _is;
     private boolean _isWindows;
+    private @Nullable ChunkBufferPool _pool;
 
     // On Windows, we will close and reopen the file every time we read, to avoid holding
     // file locks (see comment below). But every time we open a file for reading, this may
@@ -77,6 +79,22 @@ public class FileChunker implements AutoCloseable
         _isWindows = isWindows;
     }
 
+    /**
+     * Allocate chunks from the given pool instead of the heap
+     *
+     * It is the caller's responsibility to release chunks it no longer needs.
+     */
+    public FileChunker withBufferPool(ChunkBufferPool pool)
+    {
+        _pool = pool;
+        return this;
+    }
+
+    @Nullable ChunkBufferPool bufferPool()
+    {
+        return _pool;
+    }
+
     public byte[] getNextChunk_()
             throws IOException, ExUpdateInProgress
     {
@@ -90,6 +108,11 @@ public class FileChunker implements AutoCloseable
     public void close_()
             throws IOException
     {
+        // chunks read ahead but never handed out would otherwise be lost to the pool
+        if (_pool != null) {
+            byte[] buf;
+            while ((buf = _chunksQueue.poll()) != null) _pool.release(buf);
+        }
         if (_is != null) _is.close();
     }
 
@@ -111,7 +134,8 @@ public class FileChunker implements AutoCloseable
             if (_readPosition == _endPos) break;
             checkState(_readPosition < _endPos);
 
-            byte[] buf = new byte[(int)Math.min(_chunkSize, _endPos - _readPosition)];
+            int len = (int)Math.min(_chunkSize, _endPos - _readPosition);
+            byte[] buf = _pool != null ? _pool.allocate(len) : new byte[len];
             int bytesCopied = readChunk(buf, _is);
             if (bytesCopied != buf.length) {
                 throw new ExUpdateInProgress("short read: "
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.lib.fs;
+
+import com.aerofs.base.BaseSecUtil;
+import com.aerofs.base.C;
+import com.aerofs.daemon.core.ex.ExUpdateInProgress;
+import com.aerofs.lib.ContentHash;
+import com.aerofs.lib.IReadableFile;
+
+import javax.annotation.Nullable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.security.MessageDigest;
+import java.util.function.BooleanSupplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Compute the ContentHash of a file using large sequential reads
+ *
+ * Outside of Windows, the file is memory-mapped in large windows, which saves a copy through the
+ * Java heap and lets the kernel read ahead aggressively.
+ *
+ * On Windows, a mapped region prevents the file from being deleted or truncated until it is
+ * garbage collected, so positional reads into a heap buffer are used instead and, like
+ * FileChunker, the file is closed between windows to avoid holding locks for too long.
+ *
+ * Files that are not backed by a FileInputStream (e.g. in tests) are read as plain streams.
+ */
+public class FileHasher
+{
+    static final int MAP_WINDOW = 64 * C.MB;
+    static final int READ_WINDOW = 8 * C.MB;
+
+    private final boolean _isWindows;
+    private final int _window;
+
+    /**
+     * @param isWindows  Whether we are on the Windows platform. We do not use OSUtil to make this
+     *                   class testable.
+     */
+    public FileHasher(boolean isWindows)
+    {
+        this(isWindows, isWindows ? READ_WINDOW : MAP_WINDOW);
+    }
+
+    FileHasher(boolean isWindows, int window)
+    {
+        checkArgument(window > 0);
+        _isWindows = isWindows;
+        _window = window;
+    }
+
+    /**
+     * @return the hash of the file content, null if aborted
+     * @throws ExUpdateInProgress if the file does not match the expected length and mtime at any
+     * point during the computation
+     */
+    public @Nullable ContentHash hash(IReadableFile f, long mtime, long length,
+            BooleanSupplier aborted) throws IOException, ExUpdateInProgress
+    {
+        MessageDigest md = BaseSecUtil.newMessageDigest();
+        byte[] buf = null;
+        InputStream is = null;
+        long pos = 0;
+        try {
+            do {
+                if (aborted.getAsBoolean()) return null;
+
+                if (is == null) is = f.newInputStream();
+                boolean positional = is instanceof FileInputStream;
+                int n = (int)Math.min(_window, length - pos);
+                if (positional) {
+                    FileChannel ch = ((FileInputStream)is).getChannel();
+                    if (_isWindows) {
+                        if (buf == null) buf = new byte[(int)Math.min(_window, length)];
+                        read(ch, pos, buf, n);
+                        md.update(buf, 0, n);
+                    } else {
+                        map(ch, pos, n, md);
+                    }
+                } else {
+                    if (buf == null) buf = new byte[(int)Math.min(_window, length)];
+                    read(is, buf, n);
+                    md.update(buf, 0, n);
+                }
+                pos += n;
+
+                // To avoid race conditions we need to explicitly check for changes to the
+                // physical file before the data read can be trusted
+                if (f.wasModifiedSince(mtime, length)) {
+                    throw new ExUpdateInProgress("mtime,length changed: expected=("
+                            + mtime + "," + length + ") actual=("
+                            + f.lastModified() + "," + f.lengthOrZeroIfNotFile() + ")");
+                }
+
+                // see FileChunker
+                if (_isWindows && positional) {
+                    is.close();
+                    is = null;
+                }
+            } while (pos < length);
+        } finally {
+            if (is != null) is.close();
+        }
+        return new ContentHash(md.digest());
+    }
+
+    private static void map(FileChannel ch, long pos, int n, MessageDigest md)
+            throws IOException, ExUpdateInProgress
+    {
+        if (n == 0) return;
+        if (ch.size() < pos + n) throw new ExUpdateInProgress("short file: " + ch.size());
+        try {
+            md.update(ch.map(MapMode.READ_ONLY, pos, n));
+        } catch (InternalError e) {
+            // accessing a mapped page past the end of a file truncated concurrently raises
+            // SIGBUS, which the JVM reports as an InternalError
+            throw new ExUpdateInProgress("truncated while mapped: " + e.getMessage());
+        }
+    }
+
+    private static void read(FileChannel ch, long pos, byte[] buf, int n)
+            throws IOException, ExUpdateInProgress
+    {
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+        while (bb.hasRemaining()) {
+            int read = ch.read(bb, pos + bb.position());
+            if (read == -1) throw new ExUpdateInProgress("short read: " + bb.position() + "/" + n);
+        }
+    }
+
+    private static void read(InputStream is, byte[] buf, int n)
+            throws IOException, ExUpdateInProgress
+    {
+        int total = 0;
+        while (total < n) {
+            int read = is.read(buf, total, n - total);
+            if (read == -1) throw new ExUpdateInProgress("short read: " + total + "/" + n);
+            total += read;
+        }
+    }
+}
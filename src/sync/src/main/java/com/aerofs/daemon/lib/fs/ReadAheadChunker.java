@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.lib.fs;
+
+import com.aerofs.base.Loggers;
+import com.aerofs.daemon.core.ex.ExUpdateInProgress;
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Wraps a FileChunker to read chunks ahead of the consumer on a separate thread
+ *
+ * This allows disk reads to proceed while previously read chunks are still being written to the
+ * network, instead of alternating between idle disk and idle network.
+ *
+ * The read-ahead is bounded by {@code depth} to keep memory usage under control. Backpressure
+ * from the consumer naturally stalls the reader once the queue is full.
+ *
+ * NB: a single consumer thread is assumed
+ */
+public class ReadAheadChunker implements AutoCloseable
+{
+    private static final Logger l = Loggers.getLogger(ReadAheadChunker.class);
+
+    private static final byte[] EOF = new byte[0];
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final FileChunker _chunker;
+    private final @Nullable ChunkBufferPool _pool;
+    private final BlockingQueue<Object> _queue;
+    private final CountDownLatch _done = new CountDownLatch(1);
+
+    private volatile boolean _closed;
+    private boolean _eof;
+
+    public ReadAheadChunker(FileChunker chunker, int depth, Executor executor)
+    {
+        checkArgument(depth > 0);
+        _chunker = chunker;
+        _pool = chunker.bufferPool();
+        _queue = new ArrayBlockingQueue<>(depth);
+        executor.execute(this::read);
+    }
+
+    private void read()
+    {
+        try {
+            byte[] buf;
+            while (!_closed && (buf = _chunker.getNextChunk_()) != null) {
+                put(buf);
+            }
+            put(EOF);
+        } catch (Throwable t) {
+            put(t);
+        } finally {
+            try {
+                _chunker.close_();
+            } catch (IOException e) {
+                l.warn("failed to close chunker", e);
+            }
+            _done.countDown();
+        }
+    }
+
+    private void put(Object o)
+    {
+        try {
+            while (!_closed) {
+                if (_queue.offer(o, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (o instanceof byte[]) release((byte[])o);
+    }
+
+    private void release(byte[] buf)
+    {
+        if (_pool != null && buf != EOF) _pool.release(buf);
+    }
+
+    /**
+     * @return the next chunk, or null if the end of the file was reached
+     *
+     * Chunks may be returned to the pool of the underlying FileChunker once they are no longer
+     * needed.
+     */
+    public @Nullable byte[] getNextChunk_() throws IOException, ExUpdateInProgress
+    {
+        if (_eof) return null;
+        Object o;
+        try {
+            o = _queue.take();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        if (o == EOF) {
+            _eof = true;
+            return null;
+        } else if (o instanceof Throwable) {
+            _eof = true;
+            Throwables.propagateIfPossible((Throwable)o, IOException.class, ExUpdateInProgress.class);
+            throw new IOException((Throwable)o);
+        }
+        return (byte[])o;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        _closed = true;
+        drain();
+        try {
+            // wait for the reader to release the file, to avoid holding locks on Windows
+            if (!_done.await(POLL_INTERVAL_MS * 10, TimeUnit.MILLISECONDS)) {
+                l.warn("reader still busy");
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        // draining frees up room for a chunk the reader may have been trying to enqueue
+        drain();
+    }
+
+    private void drain()
+    {
+        Object o;
+        while ((o = _queue.poll()) != null) {
+            if (o instanceof byte[]) release((byte[])o);
+        }
+    }
+}
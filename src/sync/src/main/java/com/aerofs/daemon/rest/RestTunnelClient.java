@@ -6,12 +6,14 @@ import com.aerofs.lib.cfg.CfgLocalDID;
 import com.aerofs.lib.cfg.CfgLocalUser;
 import com.aerofs.tunnel.ShutdownEvent;
 import com.aerofs.tunnel.TunnelClient;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.DefaultChannelFuture;
 import org.jboss.netty.util.Timer;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -20,12 +22,22 @@ import static com.aerofs.base.config.ConfigurationProperties.getStringProperty;
 import static com.aerofs.daemon.core.acl.EffectiveUserList.IUserListChangeListener;
 import static com.aerofs.lib.NioChannelFactories.getClientChannelFactory;
 
+/**
+ * Tunnel connection to the API gateway
+ *
+ * Additional tunnel connections may be opened to stripe API requests, so that large transfers
+ * do not compete with other requests for a single TCP window. These extra stripes are not
+ * renewed on user list changes: the gateway updates the information of the whole device when
+ * the main connection is renewed.
+ */
 public class RestTunnelClient extends TunnelClient implements IUserListChangeListener
 {
     private static final int CONN_INTERVAL_IN_MS = 1000;
 
     private AtomicLong lastConnectionTime = new AtomicLong(Long.MAX_VALUE);
 
+    private final List<TunnelClient> _stripes = Lists.newArrayList();
+
     @Inject
     public RestTunnelClient(CfgLocalUser user, CfgLocalDID did, Timer timer,
             ClientSSLEngineFactory sslEngineFactory, final RestService service, EffectiveUserList userList)
@@ -33,9 +45,30 @@ public class RestTunnelClient extends TunnelClient implements IUserListChangeLis
         super(getStringProperty("api.tunnel.host", "api.aerofs.com"),
                 getIntegerProperty("api.tunnel.port", 8084), user.get(), did.get(),
                 getClientChannelFactory(), sslEngineFactory, service::getSpecializedPipeline, timer);
+        int stripes = getIntegerProperty("api.tunnel.stripes", 1);
+        for (int i = 1; i < stripes; ++i) {
+            _stripes.add(new TunnelClient(getStringProperty("api.tunnel.host", "api.aerofs.com"),
+                    getIntegerProperty("api.tunnel.port", 8084), user.get(), did.get(),
+                    getClientChannelFactory(), sslEngineFactory, service::getSpecializedPipeline,
+                    timer, i));
+        }
         userList.addListener(this);
     }
 
+    @Override
+    public ChannelFuture start()
+    {
+        _stripes.forEach(TunnelClient::start);
+        return super.start();
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        _stripes.forEach(TunnelClient::stop);
+        super.stop();
+    }
+
     @Override
     protected ChannelFuture connect()
     {
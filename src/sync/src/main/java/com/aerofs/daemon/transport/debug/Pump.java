@@ -7,6 +7,7 @@ package com.aerofs.daemon.transport.debug;
 import com.aerofs.MainUtil;
 import com.aerofs.base.BaseLogUtil;
 import com.aerofs.base.C;
+import com.aerofs.base.ElapsedTimer;
 import com.aerofs.base.Loggers;
 import com.aerofs.base.TimerUtil;
 import com.aerofs.daemon.core.CoreEventDispatcher;
@@ -21,6 +22,9 @@ import com.aerofs.daemon.event.net.EIDevicePresence;
 import com.aerofs.daemon.event.net.rx.EIStreamBegun;
 import com.aerofs.daemon.event.net.rx.EIUnicastMessage;
 import com.aerofs.daemon.event.net.tx.EOUnicastMessage;
+import com.aerofs.daemon.lib.fs.ChunkBufferPool;
+import com.aerofs.daemon.lib.fs.FileChunker;
+import com.aerofs.daemon.lib.fs.ReadAheadChunker;
 import com.aerofs.daemon.lib.id.StreamID;
 import com.aerofs.daemon.link.LinkStateService;
 import com.aerofs.daemon.transport.ITransport;
@@ -35,6 +39,8 @@ import com.aerofs.ids.DID;
 import com.aerofs.lib.IProgram;
 import com.aerofs.lib.ThreadUtil;
 import com.aerofs.lib.cfg.*;
+import com.aerofs.lib.injectable.InjectableFile;
+import com.aerofs.lib.os.OSUtil;
 import com.aerofs.lib.event.AbstractEBSelfHandling;
 import com.aerofs.proto.Transport.PBStream.InvalidationReason;
 import com.aerofs.ssmp.SSMPConnection;
@@ -47,6 +53,8 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import static com.aerofs.daemon.core.net.TransportFactory.*;
 import static com.aerofs.lib.NioChannelFactories.getClientChannelFactory;
@@ -74,7 +82,7 @@ public final class Pump implements IProgram, IUnicastInputLayer
 
 
     private final CoreScheduler sched = new CoreScheduler(queue);
-    private final TokenManager tokenManager = new TokenManager(Cfg.db());
+    private final TokenManager tokenManager = new TokenManager(Cfg.db(), queue, sched);
     private final CoreEventDispatcher disp = new CoreEventDispatcher(ImmutableSet.of(
             d -> {
                 d.setHandler_(EIUnicastMessage.class, new HdUnicastMessage(this));
@@ -83,7 +91,10 @@ public final class Pump implements IProgram, IUnicastInputLayer
     ));
     private final TC tc = new TC(queue, disp, sched, tokenManager, () -> {});
 
-    // PROG RTROOT [t|z] ([send|stream] <did>)*
+    // PROG RTROOT [t|z] ([send|stream|file:<path>|syncfile:<path>] <did>)*
+    //
+    // file: streams the given file through the pipelined read-ahead path used by ContentSender
+    // syncfile: streams the given file by alternating between disk reads and network writes
     @Override
     public void launch_(String rtRoot, String prog, String[] args)
             throws Exception
@@ -93,9 +104,26 @@ public final class Pump implements IProgram, IUnicastInputLayer
 
         l.info(Arrays.toString(args));
         checkArgument(args.length % 2 == 1,
-                String.format("usage: %s (t|z) [(send|stream) <did>]*", prog));
+                String.format("usage: %s (t|z) [(send|stream|file:<path>|syncfile:<path>) <did>]*", prog));
 
         for (int i = 1; i < args.length; i += 2) {
+            int sep = args[i].indexOf(':');
+            if (sep != -1) {
+                checkState(i + 1 < args.length);
+                String path = args[i].substring(sep + 1);
+                DID did = new DID(DID.fromStringFormal(args[i + 1]));
+                switch (args[i].substring(0, sep).toLowerCase()) {
+                    case "file":
+                        producers.add(new FileStreamer(did, path, true));
+                        break;
+                    case "syncfile":
+                        producers.add(new FileStreamer(did, path, false));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unsupported producer: " + args[i]);
+                }
+                continue;
+            }
             switch (args[i].toLowerCase()) {
                 case "send":
                     checkState(i + 1 < args.length);
@@ -303,4 +331,65 @@ public final class Pump implements IProgram, IUnicastInputLayer
             }
         }
     }
+
+    /**
+     * Stream a whole file, to compare the throughput of pipelined and synchronous disk/network I/O
+     */
+    private class FileStreamer extends Pump.Producer
+    {
+        private static final int READ_AHEAD_DEPTH = 64;
+
+        private final InjectableFile file;
+        private final boolean pipelined;
+        private final ChunkBufferPool pool = new ChunkBufferPool(CHUNK.length, 4 * READ_AHEAD_DEPTH);
+        private final Executor readers = Executors.newCachedThreadPool();
+
+        FileStreamer(DID did, String path, boolean pipelined)
+        {
+            super(did);
+            this.file = new InjectableFile.Factory().create(path);
+            this.pipelined = pipelined;
+        }
+
+        @Override
+        public void handleThrows_() throws Exception
+        {
+            long length = file.length();
+            FileChunker chunker = new FileChunker(file, file.lastModified(), length, 0,
+                    CHUNK.length, OSUtil.isWindows());
+            ElapsedTimer timer = new ElapsedTimer();
+            OutgoingStream os = transport.newOutgoingStream(remote);
+            try {
+                if (pipelined) {
+                    try (ReadAheadChunker rac = new ReadAheadChunker(
+                            chunker.withBufferPool(pool), READ_AHEAD_DEPTH, readers)) {
+                        byte[] buf;
+                        while ((buf = rac.getNextChunk_()) != null) {
+                            final byte[] chunk = buf;
+                            os.writeAsync(buf).addListener(f -> pool.release(chunk));
+                            sendThroughputCounter.observe(buf.length);
+                        }
+                    }
+                } else {
+                    try (FileChunker c = chunker) {
+                        byte[] buf;
+                        while ((buf = c.getNextChunk_()) != null) {
+                            os.write(buf);
+                            sendThroughputCounter.observe(buf.length);
+                        }
+                    }
+                }
+                long elapsed = Math.max(1, timer.elapsed());
+                l.info("done send file {} {} bytes in {} ms ({} MB/s, {})", remote, length,
+                        elapsed, (length * C.SEC / elapsed) / C.MB,
+                        pipelined ? "pipelined" : "sync");
+            } catch (Exception e) {
+                os.abort(InvalidationReason.INTERNAL_ERROR);
+                throw e;
+            } finally {
+                os.close();
+            }
+            doSend = false;
+        }
+    }
 }
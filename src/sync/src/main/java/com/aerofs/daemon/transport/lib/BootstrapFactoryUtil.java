@@ -9,12 +9,12 @@ import com.aerofs.base.net.CoreProtocolHandlers.RecvCoreProtocolVersionHandler;
 import com.aerofs.base.net.CoreProtocolHandlers.SendCoreProtocolVersionHandler;
 import com.aerofs.daemon.lib.DaemonParam;
 import com.aerofs.daemon.transport.lib.handlers.ConnectTimeoutHandler;
+import com.aerofs.daemon.transport.lib.handlers.FrameLengthDecoder;
+import com.aerofs.daemon.transport.lib.handlers.FrameLengthEncoder;
 import com.aerofs.daemon.transport.lib.handlers.HeartbeatHandler;
 import com.aerofs.daemon.transport.lib.handlers.IOStatsHandler;
 import com.aerofs.lib.ClientParam;
 import org.jboss.netty.bootstrap.ClientBootstrap;
-import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
-import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
 import org.jboss.netty.util.Timer;
 
 import java.nio.ByteBuffer;
@@ -32,6 +32,11 @@ public abstract class BootstrapFactoryUtil
     {
         public static final int LENGTH_FIELD_SIZE = 2; // bytes
         public static final int MAX_MESSAGE_SIZE = DaemonParam.MAX_TRANSPORT_MESSAGE_SIZE;
+        // reserved value of the length field, followed by a 4-byte length, for frames larger
+        // than MAX_MESSAGE_SIZE (see FrameLengthDecoder)
+        public static final int BULK_FRAME_MARKER = 0xffff;
+        public static final int BULK_LENGTH_FIELD_SIZE = 4; // bytes
+        public static final int MAX_BULK_MESSAGE_SIZE = DaemonParam.MAX_BULK_TRANSPORT_MESSAGE_SIZE;
         public static final byte[] CORE_PROTOCOL_VERSION_BYTES = ByteBuffer.allocate(C.INTEGER_SIZE).putInt(ClientParam.CORE_PROTOCOL_VERSION).array();
         public static final int HEADER_SIZE = LENGTH_FIELD_SIZE + CORE_PROTOCOL_VERSION_BYTES.length;
 
@@ -39,22 +44,19 @@ public abstract class BootstrapFactoryUtil
             // Check that the maximum message size is smaller than the maximum number that can be
             // represented using LENGTH_FIELD_SIZE bytes
             checkState(FrameParams.MAX_MESSAGE_SIZE < Math.pow(256, FrameParams.LENGTH_FIELD_SIZE));
+            // ... and cannot be mistaken for the bulk frame marker
+            checkState(FrameParams.MAX_MESSAGE_SIZE < FrameParams.BULK_FRAME_MARKER);
         }
     }
 
-    public static LengthFieldPrepender newLengthFieldPrepender()
+    public static FrameLengthEncoder newLengthFieldPrepender()
     {
-        return new LengthFieldPrepender(FrameParams.LENGTH_FIELD_SIZE);
+        return new FrameLengthEncoder(FrameParams.MAX_MESSAGE_SIZE);
     }
 
-    public static LengthFieldBasedFrameDecoder newFrameDecoder()
+    public static FrameLengthDecoder newFrameDecoder()
     {
-        return new LengthFieldBasedFrameDecoder(
-                FrameParams.MAX_MESSAGE_SIZE,
-                0,
-                FrameParams.LENGTH_FIELD_SIZE,
-                0,
-                FrameParams.LENGTH_FIELD_SIZE);
+        return new FrameLengthDecoder(FrameParams.MAX_MESSAGE_SIZE, FrameParams.MAX_BULK_MESSAGE_SIZE);
     }
 
     public static RecvCoreProtocolVersionHandler newCoreProtocolVersionReader()
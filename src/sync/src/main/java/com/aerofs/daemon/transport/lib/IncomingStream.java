@@ -1,5 +1,6 @@
 package com.aerofs.daemon.transport.lib;
 
+import com.aerofs.base.C;
 import com.aerofs.base.ElapsedTimer;
 import com.aerofs.base.Loggers;
 import com.aerofs.daemon.lib.exception.ExStreamInvalid;
@@ -11,6 +12,7 @@ import org.slf4j.Logger;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
@@ -44,12 +46,20 @@ public final class IncomingStream extends InputStream {
     private final static int HI_WATERMARK = 128;
     private final static int BRK_WATERMARK = 512;
 
+    // the same, in bytes, to keep buffering bounded when the sender uses large chunks
+    private final static long LO_WATERMARK_BYTES = 2 * C.MB;
+    private final static long HI_WATERMARK_BYTES = 4 * C.MB;
+    private final static long BRK_WATERMARK_BYTES = 16 * C.MB;
+
     private static final AtomicLongFieldUpdater<IncomingStream> STATE_UPDATER =
             AtomicLongFieldUpdater.newUpdater(IncomingStream.class, "_state");
 
     private static final AtomicLongFieldUpdater<IncomingStream> QUEUE_UPDATER =
             AtomicLongFieldUpdater.newUpdater(IncomingStream.class, "_queueSize");
 
+    private static final AtomicLongFieldUpdater<IncomingStream> QUEUE_BYTES_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(IncomingStream.class, "_queueBytes");
+
     private final long NONE = 0;
     private final long STREAMING = 1;
     private final long FAILED = 2;
@@ -69,6 +79,7 @@ public final class IncomingStream extends InputStream {
     private volatile boolean _paused;
     // linked queue doesn't keep track of size efficiently...
     private volatile long _queueSize;
+    private volatile long _queueBytes;
     private final Queue<ChannelBuffer> _data = new ConcurrentLinkedQueue<>();
 
     public IncomingStream(StreamKey sk, Channel channel, long timeout) {
@@ -103,7 +114,10 @@ public final class IncomingStream extends InputStream {
             throw new ExStreamInvalid(state == CLOSED ? InvalidationReason.ENDED : _reason);
         }
         _data.offer(s);
-        if (QUEUE_UPDATER.getAndIncrement(this) > HI_WATERMARK) increaseBackpressure();
+        long bytes = QUEUE_BYTES_UPDATER.addAndGet(this, s.readableBytes());
+        if (QUEUE_UPDATER.getAndIncrement(this) > HI_WATERMARK || bytes > HI_WATERMARK_BYTES) {
+            increaseBackpressure();
+        }
         synchronized (this) { notify(); }
     }
 
@@ -134,6 +148,7 @@ public final class IncomingStream extends InputStream {
         _head = null;
         _data.clear();
         QUEUE_UPDATER.set(this, 0);
+        QUEUE_BYTES_UPDATER.set(this, 0);
         if (_paused) _channel.getPipeline().execute(this::relieveBackpressure);
         notify();
     }
@@ -141,7 +156,7 @@ public final class IncomingStream extends InputStream {
     // NB: call from io thread
     private void relieveBackpressure()
     {
-        if (_paused && _queueSize < LO_WATERMARK) {
+        if (_paused && _queueSize < LO_WATERMARK && _queueBytes < LO_WATERMARK_BYTES) {
             l.debug("{} resume stream {} {}", _channel, _sk, _queueSize);
             _channel.write(newControl(newResumeIncomingStreamHeader(_sk.strmid)));
             _paused = false;
@@ -151,8 +166,8 @@ public final class IncomingStream extends InputStream {
     // NB: call from io thread
     private void increaseBackpressure()
     {
-        if (_queueSize > BRK_WATERMARK) {
-            l.warn("{} stream queue overflow {} {}", _channel, _sk, _queueSize);
+        if (_queueSize > BRK_WATERMARK || _queueBytes > BRK_WATERMARK_BYTES) {
+            l.warn("{} stream queue overflow {} {} {}", _channel, _sk, _queueSize, _queueBytes);
             fail(InvalidationReason.CHOKE_ERROR);
         } else if (!_paused) {
             l.debug("{} pause stream {} {}", _channel, _sk, _queueSize);
@@ -191,6 +206,25 @@ public final class IncomingStream extends InputStream {
         return total;
     }
 
+    /**
+     * Write up to {@code len} bytes of the stream to {@code out}, straight from the buffered
+     * chunks, blocking until at least one byte is available
+     *
+     * This avoids copying data through an intermediate buffer when the stream is written to disk.
+     *
+     * @return the number of bytes written
+     */
+    public int transferTo(OutputStream out, int len) throws IOException
+    {
+        if (_state == CLOSED) throw new IOException("stream closed");
+        if (len == 0) return 0;
+        while (isEmpty(_head)) fetchMore(true);
+        int n = Math.min(len, _head.readableBytes());
+        _head.readBytes(out, n);
+        l.trace("{} transfer {}", _channel, n);
+        return n;
+    }
+
     private static boolean isEmpty(@Nullable ChannelBuffer buf)
     {
         return buf == null || !buf.readable();
@@ -202,7 +236,9 @@ public final class IncomingStream extends InputStream {
             if (!blocking) return false;
             waitForMoreData();
         }
-        if (QUEUE_UPDATER.getAndDecrement(this) < LO_WATERMARK && _paused) {
+        long bytes = QUEUE_BYTES_UPDATER.addAndGet(this, -_head.readableBytes());
+        if (QUEUE_UPDATER.getAndDecrement(this) < LO_WATERMARK && bytes < LO_WATERMARK_BYTES
+                && _paused) {
             _channel.getPipeline().execute(this::relieveBackpressure);
         }
         return true;
@@ -1,5 +1,6 @@
 package com.aerofs.daemon.transport.lib;
 
+import com.aerofs.base.C;
 import com.aerofs.base.ElapsedTimer;
 import com.aerofs.base.Loggers;
 import com.aerofs.daemon.lib.exception.ExStreamInvalid;
@@ -14,6 +15,7 @@ import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.aerofs.proto.Transport.PBTPHeader.Type.STREAM;
 import static com.google.common.base.Preconditions.checkState;
@@ -23,6 +25,9 @@ import static com.google.common.base.Preconditions.checkState;
  * Simple synchronous and blocking wrapper for sending chunks of data multiplexed over a Netty
  * channel (asynchronous, non-blocking)
  *
+ * {@link #writeAsync} only blocks for backpressure and lets the caller know when each chunk has
+ * actually been written, which allows the next chunks to be read while earlier ones are in flight.
+ *
  * NB: core assumptions
  *   - a single core thread will write data
  *   - control callbacks from a single IO thread
@@ -38,9 +43,13 @@ public class OutgoingStream implements ChannelFutureListener, AutoCloseable {
     private final long _timeout;
 
     // avoid pushing too many chunks into the channel
-    // TODO: leverage channel writable bit (w/ virtual channel per stream to reflect paused bit)
+    // in addition, stop pushing chunks once the channel is no longer writable, as long as some
+    // chunks of this stream are still in flight
     private final static int LO_WATERMARK = 10;
     private final static int HI_WATERMARK = 20;
+    // the same, in bytes, for large chunks (see DaemonParam.MAX_BULK_CHUNK_SIZE)
+    private final static long LO_WATERMARK_BYTES = 512 * C.KB;
+    private final static long HI_WATERMARK_BYTES = 1 * C.MB;
 
     int _seq;
 
@@ -56,6 +65,7 @@ public class OutgoingStream implements ChannelFutureListener, AutoCloseable {
 
     private volatile boolean _paused;
     private AtomicInteger _queued = new AtomicInteger();
+    private AtomicLong _queuedBytes = new AtomicLong();
 
     OutgoingStream(StreamManager sm, StreamKey sk, Channel channel, long timeout) {
         _sm = sm;
@@ -85,9 +95,23 @@ public class OutgoingStream implements ChannelFutureListener, AutoCloseable {
     }
 
     public void write(byte[] payload) throws IOException
+    {
+        writeAsync(payload);
+    }
+
+    /**
+     * Write a chunk without waiting for it to reach the wire
+     *
+     * Blocks only while the stream is paused, too many chunks are in flight or the underlying
+     * channel is not writable.
+     *
+     * @return a future that completes when the chunk has been written, after which the payload
+     * may safely be reused
+     */
+    public ChannelFuture writeAsync(byte[] payload) throws IOException
     {
         ElapsedTimer timer = new ElapsedTimer();
-        while (_paused || _queued.get() > HI_WATERMARK) {
+        while (shouldWait()) {
             if (timer.elapsed() >= _timeout) throw new IOException("stream timeout");
             synchronized (this) {
                 try {
@@ -101,8 +125,21 @@ public class OutgoingStream implements ChannelFutureListener, AutoCloseable {
         if (_state == State.FAILED) throw new ExStreamInvalid(_reason);
         if (_cause != null) Throwables.propagateIfPossible(_cause, IOException.class);
         _queued.getAndIncrement();
-        _channel.write(TransportProtocolUtil.newStreamPayload(_sk.strmid, ++_seq, payload))
-                .addListener(this);
+        _queuedBytes.addAndGet(payload.length);
+        ChannelFuture f = _channel.write(
+                TransportProtocolUtil.newStreamPayload(_sk.strmid, ++_seq, payload));
+        f.addListener(cf -> {
+            _queuedBytes.addAndGet(-payload.length);
+            operationComplete(cf);
+        });
+        return f;
+    }
+
+    private boolean shouldWait()
+    {
+        int queued = _queued.get();
+        return _paused || queued > HI_WATERMARK || _queuedBytes.get() > HI_WATERMARK_BYTES
+                || (queued > 0 && !_channel.isWritable());
     }
 
     // receiver abort
@@ -133,7 +170,9 @@ public class OutgoingStream implements ChannelFutureListener, AutoCloseable {
         if (!cf.isSuccess() && _cause == null) {
             _cause = cf.getCause();
         }
-        if (_queued.getAndDecrement() < LO_WATERMARK && !_paused) {
+        int queued = _queued.decrementAndGet();
+        if (((queued < LO_WATERMARK && _queuedBytes.get() < LO_WATERMARK_BYTES)
+                || _channel.isWritable()) && !_paused) {
             synchronized (this) { notify(); }
         }
     }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.transport.lib.handlers;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+
+import static com.aerofs.daemon.transport.lib.BootstrapFactoryUtil.FrameParams.BULK_FRAME_MARKER;
+import static com.aerofs.daemon.transport.lib.BootstrapFactoryUtil.FrameParams.BULK_LENGTH_FIELD_SIZE;
+import static com.aerofs.daemon.transport.lib.BootstrapFactoryUtil.FrameParams.LENGTH_FIELD_SIZE;
+
+/**
+ * Splits the incoming byte stream into frames prefixed by their length
+ *
+ * Regular frames have a 2-byte length field. Bulk frames, which are too large for it, have the
+ * reserved length {@link com.aerofs.daemon.transport.lib.BootstrapFactoryUtil.FrameParams#BULK_FRAME_MARKER}
+ * followed by a 4-byte length field. Peers only send bulk frames when asked to (see
+ * PBGetContentRequest.max_chunk_size) so this is backwards compatible.
+ *
+ * The length fields are stripped from the decoded frames.
+ */
+public final class FrameLengthDecoder extends FrameDecoder
+{
+    private final int _maxFrameLength;
+    private final int _maxBulkFrameLength;
+
+    public FrameLengthDecoder(int maxFrameLength, int maxBulkFrameLength)
+    {
+        _maxFrameLength = maxFrameLength;
+        _maxBulkFrameLength = maxBulkFrameLength;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer)
+            throws Exception
+    {
+        if (buffer.readableBytes() < LENGTH_FIELD_SIZE) return null;
+
+        int index = buffer.readerIndex();
+        int header = LENGTH_FIELD_SIZE;
+        int length = buffer.getUnsignedShort(index);
+
+        if (length == BULK_FRAME_MARKER) {
+            if (buffer.readableBytes() < LENGTH_FIELD_SIZE + BULK_LENGTH_FIELD_SIZE) return null;
+            header += BULK_LENGTH_FIELD_SIZE;
+            length = buffer.getInt(index + LENGTH_FIELD_SIZE);
+            if (length < 0 || length > _maxBulkFrameLength) {
+                throw new TooLongFrameException("bulk frame length exceeds " + _maxBulkFrameLength
+                        + ": " + (length & 0xffffffffL));
+            }
+        } else if (length > _maxFrameLength) {
+            throw new TooLongFrameException("frame length exceeds " + _maxFrameLength + ": " + length);
+        }
+
+        if (buffer.readableBytes() < header + length) return null;
+
+        // copy the frame: the cumulation buffer is reused for subsequent reads
+        ChannelBuffer frame = extractFrame(buffer, index + header, length);
+        buffer.readerIndex(index + header + length);
+        return frame;
+    }
+}
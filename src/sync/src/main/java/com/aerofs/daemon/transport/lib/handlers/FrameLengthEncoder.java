@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.transport.lib.handlers;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+import static com.aerofs.daemon.transport.lib.BootstrapFactoryUtil.FrameParams.BULK_FRAME_MARKER;
+import static com.aerofs.daemon.transport.lib.BootstrapFactoryUtil.FrameParams.BULK_LENGTH_FIELD_SIZE;
+import static com.aerofs.daemon.transport.lib.BootstrapFactoryUtil.FrameParams.LENGTH_FIELD_SIZE;
+import static org.jboss.netty.buffer.ChannelBuffers.wrappedBuffer;
+
+/**
+ * Prepends the length of each outgoing frame, see {@link FrameLengthDecoder}
+ *
+ * Frames larger than the regular maximum are sent as bulk frames. The header and the frame are
+ * wrapped in a composite buffer instead of being copied, which lets the socket use a gathering
+ * write when there is no TLS layer below.
+ */
+@Sharable
+public final class FrameLengthEncoder extends OneToOneEncoder
+{
+    private final int _maxFrameLength;
+
+    public FrameLengthEncoder(int maxFrameLength)
+    {
+        _maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg)
+            throws Exception
+    {
+        if (!(msg instanceof ChannelBuffer)) return msg;
+
+        ChannelBuffer body = (ChannelBuffer)msg;
+        int length = body.readableBytes();
+        ChannelBuffer header;
+        if (length <= _maxFrameLength) {
+            header = channel.getConfig().getBufferFactory()
+                    .getBuffer(body.order(), LENGTH_FIELD_SIZE);
+            header.writeShort(length);
+        } else {
+            header = channel.getConfig().getBufferFactory()
+                    .getBuffer(body.order(), LENGTH_FIELD_SIZE + BULK_LENGTH_FIELD_SIZE);
+            header.writeShort(BULK_FRAME_MARKER);
+            header.writeInt(length);
+        }
+        return wrappedBuffer(header, body);
+    }
+}
@@ -0,0 +1,103 @@
+package com.aerofs.lib.bf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.aerofs.ids.IBFKey;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Partitioned hash function for Bloom filters that come in several sizes, or scales.
+ *
+ * At scale 0 it maps to 4 partitions of 256 bits, exactly like BFHashPartBitSelect(1024, 4):
+ * the i-th output selects the bit given by the i-th byte of the key. Each scale doubles the size
+ * of the partitions, and the extra high-order bits of the outputs are taken from a mix of the
+ * remaining bytes of the key.
+ *
+ * The outputs at a given scale are therefore the outputs at any larger scale with the high-order
+ * bits masked out. This allows a key to be hashed once with {@link #select} and then probed
+ * against filters of any scale, and a filter to be folded down to a smaller scale by OR-ing the
+ * upper half of each partition into the lower half.
+ */
+public class BFHashScalable<E extends IBFKey> implements IBFHash<E>
+{
+    public static final int K = 4;
+    public static final int MAX_SCALE = 16;
+
+    // width of the outputs at scale 0: one byte of the key
+    private static final int BASE_WIDTH = Byte.SIZE;
+
+    private final int _scale;
+    private final int _partition; // number of bits in each partition
+
+    public BFHashScalable(int scale)
+    {
+        checkArgument(scale >= 0 && scale <= MAX_SCALE, scale);
+        _scale = scale;
+        _partition = 1 << (BASE_WIDTH + scale);
+    }
+
+    public int scale()
+    {
+        return _scale;
+    }
+
+    @Override
+    public int length()
+    {
+        return K * _partition;
+    }
+
+    @Override
+    public int[] hash(E element)
+    {
+        return index(select(element));
+    }
+
+    /**
+     * @param selected the output of {@link #select} for some key
+     * @return the indices of the bits of the key in a filter of this scale
+     */
+    public int[] index(int[] selected)
+    {
+        int[] hashes = new int[K];
+        for (int i = 0; i < K; i++) {
+            hashes[i] = i * _partition + (selected[i] & (_partition - 1));
+        }
+        return hashes;
+    }
+
+    /**
+     * @return the outputs of the hash function at MAX_SCALE, relative to the start of each
+     * partition
+     */
+    public static int[] select(IBFKey key)
+    {
+        ByteBuffer bb = key.getReadOnlyByteBuffer();
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        assert bb.limit() >= 16;
+
+        long x = fmix64(bb.getLong(8) * 0x9e3779b97f4a7c15L + bb.getInt(4));
+
+        int[] selected = new int[K];
+        for (int i = 0; i < K; i++) {
+            int ext = (int)(x >>> (16 * i)) & 0xffff;
+            selected[i] = (bb.get(i) & 0xff) | (ext << BASE_WIDTH);
+        }
+        return selected;
+    }
+
+    /**
+     * Finalization mix of MurmurHash3, so that every bit of the input affects every output bit
+     */
+    private static long fmix64(long k)
+    {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -1,40 +1,97 @@
 package com.aerofs.lib.bf;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 import com.aerofs.ids.OID;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * The bloom filter for OIDs
+ *
+ * The legacy filter has a fixed size of 1024 bits, and saturates in stores with more than a few
+ * hundred objects: it then claims to contain every object. This filter is large enough for
+ * millions of objects (see {@link #SCALE}) but its size tracks the number of objects it
+ * contains: the bits set are kept in a compressed bitmap (see {@link CompressedBitSet}) and
+ * encoded as their list (see {@link #toPB()}).
+ *
+ * All filters have the same scale, so unions are as precise as the filter of all the objects.
+ * The hash function is that of the legacy filter at a larger scale (see {@link BFHashScalable})
+ * so the filter can be folded into a legacy filter for older peers. Legacy filters received from
+ * them, or persisted by older versions, are kept separately: an object is contained in the filter
+ * if it is contained in either part.
  */
-public class BFOID extends BloomFilter<OID>
+public class BFOID
 {
     /**
      * Using k=4 and m=1024, we can achieve 1% false positive rate (P) for
      * 100 files (n). The equation is:
      *
      * P = ((1-(1-k/m)^n)^k
+     *
+     * This is the hash of the legacy fixed-size filter.
+     */
+    public final static BFHashScalable<OID> HASH = new BFHashScalable<>(0);
+
+    /**
+     * Using k=4 and m=2^24, we can achieve 1% false positive rate for 1.6 million files and
+     * 5% for 2.7 million. In memory, this takes about 8 bytes per object for up to 250K objects,
+     * and at most 2MB beyond that.
      */
-    public final static BFHashPartBitSelect<OID> HASH =
-            new BFHashPartBitSelect<OID>(1024, 4);
+    static final int SCALE = 14;
+    private static final BFHashScalable<OID> SCALED = new BFHashScalable<>(SCALE);
+
+    // a legacy filter is encoded as its raw bits
+    private static final int LEGACY_BYTES = HASH.length() / Byte.SIZE;
+
+    // first byte of the scalable encoding
+    private static final int FORMAT_SCALABLE = 1;
+    // flags of the scalable encoding
+    private static final int HAS_LEGACY = 1;
+
+    // legacy part, null if none
+    private @Nullable BloomFilter<OID> _legacy;
+
+    // bits set at SCALE
+    private final CompressedBitSet _bits;
+
+    private boolean _finalized; // for debugging only, see BloomFilter
+    private ByteString _pb;     // a cached value. invalidated on updates
 
     public BFOID(BFOID bf)
     {
-        super(bf);
+        if (bf._legacy != null) _legacy = new BloomFilter<>(bf._legacy);
+        _bits = new CompressedBitSet(bf._bits);
     }
 
+    /**
+     * @param bs either encoding, see {@link #toPB()} and {@link #toLegacyPB()}
+     */
     public BFOID(byte[] bs)
     {
-        super(bs, HASH);
+        _bits = new CompressedBitSet(SCALED.length());
+        if (bs.length == LEGACY_BYTES) {
+            _legacy = new BloomFilter<>(bs, HASH);
+        } else {
+            decode(bs);
+        }
     }
 
     public BFOID()
     {
-        super(HASH);
+        _bits = new CompressedBitSet(SCALED.length());
     }
 
     public BFOID(ByteString bs)
     {
-        super(bs, HASH);
+        this(bs.toByteArray());
+        if (bs.size() != LEGACY_BYTES) _pb = bs;
     }
 
     public static BFOID of(OID... objects)
@@ -43,4 +100,309 @@ public class BFOID extends BloomFilter<OID>
         for (OID o : objects) bf.add_(o);
         return bf;
     }
+
+    /**
+     * @return the value to pass to {@link #contains_(int[])}, to avoid hashing the same object
+     * for every filter it is tested against
+     */
+    public static int[] hash(OID oid)
+    {
+        return BFHashScalable.select(oid);
+    }
+
+    /**
+     * @return true if one or more bits are updated
+     * N.B. returning false doesn't necessarily mean that the element already
+     * exists in the filter
+     */
+    public boolean add_(OID oid)
+    {
+        assert !_finalized;
+        int[] indexes = SCALED.hash(oid);
+
+        boolean updated = false;
+        for (int idx : indexes) {
+            if (_bits.add(idx)) updated = true;
+        }
+
+        if (updated) _pb = null;
+        return updated;
+    }
+
+    /**
+     * Union with another filter. This filter is overwritten with the union result.
+     * N.B. returning false doesn't necessarily mean that the elements
+     * contained in bf already exist in 'this' filter.
+     * @return true if one or more bits are updated
+     */
+    public boolean union_(BFOID bf)
+    {
+        assert !_finalized;
+
+        boolean updated = false;
+        if (bf._legacy != null && !bf._legacy.isEmpty_()) {
+            if (_legacy == null) {
+                _legacy = new BloomFilter<>(bf._legacy);
+                updated = true;
+            } else if (_legacy.union_(bf._legacy)) {
+                updated = true;
+            }
+        }
+
+        if (_bits.union(bf._bits)) updated = true;
+
+        if (updated) _pb = null;
+        return updated;
+    }
+
+    public boolean contains_(OID oid)
+    {
+        return contains_(hash(oid));
+    }
+
+    /**
+     * @param selected the value returned by {@link #hash(OID)}
+     */
+    public boolean contains_(int[] selected)
+    {
+        if (_legacy != null && _legacy.contains_(HASH.index(selected))) return true;
+
+        for (int idx : SCALED.index(selected)) {
+            if (!_bits.contains(idx)) return false;
+        }
+        return true;
+    }
+
+    public boolean isEmpty_()
+    {
+        if (_legacy != null && !_legacy.isEmpty_()) return false;
+        return _bits.cardinality() == 0;
+    }
+
+    public void finalize_()
+    {
+        _finalized = true;
+        if (_legacy != null) _legacy.finalize_();
+    }
+
+    /**
+     * @return number of bits set, not counting the legacy part
+     */
+    private int cardinality()
+    {
+        return _bits.cardinality();
+    }
+
+    /**
+     * @return an estimate of the heap used by the filter, in bytes
+     */
+    long heapSize()
+    {
+        return _bits.heapSize() + (_legacy != null ? 16 + LEGACY_BYTES : 0);
+    }
+
+    /**
+     * @return the scalable encoding, see {@link #toPB()}
+     */
+    public byte[] getBytes()
+    {
+        return toPB().toByteArray();
+    }
+
+    /**
+     * The scalable encoding:
+     *
+     *  byte    FORMAT_SCALABLE
+     *  byte    flags
+     *  bytes   the legacy part, if the HAS_LEGACY flag is set
+     *  varint  number of bits set
+     *  byte    parameter k of the Rice code
+     *  bits    Rice code of the gaps between successive bits set, in increasing order
+     *
+     * With the parameter set after the average gap, each bit set takes about log2(m/n) + 1.5
+     * bits, i.e. 7 bytes per object for small filters and down to 2 bytes per object for large
+     * ones. An encoding that happens to be as long as a legacy filter is padded with an extra
+     * byte so that it is not mistaken for one.
+     */
+    public ByteString toPB()
+    {
+        if (_pb != null) return _pb;
+
+        ByteString.Output bso = ByteString.newOutput();
+        CodedOutputStream out = CodedOutputStream.newInstance(bso);
+        try {
+            out.writeRawByte(FORMAT_SCALABLE);
+            out.writeRawByte(_legacy != null ? HAS_LEGACY : 0);
+            if (_legacy != null) out.writeRawBytes(_legacy.getBytes());
+
+            int n = cardinality();
+            int k = riceParameter(SCALED.length(), n);
+            out.writeRawVarint32(n);
+            out.writeRawByte(k);
+
+            BitWriter bw = new BitWriter(out);
+            int prev = -1;
+            for (int idx = _bits.nextSetBit(0); idx >= 0; idx = _bits.nextSetBit(idx + 1)) {
+                bw.rice(idx - prev - 1, k);
+                prev = idx;
+            }
+            bw.flush();
+            out.flush();
+            if (bso.size() == LEGACY_BYTES) bso.write(0);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        _pb = bso.toByteString();
+        return _pb;
+    }
+
+    private void decode(byte[] bs)
+    {
+        CodedInputStream in = CodedInputStream.newInstance(bs);
+        try {
+            checkArgument(in.readRawByte() == FORMAT_SCALABLE, "unknown bf format");
+            int flags = in.readRawByte();
+            if ((flags & HAS_LEGACY) != 0) {
+                _legacy = new BloomFilter<>(in.readRawBytes(LEGACY_BYTES), HASH);
+            }
+
+            int m = SCALED.length();
+            int n = in.readRawVarint32();
+            int k = in.readRawByte();
+            checkArgument(n >= 0 && n <= m && k >= 0 && k < 31, "invalid bf %s %s", n, k);
+
+            BitReader br = new BitReader(in);
+            int prev = -1;
+            for (int i = 0; i < n; i++) {
+                int idx = prev + 1 + br.rice(k, m);
+                checkArgument(idx > prev && idx < m, "invalid bit %s", idx);
+                _bits.add(idx);
+                prev = idx;
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid bf", e);
+        }
+    }
+
+    /**
+     * @return the Rice parameter that minimizes the size of n gaps summing to about m
+     */
+    private static int riceParameter(int m, int n)
+    {
+        long gap = (long)(0.69 * m / Math.max(n, 1));
+        return gap <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(gap);
+    }
+
+    private static class BitWriter
+    {
+        private final CodedOutputStream _out;
+        private int _acc;
+        private int _bits;
+
+        BitWriter(CodedOutputStream out)
+        {
+            _out = out;
+        }
+
+        void rice(int v, int k) throws IOException
+        {
+            for (int q = v >>> k; q > 0; q--) write(1);
+            write(0);
+            for (int b = k - 1; b >= 0; b--) write((v >>> b) & 1);
+        }
+
+        private void write(int bit) throws IOException
+        {
+            _acc = (_acc << 1) | bit;
+            if (++_bits == Byte.SIZE) {
+                _out.writeRawByte(_acc);
+                _acc = 0;
+                _bits = 0;
+            }
+        }
+
+        void flush() throws IOException
+        {
+            if (_bits > 0) _out.writeRawByte(_acc << (Byte.SIZE - _bits));
+        }
+    }
+
+    private static class BitReader
+    {
+        private final CodedInputStream _in;
+        private int _acc;
+        private int _bits;
+
+        BitReader(CodedInputStream in)
+        {
+            _in = in;
+        }
+
+        int rice(int k, int max) throws IOException
+        {
+            int q = 0;
+            while (read() == 1) {
+                // guard against garbage
+                checkArgument(++q <= (max >>> k), "invalid bf gap");
+            }
+            int v = q;
+            for (int b = 0; b < k; b++) v = (v << 1) | read();
+            return v;
+        }
+
+        private int read() throws IOException
+        {
+            if (_bits == 0) {
+                _acc = _in.readRawByte() & 0xFF;
+                _bits = Byte.SIZE;
+            }
+            return (_acc >>> --_bits) & 1;
+        }
+    }
+
+    /**
+     * Fold the filter into a legacy filter, for peers that predate scalable filters. Folding
+     * loses precision: the result is the legacy filter of the same objects.
+     */
+    public ByteString toLegacyPB()
+    {
+        byte[] legacy = _legacy != null
+                ? Arrays.copyOf(_legacy.getBytes(), LEGACY_BYTES)
+                : new byte[LEGACY_BYTES];
+
+        // bit indices are folded modulo the size of the legacy partitions, i.e. 256 bits
+        int partition = LEGACY_BYTES / BFHashScalable.K * Byte.SIZE;
+        int from = SCALED.length() / BFHashScalable.K;
+        for (int i = _bits.nextSetBit(0); i >= 0; i = _bits.nextSetBit(i + 1)) {
+            int idx = (i / from) * partition + (i % from) % partition;
+            legacy[idx / Byte.SIZE] |= 1 << (idx % Byte.SIZE);
+        }
+        return ByteString.copyFrom(legacy);
+    }
+
+    @Override
+    public String toString()
+    {
+        return (_legacy != null ? _legacy + " " : "") + cardinality() + "/" + SCALED.length();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * (_legacy != null ? _legacy.cardinality() : 0) + cardinality();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this) return true;
+        if (o == null || !(o instanceof BFOID)) return false;
+        BFOID bf = (BFOID)o;
+        byte[] empty = new byte[LEGACY_BYTES];
+        if (!Arrays.equals(_legacy != null ? _legacy.getBytes() : empty,
+                bf._legacy != null ? bf._legacy.getBytes() : empty)) {
+            return false;
+        }
+        return _bits.equals(bf._bits);
+    }
 }
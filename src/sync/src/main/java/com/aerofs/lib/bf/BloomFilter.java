@@ -18,6 +18,7 @@ public class BloomFilter<E> {
     private boolean _finalized; // for debugging only, to prevent finalized
                                 // filters to be modified in the future
     private ByteString _pb;     // a cached value. invalidated on updates
+    private int _cardinality = -1; // a cached value. -1 if unknown
 
     /**
       * Constructs an empty Bloom filter.
@@ -51,6 +52,7 @@ public class BloomFilter<E> {
     {
         _hf = bf._hf;
         _bs = Arrays.copyOf(bf._bs, bf._bs.length);
+        _cardinality = bf._cardinality;
     }
 
     /**
@@ -95,6 +97,7 @@ public class BloomFilter<E> {
 
         Arrays.fill(_bs, (byte) 0xFF);
         _pb = null;
+        _cardinality = length();
     }
 
     /**
@@ -125,7 +128,10 @@ public class BloomFilter<E> {
             }
         }
 
-        if (updated) _pb = null;
+        if (updated) {
+            _pb = null;
+            _cardinality = -1;
+        }
         return updated;
     }
 
@@ -162,6 +168,19 @@ public class BloomFilter<E> {
         return _hf.length();
     }
 
+    /**
+     * @return number of bits set
+     */
+    public int cardinality()
+    {
+        if (_cardinality == -1) {
+            int n = 0;
+            for (byte b : _bs) n += Integer.bitCount(b & 0xFF);
+            _cardinality = n;
+        }
+        return _cardinality;
+    }
+
     public byte[] getBytes()
     {
         return _bs;
@@ -192,6 +211,7 @@ public class BloomFilter<E> {
 
         if (before != after) {
             _bs[block] = after;
+            if (_cardinality != -1) ++_cardinality;
             return true;
         } else {
             return false;
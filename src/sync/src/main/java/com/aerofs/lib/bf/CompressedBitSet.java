@@ -0,0 +1,284 @@
+package com.aerofs.lib.bf;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Set of bit indices, whose memory footprint tracks the number of bits set rather than the length
+ *
+ * The bits are split in chunks of 2^16 by their high-order bits, which are allocated on first
+ * use. A chunk keeps the sorted low-order bits of its indices, i.e. 2 bytes per bit set, and
+ * switches to a plain 8KB bitmap once that is smaller (as in Roaring bitmaps). The footprint is
+ * thus never larger than that of a plain bitmap of the same length.
+ */
+final class CompressedBitSet
+{
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_LENGTH = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_LENGTH - 1;
+
+    // beyond this many bits set, a bitmap is smaller than the list of their indices
+    private static final int ARRAY_MAX = CHUNK_LENGTH / Character.SIZE;
+
+    private final Chunk[] _chunks;
+    private int _cardinality;
+
+    CompressedBitSet(int length)
+    {
+        checkArgument(length > 0 && length % CHUNK_LENGTH == 0, "invalid length %s", length);
+        _chunks = new Chunk[length >>> CHUNK_BITS];
+    }
+
+    CompressedBitSet(CompressedBitSet bs)
+    {
+        _chunks = new Chunk[bs._chunks.length];
+        for (int i = 0; i < _chunks.length; i++) {
+            if (bs._chunks[i] != null) _chunks[i] = new Chunk(bs._chunks[i]);
+        }
+        _cardinality = bs._cardinality;
+    }
+
+    int length()
+    {
+        return _chunks.length << CHUNK_BITS;
+    }
+
+    int cardinality()
+    {
+        return _cardinality;
+    }
+
+    /**
+     * @return true if the bit was not already set
+     */
+    boolean add(int idx)
+    {
+        Chunk c = _chunks[idx >>> CHUNK_BITS];
+        if (c == null) c = _chunks[idx >>> CHUNK_BITS] = new Chunk();
+        if (!c.add((char)(idx & CHUNK_MASK))) return false;
+        ++_cardinality;
+        return true;
+    }
+
+    boolean contains(int idx)
+    {
+        Chunk c = _chunks[idx >>> CHUNK_BITS];
+        return c != null && c.contains((char)(idx & CHUNK_MASK));
+    }
+
+    /**
+     * @return true if one or more bits are added
+     */
+    boolean union(CompressedBitSet bs)
+    {
+        checkArgument(bs._chunks.length == _chunks.length);
+        boolean updated = false;
+        for (int i = 0; i < _chunks.length; i++) {
+            Chunk o = bs._chunks[i];
+            if (o == null) continue;
+            if (_chunks[i] == null) {
+                _chunks[i] = new Chunk(o);
+                _cardinality += o._n;
+                updated = true;
+            } else {
+                int n = _chunks[i]._n;
+                _chunks[i].union(o);
+                _cardinality += _chunks[i]._n - n;
+                if (_chunks[i]._n > n) updated = true;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * @return the index of the first bit set at or after from, -1 if none
+     */
+    int nextSetBit(int from)
+    {
+        int low = from & CHUNK_MASK;
+        for (int i = from >>> CHUNK_BITS; i < _chunks.length; i++, low = 0) {
+            if (_chunks[i] == null) continue;
+            int next = _chunks[i].next(low);
+            if (next >= 0) return (i << CHUNK_BITS) | next;
+        }
+        return -1;
+    }
+
+    /**
+     * @return an estimate of the heap used, in bytes
+     */
+    long heapSize()
+    {
+        long size = 16 + 16 + 4L * _chunks.length;
+        for (Chunk c : _chunks) if (c != null) size += c.heapSize();
+        return size;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return _cardinality;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this) return true;
+        if (!(o instanceof CompressedBitSet)) return false;
+        CompressedBitSet bs = (CompressedBitSet)o;
+        if (bs._chunks.length != _chunks.length || bs._cardinality != _cardinality) return false;
+        for (int i = 0; i < _chunks.length; i++) {
+            Chunk a = _chunks[i];
+            Chunk b = bs._chunks[i];
+            if (a == null || b == null) {
+                if ((a != null && a._n > 0) || (b != null && b._n > 0)) return false;
+            } else if (!a.equals(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Chunk
+    {
+        // sorted low-order bits of the indices set, null once the bitmap is used
+        private char[] _array;
+        private long[] _bitmap;
+        private int _n;
+
+        Chunk()
+        {
+            _array = new char[4];
+        }
+
+        Chunk(Chunk c)
+        {
+            if (c._array != null) _array = Arrays.copyOf(c._array, Math.max(c._n, 4));
+            if (c._bitmap != null) _bitmap = c._bitmap.clone();
+            _n = c._n;
+        }
+
+        boolean add(char low)
+        {
+            if (_bitmap != null) {
+                long w = _bitmap[low >>> 6];
+                if ((w & (1L << low)) != 0) return false;
+                _bitmap[low >>> 6] = w | (1L << low);
+                ++_n;
+                return true;
+            }
+
+            int pos = Arrays.binarySearch(_array, 0, _n, low);
+            if (pos >= 0) return false;
+            if (_n == ARRAY_MAX) {
+                toBitmap();
+                return add(low);
+            }
+            pos = -(pos + 1);
+            if (_n == _array.length) _array = Arrays.copyOf(_array, Math.min(2 * _n, ARRAY_MAX));
+            System.arraycopy(_array, pos, _array, pos + 1, _n - pos);
+            _array[pos] = low;
+            ++_n;
+            return true;
+        }
+
+        boolean contains(char low)
+        {
+            return _bitmap != null
+                    ? (_bitmap[low >>> 6] & (1L << low)) != 0
+                    : Arrays.binarySearch(_array, 0, _n, low) >= 0;
+        }
+
+        void union(Chunk c)
+        {
+            if (c._bitmap != null) {
+                if (_bitmap == null) toBitmap();
+                int n = 0;
+                for (int i = 0; i < _bitmap.length; i++) {
+                    _bitmap[i] |= c._bitmap[i];
+                    n += Long.bitCount(_bitmap[i]);
+                }
+                _n = n;
+            } else if (_bitmap != null) {
+                for (int i = 0; i < c._n; i++) add(c._array[i]);
+            } else {
+                merge(c._array, c._n);
+            }
+        }
+
+        private void merge(char[] other, int count)
+        {
+            char[] merged = new char[Math.max(_n + count, 4)];
+            int i = 0, j = 0, n = 0;
+            while (i < _n && j < count) {
+                if (_array[i] < other[j]) {
+                    merged[n++] = _array[i++];
+                } else if (_array[i] > other[j]) {
+                    merged[n++] = other[j++];
+                } else {
+                    merged[n++] = _array[i++];
+                    j++;
+                }
+            }
+            while (i < _n) merged[n++] = _array[i++];
+            while (j < count) merged[n++] = other[j++];
+
+            _array = merged;
+            _n = n;
+            if (_n > ARRAY_MAX) toBitmap();
+        }
+
+        private void toBitmap()
+        {
+            _bitmap = new long[CHUNK_LENGTH / Long.SIZE];
+            for (int i = 0; i < _n; i++) _bitmap[_array[i] >>> 6] |= 1L << _array[i];
+            _array = null;
+        }
+
+        /**
+         * @return the first low-order bit set at or after from, -1 if none
+         */
+        int next(int from)
+        {
+            if (from >= CHUNK_LENGTH) return -1;
+            if (_bitmap != null) {
+                int i = from >>> 6;
+                long w = _bitmap[i] & (-1L << from);
+                while (w == 0) {
+                    if (++i == _bitmap.length) return -1;
+                    w = _bitmap[i];
+                }
+                return i * Long.SIZE + Long.numberOfTrailingZeros(w);
+            }
+            int pos = Arrays.binarySearch(_array, 0, _n, (char)from);
+            if (pos < 0) pos = -(pos + 1);
+            return pos < _n ? _array[pos] : -1;
+        }
+
+        long heapSize()
+        {
+            return 16 + 4 + 4 + 4 + (_array != null
+                    ? 16 + 2L * _array.length
+                    : 16 + 8L * _bitmap.length);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _n;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Chunk)) return false;
+            Chunk c = (Chunk)o;
+            if (c._n != _n) return false;
+            for (int low = next(0); low >= 0; low = next(low + 1)) {
+                if (!c.contains((char)low)) return false;
+            }
+            return true;
+        }
+    }
+}
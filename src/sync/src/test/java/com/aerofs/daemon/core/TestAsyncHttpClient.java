@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core;
+
+import com.aerofs.base.ssl.SSLEngineFactory;
+import com.aerofs.base.ssl.SSLEngineFactory.Mode;
+import com.aerofs.base.ssl.SSLEngineFactory.Platform;
+import com.aerofs.daemon.core.polaris.async.AsyncTaskCallback;
+import com.aerofs.ids.DID;
+import com.aerofs.ids.UniqueID;
+import com.aerofs.ids.UserID;
+import com.aerofs.lib.event.Prio;
+import com.aerofs.testlib.AbstractTest;
+import com.aerofs.testlib.TempCert;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpServerCodec;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestAsyncHttpClient extends AbstractTest
+{
+    private final Timer timer = new HashedWheelTimer();
+    private final ClientSocketChannelFactory clientChannelFactory =
+            new NioClientSocketChannelFactory(newCachedThreadPool(), newCachedThreadPool(), 1, 2);
+    private final TempCert ca = TempCert.generateCA();
+    private final UserID user = UserID.fromInternal("foo@bar.baz");
+    private final DID did = DID.generate();
+
+    private ServerBootstrap server;
+    private int port;
+
+    // requests received by the server, which only responds when told to
+    private final BlockingQueue<Received> received = new LinkedBlockingQueue<>();
+    private final Set<Channel> connections =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private static class Received
+    {
+        final Channel channel;
+        final String uri;
+
+        Received(Channel channel, String uri)
+        {
+            this.channel = channel;
+            this.uri = uri;
+        }
+
+        void respond()
+        {
+            HttpResponse resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+                    HttpResponseStatus.OK);
+            resp.headers().set(HttpHeaders.Names.CONTENT_LENGTH, 0);
+            channel.write(resp);
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        TempCert cert = TempCert.generateDaemon(UserID.DUMMY, new DID(UniqueID.ZERO), ca);
+        SSLEngineFactory ssl = SSLEngineFactory.newServerFactory(cert, ca);
+        server = new ServerBootstrap(
+                new NioServerSocketChannelFactory(newCachedThreadPool(), newCachedThreadPool()));
+        server.setPipelineFactory(() -> Channels.pipeline(
+                ssl.newSslHandler(),
+                new HttpServerCodec(),
+                new HttpChunkAggregator(1024 * 1024),
+                new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e)
+                    {
+                        connections.add(ctx.getChannel());
+                    }
+
+                    @Override
+                    public void messageReceived(ChannelHandlerContext ctx, MessageEvent ev)
+                    {
+                        HttpRequest req = (HttpRequest)ev.getMessage();
+                        received.add(new Received(ctx.getChannel(), req.getUri()));
+                    }
+                }));
+        Channel c = server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        port = ((InetSocketAddress)c.getLocalAddress()).getPort();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.releaseExternalResources();
+        clientChannelFactory.releaseExternalResources();
+        timer.stop();
+        ca.cleanup();
+    }
+
+    private AsyncHttpClient newClient(int maxConnections)
+    {
+        SSLEngineFactory ssl = new SSLEngineFactory(Mode.Client, Platform.Desktop,
+                TempCert.generateDaemon(user, did, ca), ca, null);
+        return new AsyncHttpClient(URI.create("https://localhost:" + port),
+                MoreExecutors.sameThreadExecutor(), new AsyncHttpClient.Auth(user, did), timer,
+                clientChannelFactory, ssl, maxConnections);
+    }
+
+    private static SettableFuture<Integer> get(AsyncHttpClient client, String uri)
+    {
+        HttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+        req.headers().set(HttpHeaders.Names.CONTENT_LENGTH, 0);
+        SettableFuture<Integer> f = SettableFuture.create();
+        client.send(req, r -> r.getStatus().getCode(), callback(f));
+        return f;
+    }
+
+    private static SettableFuture<Integer> post(AsyncHttpClient client, String uri, Prio prio)
+    {
+        SettableFuture<Integer> f = SettableFuture.create();
+        client.post(uri, Collections.emptyMap(), prio, new AsyncTaskCallback() {
+            @Override
+            public void onSuccess_(boolean hasMore)
+            {
+                f.set(200);
+            }
+
+            @Override
+            public void onFailure_(Throwable t)
+            {
+                f.setException(t);
+            }
+        }, r -> false);
+        return f;
+    }
+
+    private static FutureCallback<Integer> callback(SettableFuture<Integer> f)
+    {
+        return new FutureCallback<Integer>() {
+            @Override
+            public void onSuccess(Integer status)
+            {
+                f.set(status);
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                f.setException(t);
+            }
+        };
+    }
+
+    private Received receive() throws InterruptedException
+    {
+        Received r = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(r);
+        return r;
+    }
+
+    private void expectNothingReceived() throws InterruptedException
+    {
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldNotOpenMoreConnectionsThanPoolSize() throws Exception
+    {
+        AsyncHttpClient client = newClient(2);
+
+        List<SettableFuture<Integer>> responses = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            responses.add(post(client, "/submit/" + i, Prio.HI));
+        }
+
+        Received r0 = receive();
+        Received r1 = receive();
+        expectNothingReceived();
+        assertEquals(2, connections.size());
+        assertEquals(2, client.connections());
+        assertEquals(2, client.inFlight());
+        assertEquals(3, client.queueDepth());
+
+        r0.respond();
+        r1.respond();
+        for (int i = 0; i < 3; ++i) receive().respond();
+        for (SettableFuture<Integer> f : responses) assertEquals(200, (int)f.get(5, TimeUnit.SECONDS));
+
+        // every request reused one of the two connections
+        assertEquals(2, connections.size());
+        assertEquals(5, client.completed());
+        assertEquals(0, client.queueDepth());
+    }
+
+    @Test
+    public void shouldPipelineIdempotentRequestsWhenPoolIsFull() throws Exception
+    {
+        AsyncHttpClient client = newClient(1);
+
+        List<SettableFuture<Integer>> responses = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) responses.add(get(client, "/fetch/" + i));
+
+        // all sent on the single connection without waiting for responses
+        List<Received> pipelined = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) pipelined.add(receive());
+        for (Received r : pipelined) assertEquals(pipelined.get(0).channel, r.channel);
+        assertEquals(3, client.inFlight());
+
+        // a submission waits for the connection to be idle
+        SettableFuture<Integer> submit = post(client, "/submit", Prio.HI);
+        expectNothingReceived();
+        assertEquals(1, client.queueDepth());
+
+        // responses are matched to requests in order
+        for (Received r : pipelined) r.respond();
+        for (SettableFuture<Integer> f : responses) assertEquals(200, (int)f.get(5, TimeUnit.SECONDS));
+
+        Received r = receive();
+        assertTrue(r.uri.endsWith("/submit"));
+        r.respond();
+        assertEquals(200, (int)submit.get(5, TimeUnit.SECONDS));
+        assertEquals(1, connections.size());
+    }
+
+    @Test
+    public void shouldSendHigherPriorityRequestsFirst() throws Exception
+    {
+        AsyncHttpClient client = newClient(1);
+
+        SettableFuture<Integer> first = post(client, "/first", Prio.HI);
+        Received r = receive();
+        assertTrue(r.uri.endsWith("/first"));
+
+        // queued while the only connection is busy with a non-idempotent request
+        post(client, "/bulk/0", Prio.LO);
+        post(client, "/bulk/1", Prio.LO);
+        post(client, "/urgent", Prio.HI);
+        expectNothingReceived();
+        assertEquals(3, client.queueDepth());
+
+        r.respond();
+        assertEquals(200, (int)first.get(5, TimeUnit.SECONDS));
+
+        for (String expected : new String[] { "/urgent", "/bulk/0", "/bulk/1" }) {
+            r = receive();
+            assertTrue(r.uri, r.uri.endsWith(expected));
+            r.respond();
+        }
+    }
+}
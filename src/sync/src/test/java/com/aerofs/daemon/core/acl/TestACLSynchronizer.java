@@ -50,6 +50,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 
 import static com.aerofs.daemon.core.store.IStoreJoiner.StoreInfo;
 import static org.junit.Assert.assertEquals;
@@ -90,6 +91,7 @@ public class TestACLSynchronizer extends AbstractTest
     UserID user2 = UserID.fromInternal("user2@foo.bar");
 
     SID sid1 = SID.generate();
+    SID sid2 = SID.generate();
 
     private final boolean external;
     private final String SHARED_FOLDER_NAME = "shared";
@@ -153,7 +155,16 @@ public class TestACLSynchronizer extends AbstractTest
     {
         GetACLReply.Builder bd = GetACLReply.newBuilder().setEpoch(epoch);
         for (PBStoreACL acl : acls) bd.addStoreAcl(acl);
-        when(spClient.getACL(anyLong())).thenReturn(bd.build());
+        when(spClient.getACL(anyLong(), anyBoolean())).thenReturn(bd.build());
+    }
+
+    private void mockGetIncrementalACL(long epoch, Collection<SID> left, PBStoreACL... acls)
+            throws Exception
+    {
+        GetACLReply.Builder bd = GetACLReply.newBuilder().setEpoch(epoch).setIncremental(true);
+        for (PBStoreACL acl : acls) bd.addStoreAcl(acl);
+        for (SID sid : left) bd.addLeftStoreId(BaseUtil.toPB(sid));
+        when(spClient.getACL(anyLong(), anyBoolean())).thenReturn(bd.build());
     }
 
     @Test
@@ -170,13 +181,13 @@ public class TestACLSynchronizer extends AbstractTest
     public void shouldGetACLOnDifferentEpoch() throws Exception
     {
         adb.setEpoch_(10L, t);
-        when(spClient.getACL(anyLong()))
+        when(spClient.getACL(anyLong(), anyBoolean()))
                 .thenReturn(GetACLReply.newBuilder().setEpoch(15L).build());
 
         aclsync.syncToLocal_(12L);
 
         verify(spClient).signInRemote();
-        verify(spClient).getACL(10L);
+        verify(spClient).getACL(10L, true);
         assertEquals(15L, adb.getEpoch_());
     }
 
@@ -184,7 +195,7 @@ public class TestACLSynchronizer extends AbstractTest
     public void shouldGetACLOnDifferentEpochAndRetry() throws Exception
     {
         adb.setEpoch_(10L, t);
-        when(spClient.getACL(anyLong()))
+        when(spClient.getACL(anyLong(), anyBoolean()))
                 .thenReturn(GetACLReply.newBuilder().setEpoch(15L).build());
 
         try {
@@ -192,7 +203,7 @@ public class TestACLSynchronizer extends AbstractTest
             fail();
         } catch (ExponentialRetry.ExRetryLater e) {
             verify(spClient).signInRemote();
-            verify(spClient).getACL(10L);
+            verify(spClient).getACL(10L, true);
             assertEquals(15L, adb.getEpoch_());
         }
     }
@@ -278,7 +289,7 @@ public class TestACLSynchronizer extends AbstractTest
 
         aclsync.syncToLocal_();
 
-        verify(spClient).getACL(anyLong());
+        verify(spClient).getACL(anyLong(), anyBoolean());
 
         verify(storeJoiner).joinStore_(eq(sidx), eq(sid1), sf(SHARED_FOLDER_NAME, external),
                 eq(t));
@@ -329,7 +340,7 @@ public class TestACLSynchronizer extends AbstractTest
 
         aclsync.syncToLocal_();
 
-        verify(spClient).getACL(anyLong());
+        verify(spClient).getACL(anyLong(), anyBoolean());
         verify(storeJoiner).leaveStore_(sidx, sid1, t);
     }
 
@@ -346,7 +357,7 @@ public class TestACLSynchronizer extends AbstractTest
 
         aclsync.syncToLocal_();
 
-        verify(spClient).getACL(anyLong());
+        verify(spClient).getACL(anyLong(), anyBoolean());
 
         verify(storeJoiner, never()).joinStore_(eq(sidx), eq(sid1), sf(SHARED_FOLDER_NAME, external),
                 eq(t));
@@ -366,7 +377,7 @@ public class TestACLSynchronizer extends AbstractTest
 
         aclsync.syncToLocal_();
 
-        verify(spClient).getACL(anyLong());
+        verify(spClient).getACL(anyLong(), anyBoolean());
         verify(storeJoiner).leaveStore_(sidx, sid1, t);
     }
 
@@ -383,7 +394,7 @@ public class TestACLSynchronizer extends AbstractTest
 
         aclsync.syncToLocal_();
 
-        verify(spClient).getACL(anyLong());
+        verify(spClient).getACL(anyLong(), anyBoolean());
         verifyNoMoreInteractions(storeJoiner);
     }
 
@@ -398,7 +409,96 @@ public class TestACLSynchronizer extends AbstractTest
 
         aclsync.syncToLocal_();
 
-        verify(spClient).getACL(anyLong());
+        verify(spClient).getACL(anyLong(), anyBoolean());
         verify(storeJoiner).leaveStore_(sidx, sid1, t);
     }
+
+    @Test
+    public void shouldOnlyUpdateChangedStoresOnIncrementalUpdate() throws Exception
+    {
+        SIndex sidx1 = new SIndex(2);
+        SIndex sidx2 = new SIndex(3);
+        mockPresent(sidx1, sid1);
+        mockPresent(sidx2, sid2);
+        adb.setEpoch_(10L, t);
+        lacl.set_(sidx1, ImmutableMap.of(user1, Permissions.allOf(Permission.WRITE)), t);
+        lacl.set_(sidx2, ImmutableMap.of(user1, Permissions.allOf(Permission.WRITE)), t);
+
+        // only sid2 changed since epoch 10: sid1 is absent from the reply but still accessible
+        mockGetIncrementalACL(12L, Collections.emptyList(), storeACL(sid2,
+                new SubjectPermissions(user1, Permissions.allOf(Permission.WRITE)),
+                new SubjectPermissions(user2, Permissions.allOf(Permission.WRITE))));
+
+        aclsync.syncToLocal_();
+
+        verify(spClient).getACL(10L, true);
+        verifyNoMoreInteractions(storeJoiner);
+        assertEquals(ImmutableMap.of(user1, Permissions.allOf(Permission.WRITE)),
+                lacl.get_(sidx1));
+        assertEquals(ImmutableMap.of(user1, Permissions.allOf(Permission.WRITE),
+                user2, Permissions.allOf(Permission.WRITE)), lacl.get_(sidx2));
+        assertEquals(12L, adb.getEpoch_());
+    }
+
+    @Test
+    public void shouldLeaveStoresListedAsLeftOnIncrementalUpdate() throws Exception
+    {
+        SIndex sidx1 = new SIndex(2);
+        SIndex sidx2 = new SIndex(3);
+        mockPresent(sidx1, sid1);
+        mockPresent(sidx2, sid2);
+        adb.setEpoch_(10L, t);
+        lacl.set_(sidx1, ImmutableMap.of(user1, Permissions.allOf(Permission.WRITE)), t);
+        lacl.set_(sidx2, ImmutableMap.of(user1, Permissions.allOf(Permission.WRITE)), t);
+
+        // a store left on the server but unknown locally is ignored
+        mockGetIncrementalACL(12L, Arrays.asList(sid1, SID.generate()));
+
+        aclsync.syncToLocal_();
+
+        verify(spClient).getACL(10L, true);
+        verify(storeJoiner).leaveStore_(sidx1, sid1, t);
+        verifyNoMoreInteractions(storeJoiner);
+        assertEquals(12L, adb.getEpoch_());
+    }
+
+    @Test
+    public void shouldLeaveFilteredOutStoresOnIncrementalUpdate() throws Exception
+    {
+        SIndex sidx = new SIndex(2);
+        mockPresent(sidx, sid1);
+        lacl.set_(sidx, ImmutableMap.of(user1, Permissions.allOf(Permission.WRITE)), t);
+
+        mockGetIncrementalACL(42L, Collections.emptyList(), storeACL(sid1,
+                new SubjectPermissions(user1, Permissions.allOf(Permission.WRITE)),
+                new SubjectPermissions(user2, Permissions.allOf(Permission.WRITE))));
+        when(filter.shouldKeep_(anySetOf(UserID.class))).thenReturn(false);
+
+        aclsync.syncToLocal_();
+
+        verify(storeJoiner).leaveStore_(sidx, sid1, t);
+    }
+
+    @Test
+    public void shouldLeaveStoresMissingFromFullUpdate() throws Exception
+    {
+        SIndex sidx1 = new SIndex(2);
+        SIndex sidx2 = new SIndex(3);
+        mockPresent(sidx1, sid1);
+        mockPresent(sidx2, sid2);
+        adb.setEpoch_(10L, t);
+        lacl.set_(sidx1, ImmutableMap.of(user1, Permissions.allOf(Permission.WRITE)), t);
+        lacl.set_(sidx2, ImmutableMap.of(user1, Permissions.allOf(Permission.WRITE)), t);
+
+        // the server falls back to a full ACL, e.g. when epoch 10 predates its change history
+        mockGetACL(12L, storeACL(sid2,
+                new SubjectPermissions(user1, Permissions.allOf(Permission.WRITE))));
+
+        aclsync.syncToLocal_();
+
+        verify(spClient).getACL(10L, true);
+        verify(storeJoiner).leaveStore_(sidx1, sid1, t);
+        verifyNoMoreInteractions(storeJoiner);
+        assertEquals(12L, adb.getEpoch_());
+    }
 }
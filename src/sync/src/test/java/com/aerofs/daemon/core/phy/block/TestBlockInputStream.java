@@ -4,6 +4,7 @@ import com.aerofs.base.BaseSecUtil;
 import com.aerofs.lib.ClientParam;
 import com.aerofs.lib.ContentBlockHash;
 import com.aerofs.testlib.AbstractTest;
+import com.google.common.io.ByteStreams;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -111,4 +112,21 @@ public class TestBlockInputStream extends AbstractTest
         assertEquals(FULL.length + PARTIAL.length, is(FULL.length + PARTIAL.length, FULL_H, PARTIAL_H)
                 .skip(FULL.length + FULL.length));
     }
+
+    @Test
+    public void shouldSkipInVariableSizeBlocks() throws IOException {
+        try (BlockInputStream bis = new BlockInputStream(bsb, BlockUtil.concat(PARTIAL_H, FULL_H),
+                PARTIAL.length + FULL.length, new long[] { PARTIAL.length, FULL.length })) {
+            assertEquals(PARTIAL.length + 10, bis.skip(PARTIAL.length + 10));
+            assertEquals(FULL.length - 10, bis.skip(FULL.length));
+        }
+    }
+
+    @Test
+    public void shouldReadVariableSizeBlocks() throws IOException {
+        try (BlockInputStream bis = new BlockInputStream(bsb, BlockUtil.concat(PARTIAL_H, FULL_H),
+                PARTIAL.length + FULL.length, new long[] { PARTIAL.length, FULL.length })) {
+            assertEquals(PARTIAL.length + FULL.length, ByteStreams.toByteArray(bis).length);
+        }
+    }
 }
@@ -49,6 +49,7 @@ import org.junit.Test;
 import org.mockito.Mock;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -635,6 +636,29 @@ public class TestBlockStorage extends AbstractBlockTest
         Assert.assertEquals(0, bsdb.getBlockCount_(contentHash(content)));
     }
 
+    @Test
+    public void shouldGetLengthsOfAllBlocks() throws Exception
+    {
+        // spans several lookup batches, and repeats its first block at the end
+        int n = 150;
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        for (int i = 0; i < n; ++i) {
+            ContentBlockHash block = contentHash(new byte[] { (byte)i, (byte)(i >> 8) });
+            bsdb.prePutBlock_(block, i + 1, t);
+            chunks.write(block.getBytes());
+        }
+        chunks.write(contentHash(new byte[] { 0, 0 }).getBytes());
+
+        long[] lengths = bsdb.getBlockLengths_(new ContentBlockHash(chunks.toByteArray()));
+
+        Assert.assertEquals(n + 1, lengths.length);
+        for (int i = 0; i < n; ++i) Assert.assertEquals(i + 1, lengths[i]);
+        Assert.assertEquals(1, lengths[n]);
+
+        chunks.write(contentHash(new byte[] { 4, 2 }).getBytes());
+        Assert.assertNull(bsdb.getBlockLengths_(new ContentBlockHash(chunks.toByteArray())));
+    }
+
     @Test
     public void shouldCleanBlocksOnDeleteIfHistoryDisabled() throws Exception
     {
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.phy.block;
+
+import com.aerofs.testlib.AbstractTest;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestContentDefinedChunker extends AbstractTest
+{
+    private static byte[] random(int length, long seed)
+    {
+        byte[] b = new byte[length];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private static List<Integer> boundaries(byte[] b, int writeSize)
+    {
+        ContentDefinedChunker cdc = new ContentDefinedChunker();
+        List<Integer> cuts = Lists.newArrayList();
+        int pos = 0;
+        while (pos < b.length) {
+            int len = Math.min(writeSize, b.length - pos);
+            int n = cdc.next(b, pos, len);
+            pos += n < 0 ? len : n;
+            if (n >= 0) cuts.add(pos);
+        }
+        return cuts;
+    }
+
+    @Test
+    public void shouldRespectMinAndMaxBlockSize()
+    {
+        byte[] b = random(8 * ContentDefinedChunker.AVG_BLOCK_SIZE, 42);
+        int prev = 0;
+        for (int cut : boundaries(b, 64 * 1024)) {
+            int l = cut - prev;
+            assertTrue(l > ContentDefinedChunker.MIN_BLOCK_SIZE);
+            assertTrue(l <= ContentDefinedChunker.MAX_BLOCK_SIZE);
+            prev = cut;
+        }
+    }
+
+    @Test
+    public void shouldCutAtMaxBlockSizeForUniformContent()
+    {
+        byte[] b = new byte[3 * ContentDefinedChunker.MAX_BLOCK_SIZE];
+        assertEquals(Arrays.asList(ContentDefinedChunker.MAX_BLOCK_SIZE,
+                        2 * ContentDefinedChunker.MAX_BLOCK_SIZE,
+                        3 * ContentDefinedChunker.MAX_BLOCK_SIZE),
+                boundaries(b, 8 * 1024));
+    }
+
+    @Test
+    public void shouldNotDependOnWriteSize()
+    {
+        byte[] b = random(8 * ContentDefinedChunker.AVG_BLOCK_SIZE, 1);
+        assertEquals(boundaries(b, b.length), boundaries(b, 8 * 1024 + 7));
+    }
+
+    @Test
+    public void shouldResyncAfterInsertion()
+    {
+        byte[] b = random(8 * ContentDefinedChunker.AVG_BLOCK_SIZE, 7);
+        byte[] e = new byte[b.length + 3];
+        System.arraycopy(b, 0, e, 0, 1000);
+        System.arraycopy(b, 1000, e, 1003, b.length - 1000);
+
+        List<Integer> before = boundaries(b, b.length);
+        List<Integer> after = boundaries(e, e.length);
+        // all but the first block should be preserved, shifted by the size of the insertion
+        for (int i = 1; i < before.size(); ++i) {
+            assertEquals(before.get(i) + 3, (int)after.get(i));
+        }
+    }
+
+    @Test
+    public void shouldResumePartialBlock()
+    {
+        byte[] b = random(8 * ContentDefinedChunker.AVG_BLOCK_SIZE, 3);
+        List<Integer> expected = boundaries(b, b.length);
+
+        // simulate a prefix being reopened in the middle of a block
+        int split = expected.get(0) + ContentDefinedChunker.MIN_BLOCK_SIZE + 100;
+        int tail = split - expected.get(0);
+
+        ContentDefinedChunker cdc = new ContentDefinedChunker();
+        cdc.resume(tail, Arrays.copyOfRange(b, split - ContentDefinedChunker.WINDOW, split));
+        int n = cdc.next(b, split, b.length - split);
+        assertEquals((int)expected.get(1), split + n);
+    }
+}
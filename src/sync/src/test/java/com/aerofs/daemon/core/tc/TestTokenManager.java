@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.core.tc;
+
+import com.aerofs.daemon.core.CoreEventDispatcher;
+import com.aerofs.daemon.core.CoreQueue;
+import com.aerofs.daemon.core.CoreScheduler;
+import com.aerofs.daemon.core.ex.ExAborted;
+import com.aerofs.lib.cfg.ICfgStore;
+import com.aerofs.lib.event.AbstractEBSelfHandling;
+import com.aerofs.lib.event.IEvent;
+import com.aerofs.lib.event.Prio;
+import com.aerofs.testlib.AbstractTest;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Continuations of {@link Token#await_}, run by core threads off a real core queue
+ */
+public class TestTokenManager extends AbstractTest
+{
+    private static final long TIMEOUT = 10;
+
+    private static final IEvent NOP = new AbstractEBSelfHandling() {
+        @Override
+        public void handle_()
+        {
+        }
+    };
+
+    private final CoreQueue q = new CoreQueue();
+    private final CoreScheduler sched = spy(new CoreScheduler(q));
+    private final TokenManager tokenManager = new TokenManager(new ICfgStore() {}, q, sched);
+
+    /**
+     * Records the core thread state in which it is resumed
+     */
+    private static class Continuation<T> implements FutureCallback<T>
+    {
+        final SettableFuture<T> result = SettableFuture.create();
+        volatile Prio prio;
+        volatile boolean coreLock;
+
+        @Override
+        public void onSuccess(T v)
+        {
+            resumed();
+            result.set(v);
+        }
+
+        @Override
+        public void onFailure(Throwable t)
+        {
+            resumed();
+            result.setException(t);
+        }
+
+        private void resumed()
+        {
+            prio = TC.currentThreadPrio();
+            try {
+                TC.assertHoldsCoreLock_();
+                coreLock = true;
+            } catch (AssertionError e) {
+                coreLock = false;
+            }
+        }
+
+        T get() throws Exception
+        {
+            return result.get(TIMEOUT, TimeUnit.SECONDS);
+        }
+
+        Throwable failure() throws Exception
+        {
+            try {
+                get();
+            } catch (ExecutionException e) {
+                return e.getCause();
+            }
+            fail();
+            return null;
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        new TC(q, new CoreEventDispatcher(ImmutableSet.of()), new CoreScheduler(q), tokenManager,
+                () -> {}).start_();
+    }
+
+    private <T> T inCore(Prio prio, Callable<T> c) throws Exception
+    {
+        SettableFuture<T> f = SettableFuture.create();
+        q.enqueueBlocking(new AbstractEBSelfHandling() {
+            @Override
+            public void handle_()
+            {
+                try {
+                    f.set(c.call());
+                } catch (Throwable t) {
+                    f.setException(t);
+                }
+            }
+        }, prio);
+        return f.get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private <T> Token await(Prio prio, SettableFuture<T> future, Continuation<T> cont)
+            throws Exception
+    {
+        return inCore(prio, () -> {
+            Token tk = tokenManager.acquire_(Cat.CLIENT, "test");
+            tk.await_(future, cont);
+            return tk;
+        });
+    }
+
+    private void shouldResumeInCoreEventWithPriority(Prio prio) throws Exception
+    {
+        SettableFuture<String> future = SettableFuture.create();
+        Continuation<String> cont = new Continuation<>();
+        await(prio, future, cont);
+
+        future.set("foo");
+
+        assertEquals("foo", cont.get());
+        assertEquals(prio, cont.prio);
+        assertTrue(cont.coreLock);
+    }
+
+    @Test
+    public void shouldResumeInCoreEventWithLowPriority() throws Exception
+    {
+        shouldResumeInCoreEventWithPriority(Prio.LO);
+    }
+
+    @Test
+    public void shouldResumeInCoreEventWithHighPriority() throws Exception
+    {
+        shouldResumeInCoreEventWithPriority(Prio.HI);
+    }
+
+    @Test
+    public void shouldResumeWhenFutureIsAlreadyComplete() throws Exception
+    {
+        Continuation<String> cont = new Continuation<>();
+        inCore(Prio.HI, () -> {
+            SettableFuture<String> future = SettableFuture.create();
+            future.set("foo");
+            tokenManager.acquire_(Cat.CLIENT, "test").await_(future, cont);
+            // the continuation runs in a later core event, not within this one
+            assertFalse(cont.result.isDone());
+            return null;
+        });
+
+        assertEquals("foo", cont.get());
+        assertEquals(Prio.HI, cont.prio);
+    }
+
+    @Test
+    public void shouldAbortWhenTokenIsReclaimed() throws Exception
+    {
+        SettableFuture<String> future = SettableFuture.create();
+        Continuation<String> cont = new Continuation<>();
+        Token tk = await(Prio.LO, future, cont);
+
+        inCore(Prio.LO, () -> {
+            tk.reclaim_();
+            return null;
+        });
+        future.set("foo");
+
+        assertTrue(cont.failure() instanceof ExAborted);
+        assertTrue(cont.coreLock);
+    }
+
+    @Test
+    public void shouldPropagateFailure() throws Exception
+    {
+        SettableFuture<String> future = SettableFuture.create();
+        Continuation<String> cont = new Continuation<>();
+        await(Prio.LO, future, cont);
+
+        IOException e = new IOException();
+        future.setException(e);
+
+        assertSame(e, cont.failure());
+        assertTrue(cont.coreLock);
+    }
+
+    @Test
+    public void shouldPropagateCancellation() throws Exception
+    {
+        SettableFuture<String> future = SettableFuture.create();
+        Continuation<String> cont = new Continuation<>();
+        await(Prio.LO, future, cont);
+
+        future.cancel(false);
+
+        assertTrue(cont.failure() instanceof CancellationException);
+    }
+
+    @Test
+    public void shouldCountAwaitingContinuations() throws Exception
+    {
+        SettableFuture<String> future1 = SettableFuture.create();
+        SettableFuture<String> future2 = SettableFuture.create();
+        Continuation<String> cont1 = new Continuation<>();
+        Continuation<String> cont2 = new Continuation<>();
+        Token tk = inCore(Prio.LO, () -> {
+            Token t = tokenManager.acquire_(Cat.CLIENT, "test");
+            t.await_(future1, cont1);
+            t.await_(future2, cont2);
+            return t;
+        });
+        assertTrue(inCore(Prio.LO, tk::toString).endsWith("2 awaiting"));
+
+        future1.set("foo");
+        cont1.get();
+        assertTrue(inCore(Prio.LO, tk::toString).endsWith("1 awaiting"));
+
+        // continuations of a reclaimed token are no longer awaiting once they fail
+        inCore(Prio.LO, () -> {
+            tk.reclaim_();
+            return null;
+        });
+        future2.set("bar");
+        assertTrue(cont2.failure() instanceof ExAborted);
+        assertFalse(inCore(Prio.LO, tk::toString).contains("awaiting"));
+    }
+
+    @Test
+    public void shouldScheduleContinuationWhenQueueIsFull() throws Exception
+    {
+        SettableFuture<String> future = SettableFuture.create();
+        Continuation<String> cont = new Continuation<>();
+
+        int filled = inCore(Prio.HI, () -> {
+            tokenManager.acquire_(Cat.CLIENT, "test").await_(future, cont);
+            // core threads can't dequeue while this one holds the core lock
+            int n = 0;
+            while (q.enqueue(NOP, Prio.LO)) ++n;
+            future.set("foo");
+            return n;
+        });
+
+        assertTrue(filled > 0);
+        assertEquals("foo", cont.get());
+        verify(sched).schedule(any(IEvent.class), eq(0L));
+        // the scheduler enqueues events with low priority
+        assertEquals(Prio.HI, cont.prio);
+        assertTrue(cont.coreLock);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.lib.db;
+
+import com.aerofs.daemon.lib.LRUCache.IDataReader;
+import com.aerofs.daemon.lib.db.trans.Trans;
+import com.aerofs.daemon.lib.db.trans.TransManager;
+import com.aerofs.lib.db.dbcw.IDBCW;
+import com.aerofs.testlib.AbstractTest;
+import com.google.common.collect.Maps;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestDBCache extends AbstractTest
+{
+    @Mock IDBCW dbcw;
+
+    TransManager tm;
+    DBCache<Integer, String> cache;
+
+    final Map<Integer, String> db = Maps.newHashMap();
+    final IDataReader<Integer, String> reader = db::get;
+
+    @Before
+    public void setup()
+    {
+        tm = new TransManager(new Trans.Factory(dbcw));
+        cache = new DBCache<>(tm, 4);
+        for (int i = 0; i < 10; i++) db.put(i, "v" + i);
+    }
+
+    private String get(int k) throws SQLException
+    {
+        return cache.get_(k, reader);
+    }
+
+    @Test
+    public void shouldKeepEntriesCachedBeforeAbortedTransaction() throws SQLException
+    {
+        get(1);
+        get(2);
+
+        Trans t = tm.begin_();
+        try {
+            get(1);
+            get(3);
+        } finally {
+            t.end_();
+        }
+
+        assertEquals("v1", cache.get_(1));
+        assertEquals("v2", cache.get_(2));
+        assertNull(cache.get_(3));
+    }
+
+    @Test
+    public void shouldEvictEntriesModifiedInAbortedTransaction() throws SQLException
+    {
+        get(1);
+
+        Trans t = tm.begin_();
+        try {
+            db.put(1, "x");
+            cache.invalidate_(1);
+            assertEquals("x", get(1));
+            cache.put_(2, "y");
+            db.put(1, "v1");
+        } finally {
+            t.end_();
+        }
+
+        assertNull(cache.get_(1));
+        assertNull(cache.get_(2));
+        assertEquals("v1", get(1));
+        assertEquals(2, cache.abortEvictions_());
+    }
+
+    @Test
+    public void shouldKeepEntriesCachedInCommittedTransaction() throws SQLException
+    {
+        try (Trans t = tm.begin_()) {
+            get(1);
+            t.commit_();
+        }
+
+        Trans t = tm.begin_();
+        try {
+            get(2);
+        } finally {
+            t.end_();
+        }
+
+        assertEquals("v1", cache.get_(1));
+        assertNull(cache.get_(2));
+    }
+
+    @Test
+    public void shouldNotTrackEntriesCachedOutsideTransactions() throws SQLException
+    {
+        try (Trans t = tm.begin_()) {
+            t.commit_();
+        }
+        get(1);
+
+        Trans t = tm.begin_();
+        try {
+            get(2);
+        } finally {
+            t.end_();
+        }
+
+        assertEquals("v1", cache.get_(1));
+    }
+
+    @Test
+    public void shouldInvalidateAllWhenTransactionCachesMoreThanCapacity() throws SQLException
+    {
+        get(9);
+
+        Trans t = tm.begin_();
+        try {
+            for (int i = 0; i < 6; i++) get(i);
+        } finally {
+            t.end_();
+        }
+
+        assertEquals(0, cache.size_());
+    }
+
+    @Test
+    public void shouldCountHitsMissesAndEvictions() throws SQLException
+    {
+        for (int i = 0; i < 6; i++) get(i);
+        get(5);
+        get(4);
+
+        assertEquals(6, cache.misses_());
+        assertEquals(2, cache.hits_());
+        assertEquals(2, cache.evictions_());
+    }
+}
@@ -1,5 +1,6 @@
 package com.aerofs.daemon.transport.lib;
 
+import com.aerofs.base.C;
 import com.aerofs.daemon.lib.exception.ExStreamInvalid;
 import com.aerofs.daemon.lib.id.StreamID;
 import com.aerofs.ids.DID;
@@ -10,12 +11,16 @@ import org.jboss.netty.channel.ChannelPipeline;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TestIncomingStream {
@@ -174,4 +179,45 @@ public class TestIncomingStream {
             assertEquals(d[i], (byte)b);
         }
     }
+
+    @Test
+    public void shouldTransferChunksToOutputStream() throws Exception {
+        IncomingStream is = new IncomingStream(sk, channel, TIMEOUT);
+        assertTrue(is.begin());
+        is.offer(ChannelBuffers.wrappedBuffer(BUFFER));
+        is.offer(ChannelBuffers.EMPTY_BUFFER);
+        is.offer(ChannelBuffers.wrappedBuffer(BUFFER));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(BUFFER.length / 2, is.transferTo(out, BUFFER.length / 2));
+        assertEquals(BUFFER.length / 2, is.transferTo(out, BUFFER.length));
+        assertEquals(BUFFER.length, is.transferTo(out, 2 * BUFFER.length));
+        assertEquals(2 * BUFFER.length, out.size());
+    }
+
+    @Test
+    public void shouldPauseWhenLargeChunksPileUp() throws Exception {
+        IncomingStream is = new IncomingStream(sk, channel, TIMEOUT);
+        assertTrue(is.begin());
+
+        // only a handful of chunks, but megabytes of data
+        for (int i = 0; i < 4; ++i) is.offer(ChannelBuffers.wrappedBuffer(new byte[C.MB]));
+        verify(channel, never()).write(any());
+
+        is.offer(ChannelBuffers.wrappedBuffer(new byte[C.MB]));
+        verify(channel).write(any());
+    }
+
+    @Test
+    public void shouldFailWhenLargeChunksOverflow() throws Exception {
+        IncomingStream is = new IncomingStream(sk, channel, TIMEOUT);
+        assertTrue(is.begin());
+
+        try {
+            for (int i = 0; i < 32; ++i) is.offer(ChannelBuffers.wrappedBuffer(new byte[C.MB]));
+            fail();
+        } catch (ExStreamInvalid e) {
+            assertEquals(InvalidationReason.CHOKE_ERROR, e.getReason());
+        }
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.daemon.transport.lib.handlers;
+
+import com.aerofs.base.C;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.jboss.netty.buffer.ChannelBuffers.wrappedBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestFrameLengthCodec
+{
+    private static final int MAX_FRAME = 24 * C.KB;
+    private static final int MAX_BULK_FRAME = 512 * C.KB;
+
+    private final Random random = new Random();
+
+    private final EncoderEmbedder<ChannelBuffer> encoder =
+            new EncoderEmbedder<>(new FrameLengthEncoder(MAX_FRAME));
+    private final DecoderEmbedder<ChannelBuffer> decoder =
+            new DecoderEmbedder<>(new FrameLengthDecoder(MAX_FRAME, MAX_BULK_FRAME));
+
+    private byte[] randomBytes(int length)
+    {
+        byte[] b = new byte[length];
+        random.nextBytes(b);
+        return b;
+    }
+
+    private ChannelBuffer encode(byte[] payload)
+    {
+        encoder.offer(wrappedBuffer(payload));
+        return encoder.poll();
+    }
+
+    private static byte[] toArray(ChannelBuffer buf)
+    {
+        byte[] b = new byte[buf.readableBytes()];
+        buf.readBytes(b);
+        return b;
+    }
+
+    @Test
+    public void shouldUseShortLengthFieldForRegularFrames()
+    {
+        byte[] payload = randomBytes(MAX_FRAME);
+        ChannelBuffer frame = encode(payload);
+
+        assertEquals(2 + payload.length, frame.readableBytes());
+        assertEquals(payload.length, frame.getUnsignedShort(0));
+    }
+
+    @Test
+    public void shouldUseBulkLengthFieldForLargeFrames()
+    {
+        byte[] payload = randomBytes(MAX_FRAME + 1);
+        ChannelBuffer frame = encode(payload);
+
+        assertEquals(6 + payload.length, frame.readableBytes());
+        assertEquals(0xffff, frame.getUnsignedShort(0));
+        assertEquals(payload.length, frame.getInt(2));
+    }
+
+    @Test
+    public void shouldDecodeMixedFramesSplitAcrossReads()
+    {
+        byte[][] payloads = {
+                randomBytes(10), randomBytes(256 * C.KB), randomBytes(0), randomBytes(MAX_FRAME)
+        };
+
+        ChannelBuffer[] frames = new ChannelBuffer[payloads.length];
+        for (int i = 0; i < payloads.length; ++i) frames[i] = encode(payloads[i]);
+        byte[] wire = toArray(wrappedBuffer(frames));
+
+        // feed the decoder in small, uneven pieces, as the socket would
+        int pos = 0;
+        while (pos < wire.length) {
+            int n = Math.min(wire.length - pos, 1 + random.nextInt(3 * C.KB));
+            decoder.offer(wrappedBuffer(wire, pos, n));
+            pos += n;
+        }
+
+        for (byte[] payload : payloads) {
+            assertArrayEquals(payload, toArray(decoder.poll()));
+        }
+        assertNull(decoder.poll());
+    }
+
+    @Test
+    public void shouldRejectOversizedBulkFrame()
+    {
+        ChannelBuffer header = wrappedBuffer(new byte[] {(byte)0xff, (byte)0xff, 0, 0x10, 0, 1});
+        try {
+            decoder.offer(header);
+            fail();
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+    }
+}
@@ -10,7 +10,6 @@ import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
-import org.jboss.netty.handler.stream.ChunkedWriteHandler;
 import org.jboss.netty.util.Timer;
 
 import java.net.InetSocketAddress;
@@ -24,6 +23,7 @@ public class TunnelClient extends AbstractNettyReconnectingClient
     private final DID _did;
     private final SSLEngineFactory _sslEngineFactory;
     private final ChannelPipelineFactory _pipelineFactory;
+    private final int _stripe;
 
     private final ClientBootstrap _bootstrap;
     private final String _host;
@@ -33,6 +33,17 @@ public class TunnelClient extends AbstractNettyReconnectingClient
     public TunnelClient(String host, int port, UserID user, DID did,
             ClientSocketChannelFactory channelFactory, SSLEngineFactory sslEngineFactory,
             ChannelPipelineFactory pipelineFactory, Timer timer)
+    {
+        this(host, port, user, did, channelFactory, sslEngineFactory, pipelineFactory, timer, 0);
+    }
+
+    /**
+     * @param stripe index of this connection among the tunnel connections opened by the same
+     * device, which the server may use to spread virtual channels across them
+     */
+    public TunnelClient(String host, int port, UserID user, DID did,
+            ClientSocketChannelFactory channelFactory, SSLEngineFactory sslEngineFactory,
+            ChannelPipelineFactory pipelineFactory, Timer timer, int stripe)
     {
         super(timer);
         _host = host;
@@ -42,6 +53,7 @@ public class TunnelClient extends AbstractNettyReconnectingClient
         _did = did;
         _sslEngineFactory = sslEngineFactory;
         _pipelineFactory = pipelineFactory;
+        _stripe = stripe;
     }
 
     @Override
@@ -57,12 +69,11 @@ public class TunnelClient extends AbstractNettyReconnectingClient
     protected ChannelPipelineFactory pipelineFactory()
     {
         return () -> {
-            TunnelHandler handler = new TunnelHandler(null, _pipelineFactory);
+            TunnelHandler handler = new TunnelHandler(null, _pipelineFactory, _stripe);
             return Channels.pipeline(_sslEngineFactory.newSslHandler(),
                     TunnelHandler.newFrameDecoder(),
                     TunnelHandler.newLengthFieldPrepender(),
                     NettyUtil.newCNameVerificationHandler(handler, _user, _did),
-                    new ChunkedWriteHandler(),
                     TunnelHandler.newIdleStateHandler(_timer),
                     handler);
         };
@@ -11,7 +11,6 @@ import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
 import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
-import org.jboss.netty.handler.stream.ChunkedInput;
 import org.jboss.netty.handler.timeout.IdleState;
 import org.jboss.netty.handler.timeout.IdleStateAwareChannelUpstreamHandler;
 import org.jboss.netty.handler.timeout.IdleStateEvent;
@@ -26,6 +25,8 @@ import java.net.ProtocolException;
 import java.net.SocketException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkState;
@@ -50,6 +51,19 @@ import static com.google.common.base.Preconditions.checkState;
  * The tunnel handler may fragment large payloads before sending them. It is expected that
  * whatever handler are sitting on top of the virtual channel at the other end can handle
  * fragmented messages.
+ *
+ * Payload frames are written round-robin from the virtual channels with pending data, and only
+ * while the physical channel is writable, so a bulk transfer on one virtual channel does not
+ * delay other virtual channels, or signalling packets, by more than a few frames.
+ *
+ * Each side sends a hello upon connection: a heartbeat followed by a capability bitmask and
+ * the stripe index of the physical connection (older peers ignore the extra bytes). If both sides
+ * advertise CAP_CREDIT, each virtual channel may only send INITIAL_WINDOW bytes of payload ahead
+ * of the data consumed by the other side, which grants more credit with MSG_CREDIT packets:
+ *      - 2 bytes : MSG_CREDIT
+ *      - 4 bytes : connection id
+ *      - 4 bytes : credit, in bytes of payload
+ * No credit is granted while the receiving virtual channel is not readable.
  */
 public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implements CNameListener
 {
@@ -92,6 +106,14 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
     private static final int MSG_SUSPEND = 3;
     private static final int MSG_RESUME = 4;
     private static final int MSG_PAYLOAD = 5;
+    private static final int MSG_CREDIT = 6;
+
+    static final int CAP_CREDIT = 1;
+    static final int CAPABILITIES = CAP_CREDIT;
+
+    static final int INITIAL_WINDOW = 256 * C.KB;
+    // credit is granted in batches to limit the number of signalling packets
+    private static final int CREDIT_BATCH = INITIAL_WINDOW / 4;
 
     private static final ChannelBuffer BEAT = ChannelBuffers.wrappedBuffer(new byte[] {0, MSG_BEAT});
 
@@ -100,6 +122,32 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
 
     private final ITunnelConnectionListener _listener;
     private final VirtualChannelProvider _provider;
+    private final int _stripe;
+    private final int _capabilities;
+
+    private volatile int _peerCapabilities;
+    private volatile int _peerStripe;
+
+    // virtual channels with pending writes, only accessed from the I/O thread
+    private final Queue<VirtualChannel> _scheduled = new ArrayDeque<>();
+
+    /**
+     * Outgoing message of a virtual channel, framed as credit allows
+     */
+    static class PendingWrite
+    {
+        final ChannelBuffer payload;
+        final ChannelFuture future;
+        final long total;
+        long written;
+
+        PendingWrite(ChannelBuffer payload, ChannelFuture future)
+        {
+            this.payload = payload;
+            this.future = future;
+            this.total = payload.readableBytes();
+        }
+    }
 
     /**
      * @param pipelineFactory if non-null, auto-generate virtual channel with the given pipeline
@@ -107,9 +155,31 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
      */
     public TunnelHandler(ITunnelConnectionListener listener,
             @Nullable ChannelPipelineFactory pipelineFactory)
+    {
+        this(listener, pipelineFactory, 0);
+    }
+
+    /**
+     * @param stripe index of the physical connection among all the connections opened by the same
+     * device, advertised to the other side of the tunnel
+     */
+    public TunnelHandler(ITunnelConnectionListener listener,
+            @Nullable ChannelPipelineFactory pipelineFactory, int stripe)
+    {
+        this(listener, pipelineFactory, stripe, CAPABILITIES);
+    }
+
+    /**
+     * @param capabilities advertised to the other side of the tunnel. Without any, no hello is
+     * sent and the handler behaves as older versions do
+     */
+    TunnelHandler(ITunnelConnectionListener listener,
+            @Nullable ChannelPipelineFactory pipelineFactory, int stripe, int capabilities)
     {
         _listener = listener;
         _provider = new VirtualChannelProvider(this, pipelineFactory);
+        _stripe = stripe;
+        _capabilities = capabilities;
     }
 
     public TunnelAddress address()
@@ -117,6 +187,24 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
         return _addr;
     }
 
+    /**
+     * @return stripe index advertised by the other side of the tunnel, 0 for older peers
+     */
+    public int peerStripe()
+    {
+        return _peerStripe;
+    }
+
+    public int virtualChannelCount()
+    {
+        return _provider.size();
+    }
+
+    private boolean useCredit()
+    {
+        return (_capabilities & _peerCapabilities & CAP_CREDIT) != 0;
+    }
+
     @Override
     public String toString()
     {
@@ -165,6 +253,7 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
         // heartbeat reception
         if (type == MSG_BEAT) {
             l.debug("tunnel beat recv {}", this);
+            if (buf.readableBytes() >= 2 * 4) onHello(buf.readInt(), buf.readInt());
             return;
         }
 
@@ -174,11 +263,17 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
 
         int connectionId = buf.readInt();
 
-        VirtualChannel client = _provider.get(connectionId);
+        // credit may cross a MSG_CLOSE and must never re-create a virtual channel
+        VirtualChannel client = type == MSG_CREDIT
+                ? _provider.find(connectionId) : _provider.get(connectionId);
         if (client == null || !client.isConnected()) {
             // any messages already in-flight at the time the connection is closed
-            // need to be discarded
-            l.warn("discard incoming tunnel message {} {}", type, connectionId);
+            // need to be discarded. Credit routinely crosses MSG_CLOSE
+            if (type == MSG_CREDIT) {
+                l.debug("discard incoming tunnel credit {}", connectionId);
+            } else {
+                l.warn("discard incoming tunnel message {} {}", type, connectionId);
+            }
             return;
         }
 
@@ -189,6 +284,7 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
             // noinspection fallthrough
         case MSG_CLOSED:
             _provider.remove(connectionId);
+            discard(client);
             client.fireDisconnected();
             break;
         case MSG_SUSPEND:
@@ -199,7 +295,17 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
             break;
         case MSG_PAYLOAD:
             //l.info("payload msg on {}: {}", _channel, buf.readableBytes());
+            client._recvUncredited += buf.readableBytes();
             Channels.fireMessageReceived(client, buf.slice(), null);
+            grantCredit(client);
+            break;
+        case MSG_CREDIT:
+            if (buf.readableBytes() < 4) {
+                throw new ProtocolException("tunnel message too small: " + buf.readableBytes());
+            }
+            client._sendCredit += buf.readInt();
+            schedule(client);
+            flush();
             break;
         default:
             throw new ProtocolException("invalid tunnel message type: " + type);
@@ -214,6 +320,7 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
         _channel = ctx.getChannel();
         checkState(_channel != null);
         l.info("tunnel connect {}", this);
+        if (_capabilities != 0) _channel.write(hello());
         if (_listener != null) _listener.tunnelOpen(_addr, this);
     }
 
@@ -221,6 +328,7 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
     public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e)
     {
         l.debug("physical channel interest changed {} {}", _channel.getInterestOps(), this);
+        flush();
         _provider.foreach(c -> {
             Channels.fireChannelInterestChanged(c);
             return null;
@@ -234,10 +342,12 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
         checkState(_addr != null);
         l.info("tunnel disconnect {}", this);
         _provider.foreach(c -> {
+            discard(c);
             c.fireDisconnected();
             return null;
         });
         _provider.clear();
+        _scheduled.clear();
         if (_listener != null) _listener.tunnelClosed(_addr, this);
     }
 
@@ -267,54 +377,182 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
         }
     }
 
+    private ChannelBuffer hello()
+    {
+        ChannelBuffer hello = ChannelBuffers.buffer(TYPE_FIELD_SIZE + 2 * 4);
+        hello.writeShort(MSG_BEAT);
+        hello.writeInt(_capabilities);
+        hello.writeInt(_stripe);
+        return hello;
+    }
+
+    private void onHello(int capabilities, int stripe)
+    {
+        l.info("tunnel hello {} {} {}", capabilities, stripe, this);
+        _peerCapabilities = capabilities;
+        _peerStripe = stripe;
+        // grant credit for any data consumed before the peer was known to support it
+        _provider.foreach(c -> {
+            grantCredit(c);
+            return null;
+        });
+    }
+
     /**
-     * Write a message having reached the sink of the virtual channel to the physical channel
+     * Queue a message having reached the sink of the virtual channel, to be framed and written
+     * to the physical channel in the I/O thread of the physical channel
      */
     void onWrite(VirtualChannel virtualChannel, Object message, ChannelFuture future)
     {
         if (_channel.isConnected()) {
-            final ChannelBuffer payload = (ChannelBuffer)message;
-            final ChannelBuffer header = ChannelBuffers.buffer(HEADER_SIZE);
-            header.writeShort(MSG_PAYLOAD);
-            header.writeInt(virtualChannel.getConnectionId());
-            final long total = payload.readableBytes() + header.readableBytes();
-
-            // failure to reconstruct WriteCompletion events would prevent IdleState handler from
-            // correctly detecting write timeouts (i.e. successful writes would never reset the
-            // timeout)
-            _channel.write(new Fragmenter(header, payload))
-                    .addListener(new ChannelFutureProgressListener() {
-                        long written;
-                        @Override
-                        public void operationProgressed(ChannelFuture cf, long n, long w, long t) {
-                            written = w;
-                            future.setProgress(n, w, t);
-                            Channels.fireWriteComplete(virtualChannel, n);
-                        }
-
-                        @Override
-                        public void operationComplete(ChannelFuture cf) throws Exception {
-                            if (cf.isSuccess()) {
-                                future.setSuccess();
-                                Channels.fireWriteComplete(virtualChannel, total - written);
-                            } else {
-                                future.setFailure(cf.getCause());
-                            }
-                        }
-                    });
+            final PendingWrite w = new PendingWrite((ChannelBuffer)message, future);
+            virtualChannel.addQueued(w.total);
+            _channel.getPipeline().execute(() -> {
+                if (!_channel.isConnected() || !virtualChannel.isConnected()) {
+                    virtualChannel.removeQueued(w.total);
+                    future.setFailure(new ClosedChannelException());
+                    return;
+                }
+                virtualChannel._outgoing.add(w);
+                schedule(virtualChannel);
+                flush();
+            });
         } else {
             l.warn("ignore write {} -> {}", virtualChannel, this);
             future.setFailure(new ClosedChannelException());
         }
     }
 
-    private ChannelFuture writeMsg(int type, int connectionId) throws ClosedChannelException
+    /**
+     * To honor Netty's threading model, this should only be called from the channel's I/O thread
+     */
+    private void schedule(VirtualChannel c)
     {
-        if (!_channel.isConnected()) throw new ClosedChannelException();
+        if (!c._scheduled && !c._outgoing.isEmpty()) {
+            c._scheduled = true;
+            _scheduled.add(c);
+        }
+    }
+
+    /**
+     * Write one frame at a time from each scheduled virtual channel, as long as the physical
+     * channel is writable. Virtual channels out of credit are descheduled until credit arrives.
+     *
+     * To honor Netty's threading model, this should only be called from the channel's I/O thread
+     */
+    private void flush()
+    {
+        while (_channel.isConnected() && _channel.isWritable() && !_scheduled.isEmpty()) {
+            VirtualChannel c = _scheduled.poll();
+            if (writeFrame(c)) {
+                _scheduled.add(c);
+            } else {
+                c._scheduled = false;
+            }
+        }
+    }
 
+    /**
+     * @return whether the virtual channel may have more frames to write
+     */
+    private boolean writeFrame(VirtualChannel c)
+    {
+        final PendingWrite w = c._outgoing.peek();
+        if (w == null) return false;
+
+        int n = Math.min(MAX_PAYLOAD_SIZE, w.payload.readableBytes());
+        if (useCredit()) n = Math.min(n, c._sendCredit);
+        // NB: empty messages are sent as empty frames, which do not require any credit
+        if (n <= 0 && w.payload.readable()) return false;
+        final int size = Math.max(n, 0);
+
+        final ChannelBuffer header = ChannelBuffers.buffer(HEADER_SIZE);
+        header.writeShort(MSG_PAYLOAD);
+        header.writeInt(c.getConnectionId());
+        final ChannelBuffer frame = ChannelBuffers.wrappedBuffer(header, w.payload.readSlice(size));
+        final boolean last = !w.payload.readable();
+
+        c._sendCredit -= size;
+        if (last) c._outgoing.poll();
+
+        // failure to reconstruct WriteCompletion events would prevent IdleState handler from
+        // correctly detecting write timeouts (i.e. successful writes would never reset the
+        // timeout)
+        _channel.write(frame).addListener(cf -> {
+            if (cf.isSuccess()) {
+                w.written += size;
+                w.future.setProgress(size, w.written, w.total);
+                Channels.fireWriteComplete(c, size);
+                if (last) w.future.setSuccess();
+            } else {
+                w.future.setFailure(cf.getCause());
+            }
+        });
+        // NB: may fire an interest change and trigger new writes, keep after the frame is written
+        c.removeQueued(size);
+
+        if (c._outgoing.isEmpty() && c._closeAfterFlush != null) {
+            ChannelFuture f = c._closeAfterFlush;
+            c._closeAfterFlush = null;
+            writeClose(c, f);
+        }
+        return !c._outgoing.isEmpty();
+    }
+
+    /**
+     * Fail all pending writes of a virtual channel being disconnected
+     *
+     * To honor Netty's threading model, this should only be called from the channel's I/O thread
+     */
+    private void discard(VirtualChannel c)
+    {
+        PendingWrite w;
+        ClosedChannelException cause = null;
+        while ((w = c._outgoing.poll()) != null) {
+            if (cause == null) cause = new ClosedChannelException();
+            c.removeQueued(w.payload.readableBytes());
+            w.future.setFailure(cause);
+        }
+        if (c._closeAfterFlush != null) {
+            c._closeAfterFlush.setSuccess();
+            c._closeAfterFlush = null;
+        }
+    }
+
+    /**
+     * Return credit for the payload consumed by a readable virtual channel
+     *
+     * To honor Netty's threading model, this should only be called from the channel's I/O thread
+     */
+    private void grantCredit(VirtualChannel c)
+    {
+        if (!useCredit() || !c.isConnected() || !c.isReadable()
+                || c._recvUncredited < CREDIT_BATCH) {
+            return;
+        }
+        try {
+            final ChannelBuffer message = ChannelBuffers.buffer(HEADER_SIZE + 4);
+            message.writeShort(MSG_CREDIT);
+            message.writeInt(c.getConnectionId());
+            message.writeInt(c._recvUncredited);
+            write(message);
+            c._recvUncredited = 0;
+        } catch (ClosedChannelException e) {
+            l.debug("ignore credit {} -> {}", c, this);
+        }
+    }
+
+    private ChannelFuture writeMsg(int type, int connectionId) throws ClosedChannelException
+    {
         final ChannelBuffer message = ChannelBuffers.buffer(HEADER_SIZE);
         message.writeShort(type);
         message.writeInt(connectionId);
+        return write(message);
+    }
+
+    private ChannelFuture write(ChannelBuffer message) throws ClosedChannelException
+    {
+        if (!_channel.isConnected()) throw new ClosedChannelException();
         return _channel.write(message);
     }
 
@@ -325,6 +563,7 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
             writeMsg(suspend ? MSG_SUSPEND : MSG_RESUME, virtualChannel.getConnectionId());
             future.setSuccess();
             Channels.fireChannelInterestChanged(virtualChannel);
+            if (!suspend) grantCredit(virtualChannel);
         } catch (ClosedChannelException e) {
             l.warn("ignore write {} -> {}", virtualChannel, this);
             future.setFailure(e);
@@ -333,8 +572,26 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
 
     /**
      * Handle disconnection of virtual channel
+     *
+     * MSG_CLOSE is only sent after any pending write of the virtual channel
      */
     void onDisconnect(VirtualChannel virtualChannel, ChannelFuture future)
+    {
+        if (!_channel.isConnected()) {
+            l.warn("ignore disconnect {} -> {}", virtualChannel, this);
+            future.setSuccess();
+            return;
+        }
+        _channel.getPipeline().execute(() -> {
+            if (virtualChannel._outgoing.isEmpty()) {
+                writeClose(virtualChannel, future);
+            } else {
+                virtualChannel._closeAfterFlush = future;
+            }
+        });
+    }
+
+    private void writeClose(VirtualChannel virtualChannel, ChannelFuture future)
     {
         try {
             writeMsg(MSG_CLOSE, virtualChannel.getConnectionId());
@@ -366,44 +623,4 @@ public class TunnelHandler extends IdleStateAwareChannelUpstreamHandler implemen
         c.getPipeline().execute(() -> Channels.fireChannelConnected(c, _addr));
         return c;
     }
-
-    /**
-     * Helper class to auto-fragment large payloads
-     */
-    private static class Fragmenter implements ChunkedInput
-    {
-        private final ChannelBuffer _header;
-        private final ChannelBuffer _payload;
-
-        Fragmenter(ChannelBuffer header, ChannelBuffer payload)
-        {
-            _header = header;
-            _payload = payload;
-        }
-
-        @Override
-        public boolean hasNextChunk() throws Exception
-        {
-            return _payload.readableBytes() > 0;
-        }
-
-        @Override
-        public Object nextChunk() throws Exception
-        {
-            return ChannelBuffers.wrappedBuffer(_header,
-                    _payload.readSlice(Math.min(MAX_PAYLOAD_SIZE, _payload.readableBytes())));
-        }
-
-        @Override
-        public boolean isEndOfInput() throws Exception
-        {
-            return _payload.readableBytes() == 0;
-        }
-
-        @Override
-        public void close() throws Exception
-        {
-
-        }
-    }
 }
@@ -12,7 +12,6 @@ import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerBossPool;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioWorkerPool;
-import org.jboss.netty.handler.stream.ChunkedWriteHandler;
 import org.jboss.netty.util.Timer;
 
 import javax.annotation.Nullable;
@@ -54,7 +53,6 @@ public class TunnelServer extends AbstractNettyServer
                 TunnelHandler.newFrameDecoder(),
                 TunnelHandler.newLengthFieldPrepender(),
                 NettyUtil.newCNameVerificationHandler(handler, _user, _did),
-                new ChunkedWriteHandler(),
                 TunnelHandler.newIdleStateHandler(_timer),
                 handler
         );
@@ -15,9 +15,13 @@ import org.jboss.netty.channel.DefaultChannelConfig;
 import org.jboss.netty.channel.MessageEvent;
 import org.slf4j.Logger;
 
+import javax.annotation.Nullable;
 import java.net.SocketAddress;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A virtual channel operating on top of a physical tunnel channel
@@ -27,6 +31,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *
  * Multiple virtual channels are multiplexed on top of a single physical channel, using a 32bit
  * connection id.
+ *
+ * Outgoing messages are queued in the virtual channel until the tunnel handler frames them. The
+ * virtual channel becomes unwritable when too many bytes are queued, independently of the other
+ * virtual channels sharing the same physical channel.
  */
 public class VirtualChannel extends AbstractChannel
 {
@@ -79,10 +87,24 @@ public class VirtualChannel extends AbstractChannel
         }
     }
 
+    // writability of the virtual channel wrt the amount of queued outgoing bytes
+    static final int WRITE_HIGH_WATERMARK = TunnelHandler.INITIAL_WINDOW;
+    static final int WRITE_LOW_WATERMARK = TunnelHandler.INITIAL_WINDOW / 2;
+
     private final TunnelHandler _tunnel;
     private final ConnectionAddress _local;
     private final AtomicBoolean _connected = new AtomicBoolean(true);
 
+    private final AtomicLong _queued = new AtomicLong();
+    private final AtomicBoolean _queueFull = new AtomicBoolean();
+
+    // flow control state, only accessed from the I/O thread of the physical channel
+    final Queue<TunnelHandler.PendingWrite> _outgoing = new ArrayDeque<>();
+    int _sendCredit = TunnelHandler.INITIAL_WINDOW;
+    int _recvUncredited;
+    boolean _scheduled;
+    @Nullable ChannelFuture _closeAfterFlush;
+
     private final ChannelConfig _config = new DefaultChannelConfig();
 
     protected VirtualChannel(TunnelHandler tunnel, ChannelPipeline pipeline)
@@ -154,7 +176,7 @@ public class VirtualChannel extends AbstractChannel
     @Override
     public boolean isWritable()
     {
-        return super.isWritable() && _tunnel._channel.isWritable();
+        return super.isWritable() && !_queueFull.get();
     }
 
     @Override
@@ -189,6 +211,27 @@ public class VirtualChannel extends AbstractChannel
         }
     }
 
+    /**
+     * Account for outgoing bytes waiting to be framed, may be called from any thread
+     */
+    void addQueued(long n)
+    {
+        if (_queued.addAndGet(n) >= WRITE_HIGH_WATERMARK && _queueFull.compareAndSet(false, true)) {
+            // writability changes are notified in the I/O thread, as for regular channels
+            getPipeline().execute(() -> Channels.fireChannelInterestChanged(this));
+        }
+    }
+
+    /**
+     * To honor Netty's threading model, this should only be called from the channel's I/O thread
+     */
+    void removeQueued(long n)
+    {
+        if (_queued.addAndGet(-n) <= WRITE_LOW_WATERMARK && _queueFull.compareAndSet(true, false)) {
+            Channels.fireChannelInterestChanged(this);
+        }
+    }
+
     private void writeOutgoingMessage(VirtualChannel c, Object message, ChannelFuture future)
     {
         if (c.isConnected()) {
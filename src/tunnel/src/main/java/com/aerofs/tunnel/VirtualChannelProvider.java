@@ -60,6 +60,14 @@ public class VirtualChannelProvider
         return c;
     }
 
+    /**
+     * Unlike {@link #get}, never create a new virtual channel
+     */
+    public @Nullable VirtualChannel find(int connectionId)
+    {
+        return _connections.get(connectionId);
+    }
+
     public void put(VirtualChannel c)
     {
         Preconditions.checkState(_connections.put(c.getConnectionId(), c) == null);
@@ -89,6 +97,11 @@ public class VirtualChannelProvider
         return _connections.isEmpty();
     }
 
+    public int size()
+    {
+        return _connections.size();
+    }
+
     public void shutdown(Runnable onShutdownComplete) {
         if (!_shutdownCalled) {
             _shutdownCalled = true;
@@ -7,6 +7,7 @@ package com.aerofs.tunnel;
 import com.aerofs.ids.DID;
 import com.aerofs.ids.UniqueID;
 import com.aerofs.ids.UserID;
+import com.aerofs.base.C;
 import com.aerofs.base.net.NettyUtil;
 import com.aerofs.base.ssl.SSLEngineFactory;
 import com.aerofs.base.ssl.SSLEngineFactory.Mode;
@@ -17,6 +18,7 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
@@ -32,6 +34,7 @@ import java.util.concurrent.Future;
 
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -117,6 +120,37 @@ public class TestTunnel extends AbstractBaseTest
         return new Tunnel<>(c, serverConnections.nextConnection().get());
     }
 
+    /**
+     * Create a physical tunnel connection from a client that advertises no capabilities, as
+     * older versions
+     */
+    Tunnel<Channel, TunnelHandler> makeLegacyPhysical() throws Exception
+    {
+        ChannelFuture cf = new TunnelClient("127.0.0.1", port, user, did,
+                clientChannelFactory,
+                clientSslEngineFactory,
+                () -> Channels.pipeline(clientVirtualConnections.handler),
+                timer) {
+            @Override
+            protected ChannelPipelineFactory pipelineFactory()
+            {
+                return () -> {
+                    TunnelHandler handler = new TunnelHandler(null,
+                            () -> Channels.pipeline(clientVirtualConnections.handler), 0, 0);
+                    return Channels.pipeline(clientSslEngineFactory.newSslHandler(),
+                            TunnelHandler.newFrameDecoder(),
+                            TunnelHandler.newLengthFieldPrepender(),
+                            NettyUtil.newCNameVerificationHandler(handler, user, did),
+                            TunnelHandler.newIdleStateHandler(timer),
+                            handler);
+                };
+            }
+        }.connect();
+        Channel c = cf.getChannel();
+        cf.awaitUninterruptibly();
+        return new Tunnel<>(c, serverConnections.nextConnection().get());
+    }
+
     /**
      * Create a virtual tunnel connection, on top of a physical one
      */
@@ -133,6 +167,23 @@ public class TestTunnel extends AbstractBaseTest
         assertArrayEquals(expected, NettyUtil.toByteArray(actual));
     }
 
+    /**
+     * Wait until the hello of the client reached the server, i.e. until the server knows whether
+     * the client supports credit-based flow control
+     */
+    void awaitHello(Tunnel<Channel, Channel> v) throws Exception
+    {
+        v.client.write(ChannelBuffers.wrappedBuffer(MSG_HELLO));
+        assertBufferEquals(MSG_HELLO, serverVirtualConnections.messageReceived(v.server).get());
+    }
+
+    static long read(VirtualConnectionWatcher w, Channel c, long n) throws Exception
+    {
+        long total = 0;
+        while (total < n) total += w.messageReceived(c).get().readableBytes();
+        return total;
+    }
+
     @Test
     public void shouldOpenTunnelConnection() throws Exception
     {
@@ -394,4 +445,109 @@ public class TestTunnel extends AbstractBaseTest
         ChannelBuffer chunk1 = serverVirtualConnections.messageReceived(v.server).get();
         assertBufferEquals(large.array(), ChannelBuffers.wrappedBuffer(chunk0, chunk1));
     }
+
+    @Test
+    public void shouldHoldBackPayloadUntilCreditGranted() throws Exception
+    {
+        Tunnel<Channel, TunnelHandler> p = makePhysical();
+        Tunnel<Channel, Channel> v = makeVirtual(p.server);
+        awaitHello(v);
+
+        v.client.setReadable(false).awaitUninterruptibly();
+        ChannelFuture f = v.server.write(
+                ChannelBuffers.wrappedBuffer(new byte[2 * TunnelHandler.INITIAL_WINDOW]));
+
+        // no credit is granted while the receiving side is suspended
+        assertEquals(TunnelHandler.INITIAL_WINDOW,
+                read(clientVirtualConnections, v.client, TunnelHandler.INITIAL_WINDOW));
+        Future<ChannelBuffer> next = clientVirtualConnections.messageReceived(v.client);
+        Thread.sleep(200);
+        assertFalse(next.isDone());
+        assertFalse(f.isDone());
+
+        v.client.setReadable(true);
+        long n = next.get().readableBytes();
+        assertEquals(TunnelHandler.INITIAL_WINDOW - n,
+                read(clientVirtualConnections, v.client, TunnelHandler.INITIAL_WINDOW - n));
+        assertTrue(f.awaitUninterruptibly().isSuccess());
+    }
+
+    @Test
+    public void shouldRefillCreditAsPayloadIsConsumed() throws Exception
+    {
+        Tunnel<Channel, TunnelHandler> p = makePhysical();
+        Tunnel<Channel, Channel> v = makeVirtual(p.server);
+        awaitHello(v);
+
+        // each side exhausts its initial credit many times over, in both directions
+        ChannelFuture down = v.server.write(
+                ChannelBuffers.wrappedBuffer(new byte[8 * TunnelHandler.INITIAL_WINDOW]));
+        ChannelFuture up = v.client.write(
+                ChannelBuffers.wrappedBuffer(new byte[8 * TunnelHandler.INITIAL_WINDOW]));
+
+        assertEquals(8 * TunnelHandler.INITIAL_WINDOW,
+                read(clientVirtualConnections, v.client, 8 * TunnelHandler.INITIAL_WINDOW));
+        assertEquals(8 * TunnelHandler.INITIAL_WINDOW,
+                read(serverVirtualConnections, v.server, 8 * TunnelHandler.INITIAL_WINDOW));
+        assertTrue(down.awaitUninterruptibly().isSuccess());
+        assertTrue(up.awaitUninterruptibly().isSuccess());
+    }
+
+    @Test
+    public void shouldNotHoldBackPayloadWithLegacyPeer() throws Exception
+    {
+        Tunnel<Channel, TunnelHandler> p = makeLegacyPhysical();
+        Tunnel<Channel, Channel> v = makeVirtual(p.server);
+        v.client.write(ChannelBuffers.wrappedBuffer(MSG_HELLO));
+        assertBufferEquals(MSG_HELLO, serverVirtualConnections.messageReceived(v.server).get());
+
+        // older peers neither grant nor expect credit: suspension does not stop the payload
+        v.client.setReadable(false).awaitUninterruptibly();
+        v.server.setReadable(false).awaitUninterruptibly();
+        ChannelFuture down = v.server.write(
+                ChannelBuffers.wrappedBuffer(new byte[2 * TunnelHandler.INITIAL_WINDOW]));
+        ChannelFuture up = v.client.write(
+                ChannelBuffers.wrappedBuffer(new byte[2 * TunnelHandler.INITIAL_WINDOW]));
+
+        assertEquals(2 * TunnelHandler.INITIAL_WINDOW,
+                read(clientVirtualConnections, v.client, 2 * TunnelHandler.INITIAL_WINDOW));
+        assertEquals(2 * TunnelHandler.INITIAL_WINDOW,
+                read(serverVirtualConnections, v.server, 2 * TunnelHandler.INITIAL_WINDOW));
+        assertTrue(down.awaitUninterruptibly().isSuccess());
+        assertTrue(up.awaitUninterruptibly().isSuccess());
+        assertTrue(p.server._channel.isConnected());
+    }
+
+    @Test
+    public void shouldInterleaveVirtualChannels() throws Exception
+    {
+        Tunnel<Channel, TunnelHandler> p = makePhysical();
+        Tunnel<Channel, Channel> bulk = makeVirtual(p.server);
+        Tunnel<Channel, Channel> v = makeVirtual(p.server);
+        awaitHello(v);
+
+        ChannelFuture f = bulk.server.write(ChannelBuffers.wrappedBuffer(new byte[16 * C.MB]));
+        v.server.write(ChannelBuffers.wrappedBuffer(MSG_WORLD));
+
+        // the small message must not wait for the large one to be entirely sent
+        assertBufferEquals(MSG_WORLD, clientVirtualConnections.messageReceived(v.client).get());
+        assertFalse(f.isDone());
+        assertEquals(16 * C.MB, read(clientVirtualConnections, bulk.client, 16 * C.MB));
+        assertTrue(f.awaitUninterruptibly().isSuccess());
+    }
+
+    @Test
+    public void shouldCloseAfterPendingWrites() throws Exception
+    {
+        Tunnel<Channel, TunnelHandler> p = makePhysical();
+        Tunnel<Channel, Channel> v = makeVirtual(p.server);
+
+        v.server.write(ChannelBuffers.wrappedBuffer(new byte[4 * TunnelHandler.INITIAL_WINDOW]));
+        v.server.close();
+
+        assertEquals(4 * TunnelHandler.INITIAL_WINDOW,
+                read(clientVirtualConnections, v.client, 4 * TunnelHandler.INITIAL_WINDOW));
+        v.client.getCloseFuture().awaitUninterruptibly();
+        v.server.getCloseFuture().awaitUninterruptibly();
+    }
 }
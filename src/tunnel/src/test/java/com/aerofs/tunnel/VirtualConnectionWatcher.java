@@ -79,8 +79,9 @@ public class VirtualConnectionWatcher extends ConnectionWatcher<Channel>
         {
             l.info("disconnected {}", ctx.getChannel());
             disconnected(ctx.getChannel());
+            // keep the watcher: messages received before disconnection may not be read yet
             synchronized (_watchers) {
-                Preconditions.checkNotNull(_watchers.remove(ctx.getChannel()));
+                Preconditions.checkNotNull(_watchers.get(ctx.getChannel()));
             }
         }
 
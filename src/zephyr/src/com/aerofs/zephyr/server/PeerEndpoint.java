@@ -7,6 +7,7 @@ package com.aerofs.zephyr.server;
 
 import com.aerofs.base.Loggers;
 import com.aerofs.zephyr.server.ServerConstants.EndpointState;
+import com.aerofs.zephyr.server.core.Dispatcher;
 import com.aerofs.zephyr.server.core.ExAlreadyBound;
 import com.aerofs.zephyr.server.core.FatalIOEventHandlerException;
 import com.aerofs.zephyr.server.core.IIOEventHandler;
@@ -15,6 +16,7 @@ import org.slf4j.Logger;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Arrays;
@@ -40,13 +42,22 @@ import static java.nio.channels.SelectionKey.OP_READ;
 import static java.nio.channels.SelectionKey.OP_WRITE;
 
 /**
- * - find a way to avoid looking up the id in the map every single time
+ * Each PeerEndpoint is owned by a single reactor ({@link Dispatcher}), its home, and is only ever
+ * accessed in the context of that reactor's thread, with the exception of {@link #bind}.
+ *
+ * When the server runs several reactors, the two ends of a relayed connection may initially be
+ * owned by different reactors. Once bound, the endpoint with the larger id moves to the home of
+ * the other one and data starts being relayed only when both are on the same reactor. This way
+ * a buffer read from one end is written as is to the other without any cross-thread hand-off.
+ * The endpoint with the smaller id never moves, which ensures that the two ends cannot chase
+ * each other across reactors.
+ *
  * - need setstate() function
  */
 public class PeerEndpoint implements IIOEventHandler
 {
 
-    public PeerEndpoint(int id, String ouraddr, ZephyrServer boss)
+    public PeerEndpoint(int id, String ouraddr, ZephyrServer boss, Dispatcher home)
     {
         checkArgument(id != ZEPHYR_INVALID_CHAN_ID, "invalid id:" + id);
 
@@ -54,6 +65,8 @@ public class PeerEndpoint implements IIOEventHandler
         // (i.e. keep only one buffer in play between the peers)
 
         _boss = boss;
+        _home = home;
+        _key = null;
         _ourid = id;
         _ouraddr = ouraddr;
         _remid = ZEPHYR_INVALID_CHAN_ID;
@@ -72,8 +85,10 @@ public class PeerEndpoint implements IIOEventHandler
         checkState(_state == CONNECTED, compact() + ": invalid init state:" + _state);
         checkState(_wrbuf == null, compact() + ": init w/ pending wrbuf:" + _wrbuf);
 
+        _key = k;
+
         try {
-            ByteBuffer reg = _boss.getBuffer();
+            ByteBuffer reg = _home.getBuffer();
             checkState(reg.capacity() >= ZEPHYR_REG_MSG_LEN, compact() + ": insufficient cap:" + reg.capacity());
             checkState(reg.position() == 0, compact() + ": invalid pos:" + reg.position());
 
@@ -109,7 +124,7 @@ public class PeerEndpoint implements IIOEventHandler
             if (_remid != ZEPHYR_INVALID_CHAN_ID) {
                 checkState(_state != CONNECTED, "bound remid:" + _remid + " state:" + _state);
                 PeerEndpoint srcpe = _boss.getPeerEndpoint(_remid);
-                srcpe.writeFinished();
+                if (srcpe._home == _home) srcpe.writeFinished();
             }
 
             if (_state == CONNECTED) {
@@ -201,15 +216,22 @@ public class PeerEndpoint implements IIOEventHandler
                 // bind (our side)
 
                 bind(dstid, dstpe.getSourceAddress());
-                transition(BOUND);
 
                 // clear out the bind buffer
 
                 _bindb = null;
 
-                // signal readiness to read again
-
-                addInterest(k, SelectionKey.OP_READ);
+                // the home of dstpe cannot change from under us: either it has
+                // the smaller id, in which case it never moves, or we have the
+                // smaller id and dstpe can only move to our home, which would
+                // happen in the context of this thread
+
+                Dispatcher dsthome = dstpe._home;
+                if (dsthome != _home && _ourid > dstid) {
+                    migrate(k, dsthome, dstpe);
+                } else {
+                    transitionIntoBoundState(k, dstpe);
+                }
             } catch (ExInvalidPeerEndpoint e) {
                 handleException(e, "invalid pe:" + dstid);
                 return;
@@ -223,6 +245,50 @@ public class PeerEndpoint implements IIOEventHandler
         }
     }
 
+    private void transitionIntoBoundState(SelectionKey k, PeerEndpoint dstpe)
+    {
+        transition(BOUND);
+
+        // signal readiness to read again
+
+        addInterest(k, SelectionKey.OP_READ);
+
+        // our destination may have stopped reading while waiting for us to
+        // move onto its reactor (see processInBoundState)
+
+        if (dstpe._home == _home) dstpe.writeFinished();
+    }
+
+    /**
+     * Move this PeerEndpoint (and its channel) to another reactor and complete
+     * the transition into the bound state there
+     *
+     * @param k our {@link SelectionKey} on the current reactor; cancelled by this call
+     * @param home reactor to move to (i.e. the home of {@code dstpe})
+     * @param dstpe PeerEndpoint to which we are bound
+     */
+    private void migrate(SelectionKey k, Dispatcher home, PeerEndpoint dstpe)
+    {
+        checkState(_wrbuf == null, compact() + ": migrate w/ pending wrbuf:" + _wrbuf);
+
+        l.info("{}: migrate", compact());
+
+        // the channel can be registered with the new selector while the
+        // cancelled key is still registered with the old one
+        SelectableChannel ch = k.channel();
+        k.cancel();
+
+        home.execute(() -> {
+            _home = home;
+            try {
+                _key = home.register(ch, this, 0);
+                transitionIntoBoundState(_key, dstpe);
+            } catch (IOException e) {
+                handleException(e, "fail migrate");
+            }
+        });
+    }
+
     private void processInBoundState(SelectionKey k)
     {
         checkState(_state == BOUND, compact() + ":state:" + _state + ":invalid for func");
@@ -247,6 +313,13 @@ public class PeerEndpoint implements IIOEventHandler
             return;
         }
 
+        if (dstpe._home != _home) {
+            // do not read until dstpe is on our reactor. it will signal us
+            // once it gets here
+            l.trace("{}: dst:{} on other reactor do not read", compact(), _remid);
+            return;
+        }
+
         if (!dstpe.isWritable()) {
             // do not read! this will get the sender's flow control working...
             // assumes that we are level triggered
@@ -255,7 +328,7 @@ public class PeerEndpoint implements IIOEventHandler
         }
 
         boolean passedOwnership = false;
-        ByteBuffer b = _boss.getBuffer();
+        ByteBuffer b = _home.getBuffer();
         try {
             // read from our side
             ServerConstants.ReadStatus status = read(k, ch, b);
@@ -263,8 +336,7 @@ public class PeerEndpoint implements IIOEventHandler
                 return;
             }
 
-            // find a way to avoid doing this...
-            SelectionKey dkey = _boss.getSelectionKey(_remid);
+            SelectionKey dkey = dstpe._key;
             checkNotNull(dkey, compact() + ": null key for dst:" + _remid);
 
             // we've received a few bytes to be transmitted to the dest peer
@@ -277,7 +349,7 @@ public class PeerEndpoint implements IIOEventHandler
                 addInterest(k, SelectionKey.OP_READ);
             }
         } catch (IOException e) {
-            if (!passedOwnership) _boss.putBuffer(b);
+            if (!passedOwnership) _home.putBuffer(b);
             handleException(e, "fail relay");
         }
 
@@ -305,7 +377,7 @@ public class PeerEndpoint implements IIOEventHandler
      * @param addr remote address of the endpoint that initiated the bind
      * @throws ExAlreadyBound if the channel is already bound to any other zid
      */
-    public void bind(int id, String addr)
+    public synchronized void bind(int id, String addr)
         throws ExAlreadyBound
     {
         checkArgument(id != ZEPHYR_INVALID_CHAN_ID, compact() + ": invalid id:" + id + " for bind");
@@ -333,7 +405,7 @@ public class PeerEndpoint implements IIOEventHandler
         _bindb = null;
 
         if (_wrbuf != null) {
-            _boss.putBuffer(_wrbuf);
+            _home.putBuffer(_wrbuf);
             _wrbuf = null;
         }
 
@@ -345,7 +417,13 @@ public class PeerEndpoint implements IIOEventHandler
 
         try {
             PeerEndpoint dstpe = _boss.getPeerEndpoint(_remid);
-            dstpe.terminate("rem terminated cause:" + cause);
+            String remcause = "rem terminated cause:" + cause;
+            Dispatcher dsthome = dstpe._home;
+            if (dsthome.inDispatcherThread()) {
+                dstpe.terminate(remcause);
+            } else {
+                dsthome.execute(() -> dstpe.terminate(remcause));
+            }
         } catch (ExInvalidPeerEndpoint e) {
             // ignore
         }
@@ -376,8 +454,10 @@ public class PeerEndpoint implements IIOEventHandler
      */
     private void writeFinished()
     {
-        SelectionKey k = _boss.getSelectionKey(_ourid);
-        k = checkNotNull(k, compact() + ": null self key");
+        // only bound endpoints read anything but the bind message
+        if (_state != BOUND) return;
+
+        SelectionKey k = checkNotNull(_key, compact() + ": null self key");
 
         if (!k.isValid()) return;
 
@@ -438,7 +518,7 @@ public class PeerEndpoint implements IIOEventHandler
             return allwritten;
         } finally {
             if (_wrbuf == null) {
-                _boss.putBuffer(intransit);
+                _home.putBuffer(intransit);
             }
         }
     }
@@ -512,6 +592,27 @@ public class PeerEndpoint implements IIOEventHandler
         return status;
     }
 
+    int getId()
+    {
+        return _ourid;
+    }
+
+    /**
+     * @return the reactor that owns this PeerEndpoint
+     */
+    Dispatcher getHome()
+    {
+        return _home;
+    }
+
+    /**
+     * @return our {@link SelectionKey} on our home reactor; null until registered
+     */
+    @Nullable SelectionKey getSelectionKey()
+    {
+        return _key;
+    }
+
     /**
      * @return the remote address from which our peer is sending data
      */
@@ -593,17 +694,23 @@ public class PeerEndpoint implements IIOEventHandler
     /** the server who spawned us */
     private ZephyrServer _boss;
 
+    /** reactor in the context of which we run; only changes once, when we move next to our destination */
+    private volatile Dispatcher _home;
+
+    /** our key on our home reactor */
+    private volatile SelectionKey _key;
+
     /** this peer's channel id */
     private int _ourid;
 
-    /** id of the channel we're sending packets to (remid = "rem id") */
-    private int _remid;
+    /** id of the channel we're sending packets to (remid = "rem id"); may be set from another reactor by bind() */
+    private volatile int _remid;
 
     /** source address for this peer */
     private final String _ouraddr;
 
     /** remote address of the peer to which we're bound */
-    private String _remaddr;
+    private volatile String _remaddr;
 
     /** single {@code ByteBuffer} that holds the bind-message being read from the client */
     private ByteBuffer _bindb;
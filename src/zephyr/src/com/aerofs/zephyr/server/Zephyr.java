@@ -2,6 +2,7 @@ package com.aerofs.zephyr.server;
 
 import com.aerofs.base.DefaultUncaughtExceptionHandler;
 import com.aerofs.base.Loggers;
+import com.aerofs.zephyr.server.core.BufferPool;
 import com.aerofs.zephyr.server.core.Dispatcher;
 import org.slf4j.Logger;
 
@@ -14,6 +15,8 @@ public class Zephyr
 {
     private static final Logger l = Loggers.getLogger(Zephyr.class);
 
+    private static final int MIN_POOL_SIZE = 64;
+
     public static void main(String args[])
             throws IOException
     {
@@ -22,7 +25,7 @@ public class Zephyr
         // get the command-line arguments
 
         if (args.length < 2) {
-            System.err.println("usage: <prog_name> [listen_host] [listen_port]");
+            System.err.println("usage: <prog_name> [listen_host] [listen_port] [reactors]");
             System.exit(1);
         }
 
@@ -34,12 +37,18 @@ public class Zephyr
 
         String host = args[0];
         short port = Short.parseShort(args[1]);
+        int reactors = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        if (reactors < 1) {
+            System.err.println("reactors must be > 0");
+            System.exit(1);
+        }
 
         // run zephyr
 
         try {
-            l.info("zephyr: {}:{}", host, port);
-            ZephyrServer z = new ZephyrServer(host, port, new Dispatcher());
+            l.info("zephyr: {}:{} reactors:{}", host, port, reactors);
+            ZephyrServer z = new ZephyrServer(host, port, newReactors(reactors));
             z.init();
             z.start(); // blocking run
         } catch (IOException e) {
@@ -47,6 +56,21 @@ public class Zephyr
         }
     }
 
+    /**
+     * Each reactor gets its own buffer pool, sized so that the total amount of direct memory
+     * pooled does not depend on the number of reactors
+     */
+    static Dispatcher[] newReactors(int count)
+    {
+        int poolsize = Math.max(Dispatcher.DEFAULT_POOL_SIZE / count, MIN_POOL_SIZE);
+        Dispatcher[] reactors = new Dispatcher[count];
+        for (int i = 0; i < count; i++) {
+            reactors[i] = new Dispatcher(
+                    new BufferPool(Dispatcher.DEFAULT_BUFFER_SIZE, poolsize, true));
+        }
+        return reactors;
+    }
+
     private static void logBanner(String bannerFilename)
     {
         BufferedReader bannerReader = null;
@@ -6,7 +6,6 @@
 package com.aerofs.zephyr.server;
 
 import com.aerofs.base.Loggers;
-import com.aerofs.zephyr.server.core.BufferPool;
 import com.aerofs.zephyr.server.core.Dispatcher;
 import com.aerofs.zephyr.server.core.FatalIOEventHandlerException;
 import com.aerofs.zephyr.server.core.IIOEventHandler;
@@ -14,7 +13,6 @@ import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
@@ -26,7 +24,6 @@ import static com.aerofs.zephyr.Constants.ZEPHYR_INVALID_CHAN_ID;
 import static com.aerofs.zephyr.server.core.ZUtil.addInterest;
 import static com.aerofs.zephyr.server.core.ZUtil.closeChannel;
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Maps.newHashMap;
 import static java.nio.channels.SelectionKey.OP_ACCEPT;
@@ -35,24 +32,29 @@ import static java.nio.channels.SelectionKey.OP_ACCEPT;
  * This is the boss IIoEventHandler. It creates PeerEndpoint objects and
  * registers them with the parent Dispatcher
  *
+ * When given more than one Dispatcher (reactor), connections are accepted on
+ * the first one and sharded across all of them by id, each reactor running in
+ * its own thread. Bound peers always end up on the same reactor (see
+ * {@link PeerEndpoint}) so that relayed bytes are handed over directly between
+ * them without any locking.
+ *
  * - default bytebuffer size should be configurable
  * - should have a way of setting the random seed
  * - look closer at NioProviderMetadata
- * - should Zephyr have the buffer pool? Maybe it should init with a reference to
- *   a buffer pool
  * - have to have timeouts so that I prune connections for which no data was sent
- * - find a way to avoid returning the selectionkey to arbitrary pes
  */
 public class ZephyrServer implements IIOEventHandler
 {
-    public ZephyrServer(String host, short port, Dispatcher d)
+    public ZephyrServer(String host, short port, Dispatcher... reactors)
     {
+        checkArgument(reactors.length > 0, "z: no reactors");
+
         _host = host;
         _port = port;
-        _d = d;
+        _d = reactors[0];
+        _reactors = reactors.clone();
         _nextid = 0;
-        _idToKey = new ConcurrentHashMap<Integer, SelectionKey>();
-        _bufpool = new BufferPool(32768, 1024);
+        _endpoints = new ConcurrentHashMap<Integer, PeerEndpoint>();
         _srvsoc = null;
         _inited = false;
     }
@@ -60,7 +62,7 @@ public class ZephyrServer implements IIOEventHandler
     public void init() throws IOException
     {
         try {
-            _d.init();
+            for (Dispatcher d : _reactors) d.init();
 
             InetSocketAddress isa = new InetSocketAddress(_host, _port);
 
@@ -82,6 +84,11 @@ public class ZephyrServer implements IIOEventHandler
 
     public void start()
     {
+        for (int i = 1; i < _reactors.length; i++) {
+            Thread t = new Thread(_reactors[i], "zr" + i);
+            t.start();
+        }
+
         _d.run();
     }
 
@@ -122,73 +129,96 @@ public class ZephyrServer implements IIOEventHandler
         String remaddr = sc.socket().getRemoteSocketAddress().toString();
         l.debug("z: conn from:{}", remaddr);
 
-        int id = ZEPHYR_INVALID_CHAN_ID;
         try {
             sc.configureBlocking(false);
             sc.socket().setTcpNoDelay(true);
             sc.socket().setSoLinger(true, 0);
             sc.socket().setSendBufferSize(SEND_BUFFER_SIZE);
             sc.socket().setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+        } catch (IOException e) {
+            l.warn("z: sc:{}:fail config with ioe:{}", sc, e);
 
-            id = _nextid++;
-            checkState(!_idToKey.containsKey(id), "z: id:" + id + " already used");
+            closeChannel(sc);
+            addInterest(k, OP_ACCEPT);
+            return;
+        }
 
-            PeerEndpoint ep = new PeerEndpoint(id, remaddr, this);
-            SelectionKey pek = _d.register(sc, ep, 0); // hackish - but don't register for reads until we've sent the registration msg (hope this is OK!)
+        int id = _nextid++;
+        Dispatcher home = _reactors[Math.abs(id % _reactors.length)];
+        PeerEndpoint ep = new PeerEndpoint(id, remaddr, this, home);
 
-            l.info("z: create pe: map k:{} -> pe:{}", pek, ep.toString());
+        // regardless of whether the message is sent back to the peer,
+        // I want to put this id in the _endpoints map (so that this id is
+        // not used again) this is because I don't know when the message
+        // with this id is going to be sent out (if ever), but I don't want
+        // to accidentally send two clients the same id
+        PeerEndpoint prev = _endpoints.put(id, ep);
+        checkState(prev == null, "z: id:" + id + ":not unique");
+
+        if (home == _d) {
+            register(sc, ep);
+        } else {
+            home.execute(() -> register(sc, ep));
+        }
+
+        addInterest(k, OP_ACCEPT);
+
+        l.debug("z: acc hdl fin:" + System.currentTimeMillis());
+    }
 
-            // regardless of whether the message is sent back to the peer,
-            // I want to put this id in the _idToKey map (so that this id is
-            // not used again) this is because I don't know when the message
-            // with this id is going to be sent out (if ever), but I don't want
-            // to accidentally send two clients the same id
-            SelectionKey prev = _idToKey.put(id, pek);
-            checkState(prev == null, "z: id:" + id + ":not unique");
+    /**
+     * Registers a newly-accepted channel with the reactor of its PeerEndpoint
+     *
+     * @important must be called in the context of the PeerEndpoint's reactor thread
+     */
+    private void register(SocketChannel sc, PeerEndpoint ep)
+    {
+        int id = ep.getId();
+        if (_endpoints.get(id) != ep) {
+            l.warn("z: id:{}:removed before reg", id);
+            closeChannel(sc);
+            return;
+        }
+
+        try {
+            SelectionKey pek = ep.getHome().register(sc, ep, 0); // hackish - but don't register for reads until we've sent the registration msg (hope this is OK!)
+
+            l.info("z: create pe: map k:{} -> pe:{}", pek, ep.toString());
 
             ep.init(pek); // I'm really not a fan of doing this, because now they have access to the channel as well...
         } catch(ClosedChannelException e) {
             l.warn("z: sc:{}:fail reg with cce:{}", sc, e);
 
-            _idToKey.remove(id);
+            _endpoints.remove(id);
             closeChannel(sc);
         } catch (IOException e) {
             l.warn("z: sc:{}:fail reg with ioe:{}", sc, e);
 
-            _idToKey.remove(id);
+            _endpoints.remove(id);
             closeChannel(sc);
         }
-
-        addInterest(k, OP_ACCEPT);
-
-        l.debug("z: acc hdl fin:" + System.currentTimeMillis());
     }
 
     public void stop()
     {
         closeChannel(_srvsoc);
 
-        Map<Integer, SelectionKey> idToKey = newHashMap(_idToKey);
+        Map<Integer, PeerEndpoint> endpoints = newHashMap(_endpoints);
 
-        SelectionKey k = null;
-        for (Map.Entry<Integer, SelectionKey> entry : idToKey.entrySet()) {
+        for (Map.Entry<Integer, PeerEndpoint> entry : endpoints.entrySet()) {
+            PeerEndpoint pe = entry.getValue();
             try {
-                k = entry.getValue();
-
-                checkNotNull(k, "z: id:" + entry.getKey() + ":null key");
-                checkState(k.attachment() != null, "z: id:" + entry.getKey() + ":null att");
-
-                PeerEndpoint pe = (PeerEndpoint) k.attachment();
                 pe.terminate("system-wide termination");
             } catch (Exception e) {
                 l.warn("z: fail to terminate id:{}", entry.getKey());
 
+                SelectionKey k = pe.getSelectionKey();
                 if (k != null) closeChannel(k.channel());
             }
         }
 
-        _idToKey.clear();
-        _d.shutdown();
+        _endpoints.clear();
+        for (Dispatcher d : _reactors) d.shutdown();
     }
 
     //
@@ -199,18 +229,25 @@ public class ZephyrServer implements IIOEventHandler
     {
         if (id == ZEPHYR_INVALID_CHAN_ID) return;
 
-        SelectionKey k = _idToKey.remove(id);
-
-        // cancelling the key is not strictly necessary since this is done
-        // implicitly by the close
-        if (k != null) {
-            k.cancel();
-        } else {
+        PeerEndpoint pe = _endpoints.remove(id);
+        if (pe == null) {
             // may also happen because we call removeEndpoint multiple times
+            l.warn("z: id:{}:null pe", id);
+            return;
+        }
+
+        // the channel of a PeerEndpoint that was not registered yet is closed
+        // by register()
+        SelectionKey k = pe.getSelectionKey();
+        if (k == null) {
             l.warn("z: id:{}:null k", id);
             return;
         }
 
+        // cancelling the key is not strictly necessary since this is done
+        // implicitly by the close
+        k.cancel();
+
         if (k.channel() != null) {
             closeChannel(k.channel());
         } else {
@@ -218,43 +255,27 @@ public class ZephyrServer implements IIOEventHandler
         }
     }
 
-    public SelectionKey getSelectionKey(int id)
-    {
-        SelectionKey k = _idToKey.get(id);
-        if (k != null && !k.isValid()) k = null;
-        return k;
-    }
-
     /**
-     * Returns the attachment of an {@link SelectionKey} cast into a
-     * {@link PeerEndpoint} if the PeerEndpoint exists and is valid
+     * Returns the {@link PeerEndpoint} with the given id if it exists
      *
      * @param id id of the from which to get the data
      * @return a non-null PeerEndpoint object
-     * @throws ExInvalidPeerEndpoint if the PeerEndpoint is invalid or doesn't exist
+     * @throws ExInvalidPeerEndpoint if the PeerEndpoint doesn't exist
      */
     public PeerEndpoint getPeerEndpoint(int id)
         throws ExInvalidPeerEndpoint
     {
-        SelectionKey k = getSelectionKey(id);
-        if (k == null) throw new ExInvalidPeerEndpoint(id);
-
-        PeerEndpoint pe = (PeerEndpoint) k.attachment();
-        checkArgument(pe != null, "k:" + k + ": null att");
+        PeerEndpoint pe = _endpoints.get(id);
+        if (pe == null) throw new ExInvalidPeerEndpoint(id);
         return pe;
     }
 
     /**
-     * @return a valid byte buffer of the default allocation size
+     * @return the port on which connections are accepted
      */
-    public ByteBuffer getBuffer()
-    {
-       return _bufpool.getBuffer_();
-    }
-
-    public void putBuffer(ByteBuffer b)
+    int getLocalPort()
     {
-       _bufpool.putBuffer_(b);
+        return _srvsoc.socket().getLocalPort();
     }
 
     //
@@ -288,9 +309,9 @@ public class ZephyrServer implements IIOEventHandler
     private final String _host;
     private final short _port;
     private final Dispatcher _d;
+    private final Dispatcher[] _reactors;
     private int _nextid;
-    private final Map<Integer, SelectionKey> _idToKey;
-    private final BufferPool _bufpool;
+    private final Map<Integer, PeerEndpoint> _endpoints;
     private ServerSocketChannel _srvsoc;
     private boolean _inited;
 
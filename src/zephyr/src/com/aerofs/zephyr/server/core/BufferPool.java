@@ -20,7 +20,8 @@ import static java.nio.ByteOrder.BIG_ENDIAN;
  *
  * Also, .equals() should be consistent with hashcode()
  *
- * FIXME: does a buffer pool actually save us any time? Or are we better off simply doing JVM allocs?
+ * Pooling mostly matters for direct buffers, which are far more expensive to allocate than heap
+ * buffers and are only reclaimed on GC.
  */
 public class BufferPool
 {
@@ -31,20 +32,38 @@ public class BufferPool
      * @param poolsize maximum size of the buffer pool
      */
     public BufferPool(int bufcapacity, int poolsize)
+    {
+        this(bufcapacity, poolsize, false);
+    }
+
+    /**
+     * Constructor
+     * @param bufcapacity capacity of each ByteBuffer (all ByteBuffers returned
+     * by this pool will have this capacity)
+     * @param poolsize maximum size of the buffer pool
+     * @param direct whether to allocate direct ByteBuffers instead of heap ones
+     */
+    public BufferPool(int bufcapacity, int poolsize, boolean direct)
     {
         assert (bufcapacity > 0 && poolsize > 0) :
             ("invalid construct parameters for BufferPool");
 
         _bufsize = bufcapacity;
+        _direct = direct;
         _buffers = new ByteBuffer[poolsize];
         _bufidx = _buffers.length - 1; // point to last ByteBuffer in array
 
         for (int i = 0; i < poolsize; ++i) {
-            _buffers[i] = ByteBuffer.allocate(bufcapacity);
+            _buffers[i] = allocate();
             _buffers[i].order(BIG_ENDIAN);
         }
     }
 
+    private ByteBuffer allocate()
+    {
+        return _direct ? ByteBuffer.allocateDirect(_bufsize) : ByteBuffer.allocate(_bufsize);
+    }
+
     /**
      * Gets a ByteBuffer (will never block - i.e. I will create one for you if the
      * pool is exhausted)
@@ -53,7 +72,7 @@ public class BufferPool
      */
     public synchronized ByteBuffer getBuffer_()
     {
-        ByteBuffer b = (_bufidx < 0 ? ByteBuffer.allocate(_bufsize) : _buffers[_bufidx--]);
+        ByteBuffer b = (_bufidx < 0 ? allocate() : _buffers[_bufidx--]);
         b.clear();
         b.order(BIG_ENDIAN);
         return b;
@@ -88,6 +107,9 @@ public class BufferPool
     /** size to make each individual buffer */
     private final int _bufsize;
 
+    /** whether buffers are allocated outside of the java heap */
+    private final boolean _direct;
+
     /** set of buffers available to be used */
     private final ByteBuffer[] _buffers;
 
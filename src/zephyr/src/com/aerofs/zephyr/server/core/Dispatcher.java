@@ -8,12 +8,15 @@ import com.aerofs.base.Loggers;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static com.aerofs.zephyr.server.core.ZUtil.closeChannel;
 import static com.aerofs.zephyr.server.core.ZUtil.istdesc;
@@ -36,9 +39,27 @@ import static java.nio.channels.SelectionKey.OP_WRITE;
  * message creation functions should handle BufferOverflowException - need to be able to send in the
  * channels on which I want to wait, etc. for testing - do all IoEventHandlers need a terminate
  * function?
+ *
+ * Each Dispatcher owns a pool of direct buffers for use by the handlers running on its thread.
+ * Direct buffers are passed to the socket as is, whereas heap buffers are copied to and from a
+ * temporary direct buffer by the JDK on every read and write.
+ *
+ * Several Dispatchers may run side by side (see {@link com.aerofs.zephyr.server.ZephyrServer}).
+ * Other threads must not touch the channels registered with a Dispatcher directly: registering a
+ * channel blocks until the selector wakes up, so they {@link #execute} a task instead.
  */
 public class Dispatcher implements Runnable
 {
+    public Dispatcher()
+    {
+        this(new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_POOL_SIZE, true));
+    }
+
+    public Dispatcher(BufferPool bufpool)
+    {
+        _bufpool = bufpool;
+    }
+
     public void init()
             throws IOException
     {
@@ -59,6 +80,7 @@ public class Dispatcher implements Runnable
 
         if (_started) return;
         _started = true;
+        _thread = Thread.currentThread();
 
         l.info("zd: starting");
 
@@ -86,6 +108,7 @@ public class Dispatcher implements Runnable
                     }
                 }
 
+                runTasks();
                 processNonNioEvents();
             }
         } catch (FatalIOEventHandlerException e) {
@@ -106,6 +129,39 @@ public class Dispatcher implements Runnable
         l.info("zd: received stop");
     }
 
+    /**
+     * Run a task in the context of the dispatcher thread
+     *
+     * Safe to call from any thread. Tasks run in submission order, after the ready keys of the
+     * current iteration have been handled.
+     */
+    public final void execute(Runnable task)
+    {
+        _tasks.add(task);
+        _sel.wakeup();
+    }
+
+    /**
+     * @return whether the caller is running in the context of the dispatcher thread
+     */
+    public final boolean inDispatcherThread()
+    {
+        return Thread.currentThread() == _thread;
+    }
+
+    /**
+     * @return a valid byte buffer of the default allocation size
+     */
+    public final ByteBuffer getBuffer()
+    {
+        return _bufpool.getBuffer_();
+    }
+
+    public final void putBuffer(ByteBuffer b)
+    {
+        _bufpool.putBuffer_(b);
+    }
+
     public final SelectionKey register(SelectableChannel c, IIOEventHandler ioe, int... ists)
             throws ClosedChannelException
     {
@@ -202,6 +258,24 @@ public class Dispatcher implements Runnable
         System.exit(183);
     }
 
+    private void runTasks()
+    {
+        Runnable task;
+        while ((task = _tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (IllegalStateException e) {
+                l.error("zd: fail task with unexpected ise:", e);
+                commitMessySuicide(e);
+            } catch (IllegalArgumentException e) {
+                l.error("zd: fail task with unexpected iae:", e);
+                commitMessySuicide(e);
+            } catch (Exception e) {
+                l.error("zd: fail task err:", e);
+            }
+        }
+    }
+
     /**
      * override to process other events in the context of the NIO dispatcher thread
      */
@@ -233,9 +307,19 @@ public class Dispatcher implements Runnable
 
     protected Selector _sel = null;
 
+    private final BufferPool _bufpool;
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+    private volatile Thread _thread = null;
+
     private volatile boolean _inited = false;
     private volatile boolean _started = false;
     private volatile boolean _stop = false;
 
     protected static Logger l = Loggers.getLogger(Dispatcher.class);
+
+    /** default size for each relay buffer */
+    public static final int DEFAULT_BUFFER_SIZE = 32768;
+
+    /** default number of pooled relay buffers */
+    public static final int DEFAULT_POOL_SIZE = 1024;
 }
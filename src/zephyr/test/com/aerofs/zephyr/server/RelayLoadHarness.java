@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) Air Computing Inc., 2015.
+ */
+
+package com.aerofs.zephyr.server;
+
+import com.aerofs.zephyr.server.core.Dispatcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.aerofs.zephyr.Constants.ZEPHYR_BIND_MSG_LEN;
+import static com.aerofs.zephyr.Constants.ZEPHYR_BIND_PAYLOAD_LEN;
+import static com.aerofs.zephyr.Constants.ZEPHYR_MAGIC;
+import static com.aerofs.zephyr.Constants.ZEPHYR_MSG_BYTE_ORDER;
+import static com.aerofs.zephyr.Constants.ZEPHYR_REG_MSG_LEN;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+
+/**
+ * Load test for the zephyr relay
+ *
+ * Starts an in-process ZephyrServer on loopback and drives a large number of concurrently
+ * relayed pairs through it. In each pair one end sends fixed-size messages and the other echoes
+ * them back, with one message in flight at any time. Reports relayed throughput and round-trip
+ * latency percentiles.
+ *
+ * Each connection uses two file descriptors on each side of the relay: the fd limit (ulimit -n)
+ * may have to be raised for thousands of pairs.
+ *
+ * Not a unit test, run manually:
+ *      RelayLoadHarness [pairs] [reactors] [message size] [seconds] [client threads]
+ */
+public class RelayLoadHarness
+{
+    private static final int WARMUP_SECONDS = 2;
+
+    /** latency histogram resolution is 1us, up to this value */
+    private static final int MAX_LATENCY_US = 1000 * 1000;
+
+    private static final class Conn
+    {
+        final SocketChannel ch;
+        final boolean initiator;
+        final ByteBuffer buf;
+        SelectionKey key;
+        long sent;
+
+        Conn(SocketChannel ch, boolean initiator, int msgsize)
+        {
+            this.ch = ch;
+            this.initiator = initiator;
+            this.buf = ByteBuffer.allocateDirect(msgsize);
+        }
+    }
+
+    /**
+     * Drives a subset of the relayed pairs from a single selector thread
+     */
+    private static final class Driver implements Runnable
+    {
+        final Selector sel;
+        final List<Conn> conns = new ArrayList<>();
+        final long[] histogram = new long[MAX_LATENCY_US + 1];
+        volatile boolean recording;
+        volatile boolean stop;
+        long roundtrips;
+        long failures;
+        long max;
+
+        Driver() throws IOException
+        {
+            sel = Selector.open();
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                for (Conn c : conns) {
+                    c.ch.configureBlocking(false);
+                    c.key = c.ch.register(sel, OP_READ, c);
+                    if (c.initiator) send(c);
+                }
+
+                while (!stop) {
+                    sel.select(100);
+                    Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey k = it.next();
+                        it.remove();
+                        Conn c = (Conn) k.attachment();
+                        try {
+                            if (k.isValid() && k.isWritable()) write(c);
+                            if (k.isValid() && k.isReadable()) read(c);
+                        } catch (IOException e) {
+                            ++failures;
+                            k.cancel();
+                            c.ch.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                try {
+                    sel.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        private void send(Conn c) throws IOException
+        {
+            c.buf.clear();
+            c.sent = System.nanoTime();
+            write(c);
+        }
+
+        private void write(Conn c) throws IOException
+        {
+            c.ch.write(c.buf);
+            if (c.buf.hasRemaining()) {
+                c.key.interestOps(OP_WRITE);
+            } else {
+                c.buf.clear();
+                c.key.interestOps(OP_READ);
+            }
+        }
+
+        private void read(Conn c) throws IOException
+        {
+            if (c.ch.read(c.buf) == -1) throw new IOException("eof");
+            if (c.buf.hasRemaining()) return;
+
+            if (c.initiator) {
+                if (recording) record(System.nanoTime() - c.sent);
+                if (!stop) send(c);
+            } else {
+                c.buf.flip();
+                write(c);
+            }
+        }
+
+        private void record(long nanos)
+        {
+            long us = TimeUnit.NANOSECONDS.toMicros(nanos);
+            max = Math.max(max, us);
+            ++histogram[(int) Math.min(us, MAX_LATENCY_US)];
+            ++roundtrips;
+        }
+    }
+
+    private static SocketChannel connect(InetSocketAddress addr, ByteBuffer b) throws IOException
+    {
+        SocketChannel ch = SocketChannel.open(addr);
+        ch.socket().setTcpNoDelay(true);
+        b.clear();
+        b.limit(ZEPHYR_REG_MSG_LEN);
+        while (b.hasRemaining()) {
+            if (ch.read(b) == -1) throw new IOException("eof before registration");
+        }
+        return ch;
+    }
+
+    private static int registrationId(ByteBuffer b) throws IOException
+    {
+        b.flip();
+        byte[] magic = new byte[ZEPHYR_MAGIC.length];
+        b.get(magic);
+        if (!Arrays.equals(magic, ZEPHYR_MAGIC)) throw new IOException("bad magic");
+        b.getInt(); // length
+        return b.getInt();
+    }
+
+    private static void bind(SocketChannel ch, int remid, ByteBuffer b) throws IOException
+    {
+        b.clear();
+        b.put(ZEPHYR_MAGIC);
+        b.putInt(ZEPHYR_BIND_PAYLOAD_LEN);
+        b.putInt(remid);
+        b.flip();
+        while (b.hasRemaining()) ch.write(b);
+    }
+
+    private static long percentile(long[] histogram, long total, double p)
+    {
+        long rank = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int us = 0; us < histogram.length; us++) {
+            seen += histogram[us];
+            if (seen >= rank) return us;
+        }
+        return MAX_LATENCY_US;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int reactors = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        int msgsize = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+
+        ZephyrServer z = new ZephyrServer("127.0.0.1", (short) 0, Zephyr.newReactors(reactors));
+        z.init();
+        Thread server = new Thread(z::start, "zr0");
+        server.start();
+
+        InetSocketAddress addr = new InetSocketAddress("127.0.0.1", z.getLocalPort());
+
+        Driver[] drivers = new Driver[threads];
+        for (int i = 0; i < threads; i++) drivers[i] = new Driver();
+
+        // establish all pairs up front with blocking i/o
+        ByteBuffer b = ByteBuffer.allocate(ZEPHYR_BIND_MSG_LEN).order(ZEPHYR_MSG_BYTE_ORDER);
+        for (int i = 0; i < pairs; i++) {
+            SocketChannel a = connect(addr, b);
+            int aid = registrationId(b);
+            SocketChannel e = connect(addr, b);
+            int eid = registrationId(b);
+            bind(a, eid, b);
+            bind(e, aid, b);
+
+            Driver d = drivers[i % threads];
+            d.conns.add(new Conn(a, true, msgsize));
+            d.conns.add(new Conn(e, false, msgsize));
+        }
+
+        Thread[] driverThreads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            driverThreads[i] = new Thread(drivers[i], "driver" + i);
+            driverThreads[i].start();
+        }
+
+        TimeUnit.SECONDS.sleep(WARMUP_SECONDS);
+        for (Driver d : drivers) d.recording = true;
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(seconds);
+        for (Driver d : drivers) d.recording = false;
+        long elapsed = System.nanoTime() - start;
+        for (Driver d : drivers) d.stop = true;
+        for (Thread t : driverThreads) t.join();
+
+        long[] histogram = new long[MAX_LATENCY_US + 1];
+        long roundtrips = 0, failures = 0, max = 0;
+        for (Driver d : drivers) {
+            for (int us = 0; us < histogram.length; us++) histogram[us] += d.histogram[us];
+            roundtrips += d.roundtrips;
+            failures += d.failures;
+            max = Math.max(max, d.max);
+            for (Conn c : d.conns) c.ch.close();
+        }
+
+        z.stop();
+        server.join();
+
+        double secs = elapsed / 1e9;
+        // each round trip relays the message once in each direction
+        double mbps = 2.0 * roundtrips * msgsize / secs / (1024 * 1024);
+        System.out.printf("pairs=%d reactors=%d msgsize=%d failures=%d%n",
+                pairs, reactors, msgsize, failures);
+        System.out.printf("round trips/s=%.0f relayed MB/s=%.1f%n", roundtrips / secs, mbps);
+        if (roundtrips > 0) {
+            System.out.printf("rtt us: p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+                    percentile(histogram, roundtrips, 0.50),
+                    percentile(histogram, roundtrips, 0.90),
+                    percentile(histogram, roundtrips, 0.99),
+                    percentile(histogram, roundtrips, 0.999),
+                    max);
+        }
+    }
+}